@@ -5,12 +5,16 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.cloud.gateway.route.RouteLocator;
 import org.springframework.cloud.gateway.route.builder.RouteLocatorBuilder;
 import org.springframework.context.annotation.Bean;
+import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
 
 import reactor.core.publisher.Mono;
 
-@SpringBootApplication
+// The migration endpoints live outside the gateway package
+@SpringBootApplication(scanBasePackages = {"com.personalfinance.gateway", "com.personalfinance.migration"})
 @RestController
 public class ApiGatewayApplication {
 
@@ -23,7 +27,9 @@ public class ApiGatewayApplication {
         return Mono.just("Welcome to Personal Finance Regulator API Gateway");
     }
 
-    @GetMapping("/fallback")
+    // Circuit breakers forward here with the original method, so accept any of them
+    @RequestMapping("/fallback")
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
     public Mono<String> fallback() {
         return Mono.just("Service temporarily unavailable. Please try again later.");
     }
@@ -0,0 +1,28 @@
+package com.personalfinance.gateway.cache;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+
+/**
+ * Fully buffered upstream response: status, content type and body bytes, plus
+ * the strong ETag computed over the body.
+ */
+public class CachedResponse {
+
+    private final HttpStatus status;
+    private final MediaType contentType;
+    private final byte[] body;
+    private final String etag;
+
+    public CachedResponse(HttpStatus status, MediaType contentType, byte[] body, String etag) {
+        this.status = status;
+        this.contentType = contentType;
+        this.body = body;
+        this.etag = etag;
+    }
+
+    public HttpStatus getStatus() { return status; }
+    public MediaType getContentType() { return contentType; }
+    public byte[] getBody() { return body; }
+    public String getEtag() { return etag; }
+}
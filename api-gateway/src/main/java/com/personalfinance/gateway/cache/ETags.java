@@ -0,0 +1,42 @@
+package com.personalfinance.gateway.cache;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+import org.springframework.http.HttpHeaders;
+
+public final class ETags {
+
+    private ETags() {
+    }
+
+    // Strong validator: first 128 bits of the body's SHA-256
+    public static String strong(byte[] body) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+            return "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest, 16)) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    // If-None-Match uses the weak comparison, so a W/ prefix on the client's copy is ignored
+    public static boolean matches(HttpHeaders requestHeaders, String etag) {
+        List<String> candidates;
+        try {
+            candidates = requestHeaders.getIfNoneMatch();
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        for (String candidate : candidates) {
+            String opaque = candidate.startsWith("W/") ? candidate.substring(2) : candidate;
+            if ("*".equals(opaque) || etag.equals(opaque)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,126 @@
+package com.personalfinance.gateway.cache;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.springframework.stereotype.Component;
+
+import com.personalfinance.gateway.config.ResponseCacheProperties;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Bounded in-memory store for cached GET responses. Entries expire after their
+ * TTL and the oldest insertions are evicted first once {@code max-entries} is
+ * reached. Each entry belongs to a scope (the user it describes); bumping the
+ * scope's generation invalidates all of that user's entries in O(1).
+ * Generations are striped counters, as in the transaction-service caches, so
+ * they take fixed memory however many users are invalidated; an
+ * invalidation also drops the entries of scopes sharing the stripe.
+ */
+@Component
+public class ResponseCacheStore {
+
+    private static final int GENERATION_STRIPES = 4096;
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Entry> insertionOrder = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+    private final int maxEntries;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter notModified;
+
+    public ResponseCacheStore(ResponseCacheProperties properties, MeterRegistry registry) {
+        this.maxEntries = properties.getMaxEntries();
+        this.hits = Counter.builder("gateway.response.cache.requests").tag("result", "hit").register(registry);
+        this.notModified = Counter.builder("gateway.response.cache.requests").tag("result", "not_modified").register(registry);
+        this.misses = Counter.builder("gateway.response.cache.requests").tag("result", "miss").register(registry);
+        Gauge.builder("gateway.response.cache.hit.ratio", this, ResponseCacheStore::hitRatio).register(registry);
+        Gauge.builder("gateway.response.cache.size", size, AtomicInteger::get).register(registry);
+    }
+
+    public CachedResponse get(String key, String scope) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (System.nanoTime() - entry.expiresAt > 0 || entry.generation != generation(scope)) {
+            if (entries.remove(key, entry)) {
+                size.decrementAndGet();
+            }
+            return null;
+        }
+        return entry.response;
+    }
+
+    // Read before the upstream call so a write that lands mid-flight is not masked
+    public long generation(String scope) {
+        return generations.get(stripe(scope));
+    }
+
+    public void put(String key, String scope, long generation, CachedResponse response, long ttlNanos) {
+        Entry entry = new Entry(key, response, System.nanoTime() + ttlNanos, generation);
+        Entry previous = entries.put(key, entry);
+        if (previous == null) {
+            size.incrementAndGet();
+        }
+        insertionOrder.add(entry);
+        queued.incrementAndGet();
+        while (size.get() > maxEntries) {
+            Entry oldest = insertionOrder.poll();
+            if (oldest == null) {
+                break;
+            }
+            queued.decrementAndGet();
+            if (entries.remove(oldest.key, oldest)) {
+                size.decrementAndGet();
+            }
+        }
+        // Entries replaced in the map leave stale queue nodes behind; keep the queue bounded too
+        if (queued.get() > maxEntries * 2) {
+            insertionOrder.removeIf(e -> entries.get(e.key) != e);
+            queued.set(insertionOrder.size());
+        }
+    }
+
+    public void invalidate(String scope) {
+        generations.incrementAndGet(stripe(scope));
+    }
+
+    public void recordHit() { hits.increment(); }
+    public void recordNotModified() { notModified.increment(); }
+    public void recordMiss() { misses.increment(); }
+
+    public double hitRatio() {
+        double served = hits.count() + notModified.count();
+        double total = served + misses.count();
+        return total == 0 ? 0 : served / total;
+    }
+
+    private static int stripe(String scope) {
+        int hash = scope.hashCode();
+        return (hash ^ (hash >>> 16)) & (GENERATION_STRIPES - 1);
+    }
+
+    private static final class Entry {
+        final String key;
+        final CachedResponse response;
+        final long expiresAt;
+        final long generation;
+
+        Entry(String key, CachedResponse response, long expiresAt, long generation) {
+            this.key = key;
+            this.response = response;
+            this.expiresAt = expiresAt;
+            this.generation = generation;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.personalfinance.gateway.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "gateway.coalescing")
+public class CoalescingProperties {
+
+    // Upper bound on distinct requests being coalesced at once
+    private int maxInFlight = 4096;
+
+    public int getMaxInFlight() { return maxInFlight; }
+    public void setMaxInFlight(int maxInFlight) { this.maxInFlight = maxInFlight; }
+}
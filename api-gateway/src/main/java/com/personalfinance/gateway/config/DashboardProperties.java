@@ -0,0 +1,40 @@
+package com.personalfinance.gateway.config;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "gateway.dashboard")
+public class DashboardProperties {
+
+    private String transactionServiceUrl = "http://localhost:8082";
+    private String budgetServiceUrl = "http://localhost:8083";
+    private String userServiceUrl = "http://localhost:8081";
+
+    // Sections slower than this are left out of the response rather than delaying it
+    private Duration callTimeout = Duration.ofSeconds(2);
+
+    // Per-user token bucket; each call fans out to every section's service, so it is tighter than the routes'
+    private int replenishRate = 5;
+    private int burstCapacity = 10;
+
+    public String getTransactionServiceUrl() { return transactionServiceUrl; }
+    public void setTransactionServiceUrl(String transactionServiceUrl) { this.transactionServiceUrl = transactionServiceUrl; }
+
+    public String getBudgetServiceUrl() { return budgetServiceUrl; }
+    public void setBudgetServiceUrl(String budgetServiceUrl) { this.budgetServiceUrl = budgetServiceUrl; }
+
+    public String getUserServiceUrl() { return userServiceUrl; }
+    public void setUserServiceUrl(String userServiceUrl) { this.userServiceUrl = userServiceUrl; }
+
+    public Duration getCallTimeout() { return callTimeout; }
+    public void setCallTimeout(Duration callTimeout) { this.callTimeout = callTimeout; }
+
+    public int getReplenishRate() { return replenishRate; }
+    public void setReplenishRate(int replenishRate) { this.replenishRate = replenishRate; }
+
+    public int getBurstCapacity() { return burstCapacity; }
+    public void setBurstCapacity(int burstCapacity) { this.burstCapacity = burstCapacity; }
+}
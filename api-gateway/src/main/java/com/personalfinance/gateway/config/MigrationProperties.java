@@ -0,0 +1,108 @@
+package com.personalfinance.gateway.config;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "gateway.migration")
+public class MigrationProperties {
+
+    private String transactionServiceUrl = "http://localhost:8082";
+    private String budgetServiceUrl = "http://localhost:8083";
+    private String userServiceUrl = "http://localhost:8081";
+    private String scheduledPurchaseServiceUrl = "http://localhost:8084";
+
+    // Records per upstream batch write
+    private int batchSize = 500;
+
+    // Batches written concurrently per import; parsing pauses while all are in flight
+    private int maxInFlightBatches = 4;
+
+    // A single element larger than this fails the import instead of being buffered
+    private int maxRecordBytes = 64 * 1024;
+
+    private Duration batchTimeout = Duration.ofSeconds(30);
+
+    // Only transaction batches are retried; their idempotency keys make replays safe.
+    // Export reads and purge chunks are retried the same number of times
+    private int batchRetries = 3;
+
+    private int maxConcurrentImports = 4;
+
+    // How long finished jobs stay visible to progress queries
+    private Duration jobRetention = Duration.ofHours(1);
+
+    // Transactions read per upstream call while exporting
+    private int exportPageSize = 1000;
+
+    private Duration exportCallTimeout = Duration.ofSeconds(30);
+
+    // Rows deleted per upstream call while purging; each call is one short transaction
+    private int purgeChunkSize = 500;
+
+    // Share of wall time a purge may spend deleting: after a chunk that took t it waits t * (1 - d) / d
+    private double purgeDutyCycle = 0.2;
+
+    private Duration purgeMinPause = Duration.ofMillis(20);
+
+    private int maxConcurrentPurges = 2;
+
+    // Where purge checkpoints are kept so an interrupted purge can be resumed
+    private String purgeCheckpointDir = "data/purge-checkpoints";
+
+    public String getTransactionServiceUrl() { return transactionServiceUrl; }
+    public void setTransactionServiceUrl(String transactionServiceUrl) { this.transactionServiceUrl = transactionServiceUrl; }
+
+    public String getBudgetServiceUrl() { return budgetServiceUrl; }
+    public void setBudgetServiceUrl(String budgetServiceUrl) { this.budgetServiceUrl = budgetServiceUrl; }
+
+    public String getUserServiceUrl() { return userServiceUrl; }
+    public void setUserServiceUrl(String userServiceUrl) { this.userServiceUrl = userServiceUrl; }
+
+    public String getScheduledPurchaseServiceUrl() { return scheduledPurchaseServiceUrl; }
+    public void setScheduledPurchaseServiceUrl(String scheduledPurchaseServiceUrl) { this.scheduledPurchaseServiceUrl = scheduledPurchaseServiceUrl; }
+
+    public int getBatchSize() { return batchSize; }
+    public void setBatchSize(int batchSize) { this.batchSize = batchSize; }
+
+    public int getMaxInFlightBatches() { return maxInFlightBatches; }
+    public void setMaxInFlightBatches(int maxInFlightBatches) { this.maxInFlightBatches = maxInFlightBatches; }
+
+    public int getMaxRecordBytes() { return maxRecordBytes; }
+    public void setMaxRecordBytes(int maxRecordBytes) { this.maxRecordBytes = maxRecordBytes; }
+
+    public Duration getBatchTimeout() { return batchTimeout; }
+    public void setBatchTimeout(Duration batchTimeout) { this.batchTimeout = batchTimeout; }
+
+    public int getBatchRetries() { return batchRetries; }
+    public void setBatchRetries(int batchRetries) { this.batchRetries = batchRetries; }
+
+    public int getMaxConcurrentImports() { return maxConcurrentImports; }
+    public void setMaxConcurrentImports(int maxConcurrentImports) { this.maxConcurrentImports = maxConcurrentImports; }
+
+    public Duration getJobRetention() { return jobRetention; }
+    public void setJobRetention(Duration jobRetention) { this.jobRetention = jobRetention; }
+
+    public int getExportPageSize() { return exportPageSize; }
+    public void setExportPageSize(int exportPageSize) { this.exportPageSize = exportPageSize; }
+
+    public Duration getExportCallTimeout() { return exportCallTimeout; }
+    public void setExportCallTimeout(Duration exportCallTimeout) { this.exportCallTimeout = exportCallTimeout; }
+
+    public int getPurgeChunkSize() { return purgeChunkSize; }
+    public void setPurgeChunkSize(int purgeChunkSize) { this.purgeChunkSize = purgeChunkSize; }
+
+    public double getPurgeDutyCycle() { return purgeDutyCycle; }
+    public void setPurgeDutyCycle(double purgeDutyCycle) { this.purgeDutyCycle = purgeDutyCycle; }
+
+    public Duration getPurgeMinPause() { return purgeMinPause; }
+    public void setPurgeMinPause(Duration purgeMinPause) { this.purgeMinPause = purgeMinPause; }
+
+    public int getMaxConcurrentPurges() { return maxConcurrentPurges; }
+    public void setMaxConcurrentPurges(int maxConcurrentPurges) { this.maxConcurrentPurges = maxConcurrentPurges; }
+
+    public String getPurgeCheckpointDir() { return purgeCheckpointDir; }
+    public void setPurgeCheckpointDir(String purgeCheckpointDir) { this.purgeCheckpointDir = purgeCheckpointDir; }
+}
@@ -0,0 +1,41 @@
+package com.personalfinance.gateway.config;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "gateway.rate-limit")
+public class RateLimitProperties {
+
+    // Number of independent bucket maps; rounded up to a power of two
+    private int shards = 16;
+
+    // Buckets untouched for this long are dropped
+    private Duration idleTtl = Duration.ofMinutes(10);
+
+    // Used by routes that don't set their own limits
+    private int defaultReplenishRate = 10;
+    private int defaultBurstCapacity = 20;
+
+    // Proxy addresses whose X-Forwarded-For is believed; without any, anonymous callers are keyed by peer address
+    private List<String> trustedProxies = new ArrayList<>();
+
+    public int getShards() { return shards; }
+    public void setShards(int shards) { this.shards = shards; }
+
+    public Duration getIdleTtl() { return idleTtl; }
+    public void setIdleTtl(Duration idleTtl) { this.idleTtl = idleTtl; }
+
+    public int getDefaultReplenishRate() { return defaultReplenishRate; }
+    public void setDefaultReplenishRate(int defaultReplenishRate) { this.defaultReplenishRate = defaultReplenishRate; }
+
+    public int getDefaultBurstCapacity() { return defaultBurstCapacity; }
+    public void setDefaultBurstCapacity(int defaultBurstCapacity) { this.defaultBurstCapacity = defaultBurstCapacity; }
+
+    public List<String> getTrustedProxies() { return trustedProxies; }
+    public void setTrustedProxies(List<String> trustedProxies) { this.trustedProxies = trustedProxies; }
+}
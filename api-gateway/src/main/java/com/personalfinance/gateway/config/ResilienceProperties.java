@@ -0,0 +1,43 @@
+package com.personalfinance.gateway.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "gateway.resilience")
+public class ResilienceProperties {
+
+    // Retries may add at most this fraction of each route's request volume
+    private double retryBudgetRatio = 0.2;
+
+    // Floor so quiet routes can still retry the odd failure
+    private int retryMinPerSecond = 5;
+
+    private boolean hedgingEnabled = false;
+
+    // Hedges share their own budget so a slow backend isn't flooded with duplicates
+    private double hedgingBudgetRatio = 0.1;
+
+    // No hedging until this many latencies have been seen for the call
+    private int hedgingMinSamples = 20;
+
+    private int latencyWindow = 256;
+
+    public double getRetryBudgetRatio() { return retryBudgetRatio; }
+    public void setRetryBudgetRatio(double retryBudgetRatio) { this.retryBudgetRatio = retryBudgetRatio; }
+
+    public int getRetryMinPerSecond() { return retryMinPerSecond; }
+    public void setRetryMinPerSecond(int retryMinPerSecond) { this.retryMinPerSecond = retryMinPerSecond; }
+
+    public boolean isHedgingEnabled() { return hedgingEnabled; }
+    public void setHedgingEnabled(boolean hedgingEnabled) { this.hedgingEnabled = hedgingEnabled; }
+
+    public double getHedgingBudgetRatio() { return hedgingBudgetRatio; }
+    public void setHedgingBudgetRatio(double hedgingBudgetRatio) { this.hedgingBudgetRatio = hedgingBudgetRatio; }
+
+    public int getHedgingMinSamples() { return hedgingMinSamples; }
+    public void setHedgingMinSamples(int hedgingMinSamples) { this.hedgingMinSamples = hedgingMinSamples; }
+
+    public int getLatencyWindow() { return latencyWindow; }
+    public void setLatencyWindow(int latencyWindow) { this.latencyWindow = latencyWindow; }
+}
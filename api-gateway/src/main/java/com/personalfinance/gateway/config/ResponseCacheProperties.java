@@ -0,0 +1,29 @@
+package com.personalfinance.gateway.config;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "gateway.response-cache")
+public class ResponseCacheProperties {
+
+    // Upper bound on cached responses across all routes
+    private int maxEntries = 10_000;
+
+    // Responses larger than this are passed through but not stored
+    private int maxBodyBytes = 256 * 1024;
+
+    // Used by routes that don't set their own ttl
+    private Duration defaultTtl = Duration.ofSeconds(30);
+
+    public int getMaxEntries() { return maxEntries; }
+    public void setMaxEntries(int maxEntries) { this.maxEntries = maxEntries; }
+
+    public int getMaxBodyBytes() { return maxBodyBytes; }
+    public void setMaxBodyBytes(int maxBodyBytes) { this.maxBodyBytes = maxBodyBytes; }
+
+    public Duration getDefaultTtl() { return defaultTtl; }
+    public void setDefaultTtl(Duration defaultTtl) { this.defaultTtl = defaultTtl; }
+}
@@ -18,6 +18,9 @@ public class SecurityConfig {
             .csrf(ServerHttpSecurity.CsrfSpec::disable)
             .authorizeExchange(exchanges -> exchanges
                 .pathMatchers(HttpMethod.OPTIONS, "/api/**").permitAll()
+                // Purge chunks take any user id; only the gateway's purger calls them, straight to the services
+                .pathMatchers(HttpMethod.DELETE, "/api/transactions/user/*/purge", "/api/budgets/user/*/purge",
+                        "/api/scheduled-purchases/user/*/purge", "/api/users/data/*/purge/*").denyAll()
                 .pathMatchers("/api/**").authenticated()
                 .anyExchange().permitAll()
             )
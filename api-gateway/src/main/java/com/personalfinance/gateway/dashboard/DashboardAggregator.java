@@ -0,0 +1,132 @@
+package com.personalfinance.gateway.dashboard;
+
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cloud.client.circuitbreaker.ReactiveCircuitBreakerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.personalfinance.gateway.config.DashboardProperties;
+import com.personalfinance.gateway.resilience.Hedger;
+
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Fetches every section the dashboard page needs in parallel and folds them
+ * into one document. Each upstream call has its own timeout; a section that
+ * fails or times out is reported under "errors" instead of failing the page,
+ * so the response time is bounded by the slowest call that succeeds in time.
+ * Calls go through the same per-service circuit breakers as the routes and
+ * may be hedged once they run past their p95.
+ */
+@Service
+public class DashboardAggregator {
+
+    private static final Logger log = LoggerFactory.getLogger(DashboardAggregator.class);
+
+    private final WebClient webClient;
+    private final DashboardProperties properties;
+    private final ReactiveCircuitBreakerFactory<?, ?> circuitBreakers;
+    private final Hedger hedger;
+
+    public DashboardAggregator(WebClient.Builder webClientBuilder, DashboardProperties properties,
+                               ReactiveCircuitBreakerFactory<?, ?> circuitBreakers, Hedger hedger) {
+        this.webClient = webClientBuilder.build();
+        this.properties = properties;
+        this.circuitBreakers = circuitBreakers;
+        this.hedger = hedger;
+    }
+
+    public Mono<Map<String, Object>> aggregate(Long userId, String timeRange, String authorization) {
+        String analytics = properties.getTransactionServiceUrl() + "/analytics/user/{userId}";
+        List<Mono<Section>> calls = List.of(
+                fetch("dashboard", "transactionService", withTimeRange(analytics + "/dashboard", timeRange, userId), authorization),
+                fetch("monthlyTrend", "transactionService", withTimeRange(analytics + "/monthly-trend", timeRange, userId), authorization),
+                fetch("categoryBreakdown", "transactionService", withTimeRange(analytics + "/category-breakdown", timeRange, userId), authorization),
+                fetch("budgets", "budgetService", expand(properties.getBudgetServiceUrl() + "/budgets/user/{userId}", userId), authorization),
+                fetch("goals", "userService", expand(properties.getUserServiceUrl() + "/api/goals/user/{userId}", userId), authorization));
+
+        // mergeSequential subscribes to every call up front but keeps the sections in order
+        return Flux.mergeSequential(calls)
+                .collectList()
+                .map(sections -> {
+                    Map<String, Object> response = new LinkedHashMap<>();
+                    Map<String, String> errors = new LinkedHashMap<>();
+                    response.put("userId", userId);
+                    response.put("timeRange", timeRange);
+                    for (Section section : sections) {
+                        response.put(section.name, section.body);
+                        if (section.error != null) {
+                            errors.put(section.name, section.error);
+                        }
+                    }
+                    response.put("partial", !errors.isEmpty());
+                    response.put("errors", errors);
+                    return response;
+                });
+    }
+
+    private static URI withTimeRange(String template, String timeRange, Long userId) {
+        return UriComponentsBuilder.fromHttpUrl(template).queryParam("timeRange", timeRange).build(userId);
+    }
+
+    private static URI expand(String template, Long userId) {
+        return UriComponentsBuilder.fromHttpUrl(template).build(userId);
+    }
+
+    private Mono<Section> fetch(String name, String breaker, URI uri, String authorization) {
+        Mono<JsonNode> call = hedger.call(name, () -> webClient.get()
+                .uri(uri)
+                .headers(headers -> {
+                    if (authorization != null) {
+                        headers.set(HttpHeaders.AUTHORIZATION, authorization);
+                    }
+                })
+                .retrieve()
+                .bodyToMono(JsonNode.class));
+        return circuitBreakers.create(breaker).run(call.timeout(properties.getCallTimeout()))
+                .map(body -> new Section(name, body, null))
+                .defaultIfEmpty(new Section(name, null, null))
+                .onErrorResume(e -> {
+                    log.warn("[DashboardAggregator] {} unavailable: {}", name, e.toString());
+                    return Mono.just(new Section(name, null, describe(e)));
+                });
+    }
+
+    private static String describe(Throwable e) {
+        if (e instanceof TimeoutException) {
+            return "timeout";
+        }
+        if (e instanceof CallNotPermittedException) {
+            return "circuit open";
+        }
+        if (e instanceof WebClientResponseException) {
+            return "status " + ((WebClientResponseException) e).getRawStatusCode();
+        }
+        return "unavailable";
+    }
+
+    private static final class Section {
+        final String name;
+        final JsonNode body;
+        final String error;
+
+        Section(String name, JsonNode body, String error) {
+            this.name = name;
+            this.body = body;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.personalfinance.gateway.dashboard;
+
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ServerWebExchange;
+
+import com.personalfinance.gateway.config.DashboardProperties;
+import com.personalfinance.gateway.filter.RequestKeys;
+import com.personalfinance.gateway.filter.TokenBucketRateLimiterGatewayFilterFactory;
+
+import reactor.core.publisher.Mono;
+
+@RestController
+@RequestMapping("/api/dashboard")
+public class DashboardController {
+    private static final Logger log = LoggerFactory.getLogger(DashboardController.class);
+
+    // Bucket name in place of a route id; this endpoint isn't a route
+    private static final String RATE_LIMIT_BUCKET = "dashboard";
+
+    private final DashboardAggregator aggregator;
+    private final TokenBucketRateLimiterGatewayFilterFactory rateLimiter;
+    private final DashboardProperties properties;
+
+    public DashboardController(DashboardAggregator aggregator,
+                               TokenBucketRateLimiterGatewayFilterFactory rateLimiter,
+                               DashboardProperties properties) {
+        this.aggregator = aggregator;
+        this.rateLimiter = rateLimiter;
+        this.properties = properties;
+    }
+
+    // One round trip for everything the dashboard page renders
+    @GetMapping("/user/{userId}")
+    public Mono<ResponseEntity<Map<String, Object>>> getDashboard(
+            @PathVariable Long userId,
+            @RequestParam(defaultValue = "6months") String timeRange,
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization,
+            ServerWebExchange exchange) {
+        log.info("GET /api/dashboard/user/{} called. timeRange: {}", userId, timeRange);
+        return RequestKeys.user(exchange).flatMap(user -> {
+            if (!rateLimiter.admit(exchange, RATE_LIMIT_BUCKET, user,
+                    properties.getReplenishRate(), properties.getBurstCapacity(), 1)) {
+                return Mono.just(ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).<Map<String, Object>>build());
+            }
+            return aggregator.aggregate(userId, timeRange, authorization).map(ResponseEntity::ok);
+        });
+    }
+}
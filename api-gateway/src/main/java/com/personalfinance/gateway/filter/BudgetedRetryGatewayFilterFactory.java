@@ -0,0 +1,142 @@
+package com.personalfinance.gateway.filter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+
+import com.personalfinance.gateway.config.ResilienceProperties;
+import com.personalfinance.gateway.resilience.RetryBudget;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Mono;
+import reactor.netty.Connection;
+
+/**
+ * Retries idempotent requests (GET, HEAD, OPTIONS) that failed to connect,
+ * timed out, or came back 502/503/504, with full-jitter exponential backoff.
+ * Each route has a retry budget shared by all its requests, so when a backend
+ * is failing wholesale the gateway stops multiplying its load and lets the
+ * circuit breaker around this filter trip instead.
+ */
+@Component
+public class BudgetedRetryGatewayFilterFactory
+        extends AbstractGatewayFilterFactory<BudgetedRetryGatewayFilterFactory.Config> {
+
+    private static final Logger log = LoggerFactory.getLogger(BudgetedRetryGatewayFilterFactory.class);
+
+    private static final Set<HttpMethod> IDEMPOTENT_METHODS = EnumSet.of(HttpMethod.GET, HttpMethod.HEAD, HttpMethod.OPTIONS);
+
+    private final ConcurrentHashMap<String, RetryBudget> budgets = new ConcurrentHashMap<>();
+    private final ResilienceProperties properties;
+    private final MeterRegistry registry;
+
+    public BudgetedRetryGatewayFilterFactory(ResilienceProperties properties, MeterRegistry registry) {
+        super(Config.class);
+        this.properties = properties;
+        this.registry = registry;
+    }
+
+    @Override
+    public List<String> shortcutFieldOrder() {
+        return Arrays.asList("retries");
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        return (exchange, chain) -> {
+            if (!IDEMPOTENT_METHODS.contains(exchange.getRequest().getMethod())) {
+                return chain.filter(exchange);
+            }
+            String routeId = RequestKeys.routeId(exchange);
+            RetryBudget budget = budgets.computeIfAbsent(routeId,
+                    id -> new RetryBudget(properties.getRetryBudgetRatio(), properties.getRetryMinPerSecond()));
+            budget.recordRequest();
+            return attempt(exchange, chain, config, budget, routeId, 0);
+        };
+    }
+
+    private Mono<Void> attempt(ServerWebExchange exchange, GatewayFilterChain chain, Config config,
+                               RetryBudget budget, String routeId, int retry) {
+        return chain.filter(exchange)
+                .then(Mono.just(Optional.<Throwable>empty()))
+                .onErrorResume(e -> Mono.just(Optional.of(e)))
+                .flatMap(error -> {
+                    boolean retryable = error.map(BudgetedRetryGatewayFilterFactory::isRetryableError)
+                            .orElseGet(() -> config.getStatuses().contains(exchange.getResponse().getStatusCode()));
+                    if (!retryable || retry >= config.getRetries() || exchange.getResponse().isCommitted()) {
+                        return error.map(Mono::<Void>error).orElseGet(Mono::empty);
+                    }
+                    if (!budget.tryWithdraw()) {
+                        registry.counter("gateway.retry.attempts", "route", routeId, "outcome", "budget_exhausted").increment();
+                        log.debug("[BudgetedRetry] Retry budget exhausted for route {}", routeId);
+                        return error.map(Mono::<Void>error).orElseGet(Mono::empty);
+                    }
+                    registry.counter("gateway.retry.attempts", "route", routeId, "outcome", "retried").increment();
+                    reset(exchange);
+                    return Mono.delay(backoff(config, retry))
+                            .then(Mono.defer(() -> attempt(exchange, chain, config, budget, routeId, retry + 1)));
+                });
+    }
+
+    // Full jitter: uniform in [0, min(max, first * 2^retry)] so retrying clients spread out
+    static Duration backoff(Config config, int retry) {
+        long cap = Math.min(config.getMaxBackoff().toMillis(), config.getFirstBackoff().toMillis() << Math.min(retry, 20));
+        return Duration.ofMillis(ThreadLocalRandom.current().nextLong(cap + 1));
+    }
+
+    private static boolean isRetryableError(Throwable e) {
+        if (e instanceof ResponseStatusException) {
+            // NettyRoutingFilter maps a response timeout to 504
+            return ((ResponseStatusException) e).getStatus() == HttpStatus.GATEWAY_TIMEOUT;
+        }
+        return e instanceof IOException || e instanceof TimeoutException
+                || e.getCause() instanceof IOException || e.getCause() instanceof TimeoutException;
+    }
+
+    private static void reset(ServerWebExchange exchange) {
+        Connection connection = exchange.getAttribute(ServerWebExchangeUtils.CLIENT_RESPONSE_CONN_ATTR);
+        if (connection != null) {
+            connection.dispose();
+            exchange.getAttributes().remove(ServerWebExchangeUtils.CLIENT_RESPONSE_CONN_ATTR);
+        }
+        ServerWebExchangeUtils.reset(exchange);
+    }
+
+    public static class Config {
+        private int retries = 2;
+        private Set<HttpStatus> statuses = EnumSet.of(HttpStatus.BAD_GATEWAY, HttpStatus.SERVICE_UNAVAILABLE, HttpStatus.GATEWAY_TIMEOUT);
+        private Duration firstBackoff = Duration.ofMillis(50);
+        private Duration maxBackoff = Duration.ofMillis(500);
+
+        public int getRetries() { return retries; }
+        public void setRetries(int retries) { this.retries = retries; }
+
+        public Set<HttpStatus> getStatuses() { return statuses; }
+        public void setStatuses(Set<HttpStatus> statuses) { this.statuses = statuses; }
+
+        public Duration getFirstBackoff() { return firstBackoff; }
+        public void setFirstBackoff(Duration firstBackoff) { this.firstBackoff = firstBackoff; }
+
+        public Duration getMaxBackoff() { return maxBackoff; }
+        public void setMaxBackoff(Duration maxBackoff) { this.maxBackoff = maxBackoff; }
+    }
+}
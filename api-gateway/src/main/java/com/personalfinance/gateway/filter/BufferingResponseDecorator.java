@@ -0,0 +1,63 @@
+package com.personalfinance.gateway.filter;
+
+import java.util.function.Function;
+
+import org.reactivestreams.Publisher;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Collects the upstream body into a single byte array and hands it to
+ * {@code onBody}, which decides what is actually written to the client
+ * (usually via {@link #writeFully(ServerHttpResponse, byte[])}). A response
+ * completed without a body, such as a 304, reaches {@code onBody} as an empty
+ * array.
+ */
+public class BufferingResponseDecorator extends ServerHttpResponseDecorator {
+
+    private final Function<byte[], Mono<Void>> onBody;
+
+    public BufferingResponseDecorator(ServerHttpResponse delegate, Function<byte[], Mono<Void>> onBody) {
+        super(delegate);
+        this.onBody = onBody;
+    }
+
+    @Override
+    public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+        return DataBufferUtils.join(Flux.from(body))
+                .map(buffer -> {
+                    byte[] bytes = new byte[buffer.readableByteCount()];
+                    buffer.read(bytes);
+                    DataBufferUtils.release(buffer);
+                    return bytes;
+                })
+                .defaultIfEmpty(new byte[0])
+                .flatMap(onBody);
+    }
+
+    @Override
+    public Mono<Void> writeAndFlushWith(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+        return writeWith(Flux.from(body).flatMapSequential(p -> p));
+    }
+
+    @Override
+    public Mono<Void> setComplete() {
+        return onBody.apply(new byte[0]);
+    }
+
+    public static Mono<Void> writeFully(ServerHttpResponse response, byte[] body) {
+        HttpHeaders headers = response.getHeaders();
+        headers.remove(HttpHeaders.TRANSFER_ENCODING);
+        headers.setContentLength(body.length);
+        if (body.length == 0) {
+            return response.setComplete();
+        }
+        return response.writeWith(Mono.just(response.bufferFactory().wrap(body)));
+    }
+}
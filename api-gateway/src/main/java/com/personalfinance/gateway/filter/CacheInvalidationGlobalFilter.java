@@ -0,0 +1,61 @@
+package com.personalfinance.gateway.filter;
+
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+
+import com.personalfinance.gateway.cache.ResponseCacheStore;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Downstream services mark writes with {@code X-Cache-Invalidate-User: <userId>}.
+ * The hint drops that user's cached responses and is stripped before the
+ * response reaches the client. Writes that don't pass through the gateway,
+ * such as scheduled purchases firing, only show once the entries expire;
+ * the gateway's own purges invalidate as they go.
+ */
+@Component
+public class CacheInvalidationGlobalFilter implements GlobalFilter, Ordered {
+
+    public static final String INVALIDATE_USER_HEADER = "X-Cache-Invalidate-User";
+
+    private static final Logger log = LoggerFactory.getLogger(CacheInvalidationGlobalFilter.class);
+
+    private final ResponseCacheStore store;
+
+    public CacheInvalidationGlobalFilter(ResponseCacheStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        ServerHttpResponse response = exchange.getResponse();
+        response.beforeCommit(() -> {
+            HttpHeaders headers = response.getHeaders();
+            // Batch writes can touch several users and repeat the header once per user
+            List<String> userIds = headers.remove(INVALIDATE_USER_HEADER);
+            if (userIds != null) {
+                for (String userId : userIds) {
+                    log.debug("[ResponseCache] Invalidating cached responses for user {}", userId);
+                    store.invalidate(userId.trim());
+                }
+            }
+            return Mono.empty();
+        });
+        return chain.filter(exchange);
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+}
@@ -0,0 +1,42 @@
+package com.personalfinance.gateway.filter;
+
+import java.util.Set;
+
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+
+import com.personalfinance.gateway.config.RateLimitProperties;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Resolves the client address {@link RequestKeys} keys anonymous callers by,
+ * for every request the gateway handles, routed or served itself. Without
+ * trusted proxies configured the peer address stands and nothing is set.
+ */
+@Component
+public class ClientAddressFilter implements WebFilter, Ordered {
+
+    private final Set<String> trustedProxies;
+
+    public ClientAddressFilter(RateLimitProperties properties) {
+        this.trustedProxies = Set.copyOf(properties.getTrustedProxies());
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        if (!trustedProxies.isEmpty()) {
+            exchange.getAttributes().put(RequestKeys.CLIENT_ADDRESS_ATTR,
+                    RequestKeys.clientAddress(exchange.getRequest(), trustedProxies));
+        }
+        return chain.filter(exchange);
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+}
@@ -0,0 +1,185 @@
+package com.personalfinance.gateway.filter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+
+import com.personalfinance.gateway.config.CoalescingProperties;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+/**
+ * Single-flight for GETs: while a request for the same user, route and
+ * path+query is in flight, identical requests wait for its response instead of
+ * going upstream. Requests only count as identical if they also negotiate the
+ * same representation and carry the same preconditions, so a conditional
+ * leader's 304 is never replayed to a follower that asked for the body. The
+ * first caller (the leader) buffers the body once and every waiter gets a copy,
+ * with the leader's status and upstream headers (ETag, Cache-Control and so
+ * on; not hop-by-hop ones). The in-flight table is
+ * capped; past the cap requests are simply passed through.
+ */
+@Component
+public class RequestCoalescingGatewayFilterFactory
+        extends AbstractGatewayFilterFactory<RequestCoalescingGatewayFilterFactory.Config> {
+
+    private static final Logger log = LoggerFactory.getLogger(RequestCoalescingGatewayFilterFactory.class);
+
+    // RFC 7230 6.1, plus Content-Length, which writeFully sets for each copy
+    private static final List<String> HOP_BY_HOP = List.of(HttpHeaders.CONNECTION, "Keep-Alive",
+            HttpHeaders.PROXY_AUTHENTICATE, HttpHeaders.PROXY_AUTHORIZATION, HttpHeaders.TE, HttpHeaders.TRAILER,
+            HttpHeaders.TRANSFER_ENCODING, HttpHeaders.UPGRADE, HttpHeaders.CONTENT_LENGTH);
+
+    // Headers that change what upstream answers for the same path
+    private static final List<String> KEY_HEADERS = List.of(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING,
+            HttpHeaders.IF_NONE_MATCH, HttpHeaders.IF_MODIFIED_SINCE);
+
+    private final ConcurrentHashMap<String, InFlight> inFlight = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlightCount = new AtomicInteger();
+    private final CoalescingProperties properties;
+
+    private final Counter leaders;
+    private final Counter followers;
+    private final Counter overflow;
+
+    public RequestCoalescingGatewayFilterFactory(CoalescingProperties properties, MeterRegistry registry) {
+        super(Config.class);
+        this.properties = properties;
+        this.leaders = Counter.builder("gateway.coalescing.requests").tag("role", "leader").register(registry);
+        this.followers = Counter.builder("gateway.coalescing.requests").tag("role", "follower").register(registry);
+        this.overflow = Counter.builder("gateway.coalescing.requests").tag("role", "overflow").register(registry);
+        registry.gauge("gateway.coalescing.in.flight", inFlightCount);
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        // Must wrap the response before NettyWriteResponseFilter captures it
+        return new OrderedGatewayFilter((exchange, chain) -> {
+            if (exchange.getRequest().getMethod() != HttpMethod.GET) {
+                return chain.filter(exchange);
+            }
+            return RequestKeys.user(exchange).flatMap(user -> {
+                String key = key(exchange, user);
+                InFlight existing = inFlight.get(key);
+                if (existing != null) {
+                    return follow(exchange, chain, existing);
+                }
+                if (inFlightCount.incrementAndGet() > properties.getMaxInFlight()) {
+                    inFlightCount.decrementAndGet();
+                    overflow.increment();
+                    return chain.filter(exchange);
+                }
+                InFlight call = new InFlight();
+                existing = inFlight.putIfAbsent(key, call);
+                if (existing != null) {
+                    inFlightCount.decrementAndGet();
+                    return follow(exchange, chain, existing);
+                }
+                return lead(exchange, chain, key, call);
+            });
+        }, NettyWriteResponseFilter.WRITE_RESPONSE_FILTER_ORDER - 1);
+    }
+
+    private Mono<Void> lead(ServerWebExchange exchange, GatewayFilterChain chain, String key, InFlight call) {
+        leaders.increment();
+        ServerHttpResponse original = exchange.getResponse();
+        BufferingResponseDecorator decorated = new BufferingResponseDecorator(original, body -> {
+            HttpStatus status = original.getStatusCode() != null ? original.getStatusCode() : HttpStatus.OK;
+            complete(key, call);
+            call.result.tryEmitValue(new SharedResponse(status, replayable(original.getHeaders()), body));
+            return BufferingResponseDecorator.writeFully(original, body);
+        });
+        return chain.filter(exchange.mutate().response(decorated).build())
+                .doFinally(signal -> {
+                    // Only reached without a body on error or cancel
+                    complete(key, call);
+                    call.result.tryEmitEmpty();
+                });
+    }
+
+    private Mono<Void> follow(ServerWebExchange exchange, GatewayFilterChain chain, InFlight call) {
+        followers.increment();
+        return call.result.asMono()
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .flatMap(shared -> {
+                    if (shared.isEmpty()) {
+                        // Leader produced no response; go upstream ourselves
+                        log.debug("[Coalescing] Leader produced no response for {}, retrying upstream",
+                                exchange.getRequest().getURI().getRawPath());
+                        return chain.filter(exchange);
+                    }
+                    ServerHttpResponse response = exchange.getResponse();
+                    response.setStatusCode(shared.get().status);
+                    // Headers this request's own filters set (rate limit, CORS) are its, not the leader's
+                    HttpHeaders headers = response.getHeaders();
+                    shared.get().headers.forEach((name, values) -> headers.putIfAbsent(name, new ArrayList<>(values)));
+                    return BufferingResponseDecorator.writeFully(response, shared.get().body);
+                });
+    }
+
+    private static String key(ServerWebExchange exchange, String user) {
+        StringBuilder key = new StringBuilder(RequestKeys.routeId(exchange)).append('|').append(user)
+                .append('|').append(RequestKeys.pathAndQuery(exchange.getRequest()));
+        HttpHeaders headers = exchange.getRequest().getHeaders();
+        for (String name : KEY_HEADERS) {
+            List<String> values = headers.get(name);
+            key.append('|').append(values != null ? String.join(",", values) : "");
+        }
+        return key.toString();
+    }
+
+    private void complete(String key, InFlight call) {
+        if (inFlight.remove(key, call)) {
+            inFlightCount.decrementAndGet();
+        }
+    }
+
+    // A copy, so later changes to the leader's response don't reach the waiters
+    private static HttpHeaders replayable(HttpHeaders upstream) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.putAll(upstream);
+        List<String> named = upstream.getConnection();
+        named.forEach(headers::remove);
+        HOP_BY_HOP.forEach(headers::remove);
+        return HttpHeaders.readOnlyHttpHeaders(headers);
+    }
+
+    private static final class InFlight {
+        final Sinks.One<SharedResponse> result = Sinks.one();
+    }
+
+    private static final class SharedResponse {
+        final HttpStatus status;
+        final HttpHeaders headers;
+        final byte[] body;
+
+        SharedResponse(HttpStatus status, HttpHeaders headers, byte[] body) {
+            this.status = status;
+            this.headers = headers;
+            this.body = body;
+        }
+    }
+
+    public static class Config {
+    }
+}
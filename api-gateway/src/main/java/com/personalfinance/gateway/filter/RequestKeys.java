@@ -0,0 +1,71 @@
+package com.personalfinance.gateway.filter;
+
+import java.net.InetSocketAddress;
+import java.security.Principal;
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.server.ServerWebExchange;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Builds the keys the gateway filters use to group requests. Authenticated
+ * requests are keyed by the JWT subject; anything else falls back to the
+ * client address so anonymous callers still get their own bucket. The client
+ * address is the connection's peer; X-Forwarded-For is only believed for hops
+ * added by {@code gateway.rate-limit.trusted-proxies} (see {@link ClientAddressFilter}).
+ */
+public final class RequestKeys {
+
+    // Set by ClientAddressFilter; absent, the connection's peer is the client
+    static final String CLIENT_ADDRESS_ATTR = RequestKeys.class.getName() + ".clientAddress";
+
+    private RequestKeys() {
+    }
+
+    public static Mono<String> user(ServerWebExchange exchange) {
+        return exchange.getPrincipal()
+                .map(Principal::getName)
+                .defaultIfEmpty("")
+                .map(name -> name.isEmpty() ? "anon:" + clientAddress(exchange) : "user:" + name);
+    }
+
+    public static String routeId(ServerWebExchange exchange) {
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        return route != null ? route.getId() : "default";
+    }
+
+    public static String pathAndQuery(ServerHttpRequest request) {
+        String query = request.getURI().getRawQuery();
+        String path = request.getURI().getRawPath();
+        return query == null ? path : path + "?" + query;
+    }
+
+    private static String clientAddress(ServerWebExchange exchange) {
+        String resolved = exchange.getAttribute(CLIENT_ADDRESS_ATTR);
+        return resolved != null ? resolved : remoteAddress(exchange.getRequest());
+    }
+
+    /**
+     * The peer address, or, while that is a trusted proxy, the hop it
+     * forwarded for: X-Forwarded-For is read from the right, since anything
+     * left of the last trusted hop is whatever the client chose to send.
+     */
+    static String clientAddress(ServerHttpRequest request, Set<String> trustedProxies) {
+        String address = remoteAddress(request);
+        List<String> hops = request.getHeaders().getValuesAsList("X-Forwarded-For");
+        for (int i = hops.size() - 1; i >= 0 && trustedProxies.contains(address); i--) {
+            address = hops.get(i);
+        }
+        return address;
+    }
+
+    private static String remoteAddress(ServerHttpRequest request) {
+        InetSocketAddress remote = request.getRemoteAddress();
+        return remote != null && remote.getAddress() != null ? remote.getAddress().getHostAddress() : "unknown";
+    }
+}
@@ -0,0 +1,146 @@
+package com.personalfinance.gateway.filter;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+
+import com.personalfinance.gateway.cache.CachedResponse;
+import com.personalfinance.gateway.cache.ETags;
+import com.personalfinance.gateway.cache.ResponseCacheStore;
+import com.personalfinance.gateway.config.ResponseCacheProperties;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Caches successful GET responses per route, user and path+query for a short
+ * TTL and tags them with a strong ETag. A matching If-None-Match is answered
+ * with 304 straight from the cache; otherwise cached bodies are replayed without
+ * calling the backend. Entries are scoped to the user id in the path so the
+ * X-Cache-Invalidate-User hint from a downstream write drops them all at once.
+ */
+@Component
+public class ResponseCacheGatewayFilterFactory
+        extends AbstractGatewayFilterFactory<ResponseCacheGatewayFilterFactory.Config> {
+
+    public static final String CACHE_STATUS_HEADER = "X-Cache";
+
+    private static final Pattern USER_SEGMENT = Pattern.compile("/user/(\\d+)(?:/|$)");
+
+    private final ResponseCacheStore store;
+    private final ResponseCacheProperties properties;
+
+    public ResponseCacheGatewayFilterFactory(ResponseCacheStore store, ResponseCacheProperties properties) {
+        super(Config.class);
+        this.store = store;
+        this.properties = properties;
+    }
+
+    @Override
+    public List<String> shortcutFieldOrder() {
+        return Arrays.asList("ttl");
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        long ttlNanos = (config.getTtl() != null ? config.getTtl() : properties.getDefaultTtl()).toNanos();
+
+        // Must wrap the response before NettyWriteResponseFilter captures it
+        return new OrderedGatewayFilter((exchange, chain) -> {
+            ServerHttpRequest request = exchange.getRequest();
+            if (request.getMethod() != HttpMethod.GET) {
+                return chain.filter(exchange);
+            }
+            return RequestKeys.user(exchange).flatMap(user -> {
+                String key = RequestKeys.routeId(exchange) + "|" + user + "|" + RequestKeys.pathAndQuery(request);
+                String scope = scopeOf(request, user);
+                boolean bypass = request.getHeaders().getCacheControl() != null
+                        && request.getHeaders().getCacheControl().contains("no-cache");
+
+                CachedResponse cached = bypass ? null : store.get(key, scope);
+                if (cached != null) {
+                    return serveCached(exchange, cached);
+                }
+                store.recordMiss();
+                return fetchAndStore(exchange, chain, key, scope, ttlNanos);
+            });
+        }, NettyWriteResponseFilter.WRITE_RESPONSE_FILTER_ORDER - 1);
+    }
+
+    private Mono<Void> serveCached(ServerWebExchange exchange, CachedResponse cached) {
+        ServerHttpResponse response = exchange.getResponse();
+        HttpHeaders headers = response.getHeaders();
+        headers.setETag(cached.getEtag());
+        headers.setCacheControl(CacheControl.noCache().cachePrivate());
+        headers.set(CACHE_STATUS_HEADER, "HIT");
+
+        if (ETags.matches(exchange.getRequest().getHeaders(), cached.getEtag())) {
+            store.recordNotModified();
+            response.setStatusCode(HttpStatus.NOT_MODIFIED);
+            return response.setComplete();
+        }
+        store.recordHit();
+        response.setStatusCode(cached.getStatus());
+        if (cached.getContentType() != null) {
+            headers.setContentType(cached.getContentType());
+        }
+        return BufferingResponseDecorator.writeFully(response, cached.getBody());
+    }
+
+    private Mono<Void> fetchAndStore(ServerWebExchange exchange, GatewayFilterChain chain,
+                                     String key, String scope, long ttlNanos) {
+        long generation = store.generation(scope);
+        ServerHttpResponse original = exchange.getResponse();
+        BufferingResponseDecorator decorated = new BufferingResponseDecorator(original, body -> {
+            HttpHeaders headers = original.getHeaders();
+            headers.set(CACHE_STATUS_HEADER, "MISS");
+            if (original.getStatusCode() != HttpStatus.OK) {
+                return BufferingResponseDecorator.writeFully(original, body);
+            }
+
+            String etag = ETags.strong(body);
+            headers.setETag(etag);
+            headers.setCacheControl(CacheControl.noCache().cachePrivate());
+            if (body.length <= properties.getMaxBodyBytes()) {
+                store.put(key, scope, generation,
+                        new CachedResponse(HttpStatus.OK, headers.getContentType(), body, etag), ttlNanos);
+            }
+            if (ETags.matches(exchange.getRequest().getHeaders(), etag)) {
+                original.setStatusCode(HttpStatus.NOT_MODIFIED);
+                headers.remove(HttpHeaders.CONTENT_LENGTH);
+                headers.remove(HttpHeaders.TRANSFER_ENCODING);
+                return original.setComplete();
+            }
+            return BufferingResponseDecorator.writeFully(original, body);
+        });
+        return chain.filter(exchange.mutate().response(decorated).build());
+    }
+
+    // Analytics paths carry the subject user id; anything else is scoped to the caller
+    static String scopeOf(ServerHttpRequest request, String user) {
+        Matcher matcher = USER_SEGMENT.matcher(request.getURI().getRawPath());
+        return matcher.find() ? matcher.group(1) : user;
+    }
+
+    public static class Config {
+        private Duration ttl;
+
+        public Duration getTtl() { return ttl; }
+        public void setTtl(Duration ttl) { this.ttl = ttl; }
+    }
+}
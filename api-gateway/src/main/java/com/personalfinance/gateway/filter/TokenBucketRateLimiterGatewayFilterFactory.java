@@ -0,0 +1,128 @@
+package com.personalfinance.gateway.filter;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+
+import com.personalfinance.gateway.config.RateLimitProperties;
+import com.personalfinance.gateway.ratelimit.TokenBucketStore;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Per-route, per-user token bucket. Limits come from the route's filter args and
+ * fall back to {@code gateway.rate-limit.default-*}. Every response carries
+ * X-RateLimit-Limit/Remaining/Reset; rejected requests get 429 with Retry-After.
+ * Endpoints the gateway serves itself, which no route filter sees, charge
+ * their own bucket through {@link #admit}. The filter is ordered ahead of
+ * the ResponseCache and RequestCoalescing filters, wherever it is listed, so
+ * requests they answer without going upstream are charged too.
+ */
+@Component
+public class TokenBucketRateLimiterGatewayFilterFactory
+        extends AbstractGatewayFilterFactory<TokenBucketRateLimiterGatewayFilterFactory.Config> {
+
+    public static final String LIMIT_HEADER = "X-RateLimit-Limit";
+    public static final String REMAINING_HEADER = "X-RateLimit-Remaining";
+    public static final String RESET_HEADER = "X-RateLimit-Reset";
+
+    // Below ResponseCache and RequestCoalescing, which sit just under NettyWriteResponseFilter
+    public static final int ORDER = NettyWriteResponseFilter.WRITE_RESPONSE_FILTER_ORDER - 2;
+
+    // Retries re-run the route filters; a request is only charged on its first pass
+    private static final String CHARGED_ATTR = TokenBucketRateLimiterGatewayFilterFactory.class.getName() + ".charged";
+
+    private static final Logger log = LoggerFactory.getLogger(TokenBucketRateLimiterGatewayFilterFactory.class);
+
+    private final TokenBucketStore store;
+    private final RateLimitProperties properties;
+
+    public TokenBucketRateLimiterGatewayFilterFactory(TokenBucketStore store, RateLimitProperties properties) {
+        super(Config.class);
+        this.store = store;
+        this.properties = properties;
+    }
+
+    @Override
+    public List<String> shortcutFieldOrder() {
+        return Arrays.asList("replenishRate", "burstCapacity", "requestedTokens");
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        int replenishRate = config.getReplenishRate() > 0 ? config.getReplenishRate() : properties.getDefaultReplenishRate();
+        int burstCapacity = config.getBurstCapacity() > 0 ? config.getBurstCapacity() : properties.getDefaultBurstCapacity();
+        int requestedTokens = Math.max(1, config.getRequestedTokens());
+
+        return new OrderedGatewayFilter((exchange, chain) -> {
+            if (exchange.getAttributes().putIfAbsent(CHARGED_ATTR, Boolean.TRUE) != null) {
+                return chain.filter(exchange);
+            }
+            return RequestKeys.user(exchange).flatMap(user -> rateLimit(exchange, chain, user, replenishRate, burstCapacity, requestedTokens));
+        }, ORDER);
+    }
+
+    private Mono<Void> rateLimit(ServerWebExchange exchange, GatewayFilterChain chain, String user,
+                                 int replenishRate, int burstCapacity, int requestedTokens) {
+        if (admit(exchange, RequestKeys.routeId(exchange), user, replenishRate, burstCapacity, requestedTokens)) {
+            return chain.filter(exchange);
+        }
+        return exchange.getResponse().setComplete();
+    }
+
+    /**
+     * Charges the user's bucket for {@code bucket} and sets the rate-limit
+     * headers on the response; when it is empty, also sets 429 and
+     * Retry-After and returns false, and the caller writes no body.
+     */
+    public boolean admit(ServerWebExchange exchange, String bucket, String user,
+                         int replenishRate, int burstCapacity, int requestedTokens) {
+        TokenBucketStore.Result result = store.tryAcquire(bucket + "|" + user, replenishRate, burstCapacity, requestedTokens);
+
+        ServerHttpResponse response = exchange.getResponse();
+        HttpHeaders headers = response.getHeaders();
+        headers.set(LIMIT_HEADER, String.valueOf(burstCapacity));
+        headers.set(REMAINING_HEADER, String.valueOf(result.getRemaining()));
+        headers.set(RESET_HEADER, String.valueOf(toSeconds(result.getResetNanos())));
+
+        if (result.isAllowed()) {
+            return true;
+        }
+        log.debug("[RateLimiter] Rejected {} on {}", user, bucket);
+        headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, toSeconds(result.getRetryAfterNanos()))));
+        response.setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+        return false;
+    }
+
+    private static long toSeconds(long nanos) {
+        return (nanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1);
+    }
+
+    public static class Config {
+        private int replenishRate;
+        private int burstCapacity;
+        private int requestedTokens = 1;
+
+        public int getReplenishRate() { return replenishRate; }
+        public void setReplenishRate(int replenishRate) { this.replenishRate = replenishRate; }
+
+        public int getBurstCapacity() { return burstCapacity; }
+        public void setBurstCapacity(int burstCapacity) { this.burstCapacity = burstCapacity; }
+
+        public int getRequestedTokens() { return requestedTokens; }
+        public void setRequestedTokens(int requestedTokens) { this.requestedTokens = requestedTokens; }
+    }
+}
@@ -0,0 +1,129 @@
+package com.personalfinance.gateway.ratelimit;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.stereotype.Component;
+
+import com.personalfinance.gateway.config.RateLimitProperties;
+
+/**
+ * In-memory token buckets keyed by route and user. Each bucket is a single
+ * {@link AtomicLong} holding its "theoretical arrival time" (the GCRA form of a
+ * token bucket), so acquiring a token is one CAS with no locks, and allocates
+ * nothing beyond the short-lived {@link Result}.
+ * Buckets are spread over independent shards, and idle buckets are swept out of
+ * a shard lazily by whichever request first notices the shard is due.
+ */
+@Component
+public class TokenBucketStore {
+
+    private final Shard[] shards;
+    private final int shardMask;
+    private final long idleTtlNanos;
+
+    public TokenBucketStore(RateLimitProperties properties) {
+        int shardCount = Integer.highestOneBit(Math.max(1, properties.getShards() - 1) << 1);
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard();
+        }
+        this.shardMask = shardCount - 1;
+        this.idleTtlNanos = properties.getIdleTtl().toNanos();
+    }
+
+    public Result tryAcquire(String key, int replenishRate, int burstCapacity, int requestedTokens) {
+        long now = System.nanoTime();
+        Shard shard = shardFor(key);
+        shard.sweepIfDue(now, idleTtlNanos);
+
+        Bucket bucket = shard.buckets.computeIfAbsent(key, k -> new Bucket(now));
+        bucket.lastSeen = now;
+
+        long emissionInterval = TimeUnit.SECONDS.toNanos(1) / replenishRate;
+        long tolerance = emissionInterval * burstCapacity;
+        long increment = emissionInterval * requestedTokens;
+
+        while (true) {
+            long tat = bucket.tat.get();
+            long newTat = Math.max(tat, now) + increment;
+            long backlog = newTat - now;
+            if (backlog > tolerance) {
+                long retryAfter = backlog - tolerance;
+                long remaining = Math.max(0, (tolerance - (Math.max(tat, now) - now)) / emissionInterval);
+                return new Result(false, remaining, Math.max(tat, now) - now, retryAfter);
+            }
+            if (bucket.tat.compareAndSet(tat, newTat)) {
+                return new Result(true, (tolerance - backlog) / emissionInterval, backlog, 0);
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Shard shard : shards) {
+            size += shard.buckets.size();
+        }
+        return size;
+    }
+
+    private Shard shardFor(String key) {
+        int h = key.hashCode();
+        return shards[(h ^ (h >>> 16)) & shardMask];
+    }
+
+    private static final class Bucket {
+        final AtomicLong tat;
+        volatile long lastSeen;
+
+        Bucket(long now) {
+            this.tat = new AtomicLong(now);
+            this.lastSeen = now;
+        }
+    }
+
+    private static final class Shard {
+        final ConcurrentHashMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+        final AtomicLong nextSweep = new AtomicLong(System.nanoTime());
+
+        void sweepIfDue(long now, long idleTtlNanos) {
+            long due = nextSweep.get();
+            if (now - due < 0 || !nextSweep.compareAndSet(due, now + idleTtlNanos)) {
+                return;
+            }
+            Iterator<Map.Entry<String, Bucket>> it = buckets.entrySet().iterator();
+            while (it.hasNext()) {
+                if (now - it.next().getValue().lastSeen > idleTtlNanos) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Outcome of a token request. Durations are in nanoseconds: {@code resetNanos}
+     * is the time until the bucket is full again and {@code retryAfterNanos} the
+     * time until a rejected request would be admitted.
+     */
+    public static final class Result {
+        private final boolean allowed;
+        private final long remaining;
+        private final long resetNanos;
+        private final long retryAfterNanos;
+
+        Result(boolean allowed, long remaining, long resetNanos, long retryAfterNanos) {
+            this.allowed = allowed;
+            this.remaining = remaining;
+            this.resetNanos = resetNanos;
+            this.retryAfterNanos = retryAfterNanos;
+        }
+
+        public boolean isAllowed() { return allowed; }
+        public long getRemaining() { return remaining; }
+        public long getResetNanos() { return resetNanos; }
+        public long getRetryAfterNanos() { return retryAfterNanos; }
+    }
+}
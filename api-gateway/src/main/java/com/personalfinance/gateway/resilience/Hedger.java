@@ -0,0 +1,72 @@
+package com.personalfinance.gateway.resilience;
+
+import java.time.Duration;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.springframework.stereotype.Component;
+
+import com.personalfinance.gateway.config.ResilienceProperties;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Mono;
+
+/**
+ * Hedged reads for idempotent calls the gateway makes itself. If the first
+ * attempt hasn't answered by the call's observed p95, a second identical
+ * attempt is started and whichever answers first wins; the loser is
+ * cancelled. Hedges are drawn from a {@link RetryBudget} so they never add
+ * more than {@code hedging-budget-ratio} extra load.
+ */
+@Component
+public class Hedger {
+
+    private final ResilienceProperties properties;
+    private final RetryBudget budget;
+    private final ConcurrentHashMap<String, LatencyTracker> trackers = new ConcurrentHashMap<>();
+
+    private final Counter hedged;
+    private final Counter hedgeWins;
+
+    public Hedger(ResilienceProperties properties, MeterRegistry registry) {
+        this.properties = properties;
+        this.budget = new RetryBudget(properties.getHedgingBudgetRatio(), 1);
+        this.hedged = Counter.builder("gateway.hedging.requests").tag("attempt", "hedge").register(registry);
+        this.hedgeWins = Counter.builder("gateway.hedging.requests").tag("attempt", "hedge_won").register(registry);
+    }
+
+    public <T> Mono<T> call(String key, Supplier<Mono<T>> attempt) {
+        LatencyTracker tracker = trackers.computeIfAbsent(key, k -> new LatencyTracker(properties.getLatencyWindow()));
+        Mono<T> primary = timed(tracker, attempt);
+        if (!properties.isHedgingEnabled()) {
+            return primary;
+        }
+        budget.recordRequest();
+        long p95 = tracker.p95Nanos(properties.getHedgingMinSamples());
+        if (p95 <= 0) {
+            return primary;
+        }
+        Mono<T> hedge = Mono.delay(Duration.ofNanos(p95))
+                .filter(tick -> budget.tryWithdraw())
+                .flatMap(tick -> {
+                    hedged.increment();
+                    return timed(tracker, attempt).doOnNext(value -> hedgeWins.increment());
+                });
+        // firstWithValue ignores an empty hedge (budget exhausted) and waits for the primary;
+        // if nothing succeeds, surface the primary's own error rather than the aggregate,
+        // which carries each source's error in order as a composite cause
+        return Mono.firstWithValue(primary, hedge)
+                .onErrorMap(NoSuchElementException.class,
+                        e -> e.getCause() != null ? Exceptions.unwrapMultiple(e.getCause()).get(0) : e);
+    }
+
+    private static <T> Mono<T> timed(LatencyTracker tracker, Supplier<Mono<T>> attempt) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return attempt.get().doOnSuccess(value -> tracker.record(System.nanoTime() - start));
+        });
+    }
+}
@@ -0,0 +1,49 @@
+package com.personalfinance.gateway.resilience;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Sliding window of the most recent latencies for one upstream call, used to
+ * decide when a request has become slow enough to hedge. The percentile is
+ * recomputed every {@code window / 8} samples rather than on every read.
+ */
+public class LatencyTracker {
+
+    private final AtomicLongArray samples;
+    private final AtomicLong count = new AtomicLong();
+    private final int recomputeEvery;
+    private volatile long cachedP95Nanos = -1;
+
+    public LatencyTracker(int window) {
+        this.samples = new AtomicLongArray(window);
+        this.recomputeEvery = Math.max(1, window / 8);
+    }
+
+    public void record(long nanos) {
+        long n = count.getAndIncrement();
+        samples.set((int) (n % samples.length()), nanos);
+        if (n % recomputeEvery == 0) {
+            cachedP95Nanos = percentile(0.95);
+        }
+    }
+
+    // -1 until enough samples have been seen to trust the estimate
+    public long p95Nanos(int minSamples) {
+        return count.get() < minSamples ? -1 : cachedP95Nanos;
+    }
+
+    private long percentile(double p) {
+        int filled = (int) Math.min(count.get(), samples.length());
+        if (filled == 0) {
+            return -1;
+        }
+        long[] copy = new long[filled];
+        for (int i = 0; i < filled; i++) {
+            copy[i] = samples.get(i);
+        }
+        Arrays.sort(copy);
+        return copy[Math.min(filled - 1, (int) Math.ceil(p * filled) - 1)];
+    }
+}
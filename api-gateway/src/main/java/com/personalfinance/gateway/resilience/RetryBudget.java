@@ -0,0 +1,54 @@
+package com.personalfinance.gateway.resilience;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caps extra upstream attempts (retries, hedges) to a fraction of real traffic.
+ * Every request deposits {@code ratio} of a token and every extra attempt
+ * withdraws a whole one, so a struggling service sees at most
+ * (1 + ratio) times its normal load. A small per-second allowance keeps
+ * low-traffic routes able to retry at all.
+ */
+public class RetryBudget {
+
+    private static final long SCALE = 1000;
+
+    private final long depositPerRequest;
+    private final long minPerSecond;
+    private final long maxBalance;
+    private final AtomicLong balance = new AtomicLong();
+    private final AtomicLong lastSecond = new AtomicLong();
+
+    public RetryBudget(double ratio, int minPerSecond) {
+        this.depositPerRequest = Math.round(ratio * SCALE);
+        this.minPerSecond = minPerSecond * SCALE;
+        // Don't let a long quiet spell bank an unbounded burst of retries
+        this.maxBalance = Math.max(this.minPerSecond, 100 * SCALE);
+    }
+
+    public void recordRequest() {
+        add(depositPerRequest);
+    }
+
+    public boolean tryWithdraw() {
+        long second = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+        long last = lastSecond.get();
+        if (second != last && lastSecond.compareAndSet(last, second)) {
+            add(minPerSecond);
+        }
+        while (true) {
+            long current = balance.get();
+            if (current < SCALE) {
+                return false;
+            }
+            if (balance.compareAndSet(current, current - SCALE)) {
+                return true;
+            }
+        }
+    }
+
+    private void add(long amount) {
+        balance.accumulateAndGet(amount, (current, delta) -> Math.min(maxBalance, current + delta));
+    }
+}
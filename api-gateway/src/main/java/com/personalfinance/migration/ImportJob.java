@@ -0,0 +1,107 @@
+package com.personalfinance.migration;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress of one streaming import. Counters are updated from the parsing
+ * and upstream-write threads while progress requests read them, so they are
+ * atomics; the snapshot is only roughly consistent across sections, which is
+ * all a progress bar needs.
+ */
+final class ImportJob {
+
+    enum Status { RUNNING, COMPLETED, FAILED }
+
+    static final class Counters {
+        // Elements read from the payload
+        final AtomicLong parsed = new AtomicLong();
+        // Elements that could not be mapped to a valid record
+        final AtomicLong rejected = new AtomicLong();
+        // Elements belonging to a different legacy user
+        final AtomicLong skipped = new AtomicLong();
+        final AtomicLong created = new AtomicLong();
+        // Transactions already imported by an earlier run
+        final AtomicLong replayed = new AtomicLong();
+        // Records in batches the owning service did not accept
+        final AtomicLong failed = new AtomicLong();
+
+        Map<String, Long> snapshot() {
+            Map<String, Long> snapshot = new LinkedHashMap<>();
+            snapshot.put("parsed", parsed.get());
+            snapshot.put("rejected", rejected.get());
+            snapshot.put("skipped", skipped.get());
+            snapshot.put("created", created.get());
+            snapshot.put("replayed", replayed.get());
+            snapshot.put("failed", failed.get());
+            return snapshot;
+        }
+    }
+
+    private static final int MAX_ERRORS = 20;
+
+    final String id;
+    final Long userId;
+    final Instant startedAt = Instant.now();
+    final AtomicLong bytesRead = new AtomicLong();
+    private final Map<ImportPayloadParser.Section, Counters> counters = new EnumMap<>(ImportPayloadParser.Section.class);
+    private final List<String> errors = new ArrayList<>();
+    private volatile Status status = Status.RUNNING;
+    private volatile Instant finishedAt;
+
+    ImportJob(String id, Long userId) {
+        this.id = id;
+        this.userId = userId;
+        for (ImportPayloadParser.Section section : ImportPayloadParser.Section.values()) {
+            counters.put(section, new Counters());
+        }
+    }
+
+    Counters counters(ImportPayloadParser.Section section) {
+        return counters.get(section);
+    }
+
+    // Keeps the first few so a bad payload can't grow the job without bound
+    void error(String message) {
+        synchronized (errors) {
+            if (errors.size() < MAX_ERRORS) {
+                errors.add(message);
+            }
+        }
+    }
+
+    void finish(Status status) {
+        this.finishedAt = Instant.now();
+        this.status = status;
+    }
+
+    Status status() {
+        return status;
+    }
+
+    Instant finishedAt() {
+        return finishedAt;
+    }
+
+    Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("jobId", id);
+        snapshot.put("userId", userId);
+        snapshot.put("status", status);
+        snapshot.put("startedAt", startedAt.toString());
+        snapshot.put("finishedAt", finishedAt != null ? finishedAt.toString() : null);
+        snapshot.put("bytesRead", bytesRead.get());
+        for (ImportPayloadParser.Section section : ImportPayloadParser.Section.values()) {
+            snapshot.put(section.field, counters.get(section).snapshot());
+        }
+        synchronized (errors) {
+            snapshot.put("errors", new ArrayList<>(errors));
+        }
+        return snapshot;
+    }
+}
@@ -0,0 +1,73 @@
+package com.personalfinance.migration;
+
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.personalfinance.gateway.config.MigrationProperties;
+
+/**
+ * In-memory index of import jobs so progress can be polled while an upload
+ * is still streaming. Finished jobs are kept for the configured retention
+ * and pruned whenever a new job starts.
+ */
+@Component
+class ImportJobRegistry {
+
+    private static final Pattern JOB_ID = Pattern.compile("[A-Za-z0-9-]{1,64}");
+
+    private final Map<String, ImportJob> jobs = new ConcurrentHashMap<>();
+    private final MigrationProperties properties;
+
+    ImportJobRegistry(MigrationProperties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * A client that wants to poll progress during the upload picks the job id
+     * itself, since the response only arrives once the import has finished.
+     */
+    ImportJob start(String requestedId, Long userId) {
+        prune();
+        if (requestedId != null && !JOB_ID.matcher(requestedId).matches()) {
+            throw new IllegalArgumentException("jobId must be 1-64 letters, digits or dashes");
+        }
+        synchronized (jobs) {
+            long running = jobs.values().stream().filter(job -> job.status() == ImportJob.Status.RUNNING).count();
+            if (running >= properties.getMaxConcurrentImports()) {
+                throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "Too many imports in progress");
+            }
+            String id = requestedId != null ? requestedId : UUID.randomUUID().toString();
+            ImportJob job = new ImportJob(id, userId);
+            if (jobs.putIfAbsent(id, job) != null) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT, "Import job " + id + " already exists");
+            }
+            return job;
+        }
+    }
+
+    ImportJob get(String id) {
+        return jobs.get(id);
+    }
+
+    List<ImportJob> forUser(Long userId) {
+        return jobs.values().stream()
+                .filter(job -> job.userId.equals(userId))
+                .sorted(Comparator.comparing((ImportJob job) -> job.startedAt).reversed())
+                .collect(Collectors.toList());
+    }
+
+    private void prune() {
+        Instant cutoff = Instant.now().minus(properties.getJobRetention());
+        jobs.values().removeIf(job -> job.finishedAt() != null && job.finishedAt().isBefore(cutoff));
+    }
+}
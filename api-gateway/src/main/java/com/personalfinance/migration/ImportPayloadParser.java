@@ -0,0 +1,189 @@
+package com.personalfinance.migration;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.core.io.JsonEOFException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+/**
+ * Incremental parser for the legacy localStorage export,
+ * {"transactions":[...],"budgets":[...],"goals":[...],...}. Bytes are fed as
+ * they arrive and every complete element of an imported section comes out
+ * as its own small tree, so memory is bounded by the largest element rather
+ * than by the payload. Other sections (users, settings) are skipped token by
+ * token without being built. One instance per payload; not thread-safe.
+ */
+final class ImportPayloadParser {
+
+    enum Section {
+        TRANSACTIONS("transactions"), BUDGETS("budgets"), GOALS("goals");
+
+        final String field;
+
+        Section(String field) {
+            this.field = field;
+        }
+
+        static Section of(String field) {
+            for (Section section : values()) {
+                if (section.field.equals(field)) {
+                    return section;
+                }
+            }
+            return null;
+        }
+    }
+
+    static final class Record {
+        final Section section;
+        // Null if the element was not an object; the caller counts it as rejected
+        final JsonNode node;
+
+        Record(Section section, JsonNode node) {
+            this.section = section;
+            this.node = node;
+        }
+    }
+
+    private final ObjectMapper mapper;
+    private final JsonParser parser;
+    private final ByteArrayFeeder feeder;
+    private final int maxRecordBytes;
+
+    // Containers open after the last token: 1 inside the top-level object, 2 inside a section array
+    private int depth;
+    private boolean started;
+    private String field;
+    // The array being imported, or null while skipping
+    private Section section;
+    private TokenBuffer record;
+    private long recordStart;
+
+    ImportPayloadParser(ObjectMapper mapper, int maxRecordBytes) {
+        this.mapper = mapper;
+        try {
+            this.parser = mapper.getFactory().createNonBlockingByteArrayParser();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+        this.maxRecordBytes = maxRecordBytes;
+    }
+
+    // Returns the records completed by this chunk
+    List<Record> feed(byte[] bytes) {
+        try {
+            feeder.feedInput(bytes, 0, bytes.length);
+        } catch (IOException e) {
+            throw malformed(e);
+        }
+        return drain();
+    }
+
+    // Called once the body has ended; fails if the payload was cut short
+    List<Record> finish() {
+        feeder.endOfInput();
+        List<Record> records = drain();
+        if (depth != 0 || !started) {
+            throw truncated(null);
+        }
+        return records;
+    }
+
+    private List<Record> drain() {
+        List<Record> records = new ArrayList<>();
+        try {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+                if (record != null) {
+                    copy(token, records);
+                    continue;
+                }
+                switch (token) {
+                    case START_OBJECT:
+                    case START_ARRAY:
+                        depth++;
+                        if (depth == 1) {
+                            if (token != JsonToken.START_OBJECT || started) {
+                                throw new IllegalArgumentException("Expected a single JSON object at the top level");
+                            }
+                            started = true;
+                        }
+                        if (depth == 2) {
+                            section = token == JsonToken.START_ARRAY ? Section.of(field) : null;
+                        } else if (depth == 3 && section != null) {
+                            if (token == JsonToken.START_OBJECT) {
+                                startRecord();
+                            } else {
+                                records.add(new Record(section, null));
+                            }
+                        }
+                        break;
+                    case END_OBJECT:
+                    case END_ARRAY:
+                        depth--;
+                        if (depth == 1) {
+                            section = null;
+                        }
+                        break;
+                    case FIELD_NAME:
+                        if (depth == 1) {
+                            field = parser.getCurrentName();
+                        }
+                        break;
+                    default:
+                        // A scalar where an element should be
+                        if (depth == 2 && section != null) {
+                            records.add(new Record(section, null));
+                        }
+                }
+            }
+        } catch (JsonEOFException e) {
+            // Only raised once the end of input is known, inside an open container
+            throw truncated(e);
+        } catch (IOException e) {
+            throw malformed(e);
+        }
+        return records;
+    }
+
+    private void startRecord() throws IOException {
+        record = new TokenBuffer(parser);
+        recordStart = parser.getTokenLocation().getByteOffset();
+        record.copyCurrentEvent(parser);
+    }
+
+    private void copy(JsonToken token, List<Record> records) throws IOException {
+        if (parser.getCurrentLocation().getByteOffset() - recordStart > maxRecordBytes) {
+            throw new IllegalArgumentException("A " + section.field + " element is larger than " + maxRecordBytes + " bytes");
+        }
+        record.copyCurrentEvent(parser);
+        if (token.isStructStart()) {
+            depth++;
+        } else if (token.isStructEnd()) {
+            depth--;
+            if (depth == 2) {
+                try (JsonParser buffered = record.asParser(mapper)) {
+                    records.add(new Record(section, mapper.readTree(buffered)));
+                }
+                record = null;
+            }
+        }
+    }
+
+    private static IllegalArgumentException truncated(IOException e) {
+        return new IllegalArgumentException("Payload ended before the JSON was complete", e);
+    }
+
+    private IllegalArgumentException malformed(IOException e) {
+        return new IllegalArgumentException("Malformed JSON at byte " + parser.getCurrentLocation().getByteOffset()
+                + ": " + e.getMessage(), e);
+    }
+}
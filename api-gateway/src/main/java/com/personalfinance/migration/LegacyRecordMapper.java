@@ -0,0 +1,187 @@
+package com.personalfinance.migration;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Turns elements of the legacy localStorage export into create requests for
+ * the owning services. The browser app was lenient (display-name categories,
+ * signed amounts, dates with times), so values are normalised here; elements
+ * that can't be made valid map to null and are counted as rejected rather
+ * than failing a whole batch upstream.
+ */
+final class LegacyRecordMapper {
+
+    // Mirrors transaction-service's Transaction.Category
+    private static final Set<String> TRANSACTION_CATEGORIES = Set.of(
+            "SALARY", "BONUS", "INVESTMENT", "BUSINESS", "OTHER_INCOME",
+            "GROCERIES", "DINING", "TRANSPORTATION", "UTILITIES", "RENT",
+            "ENTERTAINMENT", "HEALTHCARE", "SHOPPING", "EDUCATION",
+            "TRAVEL", "INSURANCE", "CHARITY", "OTHER_EXPENSE");
+    private static final Set<String> BUDGET_PERIODS = Set.of("WEEKLY", "MONTHLY", "YEARLY");
+
+    private LegacyRecordMapper() {}
+
+    /**
+     * The idempotency key makes re-running an import safe: it is derived from
+     * the legacy id when there is one, otherwise the caller's fallback.
+     */
+    static Map<String, Object> transaction(JsonNode node, Long userId, String fallbackKey) {
+        BigDecimal signed = decimal(node.get("amount"));
+        if (signed == null || signed.signum() == 0) {
+            return null;
+        }
+        String type = upper(text(node, "type"));
+        if (type == null) {
+            type = signed.signum() < 0 ? "EXPENSE" : null;
+        }
+        if (!"INCOME".equals(type) && !"EXPENSE".equals(type)) {
+            return null;
+        }
+        LocalDate date = date(text(node, "transactionDate") != null ? text(node, "transactionDate") : text(node, "date"));
+        if (date == null) {
+            return null;
+        }
+        String category = constant(text(node, "category"));
+        if (category == null || !TRANSACTION_CATEGORIES.contains(category)) {
+            category = "INCOME".equals(type) ? "OTHER_INCOME" : "OTHER_EXPENSE";
+        }
+        String description = firstText(node, "description", "name", "merchant");
+
+        Map<String, Object> request = new LinkedHashMap<>();
+        request.put("userId", userId);
+        request.put("description", truncate(description != null ? description : "Imported transaction", 100));
+        request.put("amount", signed.abs().setScale(2, RoundingMode.HALF_UP));
+        request.put("type", type);
+        request.put("category", category);
+        request.put("transactionDate", date.toString());
+        request.put("merchant", truncate(text(node, "merchant"), 100));
+        request.put("location", truncate(text(node, "location"), 100));
+        request.put("notes", truncate(text(node, "notes"), 500));
+        String legacyId = text(node, "id");
+        request.put("idempotencyKey", legacyId != null && legacyId.length() <= 100
+                ? "import:" + userId + ":" + legacyId
+                : fallbackKey);
+        return request;
+    }
+
+    static Map<String, Object> budget(JsonNode node, Long userId) {
+        BigDecimal amount = decimal(node.get("amount"));
+        String category = text(node, "category");
+        LocalDate startDate = date(text(node, "startDate"));
+        LocalDate endDate = date(text(node, "endDate"));
+        String period = node.hasNonNull("period") ? upper(text(node, "period")) : "MONTHLY";
+        if (amount == null || amount.signum() <= 0 || category == null || startDate == null || endDate == null
+                || period == null || !BUDGET_PERIODS.contains(period)) {
+            return null;
+        }
+        String name = text(node, "name");
+
+        Map<String, Object> request = new LinkedHashMap<>();
+        request.put("userId", userId);
+        request.put("name", truncate(name != null ? name : category, 100));
+        request.put("category", truncate(category, 50));
+        request.put("amount", amount.setScale(2, RoundingMode.HALF_UP));
+        request.put("period", period);
+        request.put("startDate", startDate.toString());
+        request.put("endDate", endDate.toString());
+        return request;
+    }
+
+    static Map<String, Object> goal(JsonNode node, Long userId) {
+        String name = text(node, "name");
+        BigDecimal target = decimal(node.get("targetAmount"));
+        if (name == null || target == null || target.signum() <= 0) {
+            return null;
+        }
+        BigDecimal current = decimal(node.get("currentAmount"));
+        LocalDate dueDate = date(text(node, "dueDate"));
+
+        Map<String, Object> request = new LinkedHashMap<>();
+        request.put("userId", userId);
+        request.put("name", truncate(name, 255));
+        request.put("targetAmount", target.setScale(2, RoundingMode.HALF_UP));
+        request.put("currentAmount", current != null ? current.max(BigDecimal.ZERO).setScale(2, RoundingMode.HALF_UP) : BigDecimal.ZERO);
+        request.put("dueDate", dueDate != null ? dueDate.toString() : null);
+        request.put("description", truncate(text(node, "description"), 255));
+        request.put("priority", text(node, "priority"));
+        request.put("category", truncate(text(node, "category"), 255));
+        return request;
+    }
+
+    // The legacy owner, so a payload holding several browser users can be narrowed to one
+    static String legacyUserId(JsonNode node) {
+        return text(node, "userId");
+    }
+
+    private static String text(JsonNode node, String field) {
+        JsonNode value = node.get(field);
+        if (value == null || value.isNull() || value.isContainerNode()) {
+            return null;
+        }
+        String text = value.asText().trim();
+        return text.isEmpty() ? null : text;
+    }
+
+    private static String firstText(JsonNode node, String... fields) {
+        for (String field : fields) {
+            String text = text(node, field);
+            if (text != null) {
+                return text;
+            }
+        }
+        return null;
+    }
+
+    // Numbers may have been stored as strings
+    private static BigDecimal decimal(JsonNode value) {
+        if (value == null || value.isNull()) {
+            return null;
+        }
+        if (value.isNumber()) {
+            return value.decimalValue();
+        }
+        try {
+            return value.isTextual() ? new BigDecimal(value.asText().trim()) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // "2024-03-01" or an ISO timestamp starting with one
+    private static LocalDate date(String text) {
+        if (text == null || text.length() < 10) {
+            return null;
+        }
+        try {
+            return LocalDate.parse(text.substring(0, 10));
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private static String upper(String text) {
+        return text == null ? null : text.toUpperCase(Locale.ROOT);
+    }
+
+    // "Food & Dining" -> "FOOD_DINING"
+    private static String constant(String text) {
+        if (text == null) {
+            return null;
+        }
+        String constant = text.toUpperCase(Locale.ROOT).replaceAll("[^A-Z0-9]+", "_").replaceAll("^_+|_+$", "");
+        return constant.isEmpty() ? null : constant;
+    }
+
+    private static String truncate(String text, int max) {
+        return text == null || text.length() <= max ? text : text.substring(0, max);
+    }
+}
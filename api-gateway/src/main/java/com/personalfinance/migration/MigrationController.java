@@ -1,51 +1,165 @@
 package com.personalfinance.migration;
 
 import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 @RestController
 @RequestMapping("/api/migration")
 @CrossOrigin(origins = "*")
 public class MigrationController {
+    private static final Logger log = LoggerFactory.getLogger(MigrationController.class);
+
+    private final StreamingImporter importer;
+    private final ImportJobRegistry jobs;
+    private final UserDataExporter exporter;
+    private final UserDataPurger purger;
 
+    MigrationController(StreamingImporter importer, ImportJobRegistry jobs, UserDataExporter exporter,
+                        UserDataPurger purger) {
+        this.importer = importer;
+        this.jobs = jobs;
+        this.exporter = exporter;
+        this.purger = purger;
+    }
+
+    /**
+     * Takes the legacy export as the raw request body and streams it into the
+     * services; the response is the finished job. Pass a jobId to poll
+     * progress from another request while the upload is running. Only the
+     * user themselves can import into their account.
+     */
     @PostMapping("/import-user-data")
-    public ResponseEntity<?> importUserData(@RequestBody Map<String, Object> request) {
-        try {
-            // TODO: Implement migration service
-            return ResponseEntity.ok(Map.of("message", "Migration feature coming soon"));
-        } catch (Exception e) {
-            return ResponseEntity.badRequest()
-                .body(Map.of("error", "Migration failed: " + e.getMessage()));
+    public Mono<ResponseEntity<?>> importUserData(
+            @RequestParam Long userId,
+            @RequestParam(required = false) String legacyUserId,
+            @RequestParam(required = false) String jobId,
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization,
+            @RequestBody Flux<DataBuffer> body) {
+        log.info("POST /api/migration/import-user-data called. userId: {}, jobId: {}", userId, jobId);
+        return requireCaller(userId, authorization)
+                .then(Mono.defer(() -> {
+                    ImportJob job;
+                    try {
+                        job = jobs.start(jobId, userId);
+                    } catch (IllegalArgumentException e) {
+                        return Mono.just(ResponseEntity.badRequest().body(Map.of("error", "Migration failed: " + e.getMessage())));
+                    }
+                    return importer.run(job, body, legacyUserId, authorization)
+                            .<ResponseEntity<?>>map(finished -> ResponseEntity.ok(finished.snapshot()))
+                            .onErrorResume(e -> Mono.just(ResponseEntity.badRequest()
+                                    .body(Map.of("error", "Migration failed: " + e.getMessage(), "job", job.snapshot()))));
+                }))
+                .onErrorResume(ResponseStatusException.class, e -> Mono.just(refused(e)));
+    }
+
+    // Someone else's job is reported as missing rather than forbidden, so ids can't be probed
+    @GetMapping("/import-jobs/{jobId}")
+    public Mono<ResponseEntity<?>> getImportJob(
+            @PathVariable String jobId,
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization) {
+        ImportJob job = jobs.get(jobId);
+        if (job == null) {
+            return Mono.just(ResponseEntity.notFound().build());
         }
+        return asCaller(job.userId, authorization, () -> ResponseEntity.ok(job.snapshot()))
+                .map(response -> response.getStatusCode() == HttpStatus.FORBIDDEN
+                        ? ResponseEntity.notFound().build()
+                        : response);
+    }
+
+    @GetMapping("/import-jobs")
+    public Mono<ResponseEntity<?>> getImportJobs(
+            @RequestParam Long userId,
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization) {
+        return asCaller(userId, authorization, () -> ResponseEntity.ok(
+                jobs.forUser(userId).stream().map(ImportJob::snapshot).collect(Collectors.toList())));
     }
 
+    // A ZIP of NDJSON entries, streamed as the services are read
     @GetMapping("/export-user-data/{userId}")
-    public ResponseEntity<?> exportUserData(@PathVariable Long userId) {
-        try {
-            // TODO: Implement export functionality
-            return ResponseEntity.ok(Map.of("message", "Export feature coming soon"));
-        } catch (Exception e) {
-            return ResponseEntity.badRequest()
-                .body(Map.of("error", "Export failed: " + e.getMessage()));
-        }
+    public Mono<ResponseEntity<Flux<DataBuffer>>> exportUserData(
+            @PathVariable Long userId,
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization) {
+        log.info("GET /api/migration/export-user-data/{} called", userId);
+        // The body is a stream, so a refusal is an error rather than a JSON entity
+        return requireCaller(userId, authorization).then(Mono.fromSupplier(() -> ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/zip"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename("user-" + userId + "-export.zip").build().toString())
+                .body(exporter.export(userId, authorization))));
     }
 
+    /**
+     * Starts deleting the caller's own data in every service and returns at
+     * once with the job's progress; calling it again while the purge runs
+     * just reports progress, and after a failure or restart resumes where it
+     * stopped.
+     */
     @PostMapping("/clear-user-data/{userId}")
-    public ResponseEntity<?> clearUserData(@PathVariable Long userId) {
-        try {
-            // TODO: Implement clear functionality
-            return ResponseEntity.ok(Map.of("message", "Clear feature coming soon"));
-        } catch (Exception e) {
-            return ResponseEntity.badRequest()
-                .body(Map.of("error", "Clear failed: " + e.getMessage()));
-        }
+    public Mono<ResponseEntity<?>> clearUserData(
+            @PathVariable Long userId,
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization) {
+        log.info("POST /api/migration/clear-user-data/{} called", userId);
+        return requireCaller(userId, authorization)
+                .then(Mono.defer(() -> purger.start(userId, authorization)))
+                .<ResponseEntity<?>>map(job -> ResponseEntity.accepted().body(job.snapshot()))
+                .onErrorResume(ResponseStatusException.class, e -> Mono.just(refused(e)))
+                .onErrorResume(e -> Mono.just(ResponseEntity.badRequest()
+                        .body(Map.of("error", "Clear failed: " + e.getMessage()))));
+    }
+
+    @GetMapping("/clear-user-data/{userId}")
+    public Mono<ResponseEntity<?>> getClearProgress(
+            @PathVariable Long userId,
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization) {
+        return requireCaller(userId, authorization)
+                .then(Mono.defer(() -> purger.progress(userId)))
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .defaultIfEmpty(ResponseEntity.notFound().build())
+                .onErrorResume(ResponseStatusException.class, e -> Mono.just(refused(e)));
+    }
+
+    // Runs the handler only when the token belongs to userId
+    private Mono<ResponseEntity<?>> asCaller(Long userId, String authorization, Supplier<ResponseEntity<?>> handler) {
+        return requireCaller(userId, authorization)
+                .then(Mono.<ResponseEntity<?>>fromSupplier(handler))
+                .onErrorResume(ResponseStatusException.class, e -> Mono.just(refused(e)));
+    }
+
+    private static ResponseEntity<?> refused(ResponseStatusException e) {
+        return ResponseEntity.status(e.getStatus()).body(Map.of("error", e.getReason()));
+    }
+
+    // Completes when the token belongs to userId, otherwise fails with the status to answer
+    private Mono<Void> requireCaller(Long userId, String authorization) {
+        return purger.isCaller(userId, authorization)
+                .onErrorMap(e -> new ResponseStatusException(HttpStatus.BAD_GATEWAY,
+                        "Could not verify user: " + UpstreamErrors.describe(e)))
+                .flatMap(caller -> caller
+                        ? Mono.<Void>empty()
+                        : Mono.error(new ResponseStatusException(HttpStatus.FORBIDDEN, "Can only access your own data")));
     }
 }
@@ -0,0 +1,61 @@
+package com.personalfinance.migration;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Optional;
+
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.personalfinance.gateway.config.MigrationProperties;
+
+/**
+ * One JSON file per user holding the latest purge snapshot. Files are
+ * replaced atomically, so a crash leaves either the previous checkpoint or
+ * the new one, never a torn file. Blocking; callers run it off the event
+ * loop.
+ */
+@Component
+class PurgeCheckpointStore {
+
+    private final ObjectMapper objectMapper;
+    private final Path directory;
+
+    PurgeCheckpointStore(ObjectMapper objectMapper, MigrationProperties properties) {
+        this.objectMapper = objectMapper;
+        this.directory = Paths.get(properties.getPurgeCheckpointDir());
+    }
+
+    void save(Long userId, Map<String, Object> snapshot) {
+        try {
+            Files.createDirectories(directory);
+            Path temp = directory.resolve("purge-" + userId + ".json.tmp");
+            objectMapper.writeValue(temp.toFile(), snapshot);
+            Files.move(temp, file(userId), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    Optional<JsonNode> load(Long userId) {
+        Path file = file(userId);
+        if (!Files.exists(file)) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(objectMapper.readTree(file.toFile()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Path file(Long userId) {
+        return directory.resolve("purge-" + userId + ".json");
+    }
+}
@@ -0,0 +1,117 @@
+package com.personalfinance.migration;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Progress of one user's purge, and the checkpoint it resumes from. The
+ * purge walks {@link #STEPS} in order; {@code step} is the first one not yet
+ * finished. Deletes are idempotent, so resuming a step part way just carries
+ * on deleting whatever is left of it.
+ */
+final class PurgeJob {
+
+    enum Status { RUNNING, COMPLETED, FAILED, INTERRUPTED }
+
+    enum Service { TRANSACTION, BUDGET, USER, SCHEDULED_PURCHASE }
+
+    static final class Step {
+        final String name;
+        final Service service;
+
+        Step(String name, Service service) {
+            this.name = name;
+            this.service = service;
+        }
+    }
+
+    // Scheduled purchases go first so nothing creates transactions behind the purge
+    static final List<Step> STEPS = List.of(
+            new Step("scheduled-purchases", Service.SCHEDULED_PURCHASE),
+            new Step("transactions", Service.TRANSACTION),
+            new Step("budgets", Service.BUDGET),
+            new Step("goal-likes", Service.USER),
+            new Step("goal-comments", Service.USER),
+            new Step("shared-goals", Service.USER),
+            new Step("chat-messages", Service.USER),
+            new Step("goals", Service.USER),
+            new Step("financial-data", Service.USER));
+
+    final Long userId;
+    private final Map<String, Long> deleted = new LinkedHashMap<>();
+    private volatile Status status = Status.RUNNING;
+    private volatile int step;
+    private volatile long chunks;
+    private volatile Instant startedAt = Instant.now();
+    private volatile Instant updatedAt = startedAt;
+    private volatile Instant finishedAt;
+    private volatile String error;
+
+    PurgeJob(Long userId) {
+        this.userId = userId;
+        for (Step s : STEPS) {
+            deleted.put(s.name, 0L);
+        }
+    }
+
+    // Picks up an unfinished purge; the counts carry on from the checkpoint
+    static PurgeJob resume(JsonNode checkpoint) {
+        PurgeJob job = new PurgeJob(checkpoint.path("userId").asLong());
+        job.step = Math.min(checkpoint.path("step").asInt(), STEPS.size());
+        job.chunks = checkpoint.path("chunks").asLong();
+        job.startedAt = Instant.parse(checkpoint.path("startedAt").asText());
+        checkpoint.path("deleted").fields().forEachRemaining(entry -> {
+            if (job.deleted.containsKey(entry.getKey())) {
+                job.deleted.put(entry.getKey(), entry.getValue().asLong());
+            }
+        });
+        return job;
+    }
+
+    synchronized void recordChunk(Step step, long count) {
+        deleted.merge(step.name, count, Long::sum);
+        chunks++;
+        updatedAt = Instant.now();
+    }
+
+    void stepDone(int next) {
+        step = next;
+        updatedAt = Instant.now();
+    }
+
+    void finish(Status status, String error) {
+        this.error = error;
+        this.finishedAt = Instant.now();
+        this.updatedAt = finishedAt;
+        this.status = status;
+    }
+
+    Status status() {
+        return status;
+    }
+
+    int step() {
+        return step;
+    }
+
+    synchronized Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("userId", userId);
+        snapshot.put("status", status);
+        snapshot.put("step", step);
+        snapshot.put("currentSection", step < STEPS.size() ? STEPS.get(step).name : null);
+        snapshot.put("sectionsDone", step);
+        snapshot.put("sectionsTotal", STEPS.size());
+        snapshot.put("chunks", chunks);
+        snapshot.put("deleted", new LinkedHashMap<>(deleted));
+        snapshot.put("startedAt", startedAt.toString());
+        snapshot.put("updatedAt", updatedAt.toString());
+        snapshot.put("finishedAt", finishedAt != null ? finishedAt.toString() : null);
+        snapshot.put("error", error);
+        return snapshot;
+    }
+}
@@ -0,0 +1,198 @@
+package com.personalfinance.migration;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.personalfinance.gateway.cache.ResponseCacheStore;
+import com.personalfinance.gateway.config.MigrationProperties;
+import com.personalfinance.migration.ImportPayloadParser.Section;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+/**
+ * Streams a legacy export into the services without holding it in memory.
+ * The request body is parsed as it arrives, records are grouped into batches
+ * per section and written with a bounded number of batches in flight; when
+ * they are all outstanding demand stops, so the body is read no faster than
+ * the services accept writes. A batch the owning service rejects is counted
+ * as failed and the import carries on with the rest of the payload.
+ */
+@Service
+class StreamingImporter {
+
+    private static final Logger log = LoggerFactory.getLogger(StreamingImporter.class);
+
+    private static final class Batch {
+        final Section section;
+        final List<Map<String, Object>> records;
+
+        Batch(Section section, List<Map<String, Object>> records) {
+            this.section = section;
+            this.records = records;
+        }
+    }
+
+    private static final class Mapped {
+        final Section section;
+        final Map<String, Object> request;
+
+        Mapped(Section section, Map<String, Object> request) {
+            this.section = section;
+            this.request = request;
+        }
+    }
+
+    private final WebClient webClient;
+    private final ObjectMapper objectMapper;
+    private final MigrationProperties properties;
+    private final ResponseCacheStore cacheStore;
+
+    StreamingImporter(WebClient.Builder webClientBuilder, ObjectMapper objectMapper,
+                      MigrationProperties properties, ResponseCacheStore cacheStore) {
+        this.webClient = webClientBuilder.build();
+        this.objectMapper = objectMapper;
+        this.properties = properties;
+        this.cacheStore = cacheStore;
+    }
+
+    /**
+     * Completes with the job once every batch has been answered, or errors
+     * with IllegalArgumentException if the payload is malformed; batches
+     * already written by then stay written.
+     */
+    Mono<ImportJob> run(ImportJob job, Flux<DataBuffer> body, String legacyUserId, String authorization) {
+        ImportPayloadParser parser = new ImportPayloadParser(objectMapper, properties.getMaxRecordBytes());
+
+        return body
+                .concatMapIterable(buffer -> {
+                    byte[] bytes = new byte[buffer.readableByteCount()];
+                    buffer.read(bytes);
+                    DataBufferUtils.release(buffer);
+                    job.bytesRead.addAndGet(bytes.length);
+                    return parser.feed(bytes);
+                }, 1)
+                .concatWith(Flux.defer(() -> Flux.fromIterable(parser.finish())))
+                .<Mapped>handle((record, sink) -> {
+                    Map<String, Object> request = map(job, record, legacyUserId);
+                    if (request != null) {
+                        sink.next(new Mapped(record.section, request));
+                    }
+                })
+                // Sections arrive one after another, so a batch never mixes them
+                .windowUntilChanged(mapped -> mapped.section)
+                .concatMap(window -> window.buffer(properties.getBatchSize())
+                        .filter(records -> !records.isEmpty())
+                        .map(records -> new Batch(records.get(0).section,
+                                records.stream().map(mapped -> mapped.request).collect(Collectors.toList()))), 1)
+                .flatMap(batch -> write(job, batch, authorization), properties.getMaxInFlightBatches(), 1)
+                .then(Mono.fromCallable(() -> {
+                    job.finish(ImportJob.Status.COMPLETED);
+                    log.info("[StreamingImporter] Import {} for user {} completed: {}", job.id, job.userId, job.snapshot());
+                    return job;
+                }))
+                .doOnError(e -> {
+                    job.error(e.getMessage());
+                    job.finish(ImportJob.Status.FAILED);
+                    log.warn("[StreamingImporter] Import {} for user {} failed: {}", job.id, job.userId, e.toString());
+                })
+                .doOnCancel(() -> {
+                    job.error("Upload cancelled");
+                    job.finish(ImportJob.Status.FAILED);
+                });
+    }
+
+    private static Map<String, Object> map(ImportJob job, ImportPayloadParser.Record record, String legacyUserId) {
+        ImportJob.Counters counters = job.counters(record.section);
+        long position = counters.parsed.incrementAndGet();
+        if (record.node == null) {
+            counters.rejected.incrementAndGet();
+            return null;
+        }
+        if (legacyUserId != null && !legacyUserId.equals(LegacyRecordMapper.legacyUserId(record.node))) {
+            counters.skipped.incrementAndGet();
+            return null;
+        }
+        Map<String, Object> request;
+        switch (record.section) {
+            case TRANSACTIONS:
+                // Position and content stay the same when the same file is uploaded again
+                request = LegacyRecordMapper.transaction(record.node, job.userId,
+                        "import:" + job.userId + ":#" + position + ":" + Integer.toHexString(record.node.hashCode()));
+                break;
+            case BUDGETS:
+                request = LegacyRecordMapper.budget(record.node, job.userId);
+                break;
+            default:
+                request = LegacyRecordMapper.goal(record.node, job.userId);
+        }
+        if (request == null) {
+            counters.rejected.incrementAndGet();
+        }
+        return request;
+    }
+
+    private Mono<Void> write(ImportJob job, Batch batch, String authorization) {
+        URI uri;
+        Object body;
+        switch (batch.section) {
+            case TRANSACTIONS:
+                uri = URI.create(properties.getTransactionServiceUrl() + "/transactions/batch");
+                body = Map.of("transactions", batch.records);
+                break;
+            case BUDGETS:
+                uri = URI.create(properties.getBudgetServiceUrl() + "/budgets/batch");
+                body = Map.of("budgets", batch.records);
+                break;
+            default:
+                uri = URI.create(properties.getUserServiceUrl() + "/api/goals/batch");
+                body = batch.records;
+        }
+        Mono<JsonNode> call = webClient.post()
+                .uri(uri)
+                .headers(headers -> {
+                    if (authorization != null) {
+                        headers.set(HttpHeaders.AUTHORIZATION, authorization);
+                    }
+                })
+                .bodyValue(body)
+                .retrieve()
+                .bodyToMono(JsonNode.class)
+                .timeout(properties.getBatchTimeout());
+        // Budgets and goals have no idempotency key, so a retry after a lost response would duplicate them
+        if (batch.section == Section.TRANSACTIONS) {
+            call = call.retryWhen(Retry.backoff(properties.getBatchRetries(), Duration.ofMillis(200))
+                    .filter(UpstreamErrors::retryable)
+                    .onRetryExhaustedThrow((spec, signal) -> signal.failure()));
+        }
+        ImportJob.Counters counters = job.counters(batch.section);
+        return call
+                .doOnNext(response -> {
+                    counters.created.addAndGet(response.path("created").asLong());
+                    counters.replayed.addAndGet(response.path("replayed").asLong());
+                    // These writes bypass the routes, so the invalidation header never reaches the cache filter
+                    cacheStore.invalidate(String.valueOf(job.userId));
+                })
+                .onErrorResume(e -> {
+                    counters.failed.addAndGet(batch.records.size());
+                    job.error(batch.section.field + " batch of " + batch.records.size() + " failed: " + UpstreamErrors.describe(e));
+                    log.warn("[StreamingImporter] Import {} {} batch failed: {}", job.id, batch.section.field, e.toString());
+                    return Mono.empty();
+                })
+                .then();
+    }
+}
@@ -0,0 +1,32 @@
+package com.personalfinance.migration;
+
+import java.util.concurrent.TimeoutException;
+
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+// How migration calls to the services classify and report failures
+final class UpstreamErrors {
+
+    private UpstreamErrors() {}
+
+    // Connection problems, timeouts and 5xx; a 4xx will fail the same way again
+    static boolean retryable(Throwable e) {
+        if (e instanceof WebClientResponseException) {
+            return ((WebClientResponseException) e).getStatusCode().is5xxServerError();
+        }
+        return true;
+    }
+
+    static String describe(Throwable e) {
+        if (e instanceof TimeoutException) {
+            return "timeout";
+        }
+        if (e instanceof WebClientResponseException) {
+            WebClientResponseException response = (WebClientResponseException) e;
+            String detail = response.getResponseBodyAsString();
+            return "status " + response.getRawStatusCode()
+                    + (detail.isEmpty() ? "" : " " + (detail.length() > 200 ? detail.substring(0, 200) : detail));
+        }
+        return "unavailable";
+    }
+}
@@ -0,0 +1,157 @@
+package com.personalfinance.migration;
+
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.personalfinance.gateway.config.MigrationProperties;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+/**
+ * Builds a user's export as a ZIP with one NDJSON entry per kind of record.
+ * Records are pulled from the services on demand (transactions a page at a
+ * time by id) and compressed straight into the response, so a download of
+ * any size holds about one page and one output chunk in memory. A section
+ * that fails part way is closed where it stopped and marked incomplete in
+ * manifest.json, which is written last so it can carry the final counts.
+ */
+@Service
+class UserDataExporter {
+
+    private static final Logger log = LoggerFactory.getLogger(UserDataExporter.class);
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final byte[] NEWLINE = {'\n'};
+
+    private final WebClient webClient;
+    private final ObjectMapper objectMapper;
+    private final MigrationProperties properties;
+
+    UserDataExporter(WebClient.Builder webClientBuilder, ObjectMapper objectMapper, MigrationProperties properties) {
+        this.webClient = webClientBuilder.build();
+        this.objectMapper = objectMapper;
+        this.properties = properties;
+    }
+
+    Flux<DataBuffer> export(Long userId, String authorization) {
+        Map<String, Object> manifest = new LinkedHashMap<>();
+        manifest.put("userId", userId);
+        manifest.put("exportedAt", Instant.now().toString());
+        Map<String, Object> entries = new LinkedHashMap<>();
+        manifest.put("entries", entries);
+
+        return Flux.using(() -> new ZipStreamWriter(CHUNK_SIZE), zip -> Flux.concat(
+                        entry(zip, "transactions.ndjson", transactions(userId, authorization), entries),
+                        entry(zip, "budgets.ndjson",
+                                list(properties.getBudgetServiceUrl() + "/budgets/user/{userId}", userId, authorization), entries),
+                        entry(zip, "goals.ndjson",
+                                list(properties.getUserServiceUrl() + "/api/goals/user/{userId}", userId, authorization), entries),
+                        entry(zip, "scheduled-purchases.ndjson",
+                                list(properties.getScheduledPurchaseServiceUrl() + "/scheduled-purchases/user/{userId}", userId, authorization), entries),
+                        Flux.defer(() -> {
+                            List<DataBuffer> head = zip.startEntry("manifest.json");
+                            return Flux.concat(Flux.fromIterable(head),
+                                    Flux.fromIterable(zip.write(json(manifest))),
+                                    Flux.fromIterable(zip.closeEntry()),
+                                    Flux.fromIterable(zip.finish()));
+                        })),
+                ZipStreamWriter::close)
+                .doOnComplete(() -> log.info("[UserDataExporter] Exported user {}: {}", userId, entries));
+    }
+
+    private Flux<DataBuffer> entry(ZipStreamWriter zip, String name, Flux<JsonNode> records, Map<String, Object> entries) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        long[] count = {0};
+        return Flux.defer(() -> Flux.fromIterable(zip.startEntry(name)))
+                .concatWith(records
+                        .concatMapIterable(record -> {
+                            count[0]++;
+                            return zip.write(json(record), NEWLINE);
+                        }, 1)
+                        .onErrorResume(e -> {
+                            summary.put("error", UpstreamErrors.describe(e));
+                            log.warn("[UserDataExporter] {} incomplete after {} records: {}", name, count[0], e.toString());
+                            return Flux.empty();
+                        }))
+                .concatWith(Flux.defer(() -> {
+                    summary.put("records", count[0]);
+                    summary.put("complete", !summary.containsKey("error"));
+                    entries.put(name, summary);
+                    return Flux.fromIterable(zip.closeEntry());
+                }));
+    }
+
+    // Walks the history by id; each page starts after the last id of the one before
+    private Flux<JsonNode> transactions(Long userId, String authorization) {
+        int pageSize = properties.getExportPageSize();
+        return transactionPage(userId, 0L, pageSize, authorization)
+                .expand(page -> page.size() < pageSize
+                        ? Mono.empty()
+                        : transactionPage(userId, page.get(page.size() - 1).path("id").asLong(), pageSize, authorization))
+                .concatMapIterable(page -> page, 1);
+    }
+
+    private Mono<List<JsonNode>> transactionPage(Long userId, long afterId, int pageSize, String authorization) {
+        URI uri = UriComponentsBuilder.fromHttpUrl(properties.getTransactionServiceUrl() + "/transactions/user/{userId}/export")
+                .queryParam("afterId", afterId)
+                .queryParam("limit", pageSize)
+                .build(userId);
+        // Decoding element by element keeps a large page clear of the codec's in-memory limit
+        return get(uri, authorization).collectList()
+                .timeout(properties.getExportCallTimeout())
+                .retryWhen(retry());
+    }
+
+    // The other sections are small enough that their services return them in one list
+    private Flux<JsonNode> list(String template, Long userId, String authorization) {
+        URI uri = UriComponentsBuilder.fromHttpUrl(template).build(userId);
+        // Collected first so a retry can't repeat records that were already written
+        return get(uri, authorization).collectList()
+                .timeout(properties.getExportCallTimeout())
+                .retryWhen(retry())
+                .flatMapIterable(records -> records);
+    }
+
+    private Flux<JsonNode> get(URI uri, String authorization) {
+        return webClient.get()
+                .uri(uri)
+                .headers(headers -> {
+                    if (authorization != null) {
+                        headers.set(HttpHeaders.AUTHORIZATION, authorization);
+                    }
+                })
+                .retrieve()
+                .bodyToFlux(JsonNode.class);
+    }
+
+    private Retry retry() {
+        return Retry.backoff(properties.getBatchRetries(), Duration.ofMillis(200))
+                .filter(UpstreamErrors::retryable)
+                .onRetryExhaustedThrow((spec, signal) -> signal.failure());
+    }
+
+    private byte[] json(Object value) {
+        try {
+            return objectMapper.writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
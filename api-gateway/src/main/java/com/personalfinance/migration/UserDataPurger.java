@@ -0,0 +1,226 @@
+package com.personalfinance.migration;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.personalfinance.gateway.cache.ResponseCacheStore;
+import com.personalfinance.gateway.config.MigrationProperties;
+import com.personalfinance.migration.PurgeJob.Step;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
+
+/**
+ * Runs purges in the background, deleting each section through its owning
+ * service in bounded chunks. After every chunk the job pauses in proportion
+ * to how long the chunk took, so a purge uses at most the configured share
+ * of the databases' time and slows down by itself when they are busy. The
+ * checkpoint is written after every chunk; starting a purge for a user with
+ * an unfinished checkpoint resumes it at the recorded step. A job is only
+ * held in memory while it runs; once it ends its checkpoint reports it.
+ */
+@Service
+class UserDataPurger {
+
+    private static final Logger log = LoggerFactory.getLogger(UserDataPurger.class);
+
+    private final WebClient webClient;
+    private final MigrationProperties properties;
+    private final PurgeCheckpointStore checkpoints;
+    private final ResponseCacheStore cacheStore;
+    private final Map<Long, PurgeJob> jobs = new ConcurrentHashMap<>();
+
+    UserDataPurger(WebClient.Builder webClientBuilder, MigrationProperties properties,
+                   PurgeCheckpointStore checkpoints, ResponseCacheStore cacheStore) {
+        this.webClient = webClientBuilder.build();
+        this.properties = properties;
+        this.checkpoints = checkpoints;
+        this.cacheStore = cacheStore;
+    }
+
+    /**
+     * The running job if there is one; otherwise starts or resumes one. Reads
+     * the checkpoint file, so it runs on the bounded elastic scheduler
+     * rather than the caller's event loop.
+     */
+    Mono<PurgeJob> start(Long userId, String authorization) {
+        return Mono.fromCallable(() -> startBlocking(userId, authorization)).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private synchronized PurgeJob startBlocking(Long userId, String authorization) {
+        PurgeJob running = jobs.get(userId);
+        if (running != null && running.status() == PurgeJob.Status.RUNNING) {
+            return running;
+        }
+        long active = jobs.values().stream().filter(job -> job.status() == PurgeJob.Status.RUNNING).count();
+        if (active >= properties.getMaxConcurrentPurges()) {
+            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "Too many purges in progress");
+        }
+        PurgeJob job = checkpoints.load(userId)
+                .filter(checkpoint -> !PurgeJob.Status.COMPLETED.name().equals(checkpoint.path("status").asText()))
+                .map(PurgeJob::resume)
+                .orElseGet(() -> new PurgeJob(userId));
+        jobs.put(userId, job);
+        log.info("[UserDataPurger] Purge for user {} starting at step {}", userId, job.step());
+        run(job, authorization).subscribe();
+        return job;
+    }
+
+    /**
+     * Whether the token is the given user's. The JWT only carries a
+     * username, so user-service resolves it; a token it rejects is nobody's.
+     */
+    Mono<Boolean> isCaller(Long userId, String authorization) {
+        if (authorization == null) {
+            return Mono.just(false);
+        }
+        return webClient.get()
+                .uri(properties.getUserServiceUrl() + "/api/users/profile")
+                .header(HttpHeaders.AUTHORIZATION, authorization)
+                .retrieve()
+                .bodyToMono(JsonNode.class)
+                .map(profile -> userId.equals(profile.path("id").asLong()))
+                .timeout(properties.getBatchTimeout())
+                .onErrorResume(WebClientResponseException.class, e -> e.getStatusCode().is4xxClientError()
+                        ? Mono.just(false)
+                        : Mono.error(e));
+    }
+
+    /**
+     * The in-memory job, or the last checkpoint when this instance isn't
+     * running one; a checkpoint still marked RUNNING was left by a stopped
+     * instance and is reported as interrupted. Empty when there is neither.
+     * Off the event loop, like {@link #start}.
+     */
+    Mono<Map<String, Object>> progress(Long userId) {
+        return Mono.fromCallable(() -> progressBlocking(userId)).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private Map<String, Object> progressBlocking(Long userId) {
+        PurgeJob job = jobs.get(userId);
+        if (job != null) {
+            return job.snapshot();
+        }
+        return checkpoints.load(userId)
+                .map(checkpoint -> {
+                    if (PurgeJob.Status.RUNNING.name().equals(checkpoint.path("status").asText())) {
+                        PurgeJob interrupted = PurgeJob.resume(checkpoint);
+                        interrupted.finish(PurgeJob.Status.INTERRUPTED, "Stopped before finishing; start the purge again to resume");
+                        return interrupted.snapshot();
+                    }
+                    Map<String, Object> snapshot = new LinkedHashMap<>();
+                    checkpoint.fields().forEachRemaining(entry -> snapshot.put(entry.getKey(), entry.getValue()));
+                    return snapshot;
+                })
+                .orElse(null);
+    }
+
+    private Mono<Void> run(PurgeJob job, String authorization) {
+        return save(job)
+                .thenMany(Flux.range(job.step(), PurgeJob.STEPS.size() - job.step()))
+                .concatMap(index -> purgeStep(job, PurgeJob.STEPS.get(index), authorization)
+                        .then(Mono.defer(() -> {
+                            job.stepDone(index + 1);
+                            return save(job);
+                        })), 1)
+                .then(Mono.defer(() -> {
+                    job.finish(PurgeJob.Status.COMPLETED, null);
+                    log.info("[UserDataPurger] Purge for user {} completed: {}", job.userId, job.snapshot().get("deleted"));
+                    return save(job);
+                }))
+                .onErrorResume(e -> {
+                    Step step = PurgeJob.STEPS.get(Math.min(job.step(), PurgeJob.STEPS.size() - 1));
+                    job.finish(PurgeJob.Status.FAILED, step.name + ": " + UpstreamErrors.describe(e));
+                    log.warn("[UserDataPurger] Purge for user {} failed at {}: {}", job.userId, step.name, e.toString());
+                    return save(job).onErrorResume(saveError -> Mono.empty());
+                })
+                // The final checkpoint is written by now and answers for the job from here on
+                .doFinally(signal -> jobs.remove(job.userId, job));
+    }
+
+    // Repeats chunk deletes until one comes back empty, pausing between them
+    private Mono<Void> purgeStep(PurgeJob job, Step step, String authorization) {
+        return Mono.defer(() -> {
+                    long started = System.nanoTime();
+                    return deleteChunk(job.userId, step, authorization)
+                            .map(deleted -> new long[] {deleted, System.nanoTime() - started});
+                })
+                .flatMap(chunk -> {
+                    if (chunk[0] == 0) {
+                        return Mono.just(true);
+                    }
+                    job.recordChunk(step, chunk[0]);
+                    cacheStore.invalidate(String.valueOf(job.userId));
+                    return save(job).then(Mono.delay(pause(chunk[1]))).thenReturn(false);
+                })
+                .repeat()
+                .takeUntil(done -> done)
+                .then();
+    }
+
+    private Duration pause(long chunkNanos) {
+        double duty = properties.getPurgeDutyCycle();
+        Duration proportional = Duration.ofNanos((long) (chunkNanos * (1 - duty) / duty));
+        return proportional.compareTo(properties.getPurgeMinPause()) > 0 ? proportional : properties.getPurgeMinPause();
+    }
+
+    private Mono<Long> deleteChunk(Long userId, Step step, String authorization) {
+        return webClient.delete()
+                .uri(chunkUri(userId, step))
+                .headers(headers -> {
+                    if (authorization != null) {
+                        headers.set(HttpHeaders.AUTHORIZATION, authorization);
+                    }
+                })
+                .retrieve()
+                .bodyToMono(JsonNode.class)
+                .map(response -> response.path("deleted").asLong())
+                .timeout(properties.getBatchTimeout())
+                // Deleting "up to n of what is left" is safe to repeat
+                .retryWhen(Retry.backoff(properties.getBatchRetries(), Duration.ofMillis(200))
+                        .filter(UpstreamErrors::retryable)
+                        .onRetryExhaustedThrow((spec, signal) -> signal.failure()));
+    }
+
+    private URI chunkUri(Long userId, Step step) {
+        String template;
+        switch (step.service) {
+            case SCHEDULED_PURCHASE:
+                template = properties.getScheduledPurchaseServiceUrl() + "/scheduled-purchases/user/{userId}/purge";
+                break;
+            case TRANSACTION:
+                template = properties.getTransactionServiceUrl() + "/transactions/user/{userId}/purge";
+                break;
+            case BUDGET:
+                template = properties.getBudgetServiceUrl() + "/budgets/user/{userId}/purge";
+                break;
+            default:
+                template = properties.getUserServiceUrl() + "/api/users/data/{userId}/purge/" + step.name;
+        }
+        return UriComponentsBuilder.fromHttpUrl(template)
+                .queryParam("limit", properties.getPurgeChunkSize())
+                .build(userId);
+    }
+
+    private Mono<Void> save(PurgeJob job) {
+        Map<String, Object> snapshot = job.snapshot();
+        return Mono.<Void>fromRunnable(() -> checkpoints.save(job.userId, snapshot))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+}
@@ -0,0 +1,89 @@
+package com.personalfinance.migration;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+
+/**
+ * A ZipOutputStream whose output is handed out in chunks instead of being
+ * written to a stream, so an archive can be produced as a DataBuffer flux.
+ * Every call returns the compressed bytes that are ready, batched into
+ * chunks of about {@code chunkSize}; memory is that chunk plus the deflater's
+ * window. Calls must not overlap, which a reactive chain guarantees.
+ */
+final class ZipStreamWriter implements AutoCloseable {
+
+    private final ByteArrayOutputStream pending;
+    private final ZipOutputStream zip;
+    private final int chunkSize;
+
+    ZipStreamWriter(int chunkSize) {
+        this.pending = new ByteArrayOutputStream(chunkSize + chunkSize / 4);
+        this.zip = new ZipOutputStream(pending);
+        this.chunkSize = chunkSize;
+    }
+
+    List<DataBuffer> startEntry(String name) {
+        try {
+            zip.putNextEntry(new ZipEntry(name));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return drain(false);
+    }
+
+    List<DataBuffer> write(byte[]... parts) {
+        try {
+            for (byte[] part : parts) {
+                zip.write(part);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return drain(false);
+    }
+
+    List<DataBuffer> closeEntry() {
+        try {
+            zip.closeEntry();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return drain(false);
+    }
+
+    // Writes the central directory; the archive is complete once these bytes are sent
+    List<DataBuffer> finish() {
+        try {
+            zip.finish();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return drain(true);
+    }
+
+    // Frees the deflater when the download is abandoned part way
+    @Override
+    public void close() {
+        try {
+            zip.close();
+        } catch (IOException e) {
+            // Nothing is listening for the bytes any more
+        }
+    }
+
+    private List<DataBuffer> drain(boolean force) {
+        if (pending.size() == 0 || (!force && pending.size() < chunkSize)) {
+            return List.of();
+        }
+        DataBuffer chunk = DefaultDataBufferFactory.sharedInstance.wrap(pending.toByteArray());
+        pending.reset();
+        return List.of(chunk);
+    }
+}
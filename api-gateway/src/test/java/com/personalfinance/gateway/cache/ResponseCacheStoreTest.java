@@ -0,0 +1,59 @@
+package com.personalfinance.gateway.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+
+import com.personalfinance.gateway.config.ResponseCacheProperties;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class ResponseCacheStoreTest {
+
+    private static final long TTL = TimeUnit.MINUTES.toNanos(1);
+
+    private final ResponseCacheStore store = new ResponseCacheStore(new ResponseCacheProperties(), new SimpleMeterRegistry());
+
+    @Test
+    void invalidationDropsTheScopesEntriesOnly() {
+        put("a", "1");
+        put("b", "2");
+
+        store.invalidate("1");
+
+        assertThat(store.get("a", "1")).isNull();
+        assertThat(store.get("b", "2")).isNotNull();
+    }
+
+    @Test
+    void responseFetchedBeforeAnInvalidationIsNotStoredAsCurrent() {
+        long generation = store.generation("1");
+        store.invalidate("1");
+        store.put("a", "1", generation, response(), TTL);
+
+        assertThat(store.get("a", "1")).isNull();
+    }
+
+    @Test
+    void manyInvalidatedScopesShareTheStripes() {
+        for (int user = 0; user < 100_000; user++) {
+            store.invalidate(String.valueOf(user));
+        }
+        put("a", "1");
+
+        assertThat(store.get("a", "1")).isNotNull();
+    }
+
+    private void put(String key, String scope) {
+        store.put(key, scope, store.generation(scope), response(), TTL);
+    }
+
+    private static CachedResponse response() {
+        return new CachedResponse(HttpStatus.OK, MediaType.APPLICATION_JSON, "{}".getBytes(StandardCharsets.UTF_8), "\"e\"");
+    }
+}
@@ -0,0 +1,82 @@
+package com.personalfinance.gateway.dashboard;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.net.InetSocketAddress;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+
+import com.personalfinance.gateway.config.DashboardProperties;
+import com.personalfinance.gateway.config.RateLimitProperties;
+import com.personalfinance.gateway.filter.TokenBucketRateLimiterGatewayFilterFactory;
+import com.personalfinance.gateway.ratelimit.TokenBucketStore;
+
+import reactor.core.publisher.Mono;
+
+class DashboardControllerTest {
+
+    private final DashboardAggregator aggregator = mock(DashboardAggregator.class);
+    private DashboardController controller;
+
+    @BeforeEach
+    void setUp() {
+        RateLimitProperties rateLimit = new RateLimitProperties();
+        DashboardProperties properties = new DashboardProperties();
+        properties.setReplenishRate(1);
+        properties.setBurstCapacity(2);
+        controller = new DashboardController(aggregator,
+                new TokenBucketRateLimiterGatewayFilterFactory(new TokenBucketStore(rateLimit), rateLimit), properties);
+        when(aggregator.aggregate(anyLong(), any(), any())).thenReturn(Mono.just(Map.of("summary", Map.of())));
+    }
+
+    @Test
+    void callsPastTheBurstAreRejectedWithoutFanningOut() {
+        for (int i = 0; i < 2; i++) {
+            MockServerWebExchange exchange = exchange();
+            ResponseEntity<Map<String, Object>> response = controller.getDashboard(1L, "6months", null, exchange).block();
+            assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+            assertThat(exchange.getResponse().getHeaders().getFirst(TokenBucketRateLimiterGatewayFilterFactory.LIMIT_HEADER))
+                    .isEqualTo("2");
+        }
+
+        MockServerWebExchange rejected = exchange();
+        ResponseEntity<Map<String, Object>> response = controller.getDashboard(1L, "6months", null, rejected).block();
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+        assertThat(rejected.getResponse().getHeaders().getFirst(HttpHeaders.RETRY_AFTER)).isNotNull();
+        assertThat(rejected.getResponse().getHeaders().getFirst(TokenBucketRateLimiterGatewayFilterFactory.REMAINING_HEADER))
+                .isEqualTo("0");
+        verify(aggregator, times(2)).aggregate(anyLong(), any(), any());
+    }
+
+    @Test
+    void clientsHaveSeparateBuckets() {
+        for (int i = 0; i < 2; i++) {
+            controller.getDashboard(1L, "6months", null, exchange()).block();
+        }
+
+        MockServerWebExchange other = MockServerWebExchange.from(MockServerHttpRequest.get("/api/dashboard/user/2")
+                .remoteAddress(new InetSocketAddress("10.0.0.2", 50000)));
+        ResponseEntity<Map<String, Object>> response = controller.getDashboard(2L, "6months", null, other).block();
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+    }
+
+    private static MockServerWebExchange exchange() {
+        return MockServerWebExchange.from(MockServerHttpRequest.get("/api/dashboard/user/1")
+                .remoteAddress(new InetSocketAddress("10.0.0.1", 50000)));
+    }
+}
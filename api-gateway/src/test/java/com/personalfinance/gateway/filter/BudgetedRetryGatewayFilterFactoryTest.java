@@ -0,0 +1,161 @@
+package com.personalfinance.gateway.filter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+
+import com.personalfinance.gateway.config.ResilienceProperties;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Mono;
+import reactor.netty.Connection;
+
+class BudgetedRetryGatewayFilterFactoryTest {
+
+    private final ResilienceProperties properties = new ResilienceProperties();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    // Whether each upstream call found the exchange already routed by an earlier attempt
+    private final List<String> upstreamCalls = new ArrayList<>();
+    private BudgetedRetryGatewayFilterFactory.Config config;
+    private GatewayFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        config = new BudgetedRetryGatewayFilterFactory.Config();
+        config.setFirstBackoff(Duration.ofMillis(1));
+        config.setMaxBackoff(Duration.ofMillis(5));
+        filter = new BudgetedRetryGatewayFilterFactory(properties, registry).apply(config);
+    }
+
+    @Test
+    void backoffIsJitteredUpToTheDoubledFirstBackoffAndNeverPastTheMax() {
+        BudgetedRetryGatewayFilterFactory.Config defaults = new BudgetedRetryGatewayFilterFactory.Config();
+        for (int retry = 0; retry < 64; retry++) {
+            long cap = Math.min(500, 50L << Math.min(retry, 20));
+            long longest = 0;
+            for (int i = 0; i < 2_000; i++) {
+                Duration backoff = BudgetedRetryGatewayFilterFactory.backoff(defaults, retry);
+                assertThat(backoff).isBetween(Duration.ZERO, Duration.ofMillis(cap));
+                longest = Math.max(longest, backoff.toMillis());
+            }
+            // Full jitter reaches most of the way to the cap
+            assertThat(longest).as("longest backoff of retry %d", retry).isGreaterThan(cap / 2);
+        }
+    }
+
+    @Test
+    void retryableStatusesAreRetriedFromAFreshExchange() {
+        Connection previous = mock(Connection.class);
+        GatewayFilterChain upstream = respond(call -> call < 2 ? HttpStatus.SERVICE_UNAVAILABLE : HttpStatus.OK, previous);
+        MockServerWebExchange exchange = get();
+
+        filter.filter(exchange, upstream).block(Duration.ofSeconds(5));
+
+        assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.OK);
+        // Each retry went out unrouted, and the previous attempt's connection was let go
+        assertThat(upstreamCalls).containsExactly("fresh", "fresh", "fresh");
+        verify(previous, times(2)).dispose();
+        assertThat(registry.counter("gateway.retry.attempts", "route", "default", "outcome", "retried").count()).isEqualTo(2);
+    }
+
+    @Test
+    void retriesStopAtTheConfiguredCount() {
+        MockServerWebExchange exchange = get();
+
+        filter.filter(exchange, respond(call -> HttpStatus.BAD_GATEWAY, null)).block(Duration.ofSeconds(5));
+
+        assertThat(upstreamCalls).hasSize(config.getRetries() + 1);
+        assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.BAD_GATEWAY);
+    }
+
+    @Test
+    void otherStatusesAreNotRetried() {
+        MockServerWebExchange exchange = get();
+
+        filter.filter(exchange, respond(call -> HttpStatus.INTERNAL_SERVER_ERROR, null)).block(Duration.ofSeconds(5));
+
+        assertThat(upstreamCalls).hasSize(1);
+    }
+
+    @Test
+    void nonIdempotentRequestsAreNeverRetried() {
+        for (MockServerHttpRequest request : List.of(MockServerHttpRequest.post("/api/transactions").build(),
+                MockServerHttpRequest.put("/api/transactions/1").build(),
+                MockServerHttpRequest.patch("/api/transactions/1").build(),
+                MockServerHttpRequest.delete("/api/transactions/1").build())) {
+            upstreamCalls.clear();
+            MockServerWebExchange exchange = MockServerWebExchange.from(request);
+
+            filter.filter(exchange, respond(call -> HttpStatus.SERVICE_UNAVAILABLE, null)).block(Duration.ofSeconds(5));
+            assertThatThrownBy(() -> filter.filter(MockServerWebExchange.from(request), failWith(new ConnectException())).block())
+                    .hasCauseInstanceOf(ConnectException.class);
+
+            assertThat(upstreamCalls).as(request.getMethodValue()).hasSize(2);
+        }
+    }
+
+    @Test
+    void connectionErrorsAreRetriedAndTheLastOneSurfaces() {
+        assertThatThrownBy(() -> filter.filter(get(), failWith(new ConnectException("refused"))).block(Duration.ofSeconds(5)))
+                .hasCauseInstanceOf(ConnectException.class);
+
+        assertThat(upstreamCalls).hasSize(config.getRetries() + 1);
+    }
+
+    @Test
+    void anExhaustedBudgetStopsRetrying() {
+        properties.setRetryBudgetRatio(0);
+        properties.setRetryMinPerSecond(0);
+        filter = new BudgetedRetryGatewayFilterFactory(properties, registry).apply(config);
+        MockServerWebExchange exchange = get();
+
+        filter.filter(exchange, respond(call -> HttpStatus.SERVICE_UNAVAILABLE, null)).block(Duration.ofSeconds(5));
+
+        assertThat(upstreamCalls).hasSize(1);
+        assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+        assertThat(registry.counter("gateway.retry.attempts", "route", "default", "outcome", "budget_exhausted").count())
+                .isEqualTo(1);
+    }
+
+    private static MockServerWebExchange get() {
+        return MockServerWebExchange.from(MockServerHttpRequest.get("/api/transactions/user/1"));
+    }
+
+    // Answers the n-th call (from 0) with the given status, routing the exchange as NettyRoutingFilter would
+    private GatewayFilterChain respond(IntFunction<HttpStatus> status, Connection connection) {
+        return exchange -> {
+            upstreamCalls.add(ServerWebExchangeUtils.isAlreadyRouted(exchange) ? "routed" : "fresh");
+            ServerWebExchangeUtils.setAlreadyRouted(exchange);
+            if (connection != null) {
+                exchange.getAttributes().put(ServerWebExchangeUtils.CLIENT_RESPONSE_CONN_ATTR, connection);
+            }
+            exchange.getResponse().setStatusCode(status.apply(upstreamCalls.size() - 1));
+            return Mono.empty();
+        };
+    }
+
+    private GatewayFilterChain failWith(IOException error) {
+        return exchange -> {
+            upstreamCalls.add("failed");
+            return Mono.error(error);
+        };
+    }
+}
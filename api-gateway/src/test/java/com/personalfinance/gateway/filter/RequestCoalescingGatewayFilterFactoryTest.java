@@ -0,0 +1,167 @@
+package com.personalfinance.gateway.filter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+
+import com.personalfinance.gateway.config.CoalescingProperties;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+class RequestCoalescingGatewayFilterFactoryTest {
+
+    private static final int BURST = 50;
+    private static final String BODY = "{\"totalIncome\":100.00}";
+
+    private final AtomicInteger upstreamCalls = new AtomicInteger();
+    private GatewayFilter filter;
+
+    // Slow enough that the whole burst arrives while the first call is in flight
+    private final GatewayFilterChain upstream = exchange -> {
+        upstreamCalls.incrementAndGet();
+        return Mono.delay(Duration.ofMillis(200)).then(Mono.defer(() -> {
+            ServerHttpResponse response = exchange.getResponse();
+            if (exchange.getRequest().getHeaders().getIfNoneMatch().contains("\"v1\"")) {
+                response.setStatusCode(HttpStatus.NOT_MODIFIED);
+                return response.setComplete();
+            }
+            response.setStatusCode(HttpStatus.OK);
+            HttpHeaders headers = response.getHeaders();
+            headers.setContentType(MediaType.APPLICATION_JSON);
+            headers.setETag("\"v1\"");
+            headers.setCacheControl("private, max-age=60");
+            headers.set(HttpHeaders.CONNECTION, "keep-alive");
+            headers.set("Keep-Alive", "timeout=5");
+            return response.writeWith(Mono.just(response.bufferFactory().wrap(BODY.getBytes(StandardCharsets.UTF_8))));
+        }));
+    };
+
+    @BeforeEach
+    void setUp() {
+        RequestCoalescingGatewayFilterFactory factory =
+                new RequestCoalescingGatewayFilterFactory(new CoalescingProperties(), new SimpleMeterRegistry());
+        filter = factory.apply(new RequestCoalescingGatewayFilterFactory.Config());
+    }
+
+    @Test
+    void burstOfIdenticalGetsMakesOneUpstreamCall() {
+        List<MockServerWebExchange> exchanges = burst(i -> "/api/transactions/user/1/summary");
+
+        run(exchanges);
+
+        assertThat(upstreamCalls).hasValue(1);
+        for (MockServerWebExchange exchange : exchanges) {
+            assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.OK);
+            assertThat(exchange.getResponse().getBodyAsString().block()).isEqualTo(BODY);
+        }
+    }
+
+    // That followers keep their own rate-limit headers is checked through a real route in RouteFilterOrderTest
+    @Test
+    void followersGetTheLeadersUpstreamHeaders() {
+        List<MockServerWebExchange> exchanges = burst(i -> "/api/transactions/user/1/summary");
+
+        run(exchanges);
+
+        for (int i = 1; i < exchanges.size(); i++) {
+            HttpHeaders headers = exchanges.get(i).getResponse().getHeaders();
+            assertThat(headers.getContentType()).isEqualTo(MediaType.APPLICATION_JSON);
+            assertThat(headers.getETag()).isEqualTo("\"v1\"");
+            assertThat(headers.getCacheControl()).isEqualTo("private, max-age=60");
+            assertThat(headers.getContentLength()).isEqualTo(BODY.length());
+            assertThat(headers.containsKey(HttpHeaders.CONNECTION)).isFalse();
+            assertThat(headers.containsKey("Keep-Alive")).isFalse();
+        }
+    }
+
+    @Test
+    void conditionalLeaderIsNotReplayedToUnconditionalFollowers() {
+        List<MockServerWebExchange> exchanges = IntStream.range(0, BURST)
+                .mapToObj(i -> {
+                    MockServerHttpRequest.BaseBuilder<?> request = MockServerHttpRequest.get("/api/transactions/user/1/summary");
+                    if (i % 2 == 0) {
+                        request.ifNoneMatch("\"v1\"");
+                    }
+                    return MockServerWebExchange.from(request);
+                })
+                .collect(Collectors.toList());
+
+        run(exchanges);
+
+        assertThat(upstreamCalls).hasValue(2);
+        for (int i = 0; i < exchanges.size(); i++) {
+            MockServerWebExchange exchange = exchanges.get(i);
+            if (i % 2 == 0) {
+                assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+            } else {
+                assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.OK);
+                assertThat(exchange.getResponse().getBodyAsString().block()).isEqualTo(BODY);
+            }
+        }
+    }
+
+    @Test
+    void differentRepresentationsAreNotCoalesced() {
+        List<MockServerWebExchange> exchanges = IntStream.range(0, BURST)
+                .mapToObj(i -> MockServerWebExchange.from(MockServerHttpRequest.get("/api/transactions/user/1/summary")
+                        .header(HttpHeaders.ACCEPT_ENCODING, i % 2 == 0 ? "gzip" : "identity")))
+                .collect(Collectors.toList());
+
+        run(exchanges);
+
+        assertThat(upstreamCalls).hasValue(2);
+    }
+
+    @Test
+    void distinctRequestsAreNotCoalesced() {
+        List<MockServerWebExchange> exchanges = burst(i -> "/api/transactions/user/" + i + "/summary");
+
+        run(exchanges);
+
+        assertThat(upstreamCalls).hasValue(BURST);
+    }
+
+    @Test
+    void nonGetRequestsPassThrough() {
+        List<MockServerWebExchange> exchanges = IntStream.range(0, BURST)
+                .mapToObj(i -> MockServerWebExchange.from(MockServerHttpRequest.delete("/api/transactions/1")))
+                .collect(Collectors.toList());
+
+        run(exchanges);
+
+        assertThat(upstreamCalls).hasValue(BURST);
+    }
+
+    private static List<MockServerWebExchange> burst(IntFunction<String> path) {
+        return IntStream.range(0, BURST)
+                .mapToObj(i -> MockServerWebExchange.from(MockServerHttpRequest.get(path.apply(i))))
+                .collect(Collectors.toList());
+    }
+
+    // All requests are subscribed at once, as a burst of concurrent clients would be
+    private void run(List<MockServerWebExchange> exchanges) {
+        Flux.fromIterable(exchanges)
+                .flatMap(exchange -> filter.filter(exchange, upstream), exchanges.size())
+                .then()
+                .block(Duration.ofSeconds(10));
+    }
+}
@@ -0,0 +1,58 @@
+package com.personalfinance.gateway.filter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+
+import com.personalfinance.gateway.config.RateLimitProperties;
+
+import reactor.core.publisher.Mono;
+
+class RequestKeysTest {
+
+    private static final Set<String> PROXIES = Set.of("10.0.0.1", "10.0.0.2");
+
+    @Test
+    void anonymousCallersAreKeyedByPeerAddressWhateverTheyForward() {
+        MockServerWebExchange exchange = MockServerWebExchange.from(request("203.0.113.9", "198.51.100.1"));
+
+        assertThat(RequestKeys.user(exchange).block()).isEqualTo("anon:203.0.113.9");
+    }
+
+    @Test
+    void forwardedHopsAreReadFromTheRightWhileTheyAreTrusted() {
+        assertThat(RequestKeys.clientAddress(request("10.0.0.1", "198.51.100.1, 203.0.113.9, 10.0.0.2"), PROXIES))
+                .isEqualTo("203.0.113.9");
+        assertThat(RequestKeys.clientAddress(request("10.0.0.1", "203.0.113.9"), PROXIES))
+                .isEqualTo("203.0.113.9");
+    }
+
+    @Test
+    void forwardedHeaderFromAnUntrustedPeerIsIgnored() {
+        assertThat(RequestKeys.clientAddress(request("203.0.113.9", "10.0.0.1"), PROXIES)).isEqualTo("203.0.113.9");
+    }
+
+    @Test
+    void filterKeysAnonymousCallersByTheResolvedAddress() {
+        RateLimitProperties properties = new RateLimitProperties();
+        properties.setTrustedProxies(List.copyOf(PROXIES));
+        MockServerWebExchange exchange = MockServerWebExchange.from(request("10.0.0.1", "203.0.113.9"));
+
+        new ClientAddressFilter(properties).filter(exchange, e -> Mono.empty()).block();
+
+        assertThat(RequestKeys.user(exchange).block()).isEqualTo("anon:203.0.113.9");
+    }
+
+    private static MockServerHttpRequest request(String peer, String forwardedFor) {
+        return MockServerHttpRequest.get("/api/analytics/user/1/dashboard")
+                .remoteAddress(new InetSocketAddress(peer, 50000))
+                .header("X-Forwarded-For", forwardedFor)
+                .build();
+    }
+}
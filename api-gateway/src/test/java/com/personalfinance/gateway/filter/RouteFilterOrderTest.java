@@ -0,0 +1,183 @@
+package com.personalfinance.gateway.filter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.MACSigner;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+// The route filters as the gateway chains them, in front of a stub upstream
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "logging.level.root=WARN",
+        "gateway.migration.purge-checkpoint-dir=target/purge-checkpoints"
+})
+class RouteFilterOrderTest {
+
+    private static final String BODY = "{\"totalIncome\":100.00}";
+    private static final AtomicInteger upstreamCalls = new AtomicInteger();
+
+    private static final DisposableServer upstream = HttpServer.create()
+            .port(0)
+            .route(routes -> routes
+                    .get("/analytics/user/{userId}/dashboard", (request, response) -> {
+                        upstreamCalls.incrementAndGet();
+                        return response.header(HttpHeaders.CONTENT_TYPE, "application/json").sendString(Mono.just(BODY));
+                    })
+                    // Slow enough that a whole burst arrives while the first call is in flight
+                    .get("/budgets/user/{userId}", (request, response) -> {
+                        upstreamCalls.incrementAndGet();
+                        return response.header(HttpHeaders.CONTENT_TYPE, "application/json")
+                                .header(HttpHeaders.ETAG, "\"v1\"")
+                                .sendString(Mono.just(BODY).delayElement(Duration.ofMillis(500)));
+                    }))
+            .bindNow();
+
+    @Autowired
+    private WebTestClient client;
+
+    @LocalServerPort
+    private int port;
+
+    @Value("${spring.security.oauth2.resourceserver.jwt.secret-key}")
+    private String secret;
+
+    // Replaces the configured routes; a burst of 3 with a refill far slower than the test
+    @DynamicPropertySource
+    static void routes(DynamicPropertyRegistry registry) {
+        registry.add("spring.cloud.gateway.routes[0].id", () -> "analytics-service");
+        registry.add("spring.cloud.gateway.routes[0].uri", () -> "http://localhost:" + upstream.port());
+        registry.add("spring.cloud.gateway.routes[0].predicates[0]", () -> "Path=/api/analytics/**");
+        registry.add("spring.cloud.gateway.routes[0].filters[0]", () -> "StripPrefix=1");
+        registry.add("spring.cloud.gateway.routes[0].filters[1]", () -> "TokenBucketRateLimiter=1,3");
+        registry.add("spring.cloud.gateway.routes[0].filters[2]", () -> "ResponseCache=30s");
+        registry.add("spring.cloud.gateway.routes[0].filters[3]", () -> "RequestCoalescing");
+        registry.add("spring.cloud.gateway.routes[1].id", () -> "budget-service");
+        registry.add("spring.cloud.gateway.routes[1].uri", () -> "http://localhost:" + upstream.port());
+        registry.add("spring.cloud.gateway.routes[1].predicates[0]", () -> "Path=/api/budgets/**");
+        registry.add("spring.cloud.gateway.routes[1].filters[0]", () -> "StripPrefix=1");
+        registry.add("spring.cloud.gateway.routes[1].filters[1]", () -> "RequestCoalescing");
+        registry.add("spring.cloud.gateway.routes[1].filters[2]", () -> "TokenBucketRateLimiter=1,3");
+    }
+
+    @AfterAll
+    static void stopUpstream() {
+        upstream.disposeNow();
+    }
+
+    @Test
+    void cacheHitsAreChargedToTheCallersBucket() throws JOSEException {
+        String token = token("alice");
+        int before = upstreamCalls.get();
+
+        List<HttpStatus> statuses = new ArrayList<>();
+        List<String> cacheStatuses = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            client.get().uri("/api/analytics/user/1/dashboard")
+                    .headers(headers -> headers.setBearerAuth(token))
+                    .exchange()
+                    .expectHeader().exists(TokenBucketRateLimiterGatewayFilterFactory.LIMIT_HEADER)
+                    .expectBody().consumeWith(result -> {
+                        statuses.add(result.getStatus());
+                        cacheStatuses.add(result.getResponseHeaders().getFirst(ResponseCacheGatewayFilterFactory.CACHE_STATUS_HEADER));
+                    });
+        }
+
+        assertThat(statuses).containsExactly(HttpStatus.OK, HttpStatus.OK, HttpStatus.OK,
+                HttpStatus.TOO_MANY_REQUESTS, HttpStatus.TOO_MANY_REQUESTS);
+        assertThat(cacheStatuses).containsExactly("MISS", "HIT", "HIT", null, null);
+        assertThat(upstreamCalls.get() - before).isEqualTo(1);
+    }
+
+    @Test
+    void notModifiedRevalidationsAreChargedToo() throws JOSEException {
+        String token = token("bob");
+        String etag = client.get().uri("/api/analytics/user/2/dashboard")
+                .headers(headers -> headers.setBearerAuth(token))
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(String.class).getResponseHeaders().getETag();
+
+        List<HttpStatus> statuses = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            statuses.add(client.get().uri("/api/analytics/user/2/dashboard")
+                    .headers(headers -> {
+                        headers.setBearerAuth(token);
+                        headers.setIfNoneMatch(etag);
+                    })
+                    .exchange()
+                    .returnResult(String.class).getStatus());
+        }
+
+        assertThat(statuses).containsExactly(HttpStatus.NOT_MODIFIED, HttpStatus.NOT_MODIFIED, HttpStatus.TOO_MANY_REQUESTS);
+    }
+
+    // The limiter is listed after RequestCoalescing on this route; its order still puts it first
+    @Test
+    void everyCoalescedRequestIsChargedAndKeepsItsOwnRateLimitHeaders() throws JOSEException {
+        String token = token("carol");
+        WebClient webClient = WebClient.create("http://localhost:" + port);
+        int before = upstreamCalls.get();
+
+        List<ResponseEntity<String>> responses = Flux.range(0, 6)
+                .flatMap(i -> webClient.get().uri("/api/budgets/user/3")
+                        .headers(headers -> headers.setBearerAuth(token))
+                        .exchangeToMono(response -> response.toEntity(String.class)), 6)
+                .collectList()
+                .block(Duration.ofSeconds(10));
+
+        List<ResponseEntity<String>> served = responses.stream()
+                .filter(response -> response.getStatusCode() == HttpStatus.OK)
+                .collect(Collectors.toList());
+        assertThat(served).hasSize(3);
+        assertThat(responses).filteredOn(response -> response.getStatusCode() == HttpStatus.TOO_MANY_REQUESTS).hasSize(3);
+        assertThat(upstreamCalls.get() - before).isEqualTo(1);
+        assertThat(served).allSatisfy(response -> {
+            assertThat(response.getBody()).isEqualTo(BODY);
+            assertThat(response.getHeaders().getETag()).isEqualTo("\"v1\"");
+        });
+        assertThat(served.stream().map(response -> response.getHeaders()
+                .getFirst(TokenBucketRateLimiterGatewayFilterFactory.REMAINING_HEADER)))
+                .containsExactlyInAnyOrder("0", "1", "2");
+    }
+
+    private String token(String subject) throws JOSEException {
+        JWTClaimsSet claims = new JWTClaimsSet.Builder()
+                .subject(subject)
+                .expirationTime(Date.from(Instant.now().plusSeconds(600)))
+                .build();
+        SignedJWT jwt = new SignedJWT(new JWSHeader(JWSAlgorithm.HS256), claims);
+        jwt.sign(new MACSigner(Base64.getDecoder().decode(secret)));
+        return jwt.serialize();
+    }
+}
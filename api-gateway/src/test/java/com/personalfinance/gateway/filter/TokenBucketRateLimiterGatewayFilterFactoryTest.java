@@ -0,0 +1,150 @@
+package com.personalfinance.gateway.filter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+
+import com.personalfinance.gateway.config.RateLimitProperties;
+import com.personalfinance.gateway.ratelimit.TokenBucketStore;
+
+import reactor.core.publisher.Mono;
+
+class TokenBucketRateLimiterGatewayFilterFactoryTest {
+
+    private final AtomicInteger upstreamCalls = new AtomicInteger();
+    private final GatewayFilterChain upstream = exchange -> {
+        upstreamCalls.incrementAndGet();
+        exchange.getResponse().setStatusCode(HttpStatus.OK);
+        return Mono.empty();
+    };
+
+    private final RateLimitProperties properties = new RateLimitProperties();
+    private final TokenBucketRateLimiterGatewayFilterFactory factory =
+            new TokenBucketRateLimiterGatewayFilterFactory(store(), properties);
+
+    @Test
+    void admittedRequestsCarryTheRateLimitHeaders() {
+        GatewayFilter filter = filter(1, 3, 1);
+
+        MockServerWebExchange exchange = run(filter, "203.0.113.9");
+
+        assertThat(upstreamCalls).hasValue(1);
+        HttpHeaders headers = exchange.getResponse().getHeaders();
+        assertThat(headers.getFirst(TokenBucketRateLimiterGatewayFilterFactory.LIMIT_HEADER)).isEqualTo("3");
+        assertThat(headers.getFirst(TokenBucketRateLimiterGatewayFilterFactory.REMAINING_HEADER)).isEqualTo("2");
+        // One token used at one a second
+        assertThat(headers.getFirst(TokenBucketRateLimiterGatewayFilterFactory.RESET_HEADER)).isEqualTo("1");
+        assertThat(headers.getFirst(HttpHeaders.RETRY_AFTER)).isNull();
+    }
+
+    @Test
+    void anEmptyBucketAnswers429WithRetryAfterAndGoesNoFurther() {
+        GatewayFilter filter = filter(1, 2, 1);
+        run(filter, "203.0.113.9");
+        run(filter, "203.0.113.9");
+
+        MockServerWebExchange rejected = run(filter, "203.0.113.9");
+
+        assertThat(upstreamCalls).hasValue(2);
+        assertThat(rejected.getResponse().getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+        HttpHeaders headers = rejected.getResponse().getHeaders();
+        assertThat(headers.getFirst(HttpHeaders.RETRY_AFTER)).isEqualTo("1");
+        assertThat(headers.getFirst(TokenBucketRateLimiterGatewayFilterFactory.REMAINING_HEADER)).isEqualTo("0");
+        assertThat(headers.getFirst(TokenBucketRateLimiterGatewayFilterFactory.RESET_HEADER)).isEqualTo("2");
+    }
+
+    @Test
+    void retryAfterIsNeverZero() {
+        // A token every 10ms, so the wait rounds up to a whole second rather than down to none
+        GatewayFilter filter = filter(100, 1, 1);
+        run(filter, "203.0.113.9");
+
+        MockServerWebExchange rejected = run(filter, "203.0.113.9");
+
+        assertThat(rejected.getResponse().getHeaders().getFirst(HttpHeaders.RETRY_AFTER)).isEqualTo("1");
+    }
+
+    @Test
+    void aRetriedExchangeIsChargedOnlyOnce() {
+        GatewayFilter filter = filter(1, 1, 1);
+        MockServerWebExchange exchange = exchange("203.0.113.9");
+
+        filter.filter(exchange, upstream).block();
+        filter.filter(exchange, upstream).block();
+
+        assertThat(upstreamCalls).hasValue(2);
+        assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.OK);
+    }
+
+    @Test
+    void anonymousCallersGetABucketPerAddress() {
+        GatewayFilter filter = filter(1, 1, 1);
+
+        run(filter, "203.0.113.9");
+        MockServerWebExchange other = run(filter, "203.0.113.10");
+        MockServerWebExchange again = run(filter, "203.0.113.9");
+
+        assertThat(other.getResponse().getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(again.getResponse().getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+    }
+
+    @Test
+    void requestedTokensAreChargedPerRequest() {
+        GatewayFilter filter = filter(1, 10, 4);
+
+        MockServerWebExchange exchange = run(filter, "203.0.113.9");
+
+        assertThat(exchange.getResponse().getHeaders().getFirst(TokenBucketRateLimiterGatewayFilterFactory.REMAINING_HEADER))
+                .isEqualTo("6");
+    }
+
+    @Test
+    void unsetLimitsFallBackToTheDefaults() {
+        properties.setDefaultReplenishRate(1);
+        properties.setDefaultBurstCapacity(2);
+        GatewayFilter filter = factory.apply(new TokenBucketRateLimiterGatewayFilterFactory.Config());
+
+        MockServerWebExchange exchange = run(filter, "203.0.113.9");
+
+        assertThat(exchange.getResponse().getHeaders().getFirst(TokenBucketRateLimiterGatewayFilterFactory.LIMIT_HEADER))
+                .isEqualTo("2");
+        assertThat(run(filter, "203.0.113.9").getResponse().getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(run(filter, "203.0.113.9").getResponse().getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+    }
+
+    private GatewayFilter filter(int replenishRate, int burstCapacity, int requestedTokens) {
+        TokenBucketRateLimiterGatewayFilterFactory.Config config = new TokenBucketRateLimiterGatewayFilterFactory.Config();
+        config.setReplenishRate(replenishRate);
+        config.setBurstCapacity(burstCapacity);
+        config.setRequestedTokens(requestedTokens);
+        return factory.apply(config);
+    }
+
+    private MockServerWebExchange run(GatewayFilter filter, String address) {
+        MockServerWebExchange exchange = exchange(address);
+        filter.filter(exchange, upstream).block();
+        return exchange;
+    }
+
+    private static MockServerWebExchange exchange(String address) {
+        return MockServerWebExchange.from(MockServerHttpRequest.get("/api/transactions/user/1")
+                .remoteAddress(new InetSocketAddress(address, 50000))
+                .build());
+    }
+
+    private static TokenBucketStore store() {
+        RateLimitProperties properties = new RateLimitProperties();
+        properties.setIdleTtl(Duration.ofMinutes(10));
+        return new TokenBucketStore(properties);
+    }
+}
@@ -0,0 +1,75 @@
+package com.personalfinance.gateway.ratelimit;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import com.personalfinance.gateway.config.RateLimitProperties;
+
+/**
+ * What the rate limiter adds to a request: one tryAcquire on a hot key,
+ * admitted or rejected, across many users' keys, and with callers racing on
+ * one key. Launched by {@link TokenBucketStoreTest}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TokenBucketBenchmark {
+
+    static final int USERS = 100_000;
+    // A token a nanosecond with a deep bucket, so every call is admitted and takes the CAS
+    private static final int OPEN_RATE = 1_000_000_000;
+    private static final int OPEN_BURST = 1_000_000_000;
+
+    private TokenBucketStore store;
+    private String[] keys;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        RateLimitProperties properties = new RateLimitProperties();
+        properties.setIdleTtl(Duration.ofMinutes(10));
+        store = new TokenBucketStore(properties);
+        keys = new String[USERS];
+        for (int i = 0; i < USERS; i++) {
+            keys[i] = "transactions|user-" + i;
+            store.tryAcquire(keys[i], OPEN_RATE, OPEN_BURST, 1);
+        }
+        store.tryAcquire("transactions|empty", 1, 1, 1);
+    }
+
+    @Benchmark
+    public boolean admitted() {
+        return store.tryAcquire("transactions|user-0", OPEN_RATE, OPEN_BURST, 1).isAllowed();
+    }
+
+    @Benchmark
+    public boolean rejected() {
+        return store.tryAcquire("transactions|empty", 1, 1, 1).isAllowed();
+    }
+
+    @Benchmark
+    public boolean manyUsers(Cursor cursor) {
+        cursor.next = cursor.next + 1 < USERS ? cursor.next + 1 : 0;
+        return store.tryAcquire(keys[cursor.next], OPEN_RATE, OPEN_BURST, 1).isAllowed();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean contended() {
+        return store.tryAcquire("transactions|user-0", OPEN_RATE, OPEN_BURST, 1).isAllowed();
+    }
+}
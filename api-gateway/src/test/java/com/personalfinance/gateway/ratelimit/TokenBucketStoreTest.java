@@ -0,0 +1,222 @@
+package com.personalfinance.gateway.ratelimit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import com.personalfinance.gateway.config.RateLimitProperties;
+import com.personalfinance.gateway.ratelimit.TokenBucketStore.Result;
+
+class TokenBucketStoreTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    void aFullBucketAdmitsItsBurstAndThenRejects() {
+        TokenBucketStore store = store(16, Duration.ofMinutes(10));
+
+        for (int remaining = 4; remaining >= 0; remaining--) {
+            Result result = store.tryAcquire("route|alice", 1, 5, 1);
+            assertThat(result.isAllowed()).isTrue();
+            assertThat(result.getRemaining()).isEqualTo(remaining);
+            assertThat(result.getRetryAfterNanos()).isZero();
+        }
+        Result rejected = store.tryAcquire("route|alice", 1, 5, 1);
+
+        assertThat(rejected.isAllowed()).isFalse();
+        assertThat(rejected.getRemaining()).isZero();
+        // The next token is up to a second away, less whatever time the calls took, and the bucket full again in five
+        assertThat(rejected.getRetryAfterNanos()).isBetween(1L, SECOND);
+        assertThat(rejected.getResetNanos()).isBetween(4 * SECOND, 5 * SECOND);
+    }
+
+    @Test
+    void tokensComeBackAtTheReplenishRate() throws InterruptedException {
+        TokenBucketStore store = store(16, Duration.ofMinutes(10));
+        assertThat(store.tryAcquire("route|alice", 10, 1, 1).isAllowed()).isTrue();
+
+        Result rejected = store.tryAcquire("route|alice", 10, 1, 1);
+        assertThat(rejected.isAllowed()).isFalse();
+        assertThat(rejected.getRetryAfterNanos()).isBetween(1L, SECOND / 10);
+
+        Thread.sleep(TimeUnit.NANOSECONDS.toMillis(rejected.getRetryAfterNanos()) + 10);
+        assertThat(store.tryAcquire("route|alice", 10, 1, 1).isAllowed()).isTrue();
+    }
+
+    @Test
+    void anIdleBucketRefillsOnlyUpToItsBurst() throws InterruptedException {
+        TokenBucketStore store = store(16, Duration.ofMinutes(10));
+        store.tryAcquire("route|alice", 100, 3, 1);
+
+        // Long enough for twenty tokens at this rate
+        Thread.sleep(200);
+
+        assertThat(admitted(store, "route|alice", 100, 3, 10)).isEqualTo(3);
+    }
+
+    @Test
+    void aRequestCanTakeSeveralTokens() {
+        TokenBucketStore store = store(16, Duration.ofMinutes(10));
+
+        assertThat(store.tryAcquire("route|alice", 1, 10, 4).getRemaining()).isEqualTo(6);
+        assertThat(store.tryAcquire("route|alice", 1, 10, 4).getRemaining()).isEqualTo(2);
+        Result rejected = store.tryAcquire("route|alice", 1, 10, 4);
+
+        assertThat(rejected.isAllowed()).isFalse();
+        assertThat(rejected.getRemaining()).isEqualTo(2);
+        // Two tokens short, so more than one token's wait
+        assertThat(rejected.getRetryAfterNanos()).isBetween(SECOND + 1, 2 * SECOND);
+        assertThat(store.tryAcquire("route|alice", 1, 10, 2).isAllowed()).isTrue();
+    }
+
+    @Test
+    void rejectedRequestsAreNotCharged() {
+        TokenBucketStore store = store(16, Duration.ofMinutes(10));
+        store.tryAcquire("route|alice", 1, 1, 1);
+
+        long firstRetryAfter = store.tryAcquire("route|alice", 1, 1, 1).getRetryAfterNanos();
+        for (int i = 0; i < 100; i++) {
+            store.tryAcquire("route|alice", 1, 1, 1);
+        }
+
+        assertThat(store.tryAcquire("route|alice", 1, 1, 1).getRetryAfterNanos()).isLessThanOrEqualTo(firstRetryAfter);
+    }
+
+    @Test
+    void everyKeyHasItsOwnBucket() {
+        TokenBucketStore store = store(16, Duration.ofMinutes(10));
+
+        assertThat(admitted(store, "route|alice", 1, 2, 5)).isEqualTo(2);
+        assertThat(admitted(store, "route|bob", 1, 2, 5)).isEqualTo(2);
+        assertThat(admitted(store, "other|alice", 1, 2, 5)).isEqualTo(2);
+        assertThat(store.size()).isEqualTo(3);
+    }
+
+    @Test
+    void idleBucketsAreSweptOnlyFromTheShardBeingUsed() throws InterruptedException {
+        TokenBucketStore store = store(2, Duration.ofMillis(50));
+        List<String> first = new ArrayList<>();
+        List<String> second = new ArrayList<>();
+        for (int i = 0; first.size() < 4 || second.size() < 3; i++) {
+            String key = "route|user-" + i;
+            List<String> shard = shard(key, 2) == 0 ? first : second;
+            if (shard.size() < (shard == first ? 4 : 3)) {
+                shard.add(key);
+                store.tryAcquire(key, 1, 1, 1);
+            }
+        }
+        assertThat(store.size()).isEqualTo(7);
+
+        Thread.sleep(120);
+        // The next request to land on the first shard sweeps it; the second shard is left alone
+        String fresh = "route|fresh";
+        for (int i = 0; shard(fresh, 2) != 0; i++) {
+            fresh = "route|fresh-" + i;
+        }
+        store.tryAcquire(fresh, 1, 1, 1);
+
+        assertThat(store.size()).isEqualTo(1 + second.size());
+        // A swept bucket starts again full
+        assertThat(store.tryAcquire(first.get(0), 1, 1, 1).isAllowed()).isTrue();
+    }
+
+    @Test
+    void racingCallersNeverTakeMoreThanTheBurst() throws Exception {
+        TokenBucketStore store = store(16, Duration.ofMinutes(10));
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CyclicBarrier start = new CyclicBarrier(threads);
+        try {
+            List<Future<Integer>> admitted = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                admitted.add(executor.submit(() -> {
+                    start.await();
+                    return admitted(store, "route|alice", 1, 100, 1_000);
+                }));
+            }
+            int total = 0;
+            for (Future<Integer> future : admitted) {
+                total += future.get(30, TimeUnit.SECONDS);
+            }
+
+            // The burst, plus a token a second for however long the race took
+            assertThat(total).isBetween(100, 102);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * The JMH suite: tryAcquire's cost per request and its allocation, from
+     * the GC profiler. Only runs with -Pslow-tests.
+     */
+    @Test
+    @Tag("slow")
+    void jmhPerRequestOverhead() throws RunnerException {
+        Map<String, String> results = new TreeMap<>();
+        Map<String, Double> nanos = new TreeMap<>();
+        for (RunResult result : new Runner(new OptionsBuilder()
+                .include(TokenBucketBenchmark.class.getName())
+                .forks(1)
+                .warmupIterations(3)
+                .warmupTime(TimeValue.seconds(1))
+                .measurementIterations(5)
+                .measurementTime(TimeValue.seconds(1))
+                .addProfiler(GCProfiler.class)
+                .build()).run()) {
+            String name = result.getParams().getBenchmark().replaceAll(".*\\.", "");
+            double score = result.getPrimaryResult().getScore();
+            double bytes = result.getSecondaryResults().get("gc.alloc.rate.norm").getScore();
+            nanos.put(name, score);
+            results.put(name, String.format("%.1f ns/op, %.0f B/op", score, bytes));
+        }
+
+        System.out.printf("[rate-limit] %d users: %s%n", TokenBucketBenchmark.USERS, results);
+        // Microseconds at most next to a proxied request's milliseconds; a spread of users costs cache misses, not more work
+        assertThat(nanos.get("admitted")).isLessThan(1_000.0);
+        assertThat(nanos.get("rejected")).isLessThan(1_000.0);
+        assertThat(nanos.get("manyUsers")).isLessThan(2_000.0);
+        assertThat(nanos.get("contended")).isLessThan(5_000.0);
+    }
+
+    private static int admitted(TokenBucketStore store, String key, int replenishRate, int burstCapacity, int attempts) {
+        int admitted = 0;
+        for (int i = 0; i < attempts; i++) {
+            if (store.tryAcquire(key, replenishRate, burstCapacity, 1).isAllowed()) {
+                admitted++;
+            }
+        }
+        return admitted;
+    }
+
+    // As the store spreads keys
+    private static int shard(String key, int shards) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & (shards - 1);
+    }
+
+    private static TokenBucketStore store(int shards, Duration idleTtl) {
+        RateLimitProperties properties = new RateLimitProperties();
+        properties.setShards(shards);
+        properties.setIdleTtl(idleTtl);
+        return new TokenBucketStore(properties);
+    }
+}
@@ -0,0 +1,121 @@
+package com.personalfinance.gateway.resilience;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.personalfinance.gateway.config.ResilienceProperties;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Mono;
+
+class HedgerTest {
+
+    private static final String KEY = "transactions";
+    private static final Duration TYPICAL = Duration.ofMillis(20);
+
+    private final ResilienceProperties properties = new ResilienceProperties();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private Hedger hedger;
+
+    @BeforeEach
+    void setUp() {
+        properties.setHedgingEnabled(true);
+        properties.setHedgingMinSamples(5);
+        properties.setLatencyWindow(16);
+        hedger = new Hedger(properties, registry);
+    }
+
+    @Test
+    void aCallSlowerThanItsP95IsHedgedAndTheLoserCancelled() {
+        warmUp();
+        AtomicInteger attempts = new AtomicInteger();
+        AtomicBoolean primaryCancelled = new AtomicBoolean();
+
+        long start = System.nanoTime();
+        String answer = hedger.call(KEY, () -> attempts.incrementAndGet() == 1
+                ? Mono.<String>never().doOnCancel(() -> primaryCancelled.set(true))
+                : Mono.just("hedge").delayElement(TYPICAL))
+                .block(Duration.ofSeconds(5));
+
+        assertThat(answer).isEqualTo("hedge");
+        assertThat(attempts).hasValue(2);
+        assertThat(primaryCancelled).isTrue();
+        // The hedge waited for the p95 before it went out
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isGreaterThanOrEqualTo(TYPICAL.multipliedBy(2));
+        assertThat(registry.counter("gateway.hedging.requests", "attempt", "hedge").count()).isEqualTo(1);
+        assertThat(registry.counter("gateway.hedging.requests", "attempt", "hedge_won").count()).isEqualTo(1);
+    }
+
+    @Test
+    void aCallThatAnswersBeforeItsP95IsNotHedged() {
+        warmUp();
+        AtomicInteger attempts = new AtomicInteger();
+
+        String answer = hedger.call(KEY, () -> {
+            attempts.incrementAndGet();
+            return Mono.just("primary");
+        }).block(Duration.ofSeconds(5));
+
+        assertThat(answer).isEqualTo("primary");
+        // Give a wrongly scheduled hedge time to go out
+        Mono.delay(TYPICAL.multipliedBy(3)).block();
+        assertThat(attempts).hasValue(1);
+    }
+
+    @Test
+    void nothingIsHedgedUntilTheLatencyIsKnown() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        String answer = hedger.call(KEY, () -> attempts.incrementAndGet() == 1
+                ? Mono.just("primary").delayElement(TYPICAL.multipliedBy(5))
+                : Mono.just("hedge"))
+                .block(Duration.ofSeconds(5));
+
+        assertThat(answer).isEqualTo("primary");
+        assertThat(attempts).hasValue(1);
+    }
+
+    @Test
+    void whenBothAttemptsFailTheCallerSeesThePrimarysError() {
+        warmUp();
+        IllegalStateException failure = new IllegalStateException("primary down");
+        AtomicInteger attempts = new AtomicInteger();
+
+        // The hedge fails first, but it is the primary's error that is reported
+        Mono<String> call = hedger.call(KEY, () -> attempts.incrementAndGet() == 1
+                ? Mono.<String>error(failure).delaySubscription(TYPICAL.multipliedBy(5))
+                : Mono.error(new IllegalStateException("hedge down")));
+
+        assertThatThrownBy(() -> call.block(Duration.ofSeconds(5))).isSameAs(failure);
+        assertThat(attempts).hasValue(2);
+    }
+
+    @Test
+    void disabledHedgingMakesOneAttempt() {
+        warmUp();
+        properties.setHedgingEnabled(false);
+        AtomicInteger attempts = new AtomicInteger();
+
+        String answer = hedger.call(KEY, () -> attempts.incrementAndGet() == 1
+                ? Mono.just("primary").delayElement(TYPICAL.multipliedBy(5))
+                : Mono.just("hedge"))
+                .block(Duration.ofSeconds(5));
+
+        assertThat(answer).isEqualTo("primary");
+        assertThat(attempts).hasValue(1);
+    }
+
+    // Just enough calls of the typical latency for the tracker to trust its p95; none of them is hedged
+    private void warmUp() {
+        for (int i = 0; i < properties.getHedgingMinSamples(); i++) {
+            hedger.call(KEY, () -> Mono.just("warm").delayElement(TYPICAL)).block(Duration.ofSeconds(5));
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.personalfinance.gateway.resilience;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+class LatencyTrackerTest {
+
+    @Test
+    void thereIsNoEstimateUntilEnoughSamples() {
+        LatencyTracker tracker = new LatencyTracker(8);
+
+        for (long nanos = 1; nanos <= 4; nanos++) {
+            tracker.record(nanos);
+        }
+
+        assertThat(tracker.p95Nanos(5)).isEqualTo(-1);
+        assertThat(tracker.p95Nanos(4)).isEqualTo(4);
+    }
+
+    @Test
+    void p95IsTheNinetyFifthPercentileOfTheWindow() {
+        LatencyTracker tracker = new LatencyTracker(40);
+
+        // 1..40 scrambled; the estimate is refreshed every 5 records, so one more lands on a refresh.
+        // It goes into the oldest slot, which held the same value
+        for (int i = 0; i < 40; i++) {
+            tracker.record((i * 7) % 40 + 1);
+        }
+        tracker.record(1);
+
+        assertThat(tracker.p95Nanos(1)).isEqualTo(38);
+    }
+
+    @Test
+    void oldSamplesSlideOutOfTheWindow() {
+        LatencyTracker tracker = new LatencyTracker(8);
+
+        for (int i = 0; i < 8; i++) {
+            tracker.record(1_000);
+        }
+        for (int i = 0; i < 8; i++) {
+            tracker.record(10);
+        }
+
+        assertThat(tracker.p95Nanos(1)).isEqualTo(10);
+    }
+}
@@ -0,0 +1,81 @@
+package com.personalfinance.gateway.resilience;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class RetryBudgetTest {
+
+    @Test
+    void eachRequestDepositsItsShareOfARetry() {
+        RetryBudget budget = new RetryBudget(0.2, 0);
+
+        for (int i = 0; i < 4; i++) {
+            budget.recordRequest();
+        }
+        assertThat(budget.tryWithdraw()).isFalse();
+
+        budget.recordRequest();
+        assertThat(budget.tryWithdraw()).isTrue();
+        assertThat(budget.tryWithdraw()).isFalse();
+    }
+
+    @Test
+    void retriesStayWithinTheRatioOfRequests() {
+        RetryBudget budget = new RetryBudget(0.2, 0);
+
+        int retries = 0;
+        for (int i = 0; i < 1_000; i++) {
+            budget.recordRequest();
+            if (budget.tryWithdraw()) {
+                retries++;
+            }
+        }
+
+        assertThat(retries).isEqualTo(200);
+    }
+
+    @Test
+    void aQuietRouteStillGetsItsRetriesPerSecond() {
+        RetryBudget budget = new RetryBudget(0.2, 3);
+
+        // Retried if a second boundary falls inside the loop, which tops the allowance up again
+        for (int attempt = 0; attempt < 5; attempt++) {
+            long second = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+            int withdrawn = drain(budget);
+            if (second == TimeUnit.NANOSECONDS.toSeconds(System.nanoTime())) {
+                assertThat(withdrawn).isEqualTo(3);
+                return;
+            }
+        }
+        throw new AssertionError("Every attempt straddled a second boundary");
+    }
+
+    @Test
+    void aLongQuietSpellBanksAtMostAHundredRetries() {
+        RetryBudget budget = new RetryBudget(1.0, 0);
+
+        for (int i = 0; i < 10_000; i++) {
+            budget.recordRequest();
+        }
+
+        assertThat(drain(budget)).isEqualTo(100);
+    }
+
+    @Test
+    void theCapNeverDropsBelowTheAllowance() {
+        RetryBudget budget = new RetryBudget(0.0, 500);
+
+        assertThat(drain(budget)).isBetween(500, 1_000);
+    }
+
+    private static int drain(RetryBudget budget) {
+        int withdrawn = 0;
+        while (budget.tryWithdraw()) {
+            withdrawn++;
+        }
+        return withdrawn;
+    }
+}
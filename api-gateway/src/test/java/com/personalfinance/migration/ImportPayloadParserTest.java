@@ -0,0 +1,155 @@
+package com.personalfinance.migration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.personalfinance.migration.ImportPayloadParser.Record;
+import com.personalfinance.migration.ImportPayloadParser.Section;
+
+class ImportPayloadParserTest {
+
+    private static final String PAYLOAD = "{"
+            + "\"users\":[{\"id\":\"u1\",\"transactions\":[{\"id\":\"nested\"}]}],"
+            + "\"transactions\":[{\"id\":\"t1\",\"amount\":-12.5,\"description\":\"Café \\\"Noir\\\"\"},"
+            + "{\"id\":\"t2\",\"amount\":2000,\"type\":\"income\",\"tags\":[\"a\",{\"b\":[1,2]}]}],"
+            + "\"settings\":{\"goals\":[{\"name\":\"nested\"}],\"currency\":\"EUR\"},"
+            + "\"budgets\":[{\"category\":\"GROCERIES\",\"amount\":400}],"
+            + "\"goals\":[{\"name\":\"Holiday\",\"targetAmount\":1500}]"
+            + "}";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void importedSectionsComeOutAsOneRecordPerElement() {
+        List<Record> records = parse(PAYLOAD.getBytes(StandardCharsets.UTF_8), Integer.MAX_VALUE);
+
+        assertThat(records).extracting(record -> record.section)
+                .containsExactly(Section.TRANSACTIONS, Section.TRANSACTIONS, Section.BUDGETS, Section.GOALS);
+        assertThat(records.get(0).node.path("description").asText()).isEqualTo("Café \"Noir\"");
+        assertThat(records.get(1).node.path("tags").get(1).path("b").get(1).asInt()).isEqualTo(2);
+        assertThat(records.get(3).node.path("name").asText()).isEqualTo("Holiday");
+    }
+
+    @Test
+    void sectionsNestedInsideOthersAreSkipped() {
+        List<Record> records = parse(PAYLOAD.getBytes(StandardCharsets.UTF_8), Integer.MAX_VALUE);
+
+        assertThat(records).extracting(record -> record.node.path("id").asText(record.node.path("name").asText()))
+                .doesNotContain("nested");
+    }
+
+    @Test
+    void recordsSplitAcrossChunksComeOutTheSame() {
+        byte[] payload = PAYLOAD.getBytes(StandardCharsets.UTF_8);
+        List<String> whole = render(parse(payload, Integer.MAX_VALUE));
+
+        // Every cut point, including inside the multi-byte character and escapes
+        for (int cut = 1; cut < payload.length; cut++) {
+            ImportPayloadParser parser = new ImportPayloadParser(objectMapper, Integer.MAX_VALUE);
+            List<Record> records = new ArrayList<>(parser.feed(Arrays.copyOfRange(payload, 0, cut)));
+            records.addAll(parser.feed(Arrays.copyOfRange(payload, cut, payload.length)));
+            records.addAll(parser.finish());
+            assertThat(render(records)).as("cut at %d", cut).isEqualTo(whole);
+        }
+
+        Random random = new Random(1);
+        for (int run = 0; run < 50; run++) {
+            ImportPayloadParser parser = new ImportPayloadParser(objectMapper, Integer.MAX_VALUE);
+            List<Record> records = new ArrayList<>();
+            for (int from = 0; from < payload.length; ) {
+                int to = Math.min(payload.length, from + 1 + random.nextInt(8));
+                records.addAll(parser.feed(Arrays.copyOfRange(payload, from, to)));
+                from = to;
+            }
+            records.addAll(parser.finish());
+            assertThat(render(records)).isEqualTo(whole);
+        }
+    }
+
+    @Test
+    void elementsThatAreNotObjectsComeOutWithoutANode() {
+        List<Record> records = parse("{\"transactions\":[1,\"x\",null,[2],{\"id\":\"t1\"}],\"goals\":{}}"
+                .getBytes(StandardCharsets.UTF_8), Integer.MAX_VALUE);
+
+        assertThat(records).hasSize(5);
+        assertThat(records.subList(0, 4)).allSatisfy(record -> assertThat(record.node).isNull());
+        assertThat(records.get(4).node.path("id").asText()).isEqualTo("t1");
+    }
+
+    @Test
+    void anElementOverTheLimitFails() {
+        String small = "{\"id\":\"t1\",\"amount\":1}";
+        String large = "{\"id\":\"t2\",\"notes\":\"" + "x".repeat(200) + "\"}";
+        byte[] payload = ("{\"transactions\":[" + small + "," + large + "]}").getBytes(StandardCharsets.UTF_8);
+
+        assertThat(parse(payload, 256)).hasSize(2);
+        ImportPayloadParser parser = new ImportPayloadParser(objectMapper, 128);
+        assertThatThrownBy(() -> parser.feed(payload))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("A transactions element is larger than 128 bytes");
+    }
+
+    @Test
+    void skippedSectionsAreNotHeldToTheLimit() {
+        byte[] payload = ("{\"settings\":{\"blob\":\"" + "x".repeat(10_000) + "\"},\"goals\":[{\"name\":\"Car\"}]}")
+                .getBytes(StandardCharsets.UTF_8);
+
+        assertThat(parse(payload, 128)).hasSize(1);
+    }
+
+    @Test
+    void aTruncatedPayloadFailsWhenTheBodyEnds() {
+        byte[] payload = PAYLOAD.getBytes(StandardCharsets.UTF_8);
+        for (int length : new int[] {0, 1, payload.length / 2, payload.length - 1}) {
+            ImportPayloadParser parser = new ImportPayloadParser(objectMapper, Integer.MAX_VALUE);
+            parser.feed(Arrays.copyOf(payload, length));
+            assertThatThrownBy(parser::finish)
+                    .as("%d bytes", length)
+                    .isInstanceOf(IllegalArgumentException.class)
+                    .hasMessage("Payload ended before the JSON was complete");
+        }
+    }
+
+    @Test
+    void malformedJsonFails() {
+        ImportPayloadParser parser = new ImportPayloadParser(objectMapper, Integer.MAX_VALUE);
+
+        assertThatThrownBy(() -> parser.feed("{\"transactions\":[{\"id\" 1}]}".getBytes(StandardCharsets.UTF_8)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageStartingWith("Malformed JSON at byte");
+    }
+
+    @Test
+    void theTopLevelMustBeOneObject() {
+        assertThatThrownBy(() -> parse("[{\"id\":\"t1\"}]".getBytes(StandardCharsets.UTF_8), Integer.MAX_VALUE))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Expected a single JSON object at the top level");
+        assertThatThrownBy(() -> parse("{} {}".getBytes(StandardCharsets.UTF_8), Integer.MAX_VALUE))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Expected a single JSON object at the top level");
+    }
+
+    private List<Record> parse(byte[] payload, int maxRecordBytes) {
+        ImportPayloadParser parser = new ImportPayloadParser(objectMapper, maxRecordBytes);
+        List<Record> records = new ArrayList<>(parser.feed(payload));
+        records.addAll(parser.finish());
+        return records;
+    }
+
+    private static List<String> render(List<Record> records) {
+        List<String> rendered = new ArrayList<>();
+        for (Record record : records) {
+            rendered.add(record.section + " " + record.node);
+        }
+        return rendered;
+    }
+}
@@ -0,0 +1,151 @@
+package com.personalfinance.migration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class LegacyRecordMapperTest {
+
+    private static final long USER = 7L;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void aNegativeAmountWithoutATypeIsAnExpense() {
+        Map<String, Object> request = LegacyRecordMapper.transaction(
+                node("{\"id\":\"t1\",\"amount\":\"-12.345\",\"category\":\"Dining\",\"date\":\"2024-03-01T18:30:00.000Z\","
+                        + "\"name\":\"Lunch\",\"merchant\":\"Bistro\"}"), USER, "fallback");
+
+        assertThat(request).containsEntry("userId", USER)
+                .containsEntry("type", "EXPENSE")
+                .containsEntry("amount", new BigDecimal("12.35"))
+                .containsEntry("category", "DINING")
+                .containsEntry("transactionDate", "2024-03-01")
+                .containsEntry("description", "Lunch")
+                .containsEntry("merchant", "Bistro");
+    }
+
+    @Test
+    void aPositiveAmountNeedsAType() {
+        assertThat(LegacyRecordMapper.transaction(node("{\"amount\":50,\"date\":\"2024-03-01\"}"), USER, "k")).isNull();
+
+        Map<String, Object> income = LegacyRecordMapper.transaction(
+                node("{\"amount\":50,\"type\":\"income\",\"date\":\"2024-03-01\"}"), USER, "k");
+        assertThat(income).containsEntry("type", "INCOME").containsEntry("amount", new BigDecimal("50.00"));
+    }
+
+    @Test
+    void unknownCategoriesFallBackToOtherForTheType() {
+        assertThat(LegacyRecordMapper.transaction(
+                node("{\"amount\":-5,\"category\":\"Food & Dining\",\"date\":\"2024-03-01\"}"), USER, "k"))
+                .containsEntry("category", "OTHER_EXPENSE");
+        assertThat(LegacyRecordMapper.transaction(
+                node("{\"amount\":5,\"type\":\"INCOME\",\"date\":\"2024-03-01\"}"), USER, "k"))
+                .containsEntry("category", "OTHER_INCOME");
+        assertThat(LegacyRecordMapper.transaction(
+                node("{\"amount\":-5,\"category\":\" other expense \",\"date\":\"2024-03-01\"}"), USER, "k"))
+                .containsEntry("category", "OTHER_EXPENSE");
+    }
+
+    @Test
+    void theTransactionDateWinsOverTheDate() {
+        assertThat(LegacyRecordMapper.transaction(
+                node("{\"amount\":-5,\"transactionDate\":\"2024-04-02\",\"date\":\"2024-03-01\"}"), USER, "k"))
+                .containsEntry("transactionDate", "2024-04-02");
+    }
+
+    @Test
+    void unusableTransactionsAreRejected() {
+        for (String json : new String[] {
+                "{\"amount\":0,\"type\":\"EXPENSE\",\"date\":\"2024-03-01\"}",
+                "{\"type\":\"EXPENSE\",\"date\":\"2024-03-01\"}",
+                "{\"amount\":\"lots\",\"type\":\"EXPENSE\",\"date\":\"2024-03-01\"}",
+                "{\"amount\":-5,\"type\":\"TRANSFER\",\"date\":\"2024-03-01\"}",
+                "{\"amount\":-5}",
+                "{\"amount\":-5,\"date\":\"yesterday\"}",
+                "{\"amount\":-5,\"date\":\"2024-13-01\"}"}) {
+            assertThat(LegacyRecordMapper.transaction(node(json), USER, "k")).as(json).isNull();
+        }
+    }
+
+    @Test
+    void theIdempotencyKeyComesFromTheLegacyIdWhenThereIsOne() {
+        String json = "{\"amount\":-5,\"date\":\"2024-03-01\"%s}";
+
+        assertThat(LegacyRecordMapper.transaction(node(String.format(json, ",\"id\":1709300000000")), USER, "fallback"))
+                .containsEntry("idempotencyKey", "import:7:1709300000000");
+        assertThat(LegacyRecordMapper.transaction(node(String.format(json, "")), USER, "fallback"))
+                .containsEntry("idempotencyKey", "fallback");
+        // Too long to fit the key column
+        assertThat(LegacyRecordMapper.transaction(node(String.format(json, ",\"id\":\"" + "x".repeat(101) + "\"")), USER, "fallback"))
+                .containsEntry("idempotencyKey", "fallback");
+    }
+
+    @Test
+    void longTextIsTruncated() {
+        Map<String, Object> request = LegacyRecordMapper.transaction(node("{\"amount\":-5,\"date\":\"2024-03-01\","
+                + "\"description\":\"" + "d".repeat(150) + "\",\"notes\":\"" + "n".repeat(600) + "\"}"), USER, "k");
+
+        assertThat((String) request.get("description")).hasSize(100);
+        assertThat((String) request.get("notes")).hasSize(500);
+    }
+
+    @Test
+    void budgetsDefaultToMonthlyAndAreNamedAfterTheCategory() {
+        Map<String, Object> budget = LegacyRecordMapper.budget(node("{\"category\":\"GROCERIES\",\"amount\":\"400\","
+                + "\"startDate\":\"2024-03-01\",\"endDate\":\"2024-03-31T23:59:59Z\"}"), USER);
+
+        assertThat(budget).containsEntry("name", "GROCERIES")
+                .containsEntry("period", "MONTHLY")
+                .containsEntry("amount", new BigDecimal("400.00"))
+                .containsEntry("endDate", "2024-03-31");
+    }
+
+    @Test
+    void incompleteBudgetsAreRejected() {
+        String dates = ",\"startDate\":\"2024-03-01\",\"endDate\":\"2024-03-31\"";
+        for (String json : new String[] {
+                "{\"category\":\"GROCERIES\",\"amount\":-400" + dates + "}",
+                "{\"amount\":400" + dates + "}",
+                "{\"category\":\"GROCERIES\",\"amount\":400,\"startDate\":\"2024-03-01\"}",
+                "{\"category\":\"GROCERIES\",\"amount\":400,\"period\":\"DAILY\"" + dates + "}"}) {
+            assertThat(LegacyRecordMapper.budget(node(json), USER)).as(json).isNull();
+        }
+    }
+
+    @Test
+    void goalsNeedANameAndAPositiveTarget() {
+        Map<String, Object> goal = LegacyRecordMapper.goal(
+                node("{\"name\":\"Holiday\",\"targetAmount\":1500,\"currentAmount\":-20,\"dueDate\":\"2025-06-01\"}"), USER);
+
+        assertThat(goal).containsEntry("targetAmount", new BigDecimal("1500.00"))
+                .containsEntry("currentAmount", new BigDecimal("0.00"))
+                .containsEntry("dueDate", "2025-06-01");
+        assertThat(LegacyRecordMapper.goal(node("{\"name\":\"Car\",\"targetAmount\":\"900\"}"), USER))
+                .containsEntry("currentAmount", BigDecimal.ZERO)
+                .containsEntry("dueDate", null);
+        assertThat(LegacyRecordMapper.goal(node("{\"targetAmount\":1500}"), USER)).isNull();
+        assertThat(LegacyRecordMapper.goal(node("{\"name\":\"Holiday\",\"targetAmount\":0}"), USER)).isNull();
+    }
+
+    @Test
+    void theLegacyOwnerIsReadAsText() {
+        assertThat(LegacyRecordMapper.legacyUserId(node("{\"userId\":42}"))).isEqualTo("42");
+        assertThat(LegacyRecordMapper.legacyUserId(node("{\"userId\":{\"id\":42}}"))).isNull();
+        assertThat(LegacyRecordMapper.legacyUserId(node("{}"))).isNull();
+    }
+
+    private JsonNode node(String json) {
+        try {
+            return objectMapper.readTree(json);
+        } catch (Exception e) {
+            throw new IllegalArgumentException(json, e);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.personalfinance.migration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.TimeoutException;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.server.ResponseStatusException;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+class MigrationControllerTest {
+
+    private static final String TOKEN = "Bearer token";
+
+    private UserDataPurger purger;
+    private UserDataExporter exporter;
+    private ImportJobRegistry jobs;
+    private MigrationController controller;
+
+    @BeforeEach
+    void setUp() {
+        purger = mock(UserDataPurger.class);
+        exporter = mock(UserDataExporter.class);
+        jobs = mock(ImportJobRegistry.class);
+        controller = new MigrationController(mock(StreamingImporter.class), jobs, exporter, purger);
+    }
+
+    @Test
+    void purgeOfAnotherUsersDataIsForbidden() {
+        when(purger.isCaller(2L, TOKEN)).thenReturn(Mono.just(false));
+
+        ResponseEntity<?> response = controller.clearUserData(2L, TOKEN).block();
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.FORBIDDEN);
+        verify(purger, never()).start(anyLong(), any());
+    }
+
+    @Test
+    void purgeOfOwnDataStarts() {
+        when(purger.isCaller(1L, TOKEN)).thenReturn(Mono.just(true));
+        when(purger.start(1L, TOKEN)).thenReturn(Mono.just(new PurgeJob(1L)));
+
+        ResponseEntity<?> response = controller.clearUserData(1L, TOKEN).block();
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.ACCEPTED);
+        verify(purger).start(1L, TOKEN);
+    }
+
+    @Test
+    void progressOfAnotherUsersPurgeIsForbidden() {
+        when(purger.isCaller(2L, TOKEN)).thenReturn(Mono.just(false));
+
+        assertThat(controller.getClearProgress(2L, TOKEN).block().getStatusCode()).isEqualTo(HttpStatus.FORBIDDEN);
+        verify(purger, never()).progress(anyLong());
+    }
+
+    @Test
+    void unverifiableCallerIsNotTrusted() {
+        when(purger.isCaller(1L, TOKEN)).thenReturn(Mono.error(new TimeoutException()));
+
+        assertThat(controller.clearUserData(1L, TOKEN).block().getStatusCode()).isEqualTo(HttpStatus.BAD_GATEWAY);
+        verify(purger, never()).start(anyLong(), any());
+    }
+
+    @Test
+    void exportOfAnotherUsersDataIsForbidden() {
+        when(purger.isCaller(2L, TOKEN)).thenReturn(Mono.just(false));
+
+        assertThatThrownBy(() -> controller.exportUserData(2L, TOKEN).block())
+                .isInstanceOfSatisfying(ResponseStatusException.class,
+                        e -> assertThat(e.getStatus()).isEqualTo(HttpStatus.FORBIDDEN));
+        verify(exporter, never()).export(anyLong(), any());
+    }
+
+    @Test
+    void exportOfOwnDataStreams() {
+        when(purger.isCaller(1L, TOKEN)).thenReturn(Mono.just(true));
+        when(exporter.export(1L, TOKEN)).thenReturn(Flux.empty());
+
+        assertThat(controller.exportUserData(1L, TOKEN).block().getStatusCode()).isEqualTo(HttpStatus.OK);
+        verify(exporter).export(1L, TOKEN);
+    }
+
+    @Test
+    void importIntoAnotherUsersAccountIsForbidden() {
+        when(purger.isCaller(2L, TOKEN)).thenReturn(Mono.just(false));
+
+        ResponseEntity<?> response = controller.importUserData(2L, null, null, TOKEN, Flux.empty()).block();
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.FORBIDDEN);
+        verify(jobs, never()).start(any(), any());
+    }
+
+    @Test
+    void anotherUsersImportJobLooksMissing() {
+        when(jobs.get("job-1")).thenReturn(new ImportJob("job-1", 2L));
+        when(purger.isCaller(2L, TOKEN)).thenReturn(Mono.just(false));
+
+        assertThat(controller.getImportJob("job-1", TOKEN).block().getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+    }
+
+    @Test
+    void ownImportJobIsReported() {
+        when(jobs.get("job-1")).thenReturn(new ImportJob("job-1", 1L));
+        when(purger.isCaller(1L, TOKEN)).thenReturn(Mono.just(true));
+
+        assertThat(controller.getImportJob("job-1", TOKEN).block().getStatusCode()).isEqualTo(HttpStatus.OK);
+    }
+
+    @Test
+    void listingAnotherUsersImportJobsIsForbidden() {
+        when(purger.isCaller(2L, TOKEN)).thenReturn(Mono.just(false));
+
+        assertThat(controller.getImportJobs(2L, TOKEN).block().getStatusCode()).isEqualTo(HttpStatus.FORBIDDEN);
+        verify(jobs, never()).forUser(anyLong());
+    }
+}
@@ -0,0 +1,386 @@
+package com.personalfinance.migration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.assertj.core.api.InstanceOfAssertFactories;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.HttpMessageWriter;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.mock.http.client.reactive.MockClientHttpRequest;
+import org.springframework.web.reactive.function.BodyInserter;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeStrategies;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.personalfinance.gateway.cache.ResponseCacheStore;
+import com.personalfinance.gateway.config.MigrationProperties;
+import com.personalfinance.migration.ImportPayloadParser.Section;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+class StreamingImporterTest {
+
+    private static final long USER = 7L;
+
+    private static final class Call {
+        final String path;
+        final JsonNode records;
+        final String authorization;
+
+        Call(String path, JsonNode records, String authorization) {
+            this.path = path;
+            this.records = records;
+            this.authorization = authorization;
+        }
+    }
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ResponseCacheStore cacheStore = mock(ResponseCacheStore.class);
+    private final List<Call> calls = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger mostInFlight = new AtomicInteger();
+    private MigrationProperties properties;
+    // The status each call is answered with
+    private Function<Call, HttpStatus> status;
+    // Responses wait for this, so a test can hold every batch in flight
+    private Mono<Void> gate;
+    // Keeps the bodies out of the calls list when only the count matters
+    private boolean recordCalls;
+    private StreamingImporter importer;
+
+    @BeforeEach
+    void setUp() {
+        properties = new MigrationProperties();
+        status = call -> HttpStatus.OK;
+        gate = Mono.empty();
+        recordCalls = true;
+        importer = new StreamingImporter(WebClient.builder().exchangeFunction(this::upstream), objectMapper,
+                properties, cacheStore);
+    }
+
+    @Test
+    void batchesNeverMixSectionsOrExceedTheBatchSize() {
+        properties.setBatchSize(3);
+        String payload = payload(transactions(7, true), "[{\"category\":\"GROCERIES\",\"amount\":400,"
+                + "\"startDate\":\"2024-03-01\",\"endDate\":\"2024-03-31\"},{\"category\":\"DINING\",\"amount\":90,"
+                + "\"startDate\":\"2024-03-01\",\"endDate\":\"2024-03-31\"}]", goals(4));
+
+        ImportJob job = importer.run(new ImportJob("job", USER), chunks(payload, 5), null, "Bearer token")
+                .block(Duration.ofSeconds(30));
+
+        assertThat(calls).extracting(call -> call.path + " " + call.records.size()).containsExactly(
+                "/transactions/batch 3", "/transactions/batch 3", "/transactions/batch 1",
+                "/budgets/batch 2",
+                "/api/goals/batch 3", "/api/goals/batch 1");
+        assertThat(calls).extracting(call -> call.authorization).containsOnly("Bearer token");
+        assertThat(calls.get(3).records.get(1).path("category").asText()).isEqualTo("DINING");
+        assertThat(job.status()).isEqualTo(ImportJob.Status.COMPLETED);
+        assertThat(job.counters(Section.TRANSACTIONS).created.get()).isEqualTo(7);
+        assertThat(job.counters(Section.BUDGETS).created.get()).isEqualTo(2);
+        assertThat(job.counters(Section.GOALS).created.get()).isEqualTo(4);
+        assertThat(job.bytesRead.get()).isEqualTo(payload.getBytes(StandardCharsets.UTF_8).length);
+        verify(cacheStore, times(6)).invalidate(String.valueOf(USER));
+    }
+
+    @Test
+    void unusableAndOtherUsersRecordsAreCountedWithoutBeingSent() {
+        String payload = payload("[{\"id\":\"a\",\"userId\":\"u1\",\"amount\":-5,\"date\":\"2024-03-01\"},"
+                + "{\"id\":\"b\",\"userId\":\"u2\",\"amount\":-5,\"date\":\"2024-03-01\"},"
+                + "{\"id\":\"c\",\"userId\":\"u1\",\"amount\":0,\"date\":\"2024-03-01\"},"
+                + "42,"
+                + "{\"id\":\"d\",\"userId\":\"u1\",\"amount\":-7,\"date\":\"2024-03-02\"}]", "[]", "[]");
+
+        ImportJob job = importer.run(new ImportJob("job", USER), chunks(payload, 64), "u1", null)
+                .block(Duration.ofSeconds(30));
+
+        ImportJob.Counters transactions = job.counters(Section.TRANSACTIONS);
+        assertThat(transactions.parsed.get()).isEqualTo(5);
+        assertThat(transactions.skipped.get()).isEqualTo(1);
+        assertThat(transactions.rejected.get()).isEqualTo(2);
+        assertThat(transactions.created.get()).isEqualTo(2);
+        assertThat(calls).hasSize(1);
+        assertThat(calls.get(0).records).extracting(record -> record.path("idempotencyKey").asText())
+                .containsExactly("import:7:a", "import:7:d");
+    }
+
+    @Test
+    void aRejectedBatchIsCountedAsFailedAndTheImportCarriesOn() {
+        properties.setBatchSize(2);
+        status = call -> call.path.startsWith("/api/goals") && call.records.get(0).path("name").asText().equals("Goal 2")
+                ? HttpStatus.BAD_REQUEST : HttpStatus.OK;
+
+        ImportJob job = importer.run(new ImportJob("job", USER), chunks(payload(transactions(3, true), "[]", goals(5)), 16),
+                null, null).block(Duration.ofSeconds(30));
+
+        assertThat(job.status()).isEqualTo(ImportJob.Status.COMPLETED);
+        assertThat(job.counters(Section.GOALS).failed.get()).isEqualTo(2);
+        assertThat(job.counters(Section.GOALS).created.get()).isEqualTo(3);
+        assertThat(job.counters(Section.TRANSACTIONS).created.get()).isEqualTo(3);
+        assertThat(job.snapshot().get("errors")).asInstanceOf(InstanceOfAssertFactories.LIST).containsExactly("goals batch of 2 failed: status 400");
+        // A 4xx would fail the same way again
+        assertThat(calls).filteredOn(call -> call.path.startsWith("/api/goals")).hasSize(3);
+    }
+
+    @Test
+    void onlyTransactionBatchesAreRetried() {
+        properties.setBatchRetries(2);
+        AtomicInteger transactionCalls = new AtomicInteger();
+        status = call -> {
+            if (call.path.startsWith("/transactions")) {
+                return transactionCalls.incrementAndGet() == 1 ? HttpStatus.SERVICE_UNAVAILABLE : HttpStatus.OK;
+            }
+            return call.path.startsWith("/api/goals") ? HttpStatus.SERVICE_UNAVAILABLE : HttpStatus.OK;
+        };
+
+        ImportJob job = importer.run(new ImportJob("job", USER), chunks(payload(transactions(3, true), "[]", goals(2)), 16),
+                null, null).block(Duration.ofSeconds(30));
+
+        assertThat(job.counters(Section.TRANSACTIONS).created.get()).isEqualTo(3);
+        assertThat(job.counters(Section.TRANSACTIONS).failed.get()).isZero();
+        assertThat(transactionCalls.get()).isEqualTo(2);
+        // A goal has no idempotency key, so sending it again could duplicate it
+        assertThat(job.counters(Section.GOALS).failed.get()).isEqualTo(2);
+        assertThat(calls).filteredOn(call -> call.path.startsWith("/api/goals")).hasSize(1);
+    }
+
+    @Test
+    void uploadingTheSameFileAgainSendsTheSameKeys() {
+        properties.setBatchSize(4);
+        // Records without an id, some of them identical
+        StringBuilder records = new StringBuilder("[");
+        for (int i = 0; i < 20; i++) {
+            records.append(i == 0 ? "" : ",")
+                    .append("{\"amount\":-").append(i % 3 + 1).append(",\"date\":\"2024-03-01\",\"description\":\"Coffee\"}");
+        }
+        String payload = payload(records.append(']').toString(), "[]", "[]");
+
+        List<String> first = keys(importer.run(new ImportJob("first", USER), chunks(payload, 7), null, null));
+        calls.clear();
+        List<String> second = keys(importer.run(new ImportJob("second", USER), chunks(payload, 1024), null, null));
+
+        assertThat(first).hasSize(20).doesNotHaveDuplicates().isEqualTo(second);
+    }
+
+    @Test
+    void demandStopsWhileEveryBatchIsInFlight() throws Exception {
+        properties.setBatchSize(10);
+        properties.setMaxInFlightBatches(2);
+        Sinks.Empty<Void> release = Sinks.empty();
+        gate = release.asMono();
+        int records = 20_000;
+        AtomicLong chunksServed = new AtomicLong();
+        Flux<DataBuffer> body = transactionStream(records).doOnNext(chunk -> chunksServed.incrementAndGet());
+        ImportJob job = new ImportJob("job", USER);
+
+        CompletableFuture<ImportJob> result = importer.run(job, body, null, null).toFuture();
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (inFlight.get() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(300);
+        long held = chunksServed.get();
+        Thread.sleep(300);
+
+        assertThat(inFlight.get()).isEqualTo(2);
+        assertThat(chunksServed.get()).isEqualTo(held);
+        // The two batches out plus what the operators between prefetch; nowhere near the whole body
+        assertThat(held).isLessThan(records / 20);
+
+        release.tryEmitEmpty();
+        result.get(60, TimeUnit.SECONDS);
+        assertThat(job.status()).isEqualTo(ImportJob.Status.COMPLETED);
+        assertThat(job.counters(Section.TRANSACTIONS).created.get()).isEqualTo(records);
+        assertThat(chunksServed.get()).isEqualTo(records + 2);
+        assertThat(mostInFlight.get()).isEqualTo(2);
+    }
+
+    @Test
+    void aTruncatedBodyFailsTheJob() {
+        String payload = payload(transactions(5, true), "[]", "[]");
+        ImportJob job = new ImportJob("job", USER);
+
+        assertThatThrownBy(() -> importer.run(job, chunks(payload.substring(0, payload.length() - 3), 8), null, null)
+                .block(Duration.ofSeconds(30)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Payload ended before the JSON was complete");
+        assertThat(job.status()).isEqualTo(ImportJob.Status.FAILED);
+        assertThat(job.snapshot().get("errors")).asInstanceOf(InstanceOfAssertFactories.LIST).containsExactly("Payload ended before the JSON was complete");
+    }
+
+    /**
+     * Streams two million transactions, about 200 MB of JSON, and samples
+     * the live heap after a GC as batches arrive: it should stay at the size
+     * of the batches in flight rather than grow with the payload. Only runs
+     * with -Pslow-tests.
+     */
+    @Test
+    @Tag("slow")
+    void aLargePayloadIsImportedInBoundedMemory() {
+        int records = 2_000_000;
+        recordCalls = false;
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        System.gc();
+        long baseline = memory.getHeapMemoryUsage().getUsed();
+        AtomicLong mostRetained = new AtomicLong();
+        AtomicInteger batches = new AtomicInteger();
+        status = call -> {
+            if (batches.incrementAndGet() % 200 == 0) {
+                System.gc();
+                long retained = memory.getHeapMemoryUsage().getUsed() - baseline;
+                mostRetained.accumulateAndGet(retained, Math::max);
+            }
+            return HttpStatus.OK;
+        };
+        AtomicLong bytes = new AtomicLong();
+
+        long started = System.nanoTime();
+        ImportJob job = importer.run(new ImportJob("job", USER),
+                transactionStream(records).doOnNext(chunk -> bytes.addAndGet(chunk.readableByteCount())), null, null)
+                .block(Duration.ofMinutes(10));
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+
+        System.out.printf("[import] %d transactions, %d MB in %d ms, most retained after GC %d MB%n",
+                records, bytes.get() >> 20, elapsedMs, mostRetained.get() >> 20);
+        assertThat(job.counters(Section.TRANSACTIONS).created.get()).isEqualTo(records);
+        assertThat(bytes.get()).isGreaterThan(150L << 20);
+        assertThat(mostRetained.get()).isLessThan(64L << 20);
+    }
+
+    private List<String> keys(Mono<ImportJob> run) {
+        run.block(Duration.ofSeconds(30));
+        List<String> keys = new ArrayList<>();
+        synchronized (calls) {
+            for (Call call : calls) {
+                call.records.forEach(record -> keys.add(record.path("idempotencyKey").asText()));
+            }
+        }
+        return keys;
+    }
+
+    // Records as the service would get them; answers with the number created
+    private Mono<ClientResponse> upstream(ClientRequest request) {
+        return body(request).flatMap(body -> {
+            Call call = new Call(request.url().getPath(), body.isArray() ? body : body.elements().next(),
+                    request.headers().getFirst(HttpHeaders.AUTHORIZATION));
+            if (recordCalls) {
+                calls.add(call);
+            }
+            mostInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            return gate.then(Mono.fromSupplier(() -> {
+                // Before the importer hears back and starts the next batch
+                inFlight.decrementAndGet();
+                HttpStatus answer = status.apply(call);
+                return answer.isError()
+                        ? ClientResponse.create(answer, ExchangeStrategies.withDefaults()).build()
+                        : ClientResponse.create(answer, ExchangeStrategies.withDefaults())
+                                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                                .body("{\"created\":" + call.records.size() + ",\"replayed\":0}")
+                                .build();
+            }));
+        });
+    }
+
+    private Mono<JsonNode> body(ClientRequest request) {
+        MockClientHttpRequest captured = new MockClientHttpRequest(request.method(), request.url());
+        return request.body()
+                .insert(captured, new BodyInserter.Context() {
+                    @Override
+                    public List<HttpMessageWriter<?>> messageWriters() {
+                        return ExchangeStrategies.withDefaults().messageWriters();
+                    }
+
+                    @Override
+                    public Optional<ServerHttpRequest> serverRequest() {
+                        return Optional.empty();
+                    }
+
+                    @Override
+                    public Map<String, Object> hints() {
+                        return Map.of();
+                    }
+                })
+                .then(Mono.defer(captured::getBodyAsString))
+                .map(json -> {
+                    try {
+                        return objectMapper.readTree(json);
+                    } catch (IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                });
+    }
+
+    private static String payload(String transactions, String budgets, String goals) {
+        return "{\"users\":[{\"id\":\"u1\"}],\"transactions\":" + transactions + ",\"budgets\":" + budgets
+                + ",\"settings\":{\"currency\":\"EUR\"},\"goals\":" + goals + "}";
+    }
+
+    private static String transactions(int count, boolean withIds) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < count; i++) {
+            json.append(i == 0 ? "" : ",").append(transaction(i, withIds));
+        }
+        return json.append(']').toString();
+    }
+
+    private static String transaction(int i, boolean withIds) {
+        return "{" + (withIds ? "\"id\":\"t" + i + "\"," : "") + "\"amount\":-" + (i % 9000 + 1)
+                + ".25,\"category\":\"Groceries\",\"date\":\"2024-03-01T12:00:00Z\",\"description\":\"Purchase " + i + "\"}";
+    }
+
+    private static String goals(int count) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < count; i++) {
+            json.append(i == 0 ? "" : ",").append("{\"name\":\"Goal ").append(i).append("\",\"targetAmount\":1000}");
+        }
+        return json.append(']').toString();
+    }
+
+    private static Flux<DataBuffer> chunks(String payload, int size) {
+        byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+        return Flux.range(0, (bytes.length + size - 1) / size)
+                .map(i -> DefaultDataBufferFactory.sharedInstance.wrap(
+                        Arrays.copyOfRange(bytes, i * size, Math.min(bytes.length, (i + 1) * size))));
+    }
+
+    // Generated as it is read: a chunk per transaction between the opening and closing chunks
+    private static Flux<DataBuffer> transactionStream(int count) {
+        return Flux.concat(
+                Mono.fromSupplier(() -> "{\"transactions\":["),
+                Flux.range(0, count).map(i -> (i == 0 ? "" : ",") + transaction(i, true)),
+                Mono.fromSupplier(() -> "]}"))
+                .map(text -> DefaultDataBufferFactory.sharedInstance.wrap(text.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,270 @@
+package com.personalfinance.migration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.logging.LogLevel;
+import org.springframework.boot.logging.LoggingSystem;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeStrategies;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.personalfinance.gateway.config.MigrationProperties;
+
+import reactor.core.publisher.Mono;
+
+class UserDataExporterTest {
+
+    private static final int TRANSACTIONS = 100_000;
+    private static final int PAGE_SIZE = 1000;
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AtomicInteger pagesServed = new AtomicInteger();
+    private int transactions = TRANSACTIONS;
+    private UserDataExporter exporter;
+
+    // Run without a Spring context nothing sets the levels up, and the codecs would log every record at DEBUG
+    @BeforeAll
+    static void quietCodecs() {
+        LoggingSystem logging = LoggingSystem.get(UserDataExporterTest.class.getClassLoader());
+        logging.setLogLevel("org.springframework.http.codec", LogLevel.INFO);
+        logging.setLogLevel("org.springframework.web.HttpLogging", LogLevel.INFO);
+    }
+
+    @BeforeEach
+    void setUp() {
+        MigrationProperties properties = new MigrationProperties();
+        properties.setExportPageSize(PAGE_SIZE);
+        WebClient.Builder webClient = WebClient.builder().exchangeFunction(this::upstream);
+        exporter = new UserDataExporter(webClient, objectMapper, properties);
+    }
+
+    @Test
+    void exportsEveryRecordAsNdjsonInTheArchive() throws IOException {
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        int[] largestChunk = {0};
+        exporter.export(7L, "Bearer token")
+                .doOnNext(chunk -> {
+                    largestChunk[0] = Math.max(largestChunk[0], chunk.readableByteCount());
+                    byte[] bytes = new byte[chunk.readableByteCount()];
+                    chunk.read(bytes);
+                    DataBufferUtils.release(chunk);
+                    archive.writeBytes(bytes);
+                })
+                .then()
+                .block(Duration.ofMinutes(2));
+
+        Map<String, List<String>> entries = unzip(archive.toByteArray());
+        assertThat(entries).containsOnlyKeys("transactions.ndjson", "budgets.ndjson", "goals.ndjson",
+                "scheduled-purchases.ndjson", "manifest.json");
+        List<String> transactions = entries.get("transactions.ndjson");
+        assertThat(transactions).hasSize(TRANSACTIONS);
+        for (int i = 0; i < TRANSACTIONS; i++) {
+            assertThat(objectMapper.readTree(transactions.get(i)).path("id").asLong()).isEqualTo(i + 1);
+        }
+        assertThat(entries.get("budgets.ndjson")).hasSize(2);
+        assertThat(entries.get("goals.ndjson")).isEmpty();
+
+        JsonNode manifest = objectMapper.readTree(String.join("\n", entries.get("manifest.json")));
+        assertThat(manifest.path("userId").asLong()).isEqualTo(7);
+        JsonNode section = manifest.path("entries").path("transactions.ndjson");
+        assertThat(section.path("records").asLong()).isEqualTo(TRANSACTIONS);
+        assertThat(section.path("complete").asBoolean()).isTrue();
+
+        // One page of records per upstream call, and output in chunks of about CHUNK_SIZE
+        assertThat(pagesServed).hasValue(TRANSACTIONS / PAGE_SIZE + 1);
+        assertThat(largestChunk[0]).isLessThan(2 * CHUNK_SIZE);
+    }
+
+    @Test
+    void pagesAreFetchedOnlyAsTheDownloadIsRead() {
+        List<Integer> servedAtChunk = new ArrayList<>();
+        exporter.export(7L, null)
+                .limitRate(1)
+                .take(3)
+                .doOnNext(chunk -> {
+                    servedAtChunk.add(pagesServed.get());
+                    DataBufferUtils.release(chunk);
+                })
+                .then()
+                .block(Duration.ofSeconds(30));
+
+        // A slow reader holds the export back instead of it buffering the whole history
+        assertThat(servedAtChunk).hasSize(3);
+        assertThat(servedAtChunk.get(0)).isLessThan(servedAtChunk.get(2));
+        assertThat(pagesServed.get()).isLessThanOrEqualTo(servedAtChunk.get(2) + 1)
+                .isLessThan(TRANSACTIONS / PAGE_SIZE / 2);
+    }
+
+    @Test
+    void failedSectionIsMarkedIncompleteInTheManifest() throws IOException {
+        WebClient.Builder failing = WebClient.builder().exchangeFunction(request ->
+                request.url().getPath().startsWith("/api/goals")
+                        ? Mono.just(ClientResponse.create(HttpStatus.BAD_REQUEST).build())
+                        : upstream(request));
+        MigrationProperties properties = new MigrationProperties();
+        properties.setExportPageSize(PAGE_SIZE);
+        byte[] archive = DataBufferUtils.join(new UserDataExporter(failing, objectMapper, properties).export(7L, null))
+                .map(joined -> {
+                    byte[] bytes = new byte[joined.readableByteCount()];
+                    joined.read(bytes);
+                    DataBufferUtils.release(joined);
+                    return bytes;
+                })
+                .block(Duration.ofMinutes(2));
+
+        Map<String, List<String>> entries = unzip(archive);
+        JsonNode manifest = objectMapper.readTree(String.join("\n", entries.get("manifest.json")));
+        assertThat(manifest.path("entries").path("goals.ndjson").path("complete").asBoolean()).isFalse();
+        assertThat(manifest.path("entries").path("transactions.ndjson").path("complete").asBoolean()).isTrue();
+        assertThat(entries.get("transactions.ndjson")).hasSize(TRANSACTIONS);
+    }
+
+    /**
+     * Five million transactions, written to disk as they stream out, with
+     * the heap held after a GC sampled along the way. Only runs with
+     * -Pslow-tests.
+     */
+    @Test
+    @Tag("slow")
+    void fiveMillionTransactionsExportInBoundedMemory(@TempDir Path dir) throws IOException {
+        transactions = 5_000_000;
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        System.gc();
+        long baseline = memory.getHeapMemoryUsage().getUsed();
+        AtomicLong mostRetained = new AtomicLong();
+        AtomicInteger chunks = new AtomicInteger();
+        Path archive = dir.resolve("export.zip");
+
+        long started = System.nanoTime();
+        try (OutputStream out = Files.newOutputStream(archive)) {
+            exporter.export(7L, "Bearer token")
+                    .doOnNext(chunk -> {
+                        try (InputStream in = chunk.asInputStream(true)) {
+                            in.transferTo(out);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        if (chunks.incrementAndGet() % 100 == 0) {
+                            System.gc();
+                            mostRetained.accumulateAndGet(memory.getHeapMemoryUsage().getUsed() - baseline, Math::max);
+                        }
+                    })
+                    .then()
+                    .block(Duration.ofMinutes(15));
+        }
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+
+        long lines = 0;
+        long ndjsonBytes = 0;
+        JsonNode manifest = null;
+        try (ZipInputStream zip = new ZipInputStream(Files.newInputStream(archive))) {
+            for (ZipEntry entry; (entry = zip.getNextEntry()) != null; ) {
+                if (entry.getName().equals("manifest.json")) {
+                    manifest = objectMapper.readTree(zip.readAllBytes());
+                    continue;
+                }
+                if (!entry.getName().equals("transactions.ndjson")) {
+                    continue;
+                }
+                BufferedReader reader = new BufferedReader(new InputStreamReader(zip, StandardCharsets.UTF_8));
+                for (String line; (line = reader.readLine()) != null; ) {
+                    lines++;
+                    ndjsonBytes += line.length() + 1;
+                    // Every id in order, none missing
+                    assertThat(line).startsWith("{\"id\":" + lines + ",");
+                }
+            }
+        }
+
+        System.out.printf("[export] %d transactions, %d MB of NDJSON in a %d MB archive in %d ms, most retained after GC %d MB%n",
+                transactions, ndjsonBytes >> 20, Files.size(archive) >> 20, elapsedMs, mostRetained.get() >> 20);
+        assertThat(lines).isEqualTo(transactions);
+        assertThat(manifest).isNotNull();
+        assertThat(manifest.path("entries").path("transactions.ndjson").path("records").asLong()).isEqualTo(transactions);
+        assertThat(manifest.path("entries").path("transactions.ndjson").path("complete").asBoolean()).isTrue();
+        assertThat(pagesServed).hasValue(transactions / PAGE_SIZE + 1);
+        // About a page and a chunk in flight, whatever the history's length
+        assertThat(mostRetained.get()).isLessThan(64L << 20);
+    }
+
+    // Transactions by page after an id; the other sections in one list
+    private Mono<ClientResponse> upstream(ClientRequest request) {
+        String path = request.url().getPath();
+        String body;
+        if (path.endsWith("/export")) {
+            pagesServed.incrementAndGet();
+            Map<String, List<String>> query = UriComponentsBuilder.fromUri(request.url()).build().getQueryParams();
+            long afterId = Long.parseLong(query.get("afterId").get(0));
+            int limit = Integer.parseInt(query.get("limit").get(0));
+            StringBuilder page = new StringBuilder("[");
+            for (long id = afterId + 1; id <= Math.min(afterId + limit, transactions); id++) {
+                if (page.length() > 1) {
+                    page.append(',');
+                }
+                page.append("{\"id\":").append(id)
+                        .append(",\"amount\":").append(id % 9000 + 1).append(".25")
+                        .append(",\"type\":\"EXPENSE\",\"category\":\"GROCERIES\",\"description\":\"Purchase ")
+                        .append(id).append("\",\"transactionDate\":\"2024-0").append(id % 9 + 1).append("-15\"}");
+            }
+            body = page.append(']').toString();
+        } else if (path.startsWith("/budgets")) {
+            body = "[{\"id\":1,\"category\":\"GROCERIES\"},{\"id\":2,\"category\":\"DINING\"}]";
+        } else {
+            body = "[]";
+        }
+        return Mono.just(ClientResponse.create(HttpStatus.OK, ExchangeStrategies.withDefaults())
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .body(body)
+                .build());
+    }
+
+    private static Map<String, List<String>> unzip(byte[] archive) throws IOException {
+        Map<String, List<String>> entries = new LinkedHashMap<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(archive))) {
+            for (ZipEntry entry; (entry = zip.getNextEntry()) != null; ) {
+                String text = new String(zip.readAllBytes(), StandardCharsets.UTF_8);
+                entries.put(entry.getName(), text.isEmpty() ? List.of() : List.of(text.split("\n")));
+            }
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,281 @@
+package com.personalfinance.migration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeStrategies;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.personalfinance.gateway.cache.ResponseCacheStore;
+import com.personalfinance.gateway.config.MigrationProperties;
+import com.personalfinance.gateway.config.ResponseCacheProperties;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Mono;
+
+class UserDataPurgerTest {
+
+    private static final String TOKEN = "Bearer token";
+    private static final int CHUNK = 500;
+
+    @TempDir
+    Path checkpointDir;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    // Rows left per user and section; sections not listed are empty
+    private final Map<String, Long> remaining = new ConcurrentHashMap<>();
+    // Section of each delete call, in order, with when it was sent
+    private final List<String> calls = Collections.synchronizedList(new ArrayList<>());
+    private final List<Long> callNanos = Collections.synchronizedList(new ArrayList<>());
+    private final Set<String> failing = ConcurrentHashMap.newKeySet();
+    private final Set<Long> hanging = ConcurrentHashMap.newKeySet();
+    private final List<Map<String, Object>> saved = Collections.synchronizedList(new ArrayList<>());
+    private Duration chunkLatency = Duration.ZERO;
+
+    private MigrationProperties properties;
+    private PurgeCheckpointStore checkpoints;
+    private UserDataPurger purger;
+
+    @BeforeEach
+    void setUp() {
+        properties = new MigrationProperties();
+        properties.setPurgeChunkSize(CHUNK);
+        properties.setPurgeMinPause(Duration.ZERO);
+        properties.setPurgeDutyCycle(1.0);
+        properties.setBatchRetries(0);
+        properties.setPurgeCheckpointDir(checkpointDir.toString());
+        checkpoints = new PurgeCheckpointStore(objectMapper, properties) {
+            @Override
+            void save(Long userId, Map<String, Object> snapshot) {
+                saved.add(snapshot);
+                super.save(userId, snapshot);
+            }
+        };
+        purger = new UserDataPurger(WebClient.builder().exchangeFunction(this::upstream), properties, checkpoints,
+                new ResponseCacheStore(new ResponseCacheProperties(), new SimpleMeterRegistry()));
+    }
+
+    @Test
+    void deletesEachSectionInChunksUntilItIsEmpty() {
+        remaining.put("1/transactions", 1200L);
+        remaining.put("1/goals", 3L);
+
+        Map<String, Object> finished = run(1L);
+
+        assertThat(finished.get("status")).isEqualTo("COMPLETED");
+        assertThat(deleted(finished)).containsEntry("transactions", 1200).containsEntry("goals", 3)
+                .containsEntry("budgets", 0);
+        // Three chunks and the empty one that ends the section; every other section just the empty one
+        assertThat(calls.stream().filter("transactions"::equals)).hasSize(4);
+        assertThat(calls.stream().filter("goals"::equals)).hasSize(2);
+        assertThat(calls.stream().distinct()).containsExactly("scheduled-purchases", "transactions", "budgets",
+                "goal-likes", "goal-comments", "shared-goals", "chat-messages", "goals", "financial-data");
+        assertThat(finished.get("chunks")).isEqualTo(4);
+    }
+
+    @Test
+    void pausesBetweenChunksInProportionToHowLongTheyTook() {
+        remaining.put("1/transactions", 3L * CHUNK);
+        chunkLatency = Duration.ofMillis(40);
+        // Deleting a fifth of the time: each 40 ms chunk is followed by a 160 ms pause
+        properties.setPurgeDutyCycle(0.2);
+
+        run(1L);
+
+        List<Long> starts = new ArrayList<>();
+        for (int i = 0; i < calls.size(); i++) {
+            if (calls.get(i).equals("transactions")) {
+                starts.add(callNanos.get(i));
+            }
+        }
+        assertThat(starts).hasSize(4);
+        for (int i = 1; i < starts.size(); i++) {
+            assertThat(Duration.ofNanos(starts.get(i) - starts.get(i - 1))).isGreaterThanOrEqualTo(Duration.ofMillis(190));
+        }
+    }
+
+    @Test
+    void theMinimumPauseHoldsWhenChunksAreQuick() {
+        remaining.put("1/transactions", 2L * CHUNK);
+        properties.setPurgeMinPause(Duration.ofMillis(50));
+
+        run(1L);
+
+        List<Long> starts = new ArrayList<>();
+        for (int i = 0; i < calls.size(); i++) {
+            if (calls.get(i).equals("transactions")) {
+                starts.add(callNanos.get(i));
+            }
+        }
+        assertThat(Duration.ofNanos(starts.get(1) - starts.get(0))).isGreaterThanOrEqualTo(Duration.ofMillis(50));
+        assertThat(Duration.ofNanos(starts.get(2) - starts.get(1))).isGreaterThanOrEqualTo(Duration.ofMillis(50));
+    }
+
+    @Test
+    void writesACheckpointAfterEveryChunk() throws Exception {
+        remaining.put("1/transactions", 3L * CHUNK);
+
+        run(1L);
+
+        List<Object> chunkCounts = new ArrayList<>();
+        synchronized (saved) {
+            saved.forEach(snapshot -> chunkCounts.add(snapshot.get("chunks")));
+        }
+        assertThat(chunkCounts).contains(1L, 2L, 3L);
+        assertThat(objectMapper.readTree(Files.readString(checkpointDir.resolve("purge-1.json"))).path("status").asText())
+                .isEqualTo("COMPLETED");
+    }
+
+    @Test
+    void aFailedPurgeResumesAtTheStepItStoppedOn() {
+        remaining.put("1/transactions", 700L);
+        remaining.put("1/budgets", 20L);
+        failing.add("budgets");
+
+        Map<String, Object> failed = run(1L);
+
+        assertThat(failed.get("status")).isEqualTo("FAILED");
+        assertThat((String) failed.get("error")).startsWith("budgets: status 500");
+        assertThat(failed.get("currentSection")).isEqualTo("budgets");
+        assertThat(deleted(failed)).containsEntry("transactions", 700);
+
+        failing.clear();
+        calls.clear();
+        Map<String, Object> resumed = run(1L);
+
+        assertThat(resumed.get("status")).isEqualTo("COMPLETED");
+        assertThat(calls).doesNotContain("scheduled-purchases", "transactions").startsWith("budgets");
+        assertThat(deleted(resumed)).containsEntry("transactions", 700).containsEntry("budgets", 20);
+    }
+
+    @Test
+    void aCheckpointLeftRunningIsReportedAsInterruptedAndResumed() {
+        checkpoints.save(1L, Map.of("userId", 1, "status", "RUNNING", "step", 2, "chunks", 5,
+                "deleted", Map.of("transactions", 2500), "startedAt", "2024-01-01T00:00:00Z"));
+
+        Map<String, Object> progress = purger.progress(1L).block(Duration.ofSeconds(5));
+        assertThat(progress.get("status").toString()).isEqualTo("INTERRUPTED");
+
+        Map<String, Object> resumed = run(1L);
+        assertThat(calls).doesNotContain("transactions");
+        assertThat(deleted(resumed)).containsEntry("transactions", 2500);
+    }
+
+    @Test
+    void purgesBeyondTheLimitAreRefusedWithTooManyRequests() {
+        properties.setMaxConcurrentPurges(1);
+        hanging.add(1L);
+        PurgeJob first = purger.start(1L, TOKEN).block(Duration.ofSeconds(5));
+
+        assertThatThrownBy(() -> purger.start(2L, TOKEN).block(Duration.ofSeconds(5)))
+                .isInstanceOfSatisfying(ResponseStatusException.class,
+                        e -> assertThat(e.getStatus()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS));
+        // Asking again for a running purge reports it rather than counting against the limit
+        assertThat(purger.start(1L, TOKEN).block(Duration.ofSeconds(5))).isSameAs(first);
+    }
+
+    @Test
+    void finishedJobsAreNotKeptInMemory() throws Exception {
+        properties.setMaxConcurrentPurges(1);
+        run(1L);
+
+        // The checkpoint is all that is left of it once the job lets go
+        Files.delete(checkpointDir.resolve("purge-1.json"));
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (purger.progress(1L).blockOptional(Duration.ofSeconds(5)).isPresent() && System.nanoTime() < deadline) {
+            sleep(10);
+        }
+        assertThat(purger.progress(1L).blockOptional(Duration.ofSeconds(5))).isEmpty();
+        // And it no longer holds the only slot
+        assertThat(run(2L).get("status")).isEqualTo("COMPLETED");
+    }
+
+    // Starts or resumes the user's purge and waits for its final checkpoint, which it returns
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> run(Long userId) {
+        Instant started = Instant.now();
+        purger.start(userId, TOKEN).block(Duration.ofSeconds(5));
+        long deadline = System.nanoTime() + Duration.ofSeconds(30).toNanos();
+        while (System.nanoTime() < deadline) {
+            JsonNode checkpoint = checkpoints.load(userId).orElse(null);
+            if (checkpoint != null && checkpoint.path("finishedAt").isTextual()
+                    && !Instant.parse(checkpoint.path("finishedAt").asText()).isBefore(started)) {
+                return objectMapper.convertValue(checkpoint, Map.class);
+            }
+            sleep(10);
+        }
+        throw new AssertionError("Purge for user " + userId + " did not finish");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> deleted(Map<String, Object> snapshot) {
+        return (Map<String, Object>) snapshot.get("deleted");
+    }
+
+    // DELETE .../{userId}/purge[/section]?limit=n, answering how many of the section's rows it took
+    private Mono<ClientResponse> upstream(ClientRequest request) {
+        String path = request.url().getPath();
+        String[] parts = path.split("/");
+        String section;
+        long userId;
+        if (path.startsWith("/api/users/data/")) {
+            section = parts[parts.length - 1];
+            userId = Long.parseLong(parts[parts.length - 3]);
+        } else {
+            section = path.startsWith("/scheduled-purchases") ? "scheduled-purchases"
+                    : path.startsWith("/transactions") ? "transactions" : "budgets";
+            userId = Long.parseLong(parts[parts.length - 2]);
+        }
+        calls.add(section);
+        callNanos.add(System.nanoTime());
+        if (hanging.contains(userId)) {
+            return Mono.never();
+        }
+        if (failing.contains(section)) {
+            return Mono.just(ClientResponse.create(HttpStatus.INTERNAL_SERVER_ERROR).build());
+        }
+        int limit = Integer.parseInt(UriComponentsBuilder.fromUri(request.url()).build().getQueryParams().getFirst("limit"));
+        long[] taken = {0};
+        remaining.computeIfPresent(userId + "/" + section, (key, left) -> {
+            taken[0] = Math.min(limit, left);
+            return left - taken[0];
+        });
+        Mono<ClientResponse> response = Mono.just(ClientResponse.create(HttpStatus.OK, ExchangeStrategies.withDefaults())
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .body("{\"deleted\":" + taken[0] + "}")
+                .build());
+        return chunkLatency.isZero() ? response : response.delayElement(chunkLatency);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AssertionError(e);
+        }
+    }
+}
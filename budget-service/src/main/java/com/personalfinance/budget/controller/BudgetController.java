@@ -1,6 +1,9 @@
 package com.personalfinance.budget.controller;
 
 import java.util.List;
+import java.util.Map;
+
+import javax.validation.Valid;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
@@ -12,8 +15,10 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.personalfinance.budget.dto.BudgetBatchRequest;
 import com.personalfinance.budget.dto.BudgetCreateRequest;
 import com.personalfinance.budget.dto.BudgetResponse;
 import com.personalfinance.budget.dto.BudgetUpdateRequest;
@@ -24,6 +29,11 @@ import com.personalfinance.budget.service.BudgetService;
 public class BudgetController {
     private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(BudgetController.class);
 
+    static final int MAX_PURGE_CHUNK_SIZE = 5000;
+
+    // The gateway drops the user's cached analytics (the forecast reads budgets) and strips the header
+    static final String CACHE_INVALIDATE_HEADER = "X-Cache-Invalidate-User";
+
     @Autowired
     private BudgetService budgetService;
 
@@ -33,13 +43,26 @@ public class BudgetController {
         try {
             BudgetResponse budget = budgetService.createBudget(request);
             log.info("[BudgetController] Budget created: {}", budget);
-            return ResponseEntity.status(HttpStatus.CREATED).body(budget);
+            return ResponseEntity.status(HttpStatus.CREATED)
+                    .header(CACHE_INVALIDATE_HEADER, String.valueOf(budget.getUserId()))
+                    .body(budget);
         } catch (Exception e) {
             log.error("[BudgetController] Error creating budget: {}", e.getMessage(), e);
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
         }
     }
 
+    // For bulk imports
+    @PostMapping("/batch")
+    public ResponseEntity<Map<String, Integer>> createBudgets(@Valid @RequestBody BudgetBatchRequest request) {
+        log.info("[BudgetController] Create budgets batch request: {} budgets", request.getBudgets().size());
+        int created = budgetService.createBudgets(request.getBudgets());
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(HttpStatus.CREATED);
+        request.getBudgets().stream().map(BudgetCreateRequest::getUserId).distinct()
+                .forEach(userId -> response.header(CACHE_INVALIDATE_HEADER, String.valueOf(userId)));
+        return response.body(Map.of("created", created));
+    }
+
     @GetMapping
     public ResponseEntity<List<BudgetResponse>> getAllBudgets() {
         log.info("[BudgetController] Get all budgets request");
@@ -86,7 +109,9 @@ public class BudgetController {
         try {
             BudgetResponse budget = budgetService.updateBudget(id, request);
             log.info("[BudgetController] Budget updated: {}", budget);
-            return ResponseEntity.ok(budget);
+            return ResponseEntity.ok()
+                    .header(CACHE_INVALIDATE_HEADER, String.valueOf(budget.getUserId()))
+                    .body(budget);
         } catch (RuntimeException e) {
             log.warn("[BudgetController] Budget not found for update: id={}", id);
             return ResponseEntity.notFound().build();
@@ -100,9 +125,11 @@ public class BudgetController {
     public ResponseEntity<Void> deleteBudget(@PathVariable Long id) {
         log.info("[BudgetController] Delete budget request: id={}", id);
         try {
-            budgetService.deleteBudget(id);
+            Long userId = budgetService.deleteBudget(id);
             log.info("[BudgetController] Budget deleted: id={}", id);
-            return ResponseEntity.noContent().build();
+            return ResponseEntity.noContent()
+                    .header(CACHE_INVALIDATE_HEADER, String.valueOf(userId))
+                    .build();
         } catch (RuntimeException e) {
             log.warn("[BudgetController] Budget not found for delete: id={}", id);
             return ResponseEntity.notFound().build();
@@ -111,4 +138,14 @@ public class BudgetController {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
     }
+
+    // One bounded chunk of a full purge; repeat until nothing is deleted.
+    // For the gateway's purger only: the gateway refuses this path on its public routes
+    @DeleteMapping("/user/{userId}/purge")
+    public ResponseEntity<Map<String, Integer>> purgeBudgetsByUser(
+            @PathVariable Long userId,
+            @RequestParam(defaultValue = "500") int limit) {
+        int deleted = budgetService.purgeChunk(userId, Math.max(1, Math.min(limit, MAX_PURGE_CHUNK_SIZE)));
+        return ResponseEntity.ok(Map.of("deleted", deleted));
+    }
 }
@@ -0,0 +1,22 @@
+package com.personalfinance.budget.dto;
+
+import java.util.List;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.Size;
+
+// Many creates in one request and one database transaction, for bulk imports
+public class BudgetBatchRequest {
+
+    public static final int MAX_SIZE = 1000;
+
+    @NotEmpty
+    @Size(max = MAX_SIZE)
+    @Valid
+    private List<BudgetCreateRequest> budgets;
+
+    // Getters and Setters
+    public List<BudgetCreateRequest> getBudgets() { return budgets; }
+    public void setBudgets(List<BudgetCreateRequest> budgets) { this.budgets = budgets; }
+}
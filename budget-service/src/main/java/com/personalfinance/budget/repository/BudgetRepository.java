@@ -1,8 +1,13 @@
 package com.personalfinance.budget.repository;
 
+import java.util.Collection;
 import java.util.List;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.personalfinance.budget.model.Budget;
@@ -13,4 +18,11 @@ public interface BudgetRepository extends JpaRepository<Budget, Long> {
     List<Budget> findByUserIdOrderByCreatedAtDesc(Long userId);
     
     List<Budget> findByUserIdAndCategory(Long userId, String category);
+
+    @Query("SELECT b.id FROM Budget b WHERE b.userId = :userId ORDER BY b.id")
+    List<Long> findIdsByUserId(@Param("userId") Long userId, Pageable pageable);
+
+    @Modifying
+    @Query("DELETE FROM Budget b WHERE b.id IN :ids")
+    int deleteByIdIn(@Param("ids") Collection<Long> ids);
 }
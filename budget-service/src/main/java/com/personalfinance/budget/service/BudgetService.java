@@ -1,10 +1,12 @@
 package com.personalfinance.budget.service;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -37,6 +39,24 @@ public class BudgetService {
         return new BudgetResponse(savedBudget);
     }
 
+    // All or nothing: one database transaction for the whole batch
+    public int createBudgets(List<BudgetCreateRequest> requests) {
+        log.info("[BudgetService] Creating {} budgets", requests.size());
+        List<Budget> budgets = new ArrayList<>(requests.size());
+        for (BudgetCreateRequest request : requests) {
+            Budget budget = new Budget();
+            budget.setUserId(request.getUserId());
+            budget.setName(request.getName());
+            budget.setCategory(request.getCategory());
+            budget.setAmount(request.getAmount());
+            budget.setPeriod(request.getPeriod());
+            budget.setStartDate(request.getStartDate());
+            budget.setEndDate(request.getEndDate());
+            budgets.add(budget);
+        }
+        return budgetRepository.saveAll(budgets).size();
+    }
+
     @Transactional(readOnly = true)
     public List<BudgetResponse> getBudgetsByUser(Long userId) {
         log.info("[BudgetService] Fetching budgets for userId={}", userId);
@@ -90,11 +110,23 @@ public class BudgetService {
         return new BudgetResponse(savedBudget);
     }
 
-    public void deleteBudget(Long id) {
+    // Returns the owner's id, for the gateway's cache invalidation
+    public Long deleteBudget(Long id) {
         log.info("[BudgetService] Deleting budget id={}", id);
-        if (!budgetRepository.existsById(id)) {
-            throw new RuntimeException("Budget not found with id: " + id);
+        Budget budget = budgetRepository.findById(id)
+                .orElseThrow(() -> new RuntimeException("Budget not found with id: " + id));
+        budgetRepository.delete(budget);
+        return budget.getUserId();
+    }
+
+    // One bounded chunk of a full purge; callers repeat until nothing is deleted
+    public int purgeChunk(Long userId, int limit) {
+        List<Long> ids = budgetRepository.findIdsByUserId(userId, PageRequest.of(0, limit));
+        if (ids.isEmpty()) {
+            return 0;
         }
-        budgetRepository.deleteById(id);
+        int deleted = budgetRepository.deleteByIdIn(ids);
+        log.info("[BudgetService] Purged {} budgets for userId={}", deleted, userId);
+        return deleted;
     }
 }
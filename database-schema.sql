@@ -31,9 +31,70 @@ CREATE TABLE IF NOT EXISTS transactions (
     type VARCHAR(50) NOT NULL, -- INCOME, EXPENSE
     category VARCHAR(255),
     date DATE NOT NULL,
+    idempotency_key VARCHAR(200) UNIQUE, -- set by retrying clients such as scheduled purchases
+    fingerprint BIGINT, -- hash of date, signed amount, merchant and description for statement-import dedup
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
 );
+CREATE INDEX IF NOT EXISTS idx_transactions_user_id ON transactions(user_id, id);
+CREATE INDEX IF NOT EXISTS idx_transactions_fingerprint ON transactions(user_id, fingerprint);
+
+-- Unusual expenses flagged by transaction-service as they are created
+CREATE TABLE IF NOT EXISTS spending_anomalies (
+    id BIGSERIAL PRIMARY KEY,
+    user_id BIGINT NOT NULL REFERENCES users(id) ON DELETE CASCADE,
+    transaction_id BIGINT, -- kept if the transaction is later deleted
+    kind VARCHAR(20) NOT NULL, -- OUTLIER, BUDGET_BREACH
+    category VARCHAR(50),
+    amount DECIMAL(15,2),
+    transaction_date DATE,
+    typical_amount DECIMAL(15,2),
+    deviations DOUBLE PRECISION,
+    budget_limit DECIMAL(15,2),
+    period_start DATE,
+    period_end DATE,
+    period_spent DECIMAL(15,2),
+    detected_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+CREATE INDEX IF NOT EXISTS idx_spending_anomalies_user_id ON spending_anomalies(user_id, id);
+
+-- Categories users gave merchants where the auto-categoriser picked another
+CREATE TABLE IF NOT EXISTS merchant_category_overrides (
+    id BIGSERIAL PRIMARY KEY,
+    user_id BIGINT NOT NULL REFERENCES users(id) ON DELETE CASCADE,
+    merchant_key VARCHAR(255) NOT NULL, -- normalised merchant name, or description without one
+    category VARCHAR(50) NOT NULL,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    CONSTRAINT uk_merchant_category_overrides_user_merchant UNIQUE (user_id, merchant_key)
+);
+
+-- What each user spent per category and month, for peer spending benchmarks
+CREATE TABLE IF NOT EXISTS monthly_spending (
+    id BIGSERIAL PRIMARY KEY,
+    user_id BIGINT NOT NULL REFERENCES users(id) ON DELETE CASCADE,
+    month DATE NOT NULL, -- first day of the month
+    category VARCHAR(50) NOT NULL,
+    amount_cents BIGINT NOT NULL,
+    CONSTRAINT uk_monthly_spending_user_month_category UNIQUE (user_id, month, category)
+);
+
+-- Users whose balance_index_days rows are built; writes for the user share-lock the row
+CREATE TABLE IF NOT EXISTS balance_index_users (
+    user_id BIGINT PRIMARY KEY REFERENCES users(id) ON DELETE CASCADE,
+    built_at TIMESTAMP
+);
+
+-- Each user's income and expenses per day, kept in step by adding every transaction write's change
+CREATE TABLE IF NOT EXISTS balance_index_days (
+    id BIGSERIAL PRIMARY KEY,
+    user_id BIGINT NOT NULL REFERENCES users(id) ON DELETE CASCADE,
+    epoch_day INTEGER NOT NULL, -- 1899-12-31 holds transactions without a usable date
+    income_cents BIGINT NOT NULL,
+    expense_cents BIGINT NOT NULL,
+    CONSTRAINT uk_balance_index_days_user_day UNIQUE (user_id, epoch_day)
+);
+-- Superseded by the two tables above; nothing maps it any more
+DROP TABLE IF EXISTS balance_index;
 
 -- Budgets table
 CREATE TABLE IF NOT EXISTS budgets (
@@ -62,6 +123,43 @@ CREATE TABLE IF NOT EXISTS financial_goals (
     updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
 );
 
+-- Scheduled purchases (scheduled-purchase-service); next_due is the occurrence its timing wheel waits on
+CREATE TABLE IF NOT EXISTS scheduled_purchases (
+    id BIGSERIAL PRIMARY KEY,
+    user_id BIGINT REFERENCES users(id) ON DELETE CASCADE,
+    name VARCHAR(100) NOT NULL,
+    amount DECIMAL(15,2) NOT NULL,
+    category VARCHAR(50),
+    frequency VARCHAR(20), -- ONCE, DAILY, WEEKLY, MONTHLY, YEARLY
+    recurrence VARCHAR(200), -- RRULE subset, e.g. FREQ=MONTHLY;BYDAY=-1FR
+    starts_at TIMESTAMP,
+    ends_at TIMESTAMP,
+    next_due TIMESTAMP NOT NULL,
+    active BOOLEAN NOT NULL DEFAULT TRUE,
+    lease_owner VARCHAR(100), -- instance firing the pending occurrence
+    lease_until TIMESTAMP, -- others may claim the row after this
+    fencing_token BIGINT NOT NULL DEFAULT 0, -- bumped on every claim
+    merchant VARCHAR(100),
+    notes VARCHAR(500),
+    last_executed_at TIMESTAMP,
+    last_transaction_id BIGINT,
+    last_error VARCHAR(500),
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+CREATE INDEX IF NOT EXISTS idx_scheduled_purchases_user_due ON scheduled_purchases(user_id, next_due);
+-- Each instance loads its share by id, and picks up other instances' changes by updated_at
+CREATE INDEX IF NOT EXISTS idx_scheduled_purchases_active_id ON scheduled_purchases(active, id);
+CREATE INDEX IF NOT EXISTS idx_scheduled_purchases_updated ON scheduled_purchases(updated_at);
+-- Claims go by id from the timing wheel now, not by scanning for due rows
+DROP INDEX IF EXISTS idx_scheduled_purchases_active_due;
+
+-- Running scheduler instances; the ones with a recent heartbeat share the purchases out between them
+CREATE TABLE IF NOT EXISTS scheduler_instances (
+    owner VARCHAR(100) PRIMARY KEY,
+    heartbeat_at TIMESTAMP NOT NULL
+);
+
 -- Insert sample user for testing
 INSERT INTO users (id, username, email, password, first_name, last_name) 
 VALUES 
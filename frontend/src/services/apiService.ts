@@ -98,10 +98,15 @@ analyticsServiceClient.interceptors.request.use(attachAuthToken);
 
 // Auth API
 // Unified Financial Data API
+// ETag of the document we last loaded or saved; writes send it as If-Match so
+// a save from a stale tab is rejected (412) instead of overwriting newer data.
+let financialDataETag: string | null = null;
+
 export const financialDataAPI = {
   get: async (): Promise<ApiResponse<any>> => {
     try {
       const response = await apiClient.get('/api/users/financial-data');
+      financialDataETag = response.headers['etag'] || null;
       return { success: true, data: response.data.data, message: 'Financial data loaded' };
     } catch (error: any) {
       return { success: false, data: null, message: error.response?.data?.message || 'Failed to load financial data' };
@@ -109,9 +114,14 @@ export const financialDataAPI = {
   },
   save: async (data: any): Promise<ApiResponse<any>> => {
     try {
-      const response = await apiClient.put('/api/users/financial-data', { data });
+      const headers = financialDataETag ? { 'If-Match': financialDataETag } : {};
+      const response = await apiClient.put('/api/users/financial-data', { data }, { headers });
+      financialDataETag = response.headers['etag'] || null;
       return { success: true, data: response.data.data, message: 'Financial data saved' };
     } catch (error: any) {
+      if (error.response?.status === 412 || error.response?.status === 428) {
+        return { success: false, data: null, message: 'Your financial data was changed elsewhere. Reload to get the latest version before saving.' };
+      }
       return { success: false, data: null, message: error.response?.data?.message || 'Failed to save financial data' };
     }
   }
@@ -0,0 +1,15 @@
+-- Replace the per-user balance_index blob with one row per user and day
+CREATE TABLE IF NOT EXISTS balance_index_users (
+    user_id BIGINT PRIMARY KEY REFERENCES users(id) ON DELETE CASCADE,
+    built_at TIMESTAMP
+);
+CREATE TABLE IF NOT EXISTS balance_index_days (
+    id BIGSERIAL PRIMARY KEY,
+    user_id BIGINT NOT NULL REFERENCES users(id) ON DELETE CASCADE,
+    epoch_day INTEGER NOT NULL,
+    income_cents BIGINT NOT NULL,
+    expense_cents BIGINT NOT NULL,
+    CONSTRAINT uk_balance_index_days_user_day UNIQUE (user_id, epoch_day)
+);
+-- The rows are rebuilt from the transactions by each user's next write, so the old blobs aren't carried over
+DROP TABLE IF EXISTS balance_index;
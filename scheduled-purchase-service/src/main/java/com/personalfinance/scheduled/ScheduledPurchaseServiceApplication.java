@@ -0,0 +1,12 @@
+package com.personalfinance.scheduled;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+
+@SpringBootApplication
+public class ScheduledPurchaseServiceApplication {
+
+    public static void main(String[] args) {
+        SpringApplication.run(ScheduledPurchaseServiceApplication.class, args);
+    }
+}
@@ -0,0 +1,60 @@
+package com.personalfinance.scheduled.client;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import com.personalfinance.scheduled.model.ScheduledPurchase;
+
+/**
+ * Creates the transaction for a fired purchase through transaction-service's
+ * REST API, so its validation, idempotency and transaction-service's own
+ * caches apply as for any other transaction. The call goes to the service
+ * directly, not through the gateway, so the gateway's cached analytics for
+ * the user are not invalidated: they show the fired purchase once their TTL
+ * (30s on the analytics route) runs out. 4xx responses surface as
+ * HttpClientErrorException.
+ */
+@Component
+public class TransactionClient {
+
+    private final RestTemplate restTemplate;
+    private final String transactionServiceUrl;
+
+    public TransactionClient(RestTemplateBuilder builder,
+                             @Value("${transaction-service.url:http://localhost:8082}") String transactionServiceUrl) {
+        this.restTemplate = builder
+                .setConnectTimeout(Duration.ofSeconds(2))
+                .setReadTimeout(Duration.ofSeconds(5))
+                .build();
+        this.transactionServiceUrl = transactionServiceUrl;
+    }
+
+    // Returns the new transaction's id, or the original one if idempotencyKey was used before
+    public Long createTransaction(ScheduledPurchase purchase, LocalDate date, String idempotencyKey) {
+        Map<String, Object> request = new HashMap<>();
+        request.put("userId", purchase.getUserId());
+        request.put("description", purchase.getName());
+        request.put("amount", purchase.getAmount());
+        request.put("type", "EXPENSE");
+        request.put("category", purchase.getCategory());
+        request.put("transactionDate", date.toString());
+        request.put("merchant", purchase.getMerchant());
+        request.put("notes", "Scheduled purchase #" + purchase.getId());
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("Idempotency-Key", idempotencyKey);
+        @SuppressWarnings("unchecked")
+        Map<String, Object> response = restTemplate.postForObject(transactionServiceUrl + "/transactions",
+                new HttpEntity<>(request, headers), Map.class);
+        Object id = response != null ? response.get("id") : null;
+        return id instanceof Number ? ((Number) id).longValue() : null;
+    }
+}
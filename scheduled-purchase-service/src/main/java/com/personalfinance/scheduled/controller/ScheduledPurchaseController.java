@@ -0,0 +1,126 @@
+package com.personalfinance.scheduled.controller;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.personalfinance.scheduled.dto.OccurrenceResponse;
+import com.personalfinance.scheduled.dto.ScheduledPurchaseCreateRequest;
+import com.personalfinance.scheduled.dto.ScheduledPurchaseResponse;
+import com.personalfinance.scheduled.dto.ScheduledPurchaseUpdateRequest;
+import com.personalfinance.scheduled.service.ScheduledPurchaseService;
+
+import javax.validation.Valid;
+
+@RestController
+@RequestMapping("/scheduled-purchases")
+public class ScheduledPurchaseController {
+    private static final Logger logger = LoggerFactory.getLogger(ScheduledPurchaseController.class);
+    private static final int MAX_OCCURRENCES = 10000;
+    private static final int MAX_PURGE_CHUNK_SIZE = 5000;
+
+    @Autowired
+    private ScheduledPurchaseService scheduledPurchaseService;
+
+    @PostMapping
+    public ResponseEntity<ScheduledPurchaseResponse> create(@Valid @RequestBody ScheduledPurchaseCreateRequest request) {
+        logger.info("POST /scheduled-purchases called for userId={}", request.getUserId());
+        return ResponseEntity.status(HttpStatus.CREATED).body(scheduledPurchaseService.create(request));
+    }
+
+    @GetMapping("/user/{userId}")
+    public ResponseEntity<List<ScheduledPurchaseResponse>> getByUser(@PathVariable Long userId) {
+        return ResponseEntity.ok(scheduledPurchaseService.getByUser(userId));
+    }
+
+    @GetMapping("/user/{userId}/upcoming")
+    public ResponseEntity<List<ScheduledPurchaseResponse>> getUpcoming(
+            @PathVariable Long userId,
+            @RequestParam(defaultValue = "30") int days) {
+        return ResponseEntity.ok(scheduledPurchaseService.getUpcoming(userId, days));
+    }
+
+    // Every pending occurrence in [from, to], expanded from the recurrence rules; capped at limit
+    @GetMapping("/user/{userId}/occurrences")
+    public ResponseEntity<?> getOccurrences(
+            @PathVariable Long userId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(defaultValue = "1000") int limit) {
+        if (to.isBefore(from) || limit < 1) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Need from <= to and a positive limit"));
+        }
+        List<OccurrenceResponse> occurrences = scheduledPurchaseService.getOccurrences(userId, from, to, Math.min(limit, MAX_OCCURRENCES));
+        return ResponseEntity.ok(occurrences);
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<ScheduledPurchaseResponse> getById(@PathVariable Long id) {
+        return ResponseEntity.of(scheduledPurchaseService.getById(id));
+    }
+
+    @PutMapping("/{id}")
+    public ResponseEntity<ScheduledPurchaseResponse> update(
+            @PathVariable Long id, @Valid @RequestBody ScheduledPurchaseUpdateRequest request) {
+        return ResponseEntity.of(scheduledPurchaseService.update(id, request));
+    }
+
+    @PatchMapping("/{id}/toggle")
+    public ResponseEntity<ScheduledPurchaseResponse> toggleActive(@PathVariable Long id) {
+        return ResponseEntity.of(scheduledPurchaseService.toggleActive(id));
+    }
+
+    // Fires the pending occurrence now; 404 if the purchase is missing or paused, 409 while it is being fired
+    @PostMapping("/{id}/execute")
+    public ResponseEntity<ScheduledPurchaseResponse> executeNow(@PathVariable Long id) {
+        logger.info("POST /scheduled-purchases/{}/execute called", id);
+        return ResponseEntity.of(scheduledPurchaseService.executeNow(id));
+    }
+
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> delete(@PathVariable Long id) {
+        return scheduledPurchaseService.delete(id) ? ResponseEntity.noContent().build() : ResponseEntity.notFound().build();
+    }
+
+    // One bounded chunk of a full purge; repeat until nothing is deleted.
+    // For the gateway's purger only: the gateway refuses this path on its public routes
+    @DeleteMapping("/user/{userId}/purge")
+    public ResponseEntity<Map<String, Integer>> purgeByUser(
+            @PathVariable Long userId,
+            @RequestParam(defaultValue = "500") int limit) {
+        int deleted = scheduledPurchaseService.purgeChunk(userId, Math.max(1, Math.min(limit, MAX_PURGE_CHUNK_SIZE)));
+        return ResponseEntity.ok(Map.of("deleted", deleted));
+    }
+
+    // Unparseable or empty recurrence rules
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<Map<String, String>> badSchedule(IllegalArgumentException e) {
+        logger.warn("Rejected schedule: {}", e.getMessage());
+        return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+    }
+
+    // A firing by hand while the scheduler is firing the same purchase
+    @ExceptionHandler(IllegalStateException.class)
+    public ResponseEntity<Map<String, String>> busy(IllegalStateException e) {
+        logger.warn("Rejected execution: {}", e.getMessage());
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", e.getMessage()));
+    }
+}
@@ -0,0 +1,48 @@
+package com.personalfinance.scheduled.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+import com.personalfinance.scheduled.model.ScheduledPurchase;
+
+// One expanded occurrence of a scheduled purchase; never stored
+public class OccurrenceResponse {
+
+    private Long purchaseId;
+    private String name;
+    private BigDecimal amount;
+    private String category;
+    private String merchant;
+    private LocalDateTime dueAt;
+
+    // Constructors
+    public OccurrenceResponse() {}
+
+    public OccurrenceResponse(ScheduledPurchase purchase, LocalDateTime dueAt) {
+        this.purchaseId = purchase.getId();
+        this.name = purchase.getName();
+        this.amount = purchase.getAmount();
+        this.category = purchase.getCategory();
+        this.merchant = purchase.getMerchant();
+        this.dueAt = dueAt;
+    }
+
+    // Getters and Setters
+    public Long getPurchaseId() { return purchaseId; }
+    public void setPurchaseId(Long purchaseId) { this.purchaseId = purchaseId; }
+
+    public String getName() { return name; }
+    public void setName(String name) { this.name = name; }
+
+    public BigDecimal getAmount() { return amount; }
+    public void setAmount(BigDecimal amount) { this.amount = amount; }
+
+    public String getCategory() { return category; }
+    public void setCategory(String category) { this.category = category; }
+
+    public String getMerchant() { return merchant; }
+    public void setMerchant(String merchant) { this.merchant = merchant; }
+
+    public LocalDateTime getDueAt() { return dueAt; }
+    public void setDueAt(LocalDateTime dueAt) { this.dueAt = dueAt; }
+}
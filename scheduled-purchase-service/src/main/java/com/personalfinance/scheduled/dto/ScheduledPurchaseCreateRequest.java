@@ -0,0 +1,70 @@
+package com.personalfinance.scheduled.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+import com.personalfinance.scheduled.model.Frequency;
+
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Positive;
+
+public class ScheduledPurchaseCreateRequest {
+
+    @NotNull
+    private Long userId;
+
+    @NotBlank
+    private String name;
+
+    @NotNull
+    @Positive
+    private BigDecimal amount;
+
+    @NotBlank
+    private String category;
+
+    // Either a frequency or a recurrence rule; the rule wins if both are given
+    private Frequency frequency;
+
+    private String recurrence;
+
+    // First due date, and DTSTART for the recurrence
+    @NotNull
+    private LocalDateTime nextDue;
+
+    private Boolean active;
+    private String merchant;
+    private String notes;
+
+    // Getters and Setters
+    public Long getUserId() { return userId; }
+    public void setUserId(Long userId) { this.userId = userId; }
+
+    public String getName() { return name; }
+    public void setName(String name) { this.name = name; }
+
+    public BigDecimal getAmount() { return amount; }
+    public void setAmount(BigDecimal amount) { this.amount = amount; }
+
+    public String getCategory() { return category; }
+    public void setCategory(String category) { this.category = category; }
+
+    public Frequency getFrequency() { return frequency; }
+    public void setFrequency(Frequency frequency) { this.frequency = frequency; }
+
+    public String getRecurrence() { return recurrence; }
+    public void setRecurrence(String recurrence) { this.recurrence = recurrence; }
+
+    public LocalDateTime getNextDue() { return nextDue; }
+    public void setNextDue(LocalDateTime nextDue) { this.nextDue = nextDue; }
+
+    public Boolean getActive() { return active; }
+    public void setActive(Boolean active) { this.active = active; }
+
+    public String getMerchant() { return merchant; }
+    public void setMerchant(String merchant) { this.merchant = merchant; }
+
+    public String getNotes() { return notes; }
+    public void setNotes(String notes) { this.notes = notes; }
+}
@@ -0,0 +1,103 @@
+package com.personalfinance.scheduled.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+import com.personalfinance.scheduled.model.Frequency;
+import com.personalfinance.scheduled.model.ScheduledPurchase;
+
+public class ScheduledPurchaseResponse {
+
+    private Long id;
+    private Long userId;
+    private String name;
+    private BigDecimal amount;
+    private String category;
+    private Frequency frequency;
+    private String recurrence;
+    private LocalDateTime endsAt;
+    private LocalDateTime nextDue;
+    private boolean active;
+    private String merchant;
+    private String notes;
+    private LocalDateTime lastExecutedAt;
+    private Long lastTransactionId;
+    private String lastError;
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+
+    // Constructors
+    public ScheduledPurchaseResponse() {}
+
+    public ScheduledPurchaseResponse(ScheduledPurchase purchase) {
+        this.id = purchase.getId();
+        this.userId = purchase.getUserId();
+        this.name = purchase.getName();
+        this.amount = purchase.getAmount();
+        this.category = purchase.getCategory();
+        this.frequency = purchase.getFrequency();
+        this.recurrence = purchase.getRecurrence();
+        this.endsAt = purchase.getEndsAt();
+        this.nextDue = purchase.getNextDue();
+        this.active = purchase.isActive();
+        this.merchant = purchase.getMerchant();
+        this.notes = purchase.getNotes();
+        this.lastExecutedAt = purchase.getLastExecutedAt();
+        this.lastTransactionId = purchase.getLastTransactionId();
+        this.lastError = purchase.getLastError();
+        this.createdAt = purchase.getCreatedAt();
+        this.updatedAt = purchase.getUpdatedAt();
+    }
+
+    // Getters and Setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public Long getUserId() { return userId; }
+    public void setUserId(Long userId) { this.userId = userId; }
+
+    public String getName() { return name; }
+    public void setName(String name) { this.name = name; }
+
+    public BigDecimal getAmount() { return amount; }
+    public void setAmount(BigDecimal amount) { this.amount = amount; }
+
+    public String getCategory() { return category; }
+    public void setCategory(String category) { this.category = category; }
+
+    public Frequency getFrequency() { return frequency; }
+    public void setFrequency(Frequency frequency) { this.frequency = frequency; }
+
+    public String getRecurrence() { return recurrence; }
+    public void setRecurrence(String recurrence) { this.recurrence = recurrence; }
+
+    public LocalDateTime getEndsAt() { return endsAt; }
+    public void setEndsAt(LocalDateTime endsAt) { this.endsAt = endsAt; }
+
+    public LocalDateTime getNextDue() { return nextDue; }
+    public void setNextDue(LocalDateTime nextDue) { this.nextDue = nextDue; }
+
+    public boolean isActive() { return active; }
+    public void setActive(boolean active) { this.active = active; }
+
+    public String getMerchant() { return merchant; }
+    public void setMerchant(String merchant) { this.merchant = merchant; }
+
+    public String getNotes() { return notes; }
+    public void setNotes(String notes) { this.notes = notes; }
+
+    public LocalDateTime getLastExecutedAt() { return lastExecutedAt; }
+    public void setLastExecutedAt(LocalDateTime lastExecutedAt) { this.lastExecutedAt = lastExecutedAt; }
+
+    public Long getLastTransactionId() { return lastTransactionId; }
+    public void setLastTransactionId(Long lastTransactionId) { this.lastTransactionId = lastTransactionId; }
+
+    public String getLastError() { return lastError; }
+    public void setLastError(String lastError) { this.lastError = lastError; }
+
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+
+    public LocalDateTime getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(LocalDateTime updatedAt) { this.updatedAt = updatedAt; }
+}
@@ -0,0 +1,6 @@
+package com.personalfinance.scheduled.model;
+
+// The period of a purchase's schedule; occurrences come from its RecurrenceRule
+public enum Frequency {
+    ONCE, DAILY, WEEKLY, MONTHLY, YEARLY
+}
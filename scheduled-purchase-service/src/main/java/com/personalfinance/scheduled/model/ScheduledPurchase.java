@@ -0,0 +1,175 @@
+package com.personalfinance.scheduled.model;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Positive;
+
+@Entity
+@Table(name = "scheduled_purchases", indexes = {
+        @Index(name = "idx_scheduled_purchases_user_due", columnList = "user_id, next_due"),
+        @Index(name = "idx_scheduled_purchases_active_id", columnList = "active, id"),
+        @Index(name = "idx_scheduled_purchases_updated", columnList = "updated_at")
+})
+public class ScheduledPurchase {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @NotNull
+    @Column(name = "user_id")
+    private Long userId;
+
+    @NotBlank
+    @Column(length = 100)
+    private String name;
+
+    @NotNull
+    @Positive
+    @Column(precision = 15, scale = 2)
+    private BigDecimal amount;
+
+    // One of transaction-service's expense categories
+    @Column(length = 50)
+    private String category;
+
+    @Enumerated(EnumType.STRING)
+    @Column(length = 20)
+    private Frequency frequency;
+
+    // RRULE subset (see RecurrenceRule); null means every period of frequency
+    @Column(length = 200)
+    private String recurrence;
+
+    // DTSTART: occurrences are expanded from here, so month-end days don't drift
+    @Column(name = "starts_at")
+    private LocalDateTime startsAt;
+
+    // Last possible occurrence, null if open-ended; lets range queries skip finished rules
+    @Column(name = "ends_at")
+    private LocalDateTime endsAt;
+
+    // The occurrence the timing wheel is waiting on; advanced as each one fires
+    @NotNull
+    @Column(name = "next_due")
+    private LocalDateTime nextDue;
+
+    @Column(nullable = false)
+    private boolean active = true;
+
+    // Instance that has claimed the pending occurrence, and until when; see ScheduledPurchaseRepositoryCustom#claim
+    @Column(name = "lease_owner", length = 100)
+    private String leaseOwner;
+
+    @Column(name = "lease_until")
+    private LocalDateTime leaseUntil;
+
+    // Bumped on every claim; a firing only counts if the token it claimed is still current
+    @Column(name = "fencing_token", nullable = false, columnDefinition = "bigint not null default 0")
+    private long fencingToken;
+
+    @Column(length = 100)
+    private String merchant;
+
+    @Column(length = 500)
+    private String notes;
+
+    @Column(name = "last_executed_at")
+    private LocalDateTime lastExecutedAt;
+
+    @Column(name = "last_transaction_id")
+    private Long lastTransactionId;
+
+    @Column(name = "last_error", length = 500)
+    private String lastError;
+
+    @CreationTimestamp
+    private LocalDateTime createdAt;
+
+    // Read by the other instances' heartbeat sweeps; see PurchaseScheduler
+    @UpdateTimestamp
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    // Constructors
+    public ScheduledPurchase() {}
+
+    // Getters and Setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public Long getUserId() { return userId; }
+    public void setUserId(Long userId) { this.userId = userId; }
+
+    public String getName() { return name; }
+    public void setName(String name) { this.name = name; }
+
+    public BigDecimal getAmount() { return amount; }
+    public void setAmount(BigDecimal amount) { this.amount = amount; }
+
+    public String getCategory() { return category; }
+    public void setCategory(String category) { this.category = category; }
+
+    public Frequency getFrequency() { return frequency; }
+    public void setFrequency(Frequency frequency) { this.frequency = frequency; }
+
+    public String getRecurrence() { return recurrence; }
+    public void setRecurrence(String recurrence) { this.recurrence = recurrence; }
+
+    public LocalDateTime getStartsAt() { return startsAt; }
+    public void setStartsAt(LocalDateTime startsAt) { this.startsAt = startsAt; }
+
+    public LocalDateTime getEndsAt() { return endsAt; }
+    public void setEndsAt(LocalDateTime endsAt) { this.endsAt = endsAt; }
+
+    public LocalDateTime getNextDue() { return nextDue; }
+    public void setNextDue(LocalDateTime nextDue) { this.nextDue = nextDue; }
+
+    public boolean isActive() { return active; }
+    public void setActive(boolean active) { this.active = active; }
+
+    public String getLeaseOwner() { return leaseOwner; }
+    public void setLeaseOwner(String leaseOwner) { this.leaseOwner = leaseOwner; }
+
+    public LocalDateTime getLeaseUntil() { return leaseUntil; }
+    public void setLeaseUntil(LocalDateTime leaseUntil) { this.leaseUntil = leaseUntil; }
+
+    public long getFencingToken() { return fencingToken; }
+    public void setFencingToken(long fencingToken) { this.fencingToken = fencingToken; }
+
+    public String getMerchant() { return merchant; }
+    public void setMerchant(String merchant) { this.merchant = merchant; }
+
+    public String getNotes() { return notes; }
+    public void setNotes(String notes) { this.notes = notes; }
+
+    public LocalDateTime getLastExecutedAt() { return lastExecutedAt; }
+    public void setLastExecutedAt(LocalDateTime lastExecutedAt) { this.lastExecutedAt = lastExecutedAt; }
+
+    public Long getLastTransactionId() { return lastTransactionId; }
+    public void setLastTransactionId(Long lastTransactionId) { this.lastTransactionId = lastTransactionId; }
+
+    public String getLastError() { return lastError; }
+    public void setLastError(String lastError) { this.lastError = lastError; }
+
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+
+    public LocalDateTime getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(LocalDateTime updatedAt) { this.updatedAt = updatedAt; }
+}
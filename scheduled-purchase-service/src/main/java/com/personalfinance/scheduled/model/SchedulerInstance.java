@@ -0,0 +1,34 @@
+package com.personalfinance.scheduled.model;
+
+import java.time.LocalDateTime;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+// A running scheduler, kept alive by its heartbeat; the live ones share the purchases out between them
+@Entity
+@Table(name = "scheduler_instances")
+public class SchedulerInstance {
+
+    @Id
+    @Column(length = 100)
+    private String owner;
+
+    @Column(name = "heartbeat_at", nullable = false)
+    private LocalDateTime heartbeatAt;
+
+    public SchedulerInstance() {}
+
+    public SchedulerInstance(String owner, LocalDateTime heartbeatAt) {
+        this.owner = owner;
+        this.heartbeatAt = heartbeatAt;
+    }
+
+    public String getOwner() { return owner; }
+    public void setOwner(String owner) { this.owner = owner; }
+
+    public LocalDateTime getHeartbeatAt() { return heartbeatAt; }
+    public void setHeartbeatAt(LocalDateTime heartbeatAt) { this.heartbeatAt = heartbeatAt; }
+}
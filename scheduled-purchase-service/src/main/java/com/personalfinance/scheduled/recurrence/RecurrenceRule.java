@@ -0,0 +1,544 @@
+package com.personalfinance.scheduled.recurrence;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+
+/**
+ * The subset of RFC 5545 RRULE that recurring purchases need: FREQ (DAILY,
+ * WEEKLY, MONTHLY, YEARLY), INTERVAL, COUNT, UNTIL, BYMONTH, BYMONTHDAY
+ * (negative counts from the month's end) and BYDAY (with an ordinal such as
+ * 1MO or -1FR in MONTHLY and YEARLY rules). Every occurrence takes DTSTART's
+ * time of day. As in RFC 5545, a day that doesn't exist in a period (the 31st
+ * in April) is skipped rather than clamped; only the plain frequency rules
+ * from {@link #of} clamp to the month's end, so a bill set up as "monthly"
+ * on the 31st still comes due every month, and returns to the 31st after.
+ *
+ * Occurrences are never stored. {@link #occurrences} expands them lazily from
+ * any point: it jumps straight to the period containing {@code from}, so the
+ * cost depends on what is read, not on how long ago DTSTART was. COUNT has
+ * no such jump; {@link #resolveCount} turns it into the equivalent UNTIL once,
+ * when the rule is saved.
+ */
+public final class RecurrenceRule {
+
+    public enum Freq { DAILY, WEEKLY, MONTHLY, YEARLY }
+
+    // Expansion gives up after this many periods in a row without an occurrence (e.g. BYMONTH=2;BYMONTHDAY=30)
+    private static final int MAX_EMPTY_PERIODS = 1500;
+    private static final int MAX_COUNT = 10000;
+    private static final DateTimeFormatter UNTIL_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss");
+    private static final DateTimeFormatter UNTIL_DATE_FORMAT = DateTimeFormatter.BASIC_ISO_DATE;
+    private static final String[] DAY_CODES = {"MO", "TU", "WE", "TH", "FR", "SA", "SU"};
+
+    private final Freq freq;
+    private final int interval;
+    private final Integer count;
+    private final LocalDateTime until;
+    // Sorted; empty when the part is absent
+    private final int[] byMonth;
+    private final int[] byMonthDay;
+    private final DayOfWeek[] byDay;
+    // Parallel to byDay; 0 = every such weekday in the period
+    private final int[] byDayOrdinal;
+    // DTSTART's day falls back to the month's last day instead of being skipped
+    private final boolean clampToMonthEnd;
+
+    private RecurrenceRule(Freq freq, int interval, Integer count, LocalDateTime until,
+                           int[] byMonth, int[] byMonthDay, DayOfWeek[] byDay, int[] byDayOrdinal,
+                           boolean clampToMonthEnd) {
+        this.freq = freq;
+        this.interval = interval;
+        this.count = count;
+        this.until = until;
+        this.byMonth = byMonth;
+        this.byMonthDay = byMonthDay;
+        this.byDay = byDay;
+        this.byDayOrdinal = byDayOrdinal;
+        this.clampToMonthEnd = clampToMonthEnd;
+    }
+
+    // Every period of freq from DTSTART; has no RRULE text of its own
+    public static RecurrenceRule of(Freq freq) {
+        return new RecurrenceRule(freq, 1, null, null, new int[0], new int[0], new DayOfWeek[0], new int[0], true);
+    }
+
+    /** Parses e.g. "FREQ=MONTHLY;BYDAY=-1FR" (an "RRULE:" prefix is accepted). Throws IllegalArgumentException. */
+    public static RecurrenceRule parse(String text) {
+        if (text == null || text.isBlank()) {
+            throw new IllegalArgumentException("Recurrence rule is empty");
+        }
+        String rule = text.trim().toUpperCase(Locale.ROOT);
+        if (rule.startsWith("RRULE:")) {
+            rule = rule.substring(6);
+        }
+        Freq freq = null;
+        int interval = 1;
+        Integer count = null;
+        LocalDateTime until = null;
+        int[] byMonth = new int[0];
+        int[] byMonthDay = new int[0];
+        List<DayOfWeek> days = new ArrayList<>();
+        List<Integer> ordinals = new ArrayList<>();
+        for (String part : rule.split(";")) {
+            int eq = part.indexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("Malformed rule part: " + part);
+            }
+            String name = part.substring(0, eq);
+            String value = part.substring(eq + 1);
+            switch (name) {
+                case "FREQ":
+                    try {
+                        freq = Freq.valueOf(value);
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalArgumentException("Unsupported FREQ: " + value);
+                    }
+                    break;
+                case "INTERVAL":
+                    interval = parseInt(name, value, 1, 1000);
+                    break;
+                case "COUNT":
+                    count = parseInt(name, value, 1, MAX_COUNT);
+                    break;
+                case "UNTIL":
+                    until = parseUntil(value);
+                    break;
+                case "BYMONTH":
+                    byMonth = parseList(name, value, 1, 12, false);
+                    break;
+                case "BYMONTHDAY":
+                    byMonthDay = parseList(name, value, -31, 31, true);
+                    break;
+                case "BYDAY":
+                    for (String day : value.split(",")) {
+                        if (day.length() < 2) {
+                            throw new IllegalArgumentException("Malformed BYDAY: " + day);
+                        }
+                        String code = day.substring(day.length() - 2);
+                        int index = Arrays.asList(DAY_CODES).indexOf(code);
+                        if (index < 0) {
+                            throw new IllegalArgumentException("Unknown weekday in BYDAY: " + day);
+                        }
+                        String ordinal = day.substring(0, day.length() - 2);
+                        days.add(DayOfWeek.of(index + 1));
+                        ordinals.add(ordinal.isEmpty() || ordinal.equals("+") ? 0 : parseInt("BYDAY ordinal", ordinal, -53, 53));
+                    }
+                    break;
+                case "WKST":
+                    if (!value.equals("MO")) {
+                        throw new IllegalArgumentException("Only WKST=MO is supported");
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unsupported rule part: " + name);
+            }
+        }
+        if (freq == null) {
+            throw new IllegalArgumentException("Rule needs FREQ");
+        }
+        if (count != null && until != null) {
+            throw new IllegalArgumentException("COUNT and UNTIL are mutually exclusive");
+        }
+        boolean hasOrdinal = ordinals.stream().anyMatch(o -> o != 0);
+        if (hasOrdinal && (freq == Freq.DAILY || freq == Freq.WEEKLY)) {
+            throw new IllegalArgumentException("BYDAY ordinals need FREQ=MONTHLY or YEARLY");
+        }
+        if (freq == Freq.YEARLY && !days.isEmpty() && byMonth.length == 0) {
+            throw new IllegalArgumentException("Yearly BYDAY needs BYMONTH");
+        }
+        if (freq == Freq.WEEKLY && byMonthDay.length > 0) {
+            throw new IllegalArgumentException("BYMONTHDAY is not allowed with FREQ=WEEKLY");
+        }
+        DayOfWeek[] byDay = days.toArray(new DayOfWeek[0]);
+        int[] byDayOrdinal = ordinals.stream().mapToInt(Integer::intValue).toArray();
+        return new RecurrenceRule(freq, interval, count, until, byMonth, byMonthDay, byDay, byDayOrdinal, false);
+    }
+
+    public Freq getFreq() { return freq; }
+    public Integer getCount() { return count; }
+    public LocalDateTime getUntil() { return until; }
+
+    /**
+     * Same occurrences with COUNT replaced by the UNTIL of its last occurrence,
+     * so later expansions can start anywhere. O(COUNT), once per save.
+     */
+    public RecurrenceRule resolveCount(LocalDateTime dtstart) {
+        if (count == null) {
+            return this;
+        }
+        RecurrenceRule unbounded = new RecurrenceRule(freq, interval, null, null, byMonth, byMonthDay, byDay, byDayOrdinal, clampToMonthEnd);
+        Iterator<LocalDateTime> it = unbounded.occurrences(dtstart, dtstart);
+        LocalDateTime last = dtstart;
+        for (int i = 0; i < count && it.hasNext(); i++) {
+            last = it.next();
+        }
+        return new RecurrenceRule(freq, interval, null, last, byMonth, byMonthDay, byDay, byDayOrdinal, clampToMonthEnd);
+    }
+
+    /** The first occurrence strictly after {@code after}, or null if the rule has ended. */
+    public LocalDateTime nextAfter(LocalDateTime dtstart, LocalDateTime after) {
+        Iterator<LocalDateTime> it = occurrences(dtstart, after.plusNanos(1));
+        return it.hasNext() ? it.next() : null;
+    }
+
+    /** Occurrences at or after {@code from}, in order, computed as they are read. */
+    public Iterator<LocalDateTime> occurrences(LocalDateTime dtstart, LocalDateTime from) {
+        if (count != null) {
+            // Counting has to start at DTSTART; callers normally hold a resolved rule
+            Iterator<LocalDateTime> all = resolveCount(dtstart).occurrences(dtstart, dtstart);
+            return new Iterator<>() {
+                private LocalDateTime next = advance();
+
+                private LocalDateTime advance() {
+                    while (all.hasNext()) {
+                        LocalDateTime candidate = all.next();
+                        if (!candidate.isBefore(from)) {
+                            return candidate;
+                        }
+                    }
+                    return null;
+                }
+
+                @Override
+                public boolean hasNext() { return next != null; }
+
+                @Override
+                public LocalDateTime next() {
+                    if (next == null) {
+                        throw new NoSuchElementException();
+                    }
+                    LocalDateTime result = next;
+                    next = advance();
+                    return result;
+                }
+            };
+        }
+        return new Expansion(dtstart, from.isBefore(dtstart) ? dtstart : from);
+    }
+
+    private final class Expansion implements Iterator<LocalDateTime> {
+        private final LocalDate start;
+        // First day of the period holding DTSTART
+        private final LocalDate origin;
+        private final LocalTime time;
+        private final LocalDateTime from;
+        private final List<LocalDate> buffer = new ArrayList<>();
+        private long period;
+        private int position;
+        private LocalDateTime next;
+        private boolean done;
+
+        Expansion(LocalDateTime dtstart, LocalDateTime from) {
+            this.start = dtstart.toLocalDate();
+            this.origin = freq == Freq.DAILY ? start
+                    : freq == Freq.WEEKLY ? weekStart(start)
+                    : freq == Freq.MONTHLY ? start.withDayOfMonth(1)
+                    : start.withDayOfYear(1);
+            this.time = dtstart.toLocalTime();
+            this.from = from;
+            this.period = Math.max(0, periodsBetween(start, from.toLocalDate()) / interval);
+            this.next = advance();
+        }
+
+        private LocalDateTime advance() {
+            int empty = 0;
+            while (!done) {
+                while (position < buffer.size()) {
+                    LocalDateTime candidate = buffer.get(position++).atTime(time);
+                    if (until != null && candidate.isAfter(until)) {
+                        done = true;
+                        return null;
+                    }
+                    if (!candidate.isBefore(from)) {
+                        return candidate;
+                    }
+                }
+                if (empty++ > MAX_EMPTY_PERIODS) {
+                    done = true;
+                    return null;
+                }
+                LocalDate periodStart = periodStart(period++);
+                if (until != null && periodStart.atStartOfDay().isAfter(until)) {
+                    done = true;
+                    return null;
+                }
+                buffer.clear();
+                position = 0;
+                expand(periodStart, buffer);
+                if (!buffer.isEmpty()) {
+                    empty = 0;
+                }
+            }
+            return null;
+        }
+
+        private long periodsBetween(LocalDate a, LocalDate b) {
+            switch (freq) {
+                case DAILY:
+                    return ChronoUnit.DAYS.between(a, b);
+                case WEEKLY:
+                    return ChronoUnit.WEEKS.between(weekStart(a), weekStart(b));
+                case MONTHLY:
+                    return ChronoUnit.MONTHS.between(YearMonth.from(a), YearMonth.from(b));
+                default:
+                    return b.getYear() - a.getYear();
+            }
+        }
+
+        private LocalDate periodStart(long k) {
+            long steps = k * interval;
+            switch (freq) {
+                case DAILY:
+                    return origin.plusDays(steps);
+                case WEEKLY:
+                    return origin.plusWeeks(steps);
+                case MONTHLY:
+                    return origin.plusMonths(steps);
+                default:
+                    return origin.plusYears(steps);
+            }
+        }
+
+        // Sorted candidate days of the period starting at periodStart, DTSTART not yet applied
+        private void expand(LocalDate periodStart, List<LocalDate> out) {
+            switch (freq) {
+                case DAILY:
+                    if (matchesMonth(periodStart) && matchesMonthDay(periodStart) && matchesWeekday(periodStart)) {
+                        out.add(periodStart);
+                    }
+                    break;
+                case WEEKLY:
+                    // periodStart is a Monday
+                    if (byDay.length == 0) {
+                        addIfMonth(periodStart.plusDays(start.getDayOfWeek().getValue() - 1), out);
+                    } else {
+                        for (int d = 0; d < 7; d++) {
+                            if (matchesWeekday(DayOfWeek.of(d + 1))) {
+                                addIfMonth(periodStart.plusDays(d), out);
+                            }
+                        }
+                    }
+                    break;
+                case MONTHLY:
+                    if (matchesMonth(periodStart)) {
+                        expandMonth(YearMonth.from(periodStart), out);
+                    }
+                    break;
+                default:
+                    if (byMonth.length == 0) {
+                        expandMonth(YearMonth.of(periodStart.getYear(), start.getMonthValue()), out);
+                    } else {
+                        for (int month : byMonth) {
+                            expandMonth(YearMonth.of(periodStart.getYear(), month), out);
+                        }
+                    }
+            }
+            if (out.size() > 1) {
+                Collections.sort(out);
+            }
+        }
+
+        private void expandMonth(YearMonth month, List<LocalDate> out) {
+            int length = month.lengthOfMonth();
+            if (byMonthDay.length == 0 && byDay.length == 0) {
+                if (start.getDayOfMonth() <= length) {
+                    out.add(month.atDay(start.getDayOfMonth()));
+                } else if (clampToMonthEnd) {
+                    out.add(month.atEndOfMonth());
+                }
+                return;
+            }
+            if (byMonthDay.length > 0) {
+                // BYDAY, if present too, only filters the listed days
+                for (int value : byMonthDay) {
+                    int day = value > 0 ? value : length + value + 1;
+                    if (day >= 1 && day <= length) {
+                        LocalDate date = month.atDay(day);
+                        if (matchesWeekday(date) && !out.contains(date)) {
+                            out.add(date);
+                        }
+                    }
+                }
+                return;
+            }
+            for (int i = 0; i < byDay.length; i++) {
+                if (byDayOrdinal[i] == 0) {
+                    for (int day = firstWeekday(month, byDay[i]); day <= length; day += 7) {
+                        LocalDate date = month.atDay(day);
+                        if (!out.contains(date)) {
+                            out.add(date);
+                        }
+                    }
+                } else {
+                    int day = byDayOrdinal[i] > 0
+                            ? firstWeekday(month, byDay[i]) + 7 * (byDayOrdinal[i] - 1)
+                            : lastWeekday(month, byDay[i]) - 7 * (-byDayOrdinal[i] - 1);
+                    if (day >= 1 && day <= length) {
+                        LocalDate date = month.atDay(day);
+                        if (!out.contains(date)) {
+                            out.add(date);
+                        }
+                    }
+                }
+            }
+        }
+
+        private void addIfMonth(LocalDate day, List<LocalDate> out) {
+            if (matchesMonth(day)) {
+                out.add(day);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public LocalDateTime next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            LocalDateTime result = next;
+            next = advance();
+            return result;
+        }
+    }
+
+    private boolean matchesMonth(LocalDate date) {
+        return byMonth.length == 0 || Arrays.binarySearch(byMonth, date.getMonthValue()) >= 0;
+    }
+
+    private boolean matchesMonthDay(LocalDate date) {
+        if (byMonthDay.length == 0) {
+            return true;
+        }
+        int fromEnd = date.getDayOfMonth() - date.lengthOfMonth() - 1;
+        for (int value : byMonthDay) {
+            if (value == date.getDayOfMonth() || value == fromEnd) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Ordinals only matter when expanding a month; as a filter every listed weekday matches
+    private boolean matchesWeekday(LocalDate date) {
+        return matchesWeekday(date.getDayOfWeek());
+    }
+
+    private boolean matchesWeekday(DayOfWeek dayOfWeek) {
+        if (byDay.length == 0) {
+            return true;
+        }
+        for (DayOfWeek day : byDay) {
+            if (day == dayOfWeek) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Plain arithmetic: TemporalAdjusters go through the generic Temporal API and showed up in profiles
+    private static LocalDate weekStart(LocalDate date) {
+        return date.minusDays(date.getDayOfWeek().getValue() - 1);
+    }
+
+    private static int firstWeekday(YearMonth month, DayOfWeek day) {
+        return 1 + (day.getValue() - month.atDay(1).getDayOfWeek().getValue() + 7) % 7;
+    }
+
+    private static int lastWeekday(YearMonth month, DayOfWeek day) {
+        int length = month.lengthOfMonth();
+        return length - (month.atDay(length).getDayOfWeek().getValue() - day.getValue() + 7) % 7;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("FREQ=").append(freq);
+        if (interval != 1) {
+            sb.append(";INTERVAL=").append(interval);
+        }
+        if (count != null) {
+            sb.append(";COUNT=").append(count);
+        }
+        if (until != null) {
+            sb.append(";UNTIL=").append(UNTIL_FORMAT.format(until));
+        }
+        if (byMonth.length > 0) {
+            sb.append(";BYMONTH=").append(join(byMonth));
+        }
+        if (byMonthDay.length > 0) {
+            sb.append(";BYMONTHDAY=").append(join(byMonthDay));
+        }
+        if (byDay.length > 0) {
+            sb.append(";BYDAY=");
+            for (int i = 0; i < byDay.length; i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                if (byDayOrdinal[i] != 0) {
+                    sb.append(byDayOrdinal[i]);
+                }
+                sb.append(DAY_CODES[byDay[i].getValue() - 1]);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String join(int[] values) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(values[i]);
+        }
+        return sb.toString();
+    }
+
+    private static int parseInt(String name, String value, int min, int max) {
+        try {
+            int parsed = Integer.parseInt(value.startsWith("+") ? value.substring(1) : value);
+            if (parsed < min || parsed > max) {
+                throw new IllegalArgumentException(name + " out of range: " + value);
+            }
+            return parsed;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Malformed " + name + ": " + value);
+        }
+    }
+
+    private static int[] parseList(String name, String value, int min, int max, boolean rejectZero) {
+        int[] values = Arrays.stream(value.split(",")).mapToInt(v -> parseInt(name, v, min, max)).sorted().distinct().toArray();
+        if (rejectZero && Arrays.binarySearch(values, 0) >= 0) {
+            throw new IllegalArgumentException(name + " can't be 0");
+        }
+        return values;
+    }
+
+    // UNTIL is taken as local time; a trailing Z is accepted but not converted
+    private static LocalDateTime parseUntil(String value) {
+        String local = value.endsWith("Z") ? value.substring(0, value.length() - 1) : value;
+        try {
+            return local.length() == 8
+                    ? LocalDate.parse(local, UNTIL_DATE_FORMAT).atTime(LocalTime.MAX)
+                    : LocalDateTime.parse(local, UNTIL_FORMAT);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Malformed UNTIL: " + value);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.personalfinance.scheduled.repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What came of trying to lease a set of purchases: the occurrences now leased
+ * to the caller, and for each purchase that can't fire yet (its due date moved
+ * out, or somebody else holds a live lease on it) when to try again. Purchases
+ * in neither were deleted or paused and need no timer.
+ */
+public final class ClaimRound {
+
+    private final List<PurchaseClaim> claims;
+    private final Map<Long, LocalDateTime> deferred;
+
+    public ClaimRound(List<PurchaseClaim> claims, Map<Long, LocalDateTime> deferred) {
+        this.claims = claims;
+        this.deferred = deferred;
+    }
+
+    public List<PurchaseClaim> getClaims() { return claims; }
+    public Map<Long, LocalDateTime> getDeferred() { return deferred; }
+}
@@ -0,0 +1,38 @@
+package com.personalfinance.scheduled.repository;
+
+import java.time.LocalDateTime;
+
+/**
+ * A leased occurrence: {@code owner} may fire purchase {@code purchaseId}'s
+ * occurrence due at {@code nextDue} until {@code leaseUntil}, as long as the
+ * row still carries {@code fencingToken} and this lease. Another instance
+ * reclaiming the row after the lease runs out bumps the token, and handing
+ * the lease back clears it; either turns this claim stale.
+ */
+public final class PurchaseClaim {
+
+    private final Long purchaseId;
+    private final LocalDateTime nextDue;
+    private final long fencingToken;
+    private final String owner;
+    private final LocalDateTime leaseUntil;
+
+    public PurchaseClaim(Long purchaseId, LocalDateTime nextDue, long fencingToken, String owner, LocalDateTime leaseUntil) {
+        this.purchaseId = purchaseId;
+        this.nextDue = nextDue;
+        this.fencingToken = fencingToken;
+        this.owner = owner;
+        this.leaseUntil = leaseUntil;
+    }
+
+    public Long getPurchaseId() { return purchaseId; }
+    public LocalDateTime getNextDue() { return nextDue; }
+    public long getFencingToken() { return fencingToken; }
+    public String getOwner() { return owner; }
+    public LocalDateTime getLeaseUntil() { return leaseUntil; }
+
+    @Override
+    public String toString() {
+        return "purchase " + purchaseId + " due " + nextDue + " token " + fencingToken + " leased to " + owner + " until " + leaseUntil;
+    }
+}
@@ -0,0 +1,35 @@
+package com.personalfinance.scheduled.repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import javax.persistence.LockModeType;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.personalfinance.scheduled.model.ScheduledPurchase;
+
+@Repository
+public interface ScheduledPurchaseRepository extends JpaRepository<ScheduledPurchase, Long>, ScheduledPurchaseRepositoryCustom {
+
+    List<ScheduledPurchase> findByUserIdOrderByNextDueAsc(Long userId);
+
+    List<ScheduledPurchase> findByUserIdAndActiveTrueAndNextDueBetweenOrderByNextDueAsc(
+            Long userId, LocalDateTime start, LocalDateTime end);
+
+    // Serialises a firing against edits of the same purchase
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT p FROM ScheduledPurchase p WHERE p.id = :id")
+    Optional<ScheduledPurchase> findByIdForUpdate(@Param("id") Long id);
+
+    // Locked like a single delete, so a purge can't race a firing of the same purchase
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT p FROM ScheduledPurchase p WHERE p.userId = :userId ORDER BY p.id")
+    List<ScheduledPurchase> findByUserIdForUpdate(@Param("userId") Long userId, Pageable pageable);
+}
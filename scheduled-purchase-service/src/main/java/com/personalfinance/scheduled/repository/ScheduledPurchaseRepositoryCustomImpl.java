@@ -0,0 +1,113 @@
+package com.personalfinance.scheduled.repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.personalfinance.scheduled.model.Frequency;
+import com.personalfinance.scheduled.model.ScheduledPurchase;
+
+public class ScheduledPurchaseRepositoryCustomImpl implements ScheduledPurchaseRepositoryCustom {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public ScheduledPurchaseRepositoryCustomImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public Long forEachActiveTrigger(Long afterId, int limit, BiConsumer<Long, LocalDateTime> consumer) {
+        Long[] last = {null};
+        jdbcTemplate.query("SELECT id, next_due, lease_until FROM scheduled_purchases WHERE active AND id > ? ORDER BY id LIMIT ?", rs -> {
+            last[0] = rs.getLong(1);
+            consumer.accept(last[0], trigger(rs.getTimestamp(2), rs.getTimestamp(3)));
+        }, afterId, limit);
+        return last[0];
+    }
+
+    @Override
+    public void forEachChangedSince(LocalDateTime since, BiConsumer<Long, LocalDateTime> consumer) {
+        jdbcTemplate.query("SELECT id, active, next_due, lease_until FROM scheduled_purchases WHERE updated_at > ?", rs -> {
+            consumer.accept(rs.getLong(1), rs.getBoolean(2) ? trigger(rs.getTimestamp(3), rs.getTimestamp(4)) : null);
+        }, Timestamp.valueOf(since));
+    }
+
+    @Override
+    public List<ScheduledPurchase> findActiveInWindow(Long userId, LocalDateTime from, LocalDateTime to) {
+        return jdbcTemplate.query("SELECT id, name, amount, category, merchant, frequency, recurrence, starts_at, next_due"
+                + " FROM scheduled_purchases WHERE user_id = ? AND active AND next_due <= ?"
+                + " AND (ends_at IS NULL OR ends_at >= ?)", (rs, row) -> {
+            ScheduledPurchase purchase = new ScheduledPurchase();
+            purchase.setId(rs.getLong("id"));
+            purchase.setUserId(userId);
+            purchase.setName(rs.getString("name"));
+            purchase.setAmount(rs.getBigDecimal("amount"));
+            purchase.setCategory(rs.getString("category"));
+            purchase.setMerchant(rs.getString("merchant"));
+            String frequency = rs.getString("frequency");
+            purchase.setFrequency(frequency == null ? null : Frequency.valueOf(frequency));
+            purchase.setRecurrence(rs.getString("recurrence"));
+            Timestamp startsAt = rs.getTimestamp("starts_at");
+            purchase.setStartsAt(startsAt == null ? null : startsAt.toLocalDateTime());
+            purchase.setNextDue(rs.getTimestamp("next_due").toLocalDateTime());
+            purchase.setActive(true);
+            return purchase;
+        }, userId, Timestamp.valueOf(to), Timestamp.valueOf(from));
+    }
+
+    @Override
+    public ClaimRound claim(String owner, Collection<Long> ids, LocalDateTime now, LocalDateTime leaseUntil) {
+        List<PurchaseClaim> claims = new ArrayList<>();
+        Map<Long, LocalDateTime> deferred = new HashMap<>();
+        if (ids.isEmpty()) {
+            return new ClaimRound(claims, deferred);
+        }
+        // Locked in id order, so two claimers of overlapping sets can't deadlock
+        String in = String.join(", ", Collections.nCopies(ids.size(), "?"));
+        jdbcTemplate.query("SELECT id, next_due, lease_until, fencing_token FROM scheduled_purchases"
+                + " WHERE active AND id IN (" + in + ") ORDER BY id FOR UPDATE", rs -> {
+            long id = rs.getLong(1);
+            LocalDateTime nextDue = rs.getTimestamp(2).toLocalDateTime();
+            Timestamp lease = rs.getTimestamp(3);
+            if (nextDue.isAfter(now) || (lease != null && !lease.toLocalDateTime().isBefore(now))) {
+                deferred.put(id, trigger(rs.getTimestamp(2), lease));
+            } else {
+                claims.add(new PurchaseClaim(id, nextDue, rs.getLong(4) + 1, owner, leaseUntil));
+            }
+        }, ids.toArray());
+        if (!claims.isEmpty()) {
+            // The selected rows stay locked until commit, so the tokens read above can't move underneath
+            jdbcTemplate.batchUpdate("UPDATE scheduled_purchases SET lease_owner = ?, lease_until = ?, fencing_token = ? WHERE id = ?",
+                    claims, claims.size(), (ps, claim) -> {
+                        ps.setString(1, owner);
+                        ps.setTimestamp(2, Timestamp.valueOf(leaseUntil));
+                        ps.setLong(3, claim.getFencingToken());
+                        ps.setLong(4, claim.getPurchaseId());
+                    });
+        }
+        return new ClaimRound(claims, deferred);
+    }
+
+    @Override
+    public boolean releaseLease(PurchaseClaim claim, LocalDateTime retryAt) {
+        // Stamped as a change, so the purchase's owner moves its timer to the retry if it wasn't the one that failed
+        return jdbcTemplate.update("UPDATE scheduled_purchases SET lease_owner = NULL, lease_until = ?, updated_at = ?"
+                + " WHERE id = ? AND fencing_token = ? AND lease_owner = ?",
+                Timestamp.valueOf(retryAt), Timestamp.valueOf(LocalDateTime.now()),
+                claim.getPurchaseId(), claim.getFencingToken(), claim.getOwner()) == 1;
+    }
+
+    // When the pending occurrence can fire: its due date, unless a lease on the row runs out later
+    private static LocalDateTime trigger(Timestamp nextDue, Timestamp leaseUntil) {
+        LocalDateTime due = nextDue.toLocalDateTime();
+        return leaseUntil != null && leaseUntil.toLocalDateTime().isAfter(due) ? leaseUntil.toLocalDateTime() : due;
+    }
+}
@@ -0,0 +1,31 @@
+package com.personalfinance.scheduled.repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.personalfinance.scheduled.model.SchedulerInstance;
+
+@Repository
+public interface SchedulerInstanceRepository extends JpaRepository<SchedulerInstance, String> {
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE SchedulerInstance i SET i.heartbeatAt = :now WHERE i.owner = :owner")
+    int touch(@Param("owner") String owner, @Param("now") LocalDateTime now);
+
+    @Query("SELECT i.owner FROM SchedulerInstance i WHERE i.heartbeatAt > :since ORDER BY i.owner")
+    List<String> findLiveOwners(@Param("since") LocalDateTime since);
+
+    // Instances long gone, so the table doesn't grow with every restart under a new pid
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM SchedulerInstance i WHERE i.heartbeatAt < :before")
+    int deleteStale(@Param("before") LocalDateTime before);
+}
@@ -0,0 +1,184 @@
+package com.personalfinance.scheduled.scheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hierarchical timing wheel (Varghese & Lauck; the layout the Linux kernel
+ * timer wheel used). Level 0 has one slot per tick; each level above covers
+ * 64 times the span of the one below, so six levels reach 64^6 ticks. A timer
+ * goes into the lowest level whose span covers its delay, in the slot picked
+ * by the matching bits of its deadline tick. Scheduling and cancelling are
+ * O(1); a timer is moved down at most once per level before it expires, so
+ * firing is amortised O(1) as well, however many timers are pending.
+ *
+ * Not thread-safe on its own; callers serialise access.
+ */
+public class HierarchicalTimingWheel<T> {
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 6;
+    // Anything further out is parked in the top level and re-placed as it cascades down
+    private static final long MAX_SPAN = 1L << (SLOT_BITS * LEVELS);
+
+    public static final class Timeout<T> {
+        private final T payload;
+        private final long deadlineTick;
+        private Bucket<T> bucket;
+        private Timeout<T> prev;
+        private Timeout<T> next;
+
+        private Timeout(T payload, long deadlineTick) {
+            this.payload = payload;
+            this.deadlineTick = deadlineTick;
+        }
+
+        public T getPayload() { return payload; }
+        public boolean isPending() { return bucket != null; }
+    }
+
+    // Intrusive doubly-linked list so a timer can unlink itself in O(1)
+    private static final class Bucket<T> {
+        private Timeout<T> head;
+
+        void add(Timeout<T> timeout) {
+            timeout.bucket = this;
+            timeout.prev = null;
+            timeout.next = head;
+            if (head != null) {
+                head.prev = timeout;
+            }
+            head = timeout;
+        }
+
+        void remove(Timeout<T> timeout) {
+            if (timeout.prev != null) {
+                timeout.prev.next = timeout.next;
+            } else {
+                head = timeout.next;
+            }
+            if (timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            }
+            timeout.bucket = null;
+            timeout.prev = null;
+            timeout.next = null;
+        }
+
+        Timeout<T> drain() {
+            Timeout<T> first = head;
+            head = null;
+            return first;
+        }
+    }
+
+    private final long tickMillis;
+    private final long originMillis;
+    private final Bucket<T>[][] wheel;
+    // Last tick whose level-0 slot has been expired
+    private long currentTick;
+    private int size;
+
+    public HierarchicalTimingWheel(long tickMillis, long originMillis) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("tickMillis must be positive");
+        }
+        this.tickMillis = tickMillis;
+        this.originMillis = originMillis;
+        @SuppressWarnings("unchecked")
+        Bucket<T>[][] buckets = (Bucket<T>[][]) new Bucket<?>[LEVELS][SLOTS];
+        this.wheel = buckets;
+        for (int level = 0; level < LEVELS; level++) {
+            for (int slot = 0; slot < SLOTS; slot++) {
+                wheel[level][slot] = new Bucket<>();
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Adds a timer firing at the first tick at or after {@code deadlineMillis}.
+     * Deadlines already passed fire on the next advance.
+     */
+    public Timeout<T> schedule(T payload, long deadlineMillis) {
+        long offset = deadlineMillis - originMillis;
+        long deadlineTick = offset <= 0 ? 0 : (offset + tickMillis - 1) / tickMillis;
+        Timeout<T> timeout = new Timeout<>(payload, Math.max(deadlineTick, currentTick + 1));
+        place(timeout);
+        size++;
+        return timeout;
+    }
+
+    public boolean cancel(Timeout<T> timeout) {
+        if (timeout.bucket == null) {
+            return false;
+        }
+        timeout.bucket.remove(timeout);
+        size--;
+        return true;
+    }
+
+    /**
+     * Runs the wheel forward to {@code nowMillis} and returns the payloads of
+     * every timer that expired on the way, tick by tick.
+     */
+    public List<T> advanceTo(long nowMillis) {
+        long targetTick = (nowMillis - originMillis) / tickMillis;
+        List<T> expired = new ArrayList<>();
+        if (size == 0 && targetTick > currentTick) {
+            // Nothing to cascade; skip the empty ticks
+            currentTick = targetTick;
+            return expired;
+        }
+        while (currentTick < targetTick) {
+            currentTick++;
+            cascade();
+            Timeout<T> timeout = wheel[0][(int) (currentTick & SLOT_MASK)].drain();
+            while (timeout != null) {
+                Timeout<T> next = timeout.next;
+                timeout.bucket = null;
+                timeout.prev = null;
+                timeout.next = null;
+                size--;
+                expired.add(timeout.payload);
+                timeout = next;
+            }
+            if (size == 0) {
+                currentTick = targetTick;
+            }
+        }
+        return expired;
+    }
+
+    // Every 64^level ticks the next slot of that level is due to be spread over the levels below
+    private void cascade() {
+        int top = 0;
+        while (top + 1 < LEVELS && (currentTick & ((1L << (SLOT_BITS * (top + 1))) - 1)) == 0) {
+            top++;
+        }
+        for (int level = top; level >= 1; level--) {
+            Timeout<T> timeout = wheel[level][(int) ((currentTick >>> (SLOT_BITS * level)) & SLOT_MASK)].drain();
+            while (timeout != null) {
+                Timeout<T> next = timeout.next;
+                place(timeout);
+                timeout = next;
+            }
+        }
+    }
+
+    private void place(Timeout<T> timeout) {
+        long delta = Math.max(0, timeout.deadlineTick - currentTick);
+        long tick = delta >= MAX_SPAN ? currentTick + MAX_SPAN - 1 : timeout.deadlineTick;
+        delta = tick - currentTick;
+        int level = 0;
+        while (level + 1 < LEVELS && delta >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+        wheel[level][(int) ((tick >>> (SLOT_BITS * level)) & SLOT_MASK)].add(timeout);
+    }
+}
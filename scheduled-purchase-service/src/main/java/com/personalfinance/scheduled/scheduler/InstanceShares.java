@@ -0,0 +1,57 @@
+package com.personalfinance.scheduled.scheduler;
+
+import java.util.List;
+
+/**
+ * Which live instance owns which purchase, by rendezvous hashing: every
+ * instance scores every purchase and the highest score owns it. All instances
+ * that see the same member list agree without talking to each other, and when
+ * an instance joins or leaves only the purchases it gains or held change
+ * hands, about 1/n of them, rather than nearly all as with id mod n.
+ */
+final class InstanceShares {
+
+    static final InstanceShares NONE = new InstanceShares(List.of(), "");
+
+    private final List<String> members;
+    private final long[] seeds;
+    private final int self;
+
+    // members sorted and distinct, as the membership query returns them
+    InstanceShares(List<String> members, String self) {
+        this.members = List.copyOf(members);
+        this.seeds = new long[members.size()];
+        for (int i = 0; i < seeds.length; i++) {
+            seeds[i] = mix(members.get(i).hashCode());
+        }
+        this.self = members.indexOf(self);
+    }
+
+    List<String> members() {
+        return members;
+    }
+
+    boolean owns(long purchaseId) {
+        if (self < 0) {
+            return false;
+        }
+        long best = Long.MIN_VALUE;
+        int owner = -1;
+        for (int i = 0; i < seeds.length; i++) {
+            long score = mix(seeds[i] ^ purchaseId);
+            // Ties are as good as impossible, but must still go one way on every instance
+            if (owner < 0 || score > best) {
+                best = score;
+                owner = i;
+            }
+        }
+        return owner == self;
+    }
+
+    // SplitMix64's finaliser; consecutive ids come out unrelated
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
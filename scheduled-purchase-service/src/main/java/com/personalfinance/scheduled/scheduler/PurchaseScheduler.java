@@ -0,0 +1,351 @@
+package com.personalfinance.scheduled.scheduler;
+
+import java.lang.management.ManagementFactory;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.personalfinance.scheduled.model.SchedulerInstance;
+import com.personalfinance.scheduled.repository.ClaimRound;
+import com.personalfinance.scheduled.repository.PurchaseClaim;
+import com.personalfinance.scheduled.repository.ScheduledPurchaseRepository;
+import com.personalfinance.scheduled.repository.SchedulerInstanceRepository;
+import com.personalfinance.scheduled.service.ScheduledPurchaseService;
+import com.personalfinance.scheduled.service.ScheduledPurchaseService.FiringOutcome;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Fires due purchases, safely across any number of instances. The purchases
+ * are shared out between the running instances (see {@link InstanceShares}),
+ * and each instance's {@link HierarchicalTimingWheel} holds one timer per
+ * active purchase in its own share and nothing else, so firing is driven by
+ * the wheel alone; nothing polls for due rows.
+ *
+ * Instances find each other through a heartbeat row each. Every heartbeat
+ * also reads the purchases changed since the last one, which is how an owner
+ * hears of edits made through another instance. When the set of live
+ * instances changes, each one rebuilds its wheel for its new share; a dead
+ * instance's share is taken over once its heartbeat is older than the TTL.
+ *
+ * While the instances' views of the membership disagree, for up to a
+ * heartbeat, two of them can both think they own a purchase. The lease makes
+ * that harmless: a firing first leases the row, bumping its fencing token,
+ * and only counts if its token and lease are still on the row when it is
+ * recorded, so at most one of them fires it.
+ *
+ * @see com.personalfinance.scheduled.repository.ScheduledPurchaseRepositoryCustom#claim
+ */
+@Component
+public class PurchaseScheduler {
+    private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(PurchaseScheduler.class);
+
+    private final ScheduledPurchaseRepository repository;
+    private final SchedulerInstanceRepository instances;
+    private final ScheduledPurchaseService service;
+    private final String owner;
+    private final long tickMillis;
+    private final long heartbeatMillis;
+    private final long memberTtlMillis;
+    private final long leaseMillis;
+    private final int claimBatchSize;
+    private final int maxInFlight;
+    private final long retryDelayMillis;
+    private final int rebuildPageSize;
+    private final ZoneId zone = ZoneId.systemDefault();
+
+    // Guards the wheel and the id -> timer index
+    private final Object lock = new Object();
+    private final HierarchicalTimingWheel<Long> wheel;
+    private final Map<Long, HierarchicalTimingWheel.Timeout<Long>> timers = new HashMap<>();
+    private volatile InstanceShares shares = InstanceShares.NONE;
+
+    // Claimed occurrences handed to the workers and not finished yet
+    private final AtomicInteger inFlight = new AtomicInteger();
+    // Ticker thread only: expired timers not claimed yet, and the heartbeat's bookkeeping
+    private final Set<Long> ready = new LinkedHashSet<>();
+    private long nextHeartbeatMillis;
+    private LocalDateTime lastSweep;
+
+    private final ScheduledExecutorService ticker;
+    private final ExecutorService workers;
+    private final Map<FiringOutcome, Counter> firings = new HashMap<>();
+    private final Counter failures;
+    private final Counter claims;
+
+    public PurchaseScheduler(ScheduledPurchaseRepository repository,
+                             SchedulerInstanceRepository instances,
+                             ScheduledPurchaseService service,
+                             MeterRegistry meterRegistry,
+                             @Value("${scheduled-purchases.instance-id:}") String instanceId,
+                             @Value("${scheduled-purchases.wheel.tick-ms:1000}") long tickMillis,
+                             @Value("${scheduled-purchases.membership.heartbeat-ms:5000}") long heartbeatMillis,
+                             @Value("${scheduled-purchases.membership.ttl-ms:30000}") long memberTtlMillis,
+                             @Value("${scheduled-purchases.lease.duration-ms:120000}") long leaseMillis,
+                             @Value("${scheduled-purchases.lease.claim-batch-size:100}") int claimBatchSize,
+                             @Value("${scheduled-purchases.workers:4}") int workerCount,
+                             @Value("${scheduled-purchases.retry-delay-ms:60000}") long retryDelayMillis,
+                             @Value("${scheduled-purchases.rebuild-page-size:10000}") int rebuildPageSize) {
+        this.repository = repository;
+        this.instances = instances;
+        this.service = service;
+        // pid@host, unless configured
+        this.owner = instanceId.isEmpty() ? ManagementFactory.getRuntimeMXBean().getName() : instanceId;
+        this.tickMillis = tickMillis;
+        this.heartbeatMillis = heartbeatMillis;
+        this.memberTtlMillis = memberTtlMillis;
+        this.leaseMillis = leaseMillis;
+        this.claimBatchSize = Math.max(1, claimBatchSize);
+        // One batch being fired and one queued behind it; the rest waits in ready
+        this.maxInFlight = 2 * this.claimBatchSize;
+        this.retryDelayMillis = retryDelayMillis;
+        this.rebuildPageSize = rebuildPageSize;
+        this.wheel = new HierarchicalTimingWheel<>(tickMillis, System.currentTimeMillis());
+        this.ticker = Executors.newSingleThreadScheduledExecutor(daemon("purchase-wheel"));
+        this.workers = Executors.newFixedThreadPool(Math.max(1, workerCount), daemon("purchase-fire"));
+        for (FiringOutcome outcome : FiringOutcome.values()) {
+            firings.put(outcome, Counter.builder("scheduled_purchases.firings")
+                    .tag("outcome", outcome.name().toLowerCase())
+                    .register(meterRegistry));
+        }
+        this.failures = Counter.builder("scheduled_purchases.firings").tag("outcome", "failed").register(meterRegistry);
+        this.claims = Counter.builder("scheduled_purchases.claims").register(meterRegistry);
+        Gauge.builder("scheduled_purchases.wheel.pending", this, PurchaseScheduler::pending).register(meterRegistry);
+        Gauge.builder("scheduled_purchases.in_flight", inFlight, AtomicInteger::get).register(meterRegistry);
+        Gauge.builder("scheduled_purchases.instances", this, scheduler -> scheduler.shares.members().size()).register(meterRegistry);
+    }
+
+    // The first tick joins the membership and builds the wheel for this instance's share
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        ticker.scheduleAtFixedRate(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        ticker.shutdownNow();
+        workers.shutdown();
+        try {
+            // The others take the share over on their next heartbeat rather than after the TTL
+            instances.deleteById(owner);
+        } catch (RuntimeException e) {
+            logger.debug("[PurchaseScheduler] Could not leave the membership: {}", e.getMessage());
+        }
+    }
+
+    // Runs after the change commits, so the timer never runs ahead of the row it was computed from
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onScheduleChanged(ScheduleChangedEvent event) {
+        synchronized (lock) {
+            apply(event.getPurchaseId(), event.getNextDue());
+        }
+    }
+
+    private void tick() {
+        long now = System.currentTimeMillis();
+        if (now >= nextHeartbeatMillis) {
+            nextHeartbeatMillis = now + heartbeatMillis;
+            try {
+                heartbeat();
+            } catch (RuntimeException e) {
+                // Timers already on the wheel keep firing; the share is re-checked on the next heartbeat
+                logger.error("[PurchaseScheduler] Heartbeat failed: {}", e.getMessage(), e);
+            }
+        }
+        try {
+            advance(now);
+            claimReady();
+        } catch (RuntimeException e) {
+            // An exception would cancel the fixed-rate schedule and stop the wheel for good
+            logger.error("[PurchaseScheduler] Tick failed: {}", e.getMessage(), e);
+        }
+    }
+
+    private void advance(long nowMillis) {
+        synchronized (lock) {
+            for (Long purchaseId : wheel.advanceTo(nowMillis)) {
+                HierarchicalTimingWheel.Timeout<Long> current = timers.get(purchaseId);
+                if (current != null && !current.isPending()) {
+                    timers.remove(purchaseId);
+                }
+                ready.add(purchaseId);
+            }
+        }
+    }
+
+    // Keeps this instance alive, and brings the wheel up to date with the membership and with other instances' edits
+    private void heartbeat() {
+        LocalDateTime started = LocalDateTime.now();
+        if (instances.touch(owner, started) == 0) {
+            instances.save(new SchedulerInstance(owner, started));
+        }
+        List<String> live = instances.findLiveOwners(started.minusNanos(memberTtlMillis * 1_000_000));
+        if (lastSweep == null || !live.equals(shares.members())) {
+            shares = new InstanceShares(live, owner);
+            rebuild();
+            instances.deleteStale(started.minusNanos(10 * memberTtlMillis * 1_000_000));
+        } else {
+            // Each change is seen by two sweeps, so a commit that lands late or a clock a little behind isn't missed
+            repository.forEachChangedSince(lastSweep.minusNanos(heartbeatMillis * 1_000_000), (id, trigger) -> {
+                synchronized (lock) {
+                    apply(id, trigger);
+                }
+            });
+        }
+        lastSweep = started;
+    }
+
+    // Ticker thread. Replaces the wheel's timers with one for each active purchase in this instance's share
+    private void rebuild() {
+        long started = System.currentTimeMillis();
+        synchronized (lock) {
+            for (HierarchicalTimingWheel.Timeout<Long> timeout : timers.values()) {
+                wheel.cancel(timeout);
+            }
+            timers.clear();
+            ready.removeIf(id -> !shares.owns(id));
+        }
+        int[] loaded = {0};
+        Long afterId = 0L;
+        while (afterId != null) {
+            // One lock hold per page keeps request-driven reschedules from stalling behind the whole rebuild
+            synchronized (lock) {
+                afterId = repository.forEachActiveTrigger(afterId, rebuildPageSize, (id, trigger) -> {
+                    if (shares.owns(id)) {
+                        schedule(id, trigger);
+                        loaded[0]++;
+                    }
+                });
+            }
+        }
+        logger.info("[PurchaseScheduler] Rebuilt timing wheel with {} triggers in {} ms; {} is one of {} instances {}",
+                loaded[0], System.currentTimeMillis() - started, owner, shares.members().size(), shares.members());
+    }
+
+    // Claims expired timers' purchases until none are left or this instance has enough queued
+    private void claimReady() {
+        while (!ready.isEmpty()) {
+            int room = maxInFlight - inFlight.get();
+            if (room <= 0) {
+                return;
+            }
+            List<Long> ids = new ArrayList<>();
+            for (Iterator<Long> it = ready.iterator(); it.hasNext() && ids.size() < Math.min(claimBatchSize, room); ) {
+                Long id = it.next();
+                it.remove();
+                if (shares.owns(id)) {
+                    ids.add(id);
+                }
+            }
+            ClaimRound round;
+            try {
+                round = service.claim(owner, leaseMillis, ids);
+            } catch (RuntimeException e) {
+                ready.addAll(ids);
+                throw e;
+            }
+            claims.increment(round.getClaims().size());
+            inFlight.addAndGet(round.getClaims().size());
+            for (PurchaseClaim claim : round.getClaims()) {
+                workers.execute(() -> fire(claim));
+            }
+            synchronized (lock) {
+                round.getDeferred().forEach(this::apply);
+            }
+        }
+    }
+
+    private void fire(PurchaseClaim claim) {
+        try {
+            FiringOutcome outcome = service.fire(claim);
+            firings.get(outcome).increment();
+            if (outcome == FiringOutcome.STALE) {
+                // Nothing recorded it; if the occurrence is still pending it can be claimed once this lease is over
+                rearm(claim.getPurchaseId(), claim.getLeaseUntil());
+            }
+        } catch (RuntimeException e) {
+            failures.increment();
+            logger.warn("[PurchaseScheduler] Firing {} failed, retrying in {} ms: {}", claim, retryDelayMillis, e.getMessage());
+            LocalDateTime retryAt = LocalDateTime.now().plusNanos(retryDelayMillis * 1_000_000);
+            try {
+                service.releaseLease(claim, retryAt);
+            } catch (RuntimeException releaseFailure) {
+                // The lease runs out on its own; the occurrence is retried then instead
+                logger.warn("[PurchaseScheduler] Could not release lease for {}: {}", claim, releaseFailure.getMessage());
+                retryAt = claim.getLeaseUntil();
+            }
+            rearm(claim.getPurchaseId(), retryAt);
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    // A timer for a purchase that may have been left without one; one set meanwhile by a change wins
+    private void rearm(Long purchaseId, LocalDateTime at) {
+        synchronized (lock) {
+            if (!timers.containsKey(purchaseId)) {
+                apply(purchaseId, at);
+            }
+        }
+    }
+
+    // Caller holds the lock. A null trigger, or a purchase outside this instance's share, needs no timer
+    private void apply(Long purchaseId, LocalDateTime trigger) {
+        if (trigger != null && shares.owns(purchaseId)) {
+            schedule(purchaseId, trigger);
+        } else {
+            HierarchicalTimingWheel.Timeout<Long> previous = timers.remove(purchaseId);
+            if (previous != null) {
+                wheel.cancel(previous);
+            }
+        }
+    }
+
+    // Caller holds the lock. At most one timer per purchase: a new one replaces the old
+    private void schedule(Long purchaseId, LocalDateTime trigger) {
+        HierarchicalTimingWheel.Timeout<Long> previous = timers.put(purchaseId, wheel.schedule(purchaseId, toMillis(trigger)));
+        if (previous != null) {
+            wheel.cancel(previous);
+        }
+    }
+
+    private int pending() {
+        synchronized (lock) {
+            return wheel.size();
+        }
+    }
+
+    private long toMillis(LocalDateTime dateTime) {
+        return dateTime.atZone(zone).toInstant().toEpochMilli();
+    }
+
+    private static java.util.concurrent.ThreadFactory daemon(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,23 @@
+package com.personalfinance.scheduled.scheduler;
+
+import java.time.LocalDateTime;
+
+/**
+ * Published whenever a purchase's trigger may have moved (created, edited,
+ * fired, deleted). The scheduler applies it to the timing wheel once the
+ * publishing transaction commits.
+ */
+public class ScheduleChangedEvent {
+
+    private final Long purchaseId;
+    // Null when the purchase no longer needs a trigger (inactive or deleted)
+    private final LocalDateTime nextDue;
+
+    public ScheduleChangedEvent(Long purchaseId, LocalDateTime nextDue) {
+        this.purchaseId = purchaseId;
+        this.nextDue = nextDue;
+    }
+
+    public Long getPurchaseId() { return purchaseId; }
+    public LocalDateTime getNextDue() { return nextDue; }
+}
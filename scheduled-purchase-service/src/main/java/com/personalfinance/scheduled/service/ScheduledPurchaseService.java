@@ -0,0 +1,409 @@
+package com.personalfinance.scheduled.service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.client.HttpClientErrorException;
+
+import com.personalfinance.scheduled.client.TransactionClient;
+import com.personalfinance.scheduled.dto.OccurrenceResponse;
+import com.personalfinance.scheduled.dto.ScheduledPurchaseCreateRequest;
+import com.personalfinance.scheduled.dto.ScheduledPurchaseResponse;
+import com.personalfinance.scheduled.dto.ScheduledPurchaseUpdateRequest;
+import com.personalfinance.scheduled.model.Frequency;
+import com.personalfinance.scheduled.model.ScheduledPurchase;
+import com.personalfinance.scheduled.recurrence.OccurrenceMerger;
+import com.personalfinance.scheduled.recurrence.RecurrenceRule;
+import com.personalfinance.scheduled.repository.ClaimRound;
+import com.personalfinance.scheduled.repository.PurchaseClaim;
+import com.personalfinance.scheduled.repository.ScheduledPurchaseRepository;
+import com.personalfinance.scheduled.scheduler.ScheduleChangedEvent;
+
+@Service
+@Transactional
+public class ScheduledPurchaseService {
+    private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(ScheduledPurchaseService.class);
+
+    public enum FiringOutcome { CREATED, REJECTED, STALE }
+
+    private static final String MANUAL_OWNER = "execute-now";
+
+    @Autowired
+    private ScheduledPurchaseRepository repository;
+
+    @Autowired
+    private TransactionClient transactionClient;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    // How long a firing by hand keeps the scheduler off the row
+    @Value("${scheduled-purchases.lease.duration-ms:120000}")
+    private long leaseMillis;
+
+    public ScheduledPurchaseResponse create(ScheduledPurchaseCreateRequest request) {
+        ScheduledPurchase purchase = new ScheduledPurchase();
+        purchase.setUserId(request.getUserId());
+        purchase.setName(request.getName());
+        purchase.setAmount(request.getAmount());
+        purchase.setCategory(request.getCategory());
+        applySchedule(purchase, request.getFrequency(), request.getRecurrence(), request.getNextDue());
+        purchase.setActive(request.getActive() == null || request.getActive());
+        purchase.setMerchant(request.getMerchant());
+        purchase.setNotes(request.getNotes());
+        ScheduledPurchase saved = repository.save(purchase);
+        logger.info("[create] Scheduled purchase saved: id={}, userId={}, frequency={}, recurrence={}, nextDue={}",
+                saved.getId(), saved.getUserId(), saved.getFrequency(), saved.getRecurrence(), saved.getNextDue());
+        publish(saved);
+        return new ScheduledPurchaseResponse(saved);
+    }
+
+    @Transactional(readOnly = true)
+    public List<ScheduledPurchaseResponse> getByUser(Long userId) {
+        return repository.findByUserIdOrderByNextDueAsc(userId).stream()
+                .map(ScheduledPurchaseResponse::new)
+                .collect(Collectors.toList());
+    }
+
+    @Transactional(readOnly = true)
+    public Optional<ScheduledPurchaseResponse> getById(Long id) {
+        return repository.findById(id).map(ScheduledPurchaseResponse::new);
+    }
+
+    @Transactional(readOnly = true)
+    public List<ScheduledPurchaseResponse> getUpcoming(Long userId, int days) {
+        LocalDateTime now = LocalDateTime.now();
+        return repository.findByUserIdAndActiveTrueAndNextDueBetweenOrderByNextDueAsc(userId, now, now.plusDays(days)).stream()
+                .map(ScheduledPurchaseResponse::new)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Every pending occurrence of the user's active purchases between
+     * {@code from} and {@code to} (inclusive), in time order, at most
+     * {@code limit} of them. Occurrences are expanded on the fly from each
+     * rule, and only as far as the response needs, so the cost follows the
+     * size of the answer rather than the length of the window or the age of
+     * the rules.
+     */
+    @Transactional(readOnly = true)
+    public List<OccurrenceResponse> getOccurrences(Long userId, LocalDateTime from, LocalDateTime to, int limit) {
+        List<ScheduledPurchase> purchases = repository.findActiveInWindow(userId, from, to);
+        List<OccurrenceResponse> occurrences = new ArrayList<>();
+        OccurrenceMerger.merge(purchases, purchase -> pendingOccurrences(purchase, from), to, limit,
+                (purchase, dueAt) -> occurrences.add(new OccurrenceResponse(purchase, dueAt)));
+        logger.debug("[getOccurrences] userId={}, {} rules, {} occurrences between {} and {}",
+                userId, purchases.size(), occurrences.size(), from, to);
+        return occurrences;
+    }
+
+    public Optional<ScheduledPurchaseResponse> update(Long id, ScheduledPurchaseUpdateRequest request) {
+        return repository.findByIdForUpdate(id).map(purchase -> {
+            if (request.getName() != null) {
+                purchase.setName(request.getName());
+            }
+            if (request.getAmount() != null) {
+                purchase.setAmount(request.getAmount());
+            }
+            if (request.getCategory() != null) {
+                purchase.setCategory(request.getCategory());
+            }
+            if (request.getRecurrence() != null || request.getFrequency() != null || request.getNextDue() != null) {
+                // A new frequency alone replaces the rule; a new due date alone re-anchors the current one
+                String recurrence = request.getRecurrence() != null ? request.getRecurrence()
+                        : request.getFrequency() != null ? null : purchase.getRecurrence();
+                applySchedule(purchase,
+                        request.getFrequency() != null ? request.getFrequency() : purchase.getFrequency(),
+                        recurrence,
+                        request.getNextDue() != null ? request.getNextDue() : purchase.getNextDue());
+            }
+            if (request.getActive() != null) {
+                purchase.setActive(request.getActive());
+            }
+            if (request.getMerchant() != null) {
+                purchase.setMerchant(request.getMerchant());
+            }
+            if (request.getNotes() != null) {
+                purchase.setNotes(request.getNotes());
+            }
+            ScheduledPurchase saved = repository.save(purchase);
+            logger.info("[update] Scheduled purchase updated: id={}, active={}, nextDue={}", id, saved.isActive(), saved.getNextDue());
+            publish(saved);
+            return new ScheduledPurchaseResponse(saved);
+        });
+    }
+
+    public Optional<ScheduledPurchaseResponse> toggleActive(Long id) {
+        return repository.findByIdForUpdate(id).map(purchase -> {
+            purchase.setActive(!purchase.isActive());
+            ScheduledPurchase saved = repository.save(purchase);
+            logger.info("[toggleActive] Scheduled purchase id={} is now {}", id, saved.isActive() ? "active" : "paused");
+            publish(saved);
+            return new ScheduledPurchaseResponse(saved);
+        });
+    }
+
+    public boolean delete(Long id) {
+        Optional<ScheduledPurchase> purchase = repository.findByIdForUpdate(id);
+        if (purchase.isEmpty()) {
+            return false;
+        }
+        repository.delete(purchase.get());
+        logger.info("[delete] Scheduled purchase deleted: id={}", id);
+        eventPublisher.publishEvent(new ScheduleChangedEvent(id, null));
+        return true;
+    }
+
+    // One bounded chunk of a full purge; callers repeat until nothing is deleted
+    public int purgeChunk(Long userId, int limit) {
+        List<ScheduledPurchase> purchases = repository.findByUserIdForUpdate(userId, PageRequest.of(0, limit));
+        if (purchases.isEmpty()) {
+            return 0;
+        }
+        repository.deleteAllInBatch(purchases);
+        for (ScheduledPurchase purchase : purchases) {
+            eventPublisher.publishEvent(new ScheduleChangedEvent(purchase.getId(), null));
+        }
+        logger.info("[purgeChunk] Deleted {} scheduled purchases for userId={}", purchases.size(), userId);
+        return purchases.size();
+    }
+
+    // Leases whichever of these purchases are due to this instance; see ScheduledPurchaseRepositoryCustom#claim
+    public ClaimRound claim(String owner, long leaseMillis, Collection<Long> ids) {
+        LocalDateTime now = LocalDateTime.now();
+        return repository.claim(owner, ids, now, leaseEnd(now, leaseMillis));
+    }
+
+    public boolean releaseLease(PurchaseClaim claim, LocalDateTime retryAt) {
+        return repository.releaseLease(claim, retryAt);
+    }
+
+    /**
+     * Fires a claimed occurrence without holding a row lock across the call
+     * to transaction-service: a short transaction checks the claim is still
+     * current, the transaction is created outside any database transaction,
+     * and a second short transaction records the outcome and advances the
+     * purchase to the next occurrence. The claim is stale, and nothing is
+     * fired, if its lease has run out, another instance has reclaimed the row
+     * since (the fencing token moved on), the lease was handed back, or the
+     * purchase was edited, paused or fired by hand meanwhile; the same checks,
+     * fenced on token, lease owner and lease end, run again before the outcome
+     * is recorded.
+     * An outcome that can't be recorded leaves the occurrence pending, and
+     * whoever fires it next sends the same idempotency key and gets the
+     * original transaction back. Transport errors propagate; the caller
+     * hands the lease back for a later retry.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public FiringOutcome fire(PurchaseClaim claim) {
+        ScheduledPurchase purchase = transactionTemplate.execute(status -> current(claim));
+        if (purchase == null) {
+            return FiringOutcome.STALE;
+        }
+        return execute(purchase, claim, claim.getNextDue().toLocalDate());
+    }
+
+    /**
+     * Pays the pending occurrence today instead of on its due date. The row is
+     * leased like a scheduler claim first, which turns any claim in flight
+     * stale; a purchase being fired right now can't be fired again by hand.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public Optional<ScheduledPurchaseResponse> executeNow(Long id) {
+        PurchaseClaim claim = transactionTemplate.execute(status -> repository.findByIdForUpdate(id)
+                .filter(ScheduledPurchase::isActive)
+                .map(this::leaseForManualFiring)
+                .orElse(null));
+        if (claim == null) {
+            return Optional.empty();
+        }
+        ScheduledPurchase purchase = transactionTemplate.execute(status -> current(claim));
+        if (purchase != null) {
+            execute(purchase, claim, LocalDate.now());
+        }
+        return getById(id);
+    }
+
+    // Caller holds a transaction
+    private PurchaseClaim leaseForManualFiring(ScheduledPurchase purchase) {
+        LocalDateTime now = LocalDateTime.now();
+        if (purchase.getLeaseOwner() != null && purchase.getLeaseUntil() != null && purchase.getLeaseUntil().isAfter(now)) {
+            throw new IllegalStateException("Scheduled purchase " + purchase.getId() + " is being fired right now");
+        }
+        purchase.setLeaseOwner(MANUAL_OWNER);
+        purchase.setLeaseUntil(leaseEnd(now, leaseMillis));
+        purchase.setFencingToken(purchase.getFencingToken() + 1);
+        repository.save(purchase);
+        return new PurchaseClaim(purchase.getId(), purchase.getNextDue(), purchase.getFencingToken(),
+                purchase.getLeaseOwner(), purchase.getLeaseUntil());
+    }
+
+    // Whole milliseconds, so the end read back from any database compares equal to the claim's
+    private static LocalDateTime leaseEnd(LocalDateTime now, long leaseMillis) {
+        return now.plusNanos(leaseMillis * 1_000_000).truncatedTo(ChronoUnit.MILLIS);
+    }
+
+    // The row still carries this claim's lease; a reclaim or a lease handed back changes one of these
+    private static boolean holds(ScheduledPurchase purchase, PurchaseClaim claim) {
+        return purchase.getFencingToken() == claim.getFencingToken()
+                && claim.getOwner().equals(purchase.getLeaseOwner())
+                && claim.getLeaseUntil().equals(purchase.getLeaseUntil());
+    }
+
+    /**
+     * Caller holds a transaction. The purchase if the claim still holds it
+     * with time left on the lease and the claimed occurrence is still the
+     * pending one, else null; a claim whose occurrence went away gives its
+     * lease up. A lease that has run out is left for whoever claims the row
+     * next rather than fired late.
+     */
+    private ScheduledPurchase current(PurchaseClaim claim) {
+        ScheduledPurchase purchase = repository.findByIdForUpdate(claim.getPurchaseId()).orElse(null);
+        if (purchase == null || !holds(purchase, claim) || !claim.getLeaseUntil().isAfter(LocalDateTime.now())) {
+            return null;
+        }
+        if (!purchase.isActive() || !purchase.getNextDue().equals(claim.getNextDue())) {
+            purchase.setLeaseOwner(null);
+            purchase.setLeaseUntil(null);
+            publish(repository.save(purchase));
+            return null;
+        }
+        return purchase;
+    }
+
+    // Runs outside any transaction; purchase is the detached row as current() read it
+    private FiringOutcome execute(ScheduledPurchase purchase, PurchaseClaim claim, LocalDate date) {
+        // Same key on every retry of this firing, since an unrecorded firing leaves the row as it was, so a
+        // retry gets the original transaction back; the previous execution time tells apart a purchase
+        // that was re-armed for the same due date after it fired
+        String idempotencyKey = "scheduled-purchase:" + purchase.getId() + ":" + purchase.getNextDue()
+                + ":" + purchase.getLastExecutedAt();
+        Long transactionId = null;
+        String error = null;
+        FiringOutcome outcome;
+        try {
+            transactionId = transactionClient.createTransaction(purchase, date, idempotencyKey);
+            outcome = FiringOutcome.CREATED;
+        } catch (HttpClientErrorException e) {
+            // The request itself is bad (e.g. unknown category); retrying won't help, so skip this occurrence
+            logger.error("[execute] transaction-service rejected scheduled purchase id={}: {}", purchase.getId(), e.getStatusCode());
+            error = truncate("Rejected by transaction-service: " + e.getStatusCode() + " " + e.getResponseBodyAsString());
+            outcome = FiringOutcome.REJECTED;
+        }
+        FiringOutcome fired = outcome;
+        Long created = transactionId;
+        String rejection = error;
+        return transactionTemplate.execute(status -> record(claim, date, fired, created, rejection));
+    }
+
+    // Caller holds a transaction. Advances the purchase past the fired occurrence if the claim still holds it
+    private FiringOutcome record(PurchaseClaim claim, LocalDate date, FiringOutcome outcome, Long transactionId, String error) {
+        ScheduledPurchase purchase = repository.findByIdForUpdate(claim.getPurchaseId()).orElse(null);
+        if (purchase == null || !holds(purchase, claim)
+                || !purchase.isActive() || !purchase.getNextDue().equals(claim.getNextDue())) {
+            logger.warn("[execute] {} changed while firing; {} outcome not recorded", claim, outcome);
+            return FiringOutcome.STALE;
+        }
+        if (outcome == FiringOutcome.CREATED) {
+            purchase.setLastTransactionId(transactionId);
+        }
+        purchase.setLastError(error);
+        purchase.setLastExecutedAt(LocalDateTime.now());
+        purchase.setLeaseOwner(null);
+        purchase.setLeaseUntil(null);
+        if (purchase.getStartsAt() == null) {
+            // Rows from before recurrence rules existed; anchor them where they are now
+            purchase.setStartsAt(purchase.getNextDue());
+        }
+        RecurrenceRule rule = ruleOf(purchase);
+        LocalDateTime next = rule == null ? null : rule.nextAfter(purchase.getStartsAt(), purchase.getNextDue());
+        if (next == null) {
+            purchase.setActive(false);
+        } else {
+            purchase.setNextDue(next);
+        }
+        ScheduledPurchase saved = repository.save(purchase);
+        logger.info("[execute] Scheduled purchase id={} {} for {}, transactionId={}, next due {}", saved.getId(),
+                outcome == FiringOutcome.CREATED ? "executed" : "skipped", date, saved.getLastTransactionId(),
+                saved.isActive() ? saved.getNextDue() : "never");
+        publish(saved);
+        return outcome;
+    }
+
+    /**
+     * Sets frequency, recurrence, DTSTART, end and first due date from a
+     * schedule. COUNT is resolved to UNTIL here so later expansions can start
+     * anywhere. Throws IllegalArgumentException for an unusable schedule.
+     */
+    private void applySchedule(ScheduledPurchase purchase, Frequency frequency, String recurrence, LocalDateTime start) {
+        RecurrenceRule rule = null;
+        boolean hasRule = recurrence != null && !recurrence.isBlank();
+        if (hasRule) {
+            rule = RecurrenceRule.parse(recurrence).resolveCount(start);
+            frequency = Frequency.valueOf(rule.getFreq().name());
+        } else if (frequency == null) {
+            throw new IllegalArgumentException("A frequency or a recurrence rule is required");
+        } else if (frequency != Frequency.ONCE) {
+            rule = RecurrenceRule.of(RecurrenceRule.Freq.valueOf(frequency.name()));
+        }
+        LocalDateTime first = rule == null ? start : rule.nextAfter(start, start.minusNanos(1));
+        if (first == null) {
+            throw new IllegalArgumentException("Recurrence rule has no occurrence on or after " + start);
+        }
+        purchase.setFrequency(frequency);
+        purchase.setRecurrence(hasRule ? rule.toString() : null);
+        purchase.setStartsAt(start);
+        purchase.setEndsAt(rule == null ? first : rule.getUntil());
+        purchase.setNextDue(first);
+    }
+
+    // Null for one-off purchases
+    private static RecurrenceRule ruleOf(ScheduledPurchase purchase) {
+        if (purchase.getRecurrence() != null) {
+            return RecurrenceRule.parse(purchase.getRecurrence());
+        }
+        if (purchase.getFrequency() == null || purchase.getFrequency() == Frequency.ONCE) {
+            return null;
+        }
+        return RecurrenceRule.of(RecurrenceRule.Freq.valueOf(purchase.getFrequency().name()));
+    }
+
+    // Occurrences before nextDue have already fired, so the stream never starts earlier than that
+    private static Iterator<LocalDateTime> pendingOccurrences(ScheduledPurchase purchase, LocalDateTime from) {
+        RecurrenceRule rule = ruleOf(purchase);
+        if (rule == null) {
+            return purchase.getNextDue().isBefore(from)
+                    ? Collections.emptyIterator()
+                    : Collections.singletonList(purchase.getNextDue()).iterator();
+        }
+        LocalDateTime anchor = purchase.getStartsAt() != null ? purchase.getStartsAt() : purchase.getNextDue();
+        return rule.occurrences(anchor, from.isAfter(purchase.getNextDue()) ? from : purchase.getNextDue());
+    }
+
+    private void publish(ScheduledPurchase purchase) {
+        eventPublisher.publishEvent(new ScheduleChangedEvent(purchase.getId(), purchase.isActive() ? purchase.getNextDue() : null));
+    }
+
+    private static String truncate(String message) {
+        return message.length() <= 500 ? message : message.substring(0, 500);
+    }
+}
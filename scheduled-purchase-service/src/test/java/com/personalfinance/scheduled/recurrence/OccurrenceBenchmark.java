@@ -0,0 +1,103 @@
+package com.personalfinance.scheduled.recurrence;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * One user's occurrences request over {@link #RULES} rules of everyday
+ * shapes, started up to three years before the window. The lazy path is
+ * what the occurrences endpoint does: parse each rule, jump it to the
+ * window and merge the streams, stopping at the limit. The eager path
+ * expands every rule from DTSTART through the window, then sorts all of it
+ * and takes the limit. Windows: one week in the fourth year, the first
+ * 1000 of five years, and all of five years. Launched by
+ * {@link RandomRecurrenceRulesTest}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class OccurrenceBenchmark {
+
+    static final int RULES = 10_000;
+    private static final String[] SHAPES = {
+            "FREQ=MONTHLY", "FREQ=MONTHLY;BYMONTHDAY=-1", "FREQ=MONTHLY;BYDAY=-1FR", "FREQ=WEEKLY",
+            "FREQ=WEEKLY;INTERVAL=2;BYDAY=FR", "FREQ=YEARLY", "FREQ=YEARLY;BYMONTH=11;BYDAY=4TH",
+            "FREQ=WEEKLY;BYDAY=MO,TU,WE,TH,FR"};
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 6, 1, 0, 0);
+
+    @Param({"week", "first1000", "fiveYears"})
+    public String window;
+
+    private final List<String> rules = new ArrayList<>();
+    private final List<LocalDateTime> starts = new ArrayList<>();
+    private LocalDateTime from;
+    private LocalDateTime to;
+    private int limit;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(1);
+        for (int i = 0; i < RULES; i++) {
+            rules.add(SHAPES[random.nextInt(SHAPES.length)]);
+            starts.add(NOW.minusDays(random.nextInt(3 * 365)).withHour(9 + random.nextInt(8)));
+        }
+        from = window.equals("week") ? NOW.plusYears(3) : NOW;
+        to = window.equals("week") ? from.plusDays(7) : from.plusYears(5);
+        limit = window.equals("first1000") ? 1000 : Integer.MAX_VALUE;
+    }
+
+    @Benchmark
+    public int lazy(Blackhole blackhole) {
+        List<Integer> sources = new ArrayList<>(RULES);
+        for (int i = 0; i < RULES; i++) {
+            sources.add(i);
+        }
+        return OccurrenceMerger.merge(sources, i -> RecurrenceRule.parse(rules.get(i)).occurrences(starts.get(i), from),
+                to, limit, (i, at) -> blackhole.consume(at));
+    }
+
+    // Every occurrence from DTSTART on, kept if it falls in the window, sorted as the merge orders them
+    @Benchmark
+    public int eager(Blackhole blackhole) {
+        long[] keys = new long[1024];
+        int size = 0;
+        for (int i = 0; i < RULES; i++) {
+            Iterator<LocalDateTime> all = RecurrenceRule.parse(rules.get(i)).occurrences(starts.get(i), starts.get(i));
+            while (all.hasNext()) {
+                LocalDateTime at = all.next();
+                if (at.isAfter(to)) {
+                    break;
+                }
+                if (!at.isBefore(from)) {
+                    if (size == keys.length) {
+                        keys = Arrays.copyOf(keys, size * 2);
+                    }
+                    keys[size++] = at.toEpochSecond(ZoneOffset.UTC) << 20 | i;
+                }
+            }
+        }
+        Arrays.sort(keys, 0, size);
+        int emitted = Math.min(size, limit);
+        for (int n = 0; n < emitted; n++) {
+            blackhole.consume(keys[n]);
+        }
+        return emitted;
+    }
+}
@@ -0,0 +1,193 @@
+package com.personalfinance.scheduled.recurrence;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class RecurrenceRuleTest {
+
+    private static final LocalDateTime JAN_1 = LocalDateTime.of(2024, 1, 1, 9, 0);
+
+    @Test
+    void negativeMonthDayIsTheLastDayOfEveryMonth() {
+        assertThat(first("FREQ=MONTHLY;BYMONTHDAY=-1", LocalDateTime.of(2024, 1, 15, 9, 0), 4)).containsExactly(
+                at(2024, 1, 31), at(2024, 2, 29), at(2024, 3, 31), at(2024, 4, 30));
+    }
+
+    @Test
+    void lastFridayOfTheMonth() {
+        assertThat(first("FREQ=MONTHLY;BYDAY=-1FR", JAN_1, 4)).containsExactly(
+                at(2024, 1, 26), at(2024, 2, 23), at(2024, 3, 29), at(2024, 4, 26));
+    }
+
+    @Test
+    void ordinalPastTheMonthsLastWeekdaySkipsThatMonth() {
+        assertThat(first("FREQ=MONTHLY;BYDAY=5MO", JAN_1, 3)).containsExactly(
+                at(2024, 1, 29), at(2024, 4, 29), at(2024, 7, 29));
+    }
+
+    @Test
+    void yearlyOrdinalWeekdayInAMonth() {
+        assertThat(first("FREQ=YEARLY;BYMONTH=11;BYDAY=4TH", JAN_1, 3)).containsExactly(
+                at(2024, 11, 28), at(2025, 11, 27), at(2026, 11, 26));
+    }
+
+    @Test
+    void monthDayMissingFromAMonthIsSkippedUnlessClamped() {
+        LocalDateTime jan31 = LocalDateTime.of(2024, 1, 31, 9, 0);
+
+        assertThat(first("FREQ=MONTHLY", jan31, 3)).containsExactly(
+                at(2024, 1, 31), at(2024, 3, 31), at(2024, 5, 31));
+        assertThat(take(RecurrenceRule.of(RecurrenceRule.Freq.MONTHLY).occurrences(jan31, jan31), 4)).containsExactly(
+                at(2024, 1, 31), at(2024, 2, 29), at(2024, 3, 31), at(2024, 4, 30));
+    }
+
+    @Test
+    void biweeklyByDay() {
+        assertThat(first("FREQ=WEEKLY;INTERVAL=2;BYDAY=TU", JAN_1, 3)).containsExactly(
+                at(2024, 1, 2), at(2024, 1, 16), at(2024, 1, 30));
+    }
+
+    @Test
+    void countStopsAfterThatManyOccurrences() {
+        assertThat(first("FREQ=MONTHLY;BYDAY=2TU,4TU;COUNT=5", JAN_1, 10)).containsExactly(
+                at(2024, 1, 9), at(2024, 1, 23), at(2024, 2, 13), at(2024, 2, 27), at(2024, 3, 12));
+    }
+
+    @Test
+    void resolvedCountBecomesTheUntilOfTheLastOccurrence() {
+        RecurrenceRule rule = RecurrenceRule.parse("FREQ=MONTHLY;BYDAY=2TU,4TU;COUNT=5");
+
+        RecurrenceRule resolved = rule.resolveCount(JAN_1);
+
+        assertThat(resolved.getCount()).isNull();
+        assertThat(resolved.getUntil()).isEqualTo(at(2024, 3, 12));
+        assertThat(resolved.toString()).isEqualTo("FREQ=MONTHLY;UNTIL=20240312T090000;BYDAY=2TU,4TU");
+        assertThat(take(resolved.occurrences(JAN_1, LocalDateTime.of(2024, 2, 1, 0, 0)), 10))
+                .containsExactly(at(2024, 2, 13), at(2024, 2, 27), at(2024, 3, 12))
+                .isEqualTo(take(rule.occurrences(JAN_1, LocalDateTime.of(2024, 2, 1, 0, 0)), 10));
+    }
+
+    @Test
+    void untilIsInclusiveAndADateOnlyUntilRunsToTheEndOfThatDay() {
+        List<LocalDateTime> expected = List.of(at(2024, 1, 1), at(2024, 1, 3), at(2024, 1, 8),
+                at(2024, 1, 10), at(2024, 1, 15), at(2024, 1, 17));
+
+        assertThat(first("FREQ=WEEKLY;BYDAY=MO,WE;UNTIL=20240117", JAN_1, 10)).isEqualTo(expected);
+        assertThat(first("FREQ=WEEKLY;BYDAY=MO,WE;UNTIL=20240117T090000Z", JAN_1, 10)).isEqualTo(expected);
+        assertThat(first("FREQ=WEEKLY;BYDAY=MO,WE;UNTIL=20240117T085959", JAN_1, 10))
+                .isEqualTo(expected.subList(0, 5));
+    }
+
+    @Test
+    void sparseRulesWithinTheEmptyPeriodLimitAreFound() {
+        RecurrenceRule leapDay = RecurrenceRule.parse("FREQ=DAILY;BYMONTH=2;BYMONTHDAY=29");
+        RecurrenceRule leapMonday = RecurrenceRule.parse("FREQ=YEARLY;BYMONTH=2;BYMONTHDAY=29;BYDAY=MO");
+
+        assertThat(leapDay.nextAfter(JAN_1, LocalDateTime.of(2024, 3, 1, 0, 0))).isEqualTo(at(2028, 2, 29));
+        assertThat(leapMonday.nextAfter(JAN_1, JAN_1)).isEqualTo(at(2044, 2, 29));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "FREQ=MONTHLY;BYMONTH=2;BYMONTHDAY=30",
+            "FREQ=YEARLY;BYMONTH=4;BYMONTHDAY=31",
+            "FREQ=DAILY;BYMONTH=6;BYMONTHDAY=31",
+            "FREQ=MONTHLY;BYMONTH=2;BYDAY=5MO,5TU,5WE,5TH,5FR,5SA;BYMONTHDAY=30"
+    })
+    void impossibleRulesGiveUpInsteadOfLooping(String text) {
+        RecurrenceRule rule = RecurrenceRule.parse(text);
+
+        assertThat(rule.occurrences(JAN_1, JAN_1).hasNext()).isFalse();
+        assertThat(rule.nextAfter(JAN_1, LocalDateTime.of(2500, 1, 1, 0, 0))).isNull();
+    }
+
+    @Test
+    void occurrencesFromFarPastDtstartJumpToThePeriodHoldingFrom() {
+        LocalDateTime dtstart = LocalDateTime.of(1990, 1, 31, 7, 30);
+        RecurrenceRule rule = RecurrenceRule.of(RecurrenceRule.Freq.MONTHLY);
+
+        assertThat(take(rule.occurrences(dtstart, LocalDateTime.of(2024, 2, 10, 0, 0)), 2)).containsExactly(
+                LocalDateTime.of(2024, 2, 29, 7, 30), LocalDateTime.of(2024, 3, 31, 7, 30));
+        // Later the same day than the occurrence's time: that day is past
+        assertThat(take(rule.occurrences(dtstart, LocalDateTime.of(2024, 2, 29, 7, 31)), 1))
+                .containsExactly(LocalDateTime.of(2024, 3, 31, 7, 30));
+    }
+
+    @Test
+    void fromBeforeDtstartStartsAtDtstart() {
+        assertThat(RecurrenceRule.parse("FREQ=DAILY").occurrences(JAN_1, JAN_1.minusYears(5)).next()).isEqualTo(JAN_1);
+    }
+
+    @Test
+    void nextAfterIsStrictlyAfter() {
+        RecurrenceRule rule = RecurrenceRule.parse("FREQ=WEEKLY");
+
+        assertThat(rule.nextAfter(JAN_1, JAN_1)).isEqualTo(at(2024, 1, 8));
+        assertThat(rule.nextAfter(JAN_1, JAN_1.minusNanos(1))).isEqualTo(JAN_1);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "FREQ=MONTHLY;INTERVAL=3;BYMONTHDAY=-1,1,15",
+            "FREQ=YEARLY;BYMONTH=1,7;BYDAY=1MO,-1FR",
+            "FREQ=WEEKLY;UNTIL=20301231T235959;BYDAY=MO,TU,WE,TH,FR",
+            "FREQ=DAILY;COUNT=30;BYMONTH=3"
+    })
+    void toStringParsesBackToTheSameRule(String text) {
+        RecurrenceRule rule = RecurrenceRule.parse("RRULE:" + text.toLowerCase());
+        RecurrenceRule reparsed = RecurrenceRule.parse(rule.toString());
+
+        assertThat(rule.toString()).isEqualTo(text);
+        assertThat(take(reparsed.occurrences(JAN_1, JAN_1), 50)).isEqualTo(take(rule.occurrences(JAN_1, JAN_1), 50));
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+            "INTERVAL=2                               | Rule needs FREQ",
+            "FREQ=HOURLY                              | Unsupported FREQ: HOURLY",
+            "FREQ=DAILY;COUNT=3;UNTIL=20240101        | COUNT and UNTIL are mutually exclusive",
+            "FREQ=WEEKLY;BYDAY=1MO                    | BYDAY ordinals need FREQ=MONTHLY or YEARLY",
+            "FREQ=YEARLY;BYDAY=MO                     | Yearly BYDAY needs BYMONTH",
+            "FREQ=WEEKLY;BYMONTHDAY=1                 | BYMONTHDAY is not allowed with FREQ=WEEKLY",
+            "FREQ=MONTHLY;BYMONTHDAY=0                | BYMONTHDAY can't be 0",
+            "FREQ=MONTHLY;BYMONTHDAY=32               | BYMONTHDAY out of range: 32",
+            "FREQ=MONTHLY;BYDAY=XX                    | Unknown weekday in BYDAY: XX",
+            "FREQ=DAILY;COUNT=10001                   | COUNT out of range: 10001",
+            "FREQ=DAILY;UNTIL=2024-01-01              | Malformed UNTIL: 2024-01-01",
+            "FREQ=DAILY;WKST=SU                       | Only WKST=MO is supported",
+            "FREQ=DAILY;BYSETPOS=1                    | Unsupported rule part: BYSETPOS",
+            "FREQ                                     | Malformed rule part: FREQ"
+    })
+    void invalidRulesAreRejected(String text, String message) {
+        assertThatThrownBy(() -> RecurrenceRule.parse(text))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage(message);
+    }
+
+    private static List<LocalDateTime> first(String rule, LocalDateTime dtstart, int n) {
+        return take(RecurrenceRule.parse(rule).occurrences(dtstart, dtstart), n);
+    }
+
+    static List<LocalDateTime> take(Iterator<LocalDateTime> occurrences, int n) {
+        List<LocalDateTime> taken = new ArrayList<>();
+        while (taken.size() < n && occurrences.hasNext()) {
+            taken.add(occurrences.next());
+        }
+        return taken;
+    }
+
+    private static LocalDateTime at(int year, int month, int day) {
+        return LocalDate.of(year, month, day).atTime(9, 0);
+    }
+}
@@ -0,0 +1,120 @@
+package com.personalfinance.scheduled.scheduler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class HierarchicalTimingWheelTest {
+
+    private static final long TICK = 100;
+    private static final long ORIGIN = 1_700_000_000_000L;
+
+    private final HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>(TICK, ORIGIN);
+
+    @Test
+    void firesAtTheFirstTickAtOrAfterTheDeadline() {
+        wheel.schedule("a", ORIGIN + 250);
+
+        assertThat(wheel.advanceTo(ORIGIN + 299)).isEmpty();
+        assertThat(wheel.advanceTo(ORIGIN + 300)).containsExactly("a");
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    void passedDeadlinesFireOnTheNextAdvance() {
+        wheel.advanceTo(ORIGIN + 10_000);
+        HierarchicalTimingWheel.Timeout<String> late = wheel.schedule("late", ORIGIN);
+
+        assertThat(late.isPending()).isTrue();
+        assertThat(wheel.advanceTo(ORIGIN + 10_000)).isEmpty();
+        assertThat(wheel.advanceTo(ORIGIN + 10_100)).containsExactly("late");
+        assertThat(late.isPending()).isFalse();
+    }
+
+    @Test
+    void cancelledTimersNeverFire() {
+        HierarchicalTimingWheel.Timeout<String> kept = wheel.schedule("kept", ORIGIN + 5_000);
+        HierarchicalTimingWheel.Timeout<String> cancelled = wheel.schedule("cancelled", ORIGIN + 5_000);
+
+        assertThat(wheel.cancel(cancelled)).isTrue();
+        assertThat(wheel.cancel(cancelled)).isFalse();
+        assertThat(wheel.size()).isEqualTo(1);
+        assertThat(wheel.advanceTo(ORIGIN + 10_000)).containsExactly("kept");
+        assertThat(wheel.cancel(kept)).isFalse();
+    }
+
+    // After an idle stretch the wheel skips ahead; new timers count from there
+    @Test
+    void timersScheduledAfterAnIdleStretchFireOnTime() {
+        assertThat(wheel.advanceTo(ORIGIN + 86_400_000)).isEmpty();
+        wheel.schedule("a", ORIGIN + 86_400_000 + 6_400);
+
+        assertThat(wheel.advanceTo(ORIGIN + 86_400_000 + 6_300)).isEmpty();
+        assertThat(wheel.advanceTo(ORIGIN + 86_400_000 + 6_400)).containsExactly("a");
+    }
+
+    @Test
+    void timersBeyondTheWheelsSpanAreNotFiredEarly() {
+        wheel.schedule("far", ORIGIN + TICK * (1L << 37));
+        wheel.schedule("near", ORIGIN + TICK * 5);
+
+        assertThat(wheel.advanceTo(ORIGIN + TICK * 300_000)).containsExactly("near");
+        assertThat(wheel.size()).isEqualTo(1);
+    }
+
+    // Deadlines spread over every level, advanced in uneven steps, against a plain scan
+    @Test
+    void matchesAScanOfEveryPendingTimer() {
+        Random random = new Random(20240215);
+        Map<String, Long> pending = new HashMap<>();
+        Map<String, HierarchicalTimingWheel.Timeout<String>> timeouts = new HashMap<>();
+        long now = ORIGIN;
+        int fired = 0;
+        for (int round = 0; round < 2_000; round++) {
+            for (int i = 0; i < 5; i++) {
+                String id = round + ":" + i;
+                int level = random.nextInt(4);
+                long deadline = now - TICK + (long) (random.nextDouble() * TICK * (1L << (6 * level + 6)) / 8);
+                timeouts.put(id, wheel.schedule(id, deadline));
+                pending.put(id, Math.max(deadlineTick(deadline), currentTick(now) + 1));
+            }
+            if (random.nextInt(4) == 0 && !pending.isEmpty()) {
+                String id = pending.keySet().iterator().next();
+                assertThat(wheel.cancel(timeouts.get(id))).isTrue();
+                pending.remove(id);
+            }
+            now += random.nextInt((int) TICK * 200);
+
+            long target = currentTick(now);
+            List<String> expected = new ArrayList<>();
+            pending.forEach((id, tick) -> {
+                if (tick <= target) {
+                    expected.add(id);
+                }
+            });
+            List<String> expired = wheel.advanceTo(now);
+
+            assertThat(expired).containsExactlyInAnyOrderElementsOf(expected);
+            assertThat(expired.stream().mapToLong(pending::get).toArray()).isSorted();
+            expected.forEach(pending::remove);
+            assertThat(wheel.size()).isEqualTo(pending.size());
+            fired += expired.size();
+        }
+        assertThat(fired).isGreaterThan(1_000);
+    }
+
+    private static long deadlineTick(long millis) {
+        long offset = millis - ORIGIN;
+        return offset <= 0 ? 0 : (offset + TICK - 1) / TICK;
+    }
+
+    private static long currentTick(long millis) {
+        return (millis - ORIGIN) / TICK;
+    }
+}
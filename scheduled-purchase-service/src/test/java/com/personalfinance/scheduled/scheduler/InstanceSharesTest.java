@@ -0,0 +1,62 @@
+package com.personalfinance.scheduled.scheduler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+class InstanceSharesTest {
+
+    private static final List<String> FOUR = List.of("a", "b", "c", "d");
+    private static final int IDS = 100_000;
+
+    @Test
+    void everyPurchaseHasExactlyOneOwner() {
+        List<InstanceShares> views = FOUR.stream().map(self -> new InstanceShares(FOUR, self)).collect(Collectors.toList());
+        int[] owned = new int[FOUR.size()];
+        for (long id = 1; id <= IDS; id++) {
+            int owners = 0;
+            for (int i = 0; i < views.size(); i++) {
+                if (views.get(i).owns(id)) {
+                    owners++;
+                    owned[i]++;
+                }
+            }
+            assertThat(owners).as("owners of %d", id).isEqualTo(1);
+        }
+        // Consecutive ids spread evenly, within a few percent of a quarter each
+        for (int count : owned) {
+            assertThat(count).isBetween(IDS / 4 - 2_000, IDS / 4 + 2_000);
+        }
+    }
+
+    @Test
+    void onlyTheLeaversShareMovesWhenAnInstanceLeaves() {
+        List<String> three = List.of("a", "b", "d");
+        for (String self : three) {
+            InstanceShares before = new InstanceShares(FOUR, self);
+            InstanceShares after = new InstanceShares(three, self);
+            InstanceShares leaver = new InstanceShares(FOUR, "c");
+            for (long id = 1; id <= IDS; id++) {
+                if (before.owns(id)) {
+                    assertThat(after.owns(id)).as("%s keeps %d", self, id).isTrue();
+                } else if (after.owns(id)) {
+                    assertThat(leaver.owns(id)).as("%s gains %d from the leaver", self, id).isTrue();
+                }
+            }
+        }
+    }
+
+    @Test
+    void anInstanceOutsideTheMembershipOwnsNothing() {
+        InstanceShares outsider = new InstanceShares(FOUR, "e");
+        InstanceShares alone = new InstanceShares(List.of("a"), "a");
+        for (long id = 1; id <= 1_000; id++) {
+            assertThat(outsider.owns(id)).isFalse();
+            assertThat(InstanceShares.NONE.owns(id)).isFalse();
+            assertThat(alone.owns(id)).isTrue();
+        }
+    }
+}
@@ -0,0 +1,338 @@
+package com.personalfinance.scheduled.scheduler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.personalfinance.scheduled.client.TransactionClient;
+import com.personalfinance.scheduled.dto.ScheduledPurchaseUpdateRequest;
+import com.personalfinance.scheduled.model.ScheduledPurchase;
+import com.personalfinance.scheduled.model.SchedulerInstance;
+import com.personalfinance.scheduled.repository.ClaimRound;
+import com.personalfinance.scheduled.repository.PurchaseClaim;
+import com.personalfinance.scheduled.repository.ScheduledPurchaseRepository;
+import com.personalfinance.scheduled.repository.SchedulerInstanceRepository;
+import com.personalfinance.scheduled.service.ScheduledPurchaseService;
+import com.personalfinance.scheduled.service.ScheduledPurchaseService.FiringOutcome;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Several schedulers sharing one database, as separate instances would. The
+ * context's own scheduler is parked (hour-long tick) so it never joins the
+ * membership and only the instances started here fire. Those aren't
+ * listeners for the service's change events either, so they only hear of
+ * edits through the heartbeat's sweep, as an instance hears of edits made
+ * through another.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:scheduled-multi-instance;DB_CLOSE_DELAY=-1",
+        "spring.datasource.driverClassName=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.default_schema=",
+        "scheduled-purchases.wheel.tick-ms=3600000",
+        "logging.level.com.personalfinance.scheduled=WARN"
+})
+class PurchaseSchedulerMultiInstanceTest {
+
+    private static final int DUE = 2_000;
+    private static final int MANY_DUE = 100_000;
+    private static final int INSTANCES = 4;
+
+    @Autowired
+    private ScheduledPurchaseRepository repository;
+
+    @Autowired
+    private SchedulerInstanceRepository instanceRepository;
+
+    @Autowired
+    private ScheduledPurchaseService service;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @MockBean
+    private TransactionClient transactionClient;
+
+    // Purchase id -> transactions created for it
+    private final Map<Long, AtomicInteger> created = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.update("DELETE FROM scheduled_purchases");
+        jdbcTemplate.update("DELETE FROM scheduler_instances");
+        created.clear();
+        when(transactionClient.createTransaction(any(), any(), anyString())).thenAnswer(invocation -> {
+            ScheduledPurchase purchase = invocation.getArgument(0);
+            created.computeIfAbsent(purchase.getId(), id -> new AtomicInteger()).incrementAndGet();
+            return purchase.getId();
+        });
+    }
+
+    @Test
+    void everyDueOccurrenceFiresExactlyOnceAcrossInstances() throws InterruptedException {
+        firesExactlyOnceAcrossInstances(DUE);
+    }
+
+    /** The same with 100,000 purchases due at once. Only runs with -Pslow-tests. */
+    @Test
+    @Tag("slow")
+    void everyDueOccurrenceFiresExactlyOnceAcrossInstancesAtScale() throws InterruptedException {
+        firesExactlyOnceAcrossInstances(MANY_DUE);
+    }
+
+    private void firesExactlyOnceAcrossInstances(int due) throws InterruptedException {
+        insertDue(due);
+        List<PurchaseScheduler> schedulers = new ArrayList<>();
+        List<MeterRegistry> registries = new ArrayList<>();
+        try {
+            for (int i = 0; i < INSTANCES; i++) {
+                MeterRegistry registry = new SimpleMeterRegistry();
+                // Fast ticks and heartbeats, so the instances settle on their shares soon after the first one starts firing
+                PurchaseScheduler scheduler = scheduler("instance-" + i, registry, 20, 60_000);
+                scheduler.start();
+                schedulers.add(scheduler);
+                registries.add(registry);
+            }
+            long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(10);
+            while (created.size() < due && System.nanoTime() < deadline) {
+                Thread.sleep(200);
+            }
+            // Anything still in flight would show up as a second firing
+            Thread.sleep(1000);
+        } finally {
+            schedulers.forEach(PurchaseScheduler::stop);
+        }
+
+        assertThat(created).hasSize(due);
+        List<Long> twice = created.entrySet().stream()
+                .filter(entry -> entry.getValue().get() != 1)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+        assertThat(twice).isEmpty();
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM scheduled_purchases WHERE active", Long.class)).isZero();
+
+        long instancesThatFired = registries.stream().filter(registry -> firedCreated(registry) > 0).count();
+        assertThat(instancesThatFired).isGreaterThan(1);
+        assertThat(registries.stream().mapToDouble(PurchaseSchedulerMultiInstanceTest::firedCreated).sum()).isEqualTo(due);
+    }
+
+    @Test
+    void claimReclaimedAfterItsLeaseRanOutIsStale() throws InterruptedException {
+        insertDue(1);
+
+        // The first instance's lease runs out before it gets to fire
+        List<PurchaseClaim> first = service.claim("stalled", 1, ids()).getClaims();
+        assertThat(first).hasSize(1);
+        Thread.sleep(20);
+        List<PurchaseClaim> second = service.claim("live", 120_000, ids()).getClaims();
+        assertThat(second).hasSize(1);
+        assertThat(second.get(0).getFencingToken()).isGreaterThan(first.get(0).getFencingToken());
+
+        assertThat(service.fire(first.get(0))).isEqualTo(FiringOutcome.STALE);
+        assertThat(service.releaseLease(first.get(0), LocalDateTime.now())).isFalse();
+        verify(transactionClient, never()).createTransaction(any(), any(), anyString());
+
+        assertThat(service.fire(second.get(0))).isEqualTo(FiringOutcome.CREATED);
+        // A repeated firing of a claim that already fired changes nothing
+        assertThat(service.fire(second.get(0))).isEqualTo(FiringOutcome.STALE);
+        verify(transactionClient, times(1)).createTransaction(any(), any(), anyString());
+        assertThat(service.claim("live", 120_000, ids()).getClaims()).isEmpty();
+    }
+
+    @Test
+    void noRowLockIsHeldWhileTransactionServiceIsCalled() {
+        insertDue(1);
+        PurchaseClaim claim = service.claim("live", 120_000, ids()).getClaims().get(0);
+        Boolean[] lockedElsewhere = {null};
+        doAnswer(invocation -> {
+            // An edit of the same purchase from another thread, as a request would make it
+            lockedElsewhere[0] = CompletableFuture.supplyAsync(() -> transactionTemplate.execute(
+                    status -> repository.findByIdForUpdate(claim.getPurchaseId()).isPresent()))
+                    .get(5, TimeUnit.SECONDS);
+            return 1L;
+        }).when(transactionClient).createTransaction(any(), any(), anyString());
+
+        assertThat(service.fire(claim)).isEqualTo(FiringOutcome.CREATED);
+        assertThat(lockedElsewhere[0]).isTrue();
+        assertThat(repository.findById(claim.getPurchaseId()).get().getLastTransactionId()).isEqualTo(1L);
+    }
+
+    @Test
+    void firingWhoseLeaseChangedHandsDuringTheCallIsNotRecorded() {
+        insertDue(1);
+        PurchaseClaim stalled = service.claim("stalled", 120_000, ids()).getClaims().get(0);
+        List<String> keys = new ArrayList<>();
+        PurchaseClaim[] reclaimed = {null};
+        doAnswer(invocation -> {
+            keys.add(invocation.getArgument(2));
+            if (reclaimed[0] == null) {
+                // The call outlives the lease and another instance takes the row over
+                jdbcTemplate.update("UPDATE scheduled_purchases SET lease_until = ? WHERE id = ?",
+                        Timestamp.valueOf(LocalDateTime.now().minusSeconds(1)), stalled.getPurchaseId());
+                reclaimed[0] = service.claim("live", 120_000, ids()).getClaims().get(0);
+            }
+            return 1L;
+        }).when(transactionClient).createTransaction(any(), any(), anyString());
+
+        assertThat(service.fire(stalled)).isEqualTo(FiringOutcome.STALE);
+        assertThat(repository.findById(stalled.getPurchaseId()).get().isActive()).isTrue();
+
+        assertThat(service.fire(reclaimed[0])).isEqualTo(FiringOutcome.CREATED);
+        // The same key both times, so transaction-service hands the first transaction back
+        assertThat(keys).hasSize(2).containsOnly(keys.get(0));
+        assertThat(repository.findById(stalled.getPurchaseId()).get().isActive()).isFalse();
+    }
+
+    @Test
+    void claimWhoseLeaseRanOutIsNotFired() throws InterruptedException {
+        insertDue(1);
+        PurchaseClaim claim = service.claim("slow", 1, ids()).getClaims().get(0);
+        Thread.sleep(20);
+
+        assertThat(service.fire(claim)).isEqualTo(FiringOutcome.STALE);
+        verify(transactionClient, never()).createTransaction(any(), any(), anyString());
+        // Still pending, for whoever claims it next
+        assertThat(service.claim("live", 120_000, ids()).getClaims()).hasSize(1);
+    }
+
+    @Test
+    void purchasesThatCantFireYetAreDeferredToWhenTheyCan() {
+        insertDue(3);
+        List<Long> ids = ids();
+        LocalDateTime later = LocalDateTime.now().plusHours(1).withNano(0);
+        jdbcTemplate.update("UPDATE scheduled_purchases SET next_due = ? WHERE id = ?", Timestamp.valueOf(later), ids.get(0));
+        PurchaseClaim held = service.claim("other", 120_000, List.of(ids.get(1))).getClaims().get(0);
+        jdbcTemplate.update("UPDATE scheduled_purchases SET active = FALSE WHERE id = ?", ids.get(2));
+
+        ClaimRound round = service.claim("owner", 120_000, List.of(ids.get(0), ids.get(1), ids.get(2), -1L));
+
+        assertThat(round.getClaims()).isEmpty();
+        assertThat(round.getDeferred()).containsOnly(
+                Map.entry(ids.get(0), later),
+                Map.entry(ids.get(1), held.getLeaseUntil()));
+    }
+
+    @Test
+    void shareOfAnInstanceThatStopsHeartbeatingIsTakenOver() throws InterruptedException {
+        insertDue(1_000);
+        // Joined and then died without leaving; alive in everyone's eyes for another ten seconds
+        instanceRepository.save(new SchedulerInstance("ghost", LocalDateTime.now()));
+        InstanceShares survivorsShare = new InstanceShares(List.of("ghost", "survivor"), "survivor");
+        long owned = ids().stream().filter(survivorsShare::owns).count();
+
+        PurchaseScheduler survivor = scheduler("survivor", new SimpleMeterRegistry(), 20, 10_000);
+        try {
+            survivor.start();
+            awaitCreated(owned, 10);
+            assertThat(created.keySet()).allMatch(survivorsShare::owns);
+
+            awaitCreated(1_000, 30);
+        } finally {
+            survivor.stop();
+        }
+        assertThat(created).hasSize(1_000);
+        assertThat(created.values()).allMatch(count -> count.get() == 1);
+    }
+
+    @Test
+    void purchaseEditedThroughAnotherInstanceFiresOnItsOwner() throws InterruptedException {
+        insertDue(1);
+        Long id = ids().get(0);
+        jdbcTemplate.update("UPDATE scheduled_purchases SET next_due = ? WHERE id = ?",
+                Timestamp.valueOf(LocalDateTime.now().plusHours(1)), id);
+        MeterRegistry registry = new SimpleMeterRegistry();
+        PurchaseScheduler owner = scheduler("owner", registry, 100, 60_000);
+        try {
+            owner.start();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (registry.get("scheduled_purchases.wheel.pending").gauge().value() < 1 && System.nanoTime() < deadline) {
+                Thread.sleep(20);
+            }
+            assertThat(created).isEmpty();
+
+            // Through the service, whose change events only reach the parked scheduler
+            ScheduledPurchaseUpdateRequest update = new ScheduledPurchaseUpdateRequest();
+            update.setNextDue(LocalDateTime.now().minusMinutes(1));
+            service.update(id, update);
+
+            awaitCreated(1, 10);
+        } finally {
+            owner.stop();
+        }
+        assertThat(created).containsOnlyKeys(id);
+    }
+
+    private PurchaseScheduler scheduler(String name, MeterRegistry registry, long heartbeatMillis, long ttlMillis) {
+        // Short retry delay, so a firing that timed out on an H2 row lock comes round again quickly
+        return new PurchaseScheduler(repository, instanceRepository, service, registry, name,
+                20, heartbeatMillis, ttlMillis, 120_000, 100, 2, 100, 10_000);
+    }
+
+    private void awaitCreated(long count, int seconds) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        while (created.size() < count && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        assertThat(created.size()).isGreaterThanOrEqualTo((int) count);
+    }
+
+    private List<Long> ids() {
+        return jdbcTemplate.queryForList("SELECT id FROM scheduled_purchases ORDER BY id", Long.class);
+    }
+
+    // One-off purchases due in the past, so each has exactly one occurrence to fire
+    private void insertDue(int count) {
+        Timestamp due = Timestamp.valueOf(LocalDateTime.now().minusMinutes(5));
+        List<Long> users = LongStream.range(0, count).boxed().collect(Collectors.toList());
+        jdbcTemplate.batchUpdate("INSERT INTO scheduled_purchases (user_id, name, amount, category, frequency, starts_at,"
+                + " ends_at, next_due, active, fencing_token) VALUES (?, ?, ?, ?, 'ONCE', ?, ?, ?, TRUE, 0)",
+                users, 1000, (ps, user) -> {
+                    ps.setLong(1, user % 1000);
+                    ps.setString(2, "Purchase " + user);
+                    ps.setBigDecimal(3, BigDecimal.TEN);
+                    ps.setString(4, "Utilities");
+                    ps.setTimestamp(5, due);
+                    ps.setTimestamp(6, due);
+                    ps.setTimestamp(7, due);
+                });
+    }
+
+    private static double firedCreated(MeterRegistry registry) {
+        return registry.get("scheduled_purchases.firings").tag("outcome", "created").counter().count();
+    }
+}
@@ -0,0 +1,77 @@
+package com.personalfinance.transaction.analytics;
+
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.personalfinance.transaction.cache.UserCache;
+import com.personalfinance.transaction.repository.TransactionRepository;
+import com.personalfinance.transaction.service.TransactionsChangedEvent;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Each recently used user's {@link TransactionColumns}, so dashboards and
+ * trends aggregate arrays in memory instead of querying and materialising
+ * the history on every call.
+ *
+ * The cache is bounded by the columns' total size ({@code max-bytes}), not
+ * by user count, and evicts least recently used users first; a user whose
+ * columns alone exceed the budget is served uncached. Entries are dropped
+ * when one of the user's transactions changes, and after {@code ttl-ms}.
+ */
+@Service
+public class TransactionColumnCache {
+    private static final Logger logger = LoggerFactory.getLogger(TransactionColumnCache.class);
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final TransactionRepository transactionRepository;
+    private final UserCache<TransactionColumns> cache;
+    private final Timer loadTimer;
+
+    public TransactionColumnCache(TransactionRepository transactionRepository,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${analytics.column-cache.max-bytes:268435456}") long maxBytes,
+                                  @Value("${analytics.column-cache.ttl-ms:900000}") long ttlMillis) {
+        this.transactionRepository = transactionRepository;
+        this.cache = new UserCache<>(maxBytes, ttlMillis, TransactionColumns::estimatedBytes);
+        this.loadTimer = Timer.builder("analytics.column-cache.load").register(meterRegistry);
+        Gauge.builder("analytics.column-cache.bytes", this, TransactionColumnCache::bytes).register(meterRegistry);
+    }
+
+    // Loads in a transaction of its own when the caller has none, so the rows are streamed through a cursor
+    @Transactional(readOnly = true)
+    public TransactionColumns columns(Long userId) {
+        return cache.get(userId, this::load);
+    }
+
+    // Runs after the write commits, so columns reloaded right away already see it
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onTransactionsChanged(TransactionsChangedEvent event) {
+        cache.invalidate(event.getUserId());
+    }
+
+    public long bytes() {
+        return cache.weight();
+    }
+
+    private TransactionColumns load(Long userId) {
+        long started = System.nanoTime();
+        TransactionColumns.Builder builder = new TransactionColumns.Builder(INITIAL_CAPACITY);
+        transactionRepository.forEachAmount(userId, builder::add);
+        TransactionColumns columns = builder.build();
+        long elapsed = System.nanoTime() - started;
+        loadTimer.record(elapsed, TimeUnit.NANOSECONDS);
+        logger.debug("[columns] Loaded {} transactions ({} bytes) for userId={} in {} ms",
+                columns.size(), columns.estimatedBytes(), userId, TimeUnit.NANOSECONDS.toMillis(elapsed));
+        return columns;
+    }
+}
@@ -0,0 +1,147 @@
+package com.personalfinance.transaction.analytics;
+
+import java.time.YearMonth;
+import java.util.Arrays;
+
+import com.personalfinance.transaction.model.Money;
+import com.personalfinance.transaction.model.Transaction;
+
+/**
+ * A user's transactions reduced to what the analytics endpoints aggregate,
+ * one primitive array per field: amounts in cents, dates as epoch days,
+ * type and category as enum ordinals (-1 when unset). About 14 bytes a
+ * transaction against several hundred for an entity, and every aggregate is
+ * a single pass over the arrays, summing {@link Money} cents. Immutable.
+ */
+public final class TransactionColumns {
+
+    static final int NO_DATE = Integer.MIN_VALUE;
+
+    private static final byte INCOME = (byte) Transaction.TransactionType.INCOME.ordinal();
+    private static final byte EXPENSE = (byte) Transaction.TransactionType.EXPENSE.ordinal();
+    // Array headers and the object itself
+    private static final long OVERHEAD_BYTES = 96;
+
+    private final int size;
+    private final int[] epochDays;
+    private final long[] cents;
+    private final byte[] types;
+    private final byte[] categories;
+
+    private TransactionColumns(int size, int[] epochDays, long[] cents, byte[] types, byte[] categories) {
+        this.size = size;
+        this.epochDays = epochDays;
+        this.cents = cents;
+        this.types = types;
+        this.categories = categories;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // What the cache charges this entry against its budget
+    public long estimatedBytes() {
+        return OVERHEAD_BYTES + (long) size * (Integer.BYTES + Long.BYTES + 2);
+    }
+
+    public long totalCents(Transaction.TransactionType type) {
+        byte wanted = (byte) type.ordinal();
+        long total = 0;
+        for (int i = 0; i < size; i++) {
+            if (types[i] == wanted) {
+                total = Money.add(total, cents[i]);
+            }
+        }
+        return total;
+    }
+
+    // Expense cents by Transaction.Category ordinal; expenses without a category are left out
+    public long[] expenseCentsByCategory() {
+        long[] totals = new long[Transaction.Category.values().length];
+        for (int i = 0; i < size; i++) {
+            if (types[i] == EXPENSE && categories[i] >= 0) {
+                totals[categories[i]] = Money.add(totals[categories[i]], cents[i]);
+            }
+        }
+        return totals;
+    }
+
+    // Whether the user has any expense in the category, which a zero total doesn't tell apart
+    public boolean[] expenseCategoriesPresent() {
+        boolean[] present = new boolean[Transaction.Category.values().length];
+        for (int i = 0; i < size; i++) {
+            if (types[i] == EXPENSE && categories[i] >= 0) {
+                present[categories[i]] = true;
+            }
+        }
+        return present;
+    }
+
+    /**
+     * Income and expense cents for each of {@code months} months from
+     * {@code first}: income of month m at [2m], expenses at [2m + 1].
+     */
+    public long[] monthlyCents(YearMonth first, int months) {
+        int[] starts = new int[months + 1];
+        for (int m = 0; m <= months; m++) {
+            starts[m] = (int) first.plusMonths(m).atDay(1).toEpochDay();
+        }
+        int from = starts[0];
+        int to = starts[months];
+        long[] totals = new long[2 * months];
+        for (int i = 0; i < size; i++) {
+            int day = epochDays[i];
+            byte type = types[i];
+            if (day < from || day >= to || (type != INCOME && type != EXPENSE)) {
+                continue;
+            }
+            int month = Arrays.binarySearch(starts, day);
+            if (month < 0) {
+                month = -month - 2;
+            }
+            int slot = 2 * month + (type == INCOME ? 0 : 1);
+            totals[slot] = Money.add(totals[slot], cents[i]);
+        }
+        return totals;
+    }
+
+    static final class Builder {
+        private int size;
+        private int[] epochDays;
+        private long[] cents;
+        private byte[] types;
+        private byte[] categories;
+
+        Builder(int expectedSize) {
+            int capacity = Math.max(16, expectedSize);
+            epochDays = new int[capacity];
+            cents = new long[capacity];
+            types = new byte[capacity];
+            categories = new byte[capacity];
+        }
+
+        void add(long epochDay, long amountCents, Transaction.TransactionType type, Transaction.Category category) {
+            if (size == cents.length) {
+                int capacity = size + (size >> 1);
+                epochDays = Arrays.copyOf(epochDays, capacity);
+                cents = Arrays.copyOf(cents, capacity);
+                types = Arrays.copyOf(types, capacity);
+                categories = Arrays.copyOf(categories, capacity);
+            }
+            epochDays[size] = epochDay == Long.MIN_VALUE ? NO_DATE : (int) epochDay;
+            cents[size] = amountCents;
+            types[size] = type != null ? (byte) type.ordinal() : -1;
+            categories[size] = category != null ? (byte) category.ordinal() : -1;
+            size++;
+        }
+
+        TransactionColumns build() {
+            if (size == cents.length) {
+                return new TransactionColumns(size, epochDays, cents, types, categories);
+            }
+            return new TransactionColumns(size, Arrays.copyOf(epochDays, size), Arrays.copyOf(cents, size),
+                    Arrays.copyOf(types, size), Arrays.copyOf(categories, size));
+        }
+    }
+}
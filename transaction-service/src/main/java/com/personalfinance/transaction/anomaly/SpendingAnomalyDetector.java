@@ -0,0 +1,299 @@
+package com.personalfinance.transaction.anomaly;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.client.RestClientException;
+
+import com.personalfinance.transaction.client.BudgetClient;
+import com.personalfinance.transaction.client.BudgetLimit;
+import com.personalfinance.transaction.dto.SpendingAnomalyResponse;
+import com.personalfinance.transaction.model.Money;
+import com.personalfinance.transaction.model.SpendingAnomaly;
+import com.personalfinance.transaction.model.Transaction;
+import com.personalfinance.transaction.repository.SpendingAnomalyRepository;
+import com.personalfinance.transaction.repository.TransactionRepository;
+import com.personalfinance.transaction.service.TransactionCreatedEvent;
+import com.personalfinance.transaction.service.TransactionsChangedEvent;
+import com.personalfinance.transaction.service.TransactionsPurgedEvent;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Flags unusual spending as expenses are created, from {@link SpendingStats}
+ * kept per user in memory and updated with each one; history is never
+ * re-read. Two kinds of anomaly are recorded:
+ *
+ * - OUTLIER: the expense's log-amount is at least {@code threshold} standard
+ *   deviations above the category's weighted mean, once the category has
+ *   {@code min-samples} expenses;
+ * - BUDGET_BREACH: the expense takes a budget's spend for the period over its
+ *   limit. Budgets come from budget-service, cached for {@code budget-ttl-ms};
+ *   a period's spend is read with one query the first time it's needed and
+ *   kept running after that.
+ *
+ * Statistics live only in this instance and restart from nothing (and a new
+ * warm-up) after a restart or eviction; the flagged anomalies are stored.
+ * Only single creates through the API are observed, so imported history
+ * doesn't flood the list with old outliers.
+ *
+ * Events are handled on worker threads, never on the request that committed
+ * the write, since a budget lookup can block on budget-service. A user's
+ * events always go to the same worker, so they are applied in order. When
+ * the workers fall {@code queue-capacity} events behind, further events are
+ * dropped; detection is best-effort.
+ */
+@Service
+public class SpendingAnomalyDetector {
+    private static final Logger logger = LoggerFactory.getLogger(SpendingAnomalyDetector.class);
+
+    private final TransactionRepository transactionRepository;
+    private final SpendingAnomalyRepository spendingAnomalyRepository;
+    private final BudgetClient budgetClient;
+    // The listener runs once the create's transaction has committed; reads and writes need one of their own
+    private final TransactionTemplate ownTransaction;
+    private final double alpha;
+    private final double threshold;
+    private final int minSamples;
+    private final double minDeviation;
+    private final long budgetTtlNanos;
+
+    private final Map<Long, SpendingStats> stats;
+    private final Map<Long, CachedBudgets> budgets;
+    private final Timer timer;
+    // One single-thread executor per stripe of users
+    private final ExecutorService[] workers;
+
+    public SpendingAnomalyDetector(TransactionRepository transactionRepository,
+                                   SpendingAnomalyRepository spendingAnomalyRepository,
+                                   BudgetClient budgetClient,
+                                   PlatformTransactionManager transactionManager,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${anomaly.alpha:0.1}") double alpha,
+                                   @Value("${anomaly.threshold:3.0}") double threshold,
+                                   @Value("${anomaly.min-samples:5}") int minSamples,
+                                   @Value("${anomaly.min-deviation:0.25}") double minDeviation,
+                                   @Value("${anomaly.max-users:100000}") int maxUsers,
+                                   @Value("${anomaly.budget-ttl-ms:60000}") long budgetTtlMillis,
+                                   @Value("${anomaly.workers:2}") int workerCount,
+                                   @Value("${anomaly.queue-capacity:10000}") int queueCapacity) {
+        this.transactionRepository = transactionRepository;
+        this.spendingAnomalyRepository = spendingAnomalyRepository;
+        this.budgetClient = budgetClient;
+        this.ownTransaction = new TransactionTemplate(transactionManager);
+        this.ownTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.alpha = alpha;
+        this.threshold = threshold;
+        this.minSamples = minSamples;
+        this.minDeviation = minDeviation;
+        this.budgetTtlNanos = TimeUnit.MILLISECONDS.toNanos(budgetTtlMillis);
+        this.stats = lru(maxUsers);
+        this.budgets = lru(maxUsers);
+        this.timer = Timer.builder("anomaly.observe.duration").register(meterRegistry);
+        this.workers = new ExecutorService[Math.max(1, workerCount)];
+        int perWorker = Math.max(1, queueCapacity / workers.length);
+        for (int i = 0; i < workers.length; i++) {
+            String name = "spending-anomalies-" + i;
+            workers[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(perWorker), task -> {
+                Thread thread = new Thread(task, name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        for (ExecutorService worker : workers) {
+            worker.shutdownNow();
+        }
+    }
+
+    public List<SpendingAnomalyResponse> getAnomalies(Long userId, SpendingAnomaly.Kind kind, int limit) {
+        PageRequest page = PageRequest.of(0, limit);
+        List<SpendingAnomaly> anomalies = kind != null
+                ? spendingAnomalyRepository.findByUserIdAndKindOrderByIdDesc(userId, kind, page)
+                : spendingAnomalyRepository.findByUserIdOrderByIdDesc(userId, page);
+        return anomalies.stream().map(SpendingAnomalyResponse::new).collect(Collectors.toList());
+    }
+
+    // Runs after the write commits; the event is handled on the user's worker
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onTransactionsChanged(TransactionsChangedEvent event) {
+        Long userId = event.getUserId();
+        try {
+            workers[Math.floorMod(userId.hashCode(), workers.length)].execute(() -> handle(event));
+        } catch (RejectedExecutionException e) {
+            logger.warn("[onTransactionsChanged] Anomaly workers are behind; skipped an event for userId={}", userId);
+        }
+    }
+
+    // A failure here is logged rather than failing a request that already succeeded
+    private void handle(TransactionsChangedEvent event) {
+        Long userId = event.getUserId();
+        try {
+            if (event instanceof TransactionCreatedEvent) {
+                observe(((TransactionCreatedEvent) event).getTransaction());
+            } else if (event instanceof TransactionsPurgedEvent) {
+                stats.remove(userId);
+                budgets.remove(userId);
+            } else {
+                SpendingStats userStats = stats.get(userId);
+                if (userStats != null) {
+                    synchronized (userStats) {
+                        userStats.forgetPeriods();
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            logger.error("[handle] Anomaly check failed for userId={}: {}", userId, e.getMessage(), e);
+        }
+    }
+
+    private void observe(Transaction transaction) {
+        if (transaction.getType() != Transaction.TransactionType.EXPENSE || transaction.getCategory() == null
+                || transaction.getAmount() == null || transaction.getAmount().signum() <= 0
+                || transaction.getTransactionDate() == null) {
+            return;
+        }
+        long started = System.nanoTime();
+        Long userId = transaction.getUserId();
+        int category = transaction.getCategory().ordinal();
+        long cents = Money.cents(transaction.getAmount());
+        double logAmount = Math.log(cents);
+        SpendingStats userStats = stats.computeIfAbsent(userId, id -> new SpendingStats());
+
+        // Scored before the update, so an outlier doesn't pull the mean towards itself first
+        double deviations;
+        double typicalLogAmount;
+        synchronized (userStats) {
+            deviations = userStats.deviations(category, logAmount, minSamples, minDeviation);
+            typicalLogAmount = userStats.typicalLogAmount(category);
+            userStats.observe(category, logAmount, alpha);
+        }
+
+        List<SpendingAnomaly> flagged = null;
+        if (deviations >= threshold) {
+            SpendingAnomaly outlier = new SpendingAnomaly(SpendingAnomaly.Kind.OUTLIER, transaction);
+            outlier.setTypicalAmount(Money.toDecimal(Math.round(Math.exp(typicalLogAmount))));
+            outlier.setDeviations(Math.round(deviations * 100) / 100.0);
+            flagged = new ArrayList<>(2);
+            flagged.add(outlier);
+        }
+        for (BudgetLimit budget : budgets(userId)) {
+            SpendingAnomaly breach = checkBudget(budget, transaction, userStats, category, cents);
+            if (breach != null) {
+                if (flagged == null) {
+                    flagged = new ArrayList<>(2);
+                }
+                flagged.add(breach);
+            }
+        }
+        if (flagged != null) {
+            List<SpendingAnomaly> anomalies = flagged;
+            ownTransaction.executeWithoutResult(status -> spendingAnomalyRepository.saveAll(anomalies));
+            logger.info("[observe] Flagged {} for transaction id={}, userId={}",
+                    flagged.stream().map(a -> a.getKind().name()).collect(Collectors.joining(",")), transaction.getId(), userId);
+        }
+        timer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+    }
+
+    // An anomaly if this expense is the one that took the budget's period spend over its limit
+    private SpendingAnomaly checkBudget(BudgetLimit budget, Transaction transaction, SpendingStats userStats,
+                                        int category, long cents) {
+        LocalDate date = transaction.getTransactionDate();
+        if (budget.getAmount() == null || Transaction.Category.parse(budget.getCategory()) != transaction.getCategory()) {
+            return null;
+        }
+        LocalDate periodStart = budget.periodStart(date);
+        if (periodStart == null) {
+            return null;
+        }
+        LocalDate periodEnd = budget.periodEnd(date);
+        int kind = SpendingStats.periodKind(budget.getPeriod());
+        long spent;
+        synchronized (userStats) {
+            spent = userStats.addToPeriod(kind, category, periodStart.toEpochDay(), cents);
+        }
+        if (spent == SpendingStats.NO_PERIOD) {
+            // Read after the commit, so the total already includes this expense. The worker may be behind,
+            // so later expenses can be committed too; they are left for their own events to add
+            Long maxId = transaction.getId() != null ? transaction.getId() : Long.MAX_VALUE;
+            BigDecimal total = ownTransaction.execute(status -> transactionRepository.getExpensesByUserIdAndCategoryAndDateRangeUpToId(
+                    transaction.getUserId(), transaction.getCategory(), periodStart, periodEnd, maxId));
+            spent = total != null ? Money.cents(total) : cents;
+            synchronized (userStats) {
+                userStats.trackPeriod(kind, category, periodStart.toEpochDay(), spent);
+            }
+        }
+        long limit = Money.cents(budget.getAmount());
+        if (spent <= limit || spent - cents > limit) {
+            return null;
+        }
+        SpendingAnomaly breach = new SpendingAnomaly(SpendingAnomaly.Kind.BUDGET_BREACH, transaction);
+        breach.setBudgetLimit(budget.getAmount());
+        breach.setPeriodStart(periodStart);
+        breach.setPeriodEnd(periodEnd);
+        breach.setPeriodSpent(Money.toDecimal(spent));
+        return breach;
+    }
+
+    // An unreachable budget-service is cached like an answer, so creates don't each wait out its timeout
+    private List<BudgetLimit> budgets(Long userId) {
+        CachedBudgets cached = budgets.get(userId);
+        if (cached != null && System.nanoTime() - cached.expiresAt < 0) {
+            return cached.budgets;
+        }
+        List<BudgetLimit> fetched;
+        try {
+            fetched = budgetClient.getBudgets(userId);
+        } catch (RestClientException e) {
+            logger.warn("[budgets] Could not read budgets for userId={}: {}", userId, e.getMessage());
+            fetched = List.of();
+        }
+        budgets.put(userId, new CachedBudgets(fetched, System.nanoTime() + budgetTtlNanos));
+        return fetched;
+    }
+
+    private static <V> Map<Long, V> lru(int maxEntries) {
+        return Collections.synchronizedMap(new LinkedHashMap<Long, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, V> eldest) {
+                return size() > maxEntries;
+            }
+        });
+    }
+
+    private static final class CachedBudgets {
+        final List<BudgetLimit> budgets;
+        final long expiresAt;
+
+        CachedBudgets(List<BudgetLimit> budgets, long expiresAt) {
+            this.budgets = budgets;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.personalfinance.transaction.anomaly;
+
+import java.util.Arrays;
+
+import com.personalfinance.transaction.model.Transaction;
+
+/**
+ * What the detector remembers about one user, a fixed few numbers per
+ * category however long their history:
+ *
+ * - an exponentially weighted mean and variance of the log of each expense,
+ *   updated in O(1) per expense (logs, since a category's amounts are
+ *   skewed: most groceries are small, a few are big);
+ * - spend so far in the current weekly, monthly and yearly budget period,
+ *   each tagged with the period's first day so a new period starts over.
+ *
+ * Not thread-safe; the detector locks the instance.
+ */
+final class SpendingStats {
+
+    static final int WEEKLY = 0;
+    static final int MONTHLY = 1;
+    static final int YEARLY = 2;
+    static final long NO_PERIOD = Long.MIN_VALUE;
+
+    private static final int CATEGORIES = Transaction.Category.values().length;
+
+    private final double[] mean = new double[CATEGORIES];
+    private final double[] variance = new double[CATEGORIES];
+    private final int[] count = new int[CATEGORIES];
+    // By period kind, then category ordinal: first epoch day of the tracked period, and its spend in cents
+    private final long[][] periodStart = new long[3][CATEGORIES];
+    private final long[][] periodCents = new long[3][CATEGORIES];
+
+    SpendingStats() {
+        forgetPeriods();
+    }
+
+    /**
+     * How many standard deviations {@code logAmount} lies above the
+     * category's mean, with the deviation floored at {@code minDeviation};
+     * NaN until the category has {@code minSamples} expenses.
+     */
+    double deviations(int category, double logAmount, int minSamples, double minDeviation) {
+        if (count[category] < minSamples) {
+            return Double.NaN;
+        }
+        return (logAmount - mean[category]) / Math.max(Math.sqrt(variance[category]), minDeviation);
+    }
+
+    double typicalLogAmount(int category) {
+        return mean[category];
+    }
+
+    // The first expenses are averaged evenly, so the mean doesn't lean on whichever came first
+    void observe(int category, double logAmount, double alpha) {
+        int n = ++count[category];
+        if (n == 1) {
+            mean[category] = logAmount;
+            variance[category] = 0;
+            return;
+        }
+        double weight = Math.max(alpha, 1.0 / n);
+        double diff = logAmount - mean[category];
+        double increment = weight * diff;
+        mean[category] += increment;
+        variance[category] = (1 - weight) * (variance[category] + diff * increment);
+    }
+
+    // Spend in the period starting on startDay after adding cents, or NO_PERIOD if that period isn't tracked
+    long addToPeriod(int kind, int category, long startDay, long cents) {
+        if (periodStart[kind][category] != startDay) {
+            return NO_PERIOD;
+        }
+        periodCents[kind][category] += cents;
+        return periodCents[kind][category];
+    }
+
+    void trackPeriod(int kind, int category, long startDay, long cents) {
+        periodStart[kind][category] = startDay;
+        periodCents[kind][category] = cents;
+    }
+
+    // After edits, deletes or imports the tracked spend may be off; the next expense re-reads it
+    void forgetPeriods() {
+        for (long[] starts : periodStart) {
+            Arrays.fill(starts, NO_PERIOD);
+        }
+    }
+
+    static int periodKind(String period) {
+        switch (period) {
+            case "WEEKLY": return WEEKLY;
+            case "MONTHLY": return MONTHLY;
+            default: return YEARLY;
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package com.personalfinance.transaction.balance;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.personalfinance.transaction.cache.UserCache;
+import com.personalfinance.transaction.dto.BalanceHistoryResponse;
+import com.personalfinance.transaction.model.BalanceDay;
+import com.personalfinance.transaction.model.Money;
+import com.personalfinance.transaction.repository.BalanceDayRepository;
+import com.personalfinance.transaction.repository.BalanceIndexRepository;
+import com.personalfinance.transaction.repository.TransactionRepository;
+import com.personalfinance.transaction.service.TransactionsChangedEvent;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Each user's income and expenses per day, stored as one balance_index_days
+ * row a day and read as a {@link NetFlowIndex}, so the totals, the net change
+ * over a date range and the balance on a day take two array reads instead
+ * of a sum over the history.
+ *
+ * Writes keep the stored days in step inside their own transaction: they
+ * open a {@link #patch} for the user before touching any of the user's
+ * transactions, record what they add and remove on it, and {@link #apply}
+ * it, which adds each touched day's change to its row. Writers share the
+ * user's lock and only meet on the rows of the days they both touch, so a
+ * write costs the days it changes, not the length of the history. The rows
+ * are built from the transactions by the first write for a user; until
+ * then reads sum the transactions and write nothing.
+ *
+ * Read indexes are kept in a {@link UserCache} bounded by their total size
+ * ({@code cache-bytes}), as the transaction columns are.
+ */
+@Service
+public class BalanceIndexService {
+    private static final Logger logger = LoggerFactory.getLogger(BalanceIndexService.class);
+
+    private static final int MAX_POINTS = 1000;
+
+    public enum Interval { DAY, WEEK, MONTH }
+
+    private final TransactionRepository transactionRepository;
+    private final BalanceIndexRepository balanceIndexRepository;
+    private final BalanceDayRepository balanceDayRepository;
+    // Joins the caller's transaction if there is one; the reads stream through a cursor, which needs one
+    private final TransactionTemplate readOnly;
+    private final boolean postgres;
+    private final UserCache<NetFlowIndex> cache;
+    private final Timer buildTimer;
+
+    public BalanceIndexService(TransactionRepository transactionRepository,
+                               BalanceIndexRepository balanceIndexRepository,
+                               BalanceDayRepository balanceDayRepository,
+                               PlatformTransactionManager transactionManager,
+                               MeterRegistry meterRegistry,
+                               @Value("${balance-index.cache-bytes:67108864}") long maxBytes,
+                               @Value("${balance-index.ttl-ms:900000}") long ttlMillis,
+                               @Value("${spring.jpa.database-platform:}") String databasePlatform) {
+        this.transactionRepository = transactionRepository;
+        this.balanceIndexRepository = balanceIndexRepository;
+        this.balanceDayRepository = balanceDayRepository;
+        this.readOnly = new TransactionTemplate(transactionManager);
+        this.readOnly.setReadOnly(true);
+        this.cache = new UserCache<>(maxBytes, ttlMillis, NetFlowIndex::estimatedBytes);
+        this.postgres = databasePlatform.contains("PostgreSQL");
+        this.buildTimer = Timer.builder("balance-index.build").register(meterRegistry);
+        Gauge.builder("balance-index.cache.bytes", this, BalanceIndexService::bytes).register(meterRegistry);
+    }
+
+    /**
+     * Opens a patch of the user's stored days, share-locking the user until
+     * the caller's transaction ends so the days can't be purged or rebuilt
+     * meanwhile. Call before writing any of the user's transactions: days
+     * built here are summed from what is committed so far and the caller's
+     * own writes are then added to them.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public BalancePatch patch(Long userId) {
+        return open(userId, false);
+    }
+
+    /**
+     * {@link #patch}, but holding the user exclusively: every other write for
+     * the user waits until the caller's transaction ends. For writes that
+     * decide what to write from what the user already has.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public BalancePatch patchExclusively(Long userId) {
+        return open(userId, true);
+    }
+
+    // Adds the patch to the stored days, in the transaction that opened it
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void apply(BalancePatch patch) {
+        balanceDayRepository.addAll(patch.days());
+    }
+
+    public NetFlowIndex index(Long userId) {
+        return cache.get(userId, this::load);
+    }
+
+    /**
+     * Income, expenses and net over from..to (both inclusive) and for each
+     * day, week (from Monday) or month in it, with the balance after each;
+     * the balance counts every dated transaction up to that day, from
+     * the user's first. By default the range is the last twelve months
+     * through today, by month.
+     */
+    public BalanceHistoryResponse getBalanceHistory(Long userId, LocalDate from, LocalDate to, Interval interval) {
+        logger.debug("[getBalanceHistory] userId={}, from={}, to={}, interval={}", userId, from, to, interval);
+        if (interval == null) {
+            interval = Interval.MONTH;
+        }
+        if (to == null) {
+            to = LocalDate.now();
+        }
+        if (from == null) {
+            from = to.withDayOfMonth(1).minusMonths(11);
+        }
+        if (from.isAfter(to)) {
+            throw new IllegalArgumentException("from must not be after to");
+        }
+        NetFlowIndex index = index(userId);
+        List<BalanceHistoryResponse.Point> points = new ArrayList<>();
+        for (LocalDate start = from; !start.isAfter(to); ) {
+            if (points.size() == MAX_POINTS) {
+                throw new IllegalArgumentException("Range has more than " + MAX_POINTS + " periods; use a longer interval");
+            }
+            LocalDate next = next(periodStart(start, interval), interval);
+            LocalDate end = next.isAfter(to) ? to : next.minusDays(1);
+            long income = index.incomeCents(start, end);
+            long expenses = index.expenseCents(start, end);
+            BalanceHistoryResponse.Point point = new BalanceHistoryResponse.Point();
+            point.setStart(start);
+            point.setEnd(end);
+            point.setIncome(Money.toDecimal(income));
+            point.setExpenses(Money.toDecimal(expenses));
+            point.setNet(Money.toDecimal(Money.subtract(income, expenses)));
+            point.setBalance(Money.toDecimal(index.balanceCents(end)));
+            points.add(point);
+            start = next;
+        }
+        long income = index.incomeCents(from, to);
+        long expenses = index.expenseCents(from, to);
+        BalanceHistoryResponse response = new BalanceHistoryResponse();
+        response.setUserId(userId);
+        response.setFrom(from);
+        response.setTo(to);
+        response.setInterval(interval.name());
+        response.setIncome(Money.toDecimal(income));
+        response.setExpenses(Money.toDecimal(expenses));
+        response.setNet(Money.toDecimal(Money.subtract(income, expenses)));
+        response.setOpeningBalance(Money.toDecimal(index.balanceCents(from.minusDays(1))));
+        response.setClosingBalance(Money.toDecimal(index.balanceCents(to)));
+        response.setPoints(points);
+        return response;
+    }
+
+    // Runs after the write commits, so an index read right away already has it
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onTransactionsChanged(TransactionsChangedEvent event) {
+        cache.invalidate(event.getUserId());
+    }
+
+    public long bytes() {
+        return cache.weight();
+    }
+
+    private BalancePatch open(Long userId, boolean exclusive) {
+        if (!lock(userId, exclusive)) {
+            build(userId);
+            // Ours, or the one a concurrent build committed while our mark waited on it
+            if (!lock(userId, exclusive)) {
+                throw new IllegalStateException("Balance index missing for userId=" + userId);
+            }
+        }
+        return new BalancePatch(userId);
+    }
+
+    private boolean lock(Long userId, boolean exclusive) {
+        return (exclusive ? balanceIndexRepository.findForUpdate(userId) : balanceIndexRepository.findForShare(userId)).isPresent();
+    }
+
+    /**
+     * Stores the user's days, summed from their committed transactions, and
+     * marks them built. Only the writer whose mark goes in builds; any other
+     * waits for its commit on the mark and then finds the days there.
+     */
+    private void build(Long userId) {
+        int marked = postgres ? balanceIndexRepository.insertIfAbsent(userId) : balanceIndexRepository.mergeIfAbsent(userId);
+        if (marked == 0) {
+            return;
+        }
+        long started = System.nanoTime();
+        // Left by a write that raced the purge which dropped the last mark
+        balanceDayRepository.deleteByUserId(userId);
+        DailyFlows flows = new DailyFlows();
+        sum(userId, flows);
+        List<BalanceDay> days = new ArrayList<>();
+        flows.forEachDay((day, income, expenses) -> {
+            BalanceDay row = new BalanceDay();
+            row.setUserId(userId);
+            row.setEpochDay(day);
+            row.setIncomeCents(income);
+            row.setExpenseCents(expenses);
+            days.add(row);
+        });
+        balanceDayRepository.addAll(days);
+        long elapsed = System.nanoTime() - started;
+        buildTimer.record(elapsed, TimeUnit.NANOSECONDS);
+        logger.debug("[build] Built balance index ({} days) for userId={} in {} ms",
+                days.size(), userId, TimeUnit.NANOSECONDS.toMillis(elapsed));
+    }
+
+    private NetFlowIndex load(Long userId) {
+        return readOnly.execute(status -> {
+            DailyFlows flows = new DailyFlows();
+            if (balanceIndexRepository.existsById(userId)) {
+                balanceDayRepository.forEachDay(userId, flows::add);
+            } else {
+                sum(userId, flows);
+            }
+            return flows.index();
+        });
+    }
+
+    private void sum(Long userId, DailyFlows flows) {
+        transactionRepository.forEachDailyTotal(userId,
+                (epochDay, type, cents) -> flows.add(epochDay != Long.MIN_VALUE ? epochDay : null, type, cents));
+    }
+
+    private static LocalDate periodStart(LocalDate day, Interval interval) {
+        switch (interval) {
+            case WEEK: return day.minusDays(day.getDayOfWeek().getValue() - DayOfWeek.MONDAY.getValue());
+            case MONTH: return day.withDayOfMonth(1);
+            default: return day;
+        }
+    }
+
+    private static LocalDate next(LocalDate start, Interval interval) {
+        switch (interval) {
+            case WEEK: return start.plusWeeks(1);
+            case MONTH: return start.plusMonths(1);
+            default: return start.plusDays(1);
+        }
+    }
+}
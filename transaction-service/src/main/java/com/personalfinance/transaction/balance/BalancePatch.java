@@ -0,0 +1,71 @@
+package com.personalfinance.transaction.balance;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.personalfinance.transaction.model.BalanceDay;
+import com.personalfinance.transaction.model.Money;
+import com.personalfinance.transaction.model.Transaction;
+
+/**
+ * The changes a caller's writes make to one user's balance index, opened by
+ * {@link BalanceIndexService#patch}: record each transaction added with
+ * {@link #add} and each one taken away, or as it was before an edit, with
+ * {@link #remove}, then {@link BalanceIndexService#apply apply} the patch,
+ * which adds the change on each day touched to the stored day.
+ */
+public final class BalancePatch {
+
+    private final Long userId;
+    // Day -> {income, expense} cents; sorted, so days are written in the same order by every writer
+    private final TreeMap<Integer, long[]> days = new TreeMap<>();
+
+    BalancePatch(Long userId) {
+        this.userId = userId;
+    }
+
+    public void add(Transaction transaction) {
+        add(transaction, 1);
+    }
+
+    public void remove(Transaction transaction) {
+        add(transaction, -1);
+    }
+
+    Long userId() {
+        return userId;
+    }
+
+    // The days with a change, as rows to add to the stored ones
+    List<BalanceDay> days() {
+        List<BalanceDay> changed = new ArrayList<>(days.size());
+        for (Map.Entry<Integer, long[]> day : days.entrySet()) {
+            long[] cents = day.getValue();
+            if (cents[0] != 0 || cents[1] != 0) {
+                BalanceDay row = new BalanceDay();
+                row.setUserId(userId);
+                row.setEpochDay(day.getKey());
+                row.setIncomeCents(cents[0]);
+                row.setExpenseCents(cents[1]);
+                changed.add(row);
+            }
+        }
+        return changed;
+    }
+
+    // Types other than income and expense don't move the balance
+    private void add(Transaction transaction, int sign) {
+        Transaction.TransactionType type = transaction.getType();
+        if (transaction.getAmount() == null
+                || (type != Transaction.TransactionType.INCOME && type != Transaction.TransactionType.EXPENSE)) {
+            return;
+        }
+        LocalDate date = transaction.getTransactionDate();
+        long[] cents = days.computeIfAbsent(DailyFlows.day(date != null ? date.toEpochDay() : null), day -> new long[2]);
+        int slot = type == Transaction.TransactionType.INCOME ? 0 : 1;
+        cents[slot] = Money.add(cents[slot], sign * Money.cents(transaction.getAmount()));
+    }
+}
@@ -0,0 +1,151 @@
+package com.personalfinance.transaction.balance;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+import com.personalfinance.transaction.model.BalanceDay;
+import com.personalfinance.transaction.model.Money;
+import com.personalfinance.transaction.model.Transaction;
+import com.personalfinance.transaction.repository.BalanceDayRepositoryCustom;
+
+/**
+ * A user's income and expense cents per day, one slot per day from the
+ * first dated transaction to the last, plus the totals of transactions
+ * without a usable date; the form a balance index is built and read in.
+ * Stored, each day with money is a {@link BalanceDay} row, and the undated
+ * totals one more on {@link #UNDATED_DAY}. Not thread-safe.
+ */
+final class DailyFlows {
+
+    // Dates outside these years are taken for typos and counted as undated, so one can't stretch the series by centuries
+    static final int MIN_DAY = (int) LocalDate.of(1900, 1, 1).toEpochDay();
+    static final int MAX_DAY = (int) LocalDate.of(2099, 12, 31).toEpochDay();
+    // The day the undated totals are stored on; before MIN_DAY, so no real day can land there
+    static final int UNDATED_DAY = MIN_DAY - 1;
+
+    private static final long[] EMPTY = new long[0];
+
+    private int firstDay;
+    // Slots in use; the arrays grow by half again, so a series built day by day isn't copied for each one
+    private int days;
+    private long[] income = EMPTY;
+    private long[] expenses = EMPTY;
+    private long undatedIncome;
+    private long undatedExpenses;
+
+    /**
+     * Adds {@code cents} of the given type on {@code epochDay}, or to the
+     * undated totals when the day is null or out of range; negative cents
+     * take an amount back out. Types other than income and expense don't
+     * move the balance and are ignored.
+     */
+    void add(Long epochDay, Transaction.TransactionType type, long cents) {
+        if (cents == 0 || (type != Transaction.TransactionType.INCOME && type != Transaction.TransactionType.EXPENSE)) {
+            return;
+        }
+        boolean isIncome = type == Transaction.TransactionType.INCOME;
+        add(day(epochDay), isIncome ? cents : 0, isIncome ? 0 : cents);
+    }
+
+    // Cents on a day as day(...) gives it, or as stored
+    void add(int day, long incomeCents, long expenseCents) {
+        if (day == UNDATED_DAY) {
+            undatedIncome = Money.add(undatedIncome, incomeCents);
+            undatedExpenses = Money.add(undatedExpenses, expenseCents);
+            return;
+        }
+        if (incomeCents == 0 && expenseCents == 0) {
+            return;
+        }
+        int slot = cover(day);
+        income[slot] = Money.add(income[slot], incomeCents);
+        expenses[slot] = Money.add(expenses[slot], expenseCents);
+    }
+
+    void add(Transaction transaction, int sign) {
+        if (transaction.getAmount() == null) {
+            return;
+        }
+        LocalDate date = transaction.getTransactionDate();
+        add(date != null ? date.toEpochDay() : null, transaction.getType(), sign * Money.cents(transaction.getAmount()));
+    }
+
+    // Every day with money in day order, the undated totals first
+    void forEachDay(BalanceDayRepositoryCustom.DayHandler handler) {
+        if (undatedIncome != 0 || undatedExpenses != 0) {
+            handler.accept(UNDATED_DAY, undatedIncome, undatedExpenses);
+        }
+        for (int i = 0; i < days; i++) {
+            if (income[i] != 0 || expenses[i] != 0) {
+                handler.accept(firstDay + i, income[i], expenses[i]);
+            }
+        }
+    }
+
+    // The day a transaction's amount is kept on: its date, or UNDATED_DAY when it has none or one out of range
+    static int day(Long epochDay) {
+        return epochDay == null || epochDay < MIN_DAY || epochDay > MAX_DAY ? UNDATED_DAY : epochDay.intValue();
+    }
+
+    long undatedIncome() {
+        return undatedIncome;
+    }
+
+    long undatedExpenses() {
+        return undatedExpenses;
+    }
+
+    NetFlowIndex index() {
+        int from = 0;
+        int to = days;
+        while (from < to && income[from] == 0 && expenses[from] == 0) {
+            from++;
+        }
+        while (to > from && income[to - 1] == 0 && expenses[to - 1] == 0) {
+            to--;
+        }
+        long[] incomeSums = new long[to - from];
+        long[] expenseSums = new long[to - from];
+        long incomeSum = 0;
+        long expenseSum = 0;
+        for (int i = from; i < to; i++) {
+            incomeSum = Money.add(incomeSum, income[i]);
+            expenseSum = Money.add(expenseSum, expenses[i]);
+            incomeSums[i - from] = incomeSum;
+            expenseSums[i - from] = expenseSum;
+        }
+        return new NetFlowIndex(firstDay + from, incomeSums, expenseSums, undatedIncome, undatedExpenses);
+    }
+
+    // The slot for day, growing the arrays to reach it; a backdated day shifts every slot along
+    private int cover(int day) {
+        if (days == 0) {
+            firstDay = day;
+            days = 1;
+            if (income.length == 0) {
+                income = new long[16];
+                expenses = new long[16];
+            }
+            return 0;
+        }
+        if (day < firstDay) {
+            int shift = firstDay - day;
+            long[] grownIncome = new long[Math.max(income.length, days + shift)];
+            long[] grownExpenses = new long[grownIncome.length];
+            System.arraycopy(income, 0, grownIncome, shift, days);
+            System.arraycopy(expenses, 0, grownExpenses, shift, days);
+            income = grownIncome;
+            expenses = grownExpenses;
+            firstDay = day;
+            days += shift;
+        } else if (day - firstDay >= days) {
+            days = day - firstDay + 1;
+            if (days > income.length) {
+                int capacity = Math.max(days, income.length + (income.length >> 1));
+                income = Arrays.copyOf(income, capacity);
+                expenses = Arrays.copyOf(expenses, capacity);
+            }
+        }
+        return day - firstDay;
+    }
+}
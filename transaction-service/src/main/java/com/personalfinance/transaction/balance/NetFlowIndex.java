@@ -0,0 +1,85 @@
+package com.personalfinance.transaction.balance;
+
+import java.time.LocalDate;
+
+import com.personalfinance.transaction.model.Money;
+
+/**
+ * Running totals of a user's income and expense cents, one per day from
+ * their first dated transaction to their last, so the income, expenses or
+ * net change over any date range is two array reads however long the
+ * range. Transactions without a usable date count in the totals but in no
+ * range. Immutable.
+ */
+public final class NetFlowIndex {
+
+    // Array headers and the object itself
+    private static final long OVERHEAD_BYTES = 80;
+
+    private final int firstDay;
+    // [i] is the total from firstDay through firstDay + i
+    private final long[] incomeSums;
+    private final long[] expenseSums;
+    private final long undatedIncome;
+    private final long undatedExpenses;
+
+    NetFlowIndex(int firstDay, long[] incomeSums, long[] expenseSums, long undatedIncome, long undatedExpenses) {
+        this.firstDay = firstDay;
+        this.incomeSums = incomeSums;
+        this.expenseSums = expenseSums;
+        this.undatedIncome = undatedIncome;
+        this.undatedExpenses = undatedExpenses;
+    }
+
+    // Income from from through to, both inclusive
+    public long incomeCents(LocalDate from, LocalDate to) {
+        return Money.subtract(through(incomeSums, to), through(incomeSums, from.minusDays(1)));
+    }
+
+    public long expenseCents(LocalDate from, LocalDate to) {
+        return Money.subtract(through(expenseSums, to), through(expenseSums, from.minusDays(1)));
+    }
+
+    public long netCents(LocalDate from, LocalDate to) {
+        return Money.subtract(incomeCents(from, to), expenseCents(from, to));
+    }
+
+    // Net of every dated transaction up to and including day
+    public long balanceCents(LocalDate day) {
+        return Money.subtract(through(incomeSums, day), through(expenseSums, day));
+    }
+
+    public long totalIncomeCents() {
+        return Money.add(last(incomeSums), undatedIncome);
+    }
+
+    public long totalExpenseCents() {
+        return Money.add(last(expenseSums), undatedExpenses);
+    }
+
+    // First and last day with money, or null when there are none
+    public LocalDate firstDate() {
+        return incomeSums.length > 0 ? LocalDate.ofEpochDay(firstDay) : null;
+    }
+
+    public LocalDate lastDate() {
+        return incomeSums.length > 0 ? LocalDate.ofEpochDay(firstDay + incomeSums.length - 1L) : null;
+    }
+
+    // What the cache charges this entry against its budget
+    public long estimatedBytes() {
+        return OVERHEAD_BYTES + 2L * Long.BYTES * incomeSums.length;
+    }
+
+    private long through(long[] sums, LocalDate day) {
+        long slot = day.toEpochDay() - firstDay;
+        if (slot < 0 || sums.length == 0) {
+            return 0;
+        }
+        return sums[(int) Math.min(slot, sums.length - 1)];
+    }
+
+    private static long last(long[] sums) {
+        return sums.length > 0 ? sums[sums.length - 1] : 0;
+    }
+}
@@ -0,0 +1,150 @@
+package com.personalfinance.transaction.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Something built per user from their transactions, kept until one of the
+ * user's transactions changes ({@link #invalidate}) or {@code ttl} passes.
+ * Bounded by the entries' total weight, least recently used first; an entry
+ * heavier than the whole budget is not kept.
+ *
+ * Invalidation comes from events published on this instance, so the TTL is
+ * how long a write made through another instance can go unseen.
+ *
+ * Loads are checked against a generation read before they start, so one
+ * that raced a write is not cached: read {@link #generation}, build the
+ * value, then {@link #put} it with that generation; {@link #get} does all
+ * three. Thread-safe.
+ */
+public final class UserCache<V> {
+
+    // Invalidation bumps a stripe rather than a per-user counter, so the counters stay bounded
+    private static final int GENERATION_STRIPES = 1024;
+
+    private final long maxWeight;
+    private final long ttlNanos;
+    private final ToLongFunction<V> weigher;
+
+    // Access-ordered, so iteration starts at the least recently used user; guarded by this
+    private final LinkedHashMap<Long, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight;
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+    public UserCache(long maxWeight, long ttlMillis, ToLongFunction<V> weigher) {
+        this.maxWeight = maxWeight;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.weigher = weigher;
+    }
+
+    // At most maxEntries users
+    public static <V> UserCache<V> ofSize(int maxEntries, long ttlMillis) {
+        return new UserCache<>(maxEntries, ttlMillis, value -> 1);
+    }
+
+    // Read before building a value to put
+    public long generation(Long userId) {
+        return generations.get(stripe(userId));
+    }
+
+    // The user's value if it is current, else null
+    public V getIfPresent(Long userId) {
+        long generation = generation(userId);
+        synchronized (this) {
+            Entry<V> cached = entries.get(userId);
+            if (cached != null && cached.generation == generation && System.nanoTime() - cached.expiresAt < 0) {
+                return cached.value;
+            }
+        }
+        return null;
+    }
+
+    // The user's value, built by loader and kept if there is none current
+    public V get(Long userId, Function<Long, V> loader) {
+        long generation = generation(userId);
+        V cached = getIfPresent(userId);
+        if (cached != null) {
+            return cached;
+        }
+        V value = loader.apply(userId);
+        put(userId, value, generation);
+        return value;
+    }
+
+    // Kept only while the user's generation is still the one read before building it
+    public synchronized void put(Long userId, V value, long generation) {
+        if (generation != generation(userId)) {
+            return;
+        }
+        remove(userId);
+        long size = weigher.applyAsLong(value);
+        if (size > maxWeight) {
+            return;
+        }
+        Iterator<Map.Entry<Long, Entry<V>>> eldest = entries.entrySet().iterator();
+        while (weight + size > maxWeight && eldest.hasNext()) {
+            weight -= eldest.next().getValue().weight;
+            eldest.remove();
+        }
+        entries.put(userId, new Entry<>(value, generation, System.nanoTime() + ttlNanos, size));
+        weight += size;
+    }
+
+    // Drops the user's value; a load that started before this is not kept either
+    public void invalidate(Long userId) {
+        generations.incrementAndGet(stripe(userId));
+        synchronized (this) {
+            remove(userId);
+        }
+    }
+
+    /**
+     * Moves the user's generation on as {@link #invalidate} does, but keeps
+     * their value current, for callers that bring it up to date themselves.
+     * Returns it, or null if there was none.
+     */
+    public synchronized V advance(Long userId) {
+        long previous = generations.getAndIncrement(stripe(userId));
+        Entry<V> cached = entries.get(userId);
+        if (cached == null || cached.generation != previous) {
+            remove(userId);
+            return null;
+        }
+        entries.put(userId, new Entry<>(cached.value, previous + 1, cached.expiresAt, cached.weight));
+        return cached.value;
+    }
+
+    public synchronized long weight() {
+        return weight;
+    }
+
+    private void remove(Long userId) {
+        Entry<V> removed = entries.remove(userId);
+        if (removed != null) {
+            weight -= removed.weight;
+        }
+    }
+
+    private static int stripe(Long userId) {
+        return Long.hashCode(userId) & (GENERATION_STRIPES - 1);
+    }
+
+    private static final class Entry<V> {
+        final V value;
+        final long generation;
+        final long expiresAt;
+        final long weight;
+
+        Entry(V value, long generation, long expiresAt, long weight) {
+            this.value = value;
+            this.generation = generation;
+            this.expiresAt = expiresAt;
+            this.weight = weight;
+        }
+    }
+}
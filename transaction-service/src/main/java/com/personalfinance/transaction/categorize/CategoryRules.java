@@ -0,0 +1,133 @@
+package com.personalfinance.transaction.categorize;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import org.springframework.core.io.Resource;
+
+import com.personalfinance.transaction.model.Transaction;
+
+/**
+ * Maps a merchant, description and bank category to a
+ * {@link Transaction.Category}. A bank category that names one of ours (or
+ * whose segments do, as in QIF's "Food:Groceries") is taken as is. Otherwise
+ * the first rule whose keyword occurs in the merchant, description or bank
+ * category wins, skipping rules of the wrong kind, such as an income
+ * category for money going out. Text nothing matches becomes OTHER_INCOME or
+ * OTHER_EXPENSE.
+ *
+ * Rules are "keyword,CATEGORY" lines in priority order, keywords matched
+ * case-insensitively; '#' starts a comment. They are compiled into a
+ * {@link KeywordAutomaton}, so matching reads each character once whatever
+ * the number of rules. Immutable, so one instance is shared by every thread.
+ */
+final class CategoryRules {
+
+    private static final Set<Transaction.Category> INCOME_CATEGORIES = EnumSet.of(
+            Transaction.Category.SALARY, Transaction.Category.BONUS, Transaction.Category.INVESTMENT,
+            Transaction.Category.BUSINESS, Transaction.Category.OTHER_INCOME);
+
+    private static final int EXPENSE_RULES = 0;
+    private static final int INCOME_RULES = 1;
+
+    private final Transaction.Category[] categories;
+    private final KeywordAutomaton automaton;
+
+    private CategoryRules(List<String> keywords, List<Transaction.Category> categories) {
+        this.categories = categories.toArray(new Transaction.Category[0]);
+        int[] kinds = new int[this.categories.length];
+        for (int i = 0; i < kinds.length; i++) {
+            kinds[i] = isIncome(this.categories[i]) ? INCOME_RULES : EXPENSE_RULES;
+        }
+        this.automaton = new KeywordAutomaton(keywords.toArray(new String[0]), kinds, 2);
+    }
+
+    static CategoryRules load(Resource resource) throws IOException {
+        List<String> keywords = new ArrayList<>();
+        List<Transaction.Category> categories = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            int number = 0;
+            while ((line = reader.readLine()) != null) {
+                number++;
+                int comment = line.indexOf('#');
+                String rule = (comment >= 0 ? line.substring(0, comment) : line).trim();
+                if (rule.isEmpty()) {
+                    continue;
+                }
+                int comma = rule.lastIndexOf(',');
+                String keyword = comma > 0 ? rule.substring(0, comma).trim().toLowerCase(Locale.ROOT) : "";
+                if (keyword.isEmpty()) {
+                    throw new IllegalArgumentException(resource.getDescription() + " line " + number + ": expected keyword,CATEGORY");
+                }
+                try {
+                    categories.add(Transaction.Category.valueOf(rule.substring(comma + 1).trim().toUpperCase(Locale.ROOT)));
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException(resource.getDescription() + " line " + number + ": unknown category "
+                            + rule.substring(comma + 1).trim());
+                }
+                keywords.add(keyword);
+            }
+        }
+        return new CategoryRules(keywords, categories);
+    }
+
+    int size() {
+        return categories.length;
+    }
+
+    int states() {
+        return automaton.states();
+    }
+
+    static boolean isIncome(Transaction.Category category) {
+        return INCOME_CATEGORIES.contains(category);
+    }
+
+    Transaction.Category match(String merchant, String description, String bankCategory, boolean income) {
+        int kind = income ? INCOME_RULES : EXPENSE_RULES;
+        int rule = automaton.first(merchant, kind, KeywordAutomaton.NONE);
+        rule = automaton.first(description, kind, rule);
+        rule = automaton.first(bankCategory, kind, rule);
+        if (rule != KeywordAutomaton.NONE) {
+            return categories[rule];
+        }
+        return income ? Transaction.Category.OTHER_INCOME : Transaction.Category.OTHER_EXPENSE;
+    }
+
+    static Transaction.Category named(String bankCategory, boolean income) {
+        if (bankCategory == null) {
+            return null;
+        }
+        Transaction.Category whole = constant(bankCategory, income);
+        if (whole != null) {
+            return whole;
+        }
+        String[] segments = bankCategory.split("[:/>]");
+        for (int i = segments.length - 1; i >= 0 && segments.length > 1; i--) {
+            Transaction.Category segment = constant(segments[i], income);
+            if (segment != null) {
+                return segment;
+            }
+        }
+        return null;
+    }
+
+    // "Groceries" -> GROCERIES, if that is a category of the right kind
+    private static Transaction.Category constant(String text, boolean income) {
+        String name = text.toUpperCase(Locale.ROOT).replaceAll("[^A-Z0-9]+", "_").replaceAll("^_+|_+$", "");
+        for (Transaction.Category category : Transaction.Category.values()) {
+            if (category.name().equals(name) && isIncome(category) == income) {
+                return category;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,140 @@
+package com.personalfinance.transaction.categorize;
+
+import java.util.Arrays;
+
+/**
+ * An Aho-Corasick automaton over a list of keywords, compiled to a dense
+ * transition table so a scan is one array read per character, however many
+ * keywords there are, with no allocation. Each keyword belongs to a group;
+ * {@link #first} reports the earliest keyword of a group occurring anywhere
+ * in the text, which is the one a first-match-wins list would have picked.
+ *
+ * Keywords are expected in lower case; the scan folds the text's case as it
+ * reads. Characters no keyword uses share one symbol that always leads back
+ * to the root, so the table only has columns for characters that matter.
+ * Immutable once built.
+ */
+final class KeywordAutomaton {
+
+    static final int NONE = Integer.MAX_VALUE;
+
+    private static final int ROOT = 0;
+
+    // Character -> column in the table; 0 for characters no keyword contains
+    private final int[] symbolOf;
+    private final int symbols;
+    // state * symbols + symbol -> next state, failures already followed
+    private final int[] next;
+    // By group, then state: the lowest keyword index ending at the state or at any suffix of it
+    private final int[][] firstByGroup;
+
+    KeywordAutomaton(String[] keywords, int[] groups, int groupCount) {
+        char maxChar = 0;
+        int totalChars = 0;
+        for (String keyword : keywords) {
+            totalChars += keyword.length();
+            for (int i = 0; i < keyword.length(); i++) {
+                maxChar = (char) Math.max(maxChar, keyword.charAt(i));
+            }
+        }
+        symbolOf = new int[maxChar + 1];
+        int symbolCount = 1;
+        for (String keyword : keywords) {
+            for (int i = 0; i < keyword.length(); i++) {
+                if (symbolOf[keyword.charAt(i)] == 0) {
+                    symbolOf[keyword.charAt(i)] = symbolCount++;
+                }
+            }
+        }
+        symbols = symbolCount;
+
+        // The trie, with -1 for missing edges; at most one state per keyword character
+        int capacity = totalChars + 1;
+        int[] table = new int[capacity * symbols];
+        Arrays.fill(table, -1);
+        int[][] output = new int[groupCount][capacity];
+        for (int[] groupOutput : output) {
+            Arrays.fill(groupOutput, NONE);
+        }
+        int states = 1;
+        for (int k = 0; k < keywords.length; k++) {
+            int state = ROOT;
+            for (int i = 0; i < keywords[k].length(); i++) {
+                int edge = state * symbols + symbolOf[keywords[k].charAt(i)];
+                if (table[edge] < 0) {
+                    table[edge] = states++;
+                }
+                state = table[edge];
+            }
+            output[groups[k]][state] = Math.min(output[groups[k]][state], k);
+        }
+
+        // Breadth first, so a state's failure target is complete before the state itself
+        int[] failure = new int[states];
+        int[] queue = new int[states];
+        int head = 0;
+        int tail = 0;
+        for (int symbol = 0; symbol < symbols; symbol++) {
+            int child = table[symbol];
+            if (child < 0) {
+                table[symbol] = ROOT;
+            } else {
+                failure[child] = ROOT;
+                queue[tail++] = child;
+            }
+        }
+        while (head < tail) {
+            int state = queue[head++];
+            for (int[] groupOutput : output) {
+                groupOutput[state] = Math.min(groupOutput[state], groupOutput[failure[state]]);
+            }
+            for (int symbol = 0; symbol < symbols; symbol++) {
+                int edge = state * symbols + symbol;
+                int fallback = table[failure[state] * symbols + symbol];
+                if (table[edge] < 0) {
+                    table[edge] = fallback;
+                } else {
+                    failure[table[edge]] = fallback;
+                    queue[tail++] = table[edge];
+                }
+            }
+        }
+
+        next = Arrays.copyOf(table, states * symbols);
+        firstByGroup = new int[groupCount][];
+        for (int g = 0; g < groupCount; g++) {
+            firstByGroup[g] = Arrays.copyOf(output[g], states);
+        }
+    }
+
+    /**
+     * The lowest index of a keyword in {@code group} that occurs in
+     * {@code text}, or {@code best} if that is lower; NONE if neither.
+     * Pass one result as the next call's {@code best} to search several
+     * texts as if they were one, without matches spanning them.
+     */
+    int first(String text, int group, int best) {
+        if (text == null) {
+            return best;
+        }
+        int[] groupFirst = firstByGroup[group];
+        int state = ROOT;
+        for (int i = 0, length = text.length(); i < length; i++) {
+            char c = text.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                c += 'a' - 'A';
+            } else if (c >= 0x80) {
+                c = Character.toLowerCase(c);
+            }
+            state = next[state * symbols + (c < symbolOf.length ? symbolOf[c] : 0)];
+            if (groupFirst[state] < best) {
+                best = groupFirst[state];
+            }
+        }
+        return best;
+    }
+
+    int states() {
+        return next.length / symbols;
+    }
+}
@@ -0,0 +1,205 @@
+package com.personalfinance.transaction.categorize;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.personalfinance.transaction.model.MerchantCategoryOverride;
+import com.personalfinance.transaction.model.Transaction;
+import com.personalfinance.transaction.repository.MerchantCategoryOverrideRepository;
+import com.personalfinance.transaction.service.TransactionsPurgedEvent;
+
+/**
+ * Picks categories for transactions created without one and for imported
+ * statement rows, from the keyword rules in {@code categorization.rules}
+ * and what each user taught it: when a user gives a merchant a category
+ * other than the one it would have picked, that choice is stored and wins
+ * for the merchant from then on.
+ *
+ * The rules file is checked for changes every {@code rules-check-ms} on a
+ * thread of its own, which compiles the new rules and swaps them in with one
+ * volatile write; categorisations running meanwhile finish on the old ones.
+ * A file that fails to load is logged and the current rules stay. Users'
+ * overrides are cached for {@code override-ttl-ms}, which also picks up
+ * corrections made through other instances.
+ */
+@Service
+public class MerchantCategorizer {
+    private static final Logger logger = LoggerFactory.getLogger(MerchantCategorizer.class);
+
+    private final MerchantCategoryOverrideRepository overrideRepository;
+    private final Resource rulesResource;
+    private final long overrideTtlNanos;
+    private final Map<Long, CachedOverrides> overrides;
+    private final ScheduledExecutorService reloader;
+    private final boolean postgres;
+
+    private volatile CategoryRules rules;
+    // Only touched by the reloader thread after construction
+    private long rulesModified;
+
+    public MerchantCategorizer(MerchantCategoryOverrideRepository overrideRepository,
+                               @Value("${categorization.rules:classpath:statement-category-rules.csv}") Resource rulesResource,
+                               @Value("${categorization.rules-check-ms:30000}") long rulesCheckMillis,
+                               @Value("${categorization.override-cache-size:10000}") int overrideCacheSize,
+                               @Value("${categorization.override-ttl-ms:900000}") long overrideTtlMillis,
+                               @Value("${spring.jpa.database-platform:}") String databasePlatform) {
+        this.overrideRepository = overrideRepository;
+        this.postgres = databasePlatform.contains("PostgreSQL");
+        this.rulesResource = rulesResource;
+        this.overrideTtlNanos = TimeUnit.MILLISECONDS.toNanos(overrideTtlMillis);
+        this.overrides = Collections.synchronizedMap(new LinkedHashMap<Long, CachedOverrides>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, CachedOverrides> eldest) {
+                return size() > overrideCacheSize;
+            }
+        });
+        this.rulesModified = lastModified();
+        try {
+            this.rules = CategoryRules.load(rulesResource);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read category rules from " + rulesResource.getDescription(), e);
+        }
+        logger.info("[MerchantCategorizer] Loaded {} category rules, {} automaton states", rules.size(), rules.states());
+        if (rulesCheckMillis > 0) {
+            this.reloader = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "category-rules");
+                thread.setDaemon(true);
+                return thread;
+            });
+            reloader.scheduleWithFixedDelay(this::reloadIfChanged, rulesCheckMillis, rulesCheckMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.reloader = null;
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (reloader != null) {
+            reloader.shutdownNow();
+        }
+    }
+
+    /**
+     * The user's view of the categoriser: the current rules and their
+     * overrides, fixed from here on. Reads the overrides on a cache miss.
+     */
+    public UserCategorizer forUser(Long userId) {
+        return new UserCategorizer(rules, overrides(userId));
+    }
+
+    /**
+     * Records that the user gave a transaction with this merchant (or, with
+     * none, this description) the category, if it isn't what they'd get
+     * anyway; otherwise nothing is written. Joins the caller's transaction,
+     * and the cache only sees the override once that commits.
+     */
+    public void learn(Long userId, String merchant, String description, Transaction.Category category, boolean income) {
+        String key = MerchantNormalizer.key(merchant, description);
+        if (key == null || category == null || forUser(userId).categorize(merchant, description, null, income) == category) {
+            return;
+        }
+        if (postgres) {
+            overrideRepository.upsert(userId, key, category.name());
+        } else {
+            overrideRepository.merge(userId, key, category.name());
+        }
+        logger.info("[learn] userId={} now categorises '{}' as {}", userId, key, category);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    remember(userId, key, category);
+                }
+            });
+        } else {
+            remember(userId, key, category);
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onTransactionsPurged(TransactionsPurgedEvent event) {
+        overrides.remove(event.getUserId());
+    }
+
+    private Map<String, Transaction.Category> overrides(Long userId) {
+        CachedOverrides cached = overrides.get(userId);
+        if (cached != null && System.nanoTime() - cached.expiresAt < 0) {
+            return cached.categories;
+        }
+        Map<String, Transaction.Category> categories = new HashMap<>();
+        for (MerchantCategoryOverride override : overrideRepository.findByUserId(userId)) {
+            categories.put(override.getMerchantKey(), override.getCategory());
+        }
+        Map<String, Transaction.Category> loaded = Collections.unmodifiableMap(categories);
+        overrides.put(userId, new CachedOverrides(loaded, System.nanoTime() + overrideTtlNanos));
+        return loaded;
+    }
+
+    // Copy on write: categorisers already handed out keep the map they were given
+    private void remember(Long userId, String key, Transaction.Category category) {
+        synchronized (overrides) {
+            CachedOverrides cached = overrides.get(userId);
+            if (cached != null) {
+                Map<String, Transaction.Category> categories = new HashMap<>(cached.categories);
+                categories.put(key, category);
+                overrides.put(userId, new CachedOverrides(Collections.unmodifiableMap(categories), cached.expiresAt));
+            }
+        }
+    }
+
+    private void reloadIfChanged() {
+        long modified = lastModified();
+        if (modified == 0 || modified == rulesModified) {
+            return;
+        }
+        // Not retried until the file changes again, so a broken edit is reported once
+        rulesModified = modified;
+        try {
+            long started = System.nanoTime();
+            CategoryRules reloaded = CategoryRules.load(rulesResource);
+            rules = reloaded;
+            logger.info("[reloadIfChanged] Swapped in {} category rules, {} automaton states, compiled in {} ms",
+                    reloaded.size(), reloaded.states(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        } catch (IOException | RuntimeException e) {
+            logger.error("[reloadIfChanged] Keeping the current category rules; {} did not load: {}",
+                    rulesResource.getDescription(), e.getMessage());
+        }
+    }
+
+    // 0 when the resource can't tell or is missing for the moment; the rules then stay as they are
+    private long lastModified() {
+        try {
+            return rulesResource.lastModified();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static final class CachedOverrides {
+        final Map<String, Transaction.Category> categories;
+        final long expiresAt;
+
+        CachedOverrides(Map<String, Transaction.Category> categories, long expiresAt) {
+            this.categories = categories;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
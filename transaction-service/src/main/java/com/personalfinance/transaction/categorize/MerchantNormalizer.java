@@ -0,0 +1,87 @@
+package com.personalfinance.transaction.categorize;
+
+/**
+ * Reduces a merchant string to the part that names the merchant, so the
+ * forms one shop takes on statements share a key: "SQ *BLUE BOTTLE #0423",
+ * "Blue Bottle 01187" and "blue bottle" all become "blue bottle"; a town the
+ * bank appends stays, as "blue bottle oakland". Lower-cased; card-processor
+ * prefixes, store numbers and reference codes (tokens starting with '#' or
+ * holding three or more digits) are dropped, and punctuation inside a word
+ * is removed, so "McDonald's" and "MCDONALDS" agree.
+ */
+public final class MerchantNormalizer {
+
+    public static final int MAX_LENGTH = 255;
+
+    // Processors and card networks that put their own name before the merchant's
+    private static final String[] PREFIXES = {
+            "sq *", "sq*", "tst* ", "tst*", "pp*", "paypal *", "paypal*", "sp * ", "sp *", "sp*",
+            "pos purchase ", "pos ", "debit card purchase ", "checkcard ", "ach "};
+
+    private MerchantNormalizer() {}
+
+    // Null when nothing is left, as for a missing or all-digits merchant
+    public static String normalize(String text) {
+        if (text == null) {
+            return null;
+        }
+        // Case is folded as characters are copied, so the only string made is the key
+        int length = text.length();
+        int i = skipWhitespace(text, 0);
+        for (boolean stripped = true; stripped; ) {
+            stripped = false;
+            for (String prefix : PREFIXES) {
+                if (text.regionMatches(true, i, prefix, 0, prefix.length())) {
+                    i = skipWhitespace(text, i + prefix.length());
+                    stripped = true;
+                }
+            }
+        }
+
+        StringBuilder key = new StringBuilder(length - i);
+        while (i < length) {
+            i = skipWhitespace(text, i);
+            int start = i;
+            int digits = 0;
+            while (i < length && !Character.isWhitespace(text.charAt(i))) {
+                if (Character.isDigit(text.charAt(i))) {
+                    digits++;
+                }
+                i++;
+            }
+            if (start == i || text.charAt(start) == '#' || digits >= 3) {
+                continue;
+            }
+            int before = key.length();
+            if (before > 0) {
+                key.append(' ');
+            }
+            for (int c = start; c < i; c++) {
+                char ch = text.charAt(c);
+                if (Character.isLetterOrDigit(ch)) {
+                    key.append(Character.toLowerCase(ch));
+                }
+            }
+            if (key.length() == before + 1) {
+                key.setLength(before);
+            }
+        }
+        if (key.length() == 0) {
+            return null;
+        }
+        return key.length() > MAX_LENGTH ? key.substring(0, MAX_LENGTH).trim() : key.toString();
+    }
+
+    private static int skipWhitespace(String text, int i) {
+        while (i < text.length() && Character.isWhitespace(text.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    // The merchant's key, or the description's when there is no usable merchant
+    public static String key(String merchant, String description) {
+        String key = normalize(merchant);
+        return key != null ? key : normalize(description);
+    }
+}
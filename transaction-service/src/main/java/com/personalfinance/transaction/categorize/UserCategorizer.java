@@ -0,0 +1,53 @@
+package com.personalfinance.transaction.categorize;
+
+import java.util.Map;
+
+import com.personalfinance.transaction.model.Transaction;
+
+/**
+ * The categoriser as one user sees it: the rules compiled when it was taken
+ * plus the categories the user chose for their merchants, which win over
+ * everything else. Immutable, so a bulk import takes one and categorises
+ * every row with it from any thread, unaffected by rules swapped meanwhile.
+ */
+public final class UserCategorizer {
+
+    private final CategoryRules rules;
+    // Normalised merchant -> the category the user last gave it
+    private final Map<String, Transaction.Category> overrides;
+
+    UserCategorizer(CategoryRules rules, Map<String, Transaction.Category> overrides) {
+        this.rules = rules;
+        this.overrides = overrides;
+    }
+
+    /**
+     * The category for money in ({@code income}) or out with this merchant,
+     * description and bank category, any of which may be null: the user's
+     * own choice for the merchant if they made one of the right kind, then
+     * a bank category naming one of ours, then the first matching rule.
+     */
+    public Transaction.Category categorize(String merchant, String description, String bankCategory, boolean income) {
+        if (!overrides.isEmpty()) {
+            Transaction.Category learned = learned(MerchantNormalizer.key(merchant, description));
+            if (learned != null && CategoryRules.isIncome(learned) == income) {
+                return learned;
+            }
+        }
+        Transaction.Category named = CategoryRules.named(bankCategory, income);
+        return named != null ? named : rules.match(merchant, description, bankCategory, income);
+    }
+
+    // Statements append towns and terminal codes to the name the user taught, so the longest taught leading words count
+    private Transaction.Category learned(String key) {
+        while (key != null) {
+            Transaction.Category category = overrides.get(key);
+            if (category != null) {
+                return category;
+            }
+            int space = key.lastIndexOf(' ');
+            key = space > 0 ? key.substring(0, space) : null;
+        }
+        return null;
+    }
+}
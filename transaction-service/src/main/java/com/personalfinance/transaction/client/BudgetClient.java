@@ -0,0 +1,36 @@
+package com.personalfinance.transaction.client;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Reads a user's budgets from budget-service. Failures surface as
+ * RestClientException; callers decide whether to go on without budgets.
+ */
+@Component
+public class BudgetClient {
+
+    private final RestTemplate restTemplate;
+    private final String budgetServiceUrl;
+
+    public BudgetClient(RestTemplateBuilder builder,
+                        @Value("${budget-service.url:http://localhost:8083}") String budgetServiceUrl) {
+        this.restTemplate = builder
+                .setConnectTimeout(Duration.ofSeconds(1))
+                .setReadTimeout(Duration.ofSeconds(2))
+                .build();
+        this.budgetServiceUrl = budgetServiceUrl;
+    }
+
+    public List<BudgetLimit> getBudgets(Long userId) {
+        BudgetLimit[] budgets = restTemplate.getForObject(budgetServiceUrl + "/budgets/user/{userId}",
+                BudgetLimit[].class, userId);
+        return budgets != null ? Arrays.asList(budgets) : List.of();
+    }
+}
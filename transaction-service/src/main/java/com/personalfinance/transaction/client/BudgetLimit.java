@@ -0,0 +1,78 @@
+package com.personalfinance.transaction.client;
+
+import java.math.BigDecimal;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+
+// The parts of a budget-service budget that cap forecast spending
+public class BudgetLimit {
+
+    private String category;
+    private BigDecimal amount;
+    // WEEKLY, MONTHLY or YEARLY
+    private String period;
+    private LocalDate startDate;
+    private LocalDate endDate;
+
+    // Constructors
+    public BudgetLimit() {}
+
+    public BudgetLimit(String category, BigDecimal amount, String period, LocalDate startDate, LocalDate endDate) {
+        this.category = category;
+        this.amount = amount;
+        this.period = period;
+        this.startDate = startDate;
+        this.endDate = endDate;
+    }
+
+    // First day of the budget period holding date, no earlier than startDate; null if the budget doesn't cover date
+    public LocalDate periodStart(LocalDate date) {
+        if (!covers(date)) {
+            return null;
+        }
+        LocalDate start;
+        switch (period) {
+            case "WEEKLY": start = date.with(DayOfWeek.MONDAY); break;
+            case "MONTHLY": start = date.withDayOfMonth(1); break;
+            default: start = date.with(TemporalAdjusters.firstDayOfYear());
+        }
+        return startDate != null && startDate.isAfter(start) ? startDate : start;
+    }
+
+    // Last day of the budget period holding date, no later than endDate; null if the budget doesn't cover date
+    public LocalDate periodEnd(LocalDate date) {
+        if (!covers(date)) {
+            return null;
+        }
+        LocalDate end;
+        switch (period) {
+            case "WEEKLY": end = date.with(DayOfWeek.SUNDAY); break;
+            case "MONTHLY": end = date.with(TemporalAdjusters.lastDayOfMonth()); break;
+            default: end = date.with(TemporalAdjusters.lastDayOfYear());
+        }
+        return endDate != null && endDate.isBefore(end) ? endDate : end;
+    }
+
+    private boolean covers(LocalDate date) {
+        return ("WEEKLY".equals(period) || "MONTHLY".equals(period) || "YEARLY".equals(period))
+                && (startDate == null || !date.isBefore(startDate))
+                && (endDate == null || !date.isAfter(endDate));
+    }
+
+    // Getters and Setters
+    public String getCategory() { return category; }
+    public void setCategory(String category) { this.category = category; }
+
+    public BigDecimal getAmount() { return amount; }
+    public void setAmount(BigDecimal amount) { this.amount = amount; }
+
+    public String getPeriod() { return period; }
+    public void setPeriod(String period) { this.period = period; }
+
+    public LocalDate getStartDate() { return startDate; }
+    public void setStartDate(LocalDate startDate) { this.startDate = startDate; }
+
+    public LocalDate getEndDate() { return endDate; }
+    public void setEndDate(LocalDate endDate) { this.endDate = endDate; }
+}
@@ -0,0 +1,36 @@
+package com.personalfinance.transaction.client;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+// One future occurrence of a scheduled purchase, as expanded by scheduled-purchase-service
+public class ScheduledOccurrence {
+
+    private Long purchaseId;
+    private BigDecimal amount;
+    private String category;
+    private LocalDateTime dueAt;
+
+    // Constructors
+    public ScheduledOccurrence() {}
+
+    public ScheduledOccurrence(Long purchaseId, BigDecimal amount, String category, LocalDateTime dueAt) {
+        this.purchaseId = purchaseId;
+        this.amount = amount;
+        this.category = category;
+        this.dueAt = dueAt;
+    }
+
+    // Getters and Setters
+    public Long getPurchaseId() { return purchaseId; }
+    public void setPurchaseId(Long purchaseId) { this.purchaseId = purchaseId; }
+
+    public BigDecimal getAmount() { return amount; }
+    public void setAmount(BigDecimal amount) { this.amount = amount; }
+
+    public String getCategory() { return category; }
+    public void setCategory(String category) { this.category = category; }
+
+    public LocalDateTime getDueAt() { return dueAt; }
+    public void setDueAt(LocalDateTime dueAt) { this.dueAt = dueAt; }
+}
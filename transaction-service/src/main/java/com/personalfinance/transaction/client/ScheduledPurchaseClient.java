@@ -0,0 +1,43 @@
+package com.personalfinance.transaction.client;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Reads the future occurrences of a user's scheduled purchases from
+ * scheduled-purchase-service, which expands recurrence rules itself.
+ * Failures surface as RestClientException.
+ */
+@Component
+public class ScheduledPurchaseClient {
+
+    // scheduled-purchase-service caps a window at this many occurrences
+    public static final int MAX_OCCURRENCES = 10000;
+
+    private final RestTemplate restTemplate;
+    private final String scheduledPurchaseServiceUrl;
+
+    public ScheduledPurchaseClient(RestTemplateBuilder builder,
+                                   @Value("${scheduled-purchase-service.url:http://localhost:8084}") String scheduledPurchaseServiceUrl) {
+        this.restTemplate = builder
+                .setConnectTimeout(Duration.ofSeconds(1))
+                .setReadTimeout(Duration.ofSeconds(2))
+                .build();
+        this.scheduledPurchaseServiceUrl = scheduledPurchaseServiceUrl;
+    }
+
+    // Occurrences due in [from, to], earliest first
+    public List<ScheduledOccurrence> getOccurrences(Long userId, LocalDateTime from, LocalDateTime to) {
+        ScheduledOccurrence[] occurrences = restTemplate.getForObject(
+                scheduledPurchaseServiceUrl + "/scheduled-purchases/user/{userId}/occurrences?from={from}&to={to}&limit={limit}",
+                ScheduledOccurrence[].class, userId, from, to, MAX_OCCURRENCES);
+        return occurrences != null ? Arrays.asList(occurrences) : List.of();
+    }
+}
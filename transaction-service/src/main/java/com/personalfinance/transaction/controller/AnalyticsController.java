@@ -1,6 +1,7 @@
 package com.personalfinance.transaction.controller;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
@@ -12,6 +13,7 @@ import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -19,66 +21,87 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
-import com.personalfinance.transaction.dto.TransactionResponse;
+import com.personalfinance.transaction.anomaly.SpendingAnomalyDetector;
+import com.personalfinance.transaction.balance.BalanceIndexService;
+import com.personalfinance.transaction.balance.NetFlowIndex;
+import com.personalfinance.transaction.dto.PeerBenchmarkResponse;
+import com.personalfinance.transaction.dto.SpendingAnomalyResponse;
+import com.personalfinance.transaction.dto.SubscriptionsResponse;
+import com.personalfinance.transaction.forecast.ForecastService;
+import com.personalfinance.transaction.model.Money;
+import com.personalfinance.transaction.model.SpendingAnomaly;
 import com.personalfinance.transaction.model.Transaction;
+import com.personalfinance.transaction.peer.PeerBenchmarkService;
 import com.personalfinance.transaction.service.TransactionService;
+import com.personalfinance.transaction.subscription.SubscriptionDetector;
 
 @RestController
 @RequestMapping("/analytics")
 public class AnalyticsController {
     private static final Logger logger = LoggerFactory.getLogger(AnalyticsController.class);
+    private static final int MAX_ANOMALIES = 500;
 
     @Autowired
     private TransactionService transactionService;
 
+    @Autowired
+    private ForecastService forecastService;
+
+    @Autowired
+    private SpendingAnomalyDetector spendingAnomalyDetector;
+
+    @Autowired
+    private SubscriptionDetector subscriptionDetector;
+
+    @Autowired
+    private PeerBenchmarkService peerBenchmarkService;
+
+    @Autowired
+    private BalanceIndexService balanceIndexService;
+
     @GetMapping("/user/{userId}/dashboard")
     public ResponseEntity<Map<String, Object>> getDashboardData(
             @PathVariable Long userId,
             @RequestParam(defaultValue = "6months") String timeRange) {
         
-        Map<String, BigDecimal> summary = transactionService.getTransactionSummary(userId);
-        Map<String, BigDecimal> categoryExpenses = transactionService.getCategoryExpenses(userId);
+        // Money cents throughout; decimals only for the response
+        NetFlowIndex totals = balanceIndexService.index(userId);
+        Map<Transaction.Category, Long> categoryExpenses = transactionService.getCategoryExpenseCents(userId);
         
         Map<String, Object> dashboardData = new HashMap<>();
         
-        BigDecimal totalIncome = summary.get("totalIncome");
-        BigDecimal totalExpenses = summary.get("totalExpenses");
-        BigDecimal netSavings = summary.get("netSavings");
+        long totalIncome = totals.totalIncomeCents();
+        long totalExpenses = totals.totalExpenseCents();
+        long netSavings = Money.subtract(totalIncome, totalExpenses);
         
-        // Handle null values
-        if (totalIncome == null) totalIncome = BigDecimal.ZERO;
-        if (totalExpenses == null) totalExpenses = BigDecimal.ZERO;
-        if (netSavings == null) netSavings = totalIncome.subtract(totalExpenses);
-        
-        dashboardData.put("totalIncome", totalIncome);
-        dashboardData.put("totalExpenses", totalExpenses);
-        dashboardData.put("netSavings", netSavings);
+        dashboardData.put("totalIncome", Money.toDecimal(totalIncome));
+        dashboardData.put("totalExpenses", Money.toDecimal(totalExpenses));
+        dashboardData.put("netSavings", Money.toDecimal(netSavings));
         
         String savingsRate = "0";
-        if (totalIncome.compareTo(BigDecimal.ZERO) > 0) {
-            savingsRate = netSavings.divide(totalIncome, 4, BigDecimal.ROUND_HALF_UP)
-                    .multiply(new BigDecimal("100")).toString();
+        if (totalIncome > 0) {
+            savingsRate = Money.percent(netSavings, totalIncome).toString();
         }
         dashboardData.put("savingsRate", savingsRate);
         
         // Add category breakdown for dashboard
         List<Map<String, Object>> categoryBreakdown = new ArrayList<>();
         
-        for (Map.Entry<String, BigDecimal> entry : categoryExpenses.entrySet()) {
+        for (Map.Entry<Transaction.Category, Long> entry : categoryExpenses.entrySet()) {
+            String category = entry.getKey().name();
+            BigDecimal amount = Money.toDecimal(entry.getValue());
             Map<String, Object> categoryData = new HashMap<>();
-            categoryData.put("name", formatCategoryName(entry.getKey()));
-            categoryData.put("value", entry.getValue());
-            categoryData.put("amount", entry.getValue());
+            categoryData.put("name", formatCategoryName(category));
+            categoryData.put("value", amount);
+            categoryData.put("amount", amount);
             
-            if (totalExpenses.compareTo(BigDecimal.ZERO) > 0) {
-                BigDecimal percentage = entry.getValue().divide(totalExpenses, 4, BigDecimal.ROUND_HALF_UP)
-                        .multiply(new BigDecimal("100"));
-                categoryData.put("percentage", percentage);
+            if (totalExpenses > 0) {
+                categoryData.put("percentage", Money.percent(entry.getValue(), totalExpenses));
             } else {
                 categoryData.put("percentage", BigDecimal.ZERO);
             }
             
-            categoryData.put("color", getCategoryColor(entry.getKey()));
+            categoryData.put("color", getCategoryColor(category));
             categoryBreakdown.add(categoryData);
         }
         
@@ -92,45 +115,24 @@ public class AnalyticsController {
             @PathVariable Long userId,
             @RequestParam(defaultValue = "6months") String timeRange) {
         
-        // Get transactions for the last 6 months
+        // Totals for the last 6 months, this one included
         LocalDateTime endDate = LocalDateTime.now();
-        LocalDateTime startDate = endDate.minusMonths(6);
-        
-        List<TransactionResponse> transactions = transactionService.getTransactionsByDateRange(userId, startDate, endDate);
-        
-        // Group by month
-        Map<YearMonth, Map<String, BigDecimal>> monthlyData = new HashMap<>();
-        
-        for (TransactionResponse transaction : transactions) {
-            YearMonth month = YearMonth.from(transaction.getTransactionDate());
-            
-            monthlyData.putIfAbsent(month, new HashMap<>());
-            Map<String, BigDecimal> monthData = monthlyData.get(month);
-            
-            if (Transaction.TransactionType.INCOME.equals(transaction.getType())) {
-                monthData.put("income", monthData.getOrDefault("income", BigDecimal.ZERO).add(transaction.getAmount()));
-            } else {
-                monthData.put("expenses", monthData.getOrDefault("expenses", BigDecimal.ZERO).add(transaction.getAmount()));
-            }
-        }
+        YearMonth firstMonth = YearMonth.from(endDate.minusMonths(5));
+        List<Map<String, BigDecimal>> monthlyTotals = transactionService.getMonthlyTotals(userId, firstMonth, 6);
         
         // Convert to frontend format
         List<Map<String, Object>> trendData = new ArrayList<>();
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("MMM");
         
-        for (int i = 5; i >= 0; i--) {
-            YearMonth month = YearMonth.from(endDate.minusMonths(i));
-            Map<String, BigDecimal> data = monthlyData.getOrDefault(month, new HashMap<>());
-            
-            BigDecimal income = data.getOrDefault("income", BigDecimal.ZERO);
-            BigDecimal expenses = data.getOrDefault("expenses", BigDecimal.ZERO);
-            BigDecimal savings = income.subtract(expenses);
+        for (int i = 0; i < 6; i++) {
+            YearMonth month = firstMonth.plusMonths(i);
+            Map<String, BigDecimal> data = monthlyTotals.get(i);
             
             Map<String, Object> monthData = new HashMap<>();
             monthData.put("month", month.format(formatter));
-            monthData.put("income", income);
-            monthData.put("expenses", expenses);
-            monthData.put("savings", savings);
+            monthData.put("income", data.get("income"));
+            monthData.put("expenses", data.get("expenses"));
+            monthData.put("savings", data.get("savings"));
             trendData.add(monthData);
         }
         return ResponseEntity.ok(trendData);
@@ -142,29 +144,28 @@ public class AnalyticsController {
             @RequestParam(defaultValue = "6months") String timeRange) {
         
         logger.info("GET /analytics/user/{}/dashboard called. timeRange: {}", userId, timeRange);
-        Map<String, BigDecimal> categoryExpenses = transactionService.getCategoryExpenses(userId);
-        Map<String, BigDecimal> summary = transactionService.getTransactionSummary(userId);
-        logger.debug("Summary: {}", summary);
-        logger.debug("Category Expenses: {}", categoryExpenses);
-        BigDecimal totalExpenses = summary.get("totalExpenses");
+        Map<Transaction.Category, Long> categoryExpenses = transactionService.getCategoryExpenseCents(userId);
+        long totalExpenses = balanceIndexService.index(userId).totalExpenseCents();
+        logger.debug("Total expense cents: {}", totalExpenses);
+        logger.debug("Category expense cents: {}", categoryExpenses);
         
         List<Map<String, Object>> categoryBreakdown = new ArrayList<>();
         
-        for (Map.Entry<String, BigDecimal> entry : categoryExpenses.entrySet()) {
+        for (Map.Entry<Transaction.Category, Long> entry : categoryExpenses.entrySet()) {
+            String category = entry.getKey().name();
+            BigDecimal amount = Money.toDecimal(entry.getValue());
             Map<String, Object> categoryData = new HashMap<>();
-            categoryData.put("name", formatCategoryName(entry.getKey()));
-            categoryData.put("value", entry.getValue());
-            categoryData.put("amount", entry.getValue());
+            categoryData.put("name", formatCategoryName(category));
+            categoryData.put("value", amount);
+            categoryData.put("amount", amount);
             
-            if (totalExpenses.compareTo(BigDecimal.ZERO) > 0) {
-                BigDecimal percentage = entry.getValue().divide(totalExpenses, 4, BigDecimal.ROUND_HALF_UP)
-                        .multiply(new BigDecimal("100"));
-                categoryData.put("percentage", percentage);
+            if (totalExpenses > 0) {
+                categoryData.put("percentage", Money.percent(entry.getValue(), totalExpenses));
             } else {
                 categoryData.put("percentage", BigDecimal.ZERO);
             }
             
-            categoryData.put("color", getCategoryColor(entry.getKey()));
+            categoryData.put("color", getCategoryColor(category));
             categoryBreakdown.add(categoryData);
         }
         
@@ -207,6 +208,67 @@ public class AnalyticsController {
         return ResponseEntity.ok(budgetPerformance);
     }
 
+    @GetMapping("/user/{userId}/forecast")
+    public ResponseEntity<?> getForecast(
+            @PathVariable Long userId,
+            @RequestParam(defaultValue = "90") int days,
+            @RequestParam(required = false) Integer paths,
+            @RequestParam(required = false) BigDecimal startingBalance) {
+        logger.info("GET /analytics/user/{}/forecast called. days: {}, paths: {}", userId, days, paths);
+        try {
+            return ResponseEntity.ok(forecastService.forecast(userId, days, paths, startingBalance));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    // Newest first; kind narrows to OUTLIER or BUDGET_BREACH
+    @GetMapping("/user/{userId}/anomalies")
+    public ResponseEntity<List<SpendingAnomalyResponse>> getAnomalies(
+            @PathVariable Long userId,
+            @RequestParam(required = false) SpendingAnomaly.Kind kind,
+            @RequestParam(defaultValue = "50") int limit) {
+        logger.info("GET /analytics/user/{}/anomalies called. kind: {}, limit: {}", userId, kind, limit);
+        return ResponseEntity.ok(spendingAnomalyDetector.getAnomalies(userId, kind, Math.max(1, Math.min(limit, MAX_ANOMALIES))));
+    }
+
+    // Recurring charges still being paid, with what they cost a month in total
+    @GetMapping("/user/{userId}/subscriptions")
+    public ResponseEntity<SubscriptionsResponse> getSubscriptions(@PathVariable Long userId) {
+        logger.info("GET /analytics/user/{}/subscriptions called", userId);
+        return ResponseEntity.ok(subscriptionDetector.getSubscriptions(userId));
+    }
+
+    // Percentile of the user's spending per category among all users; month is yyyy-MM, by default last month
+    @GetMapping("/user/{userId}/peer-benchmarks")
+    public ResponseEntity<?> getPeerBenchmarks(
+            @PathVariable Long userId,
+            @RequestParam(required = false) YearMonth month,
+            @RequestParam(defaultValue = "1") int months) {
+        logger.info("GET /analytics/user/{}/peer-benchmarks called. month: {}, months: {}", userId, month, months);
+        try {
+            PeerBenchmarkResponse benchmarks = peerBenchmarkService.getBenchmarks(userId, month, months);
+            return ResponseEntity.ok(benchmarks);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    // Income, expenses and balance per DAY, WEEK or MONTH; from and to are yyyy-MM-dd, by default the last twelve months
+    @GetMapping("/user/{userId}/balance-history")
+    public ResponseEntity<?> getBalanceHistory(
+            @PathVariable Long userId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(defaultValue = "MONTH") BalanceIndexService.Interval interval) {
+        logger.info("GET /analytics/user/{}/balance-history called. from: {}, to: {}, interval: {}", userId, from, to, interval);
+        try {
+            return ResponseEntity.ok(balanceIndexService.getBalanceHistory(userId, from, to, interval));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
     private String formatCategoryName(String category) {
         String formatted = category.replace("_", " ").toLowerCase();
         // Capitalize first letter of each word
@@ -1,5 +1,6 @@
 package com.personalfinance.transaction.controller;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.List;
@@ -11,6 +12,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -18,14 +20,19 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MultipartFile;
 
+import com.personalfinance.transaction.dto.StatementImportResponse;
+import com.personalfinance.transaction.dto.TransactionBatchRequest;
 import com.personalfinance.transaction.dto.TransactionCreateRequest;
 import com.personalfinance.transaction.dto.TransactionResponse;
 import com.personalfinance.transaction.dto.TransactionUpdateRequest;
 import com.personalfinance.transaction.service.TransactionService;
+import com.personalfinance.transaction.statement.StatementImportService;
 
 import javax.validation.Valid;
 
@@ -34,15 +41,59 @@ import javax.validation.Valid;
 public class TransactionController {
     private static final Logger logger = LoggerFactory.getLogger(TransactionController.class);
 
+    // Tells the gateway to drop cached analytics for the user whose data changed
+    static final String CACHE_INVALIDATE_HEADER = "X-Cache-Invalidate-User";
+    // Retrying a create with the same key returns the original transaction
+    static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    static final int MAX_EXPORT_PAGE_SIZE = 5000;
+    static final int MAX_PURGE_CHUNK_SIZE = 5000;
+
     @Autowired
     private TransactionService transactionService;
 
+    @Autowired
+    private StatementImportService statementImportService;
+
     @PostMapping
-    public ResponseEntity<TransactionResponse> createTransaction(@Valid @RequestBody TransactionCreateRequest request) {
+    public ResponseEntity<TransactionResponse> createTransaction(
+            @Valid @RequestBody TransactionCreateRequest request,
+            @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
         logger.info("POST /transactions called. Request: {}", request);
-        TransactionResponse transaction = transactionService.createTransaction(request);
+        TransactionResponse transaction = transactionService.createTransaction(request, idempotencyKey);
         logger.debug("Created transaction: {}", transaction);
-        return ResponseEntity.ok(transaction);
+        return ResponseEntity.ok()
+                .header(CACHE_INVALIDATE_HEADER, String.valueOf(transaction.getUserId()))
+                .body(transaction);
+    }
+
+    // For bulk imports; per-item idempotency keys make the whole batch safe to retry
+    @PostMapping("/batch")
+    public ResponseEntity<Map<String, Integer>> createTransactions(@Valid @RequestBody TransactionBatchRequest request) {
+        logger.info("POST /transactions/batch called with {} transactions", request.getTransactions().size());
+        Map<String, Integer> result = transactionService.createTransactions(request.getTransactions());
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        request.getTransactions().stream().map(TransactionCreateRequest::getUserId).distinct()
+                .forEach(userId -> response.header(CACHE_INVALIDATE_HEADER, String.valueOf(userId)));
+        return response.body(result);
+    }
+
+    // Bank statement upload; the format (CSV, OFX or QIF) is guessed from the file unless given
+    @PostMapping(value = "/user/{userId}/import", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<?> importStatement(
+            @PathVariable Long userId,
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(required = false) String format) throws IOException {
+        logger.info("POST /transactions/user/{}/import called. file: {}, bytes: {}, format: {}",
+                userId, file.getOriginalFilename(), file.getSize(), format);
+        try {
+            StatementImportResponse result = statementImportService.importStatement(
+                    userId, file.getOriginalFilename(), format, file.getBytes());
+            return ResponseEntity.ok()
+                    .header(CACHE_INVALIDATE_HEADER, String.valueOf(userId))
+                    .body(result);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
     }
 
     @GetMapping("/user/{userId}")
@@ -56,6 +107,28 @@ public class TransactionController {
         return ResponseEntity.ok(transactions);
     }
 
+    // Pages by id rather than offset so walking a long history stays linear; pass the last id seen as afterId
+    @GetMapping("/user/{userId}/export")
+    public ResponseEntity<List<TransactionResponse>> exportTransactionsByUser(
+            @PathVariable Long userId,
+            @RequestParam(defaultValue = "0") long afterId,
+            @RequestParam(defaultValue = "1000") int limit) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_EXPORT_PAGE_SIZE));
+        return ResponseEntity.ok(transactionService.getTransactionsAfter(userId, afterId, pageSize));
+    }
+
+    // One bounded chunk of a full purge; repeat until nothing is deleted.
+    // For the gateway's purger only: the gateway refuses this path on its public routes
+    @DeleteMapping("/user/{userId}/purge")
+    public ResponseEntity<Map<String, Integer>> purgeTransactionsByUser(
+            @PathVariable Long userId,
+            @RequestParam(defaultValue = "500") int limit) {
+        int deleted = transactionService.purgeChunk(userId, Math.max(1, Math.min(limit, MAX_PURGE_CHUNK_SIZE)));
+        return ResponseEntity.ok()
+                .header(CACHE_INVALIDATE_HEADER, String.valueOf(userId))
+                .body(Map.of("deleted", deleted));
+    }
+
     @GetMapping("/{id}")
     public ResponseEntity<TransactionResponse> getTransaction(@PathVariable Long id) {
         TransactionResponse transaction = transactionService.getTransactionById(id);
@@ -66,13 +139,17 @@ public class TransactionController {
     public ResponseEntity<TransactionResponse> updateTransaction(
             @PathVariable Long id, @Valid @RequestBody TransactionUpdateRequest request) {
         TransactionResponse transaction = transactionService.updateTransaction(id, request);
-        return ResponseEntity.ok(transaction);
+        return ResponseEntity.ok()
+                .header(CACHE_INVALIDATE_HEADER, String.valueOf(transaction.getUserId()))
+                .body(transaction);
     }
 
     @DeleteMapping("/{id}")
     public ResponseEntity<Void> deleteTransaction(@PathVariable Long id) {
-        transactionService.deleteTransaction(id);
-        return ResponseEntity.noContent().build();
+        Long userId = transactionService.deleteTransaction(id);
+        return ResponseEntity.noContent()
+                .header(CACHE_INVALIDATE_HEADER, String.valueOf(userId))
+                .build();
     }
 
     @GetMapping("/user/{userId}/summary")
@@ -0,0 +1,87 @@
+package com.personalfinance.transaction.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+// Income, expenses and running balance over a date range, in periods; never stored
+public class BalanceHistoryResponse {
+
+    private Long userId;
+    private LocalDate from;
+    private LocalDate to;
+    private String interval;
+    // Over the whole range
+    private BigDecimal income;
+    private BigDecimal expenses;
+    private BigDecimal net;
+    // Net of every dated transaction before from, and through to
+    private BigDecimal openingBalance;
+    private BigDecimal closingBalance;
+    private List<Point> points;
+
+    // Constructors
+    public BalanceHistoryResponse() {}
+
+    // Getters and Setters
+    public Long getUserId() { return userId; }
+    public void setUserId(Long userId) { this.userId = userId; }
+
+    public LocalDate getFrom() { return from; }
+    public void setFrom(LocalDate from) { this.from = from; }
+
+    public LocalDate getTo() { return to; }
+    public void setTo(LocalDate to) { this.to = to; }
+
+    public String getInterval() { return interval; }
+    public void setInterval(String interval) { this.interval = interval; }
+
+    public BigDecimal getIncome() { return income; }
+    public void setIncome(BigDecimal income) { this.income = income; }
+
+    public BigDecimal getExpenses() { return expenses; }
+    public void setExpenses(BigDecimal expenses) { this.expenses = expenses; }
+
+    public BigDecimal getNet() { return net; }
+    public void setNet(BigDecimal net) { this.net = net; }
+
+    public BigDecimal getOpeningBalance() { return openingBalance; }
+    public void setOpeningBalance(BigDecimal openingBalance) { this.openingBalance = openingBalance; }
+
+    public BigDecimal getClosingBalance() { return closingBalance; }
+    public void setClosingBalance(BigDecimal closingBalance) { this.closingBalance = closingBalance; }
+
+    public List<Point> getPoints() { return points; }
+    public void setPoints(List<Point> points) { this.points = points; }
+
+    // One day, week or month of the range; the first and last are cut to it
+    public static class Point {
+        private LocalDate start;
+        private LocalDate end;
+        private BigDecimal income;
+        private BigDecimal expenses;
+        private BigDecimal net;
+        // At the end of the period
+        private BigDecimal balance;
+
+        public Point() {}
+
+        public LocalDate getStart() { return start; }
+        public void setStart(LocalDate start) { this.start = start; }
+
+        public LocalDate getEnd() { return end; }
+        public void setEnd(LocalDate end) { this.end = end; }
+
+        public BigDecimal getIncome() { return income; }
+        public void setIncome(BigDecimal income) { this.income = income; }
+
+        public BigDecimal getExpenses() { return expenses; }
+        public void setExpenses(BigDecimal expenses) { this.expenses = expenses; }
+
+        public BigDecimal getNet() { return net; }
+        public void setNet(BigDecimal net) { this.net = net; }
+
+        public BigDecimal getBalance() { return balance; }
+        public void setBalance(BigDecimal balance) { this.balance = balance; }
+    }
+}
@@ -0,0 +1,89 @@
+package com.personalfinance.transaction.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+// Projected end-of-day balances with confidence bands; never stored
+public class ForecastResponse {
+
+    private Long userId;
+    private BigDecimal startingBalance;
+    private int days;
+    private int paths;
+    private int recurringPatterns;
+    private int scheduledOccurrences;
+    private int budgetCaps;
+    // Inputs that could not be fetched and were left out
+    private List<String> warnings;
+    private List<Point> points;
+
+    // Constructors
+    public ForecastResponse() {}
+
+    // Getters and Setters
+    public Long getUserId() { return userId; }
+    public void setUserId(Long userId) { this.userId = userId; }
+
+    public BigDecimal getStartingBalance() { return startingBalance; }
+    public void setStartingBalance(BigDecimal startingBalance) { this.startingBalance = startingBalance; }
+
+    public int getDays() { return days; }
+    public void setDays(int days) { this.days = days; }
+
+    public int getPaths() { return paths; }
+    public void setPaths(int paths) { this.paths = paths; }
+
+    public int getRecurringPatterns() { return recurringPatterns; }
+    public void setRecurringPatterns(int recurringPatterns) { this.recurringPatterns = recurringPatterns; }
+
+    public int getScheduledOccurrences() { return scheduledOccurrences; }
+    public void setScheduledOccurrences(int scheduledOccurrences) { this.scheduledOccurrences = scheduledOccurrences; }
+
+    public int getBudgetCaps() { return budgetCaps; }
+    public void setBudgetCaps(int budgetCaps) { this.budgetCaps = budgetCaps; }
+
+    public List<String> getWarnings() { return warnings; }
+    public void setWarnings(List<String> warnings) { this.warnings = warnings; }
+
+    public List<Point> getPoints() { return points; }
+    public void setPoints(List<Point> points) { this.points = points; }
+
+    // One day: p10-p90 is the 80% band, p25-p75 the 50% band
+    public static class Point {
+        private LocalDate date;
+        private BigDecimal mean;
+        private BigDecimal p10;
+        private BigDecimal p25;
+        private BigDecimal p50;
+        private BigDecimal p75;
+        private BigDecimal p90;
+        private double probabilityNegative;
+
+        public Point() {}
+
+        public LocalDate getDate() { return date; }
+        public void setDate(LocalDate date) { this.date = date; }
+
+        public BigDecimal getMean() { return mean; }
+        public void setMean(BigDecimal mean) { this.mean = mean; }
+
+        public BigDecimal getP10() { return p10; }
+        public void setP10(BigDecimal p10) { this.p10 = p10; }
+
+        public BigDecimal getP25() { return p25; }
+        public void setP25(BigDecimal p25) { this.p25 = p25; }
+
+        public BigDecimal getP50() { return p50; }
+        public void setP50(BigDecimal p50) { this.p50 = p50; }
+
+        public BigDecimal getP75() { return p75; }
+        public void setP75(BigDecimal p75) { this.p75 = p75; }
+
+        public BigDecimal getP90() { return p90; }
+        public void setP90(BigDecimal p90) { this.p90 = p90; }
+
+        public double getProbabilityNegative() { return probabilityNegative; }
+        public void setProbabilityNegative(double probabilityNegative) { this.probabilityNegative = probabilityNegative; }
+    }
+}
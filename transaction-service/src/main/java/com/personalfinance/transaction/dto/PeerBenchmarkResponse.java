@@ -0,0 +1,73 @@
+package com.personalfinance.transaction.dto;
+
+import java.math.BigDecimal;
+import java.time.YearMonth;
+import java.util.List;
+
+import com.personalfinance.transaction.model.Transaction;
+
+// "You're in the 80th percentile for DINING"; one entry per category the user spent in, never stored
+public class PeerBenchmarkResponse {
+
+    private Long userId;
+    // The last month compared, and how many months up to it
+    private YearMonth month;
+    private int months;
+    private List<CategoryBenchmark> categories;
+
+    // Constructors
+    public PeerBenchmarkResponse() {}
+
+    // Getters and Setters
+    public Long getUserId() { return userId; }
+    public void setUserId(Long userId) { this.userId = userId; }
+
+    public YearMonth getMonth() { return month; }
+    public void setMonth(YearMonth month) { this.month = month; }
+
+    public int getMonths() { return months; }
+    public void setMonths(int months) { this.months = months; }
+
+    public List<CategoryBenchmark> getCategories() { return categories; }
+    public void setCategories(List<CategoryBenchmark> categories) { this.categories = categories; }
+
+    /**
+     * The user's spend in a month they spent in the category (averaged over
+     * such months when several are compared) against everyone else's months
+     * with spending in it. The peer figures are null when too few peers
+     * would make them someone's actual spending.
+     */
+    public static class CategoryBenchmark {
+        private Transaction.Category category;
+        private BigDecimal amount;
+        // Share of peer months below the user's, 0 to 99
+        private Integer percentile;
+        private long peers;
+        private BigDecimal peerMedian;
+        private BigDecimal peerP75;
+        private BigDecimal peerP90;
+
+        public CategoryBenchmark() {}
+
+        public Transaction.Category getCategory() { return category; }
+        public void setCategory(Transaction.Category category) { this.category = category; }
+
+        public BigDecimal getAmount() { return amount; }
+        public void setAmount(BigDecimal amount) { this.amount = amount; }
+
+        public Integer getPercentile() { return percentile; }
+        public void setPercentile(Integer percentile) { this.percentile = percentile; }
+
+        public long getPeers() { return peers; }
+        public void setPeers(long peers) { this.peers = peers; }
+
+        public BigDecimal getPeerMedian() { return peerMedian; }
+        public void setPeerMedian(BigDecimal peerMedian) { this.peerMedian = peerMedian; }
+
+        public BigDecimal getPeerP75() { return peerP75; }
+        public void setPeerP75(BigDecimal peerP75) { this.peerP75 = peerP75; }
+
+        public BigDecimal getPeerP90() { return peerP90; }
+        public void setPeerP90(BigDecimal peerP90) { this.peerP90 = peerP90; }
+    }
+}
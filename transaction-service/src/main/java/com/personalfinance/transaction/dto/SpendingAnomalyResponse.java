@@ -0,0 +1,89 @@
+package com.personalfinance.transaction.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import com.personalfinance.transaction.model.SpendingAnomaly;
+import com.personalfinance.transaction.model.Transaction;
+
+public class SpendingAnomalyResponse {
+
+    private Long id;
+    private Long userId;
+    private Long transactionId;
+    private SpendingAnomaly.Kind kind;
+    private Transaction.Category category;
+    private BigDecimal amount;
+    private LocalDate transactionDate;
+    private BigDecimal typicalAmount;
+    private Double deviations;
+    private BigDecimal budgetLimit;
+    private LocalDate periodStart;
+    private LocalDate periodEnd;
+    private BigDecimal periodSpent;
+    private LocalDateTime detectedAt;
+
+    // Constructors
+    public SpendingAnomalyResponse() {}
+
+    public SpendingAnomalyResponse(SpendingAnomaly anomaly) {
+        this.id = anomaly.getId();
+        this.userId = anomaly.getUserId();
+        this.transactionId = anomaly.getTransactionId();
+        this.kind = anomaly.getKind();
+        this.category = anomaly.getCategory();
+        this.amount = anomaly.getAmount();
+        this.transactionDate = anomaly.getTransactionDate();
+        this.typicalAmount = anomaly.getTypicalAmount();
+        this.deviations = anomaly.getDeviations();
+        this.budgetLimit = anomaly.getBudgetLimit();
+        this.periodStart = anomaly.getPeriodStart();
+        this.periodEnd = anomaly.getPeriodEnd();
+        this.periodSpent = anomaly.getPeriodSpent();
+        this.detectedAt = anomaly.getDetectedAt();
+    }
+
+    // Getters and Setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public Long getUserId() { return userId; }
+    public void setUserId(Long userId) { this.userId = userId; }
+
+    public Long getTransactionId() { return transactionId; }
+    public void setTransactionId(Long transactionId) { this.transactionId = transactionId; }
+
+    public SpendingAnomaly.Kind getKind() { return kind; }
+    public void setKind(SpendingAnomaly.Kind kind) { this.kind = kind; }
+
+    public Transaction.Category getCategory() { return category; }
+    public void setCategory(Transaction.Category category) { this.category = category; }
+
+    public BigDecimal getAmount() { return amount; }
+    public void setAmount(BigDecimal amount) { this.amount = amount; }
+
+    public LocalDate getTransactionDate() { return transactionDate; }
+    public void setTransactionDate(LocalDate transactionDate) { this.transactionDate = transactionDate; }
+
+    public BigDecimal getTypicalAmount() { return typicalAmount; }
+    public void setTypicalAmount(BigDecimal typicalAmount) { this.typicalAmount = typicalAmount; }
+
+    public Double getDeviations() { return deviations; }
+    public void setDeviations(Double deviations) { this.deviations = deviations; }
+
+    public BigDecimal getBudgetLimit() { return budgetLimit; }
+    public void setBudgetLimit(BigDecimal budgetLimit) { this.budgetLimit = budgetLimit; }
+
+    public LocalDate getPeriodStart() { return periodStart; }
+    public void setPeriodStart(LocalDate periodStart) { this.periodStart = periodStart; }
+
+    public LocalDate getPeriodEnd() { return periodEnd; }
+    public void setPeriodEnd(LocalDate periodEnd) { this.periodEnd = periodEnd; }
+
+    public BigDecimal getPeriodSpent() { return periodSpent; }
+    public void setPeriodSpent(BigDecimal periodSpent) { this.periodSpent = periodSpent; }
+
+    public LocalDateTime getDetectedAt() { return detectedAt; }
+    public void setDetectedAt(LocalDateTime detectedAt) { this.detectedAt = detectedAt; }
+}
@@ -0,0 +1,46 @@
+package com.personalfinance.transaction.dto;
+
+import java.util.List;
+
+// Outcome of one bank statement upload
+public class StatementImportResponse {
+
+    private Long userId;
+    private String format;
+    // Rows read from the file, whether imported or found to be duplicates
+    private int rows;
+    private int imported;
+    private int duplicates;
+    // Records that could not be read; the first few are described in errors
+    private int rejected;
+    private List<String> errors;
+    private long elapsedMillis;
+
+    // Constructors
+    public StatementImportResponse() {}
+
+    // Getters and Setters
+    public Long getUserId() { return userId; }
+    public void setUserId(Long userId) { this.userId = userId; }
+
+    public String getFormat() { return format; }
+    public void setFormat(String format) { this.format = format; }
+
+    public int getRows() { return rows; }
+    public void setRows(int rows) { this.rows = rows; }
+
+    public int getImported() { return imported; }
+    public void setImported(int imported) { this.imported = imported; }
+
+    public int getDuplicates() { return duplicates; }
+    public void setDuplicates(int duplicates) { this.duplicates = duplicates; }
+
+    public int getRejected() { return rejected; }
+    public void setRejected(int rejected) { this.rejected = rejected; }
+
+    public List<String> getErrors() { return errors; }
+    public void setErrors(List<String> errors) { this.errors = errors; }
+
+    public long getElapsedMillis() { return elapsedMillis; }
+    public void setElapsedMillis(long elapsedMillis) { this.elapsedMillis = elapsedMillis; }
+}
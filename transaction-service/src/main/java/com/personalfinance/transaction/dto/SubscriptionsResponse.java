@@ -0,0 +1,75 @@
+package com.personalfinance.transaction.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+import com.personalfinance.transaction.model.Transaction;
+
+// "You're paying for 7 subscriptions, 84.93 a month"; most expensive first, never stored
+public class SubscriptionsResponse {
+
+    private Long userId;
+    private int count;
+    private BigDecimal monthlyCost;
+    private List<Subscription> subscriptions;
+
+    // Constructors
+    public SubscriptionsResponse() {}
+
+    // Getters and Setters
+    public Long getUserId() { return userId; }
+    public void setUserId(Long userId) { this.userId = userId; }
+
+    public int getCount() { return count; }
+    public void setCount(int count) { this.count = count; }
+
+    public BigDecimal getMonthlyCost() { return monthlyCost; }
+    public void setMonthlyCost(BigDecimal monthlyCost) { this.monthlyCost = monthlyCost; }
+
+    public List<Subscription> getSubscriptions() { return subscriptions; }
+    public void setSubscriptions(List<Subscription> subscriptions) { this.subscriptions = subscriptions; }
+
+    // One merchant charging about the same amount every week, month or year
+    public static class Subscription {
+        private String merchant;
+        private Transaction.Category category;
+        private String period;
+        // The latest charge, and what it comes to per month
+        private BigDecimal amount;
+        private BigDecimal monthlyCost;
+        private int charges;
+        private LocalDate firstCharged;
+        private LocalDate lastCharged;
+        private LocalDate nextExpected;
+
+        public Subscription() {}
+
+        public String getMerchant() { return merchant; }
+        public void setMerchant(String merchant) { this.merchant = merchant; }
+
+        public Transaction.Category getCategory() { return category; }
+        public void setCategory(Transaction.Category category) { this.category = category; }
+
+        public String getPeriod() { return period; }
+        public void setPeriod(String period) { this.period = period; }
+
+        public BigDecimal getAmount() { return amount; }
+        public void setAmount(BigDecimal amount) { this.amount = amount; }
+
+        public BigDecimal getMonthlyCost() { return monthlyCost; }
+        public void setMonthlyCost(BigDecimal monthlyCost) { this.monthlyCost = monthlyCost; }
+
+        public int getCharges() { return charges; }
+        public void setCharges(int charges) { this.charges = charges; }
+
+        public LocalDate getFirstCharged() { return firstCharged; }
+        public void setFirstCharged(LocalDate firstCharged) { this.firstCharged = firstCharged; }
+
+        public LocalDate getLastCharged() { return lastCharged; }
+        public void setLastCharged(LocalDate lastCharged) { this.lastCharged = lastCharged; }
+
+        public LocalDate getNextExpected() { return nextExpected; }
+        public void setNextExpected(LocalDate nextExpected) { this.nextExpected = nextExpected; }
+    }
+}
@@ -0,0 +1,31 @@
+package com.personalfinance.transaction.dto;
+
+import java.util.List;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.Size;
+
+// Many creates in one request and one database transaction, for bulk imports
+public class TransactionBatchRequest {
+
+    public static final int MAX_SIZE = 1000;
+
+    @NotEmpty
+    @Size(max = MAX_SIZE)
+    @Valid
+    private List<Item> transactions;
+
+    // Getters and Setters
+    public List<Item> getTransactions() { return transactions; }
+    public void setTransactions(List<Item> transactions) { this.transactions = transactions; }
+
+    // A create plus the idempotency key the single create takes as a header
+    public static class Item extends TransactionCreateRequest {
+        @Size(max = 200)
+        private String idempotencyKey;
+
+        public String getIdempotencyKey() { return idempotencyKey; }
+        public void setIdempotencyKey(String idempotencyKey) { this.idempotencyKey = idempotencyKey; }
+    }
+}
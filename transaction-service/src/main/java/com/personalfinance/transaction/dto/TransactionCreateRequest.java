@@ -24,7 +24,7 @@ public class TransactionCreateRequest {
     @NotNull
     private Transaction.TransactionType type;
 
-    @NotNull
+    // Picked from the merchant and description when left out
     private Transaction.Category category;
 
     private LocalDate transactionDate;
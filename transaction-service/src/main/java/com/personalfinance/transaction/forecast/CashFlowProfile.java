@@ -0,0 +1,294 @@
+package com.personalfinance.transaction.forecast;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import com.personalfinance.transaction.model.Money;
+import com.personalfinance.transaction.model.Transaction;
+
+/**
+ * What a user's history says about their cash flow, computed once so that a
+ * forecast only has to sample from it. History is split in two:
+ *
+ * - recurring patterns: series of the same type, category and merchant that
+ *   repeat weekly, fortnightly or monthly, projected forward on their cadence;
+ * - everything else, kept as whole past days bucketed by day of week, so a
+ *   simulated Saturday spends like some past Saturday did, with that day's
+ *   mix of categories intact for budget caps to act on.
+ *
+ * Transactions created by scheduled purchases are left out of both; their
+ * future occurrences come from scheduled-purchase-service instead. Immutable.
+ */
+public final class CashFlowProfile {
+
+    static final int CATEGORIES = Transaction.Category.values().length;
+
+    // Prefix of the idempotency keys scheduled-purchase-service fires purchases with
+    static final String SCHEDULED_PURCHASE_KEY_PREFIX = "scheduled-purchase:";
+
+    private static final int MIN_OCCURRENCES = 3;
+    // Share of a series' intervals that must fit its cadence
+    private static final double MIN_REGULARITY = 0.8;
+
+    private final LocalDate builtOn;
+    private final long balanceCents;
+    private final int sampleDays;
+    // Past day i of the sample pool holds entries [sampleOffsets[i], sampleOffsets[i + 1])
+    private final int[] sampleOffsets;
+    private final byte[] entryCategory;
+    // Signed cents, one entry per category per day: income positive, expenses negative
+    private final long[] entryCents;
+    // Sample days by DayOfWeek.getValue() - 1
+    private final int[][] samplesByDayOfWeek;
+    private final List<RecurringPattern> recurring;
+    // Per category: days with expenses (epoch days, ascending) and the running total through each
+    private final long[][] expenseDays;
+    private final long[][] expenseRunningTotals;
+
+    private CashFlowProfile(LocalDate builtOn, long balanceCents, int sampleDays, int[] sampleOffsets,
+                            byte[] entryCategory, long[] entryCents, int[][] samplesByDayOfWeek,
+                            List<RecurringPattern> recurring, long[][] expenseDays, long[][] expenseRunningTotals) {
+        this.builtOn = builtOn;
+        this.balanceCents = balanceCents;
+        this.sampleDays = sampleDays;
+        this.sampleOffsets = sampleOffsets;
+        this.entryCategory = entryCategory;
+        this.entryCents = entryCents;
+        this.samplesByDayOfWeek = samplesByDayOfWeek;
+        this.recurring = recurring;
+        this.expenseDays = expenseDays;
+        this.expenseRunningTotals = expenseRunningTotals;
+    }
+
+    /**
+     * Builds the profile from the user's transactions dated within
+     * {@code historyDays} before {@code today}. Only whole past days are
+     * sampled; today's transactions count towards recurring series and
+     * budget spend so far.
+     */
+    public static CashFlowProfile build(List<Transaction> history, long balanceCents, LocalDate today, int historyDays) {
+        LocalDate earliest = today.minusDays(historyDays);
+        List<Transaction> relevant = new ArrayList<>();
+        LocalDate firstSeen = null;
+        for (Transaction transaction : history) {
+            LocalDate date = transaction.getTransactionDate();
+            if (date == null || date.isBefore(earliest) || date.isAfter(today)
+                    || transaction.getAmount() == null || transaction.getType() == null || transaction.getCategory() == null) {
+                continue;
+            }
+            if (firstSeen == null || date.isBefore(firstSeen)) {
+                firstSeen = date;
+            }
+            relevant.add(transaction);
+        }
+
+        Set<Transaction> inPatterns = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<RecurringPattern> recurring = findRecurring(relevant, today, inPatterns);
+
+        // The pool starts at the first transaction seen: days before the user joined say nothing
+        long poolStart = firstSeen == null ? today.toEpochDay() : firstSeen.toEpochDay();
+        int sampleDays = (int) Math.max(0, today.toEpochDay() - poolStart);
+        long[][] dayCategoryCents = new long[sampleDays][];
+        List<List<Transaction>> expensesByCategory = new ArrayList<>();
+        for (int c = 0; c < CATEGORIES; c++) {
+            expensesByCategory.add(new ArrayList<>());
+        }
+        for (Transaction transaction : relevant) {
+            if (transaction.getType() == Transaction.TransactionType.EXPENSE) {
+                expensesByCategory.get(transaction.getCategory().ordinal()).add(transaction);
+            }
+            if (inPatterns.contains(transaction) || isScheduledPurchase(transaction)) {
+                continue;
+            }
+            int day = (int) (transaction.getTransactionDate().toEpochDay() - poolStart);
+            if (day >= sampleDays) {
+                continue;
+            }
+            if (dayCategoryCents[day] == null) {
+                dayCategoryCents[day] = new long[CATEGORIES];
+            }
+            dayCategoryCents[day][transaction.getCategory().ordinal()] += signedCents(transaction);
+        }
+
+        int[] sampleOffsets = new int[sampleDays + 1];
+        int entries = 0;
+        for (int day = 0; day < sampleDays; day++) {
+            sampleOffsets[day] = entries;
+            if (dayCategoryCents[day] != null) {
+                for (long cents : dayCategoryCents[day]) {
+                    entries += cents != 0 ? 1 : 0;
+                }
+            }
+        }
+        sampleOffsets[sampleDays] = entries;
+        byte[] entryCategory = new byte[entries];
+        long[] entryCents = new long[entries];
+        int[] dayOfWeekCounts = new int[7];
+        for (int day = 0, entry = 0; day < sampleDays; day++) {
+            dayOfWeekCounts[dayOfWeek(poolStart + day)]++;
+            if (dayCategoryCents[day] == null) {
+                continue;
+            }
+            for (int c = 0; c < CATEGORIES; c++) {
+                if (dayCategoryCents[day][c] != 0) {
+                    entryCategory[entry] = (byte) c;
+                    entryCents[entry++] = dayCategoryCents[day][c];
+                }
+            }
+        }
+        int[][] samplesByDayOfWeek = new int[7][];
+        for (int dow = 0; dow < 7; dow++) {
+            samplesByDayOfWeek[dow] = new int[dayOfWeekCounts[dow]];
+            dayOfWeekCounts[dow] = 0;
+        }
+        for (int day = 0; day < sampleDays; day++) {
+            int dow = dayOfWeek(poolStart + day);
+            samplesByDayOfWeek[dow][dayOfWeekCounts[dow]++] = day;
+        }
+
+        long[][] expenseDays = new long[CATEGORIES][];
+        long[][] expenseRunningTotals = new long[CATEGORIES][];
+        for (int c = 0; c < CATEGORIES; c++) {
+            List<Transaction> expenses = expensesByCategory.get(c);
+            expenses.sort(Comparator.comparing(Transaction::getTransactionDate));
+            long[] days = new long[expenses.size()];
+            long[] totals = new long[expenses.size()];
+            int n = 0;
+            long total = 0;
+            for (Transaction expense : expenses) {
+                long day = expense.getTransactionDate().toEpochDay();
+                total += Money.cents(expense.getAmount());
+                if (n > 0 && days[n - 1] == day) {
+                    totals[n - 1] = total;
+                } else {
+                    days[n] = day;
+                    totals[n++] = total;
+                }
+            }
+            expenseDays[c] = Arrays.copyOf(days, n);
+            expenseRunningTotals[c] = Arrays.copyOf(totals, n);
+        }
+
+        return new CashFlowProfile(today, balanceCents, sampleDays, sampleOffsets, entryCategory, entryCents,
+                samplesByDayOfWeek, List.copyOf(recurring), expenseDays, expenseRunningTotals);
+    }
+
+    // Groups by type, category and merchant (or description), keeps the groups that repeat on a cadence
+    private static List<RecurringPattern> findRecurring(List<Transaction> transactions, LocalDate today,
+                                                        Set<Transaction> inPatterns) {
+        Map<String, List<Transaction>> series = new HashMap<>();
+        for (Transaction transaction : transactions) {
+            if (isScheduledPurchase(transaction)) {
+                continue;
+            }
+            String payee = transaction.getMerchant() != null && !transaction.getMerchant().isBlank()
+                    ? transaction.getMerchant() : transaction.getDescription();
+            String key = transaction.getType() + "|" + transaction.getCategory() + "|"
+                    + (payee == null ? "" : payee.trim().toLowerCase(Locale.ROOT));
+            series.computeIfAbsent(key, k -> new ArrayList<>()).add(transaction);
+        }
+
+        List<RecurringPattern> patterns = new ArrayList<>();
+        for (List<Transaction> members : series.values()) {
+            if (members.size() < MIN_OCCURRENCES) {
+                continue;
+            }
+            members.sort(Comparator.comparing(Transaction::getTransactionDate));
+            long[] intervals = new long[members.size() - 1];
+            for (int i = 1; i < members.size(); i++) {
+                intervals[i - 1] = members.get(i).getTransactionDate().toEpochDay()
+                        - members.get(i - 1).getTransactionDate().toEpochDay();
+            }
+            long[] sorted = intervals.clone();
+            Arrays.sort(sorted);
+            // Several on one day is a habit, not a schedule
+            if (sorted[0] == 0) {
+                continue;
+            }
+            RecurringPattern.Cadence cadence = RecurringPattern.Cadence.of(sorted[sorted.length / 2]);
+            if (cadence == null) {
+                continue;
+            }
+            int fitting = 0;
+            for (long interval : intervals) {
+                fitting += cadence.fits(interval) ? 1 : 0;
+            }
+            if (fitting < MIN_REGULARITY * intervals.length) {
+                continue;
+            }
+            long[] amounts = new long[members.size()];
+            int[] daysOfMonth = new int[members.size()];
+            for (int i = 0; i < members.size(); i++) {
+                amounts[i] = signedCents(members.get(i));
+                daysOfMonth[i] = members.get(i).getTransactionDate().getDayOfMonth();
+            }
+            Arrays.sort(daysOfMonth);
+            Transaction last = members.get(members.size() - 1);
+            RecurringPattern pattern = new RecurringPattern(cadence, last.getTransactionDate(),
+                    daysOfMonth[daysOfMonth.length / 2], last.getCategory().ordinal(), amounts);
+            if (pattern.isCurrent(today)) {
+                patterns.add(pattern);
+                inPatterns.addAll(members);
+            }
+        }
+        return patterns;
+    }
+
+    public LocalDate getBuiltOn() { return builtOn; }
+    public long getBalanceCents() { return balanceCents; }
+    public int getSampleDays() { return sampleDays; }
+    List<RecurringPattern> getRecurring() { return recurring; }
+
+    int[] getSampleOffsets() { return sampleOffsets; }
+    byte[] getEntryCategory() { return entryCategory; }
+    long[] getEntryCents() { return entryCents; }
+
+    // Past days to sample a day of the given DayOfWeek.getValue() - 1 from; empty without history
+    int[] samplesFor(int dayOfWeek) {
+        int[] samples = samplesByDayOfWeek[dayOfWeek];
+        if (samples.length == 0 && sampleDays > 0) {
+            // Less than a week of history: any past day will have to do
+            int[] all = new int[sampleDays];
+            Arrays.setAll(all, i -> i);
+            return all;
+        }
+        return samples;
+    }
+
+    // Cents spent in the category over [from, to]; only as far back as the history the profile was built from
+    long expensesBetween(int category, LocalDate from, LocalDate to) {
+        return runningTotalThrough(category, to.toEpochDay()) - runningTotalThrough(category, from.toEpochDay() - 1);
+    }
+
+    private long runningTotalThrough(int category, long epochDay) {
+        int index = Arrays.binarySearch(expenseDays[category], epochDay);
+        if (index < 0) {
+            index = -index - 2;
+        }
+        return index < 0 ? 0 : expenseRunningTotals[category][index];
+    }
+
+    static int dayOfWeek(long epochDay) {
+        // 1970-01-01 was a Thursday
+        return (int) Math.floorMod(epochDay + 3, 7L);
+    }
+
+    private static long signedCents(Transaction transaction) {
+        long cents = Money.cents(transaction.getAmount());
+        return transaction.getType() == Transaction.TransactionType.INCOME ? cents : -cents;
+    }
+
+    private static boolean isScheduledPurchase(Transaction transaction) {
+        return transaction.getIdempotencyKey() != null
+                && transaction.getIdempotencyKey().startsWith(SCHEDULED_PURCHASE_KEY_PREFIX);
+    }
+}
@@ -0,0 +1,235 @@
+package com.personalfinance.transaction.forecast;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.client.RestClientException;
+
+import com.personalfinance.transaction.cache.UserCache;
+import com.personalfinance.transaction.client.BudgetClient;
+import com.personalfinance.transaction.client.BudgetLimit;
+import com.personalfinance.transaction.client.ScheduledOccurrence;
+import com.personalfinance.transaction.client.ScheduledPurchaseClient;
+import com.personalfinance.transaction.dto.ForecastResponse;
+import com.personalfinance.transaction.model.Money;
+import com.personalfinance.transaction.model.Transaction;
+import com.personalfinance.transaction.repository.TransactionRepository;
+import com.personalfinance.transaction.service.TransactionsChangedEvent;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Cash-flow forecasts: a user's history, their scheduled purchases and their
+ * budgets, run through {@link MonteCarloForecaster}.
+ *
+ * Reading and digesting the history is most of the cost, so each user's
+ * {@link CashFlowProfile} is kept in a {@link UserCache} until one of their
+ * transactions changes, the day rolls over or {@code profile-ttl-ms} passes.
+ * Budgets and scheduled purchases live in other services and are re-read
+ * every {@code remote-ttl-ms}. A forecast from cached
+ * inputs is then only the simulation.
+ */
+@Service
+public class ForecastService {
+    private static final Logger logger = LoggerFactory.getLogger(ForecastService.class);
+
+    private final TransactionRepository transactionRepository;
+    private final BudgetClient budgetClient;
+    private final ScheduledPurchaseClient scheduledPurchaseClient;
+    private final MonteCarloForecaster forecaster;
+    private final int historyDays;
+    private final int defaultPaths;
+    private final int maxPaths;
+    private final int maxDays;
+    // Each running forecast holds days x paths balances
+    private final Semaphore simulations;
+
+    private final UserCache<CashFlowProfile> profiles;
+    private final UserCache<RemoteInputs> remoteInputs;
+    private final Timer timer;
+
+    public ForecastService(TransactionRepository transactionRepository,
+                           BudgetClient budgetClient,
+                           ScheduledPurchaseClient scheduledPurchaseClient,
+                           MeterRegistry meterRegistry,
+                           @Value("${forecast.history-days:365}") int historyDays,
+                           @Value("${forecast.default-paths:1000}") int defaultPaths,
+                           @Value("${forecast.max-paths:5000}") int maxPaths,
+                           @Value("${forecast.max-days:365}") int maxDays,
+                           @Value("${forecast.parallelism:2}") int parallelism,
+                           @Value("${forecast.max-concurrent:4}") int maxConcurrent,
+                           @Value("${forecast.profile-cache-size:10000}") int profileCacheSize,
+                           @Value("${forecast.profile-ttl-ms:900000}") long profileTtlMillis,
+                           @Value("${forecast.remote-ttl-ms:60000}") long remoteTtlMillis) {
+        this.transactionRepository = transactionRepository;
+        this.budgetClient = budgetClient;
+        this.scheduledPurchaseClient = scheduledPurchaseClient;
+        this.forecaster = new MonteCarloForecaster(parallelism);
+        this.historyDays = historyDays;
+        this.defaultPaths = defaultPaths;
+        this.maxPaths = maxPaths;
+        this.maxDays = maxDays;
+        this.simulations = new Semaphore(Math.max(1, maxConcurrent));
+        this.profiles = UserCache.ofSize(profileCacheSize, profileTtlMillis);
+        this.remoteInputs = UserCache.ofSize(profileCacheSize, remoteTtlMillis);
+        this.timer = Timer.builder("forecast.duration").register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void stop() {
+        forecaster.shutdown();
+    }
+
+    /**
+     * Forecasts the user's balance at the end of each of the next {@code days}
+     * days from {@code paths} simulated paths (the configured default if null),
+     * starting from {@code startingBalance} or, if null, income minus expenses
+     * so far. The same inputs on the same day give the same forecast.
+     */
+    public ForecastResponse forecast(Long userId, int days, Integer paths, BigDecimal startingBalance) {
+        int pathCount = paths != null ? paths : defaultPaths;
+        if (days < 1 || days > maxDays) {
+            throw new IllegalArgumentException("days must be between 1 and " + maxDays);
+        }
+        if (pathCount < 1 || pathCount > maxPaths) {
+            throw new IllegalArgumentException("paths must be between 1 and " + maxPaths);
+        }
+        long started = System.nanoTime();
+        LocalDateTime now = LocalDateTime.now();
+        CashFlowProfile profile = profile(userId, now.toLocalDate());
+        RemoteInputs inputs = remoteInputs(userId, now);
+        long startingCents = startingBalance != null ? Money.cents(startingBalance) : profile.getBalanceCents();
+        long seed = userId * 0x9E3779B97F4A7C15L + now.toLocalDate().toEpochDay();
+
+        MonteCarloForecaster.Forecast forecast;
+        simulations.acquireUninterruptibly();
+        try {
+            forecast = forecaster.run(profile, inputs.budgets, inputs.occurrences, now, days, pathCount, startingCents, seed);
+        } finally {
+            simulations.release();
+        }
+
+        ForecastResponse response = toResponse(userId, startingCents, forecast, inputs.warnings);
+        long elapsed = System.nanoTime() - started;
+        timer.record(elapsed, TimeUnit.NANOSECONDS);
+        logger.info("[forecast] userId={}, days={}, paths={}, sampleDays={}, recurring={}, scheduled={}, caps={} in {} ms",
+                userId, days, pathCount, profile.getSampleDays(), forecast.getRecurringPatterns(),
+                forecast.getScheduledOccurrences(), forecast.getBudgetCaps(), TimeUnit.NANOSECONDS.toMillis(elapsed));
+        return response;
+    }
+
+    // Runs after the write commits, so a profile rebuilt right away already sees it
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onTransactionsChanged(TransactionsChangedEvent event) {
+        profiles.invalidate(event.getUserId());
+    }
+
+    private CashFlowProfile profile(Long userId, LocalDate today) {
+        // Read before the history: a write landing mid-build leaves the entry already stale
+        long generation = profiles.generation(userId);
+        CashFlowProfile cached = profiles.getIfPresent(userId);
+        if (cached != null && cached.getBuiltOn().equals(today)) {
+            return cached;
+        }
+        long started = System.nanoTime();
+        List<Transaction> history = transactionRepository.findByUserIdAndTransactionDateGreaterThanEqual(
+                userId, today.minusDays(historyDays));
+        long balanceCents = cents(transactionRepository.getTotalAmountByUserIdAndType(userId, Transaction.TransactionType.INCOME))
+                - cents(transactionRepository.getTotalAmountByUserIdAndType(userId, Transaction.TransactionType.EXPENSE));
+        CashFlowProfile profile = CashFlowProfile.build(history, balanceCents, today, historyDays);
+        profiles.put(userId, profile, generation);
+        logger.debug("[profile] Built cash-flow profile for userId={} from {} transactions in {} ms",
+                userId, history.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        return profile;
+    }
+
+    // An unreachable service is cached like an answer, so forecasts don't each wait out its timeout
+    private RemoteInputs remoteInputs(Long userId, LocalDateTime now) {
+        return remoteInputs.get(userId, id -> loadRemoteInputs(id, now));
+    }
+
+    private RemoteInputs loadRemoteInputs(Long userId, LocalDateTime now) {
+        List<String> warnings = new ArrayList<>();
+        List<BudgetLimit> budgets;
+        try {
+            budgets = budgetClient.getBudgets(userId);
+        } catch (RestClientException e) {
+            logger.warn("[remoteInputs] Could not read budgets for userId={}: {}", userId, e.getMessage());
+            warnings.add("Budgets unavailable; spending is not capped");
+            budgets = List.of();
+        }
+        List<ScheduledOccurrence> occurrences;
+        try {
+            // Far enough for the longest forecast made any time before this entry expires
+            LocalDateTime to = now.toLocalDate().plusDays(maxDays + 2L).atStartOfDay();
+            occurrences = scheduledPurchaseClient.getOccurrences(userId, now.truncatedTo(ChronoUnit.SECONDS), to);
+            if (occurrences.size() >= ScheduledPurchaseClient.MAX_OCCURRENCES) {
+                warnings.add("Too many scheduled purchase occurrences; only the first "
+                        + ScheduledPurchaseClient.MAX_OCCURRENCES + " are included");
+            }
+        } catch (RestClientException e) {
+            logger.warn("[remoteInputs] Could not read scheduled purchases for userId={}: {}", userId, e.getMessage());
+            warnings.add("Scheduled purchases unavailable; they are not included");
+            occurrences = List.of();
+        }
+        return new RemoteInputs(budgets, occurrences, List.copyOf(warnings));
+    }
+
+    private static ForecastResponse toResponse(Long userId, long startingCents, MonteCarloForecaster.Forecast forecast,
+                                               List<String> warnings) {
+        List<ForecastResponse.Point> points = new ArrayList<>(forecast.getDays());
+        for (int day = 0; day < forecast.getDays(); day++) {
+            ForecastResponse.Point point = new ForecastResponse.Point();
+            point.setDate(forecast.getStart().plusDays(day));
+            point.setMean(Money.toDecimal(forecast.getMean(day)));
+            point.setP10(Money.toDecimal(forecast.getP10(day)));
+            point.setP25(Money.toDecimal(forecast.getP25(day)));
+            point.setP50(Money.toDecimal(forecast.getP50(day)));
+            point.setP75(Money.toDecimal(forecast.getP75(day)));
+            point.setP90(Money.toDecimal(forecast.getP90(day)));
+            point.setProbabilityNegative(forecast.getProbabilityNegative(day));
+            points.add(point);
+        }
+        ForecastResponse response = new ForecastResponse();
+        response.setUserId(userId);
+        response.setStartingBalance(Money.toDecimal(startingCents));
+        response.setDays(forecast.getDays());
+        response.setPaths(forecast.getPaths());
+        response.setRecurringPatterns(forecast.getRecurringPatterns());
+        response.setScheduledOccurrences(forecast.getScheduledOccurrences());
+        response.setBudgetCaps(forecast.getBudgetCaps());
+        response.setWarnings(warnings);
+        response.setPoints(points);
+        return response;
+    }
+
+    private static long cents(BigDecimal amount) {
+        return amount != null ? Money.cents(amount) : 0;
+    }
+
+    private static final class RemoteInputs {
+        final List<BudgetLimit> budgets;
+        final List<ScheduledOccurrence> occurrences;
+        final List<String> warnings;
+
+        RemoteInputs(List<BudgetLimit> budgets, List<ScheduledOccurrence> occurrences, List<String> warnings) {
+            this.budgets = budgets;
+            this.occurrences = occurrences;
+            this.warnings = warnings;
+        }
+    }
+}
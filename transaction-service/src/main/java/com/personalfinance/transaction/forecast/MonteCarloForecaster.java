@@ -0,0 +1,390 @@
+package com.personalfinance.transaction.forecast;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+
+import com.personalfinance.transaction.client.BudgetLimit;
+import com.personalfinance.transaction.client.ScheduledOccurrence;
+import com.personalfinance.transaction.model.Money;
+import com.personalfinance.transaction.model.Transaction;
+
+/**
+ * Simulates many possible futures of a user's balance and summarises them
+ * day by day. Each path walks the horizon one day at a time and adds:
+ *
+ * - the scheduled purchases due that day, as they are;
+ * - the recurring patterns due that day, each at the amount of a random past occurrence;
+ * - a random past day of the same weekday, for everything unplanned, with its
+ *   expenses trimmed to what is left of any budget capping their category
+ *   (planned spending is not trimmed, but does use the budget up).
+ *
+ * Paths are split over a dedicated fork-join pool, so forecasts never take
+ * more than its parallelism in cores. Every path has its own random stream
+ * derived from the seed and its index, so the result does not depend on how
+ * the work was split.
+ */
+public class MonteCarloForecaster {
+
+    private static final int PATHS_PER_TASK = 128;
+    private static final int DAYS_PER_TASK = 8;
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+    // Budgets inactive on a day, or not capping at all
+    private static final int NO_PERIOD = -1;
+    private static final Set<Transaction.Category> INCOME_CATEGORIES = EnumSet.of(
+            Transaction.Category.SALARY, Transaction.Category.BONUS, Transaction.Category.INVESTMENT,
+            Transaction.Category.BUSINESS, Transaction.Category.OTHER_INCOME);
+
+    private final ForkJoinPool pool;
+
+    public MonteCarloForecaster(int parallelism) {
+        this.pool = new ForkJoinPool(Math.max(1, parallelism), pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("forecast-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Forecasts the end-of-day balance for each of the {@code days} days after
+     * the day of {@code now}. Scheduled occurrences due before {@code now} are
+     * ignored; those due later today are booked on the first day.
+     */
+    public Forecast run(CashFlowProfile profile, List<BudgetLimit> budgets, List<ScheduledOccurrence> scheduled,
+                        LocalDateTime now, int days, int paths, long startingCents, long seed) {
+        Plan plan = new Plan(profile, budgets, scheduled, now, days, startingCents, seed);
+        long[][] balances = new long[days][paths];
+        pool.invoke(new RangeTask(0, paths, PATHS_PER_TASK, (from, to) -> plan.simulate(from, to, balances)));
+
+        Forecast forecast = new Forecast(plan.start, days, paths, plan.recurringCount, plan.scheduledCount, plan.capCount);
+        pool.invoke(new RangeTask(0, days, DAYS_PER_TASK, (from, to) -> {
+            for (int day = from; day < to; day++) {
+                forecast.summarise(day, balances[day]);
+            }
+        }));
+        return forecast;
+    }
+
+    // Everything the paths share, resolved to day indexes once per forecast
+    private static final class Plan {
+        final LocalDate start;
+        final int days;
+        final long startingCents;
+        final long seed;
+        final int[] sampleOffsets;
+        final byte[] entryCategory;
+        final long[] entryCents;
+        // Sample pool for each forecast day
+        final int[][] poolForDay;
+        // Scheduled purchases due each day
+        final long[] scheduledCents;
+        // Recurring occurrences on day d: patterns recurringOnDay[recurringStart[d] .. recurringStart[d + 1])
+        final int[] recurringStart;
+        final long[][] recurringOnDay;
+        final int[] recurringCategoryOnDay;
+        final int recurringCount;
+        final int scheduledCount;
+        // Budget caps: limit, current period per day (NO_PERIOD if inactive), period and spend for today
+        final int capCount;
+        final long[] capLimit;
+        final int[][] capPeriod;
+        final int[] capPeriodToday;
+        final long[] capSpentToday;
+        final long[][] capScheduled;
+        // Caps by category ordinal; empty for uncapped categories
+        final int[][] capsByCategory;
+
+        Plan(CashFlowProfile profile, List<BudgetLimit> budgets, List<ScheduledOccurrence> scheduled,
+             LocalDateTime now, int days, long startingCents, long seed) {
+            LocalDate today = now.toLocalDate();
+            this.start = today.plusDays(1);
+            this.days = days;
+            this.startingCents = startingCents;
+            this.seed = seed;
+            this.sampleOffsets = profile.getSampleOffsets();
+            this.entryCategory = profile.getEntryCategory();
+            this.entryCents = profile.getEntryCents();
+            LocalDate end = today.plusDays(days);
+
+            poolForDay = new int[days][];
+            for (int day = 0; day < days; day++) {
+                poolForDay[day] = profile.samplesFor(CashFlowProfile.dayOfWeek(start.toEpochDay() + day));
+            }
+
+            List<BudgetLimit> caps = new ArrayList<>();
+            List<Integer> capCategories = new ArrayList<>();
+            for (BudgetLimit budget : budgets) {
+                Transaction.Category category = Transaction.Category.parse(budget.getCategory());
+                if (category != null && !isIncome(category) && budget.getAmount() != null && budget.getAmount().signum() >= 0
+                        && period(budget.getPeriod(), today) != NO_PERIOD) {
+                    caps.add(budget);
+                    capCategories.add(category.ordinal());
+                }
+            }
+            capCount = caps.size();
+            capLimit = new long[capCount];
+            capPeriod = new int[capCount][days];
+            capPeriodToday = new int[capCount];
+            capSpentToday = new long[capCount];
+            capScheduled = new long[capCount][days];
+            int[] capsPerCategory = new int[CashFlowProfile.CATEGORIES];
+            for (int cap = 0; cap < capCount; cap++) {
+                BudgetLimit budget = caps.get(cap);
+                capLimit[cap] = Money.cents(budget.getAmount());
+                capPeriodToday[cap] = activePeriod(budget, today);
+                for (int day = 0; day < days; day++) {
+                    capPeriod[cap][day] = activePeriod(budget, start.plusDays(day));
+                }
+                if (capPeriodToday[cap] != NO_PERIOD) {
+                    capSpentToday[cap] = profile.expensesBetween(capCategories.get(cap), budget.periodStart(today), today);
+                }
+                capsPerCategory[capCategories.get(cap)]++;
+            }
+            capsByCategory = new int[CashFlowProfile.CATEGORIES][];
+            for (int c = 0; c < CashFlowProfile.CATEGORIES; c++) {
+                capsByCategory[c] = new int[capsPerCategory[c]];
+                capsPerCategory[c] = 0;
+            }
+            for (int cap = 0; cap < capCount; cap++) {
+                int c = capCategories.get(cap);
+                capsByCategory[c][capsPerCategory[c]++] = cap;
+            }
+
+            scheduledCents = new long[days];
+            int scheduledSeen = 0;
+            for (ScheduledOccurrence occurrence : scheduled) {
+                if (occurrence.getDueAt() == null || occurrence.getAmount() == null || occurrence.getDueAt().isBefore(now)) {
+                    continue;
+                }
+                LocalDate due = occurrence.getDueAt().toLocalDate();
+                if (due.isAfter(end)) {
+                    continue;
+                }
+                int day = (int) Math.max(0, due.toEpochDay() - start.toEpochDay());
+                long cents = Money.cents(occurrence.getAmount());
+                scheduledCents[day] -= cents;
+                Transaction.Category category = Transaction.Category.parse(occurrence.getCategory());
+                if (category != null) {
+                    for (int cap : capsByCategory[category.ordinal()]) {
+                        capScheduled[cap][day] += cents;
+                    }
+                }
+                scheduledSeen++;
+            }
+            scheduledCount = scheduledSeen;
+
+            List<List<RecurringPattern>> recurringByDay = new ArrayList<>();
+            for (int day = 0; day < days; day++) {
+                recurringByDay.add(new ArrayList<>());
+            }
+            int occurrences = 0;
+            for (RecurringPattern pattern : profile.getRecurring()) {
+                for (LocalDate date : pattern.occurrences(today, end)) {
+                    recurringByDay.get((int) (date.toEpochDay() - start.toEpochDay())).add(pattern);
+                    occurrences++;
+                }
+            }
+            recurringStart = new int[days + 1];
+            recurringOnDay = new long[occurrences][];
+            recurringCategoryOnDay = new int[occurrences];
+            for (int day = 0, i = 0; day < days; day++) {
+                recurringStart[day] = i;
+                for (RecurringPattern pattern : recurringByDay.get(day)) {
+                    recurringOnDay[i] = pattern.getAmounts();
+                    recurringCategoryOnDay[i++] = pattern.getCategory();
+                }
+            }
+            recurringStart[days] = occurrences;
+            recurringCount = profile.getRecurring().size();
+        }
+
+        void simulate(int fromPath, int toPath, long[][] balances) {
+            long[] spent = new long[capCount];
+            for (int path = fromPath; path < toPath; path++) {
+                SplittableRandom random = new SplittableRandom(seed + path * GOLDEN_GAMMA);
+                System.arraycopy(capSpentToday, 0, spent, 0, capCount);
+                long balance = startingCents;
+                for (int day = 0; day < days; day++) {
+                    for (int cap = 0; cap < capCount; cap++) {
+                        int previous = day == 0 ? capPeriodToday[cap] : capPeriod[cap][day - 1];
+                        if (capPeriod[cap][day] != previous) {
+                            spent[cap] = 0;
+                        }
+                        spent[cap] += capScheduled[cap][day];
+                    }
+                    balance += scheduledCents[day];
+
+                    for (int i = recurringStart[day]; i < recurringStart[day + 1]; i++) {
+                        long[] amounts = recurringOnDay[i];
+                        long cents = amounts[random.nextInt(amounts.length)];
+                        balance += cents;
+                        if (cents < 0) {
+                            for (int cap : capsByCategory[recurringCategoryOnDay[i]]) {
+                                spent[cap] -= cents;
+                            }
+                        }
+                    }
+
+                    int[] samples = poolForDay[day];
+                    if (samples.length == 0) {
+                        balances[day][path] = balance;
+                        continue;
+                    }
+                    int sample = samples[random.nextInt(samples.length)];
+                    for (int entry = sampleOffsets[sample]; entry < sampleOffsets[sample + 1]; entry++) {
+                        long cents = entryCents[entry];
+                        int[] categoryCaps = capsByCategory[entryCategory[entry]];
+                        if (cents >= 0 || categoryCaps.length == 0) {
+                            balance += cents;
+                            continue;
+                        }
+                        long spend = -cents;
+                        for (int cap : categoryCaps) {
+                            if (capPeriod[cap][day] != NO_PERIOD) {
+                                spend = Math.min(spend, Math.max(0, capLimit[cap] - spent[cap]));
+                            }
+                        }
+                        for (int cap : categoryCaps) {
+                            spent[cap] += spend;
+                        }
+                        balance -= spend;
+                    }
+                    balances[day][path] = balance;
+                }
+            }
+        }
+
+        // The budget's period containing date as a comparable number, or NO_PERIOD outside its dates
+        private static int activePeriod(BudgetLimit budget, LocalDate date) {
+            if ((budget.getStartDate() != null && date.isBefore(budget.getStartDate()))
+                    || (budget.getEndDate() != null && date.isAfter(budget.getEndDate()))) {
+                return NO_PERIOD;
+            }
+            return period(budget.getPeriod(), date);
+        }
+
+        private static int period(String period, LocalDate date) {
+            if (period == null) {
+                return NO_PERIOD;
+            }
+            switch (period) {
+                case "WEEKLY": return (int) date.with(DayOfWeek.MONDAY).toEpochDay();
+                case "MONTHLY": return date.getYear() * 12 + date.getMonthValue();
+                case "YEARLY": return date.getYear();
+                default: return NO_PERIOD;
+            }
+        }
+
+        private static boolean isIncome(Transaction.Category category) {
+            return INCOME_CATEGORIES.contains(category);
+        }
+    }
+
+    /**
+     * Per-day distribution of the simulated balances, in cents: the mean,
+     * the 10th/25th/50th/75th/90th percentiles (the 50% and 80% bands around
+     * the median) and the share of paths below zero.
+     */
+    public static final class Forecast {
+        private final LocalDate start;
+        private final int days;
+        private final int paths;
+        private final int recurringPatterns;
+        private final int scheduledOccurrences;
+        private final int budgetCaps;
+        private final long[] mean;
+        private final long[][] percentiles;
+        private final double[] probabilityNegative;
+
+        static final int[] PERCENTILES = {10, 25, 50, 75, 90};
+
+        Forecast(LocalDate start, int days, int paths, int recurringPatterns, int scheduledOccurrences, int budgetCaps) {
+            this.start = start;
+            this.days = days;
+            this.paths = paths;
+            this.recurringPatterns = recurringPatterns;
+            this.scheduledOccurrences = scheduledOccurrences;
+            this.budgetCaps = budgetCaps;
+            this.mean = new long[days];
+            this.percentiles = new long[PERCENTILES.length][days];
+            this.probabilityNegative = new double[days];
+        }
+
+        // Sorts the day's balances in place
+        void summarise(int day, long[] balances) {
+            Arrays.sort(balances);
+            long sum = 0;
+            for (long balance : balances) {
+                sum += balance;
+            }
+            mean[day] = Math.round((double) sum / balances.length);
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                // Nearest rank
+                int rank = (int) Math.ceil(PERCENTILES[i] / 100.0 * balances.length);
+                percentiles[i][day] = balances[Math.max(0, rank - 1)];
+            }
+            int negative = 0;
+            while (negative < balances.length && balances[negative] < 0) {
+                negative++;
+            }
+            probabilityNegative[day] = (double) negative / balances.length;
+        }
+
+        public LocalDate getStart() { return start; }
+        public int getDays() { return days; }
+        public int getPaths() { return paths; }
+        public int getRecurringPatterns() { return recurringPatterns; }
+        public int getScheduledOccurrences() { return scheduledOccurrences; }
+        public int getBudgetCaps() { return budgetCaps; }
+        public long getMean(int day) { return mean[day]; }
+        public long getP10(int day) { return percentiles[0][day]; }
+        public long getP25(int day) { return percentiles[1][day]; }
+        public long getP50(int day) { return percentiles[2][day]; }
+        public long getP75(int day) { return percentiles[3][day]; }
+        public long getP90(int day) { return percentiles[4][day]; }
+        public double getProbabilityNegative(int day) { return probabilityNegative[day]; }
+    }
+
+    @FunctionalInterface
+    private interface RangeBody {
+        void run(int from, int to);
+    }
+
+    // Halves [from, to) until a piece is at most threshold long
+    private static final class RangeTask extends RecursiveAction {
+        private final int from;
+        private final int to;
+        private final int threshold;
+        private final RangeBody body;
+
+        RangeTask(int from, int to, int threshold, RangeBody body) {
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+            this.body = body;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= threshold) {
+                body.run(from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new RangeTask(from, middle, threshold, body), new RangeTask(middle, to, threshold, body));
+        }
+    }
+}
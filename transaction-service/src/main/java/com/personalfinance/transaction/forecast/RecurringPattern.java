@@ -0,0 +1,92 @@
+package com.personalfinance.transaction.forecast;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A series in a user's history that repeats on a fixed cadence (salary,
+ * rent, subscriptions). Projected forward from its last occurrence; each
+ * projected occurrence takes the amount of a random past one.
+ */
+final class RecurringPattern {
+
+    enum Cadence {
+        WEEKLY(7, 1), FORTNIGHTLY(14, 2), MONTHLY(30, 3);
+
+        final int days;
+        // How far an interval may drift from the cadence and still count
+        final int tolerance;
+
+        Cadence(int days, int tolerance) {
+            this.days = days;
+            this.tolerance = tolerance;
+        }
+
+        boolean fits(long interval) {
+            int low = this == MONTHLY ? 28 - tolerance : days - tolerance;
+            int high = this == MONTHLY ? 31 + tolerance : days + tolerance;
+            return interval >= low && interval <= high;
+        }
+
+        static Cadence of(long medianInterval) {
+            for (Cadence cadence : values()) {
+                if (cadence.fits(medianInterval)) {
+                    return cadence;
+                }
+            }
+            return null;
+        }
+    }
+
+    private final Cadence cadence;
+    private final LocalDate last;
+    // Monthly only; clamped to short months
+    private final int dayOfMonth;
+    private final int category;
+    // Signed cents of past occurrences: income positive, expenses negative
+    private final long[] amounts;
+
+    RecurringPattern(Cadence cadence, LocalDate last, int dayOfMonth, int category, long[] amounts) {
+        this.cadence = cadence;
+        this.last = last;
+        this.dayOfMonth = dayOfMonth;
+        this.category = category;
+        this.amounts = amounts;
+    }
+
+    Cadence getCadence() { return cadence; }
+    LocalDate getLast() { return last; }
+    int getCategory() { return category; }
+    long[] getAmounts() { return amounts; }
+
+    // False once the next expected occurrence is overdue, i.e. the series has probably stopped
+    boolean isCurrent(LocalDate today) {
+        LocalDate expected = cadence == Cadence.MONTHLY ? last.plusMonths(1) : last.plusDays(cadence.days);
+        return !expected.plusDays(cadence.tolerance).isBefore(today);
+    }
+
+    // Projected dates in (after, until], earliest first
+    List<LocalDate> occurrences(LocalDate after, LocalDate until) {
+        List<LocalDate> dates = new ArrayList<>();
+        if (cadence == Cadence.MONTHLY) {
+            for (YearMonth month = YearMonth.from(last).plusMonths(1); ; month = month.plusMonths(1)) {
+                LocalDate date = month.atDay(Math.min(dayOfMonth, month.lengthOfMonth()));
+                if (date.isAfter(until)) {
+                    break;
+                }
+                if (date.isAfter(after)) {
+                    dates.add(date);
+                }
+            }
+        } else {
+            for (LocalDate date = last.plusDays(cadence.days); !date.isAfter(until); date = date.plusDays(cadence.days)) {
+                if (date.isAfter(after)) {
+                    dates.add(date);
+                }
+            }
+        }
+        return dates;
+    }
+}
@@ -0,0 +1,54 @@
+package com.personalfinance.transaction.model;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+
+/**
+ * A user's income and expense cents on one day, kept up to date by adding
+ * each write's change to it rather than rewriting the user's whole history,
+ * so writes on different days don't wait for each other. Transactions
+ * without a usable date share one row (see the balance package). Days with
+ * nothing have no row.
+ */
+@Entity
+@Table(name = "balance_index_days", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_balance_index_days_user_day", columnNames = {"user_id", "epoch_day"})})
+public class BalanceDay {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "epoch_day", nullable = false)
+    private int epochDay;
+
+    @Column(name = "income_cents", nullable = false)
+    private long incomeCents;
+
+    @Column(name = "expense_cents", nullable = false)
+    private long expenseCents;
+
+    // Getters and Setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public Long getUserId() { return userId; }
+    public void setUserId(Long userId) { this.userId = userId; }
+
+    public int getEpochDay() { return epochDay; }
+    public void setEpochDay(int epochDay) { this.epochDay = epochDay; }
+
+    public long getIncomeCents() { return incomeCents; }
+    public void setIncomeCents(long incomeCents) { this.incomeCents = incomeCents; }
+
+    public long getExpenseCents() { return expenseCents; }
+    public void setExpenseCents(long expenseCents) { this.expenseCents = expenseCents; }
+}
@@ -0,0 +1,32 @@
+package com.personalfinance.transaction.model;
+
+import java.time.LocalDateTime;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * Marks a user whose {@link BalanceDay} rows have been built from their
+ * transactions and are kept in step by every write since. Writes for the
+ * user share-lock it, so the rows can't be dropped or rebuilt under them.
+ */
+@Entity
+@Table(name = "balance_index_users")
+public class BalanceIndex {
+
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Column(name = "built_at")
+    private LocalDateTime builtAt;
+
+    // Getters and Setters
+    public Long getUserId() { return userId; }
+    public void setUserId(Long userId) { this.userId = userId; }
+
+    public LocalDateTime getBuiltAt() { return builtAt; }
+    public void setBuiltAt(LocalDateTime builtAt) { this.builtAt = builtAt; }
+}
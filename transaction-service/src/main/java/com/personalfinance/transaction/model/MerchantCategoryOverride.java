@@ -0,0 +1,57 @@
+package com.personalfinance.transaction.model;
+
+import java.time.LocalDateTime;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+
+/**
+ * The category a user gave a merchant where it differed from the one the
+ * categoriser picked, keyed by the merchant's normalised name; later
+ * transactions from the merchant get the user's category.
+ */
+@Entity
+@Table(name = "merchant_category_overrides", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_merchant_category_overrides_user_merchant", columnNames = {"user_id", "merchant_key"})})
+public class MerchantCategoryOverride {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "merchant_key", nullable = false)
+    private String merchantKey;
+
+    @Enumerated(EnumType.STRING)
+    @Column(length = 50, nullable = false)
+    private Transaction.Category category;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    // Getters and Setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public Long getUserId() { return userId; }
+    public void setUserId(Long userId) { this.userId = userId; }
+
+    public String getMerchantKey() { return merchantKey; }
+    public void setMerchantKey(String merchantKey) { this.merchantKey = merchantKey; }
+
+    public Transaction.Category getCategory() { return category; }
+    public void setCategory(Transaction.Category category) { this.category = category; }
+
+    public LocalDateTime getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(LocalDateTime updatedAt) { this.updatedAt = updatedAt; }
+}
@@ -0,0 +1,63 @@
+package com.personalfinance.transaction.model;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Amounts as a long count of minor units (cents at the column's scale of 2),
+ * for sums and ratios on hot paths: adding longs allocates nothing, where
+ * every BigDecimal.add makes a new object. Convert with {@link #cents} on the
+ * way in and {@link #toDecimal} at the API boundary. Any amount the
+ * {@code precision = 15, scale = 2} column can hold is exact; a sum that
+ * would overflow a long throws rather than wrapping.
+ */
+public final class Money {
+
+    public static final int SCALE = 2;
+
+    private static final long PERCENT_SCALE_FACTOR = 10_000;
+
+    private Money() {}
+
+    // Rounds half up beyond two decimals, as storing the amount would
+    public static long cents(BigDecimal amount) {
+        return amount.setScale(SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    public static BigDecimal toDecimal(long cents) {
+        return BigDecimal.valueOf(cents, SCALE);
+    }
+
+    public static long add(long cents, long more) {
+        return Math.addExact(cents, more);
+    }
+
+    public static long subtract(long cents, long less) {
+        return Math.subtractExact(cents, less);
+    }
+
+    /**
+     * {@code part} as a percentage of {@code whole} with 4 decimals, equal to
+     * {@code part.divide(whole, 4, HALF_UP).multiply(100)} on the decimal
+     * amounts: the ratio is rounded to 4 places first, so 18.52% comes out
+     * as 18.5200.
+     */
+    public static BigDecimal percent(long part, long whole) {
+        if (whole == 0) {
+            throw new ArithmeticException("Division by zero");
+        }
+        try {
+            long scaled = Math.multiplyExact(part, PERCENT_SCALE_FACTOR);
+            long quotient = scaled / whole;
+            long remainder = Math.abs(scaled % whole);
+            // Half up rounds ties away from zero; comparing with |whole| - remainder avoids doubling it
+            if (remainder != 0 && remainder >= Math.abs(whole) - remainder) {
+                quotient += (scaled < 0) == (whole < 0) ? 1 : -1;
+            }
+            return BigDecimal.valueOf(Math.multiplyExact(quotient, 100), 4);
+        } catch (ArithmeticException e) {
+            // Ratios too large for a long, far beyond anything a balance produces
+            return toDecimal(part).divide(toDecimal(whole), 4, RoundingMode.HALF_UP).multiply(BigDecimal.valueOf(100));
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.personalfinance.transaction.model;
+
+import java.time.LocalDate;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+
+/**
+ * What one user spent in one category in one calendar month, kept up to
+ * date from their transactions; peer benchmarks rank users by it without
+ * summing everyone's transactions. Months with nothing spent have no row.
+ */
+@Entity
+@Table(name = "monthly_spending", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_monthly_spending_user_month_category", columnNames = {"user_id", "`month`", "category"})})
+public class MonthlySpending {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    // First day of the month. Quoted because H2 reserves the word
+    @Column(name = "`month`", nullable = false)
+    private LocalDate month;
+
+    @Enumerated(EnumType.STRING)
+    @Column(length = 50, nullable = false)
+    private Transaction.Category category;
+
+    @Column(name = "amount_cents", nullable = false)
+    private long amountCents;
+
+    // Getters and Setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public Long getUserId() { return userId; }
+    public void setUserId(Long userId) { this.userId = userId; }
+
+    public LocalDate getMonth() { return month; }
+    public void setMonth(LocalDate month) { this.month = month; }
+
+    public Transaction.Category getCategory() { return category; }
+    public void setCategory(Transaction.Category category) { this.category = category; }
+
+    public long getAmountCents() { return amountCents; }
+    public void setAmountCents(long amountCents) { this.amountCents = amountCents; }
+}
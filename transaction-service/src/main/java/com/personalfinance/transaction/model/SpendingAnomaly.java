@@ -0,0 +1,132 @@
+package com.personalfinance.transaction.model;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import org.hibernate.annotations.CreationTimestamp;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+/**
+ * An expense flagged as unusual when it was created: far above what the user
+ * typically spends in its category, or the one that took a budget over its
+ * limit for the period.
+ */
+@Entity
+@Table(name = "spending_anomalies", indexes = {
+        @Index(name = "idx_spending_anomalies_user_id", columnList = "user_id, id")})
+public class SpendingAnomaly {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "transaction_id")
+    private Long transactionId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(length = 20, nullable = false)
+    private Kind kind;
+
+    @Enumerated(EnumType.STRING)
+    @Column(length = 50)
+    private Transaction.Category category;
+
+    @Column(precision = 15, scale = 2)
+    private BigDecimal amount;
+
+    @Column(name = "transaction_date")
+    private LocalDate transactionDate;
+
+    // OUTLIER: the typical amount for the category and how many deviations above it this one was
+    @Column(name = "typical_amount", precision = 15, scale = 2)
+    private BigDecimal typicalAmount;
+
+    private Double deviations;
+
+    // BUDGET_BREACH: the budget's limit, its period and the spend in the period including this one
+    @Column(name = "budget_limit", precision = 15, scale = 2)
+    private BigDecimal budgetLimit;
+
+    @Column(name = "period_start")
+    private LocalDate periodStart;
+
+    @Column(name = "period_end")
+    private LocalDate periodEnd;
+
+    @Column(name = "period_spent", precision = 15, scale = 2)
+    private BigDecimal periodSpent;
+
+    @CreationTimestamp
+    private LocalDateTime detectedAt;
+
+    public SpendingAnomaly() {}
+
+    public SpendingAnomaly(Kind kind, Transaction transaction) {
+        this.kind = kind;
+        this.userId = transaction.getUserId();
+        this.transactionId = transaction.getId();
+        this.category = transaction.getCategory();
+        this.amount = transaction.getAmount();
+        this.transactionDate = transaction.getTransactionDate();
+    }
+
+    // Getters and Setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public Long getUserId() { return userId; }
+    public void setUserId(Long userId) { this.userId = userId; }
+
+    public Long getTransactionId() { return transactionId; }
+    public void setTransactionId(Long transactionId) { this.transactionId = transactionId; }
+
+    public Kind getKind() { return kind; }
+    public void setKind(Kind kind) { this.kind = kind; }
+
+    public Transaction.Category getCategory() { return category; }
+    public void setCategory(Transaction.Category category) { this.category = category; }
+
+    public BigDecimal getAmount() { return amount; }
+    public void setAmount(BigDecimal amount) { this.amount = amount; }
+
+    public LocalDate getTransactionDate() { return transactionDate; }
+    public void setTransactionDate(LocalDate transactionDate) { this.transactionDate = transactionDate; }
+
+    public BigDecimal getTypicalAmount() { return typicalAmount; }
+    public void setTypicalAmount(BigDecimal typicalAmount) { this.typicalAmount = typicalAmount; }
+
+    public Double getDeviations() { return deviations; }
+    public void setDeviations(Double deviations) { this.deviations = deviations; }
+
+    public BigDecimal getBudgetLimit() { return budgetLimit; }
+    public void setBudgetLimit(BigDecimal budgetLimit) { this.budgetLimit = budgetLimit; }
+
+    public LocalDate getPeriodStart() { return periodStart; }
+    public void setPeriodStart(LocalDate periodStart) { this.periodStart = periodStart; }
+
+    public LocalDate getPeriodEnd() { return periodEnd; }
+    public void setPeriodEnd(LocalDate periodEnd) { this.periodEnd = periodEnd; }
+
+    public BigDecimal getPeriodSpent() { return periodSpent; }
+    public void setPeriodSpent(BigDecimal periodSpent) { this.periodSpent = periodSpent; }
+
+    public LocalDateTime getDetectedAt() { return detectedAt; }
+    public void setDetectedAt(LocalDateTime detectedAt) { this.detectedAt = detectedAt; }
+
+    public enum Kind {
+        OUTLIER, BUDGET_BREACH
+    }
+}
@@ -3,6 +3,7 @@ package com.personalfinance.transaction.model;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.Locale;
 
 import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.UpdateTimestamp;
@@ -14,13 +15,20 @@ import javax.persistence.Enumerated;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
 import javax.persistence.Table;
 import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Positive;
 
 @Entity
-@Table(name = "transactions")
+// (user_id, id) lets exports page through a user's history by key instead of by offset;
+// (user_id, fingerprint) serves statement-import duplicate checks from the index alone
+@Table(name = "transactions", indexes = {
+        @Index(name = "idx_transactions_user_id", columnList = "user_id, id"),
+        @Index(name = "idx_transactions_fingerprint", columnList = "user_id, fingerprint")})
 public class Transaction {
 
     @Id
@@ -60,6 +68,13 @@ public class Transaction {
     @Column(length = 100)
     private String merchant;
 
+    // Client-chosen key that makes a create safe to retry; null for ordinary requests
+    @Column(name = "idempotency_key", length = 200, unique = true)
+    private String idempotencyKey;
+
+    // TransactionFingerprint of the row, kept current on every write; null only on rows older than the column
+    private Long fingerprint;
+
     @CreationTimestamp
     private LocalDateTime createdAt;
 
@@ -78,6 +93,12 @@ public class Transaction {
         this.transactionDate = LocalDate.now();
     }
 
+    @PrePersist
+    @PreUpdate
+    void updateFingerprint() {
+        this.fingerprint = TransactionFingerprint.of(this);
+    }
+
     // Getters and Setters
     public Long getId() { return id; }
     public void setId(Long id) { this.id = id; }
@@ -114,6 +135,12 @@ public class Transaction {
     public String getMerchant() { return merchant; }
     public void setMerchant(String merchant) { this.merchant = merchant; }
 
+    public String getIdempotencyKey() { return idempotencyKey; }
+    public void setIdempotencyKey(String idempotencyKey) { this.idempotencyKey = idempotencyKey; }
+
+    public Long getFingerprint() { return fingerprint; }
+    public void setFingerprint(Long fingerprint) { this.fingerprint = fingerprint; }
+
     public LocalDateTime getCreatedAt() { return createdAt; }
     public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
 
@@ -131,6 +158,18 @@ public class Transaction {
         // Expense Categories
         GROCERIES, DINING, TRANSPORTATION, UTILITIES, RENT, 
         ENTERTAINMENT, HEALTHCARE, SHOPPING, EDUCATION, 
-        TRAVEL, INSURANCE, CHARITY, OTHER_EXPENSE
+        TRAVEL, INSURANCE, CHARITY, OTHER_EXPENSE;
+
+        // Budgets and scheduled purchases name categories freely ("Dining", "other expense"); null if none matches
+        public static Category parse(String name) {
+            if (name == null) {
+                return null;
+            }
+            try {
+                return valueOf(name.trim().toUpperCase(Locale.ROOT).replace(' ', '_'));
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
     }
 }
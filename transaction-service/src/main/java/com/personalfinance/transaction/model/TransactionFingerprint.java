@@ -0,0 +1,124 @@
+package com.personalfinance.transaction.model;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * A 64-bit hash of what makes two transactions "the same" for statement
+ * imports: date, signed amount, merchant and description, the text compared
+ * case- and whitespace-insensitively. Equal transactions always hash equally;
+ * unequal ones almost never do, so a match is confirmed field by field.
+ */
+public final class TransactionFingerprint {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private TransactionFingerprint() {}
+
+    public static long of(Transaction transaction) {
+        return of(transaction.getTransactionDate(), signedCents(transaction), transaction.getMerchant(), transaction.getDescription());
+    }
+
+    public static long of(LocalDate date, long signedCents, String merchant, String description) {
+        return of(date != null ? date.toEpochDay() : Long.MIN_VALUE, signedCents, merchant, description);
+    }
+
+    public static long of(long epochDay, long signedCents, String merchant, String description) {
+        long hash = FNV_OFFSET;
+        hash = mixLong(hash, epochDay);
+        hash = mixLong(hash, signedCents);
+        hash = mixText(hash, merchant);
+        hash = (hash ^ 0xff) * FNV_PRIME;
+        hash = mixText(hash, description);
+        // FNV's low bits are weak; finish like SplitMix64 so every bit depends on every input
+        hash = (hash ^ (hash >>> 30)) * 0xbf58476d1ce4e5b9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+        return hash ^ (hash >>> 31);
+    }
+
+    // Expenses are negative, so an income and an expense of the same size differ
+    public static long signedCents(Transaction transaction) {
+        if (transaction.getAmount() == null) {
+            return 0;
+        }
+        long cents = Money.cents(transaction.getAmount());
+        return transaction.getType() == Transaction.TransactionType.EXPENSE ? -cents : cents;
+    }
+
+    public static BigDecimal amount(long signedCents) {
+        return Money.toDecimal(Math.abs(signedCents));
+    }
+
+    // Whether two texts are equal ignoring case, surrounding whitespace and the length of whitespace runs
+    public static boolean sameText(String a, String b) {
+        String left = a != null ? a : "";
+        String right = b != null ? b : "";
+        int i = skipWhitespace(left, 0);
+        int j = skipWhitespace(right, 0);
+        while (i < left.length() && j < right.length()) {
+            boolean leftSpace = Character.isWhitespace(left.charAt(i));
+            boolean rightSpace = Character.isWhitespace(right.charAt(j));
+            if (leftSpace || rightSpace) {
+                if (!leftSpace || !rightSpace) {
+                    return false;
+                }
+                i = skipWhitespace(left, i);
+                j = skipWhitespace(right, j);
+                if ((i == left.length()) != (j == right.length())) {
+                    return false;
+                }
+                continue;
+            }
+            if (Character.toLowerCase(left.charAt(i)) != Character.toLowerCase(right.charAt(j))) {
+                return false;
+            }
+            i++;
+            j++;
+        }
+        return skipWhitespace(left, i) == left.length() && skipWhitespace(right, j) == right.length();
+    }
+
+    private static int skipWhitespace(String text, int from) {
+        int i = from;
+        while (i < text.length() && Character.isWhitespace(text.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static long mixLong(long hash, long value) {
+        for (int shift = 0; shift < 64; shift += 8) {
+            hash = (hash ^ ((value >>> shift) & 0xff)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    // Hashes the text as sameText compares it: lower case, whitespace runs as one space, trimmed
+    private static long mixText(long hash, String text) {
+        if (text == null) {
+            return hash;
+        }
+        boolean space = false;
+        boolean started = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = started;
+                continue;
+            }
+            if (space) {
+                hash = mixChar(hash, ' ');
+                space = false;
+            }
+            hash = mixChar(hash, Character.toLowerCase(c));
+            started = true;
+        }
+        return hash;
+    }
+
+    private static long mixChar(long hash, char c) {
+        hash = (hash ^ (c & 0xff)) * FNV_PRIME;
+        return (hash ^ (c >>> 8)) * FNV_PRIME;
+    }
+}
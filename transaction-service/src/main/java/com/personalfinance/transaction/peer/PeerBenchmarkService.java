@@ -0,0 +1,352 @@
+package com.personalfinance.transaction.peer;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.personalfinance.transaction.dto.PeerBenchmarkResponse;
+import com.personalfinance.transaction.model.Money;
+import com.personalfinance.transaction.model.MonthlySpending;
+import com.personalfinance.transaction.model.Transaction;
+import com.personalfinance.transaction.repository.MonthlySpendingRepository;
+import com.personalfinance.transaction.repository.TransactionRepository;
+import com.personalfinance.transaction.service.TransactionCreatedEvent;
+import com.personalfinance.transaction.service.TransactionsChangedEvent;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Ranks a user's monthly spending in each category against everyone
+ * else's, from one {@link QuantileSketch} per category and month over all
+ * users' totals for it, for the last {@code months} months (this one
+ * included). Nothing sums or sorts everyone's transactions to answer.
+ *
+ * Users' totals are kept in the monthly_spending table. After a write
+ * commits, the user's totals from the month it touched on are summed again
+ * from their own transactions, and each total that changed is taken out of
+ * its sketch at the old amount and put back at the new one; a create
+ * touches its own month, anything else the whole window. This runs on one
+ * thread of its own, and several writes by a user before it gets there
+ * are brought up to date together.
+ *
+ * The sketches are rebuilt from the table every {@code rebuild-ms}, which
+ * picks up writes made through other instances and drops months that have
+ * left the window. The first rebuild fills an empty table from the
+ * transactions it is derived from.
+ */
+@Service
+public class PeerBenchmarkService {
+    private static final Logger logger = LoggerFactory.getLogger(PeerBenchmarkService.class);
+
+    private static final Transaction.Category[] CATEGORIES = Transaction.Category.values();
+
+    private final TransactionRepository transactionRepository;
+    private final MonthlySpendingRepository monthlySpendingRepository;
+    // The worker has no transaction of its own; reading the totals through a cursor needs one
+    private final TransactionTemplate ownTransaction;
+    private final ScheduledExecutorService worker;
+    private final int windowMonths;
+    private final double accuracy;
+    private final int minPeers;
+
+    // Month -> one sketch per category ordinal, for the months in the window
+    private final Map<YearMonth, QuantileSketch[]> sketches = new ConcurrentHashMap<>();
+    // Users whose totals are behind their transactions -> the first month to bring up to date
+    private final Map<Long, YearMonth> pending = new ConcurrentHashMap<>();
+    private final Timer resyncTimer;
+    // Only touched by the worker thread
+    private boolean backfilled;
+
+    public PeerBenchmarkService(TransactionRepository transactionRepository,
+                                MonthlySpendingRepository monthlySpendingRepository,
+                                PlatformTransactionManager transactionManager,
+                                MeterRegistry meterRegistry,
+                                @Value("${peer-benchmarks.months:13}") int windowMonths,
+                                @Value("${peer-benchmarks.accuracy:0.01}") double accuracy,
+                                @Value("${peer-benchmarks.min-peers:20}") int minPeers,
+                                @Value("${peer-benchmarks.rebuild-ms:3600000}") long rebuildMillis) {
+        this.transactionRepository = transactionRepository;
+        this.monthlySpendingRepository = monthlySpendingRepository;
+        this.ownTransaction = new TransactionTemplate(transactionManager);
+        if (!(accuracy > 0 && accuracy < 1)) {
+            throw new IllegalArgumentException("peer-benchmarks.accuracy must be between 0 and 1, got " + accuracy);
+        }
+        this.windowMonths = Math.max(1, windowMonths);
+        this.accuracy = accuracy;
+        this.minPeers = minPeers;
+        this.resyncTimer = Timer.builder("peer.resync.duration").register(meterRegistry);
+        this.worker = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "peer-benchmarks");
+            thread.setDaemon(true);
+            return thread;
+        });
+        worker.scheduleWithFixedDelay(this::rebuild, 0, rebuildMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        worker.shutdownNow();
+    }
+
+    /**
+     * The user's spending in each category over the {@code months} months
+     * up to {@code month} (by default the last complete one) against their
+     * peers'. Throws IllegalArgumentException for months outside the window.
+     */
+    public PeerBenchmarkResponse getBenchmarks(Long userId, YearMonth month, int months) {
+        YearMonth current = YearMonth.now();
+        YearMonth last = month != null ? month : current.minusMonths(1);
+        YearMonth first = last.minusMonths(months - 1L);
+        if (months < 1 || last.isAfter(current) || first.isBefore(firstMonth(current))) {
+            throw new IllegalArgumentException("Benchmarks cover the " + windowMonths + " months up to " + current
+                    + "; " + months + " month(s) up to " + last + " is outside them");
+        }
+
+        List<MonthlySpending> own = monthlySpendingRepository.findByUserIdAndMonthBetween(userId, first.atDay(1), last.atDay(1));
+        long[] spent = new long[CATEGORIES.length];
+        int[] spentMonths = new int[CATEGORIES.length];
+        for (MonthlySpending row : own) {
+            int category = row.getCategory().ordinal();
+            spent[category] = Money.add(spent[category], row.getAmountCents());
+            spentMonths[category]++;
+        }
+
+        List<PeerBenchmarkResponse.CategoryBenchmark> categories = new ArrayList<>();
+        for (Transaction.Category category : CATEGORIES) {
+            int ordinal = category.ordinal();
+            if (spentMonths[ordinal] == 0) {
+                continue;
+            }
+            long cents = Math.round(spent[ordinal] / (double) spentMonths[ordinal]);
+            QuantileSketch peers = peers(ordinal, first, last);
+            // The sketches hold the user's own months too; a user isn't their own peer
+            for (MonthlySpending row : own) {
+                if (row.getCategory() == category) {
+                    peers.remove(row.getAmountCents());
+                }
+            }
+            PeerBenchmarkResponse.CategoryBenchmark benchmark = new PeerBenchmarkResponse.CategoryBenchmark();
+            benchmark.setCategory(category);
+            benchmark.setAmount(Money.toDecimal(cents));
+            benchmark.setPeers(peers.count());
+            if (peers.count() >= minPeers) {
+                benchmark.setPercentile((int) Math.min(99, Math.floor(peers.rank(cents) * 100)));
+                benchmark.setPeerMedian(Money.toDecimal(peers.quantile(0.5)));
+                benchmark.setPeerP75(Money.toDecimal(peers.quantile(0.75)));
+                benchmark.setPeerP90(Money.toDecimal(peers.quantile(0.9)));
+            }
+            categories.add(benchmark);
+        }
+        categories.sort(Comparator.comparing(PeerBenchmarkResponse.CategoryBenchmark::getAmount).reversed());
+
+        PeerBenchmarkResponse response = new PeerBenchmarkResponse();
+        response.setUserId(userId);
+        response.setMonth(last);
+        response.setMonths(months);
+        response.setCategories(categories);
+        return response;
+    }
+
+    // Runs after the write commits; the totals are brought up to date on the worker
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onTransactionsChanged(TransactionsChangedEvent event) {
+        YearMonth from = firstMonth(YearMonth.now());
+        if (event instanceof TransactionCreatedEvent) {
+            Transaction transaction = ((TransactionCreatedEvent) event).getTransaction();
+            if (transaction.getType() != Transaction.TransactionType.EXPENSE || transaction.getTransactionDate() == null) {
+                return;
+            }
+            YearMonth month = YearMonth.from(transaction.getTransactionDate());
+            if (month.isBefore(from)) {
+                return;
+            }
+            from = month;
+        }
+        Long userId = event.getUserId();
+        YearMonth since = from;
+        boolean[] queued = new boolean[1];
+        pending.compute(userId, (id, earlier) -> {
+            queued[0] = earlier == null;
+            return earlier == null || since.isBefore(earlier) ? since : earlier;
+        });
+        if (queued[0]) {
+            try {
+                worker.execute(() -> resync(userId));
+            } catch (RejectedExecutionException e) {
+                pending.remove(userId);
+            }
+        }
+    }
+
+    private void resync(Long userId) {
+        YearMonth requested = pending.remove(userId);
+        if (requested == null) {
+            return;
+        }
+        long started = System.nanoTime();
+        YearMonth first = firstMonth(YearMonth.now());
+        LocalDate from = (requested.isBefore(first) ? first : requested).atDay(1);
+        try {
+            List<Change> changes = ownTransaction.execute(status -> store(userId, from));
+            for (Change change : changes) {
+                QuantileSketch sketch = sketch(change.month, change.category);
+                if (sketch != null) {
+                    synchronized (sketch) {
+                        sketch.remove(change.before);
+                        sketch.add(change.after);
+                    }
+                }
+            }
+            resyncTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            logger.debug("[resync] userId={}: {} monthly totals changed since {}", userId, changes.size(), from);
+        } catch (RuntimeException e) {
+            // The stored totals stay as they were, so the sketches still agree with them
+            logger.error("[resync] Could not update monthly totals for userId={}: {}", userId, e.getMessage(), e);
+        }
+    }
+
+    // Writes the user's totals from the month starting on from as their transactions now sum; returns what changed
+    private List<Change> store(Long userId, LocalDate from) {
+        Map<LocalDate, MonthlySpending[]> stored = new HashMap<>();
+        for (MonthlySpending row : monthlySpendingRepository.findByUserIdAndMonthGreaterThanEqual(userId, from)) {
+            stored.computeIfAbsent(row.getMonth(), month -> new MonthlySpending[CATEGORIES.length])[row.getCategory().ordinal()] = row;
+        }
+        Map<LocalDate, long[]> summed = new HashMap<>();
+        for (MonthlySpending sum : transactionRepository.sumMonthlyExpenses(userId, from)) {
+            summed.computeIfAbsent(sum.getMonth(), month -> new long[CATEGORIES.length])[sum.getCategory().ordinal()] = sum.getAmountCents();
+        }
+        Set<LocalDate> months = new HashSet<>(stored.keySet());
+        months.addAll(summed.keySet());
+
+        List<Change> changes = new ArrayList<>();
+        for (LocalDate month : months) {
+            MonthlySpending[] rows = stored.get(month);
+            long[] sums = summed.get(month);
+            for (int category = 0; category < CATEGORIES.length; category++) {
+                long before = rows != null && rows[category] != null ? rows[category].getAmountCents() : 0;
+                long after = sums != null ? sums[category] : 0;
+                if (before == after) {
+                    continue;
+                }
+                if (after > 0) {
+                    monthlySpendingRepository.upsert(userId, month, CATEGORIES[category].name(), after);
+                } else {
+                    monthlySpendingRepository.delete(rows[category]);
+                }
+                changes.add(new Change(YearMonth.from(month), category, before, after));
+            }
+        }
+        return changes;
+    }
+
+    // Builds every sketch in the window afresh from the stored totals and swaps them in
+    private void rebuild() {
+        try {
+            long started = System.nanoTime();
+            YearMonth current = YearMonth.now();
+            YearMonth first = firstMonth(current);
+            LocalDate from = first.atDay(1);
+            if (!backfilled) {
+                Integer filled = ownTransaction.execute(status -> monthlySpendingRepository.backfill(from));
+                backfilled = true;
+                if (filled != null && filled > 0) {
+                    logger.info("[rebuild] Filled {} monthly totals from transactions since {}", filled, from);
+                }
+            }
+            Map<Long, QuantileSketch[]> built = new HashMap<>();
+            long[] totals = new long[1];
+            ownTransaction.executeWithoutResult(status -> monthlySpendingRepository.forEachTotal(from, (monthDay, category, cents) -> {
+                built.computeIfAbsent(monthDay, day -> newSketches())[category.ordinal()].add(cents);
+                totals[0]++;
+            }));
+            sketches.keySet().removeIf(month -> month.isBefore(first) || month.isAfter(current));
+            long bytes = 0;
+            for (YearMonth month = first; !month.isAfter(current); month = month.plusMonths(1)) {
+                QuantileSketch[] monthSketches = built.get(month.atDay(1).toEpochDay());
+                if (monthSketches == null) {
+                    monthSketches = newSketches();
+                }
+                for (QuantileSketch sketch : monthSketches) {
+                    bytes += sketch.bytes();
+                }
+                sketches.put(month, monthSketches);
+            }
+            logger.info("[rebuild] {} monthly totals since {} into {} KB of sketches in {} ms",
+                    totals[0], from, bytes / 1024, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        } catch (RuntimeException e) {
+            // Thrown out of a scheduled task it would cancel every later rebuild
+            logger.error("[rebuild] Could not rebuild peer benchmarks: {}", e.getMessage(), e);
+        }
+    }
+
+    // Everyone's months in the category from first to last, merged into a copy; the live sketches are only read under their lock
+    private QuantileSketch peers(int category, YearMonth first, YearMonth last) {
+        QuantileSketch peers = new QuantileSketch(accuracy);
+        for (YearMonth month = first; !month.isAfter(last); month = month.plusMonths(1)) {
+            QuantileSketch[] monthSketches = sketches.get(month);
+            if (monthSketches != null) {
+                synchronized (monthSketches[category]) {
+                    peers.merge(monthSketches[category]);
+                }
+            }
+        }
+        return peers;
+    }
+
+    // Null for a month outside the window; a month begun since the last rebuild gets its sketches here
+    private QuantileSketch sketch(YearMonth month, int category) {
+        YearMonth current = YearMonth.now();
+        if (month.isBefore(firstMonth(current)) || month.isAfter(current)) {
+            return null;
+        }
+        return sketches.computeIfAbsent(month, m -> newSketches())[category];
+    }
+
+    private QuantileSketch[] newSketches() {
+        QuantileSketch[] monthSketches = new QuantileSketch[CATEGORIES.length];
+        for (int i = 0; i < monthSketches.length; i++) {
+            monthSketches[i] = new QuantileSketch(accuracy);
+        }
+        return monthSketches;
+    }
+
+    private YearMonth firstMonth(YearMonth current) {
+        return current.minusMonths(windowMonths - 1L);
+    }
+
+    private static final class Change {
+        final YearMonth month;
+        final int category;
+        final long before;
+        final long after;
+
+        Change(YearMonth month, int category, long before, long after) {
+            this.month = month;
+            this.category = category;
+            this.before = before;
+            this.after = after;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.personalfinance.transaction.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.personalfinance.transaction.model.BalanceDay;
+
+@Repository
+public interface BalanceDayRepository extends JpaRepository<BalanceDay, Long>, BalanceDayRepositoryCustom {
+
+    @Modifying
+    @Query("DELETE FROM BalanceDay d WHERE d.userId = :userId")
+    int deleteByUserId(@Param("userId") Long userId);
+}
@@ -0,0 +1,28 @@
+package com.personalfinance.transaction.repository;
+
+import java.util.List;
+
+import com.personalfinance.transaction.model.BalanceDay;
+
+public interface BalanceDayRepositoryCustom {
+
+    /**
+     * Adds each row's cents to the stored ones for its user and day, adding
+     * the row if there is none; negative cents take amounts back out. Rows
+     * are written in the order given, so callers that sort them by user and
+     * day can't deadlock each other. Must run in a transaction.
+     */
+    void addAll(List<BalanceDay> days);
+
+    /**
+     * Streams the user's stored days in day order without materialising
+     * entities. Must run in a transaction, which lets the driver fetch
+     * through a cursor instead of buffering the whole result.
+     */
+    void forEachDay(Long userId, DayHandler handler);
+
+    @FunctionalInterface
+    interface DayHandler {
+        void accept(int epochDay, long incomeCents, long expenseCents);
+    }
+}
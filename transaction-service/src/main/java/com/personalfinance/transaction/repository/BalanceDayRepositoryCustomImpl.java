@@ -0,0 +1,62 @@
+package com.personalfinance.transaction.repository;
+
+import java.sql.PreparedStatement;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import com.personalfinance.transaction.model.BalanceDay;
+
+public class BalanceDayRepositoryCustomImpl implements BalanceDayRepositoryCustom {
+
+    private static final int BATCH_SIZE = 1000;
+    private static final int FETCH_SIZE = 10000;
+
+    private static final String POSTGRES_ADD = "INSERT INTO balance_index_days (user_id, epoch_day, income_cents, expense_cents)"
+            + " VALUES (?, ?, ?, ?) ON CONFLICT (user_id, epoch_day) DO UPDATE"
+            + " SET income_cents = balance_index_days.income_cents + EXCLUDED.income_cents,"
+            + " expense_cents = balance_index_days.expense_cents + EXCLUDED.expense_cents";
+    // Standard SQL for the rest (H2 in dev); Postgres only has MERGE from 15
+    private static final String MERGE_ADD = "MERGE INTO balance_index_days d"
+            + " USING (VALUES (?, ?, ?, ?)) AS s (user_id, epoch_day, income_cents, expense_cents)"
+            + " ON d.user_id = s.user_id AND d.epoch_day = s.epoch_day"
+            + " WHEN MATCHED THEN UPDATE SET income_cents = d.income_cents + s.income_cents,"
+            + " expense_cents = d.expense_cents + s.expense_cents"
+            + " WHEN NOT MATCHED THEN INSERT (user_id, epoch_day, income_cents, expense_cents)"
+            + " VALUES (s.user_id, s.epoch_day, s.income_cents, s.expense_cents)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean postgres;
+
+    public BalanceDayRepositoryCustomImpl(JdbcTemplate jdbcTemplate,
+                                          @Value("${spring.jpa.database-platform:}") String databasePlatform) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.postgres = databasePlatform.contains("PostgreSQL");
+    }
+
+    @Override
+    public void addAll(List<BalanceDay> days) {
+        if (days.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(postgres ? POSTGRES_ADD : MERGE_ADD, days, BATCH_SIZE, (ps, day) -> {
+            ps.setLong(1, day.getUserId());
+            ps.setInt(2, day.getEpochDay());
+            ps.setLong(3, day.getIncomeCents());
+            ps.setLong(4, day.getExpenseCents());
+        });
+    }
+
+    @Override
+    public void forEachDay(Long userId, DayHandler handler) {
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement("SELECT epoch_day, income_cents, expense_cents"
+                    + " FROM balance_index_days WHERE user_id = ? ORDER BY epoch_day");
+            ps.setFetchSize(FETCH_SIZE);
+            ps.setLong(1, userId);
+            return ps;
+        }, (RowCallbackHandler) rs -> handler.accept(rs.getInt(1), rs.getLong(2), rs.getLong(3)));
+    }
+}
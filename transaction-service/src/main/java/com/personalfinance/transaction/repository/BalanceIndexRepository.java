@@ -0,0 +1,46 @@
+package com.personalfinance.transaction.repository;
+
+import java.util.Optional;
+
+import javax.persistence.LockModeType;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.personalfinance.transaction.model.BalanceIndex;
+
+@Repository
+public interface BalanceIndexRepository extends JpaRepository<BalanceIndex, Long> {
+
+    // SELECT ... FOR SHARE on Postgres: any number of writers hold it at once. H2 has no shared row lock and takes FOR UPDATE
+    @Lock(LockModeType.PESSIMISTIC_READ)
+    @Query("SELECT b FROM BalanceIndex b WHERE b.userId = :userId")
+    Optional<BalanceIndex> findForShare(@Param("userId") Long userId);
+
+    // SELECT ... FOR UPDATE: held until the caller's transaction ends, and waits out every share lock
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT b FROM BalanceIndex b WHERE b.userId = :userId")
+    Optional<BalanceIndex> findForUpdate(@Param("userId") Long userId);
+
+    // A concurrent insert for the user waits for this one to commit, then inserts nothing. Postgres-only; see mergeIfAbsent
+    @Modifying
+    @Query(value = "INSERT INTO balance_index_users (user_id, built_at) VALUES (:userId, CURRENT_TIMESTAMP)"
+            + " ON CONFLICT (user_id) DO NOTHING",
+            nativeQuery = true)
+    int insertIfAbsent(@Param("userId") Long userId);
+
+    // insertIfAbsent in standard SQL, for H2 in dev; Postgres only has MERGE from 15
+    @Modifying
+    @Query(value = "MERGE INTO balance_index_users b USING (VALUES (:userId)) AS s (user_id) ON b.user_id = s.user_id"
+            + " WHEN NOT MATCHED THEN INSERT (user_id, built_at) VALUES (s.user_id, CURRENT_TIMESTAMP)",
+            nativeQuery = true)
+    int mergeIfAbsent(@Param("userId") Long userId);
+
+    @Modifying
+    @Query("DELETE FROM BalanceIndex b WHERE b.userId = :userId")
+    int deleteByUserId(@Param("userId") Long userId);
+}
@@ -0,0 +1,46 @@
+package com.personalfinance.transaction.repository;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.personalfinance.transaction.model.MerchantCategoryOverride;
+
+@Repository
+public interface MerchantCategoryOverrideRepository extends JpaRepository<MerchantCategoryOverride, Long> {
+
+    List<MerchantCategoryOverride> findByUserId(Long userId);
+
+    // One statement whether or not the merchant had an override, so concurrent corrections can't collide on the key.
+    // ON CONFLICT is Postgres-only; other databases use merge
+    @Modifying
+    @Query(value = "INSERT INTO merchant_category_overrides (user_id, merchant_key, category, updated_at)"
+            + " VALUES (:userId, :merchantKey, :category, CURRENT_TIMESTAMP)"
+            + " ON CONFLICT (user_id, merchant_key) DO UPDATE SET category = EXCLUDED.category, updated_at = EXCLUDED.updated_at",
+            nativeQuery = true)
+    int upsert(@Param("userId") Long userId, @Param("merchantKey") String merchantKey, @Param("category") String category);
+
+    // The standard SQL form of upsert, for H2 in dev; Postgres only has MERGE from 15
+    @Modifying
+    @Query(value = "MERGE INTO merchant_category_overrides o"
+            + " USING (VALUES (:userId, :merchantKey, :category)) AS s (user_id, merchant_key, category)"
+            + " ON o.user_id = s.user_id AND o.merchant_key = s.merchant_key"
+            + " WHEN MATCHED THEN UPDATE SET category = s.category, updated_at = CURRENT_TIMESTAMP"
+            + " WHEN NOT MATCHED THEN INSERT (user_id, merchant_key, category, updated_at)"
+            + " VALUES (s.user_id, s.merchant_key, s.category, CURRENT_TIMESTAMP)",
+            nativeQuery = true)
+    int merge(@Param("userId") Long userId, @Param("merchantKey") String merchantKey, @Param("category") String category);
+
+    @Query("SELECT o.id FROM MerchantCategoryOverride o WHERE o.userId = :userId ORDER BY o.id")
+    List<Long> findIdsByUserId(@Param("userId") Long userId, Pageable pageable);
+
+    @Modifying
+    @Query("DELETE FROM MerchantCategoryOverride o WHERE o.id IN :ids")
+    int deleteByIdIn(@Param("ids") Collection<Long> ids);
+}
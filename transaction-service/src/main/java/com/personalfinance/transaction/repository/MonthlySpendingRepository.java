@@ -0,0 +1,29 @@
+package com.personalfinance.transaction.repository;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.personalfinance.transaction.model.MonthlySpending;
+
+@Repository
+public interface MonthlySpendingRepository extends JpaRepository<MonthlySpending, Long>, MonthlySpendingRepositoryCustom {
+
+    List<MonthlySpending> findByUserIdAndMonthGreaterThanEqual(Long userId, LocalDate month);
+
+    List<MonthlySpending> findByUserIdAndMonthBetween(Long userId, LocalDate first, LocalDate last);
+
+    @Query("SELECT s.id FROM MonthlySpending s WHERE s.userId = :userId ORDER BY s.id")
+    List<Long> findIdsByUserId(@Param("userId") Long userId, Pageable pageable);
+
+    @Modifying
+    @Query("DELETE FROM MonthlySpending s WHERE s.id IN :ids")
+    int deleteByIdIn(@Param("ids") Collection<Long> ids);
+}
@@ -0,0 +1,35 @@
+package com.personalfinance.transaction.repository;
+
+import java.time.LocalDate;
+
+import com.personalfinance.transaction.model.Transaction;
+
+public interface MonthlySpendingRepositoryCustom {
+
+    /**
+     * Sets the user's total for the month and category, adding the row if
+     * there is none. Sets rather than adds, so instances resyncing the same
+     * user at once can't double-count.
+     */
+    int upsert(Long userId, LocalDate month, String category, long amountCents);
+
+    /**
+     * Fills an empty table from the transactions of months from
+     * {@code from} on, as when the table first appears on an existing
+     * database. Returns the rows written; 0 (one probe) once there are any.
+     */
+    int backfill(LocalDate from);
+
+    /**
+     * Streams every user's total for each month from {@code from} on
+     * without materialising rows. Must run in a transaction, which lets the
+     * driver fetch through a cursor instead of buffering the whole result.
+     */
+    void forEachTotal(LocalDate from, TotalHandler handler);
+
+    @FunctionalInterface
+    interface TotalHandler {
+        // monthDay is the epoch day of the month's first day
+        void accept(long monthDay, Transaction.Category category, long cents);
+    }
+}
@@ -0,0 +1,113 @@
+package com.personalfinance.transaction.repository;
+
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import com.personalfinance.transaction.model.MonthlySpending;
+import com.personalfinance.transaction.model.Transaction;
+
+public class MonthlySpendingRepositoryCustomImpl implements MonthlySpendingRepositoryCustom {
+
+    private static final int BATCH_SIZE = 1000;
+    private static final int FETCH_SIZE = 10000;
+
+    // "month" is quoted throughout: H2 reserves it
+    private static final String POSTGRES_UPSERT = "INSERT INTO monthly_spending (user_id, \"month\", category, amount_cents)"
+            + " VALUES (?, ?, ?, ?) ON CONFLICT (user_id, \"month\", category) DO UPDATE SET amount_cents = EXCLUDED.amount_cents";
+    private static final String POSTGRES_INSERT_IF_ABSENT = "INSERT INTO monthly_spending (user_id, \"month\", category, amount_cents)"
+            + " VALUES (?, ?, ?, ?) ON CONFLICT (user_id, \"month\", category) DO NOTHING";
+    // Standard SQL for the rest (H2 in dev); Postgres only has MERGE from 15
+    private static final String MERGE = "MERGE INTO monthly_spending m"
+            + " USING (VALUES (?, ?, ?, ?)) AS s (user_id, \"month\", category, amount_cents)"
+            + " ON m.user_id = s.user_id AND m.\"month\" = s.\"month\" AND m.category = s.category";
+    private static final String MERGE_INSERT = " WHEN NOT MATCHED THEN INSERT (user_id, \"month\", category, amount_cents)"
+            + " VALUES (s.user_id, s.\"month\", s.category, s.amount_cents)";
+    private static final String MERGE_UPSERT = MERGE + " WHEN MATCHED THEN UPDATE SET amount_cents = s.amount_cents" + MERGE_INSERT;
+    private static final String MERGE_INSERT_IF_ABSENT = MERGE + MERGE_INSERT;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean postgres;
+
+    public MonthlySpendingRepositoryCustomImpl(JdbcTemplate jdbcTemplate,
+                                               @Value("${spring.jpa.database-platform:}") String databasePlatform) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.postgres = databasePlatform.contains("PostgreSQL");
+    }
+
+    @Override
+    public int upsert(Long userId, LocalDate month, String category, long amountCents) {
+        return jdbcTemplate.update(postgres ? POSTGRES_UPSERT : MERGE_UPSERT, userId, Date.valueOf(month), category, amountCents);
+    }
+
+    @Override
+    public int backfill(LocalDate from) {
+        Boolean filled = jdbcTemplate.queryForObject("SELECT EXISTS (SELECT 1 FROM monthly_spending)", Boolean.class);
+        if (Boolean.TRUE.equals(filled)) {
+            return 0;
+        }
+        // Months are put together here; truncating a date in SQL differs by database
+        List<MonthlySpending> batch = new ArrayList<>(BATCH_SIZE);
+        int[] written = {0};
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement("SELECT user_id, EXTRACT(YEAR FROM transaction_date),"
+                    + " EXTRACT(MONTH FROM transaction_date), category, CAST(SUM(amount) * 100 AS BIGINT) FROM transactions"
+                    + " WHERE type = 'EXPENSE' AND category IS NOT NULL AND transaction_date >= ?"
+                    + " GROUP BY user_id, EXTRACT(YEAR FROM transaction_date), EXTRACT(MONTH FROM transaction_date), category");
+            ps.setFetchSize(FETCH_SIZE);
+            ps.setDate(1, Date.valueOf(from));
+            return ps;
+        }, (RowCallbackHandler) rs -> {
+            MonthlySpending spending = new MonthlySpending();
+            spending.setUserId(rs.getLong(1));
+            spending.setMonth(LocalDate.of(rs.getInt(2), rs.getInt(3), 1));
+            spending.setCategory(Transaction.Category.valueOf(rs.getString(4)));
+            spending.setAmountCents(rs.getLong(5));
+            batch.add(spending);
+            if (batch.size() == BATCH_SIZE) {
+                written[0] += insertIfAbsent(batch);
+                batch.clear();
+            }
+        });
+        return written[0] + insertIfAbsent(batch);
+    }
+
+    @Override
+    public void forEachTotal(LocalDate from, TotalHandler handler) {
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement("SELECT \"month\", category, amount_cents"
+                    + " FROM monthly_spending WHERE \"month\" >= ?");
+            ps.setFetchSize(FETCH_SIZE);
+            ps.setDate(1, Date.valueOf(from));
+            return ps;
+        }, (RowCallbackHandler) rs -> handler.accept(rs.getObject(1, LocalDate.class).toEpochDay(),
+                Transaction.Category.valueOf(rs.getString(2)), rs.getLong(3)));
+    }
+
+    // Another instance may be backfilling too; whichever writes a row first keeps it
+    private int insertIfAbsent(List<MonthlySpending> rows) {
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        int written = 0;
+        for (int[] counts : jdbcTemplate.batchUpdate(postgres ? POSTGRES_INSERT_IF_ABSENT : MERGE_INSERT_IF_ABSENT,
+                rows, BATCH_SIZE, (ps, row) -> {
+                    ps.setLong(1, row.getUserId());
+                    ps.setDate(2, Date.valueOf(row.getMonth()));
+                    ps.setString(3, row.getCategory().name());
+                    ps.setLong(4, row.getAmountCents());
+                })) {
+            for (int count : counts) {
+                // Drivers that can't tell report SUCCESS_NO_INFO (-2)
+                written += count > 0 ? count : 0;
+            }
+        }
+        return written;
+    }
+}
@@ -0,0 +1,29 @@
+package com.personalfinance.transaction.repository;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.personalfinance.transaction.model.SpendingAnomaly;
+
+@Repository
+public interface SpendingAnomalyRepository extends JpaRepository<SpendingAnomaly, Long> {
+
+    // Newest first; the pageable only supplies the limit
+    List<SpendingAnomaly> findByUserIdOrderByIdDesc(Long userId, Pageable pageable);
+
+    List<SpendingAnomaly> findByUserIdAndKindOrderByIdDesc(Long userId, SpendingAnomaly.Kind kind, Pageable pageable);
+
+    @Query("SELECT a.id FROM SpendingAnomaly a WHERE a.userId = :userId ORDER BY a.id")
+    List<Long> findIdsByUserId(@Param("userId") Long userId, Pageable pageable);
+
+    @Modifying
+    @Query("DELETE FROM SpendingAnomaly a WHERE a.id IN :ids")
+    int deleteByIdIn(@Param("ids") Collection<Long> ids);
+}
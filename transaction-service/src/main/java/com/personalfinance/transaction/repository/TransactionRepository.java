@@ -1,12 +1,19 @@
 package com.personalfinance.transaction.repository;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+
+import javax.persistence.LockModeType;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -14,13 +21,45 @@ import org.springframework.stereotype.Repository;
 import com.personalfinance.transaction.model.Transaction;
 
 @Repository
-public interface TransactionRepository extends JpaRepository<Transaction, Long> {
+public interface TransactionRepository extends JpaRepository<Transaction, Long>, TransactionRepositoryCustom {
     
+    Optional<Transaction> findByIdempotencyKey(String idempotencyKey);
+
+    @Query("SELECT t.idempotencyKey FROM Transaction t WHERE t.idempotencyKey IN :keys")
+    List<String> findUsedIdempotencyKeys(@Param("keys") Collection<String> keys);
+
+    // A scalar, so the transaction itself is read afresh, locked, once the caller has the user's balance patch
+    @Query("SELECT t.userId FROM Transaction t WHERE t.id = :id")
+    Optional<Long> findUserIdById(@Param("id") Long id);
+
+    // SELECT ... FOR UPDATE: a concurrent edit or delete of the same rows waits, then sees them as this one left them
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT t FROM Transaction t WHERE t.id = :id")
+    Optional<Transaction> findForUpdate(@Param("id") Long id);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT t FROM Transaction t WHERE t.id IN :ids")
+    List<Transaction> findAllForUpdate(@Param("ids") Collection<Long> ids);
+
     Page<Transaction> findByUserIdOrderByTransactionDateDesc(Long userId, Pageable pageable);
+
+    // Keyset page: the pageable only supplies the limit, so no count query runs
+    List<Transaction> findByUserIdAndIdGreaterThanOrderByIdAsc(Long userId, Long afterId, Pageable pageable);
+
+    @Query("SELECT t.id FROM Transaction t WHERE t.userId = :userId ORDER BY t.id")
+    List<Long> findIdsByUserId(@Param("userId") Long userId, Pageable pageable);
+
+    @Modifying
+    @Query("DELETE FROM Transaction t WHERE t.id IN :ids")
+    int deleteByIdIn(@Param("ids") Collection<Long> ids);
     
+    long countByUserId(Long userId);
+
     List<Transaction> findByUserIdAndTransactionDateBetween(
             Long userId, LocalDateTime startDate, LocalDateTime endDate);
     
+    List<Transaction> findByUserIdAndTransactionDateGreaterThanEqual(Long userId, LocalDate from);
+
     List<Transaction> findByUserIdAndType(Long userId, Transaction.TransactionType type);
     
     List<Transaction> findByUserIdAndCategory(Long userId, Transaction.Category category);
@@ -35,6 +74,16 @@ public interface TransactionRepository extends JpaRepository<Transaction, Long>
             @Param("startDate") LocalDateTime startDate, 
             @Param("endDate") LocalDateTime endDate);
     
+    // Only transactions up to maxId, so expenses created after the one being checked aren't counted early
+    @Query("SELECT SUM(t.amount) FROM Transaction t WHERE t.userId = :userId AND t.type = 'EXPENSE' AND t.category = :category"
+            + " AND t.transactionDate BETWEEN :from AND :to AND t.id <= :maxId")
+    BigDecimal getExpensesByUserIdAndCategoryAndDateRangeUpToId(
+            @Param("userId") Long userId,
+            @Param("category") Transaction.Category category,
+            @Param("from") LocalDate from,
+            @Param("to") LocalDate to,
+            @Param("maxId") Long maxId);
+
     @Query("SELECT t.category, SUM(t.amount) FROM Transaction t WHERE t.userId = :userId AND t.type = 'EXPENSE' GROUP BY t.category")
     List<Object[]> getExpensesByCategory(@Param("userId") Long userId);
 }
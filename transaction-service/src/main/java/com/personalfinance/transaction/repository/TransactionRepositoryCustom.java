@@ -0,0 +1,88 @@
+package com.personalfinance.transaction.repository;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+import java.util.function.LongConsumer;
+
+import com.personalfinance.transaction.model.MonthlySpending;
+import com.personalfinance.transaction.model.Transaction;
+
+public interface TransactionRepositoryCustom {
+
+    /**
+     * Computes the fingerprint of the user's rows written before the column
+     * existed, so duplicate checks see them. Returns how many were filled in;
+     * 0 (one index probe) once a user is done.
+     */
+    int backfillFingerprints(Long userId);
+
+    /**
+     * Streams the fingerprint of every one of the user's transactions without
+     * materialising rows. Must run in a transaction, which lets the driver
+     * fetch through a cursor instead of buffering the whole result.
+     */
+    void forEachFingerprint(Long userId, LongConsumer consumer);
+
+    /**
+     * Streams the date, amount, type and category of every one of the user's
+     * transactions without materialising entities. Like
+     * {@link #forEachFingerprint}, must run in a transaction.
+     */
+    void forEachAmount(Long userId, AmountHandler handler);
+
+    /**
+     * Streams the user's dated expenses from {@code from} on, oldest first,
+     * with what recurring-charge detection groups them by. Like
+     * {@link #forEachFingerprint}, must run in a transaction.
+     */
+    void forEachExpense(Long userId, LocalDate from, ExpenseHandler handler);
+
+    /**
+     * The user's income and expense cents summed per day, undated rows
+     * together. Like {@link #forEachFingerprint}, must run in a transaction.
+     */
+    void forEachDailyTotal(Long userId, DailyTotalHandler handler);
+
+    /**
+     * The user's categorised expenses from {@code from} on, summed by
+     * calendar month and category, as detached rows without ids.
+     */
+    List<MonthlySpending> sumMonthlyExpenses(Long userId, LocalDate from);
+
+    /**
+     * The user's transactions with one of the given fingerprints, as detached
+     * objects carrying only what a duplicate check compares (date, amount,
+     * type, merchant, description, fingerprint). A few thousand fingerprints
+     * are looked up through the index; beyond that, as when a whole
+     * statement is uploaded twice, one pass over the user's rows is cheaper
+     * than the lookups and is used instead.
+     */
+    List<Transaction> findFingerprintMatches(Long userId, Set<Long> fingerprints);
+
+    /**
+     * Inserts new transactions with JDBC batches, skipping the persistence
+     * context: identity ids keep Hibernate from batching, which made a large
+     * statement import take minutes. The fingerprint must already be set; ids
+     * are not read back.
+     */
+    void insertAll(List<Transaction> transactions);
+
+    @FunctionalInterface
+    interface AmountHandler {
+        // epochDay is Long.MIN_VALUE for an undated row; type and category may be null
+        void accept(long epochDay, long cents, Transaction.TransactionType type, Transaction.Category category);
+    }
+
+    @FunctionalInterface
+    interface DailyTotalHandler {
+        // epochDay is Long.MIN_VALUE for undated rows
+        void accept(long epochDay, Transaction.TransactionType type, long cents);
+    }
+
+    @FunctionalInterface
+    interface ExpenseHandler {
+        // merchant, description and category may be null
+        void accept(long id, long epochDay, long cents, String merchant, String description, Transaction.Category category);
+    }
+}
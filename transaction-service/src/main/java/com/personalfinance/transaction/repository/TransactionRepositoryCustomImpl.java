@@ -0,0 +1,202 @@
+package com.personalfinance.transaction.repository;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.function.LongConsumer;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import com.personalfinance.transaction.model.MonthlySpending;
+import com.personalfinance.transaction.model.Transaction;
+import com.personalfinance.transaction.model.TransactionFingerprint;
+
+public class TransactionRepositoryCustomImpl implements TransactionRepositoryCustom {
+
+    private static final int BATCH_SIZE = 1000;
+    // Above this many fingerprints a match scans the user's rows instead of probing the index per batch
+    private static final int MAX_LOOKUPS = 8 * BATCH_SIZE;
+    private static final int FETCH_SIZE = 10000;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public TransactionRepositoryCustomImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public int backfillFingerprints(Long userId) {
+        List<Transaction> missing = jdbcTemplate.query("SELECT id, transaction_date, amount, type, merchant, description"
+                + " FROM transactions WHERE user_id = ? AND fingerprint IS NULL", (rs, row) -> {
+            Transaction transaction = comparable(rs.getDate("transaction_date"), rs.getBigDecimal("amount"),
+                    rs.getString("type"), rs.getString("merchant"), rs.getString("description"));
+            transaction.setId(rs.getLong("id"));
+            return transaction;
+        }, userId);
+        if (!missing.isEmpty()) {
+            jdbcTemplate.batchUpdate("UPDATE transactions SET fingerprint = ? WHERE id = ?", missing, BATCH_SIZE, (ps, transaction) -> {
+                ps.setLong(1, TransactionFingerprint.of(transaction));
+                ps.setLong(2, transaction.getId());
+            });
+        }
+        return missing.size();
+    }
+
+    @Override
+    public void forEachFingerprint(Long userId, LongConsumer consumer) {
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement("SELECT fingerprint FROM transactions WHERE user_id = ? AND fingerprint IS NOT NULL");
+            ps.setFetchSize(FETCH_SIZE);
+            ps.setLong(1, userId);
+            return ps;
+        }, (RowCallbackHandler) rs -> consumer.accept(rs.getLong(1)));
+    }
+
+    @Override
+    public void forEachAmount(Long userId, AmountHandler handler) {
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement("SELECT transaction_date, CAST(amount * 100 AS BIGINT),"
+                    + " type, category FROM transactions WHERE user_id = ?");
+            ps.setFetchSize(FETCH_SIZE);
+            ps.setLong(1, userId);
+            return ps;
+        }, (RowCallbackHandler) rs -> {
+            long epochDay = epochDay(rs, 1);
+            String type = rs.getString(3);
+            String category = rs.getString(4);
+            handler.accept(epochDay, rs.getLong(2),
+                    type != null ? Transaction.TransactionType.valueOf(type) : null,
+                    category != null ? Transaction.Category.valueOf(category) : null);
+        });
+    }
+
+    @Override
+    public void forEachExpense(Long userId, LocalDate from, ExpenseHandler handler) {
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement("SELECT id, transaction_date, CAST(amount * 100 AS BIGINT),"
+                    + " merchant, description, category FROM transactions"
+                    + " WHERE user_id = ? AND type = 'EXPENSE' AND transaction_date >= ? ORDER BY transaction_date, id");
+            ps.setFetchSize(FETCH_SIZE);
+            ps.setLong(1, userId);
+            ps.setDate(2, Date.valueOf(from));
+            return ps;
+        }, (RowCallbackHandler) rs -> {
+            String category = rs.getString(6);
+            handler.accept(rs.getLong(1), epochDay(rs, 2), rs.getLong(3), rs.getString(4), rs.getString(5),
+                    category != null ? Transaction.Category.valueOf(category) : null);
+        });
+    }
+
+    @Override
+    public void forEachDailyTotal(Long userId, DailyTotalHandler handler) {
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement("SELECT transaction_date, type, CAST(SUM(amount) * 100 AS BIGINT)"
+                    + " FROM transactions WHERE user_id = ? AND type IN ('INCOME', 'EXPENSE') GROUP BY transaction_date, type");
+            ps.setFetchSize(FETCH_SIZE);
+            ps.setLong(1, userId);
+            return ps;
+        }, (RowCallbackHandler) rs -> {
+            handler.accept(epochDay(rs, 1), Transaction.TransactionType.valueOf(rs.getString(2)), rs.getLong(3));
+        });
+    }
+
+    @Override
+    public List<MonthlySpending> sumMonthlyExpenses(Long userId, LocalDate from) {
+        // Months by EXTRACT, which PostgreSQL and H2 both have
+        return jdbcTemplate.query("SELECT EXTRACT(YEAR FROM transaction_date), EXTRACT(MONTH FROM transaction_date), category,"
+                + " CAST(SUM(amount) * 100 AS BIGINT) FROM transactions"
+                + " WHERE user_id = ? AND type = 'EXPENSE' AND category IS NOT NULL AND transaction_date >= ?"
+                + " GROUP BY EXTRACT(YEAR FROM transaction_date), EXTRACT(MONTH FROM transaction_date), category", (rs, row) -> {
+            MonthlySpending spending = new MonthlySpending();
+            spending.setUserId(userId);
+            spending.setMonth(LocalDate.of(rs.getInt(1), rs.getInt(2), 1));
+            spending.setCategory(Transaction.Category.valueOf(rs.getString(3)));
+            spending.setAmountCents(rs.getLong(4));
+            return spending;
+        }, userId, Date.valueOf(from));
+    }
+
+    @Override
+    public List<Transaction> findFingerprintMatches(Long userId, Set<Long> fingerprints) {
+        if (fingerprints.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Transaction> matches = new ArrayList<>();
+        RowCallbackHandler collect = rs -> {
+            long fingerprint = rs.getLong("fingerprint");
+            if (fingerprints.contains(fingerprint)) {
+                Transaction transaction = comparable(rs.getDate("transaction_date"), rs.getBigDecimal("amount"),
+                        rs.getString("type"), rs.getString("merchant"), rs.getString("description"));
+                transaction.setFingerprint(fingerprint);
+                matches.add(transaction);
+            }
+        };
+        String columns = "SELECT transaction_date, amount, type, merchant, description, fingerprint FROM transactions WHERE user_id = ?";
+        if (fingerprints.size() > MAX_LOOKUPS) {
+            jdbcTemplate.query(con -> {
+                PreparedStatement ps = con.prepareStatement(columns + " AND fingerprint IS NOT NULL");
+                ps.setFetchSize(FETCH_SIZE);
+                ps.setLong(1, userId);
+                return ps;
+            }, collect);
+            return matches;
+        }
+        List<Long> all = new ArrayList<>(fingerprints);
+        for (int from = 0; from < all.size(); from += BATCH_SIZE) {
+            List<Long> batch = all.subList(from, Math.min(from + BATCH_SIZE, all.size()));
+            Object[] args = new Object[batch.size() + 1];
+            args[0] = userId;
+            for (int i = 0; i < batch.size(); i++) {
+                args[i + 1] = batch.get(i);
+            }
+            jdbcTemplate.query(columns + " AND fingerprint IN (" + String.join(",", Collections.nCopies(batch.size(), "?")) + ")",
+                    collect, args);
+        }
+        return matches;
+    }
+
+    @Override
+    public void insertAll(List<Transaction> transactions) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        jdbcTemplate.batchUpdate("INSERT INTO transactions (user_id, description, amount, type, category, transaction_date,"
+                + " merchant, fingerprint, created_at, updated_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
+                transactions, BATCH_SIZE, (ps, transaction) -> {
+                    ps.setLong(1, transaction.getUserId());
+                    ps.setString(2, transaction.getDescription());
+                    ps.setBigDecimal(3, transaction.getAmount());
+                    ps.setString(4, transaction.getType().name());
+                    ps.setString(5, transaction.getCategory().name());
+                    ps.setDate(6, Date.valueOf(transaction.getTransactionDate()));
+                    ps.setString(7, transaction.getMerchant());
+                    ps.setLong(8, transaction.getFingerprint());
+                    ps.setTimestamp(9, now);
+                    ps.setTimestamp(10, now);
+                });
+    }
+
+    // Long.MIN_VALUE for undated rows. Read as a LocalDate: the drivers decode that directly, skipping java.sql.Date
+    private static long epochDay(ResultSet rs, int column) throws SQLException {
+        LocalDate date = rs.getObject(column, LocalDate.class);
+        return date != null ? date.toEpochDay() : Long.MIN_VALUE;
+    }
+
+    private static Transaction comparable(Date date, BigDecimal amount, String type, String merchant, String description) {
+        Transaction transaction = new Transaction();
+        transaction.setTransactionDate(date != null ? date.toLocalDate() : null);
+        transaction.setAmount(amount);
+        transaction.setType(type != null ? Transaction.TransactionType.valueOf(type) : null);
+        transaction.setMerchant(merchant);
+        transaction.setDescription(description);
+        return transaction;
+    }
+}
@@ -0,0 +1,20 @@
+package com.personalfinance.transaction.service;
+
+import com.personalfinance.transaction.model.Transaction;
+
+/**
+ * A {@link TransactionsChangedEvent} for a single transaction created through
+ * the API, carrying it so listeners can update state incrementally instead
+ * of re-reading the user's history.
+ */
+public class TransactionCreatedEvent extends TransactionsChangedEvent {
+
+    private final Transaction transaction;
+
+    public TransactionCreatedEvent(Transaction transaction) {
+        super(transaction.getUserId());
+        this.transaction = transaction;
+    }
+
+    public Transaction getTransaction() { return transaction; }
+}
@@ -2,21 +2,44 @@ package com.personalfinance.transaction.service;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.personalfinance.transaction.analytics.TransactionColumnCache;
+import com.personalfinance.transaction.analytics.TransactionColumns;
+import com.personalfinance.transaction.balance.BalanceIndexService;
+import com.personalfinance.transaction.balance.BalancePatch;
+import com.personalfinance.transaction.balance.NetFlowIndex;
+import com.personalfinance.transaction.categorize.MerchantCategorizer;
+import com.personalfinance.transaction.categorize.UserCategorizer;
+import com.personalfinance.transaction.dto.TransactionBatchRequest;
 import com.personalfinance.transaction.dto.TransactionCreateRequest;
 import com.personalfinance.transaction.dto.TransactionResponse;
 import com.personalfinance.transaction.dto.TransactionUpdateRequest;
+import com.personalfinance.transaction.model.Money;
 import com.personalfinance.transaction.model.Transaction;
+import com.personalfinance.transaction.repository.BalanceDayRepository;
+import com.personalfinance.transaction.repository.BalanceIndexRepository;
+import com.personalfinance.transaction.repository.MerchantCategoryOverrideRepository;
+import com.personalfinance.transaction.repository.MonthlySpendingRepository;
+import com.personalfinance.transaction.repository.SpendingAnomalyRepository;
 import com.personalfinance.transaction.repository.TransactionRepository;
 
 @Service
@@ -27,23 +50,71 @@ public class TransactionService {
     @Autowired
     private TransactionRepository transactionRepository;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private TransactionColumnCache transactionColumnCache;
+
+    @Autowired
+    private SpendingAnomalyRepository spendingAnomalyRepository;
+
+    @Autowired
+    private MerchantCategorizer merchantCategorizer;
+
+    @Autowired
+    private MerchantCategoryOverrideRepository merchantCategoryOverrideRepository;
+
+    @Autowired
+    private MonthlySpendingRepository monthlySpendingRepository;
+
+    @Autowired
+    private BalanceIndexService balanceIndexService;
+
+    @Autowired
+    private BalanceIndexRepository balanceIndexRepository;
+
+    @Autowired
+    private BalanceDayRepository balanceDayRepository;
+
     public TransactionResponse createTransaction(TransactionCreateRequest request) {
-        logger.debug("[createTransaction] Incoming request: {}", request);
+        return createTransaction(request, null);
+    }
+
+    /**
+     * Creates a transaction, or returns the one already created under the same
+     * idempotency key, so a client that lost the response (or crashed before
+     * recording it) can retry without double-booking. A concurrent duplicate
+     * fails on the unique key and succeeds as a replay when retried.
+     * Without a category the categoriser picks one; a category that differs
+     * from its pick is learned for the merchant.
+     */
+    public TransactionResponse createTransaction(TransactionCreateRequest request, String idempotencyKey) {
+        logger.debug("[createTransaction] Incoming request: {}, idempotencyKey={}", request, idempotencyKey);
+        if (idempotencyKey != null) {
+            Optional<Transaction> existing = transactionRepository.findByIdempotencyKey(idempotencyKey);
+            if (existing.isPresent()) {
+                logger.info("[createTransaction] Replayed idempotencyKey={}, returning transaction id={}", idempotencyKey, existing.get().getId());
+                return new TransactionResponse(existing.get());
+            }
+        }
         try {
-            Transaction transaction = new Transaction();
-            transaction.setUserId(request.getUserId());
-            transaction.setDescription(request.getDescription());
-            transaction.setAmount(request.getAmount());
-            transaction.setType(request.getType());
-            transaction.setCategory(request.getCategory());
-            transaction.setTransactionDate(request.getTransactionDate() != null ? 
-                request.getTransactionDate() : java.time.LocalDate.now());
-            transaction.setNotes(request.getNotes());
-            transaction.setLocation(request.getLocation());
-            transaction.setMerchant(request.getMerchant());
+            Transaction transaction = toEntity(request, idempotencyKey);
+            boolean income = transaction.getType() == Transaction.TransactionType.INCOME;
+            if (transaction.getCategory() == null) {
+                transaction.setCategory(merchantCategorizer.forUser(transaction.getUserId())
+                        .categorize(transaction.getMerchant(), transaction.getDescription(), null, income));
+            } else {
+                merchantCategorizer.learn(transaction.getUserId(), transaction.getMerchant(), transaction.getDescription(),
+                        transaction.getCategory(), income);
+            }
 
             logger.debug("[createTransaction] Saving transaction: {}", transaction);
+            BalancePatch balance = balanceIndexService.patch(transaction.getUserId());
             Transaction savedTransaction = transactionRepository.save(transaction);
+            balance.add(savedTransaction);
+            balanceIndexService.apply(balance);
+            eventPublisher.publishEvent(new TransactionCreatedEvent(savedTransaction));
             logger.info("[createTransaction] Transaction saved: id={}, userId={}, amount={}, type={}, category={}",
                 savedTransaction.getId(), savedTransaction.getUserId(), savedTransaction.getAmount(), savedTransaction.getType(), savedTransaction.getCategory());
             return new TransactionResponse(savedTransaction);
@@ -56,6 +127,71 @@ public class TransactionService {
         }
     }
 
+    /**
+     * Creates a batch of transactions in one database transaction. Items whose
+     * idempotency key was used before (or earlier in the same batch) are
+     * skipped, so a batch can be retried as a whole. Items without a
+     * category are categorised; unlike single creates, the categories given
+     * teach the categoriser nothing, as they usually come from another app.
+     */
+    public Map<String, Integer> createTransactions(List<TransactionBatchRequest.Item> items) {
+        logger.debug("[createTransactions] Incoming batch of {}", items.size());
+        Set<String> keys = new HashSet<>();
+        for (TransactionBatchRequest.Item item : items) {
+            if (item.getIdempotencyKey() != null) {
+                keys.add(item.getIdempotencyKey());
+            }
+        }
+        Set<String> used = keys.isEmpty() ? new HashSet<>() : new HashSet<>(transactionRepository.findUsedIdempotencyKeys(keys));
+        List<Transaction> created = new ArrayList<>(items.size());
+        Map<Long, UserCategorizer> categorizers = new HashMap<>();
+        for (TransactionBatchRequest.Item item : items) {
+            if (item.getIdempotencyKey() == null || used.add(item.getIdempotencyKey())) {
+                Transaction transaction = toEntity(item, item.getIdempotencyKey());
+                if (transaction.getCategory() == null) {
+                    transaction.setCategory(categorizers.computeIfAbsent(transaction.getUserId(), merchantCategorizer::forUser)
+                            .categorize(transaction.getMerchant(), transaction.getDescription(), null,
+                                    transaction.getType() == Transaction.TransactionType.INCOME));
+                }
+                created.add(transaction);
+            }
+        }
+        // Opened and applied in user order, so two batches sharing users can't each hold a day the other waits for
+        Map<Long, BalancePatch> balances = new TreeMap<>();
+        for (Transaction transaction : created) {
+            balances.put(transaction.getUserId(), null);
+        }
+        balances.replaceAll((userId, none) -> balanceIndexService.patch(userId));
+        transactionRepository.saveAll(created);
+        for (Transaction transaction : created) {
+            balances.get(transaction.getUserId()).add(transaction);
+        }
+        balances.values().forEach(balanceIndexService::apply);
+        created.stream().map(Transaction::getUserId).distinct()
+                .forEach(userId -> eventPublisher.publishEvent(new TransactionsChangedEvent(userId)));
+        logger.info("[createTransactions] Created {} transactions, replayed {}", created.size(), items.size() - created.size());
+        Map<String, Integer> result = new HashMap<>();
+        result.put("created", created.size());
+        result.put("replayed", items.size() - created.size());
+        return result;
+    }
+
+    private static Transaction toEntity(TransactionCreateRequest request, String idempotencyKey) {
+        Transaction transaction = new Transaction();
+        transaction.setUserId(request.getUserId());
+        transaction.setDescription(request.getDescription());
+        transaction.setAmount(request.getAmount());
+        transaction.setType(request.getType());
+        transaction.setCategory(request.getCategory());
+        transaction.setTransactionDate(request.getTransactionDate() != null ? 
+            request.getTransactionDate() : java.time.LocalDate.now());
+        transaction.setNotes(request.getNotes());
+        transaction.setLocation(request.getLocation());
+        transaction.setMerchant(request.getMerchant());
+        transaction.setIdempotencyKey(idempotencyKey);
+        return transaction;
+    }
+
     @Transactional(readOnly = true)
     public Page<TransactionResponse> getTransactionsByUser(Long userId, Pageable pageable) {
         logger.debug("[getTransactionsByUser] userId={}, page={}, size={}", userId, pageable.getPageNumber(), pageable.getPageSize());
@@ -69,6 +205,70 @@ public class TransactionService {
         }
     }
 
+    /**
+     * The next page of a user's transactions in id order, for exports that
+     * walk the whole history; each page is an index range scan however far
+     * in it starts.
+     */
+    @Transactional(readOnly = true)
+    public List<TransactionResponse> getTransactionsAfter(Long userId, Long afterId, int limit) {
+        logger.debug("[getTransactionsAfter] userId={}, afterId={}, limit={}", userId, afterId, limit);
+        return transactionRepository.findByUserIdAndIdGreaterThanOrderByIdAsc(userId, afterId, PageRequest.of(0, limit))
+                .stream()
+                .map(TransactionResponse::new)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Deletes up to {@code limit} of the user's transactions and returns how
+     * many went. Callers purging a whole history repeat until it returns
+     * 0; each call is its own short transaction, so locks
+     * and WAL are spread out instead of one long delete holding them.
+     * The balance index is patched as they go and its days deleted once
+     * they're gone. Spending anomalies flagged from the transactions go
+     * after them, then
+     * the categories learned for the user's merchants, then their monthly
+     * spending totals, in chunks counted the same way.
+     */
+    public int purgeChunk(Long userId, int limit) {
+        List<Long> ids = transactionRepository.findIdsByUserId(userId, PageRequest.of(0, limit));
+        int deleted;
+        if (!ids.isEmpty()) {
+            // Patched like any delete; dropping the days instead would rebuild them from what is left on every chunk
+            BalancePatch balance = balanceIndexService.patch(userId);
+            List<Transaction> transactions = transactionRepository.findAllForUpdate(ids);
+            transactions.forEach(balance::remove);
+            deleted = transactionRepository.deleteByIdIn(transactions.stream().map(Transaction::getId).collect(Collectors.toList()));
+            balanceIndexService.apply(balance);
+            logger.info("[purgeChunk] Deleted {} transactions for userId={}", deleted, userId);
+        } else if (balanceIndexRepository.deleteByUserId(userId) > 0) {
+            // All zero once the transactions are gone; the mark goes first, so writes for the user wait for this
+            deleted = 1 + balanceDayRepository.deleteByUserId(userId);
+            logger.info("[purgeChunk] Deleted balance index for userId={}", userId);
+        } else {
+            List<Long> anomalyIds = spendingAnomalyRepository.findIdsByUserId(userId, PageRequest.of(0, limit));
+            if (!anomalyIds.isEmpty()) {
+                deleted = spendingAnomalyRepository.deleteByIdIn(anomalyIds);
+                logger.info("[purgeChunk] Deleted {} spending anomalies for userId={}", deleted, userId);
+            } else {
+                List<Long> overrideIds = merchantCategoryOverrideRepository.findIdsByUserId(userId, PageRequest.of(0, limit));
+                if (!overrideIds.isEmpty()) {
+                    deleted = merchantCategoryOverrideRepository.deleteByIdIn(overrideIds);
+                    logger.info("[purgeChunk] Deleted {} merchant category overrides for userId={}", deleted, userId);
+                } else {
+                    List<Long> spendingIds = monthlySpendingRepository.findIdsByUserId(userId, PageRequest.of(0, limit));
+                    if (spendingIds.isEmpty()) {
+                        return 0;
+                    }
+                    deleted = monthlySpendingRepository.deleteByIdIn(spendingIds);
+                    logger.info("[purgeChunk] Deleted {} monthly spending totals for userId={}", deleted, userId);
+                }
+            }
+        }
+        eventPublisher.publishEvent(new TransactionsPurgedEvent(userId));
+        return deleted;
+    }
+
     @Transactional(readOnly = true)
     public TransactionResponse getTransactionById(Long id) {
         logger.debug("[getTransactionById] id={}", id);
@@ -86,8 +286,13 @@ public class TransactionService {
     public TransactionResponse updateTransaction(Long id, TransactionUpdateRequest request) {
         logger.debug("[updateTransaction] id={}, request={}", id, request);
         try {
-            Transaction transaction = transactionRepository.findById(id)
+            // Read locked, so a concurrent edit can't be taken out of the balance twice
+            Long userId = transactionRepository.findUserIdById(id)
                     .orElseThrow(() -> new RuntimeException("Transaction not found with id: " + id));
+            BalancePatch balance = balanceIndexService.patch(userId);
+            Transaction transaction = transactionRepository.findForUpdate(id)
+                    .orElseThrow(() -> new RuntimeException("Transaction not found with id: " + id));
+            balance.remove(transaction);
 
             if (request.getDescription() != null) {
                 transaction.setDescription(request.getDescription());
@@ -98,6 +303,7 @@ public class TransactionService {
             if (request.getType() != null) {
                 transaction.setType(request.getType());
             }
+            boolean recategorized = request.getCategory() != null && request.getCategory() != transaction.getCategory();
             if (request.getCategory() != null) {
                 transaction.setCategory(request.getCategory());
             }
@@ -114,8 +320,17 @@ public class TransactionService {
                 transaction.setMerchant(request.getMerchant());
             }
 
+            // A correction teaches the categoriser, judged on the merchant as it stands after the edit
+            if (recategorized) {
+                merchantCategorizer.learn(transaction.getUserId(), transaction.getMerchant(), transaction.getDescription(),
+                        transaction.getCategory(), transaction.getType() == Transaction.TransactionType.INCOME);
+            }
+
             logger.debug("[updateTransaction] Saving updated transaction: {}", transaction);
             Transaction updatedTransaction = transactionRepository.save(transaction);
+            balance.add(updatedTransaction);
+            balanceIndexService.apply(balance);
+            eventPublisher.publishEvent(new TransactionsChangedEvent(updatedTransaction.getUserId()));
             logger.info("[updateTransaction] Transaction updated: id={}, userId={}, amount={}, type={}, category={}",
                 updatedTransaction.getId(), updatedTransaction.getUserId(), updatedTransaction.getAmount(), updatedTransaction.getType(), updatedTransaction.getCategory());
             return new TransactionResponse(updatedTransaction);
@@ -125,14 +340,20 @@ public class TransactionService {
         }
     }
 
-    public void deleteTransaction(Long id) {
+    public Long deleteTransaction(Long id) {
         logger.debug("[deleteTransaction] id={}", id);
         try {
-            if (!transactionRepository.existsById(id)) {
-                throw new RuntimeException("Transaction not found with id: " + id);
-            }
-            transactionRepository.deleteById(id);
-            logger.info("[deleteTransaction] Transaction deleted: id={}", id);
+            Long userId = transactionRepository.findUserIdById(id)
+                    .orElseThrow(() -> new RuntimeException("Transaction not found with id: " + id));
+            BalancePatch balance = balanceIndexService.patch(userId);
+            Transaction transaction = transactionRepository.findForUpdate(id)
+                    .orElseThrow(() -> new RuntimeException("Transaction not found with id: " + id));
+            balance.remove(transaction);
+            balanceIndexService.apply(balance);
+            transactionRepository.delete(transaction);
+            eventPublisher.publishEvent(new TransactionsChangedEvent(transaction.getUserId()));
+            logger.info("[deleteTransaction] Transaction deleted: id={}, userId={}", id, transaction.getUserId());
+            return transaction.getUserId();
         } catch (Exception e) {
             logger.error("[deleteTransaction] Error deleting transaction: {}", e.getMessage(), e);
             throw e;
@@ -143,16 +364,14 @@ public class TransactionService {
     public Map<String, BigDecimal> getTransactionSummary(Long userId) {
         logger.debug("[getTransactionSummary] userId={}", userId);
         try {
-            BigDecimal totalIncome = transactionRepository.getTotalAmountByUserIdAndType(
-                    userId, Transaction.TransactionType.INCOME);
-            BigDecimal totalExpenses = transactionRepository.getTotalAmountByUserIdAndType(
-                    userId, Transaction.TransactionType.EXPENSE);
+            NetFlowIndex index = balanceIndexService.index(userId);
+            long totalIncome = index.totalIncomeCents();
+            long totalExpenses = index.totalExpenseCents();
 
             Map<String, BigDecimal> summary = new HashMap<>();
-            summary.put("totalIncome", totalIncome != null ? totalIncome : BigDecimal.ZERO);
-            summary.put("totalExpenses", totalExpenses != null ? totalExpenses : BigDecimal.ZERO);
-            summary.put("netBalance", 
-                    summary.get("totalIncome").subtract(summary.get("totalExpenses")));
+            summary.put("totalIncome", Money.toDecimal(totalIncome));
+            summary.put("totalExpenses", Money.toDecimal(totalExpenses));
+            summary.put("netBalance", Money.toDecimal(Money.subtract(totalIncome, totalExpenses)));
 
             logger.info("[getTransactionSummary] Summary: {}", summary);
             return summary;
@@ -166,14 +385,8 @@ public class TransactionService {
     public Map<String, BigDecimal> getCategoryExpenses(Long userId) {
         logger.debug("[getCategoryExpenses] userId={}", userId);
         try {
-            List<Object[]> results = transactionRepository.getExpensesByCategory(userId);
             Map<String, BigDecimal> categoryExpenses = new HashMap<>();
-
-            for (Object[] result : results) {
-                Transaction.Category category = (Transaction.Category) result[0];
-                BigDecimal amount = (BigDecimal) result[1];
-                categoryExpenses.put(category.name(), amount);
-            }
+            getCategoryExpenseCents(userId).forEach((category, cents) -> categoryExpenses.put(category.name(), Money.toDecimal(cents)));
 
             logger.info("[getCategoryExpenses] Category expenses: {}", categoryExpenses);
             return categoryExpenses;
@@ -183,6 +396,44 @@ public class TransactionService {
         }
     }
 
+    /**
+     * Expense totals in {@link Money} cents for each category the user has
+     * spent in, for callers that compute with them before building a
+     * response; {@link #getCategoryExpenses} is the same as decimals.
+     */
+    @Transactional(readOnly = true)
+    public Map<Transaction.Category, Long> getCategoryExpenseCents(Long userId) {
+        TransactionColumns columns = transactionColumnCache.columns(userId);
+        long[] totals = columns.expenseCentsByCategory();
+        boolean[] present = columns.expenseCategoriesPresent();
+        Map<Transaction.Category, Long> categoryCents = new EnumMap<>(Transaction.Category.class);
+        for (Transaction.Category category : Transaction.Category.values()) {
+            if (present[category.ordinal()]) {
+                categoryCents.put(category, totals[category.ordinal()]);
+            }
+        }
+        return categoryCents;
+    }
+
+    /**
+     * Income, expenses and savings for each of {@code months} calendar months
+     * from {@code first}, oldest first, each as {"income", "expenses", "savings"}.
+     */
+    @Transactional(readOnly = true)
+    public List<Map<String, BigDecimal>> getMonthlyTotals(Long userId, YearMonth first, int months) {
+        logger.debug("[getMonthlyTotals] userId={}, first={}, months={}", userId, first, months);
+        long[] totals = transactionColumnCache.columns(userId).monthlyCents(first, months);
+        List<Map<String, BigDecimal>> monthly = new ArrayList<>(months);
+        for (int m = 0; m < months; m++) {
+            Map<String, BigDecimal> month = new HashMap<>();
+            month.put("income", Money.toDecimal(totals[2 * m]));
+            month.put("expenses", Money.toDecimal(totals[2 * m + 1]));
+            month.put("savings", Money.toDecimal(Money.subtract(totals[2 * m], totals[2 * m + 1])));
+            monthly.add(month);
+        }
+        return monthly;
+    }
+
     @Transactional(readOnly = true)
     public List<TransactionResponse> getTransactionsByDateRange(Long userId, LocalDateTime startDate, LocalDateTime endDate) {
         logger.debug("[getTransactionsByDateRange] userId={}, startDate={}, endDate={}", userId, startDate, endDate);
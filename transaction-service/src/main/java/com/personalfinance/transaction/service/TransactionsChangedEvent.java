@@ -0,0 +1,17 @@
+package com.personalfinance.transaction.service;
+
+/**
+ * Published whenever one of a user's transactions is created, edited or
+ * deleted, so state derived from their history can be dropped once the
+ * publishing transaction commits.
+ */
+public class TransactionsChangedEvent {
+
+    private final Long userId;
+
+    public TransactionsChangedEvent(Long userId) {
+        this.userId = userId;
+    }
+
+    public Long getUserId() { return userId; }
+}
@@ -0,0 +1,13 @@
+package com.personalfinance.transaction.service;
+
+/**
+ * A {@link TransactionsChangedEvent} for a chunk of a user's history being
+ * purged, so listeners holding anything about the user drop it rather than
+ * just refresh it.
+ */
+public class TransactionsPurgedEvent extends TransactionsChangedEvent {
+
+    public TransactionsPurgedEvent(Long userId) {
+        super(userId);
+    }
+}
@@ -0,0 +1,53 @@
+package com.personalfinance.transaction.statement;
+
+/**
+ * Set membership for 64-bit fingerprints in about 10 bits per entry at a 1%
+ * false-positive rate, against 16+ bytes for a hash set of longs: "no" is
+ * certain, "maybe" has to be confirmed. Bit positions come from double
+ * hashing, which is enough since fingerprints are already well mixed.
+ * Not thread-safe.
+ */
+final class BloomFilter {
+
+    private final long[] bits;
+    private final long bitCount;
+    private final int hashCount;
+
+    BloomFilter(long expectedEntries, double falsePositiveRate) {
+        long entries = Math.max(1, expectedEntries);
+        double ln2 = Math.log(2);
+        long size = (long) Math.ceil(-entries * Math.log(falsePositiveRate) / (ln2 * ln2));
+        this.bits = new long[(int) Math.max(1, (size + 63) >>> 6)];
+        this.bitCount = (long) bits.length << 6;
+        this.hashCount = (int) Math.max(1, Math.round((double) bitCount / entries * ln2));
+    }
+
+    void put(long hash) {
+        long step = step(hash);
+        long combined = hash;
+        for (int i = 0; i < hashCount; i++) {
+            long index = Long.remainderUnsigned(combined, bitCount);
+            bits[(int) (index >>> 6)] |= 1L << index;
+            combined += step;
+        }
+    }
+
+    boolean mightContain(long hash) {
+        long step = step(hash);
+        long combined = hash;
+        for (int i = 0; i < hashCount; i++) {
+            long index = Long.remainderUnsigned(combined, bitCount);
+            if ((bits[(int) (index >>> 6)] & (1L << index)) == 0) {
+                return false;
+            }
+            combined += step;
+        }
+        return true;
+    }
+
+    // The second hash, kept odd so it is never 0
+    private static long step(long hash) {
+        long mixed = (hash ^ (hash >>> 33)) * 0xff51afd7ed558ccdL;
+        return (mixed ^ (mixed >>> 33)) | 1;
+    }
+}
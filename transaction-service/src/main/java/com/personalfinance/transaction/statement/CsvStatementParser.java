@@ -0,0 +1,296 @@
+package com.personalfinance.transaction.statement;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.IntStream;
+
+/**
+ * Bank CSV exports. Column layouts differ between banks, so the header row
+ * is read for the columns that matter: a date, then either one signed amount
+ * (optionally with a debit/credit type column) or separate debit and credit
+ * columns, plus description, payee and category when present. The delimiter
+ * is whichever of comma, semicolon and tab the header uses most. Quoted fields
+ * may contain delimiters, doubled quotes and line breaks.
+ */
+final class CsvStatementParser extends StatementParser {
+
+    private static final List<String> DATE = List.of("date", "transactiondate", "posteddate", "postingdate",
+            "bookingdate", "transdate", "valuedate");
+    private static final List<String> AMOUNT = List.of("amount", "transactionamount", "amt", "value");
+    private static final List<String> DEBIT = List.of("debit", "debitamount", "withdrawal", "withdrawals", "moneyout", "paidout");
+    private static final List<String> CREDIT = List.of("credit", "creditamount", "deposit", "deposits", "moneyin", "paidin");
+    private static final List<String> TYPE = List.of("type", "transactiontype", "creditdebit", "debitcredit", "drcr");
+    private static final List<String> DESCRIPTION = List.of("description", "transactiondescription", "memo", "details",
+            "narrative", "reference");
+    private static final List<String> MERCHANT = List.of("payee", "merchant", "merchantname", "name", "counterparty");
+    private static final List<String> CATEGORY = List.of("category", "transactioncategory");
+
+    private final byte delimiter;
+    private final int bodyStart;
+    private final int date;
+    private final int amount;
+    private final int debit;
+    private final int credit;
+    private final int type;
+    private final int description;
+    private final int merchant;
+    private final int category;
+    // Fields past the last column used are scanned over but not recorded
+    private final int fieldsKept;
+
+    CsvStatementParser(byte[] data) {
+        super(data);
+        int start = data.length >= 3 && (data[0] & 0xff) == 0xEF && (data[1] & 0xff) == 0xBB && (data[2] & 0xff) == 0xBF ? 3 : 0;
+        while (start < data.length && isSpace(data[start])) {
+            start++;
+        }
+        this.delimiter = detectDelimiter(start);
+        List<String> header = new ArrayList<>();
+        Fields fields = new Fields(1024);
+        this.bodyStart = scanRecord(start, data.length, fields);
+        for (int i = 0; i < Math.min(fields.count, fields.starts.length); i++) {
+            String name = fieldText(fields, i);
+            header.add(name == null ? "" : name.toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9]", ""));
+        }
+        this.date = column(header, DATE);
+        this.amount = column(header, AMOUNT);
+        this.debit = column(header, DEBIT);
+        this.credit = column(header, CREDIT);
+        this.type = column(header, TYPE);
+        this.description = column(header, DESCRIPTION);
+        this.merchant = column(header, MERCHANT);
+        this.category = column(header, CATEGORY);
+        if (date < 0 || (amount < 0 && debit < 0 && credit < 0)) {
+            throw new IllegalArgumentException("The CSV header needs a date column and an amount column (or debit and credit"
+                    + " columns); found " + header);
+        }
+        this.fieldsKept = IntStream.of(date, amount, debit, credit, type, description, merchant, category).max().getAsInt() + 1;
+    }
+
+    /**
+     * A single pass tracking quotes, since a line break inside a quoted field
+     * is not a record boundary; it costs far less than parsing.
+     */
+    @Override
+    int[] split(int chunkBytes) {
+        IntStream.Builder bounds = IntStream.builder().add(bodyStart);
+        boolean quoted = false;
+        long next = (long) bodyStart + chunkBytes;
+        for (int i = bodyStart; i < data.length; i++) {
+            byte b = data[i];
+            if (b == '"') {
+                quoted = !quoted;
+            } else if (b == '\n' && !quoted && i + 1 >= next && i + 1 < data.length) {
+                bounds.add(i + 1);
+                next = (long) i + 1 + chunkBytes;
+            }
+        }
+        return bounds.add(data.length).build().toArray();
+    }
+
+    @Override
+    void parse(int from, int to, StatementChunk chunk, int maxErrors) {
+        Fields fields = new Fields(fieldsKept);
+        int position = from;
+        int line = 0;
+        while (position < to) {
+            int recordLine = line;
+            fields.lineBreaks = 0;
+            position = scanRecord(position, to, fields);
+            line += fields.lineBreaks;
+            if (fields.count == 1 && fields.ends[0] == fields.starts[0]) {
+                continue; // blank line
+            }
+            if (date >= fields.count) {
+                chunk.reject(recordLine, "no date column", maxErrors);
+                continue;
+            }
+            int day = epochDay(fields.starts[date], fields.ends[date]);
+            if (day == NO_DATE) {
+                chunk.reject(recordLine, "unreadable date '" + snippet(fields.starts[date], fields.ends[date]) + "'", maxErrors);
+                continue;
+            }
+            long cents = amount(fields);
+            if (cents == NO_AMOUNT) {
+                chunk.reject(recordLine, "missing or unreadable amount", maxErrors);
+                continue;
+            }
+            if (cents == 0) {
+                chunk.reject(recordLine, "amount is zero", maxErrors);
+                continue;
+            }
+            StatementRow row = new StatementRow();
+            row.line = recordLine;
+            row.epochDay = day;
+            row.cents = cents;
+            row.description = fieldText(fields, description);
+            row.merchant = fieldText(fields, merchant);
+            row.bankCategory = fieldText(fields, category);
+            chunk.rows.add(row);
+        }
+    }
+
+    private long amount(Fields fields) {
+        if (amount >= 0 && present(fields, amount)) {
+            long cents = cents(fields.starts[amount], fields.ends[amount]);
+            String direction = type >= 0 ? fieldText(fields, type) : null;
+            if (cents == NO_AMOUNT || direction == null) {
+                return cents;
+            }
+            String lower = direction.toLowerCase(Locale.ROOT);
+            if (lower.startsWith("d") || lower.startsWith("withdraw") || lower.startsWith("expense")
+                    || lower.startsWith("payment") || lower.startsWith("purchase")) {
+                return -Math.abs(cents);
+            }
+            if (lower.startsWith("c") || lower.startsWith("deposit") || lower.startsWith("income")) {
+                return Math.abs(cents);
+            }
+            return cents;
+        }
+        if (debit >= 0 && present(fields, debit)) {
+            long cents = cents(fields.starts[debit], fields.ends[debit]);
+            return cents == NO_AMOUNT ? cents : -Math.abs(cents);
+        }
+        if (credit >= 0 && present(fields, credit)) {
+            long cents = cents(fields.starts[credit], fields.ends[credit]);
+            return cents == NO_AMOUNT ? cents : Math.abs(cents);
+        }
+        return NO_AMOUNT;
+    }
+
+    private boolean present(Fields fields, int column) {
+        if (column >= fields.count) {
+            return false;
+        }
+        for (int i = fields.starts[column]; i < fields.ends[column]; i++) {
+            if (!isSpace(data[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String fieldText(Fields fields, int column) {
+        if (column < 0 || column >= Math.min(fields.count, fields.starts.length)) {
+            return null;
+        }
+        String text = text(fields.starts[column], fields.ends[column]);
+        return text != null && fields.escaped[column] ? text.replace("\"\"", "\"") : text;
+    }
+
+    /**
+     * Reads one record starting at {@code position}, recording where each kept
+     * field's content starts and ends (inside any quotes), and returns the
+     * offset just past its line break.
+     */
+    private int scanRecord(int position, int limit, Fields fields) {
+        int field = 0;
+        while (true) {
+            int start = position;
+            int end;
+            boolean escaped = false;
+            if (position < limit && data[position] == '"') {
+                start = ++position;
+                while (true) {
+                    if (position >= limit) {
+                        end = position;
+                        break;
+                    }
+                    byte b = data[position];
+                    if (b == '"') {
+                        if (position + 1 < limit && data[position + 1] == '"') {
+                            escaped = true;
+                            position += 2;
+                            continue;
+                        }
+                        end = position++;
+                        break;
+                    }
+                    if (b == '\n') {
+                        fields.lineBreaks++;
+                    }
+                    position++;
+                }
+                // Stray characters between the closing quote and the delimiter are dropped
+                while (position < limit && data[position] != delimiter && data[position] != '\n' && data[position] != '\r') {
+                    position++;
+                }
+            } else {
+                while (position < limit && data[position] != delimiter && data[position] != '\n') {
+                    position++;
+                }
+                end = position > start && data[position - 1] == '\r' ? position - 1 : position;
+            }
+            if (field < fields.starts.length) {
+                fields.starts[field] = start;
+                fields.ends[field] = end;
+                fields.escaped[field] = escaped;
+            }
+            field++;
+            if (position >= limit) {
+                fields.count = field;
+                return limit;
+            }
+            if (data[position] == delimiter) {
+                position++;
+                continue;
+            }
+            if (data[position] == '\r') {
+                position++;
+            }
+            if (position < limit && data[position] == '\n') {
+                position++;
+                fields.lineBreaks++;
+            }
+            fields.count = field;
+            return position;
+        }
+    }
+
+    private byte detectDelimiter(int start) {
+        int commas = 0;
+        int semicolons = 0;
+        int tabs = 0;
+        boolean quoted = false;
+        for (int i = start; i < data.length && (quoted || data[i] != '\n'); i++) {
+            byte b = data[i];
+            if (b == '"') {
+                quoted = !quoted;
+            } else if (!quoted) {
+                commas += b == ',' ? 1 : 0;
+                semicolons += b == ';' ? 1 : 0;
+                tabs += b == '\t' ? 1 : 0;
+            }
+        }
+        if (tabs > commas && tabs >= semicolons) {
+            return '\t';
+        }
+        return semicolons > commas ? (byte) ';' : (byte) ',';
+    }
+
+    private static int column(List<String> header, List<String> names) {
+        for (String name : names) {
+            int index = header.indexOf(name);
+            if (index >= 0) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    private static final class Fields {
+        final int[] starts;
+        final int[] ends;
+        final boolean[] escaped;
+        // Fields in the record, including any not kept
+        int count;
+        int lineBreaks;
+
+        Fields(int kept) {
+            starts = new int[kept];
+            ends = new int[kept];
+            escaped = new boolean[kept];
+        }
+    }
+}
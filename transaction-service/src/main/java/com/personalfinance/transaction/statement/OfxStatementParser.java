@@ -0,0 +1,124 @@
+package com.personalfinance.transaction.statement;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * OFX/QFX downloads, both the SGML flavour (OFX 1.x, where leaf elements
+ * have no closing tag) and XML (2.x). Each STMTTRN aggregate is a row:
+ * DTPOSTED the date, TRNAMT the signed amount, NAME (also inside PAYEE) the
+ * merchant and MEMO the description. Everything outside STMTTRN, the
+ * headers and balances, is skipped.
+ */
+final class OfxStatementParser extends StatementParser {
+
+    private static final byte[] START = bytes("<STMTTRN>");
+    private static final byte[] END = bytes("</STMTTRN>");
+    private static final byte[] DTPOSTED = bytes("DTPOSTED");
+    private static final byte[] TRNAMT = bytes("TRNAMT");
+    private static final byte[] NAME = bytes("NAME");
+    private static final byte[] MEMO = bytes("MEMO");
+
+    private final int bodyStart;
+
+    OfxStatementParser(byte[] data) {
+        super(data);
+        int first = indexOf(START, 0, data.length);
+        this.bodyStart = first >= 0 ? first : data.length;
+    }
+
+    @Override
+    int[] split(int chunkBytes) {
+        return splitBy(bodyStart, chunkBytes, from -> {
+            int next = indexOf(START, from, data.length);
+            return next >= 0 ? next : data.length;
+        });
+    }
+
+    @Override
+    void parse(int from, int to, StatementChunk chunk, int maxErrors) {
+        int line = 0;
+        int counted = from;
+        int start = indexOf(START, from, to);
+        while (start >= 0) {
+            line += countLines(counted, start);
+            counted = start;
+            int next = indexOf(START, start + START.length, to);
+            int end = indexOf(END, start + START.length, next >= 0 ? next : to);
+            int recordEnd = end >= 0 ? end : next >= 0 ? next : to;
+            record(start + START.length, recordEnd, line, chunk, maxErrors);
+            start = next;
+        }
+    }
+
+    private void record(int from, int to, int line, StatementChunk chunk, int maxErrors) {
+        int day = NO_DATE;
+        long cents = NO_AMOUNT;
+        String name = null;
+        String memo = null;
+        boolean dated = false;
+        int position = from;
+        while (position < to) {
+            int open = indexOf((byte) '<', position, to);
+            if (open < 0) {
+                break;
+            }
+            int close = indexOf((byte) '>', open + 1, to);
+            if (close < 0) {
+                break;
+            }
+            int valueStart = close + 1;
+            int valueEnd = indexOf((byte) '<', valueStart, to);
+            if (valueEnd < 0) {
+                valueEnd = to;
+            }
+            int tagLength = close - open - 1;
+            if (tag(open + 1, tagLength, DTPOSTED)) {
+                dated = true;
+                int digits = valueStart;
+                while (digits < valueEnd && isSpace(data[digits])) {
+                    digits++;
+                }
+                day = epochDay(digits, Math.min(valueEnd, digits + 8));
+            } else if (tag(open + 1, tagLength, TRNAMT)) {
+                cents = cents(valueStart, valueEnd);
+            } else if (tag(open + 1, tagLength, NAME)) {
+                name = decode(text(valueStart, valueEnd));
+            } else if (tag(open + 1, tagLength, MEMO)) {
+                memo = decode(text(valueStart, valueEnd));
+            }
+            position = valueEnd;
+        }
+        if (!dated || day == NO_DATE) {
+            chunk.reject(line, dated ? "unreadable DTPOSTED" : "no DTPOSTED", maxErrors);
+        } else if (cents == NO_AMOUNT) {
+            chunk.reject(line, "missing or unreadable TRNAMT", maxErrors);
+        } else if (cents == 0) {
+            chunk.reject(line, "amount is zero", maxErrors);
+        } else {
+            StatementRow row = new StatementRow();
+            row.line = line;
+            row.epochDay = day;
+            row.cents = cents;
+            row.merchant = name;
+            row.description = memo;
+            chunk.rows.add(row);
+        }
+    }
+
+    private boolean tag(int at, int length, byte[] name) {
+        return length == name.length && matches(at, name);
+    }
+
+    // SGML character references; only the ones OFX writers produce
+    private static String decode(String text) {
+        if (text == null || text.indexOf('&') < 0) {
+            return text;
+        }
+        return text.replace("&lt;", "<").replace("&gt;", ">").replace("&quot;", "\"")
+                .replace("&apos;", "'").replace("&nbsp;", " ").replace("&amp;", "&");
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+}
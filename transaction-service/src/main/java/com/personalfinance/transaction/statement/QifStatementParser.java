@@ -0,0 +1,151 @@
+package com.personalfinance.transaction.statement;
+
+/**
+ * Quicken Interchange Format. Records are runs of lines, each starting with
+ * a field code, ended by a line holding '^': D the date, T (or U) the signed
+ * amount, P the payee, M the memo and L the category, where "[Account]"
+ * marks a transfer rather than a category. Header lines ("!Type:Bank") and
+ * records without a date, such as account lists, are skipped; split lines
+ * are ignored, the record's total standing for the transaction.
+ */
+final class QifStatementParser extends StatementParser {
+
+    QifStatementParser(byte[] data) {
+        super(data);
+    }
+
+    @Override
+    int[] split(int chunkBytes) {
+        return splitBy(0, chunkBytes, this::nextRecord);
+    }
+
+    // The offset just past the first '^' line at or after from
+    private int nextRecord(int from) {
+        int position = from;
+        if (position > 0 && data[position - 1] != '\n') {
+            int eol = indexOf((byte) '\n', position, data.length);
+            position = eol < 0 ? data.length : eol + 1;
+        }
+        while (position < data.length) {
+            int eol = indexOf((byte) '\n', position, data.length);
+            if (data[position] == '^') {
+                return eol < 0 ? data.length : eol + 1;
+            }
+            position = eol < 0 ? data.length : eol + 1;
+        }
+        return data.length;
+    }
+
+    @Override
+    void parse(int from, int to, StatementChunk chunk, int maxErrors) {
+        Record record = new Record();
+        int position = from;
+        int line = 0;
+        while (position < to) {
+            int eol = indexOf((byte) '\n', position, to);
+            int lineEnd = eol < 0 ? to : eol;
+            int next = eol < 0 ? to : eol + 1;
+            if (lineEnd > position && data[lineEnd - 1] == '\r') {
+                lineEnd--;
+            }
+            if (lineEnd > position) {
+                byte code = data[position];
+                if (code == '^') {
+                    finish(record, chunk, maxErrors);
+                } else if (code == '!') {
+                    record.clear();
+                } else {
+                    if (record.line < 0) {
+                        record.line = line;
+                    }
+                    field(record, code, position + 1, lineEnd);
+                }
+            }
+            line++;
+            position = next;
+        }
+        // A last record without its '^'
+        finish(record, chunk, maxErrors);
+    }
+
+    private void field(Record record, byte code, int from, int to) {
+        switch (code) {
+            case 'D':
+                record.dateFrom = from;
+                record.dateTo = to;
+                break;
+            case 'T':
+                record.amountFrom = from;
+                record.amountTo = to;
+                break;
+            case 'U':
+                if (record.amountFrom < 0) {
+                    record.amountFrom = from;
+                    record.amountTo = to;
+                }
+                break;
+            case 'P':
+                record.payee = text(from, to);
+                break;
+            case 'M':
+                record.memo = text(from, to);
+                break;
+            case 'L':
+                String category = text(from, to);
+                record.category = category != null && category.startsWith("[") ? null : category;
+                break;
+            default:
+                // Check number, cleared flag, address, splits
+        }
+    }
+
+    private void finish(Record record, StatementChunk chunk, int maxErrors) {
+        if (record.dateFrom < 0) {
+            record.clear();
+            return;
+        }
+        int day = epochDay(record.dateFrom, record.dateTo);
+        long cents = record.amountFrom < 0 ? NO_AMOUNT : cents(record.amountFrom, record.amountTo);
+        if (day == NO_DATE) {
+            chunk.reject(record.line, "unreadable date '" + snippet(record.dateFrom, record.dateTo) + "'", maxErrors);
+        } else if (cents == NO_AMOUNT) {
+            chunk.reject(record.line, "missing or unreadable amount", maxErrors);
+        } else if (cents == 0) {
+            chunk.reject(record.line, "amount is zero", maxErrors);
+        } else {
+            StatementRow row = new StatementRow();
+            row.line = record.line;
+            row.epochDay = day;
+            row.cents = cents;
+            row.merchant = record.payee;
+            row.description = record.memo;
+            row.bankCategory = record.category;
+            chunk.rows.add(row);
+        }
+        record.clear();
+    }
+
+    private static final class Record {
+        int line;
+        int dateFrom;
+        int dateTo;
+        int amountFrom;
+        int amountTo;
+        String payee;
+        String memo;
+        String category;
+
+        Record() {
+            clear();
+        }
+
+        void clear() {
+            line = -1;
+            dateFrom = -1;
+            amountFrom = -1;
+            payee = null;
+            memo = null;
+            category = null;
+        }
+    }
+}
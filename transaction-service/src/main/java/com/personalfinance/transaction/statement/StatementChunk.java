@@ -0,0 +1,30 @@
+package com.personalfinance.transaction.statement;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// What parsing one slice of a statement produced; line numbers are relative to the slice until merged
+final class StatementChunk {
+    final List<StatementRow> rows = new ArrayList<>();
+    final List<StatementError> errors = new ArrayList<>();
+    int rejected;
+    // Line breaks in the slice, to number the lines of the slices after it
+    int lines;
+
+    void reject(int line, String message, int maxErrors) {
+        rejected++;
+        if (errors.size() < maxErrors) {
+            errors.add(new StatementError(line, message));
+        }
+    }
+
+    static final class StatementError {
+        int line;
+        final String message;
+
+        StatementError(int line, String message) {
+            this.line = line;
+            this.message = message;
+        }
+    }
+}
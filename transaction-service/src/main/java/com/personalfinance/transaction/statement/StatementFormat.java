@@ -0,0 +1,45 @@
+package com.personalfinance.transaction.statement;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+public enum StatementFormat {
+    CSV, OFX, QIF;
+
+    public static StatementFormat of(String name) {
+        try {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unsupported statement format: " + name + " (expected CSV, OFX or QIF)");
+        }
+    }
+
+    /**
+     * Guesses the format from the file name, then from the first bytes: OFX
+     * starts with an OFXHEADER line or an XML prolog, QIF with a !Type line.
+     * Anything else is read as CSV.
+     */
+    public static StatementFormat detect(String filename, byte[] data) {
+        if (filename != null) {
+            String lower = filename.toLowerCase(Locale.ROOT);
+            if (lower.endsWith(".ofx") || lower.endsWith(".qfx")) {
+                return OFX;
+            }
+            if (lower.endsWith(".qif")) {
+                return QIF;
+            }
+            if (lower.endsWith(".csv")) {
+                return CSV;
+            }
+        }
+        String head = new String(data, 0, Math.min(data.length, 512), StandardCharsets.UTF_8)
+                .replace("\uFEFF", "").trim().toUpperCase(Locale.ROOT);
+        if (head.startsWith("OFXHEADER") || head.startsWith("<?XML") || head.startsWith("<OFX")) {
+            return OFX;
+        }
+        if (head.startsWith("!TYPE") || head.startsWith("!ACCOUNT") || head.startsWith("!OPTION")) {
+            return QIF;
+        }
+        return CSV;
+    }
+}
@@ -0,0 +1,258 @@
+package com.personalfinance.transaction.statement;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.personalfinance.transaction.balance.BalanceIndexService;
+import com.personalfinance.transaction.balance.BalancePatch;
+import com.personalfinance.transaction.categorize.MerchantCategorizer;
+import com.personalfinance.transaction.dto.StatementImportResponse;
+import com.personalfinance.transaction.model.Transaction;
+import com.personalfinance.transaction.model.TransactionFingerprint;
+import com.personalfinance.transaction.repository.TransactionRepository;
+import com.personalfinance.transaction.service.TransactionsChangedEvent;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Imports bank statements (CSV, OFX, QIF) into a user's transactions.
+ *
+ * Parsing happens before any database work, on {@link StatementReader}'s
+ * pool, and rows are categorised there with the user's
+ * {@link MerchantCategorizer} as it stood when the import began. Rows the
+ * user already has are then skipped so a statement can be uploaded again,
+ * or overlap the last one, without double-booking: every stored
+ * transaction carries a {@link TransactionFingerprint}, the user's
+ * fingerprints are streamed into a Bloom filter, and only rows the filter
+ * can't rule out are checked field by field against the matching rows.
+ * Duplicates are counted per value, so two identical coffees in the file
+ * import as two unless the user already has them. New rows go in through
+ * JDBC batches, all in one database transaction.
+ */
+@Service
+public class StatementImportService {
+    private static final Logger logger = LoggerFactory.getLogger(StatementImportService.class);
+
+    private static final int INSERT_BATCH = 1000;
+
+    private final TransactionRepository transactionRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final StatementReader reader;
+    private final MerchantCategorizer categorizer;
+    private final BalanceIndexService balanceIndexService;
+    private final int maxBytes;
+    private final double bloomFalsePositiveRate;
+    // Each running import holds its file and rows in memory
+    private final Semaphore imports;
+    private final Timer timer;
+
+    public StatementImportService(TransactionRepository transactionRepository,
+                                  TransactionTemplate transactionTemplate,
+                                  ApplicationEventPublisher eventPublisher,
+                                  MerchantCategorizer categorizer,
+                                  BalanceIndexService balanceIndexService,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${statement-import.max-bytes:134217728}") int maxBytes,
+                                  @Value("${statement-import.chunk-bytes:1048576}") int chunkBytes,
+                                  @Value("${statement-import.parallelism:4}") int parallelism,
+                                  @Value("${statement-import.max-concurrent:2}") int maxConcurrent,
+                                  @Value("${statement-import.max-errors:100}") int maxErrors,
+                                  @Value("${statement-import.bloom-false-positive-rate:0.01}") double bloomFalsePositiveRate) {
+        this.transactionRepository = transactionRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.eventPublisher = eventPublisher;
+        this.categorizer = categorizer;
+        this.balanceIndexService = balanceIndexService;
+        this.reader = new StatementReader(parallelism, chunkBytes, maxErrors);
+        this.maxBytes = maxBytes;
+        this.bloomFalsePositiveRate = bloomFalsePositiveRate;
+        this.imports = new Semaphore(Math.max(1, maxConcurrent));
+        this.timer = Timer.builder("statement.import.duration").register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void stop() {
+        reader.shutdown();
+    }
+
+    /**
+     * Imports the statement for the user. The format is taken from
+     * {@code format} if given, otherwise guessed from the file name and
+     * contents. Unreadable records are counted and described rather than
+     * failing the import; a file that can't be read at all (no usable CSV
+     * header, too large) is an IllegalArgumentException.
+     */
+    public StatementImportResponse importStatement(Long userId, String filename, String format, byte[] data) {
+        if (data.length == 0) {
+            throw new IllegalArgumentException("The statement is empty");
+        }
+        if (data.length > maxBytes) {
+            throw new IllegalArgumentException("The statement is larger than " + maxBytes + " bytes");
+        }
+        StatementFormat statementFormat = format != null && !format.isBlank()
+                ? StatementFormat.of(format)
+                : StatementFormat.detect(filename, data);
+
+        imports.acquireUninterruptibly();
+        try {
+            long started = System.nanoTime();
+            StatementReader.ParsedStatement statement = reader.read(statementFormat, data, categorizer.forUser(userId));
+            long parsed = System.nanoTime();
+            int[] outcome = transactionTemplate.execute(status -> store(userId, statement.rows));
+            long elapsed = System.nanoTime() - started;
+            timer.record(elapsed, TimeUnit.NANOSECONDS);
+            logger.info("[importStatement] userId={}, format={}, rows={}, imported={}, duplicates={}, rejected={};"
+                    + " parsed in {} ms, stored in {} ms", userId, statementFormat, statement.rows.size(), outcome[0],
+                    outcome[1], statement.rejected, TimeUnit.NANOSECONDS.toMillis(parsed - started),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - parsed));
+
+            StatementImportResponse response = new StatementImportResponse();
+            response.setUserId(userId);
+            response.setFormat(statementFormat.name());
+            response.setRows(statement.rows.size());
+            response.setImported(outcome[0]);
+            response.setDuplicates(outcome[1]);
+            response.setRejected(statement.rejected);
+            response.setErrors(statement.errors);
+            response.setElapsedMillis(TimeUnit.NANOSECONDS.toMillis(elapsed));
+            return response;
+        } finally {
+            imports.release();
+        }
+    }
+
+    // Returns {imported, duplicates}
+    private int[] store(Long userId, List<StatementRow> rows) {
+        // Held alone from the start, so a second import of the same file waits and then finds this one's rows
+        BalancePatch balance = balanceIndexService.patchExclusively(userId);
+        boolean[] duplicate = findDuplicates(userId, rows);
+        int duplicates = 0;
+        List<Transaction> batch = new ArrayList<>(INSERT_BATCH);
+        for (int i = 0; i < rows.size(); i++) {
+            if (duplicate[i]) {
+                duplicates++;
+                continue;
+            }
+            Transaction transaction = toEntity(userId, rows.get(i));
+            balance.add(transaction);
+            batch.add(transaction);
+            if (batch.size() == INSERT_BATCH) {
+                transactionRepository.insertAll(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            transactionRepository.insertAll(batch);
+        }
+        balanceIndexService.apply(balance);
+        int imported = rows.size() - duplicates;
+        if (imported > 0) {
+            eventPublisher.publishEvent(new TransactionsChangedEvent(userId));
+        }
+        return new int[] {imported, duplicates};
+    }
+
+    private boolean[] findDuplicates(Long userId, List<StatementRow> rows) {
+        boolean[] duplicate = new boolean[rows.size()];
+        int backfilled = transactionRepository.backfillFingerprints(userId);
+        if (backfilled > 0) {
+            logger.info("[findDuplicates] Fingerprinted {} older transactions for userId={}", backfilled, userId);
+        }
+        long existing = transactionRepository.countByUserId(userId);
+        if (existing == 0 || rows.isEmpty()) {
+            return duplicate;
+        }
+        long started = System.nanoTime();
+        BloomFilter filter = new BloomFilter(existing, bloomFalsePositiveRate);
+        transactionRepository.forEachFingerprint(userId, filter::put);
+
+        List<Integer> suspects = new ArrayList<>();
+        Set<Long> fingerprints = new HashSet<>();
+        for (int i = 0; i < rows.size(); i++) {
+            if (filter.mightContain(rows.get(i).fingerprint)) {
+                suspects.add(i);
+                fingerprints.add(rows.get(i).fingerprint);
+            }
+        }
+        long filtered = System.nanoTime();
+        if (suspects.isEmpty()) {
+            return duplicate;
+        }
+        // Each existing transaction absorbs one equal row of the file, so only extra copies are imported
+        Map<Long, Object> candidates = new HashMap<>();
+        for (Transaction match : transactionRepository.findFingerprintMatches(userId, fingerprints)) {
+            Object previous = candidates.putIfAbsent(match.getFingerprint(), match);
+            if (previous instanceof Transaction) {
+                List<Transaction> alike = new ArrayList<>(2);
+                alike.add((Transaction) previous);
+                alike.add(match);
+                candidates.put(match.getFingerprint(), alike);
+            } else if (previous != null) {
+                @SuppressWarnings("unchecked")
+                List<Transaction> alike = (List<Transaction>) previous;
+                alike.add(match);
+            }
+        }
+        for (int index : suspects) {
+            StatementRow row = rows.get(index);
+            Object candidate = candidates.get(row.fingerprint);
+            if (candidate instanceof Transaction) {
+                if (same(row, (Transaction) candidate)) {
+                    candidates.remove(row.fingerprint);
+                    duplicate[index] = true;
+                }
+            } else if (candidate != null) {
+                @SuppressWarnings("unchecked")
+                List<Transaction> alike = (List<Transaction>) candidate;
+                for (int i = 0; i < alike.size() && !duplicate[index]; i++) {
+                    if (same(row, alike.get(i))) {
+                        alike.remove(i);
+                        duplicate[index] = true;
+                    }
+                }
+            }
+        }
+        logger.debug("[findDuplicates] userId={}: {} of {} rows passed the filter over {} existing in {} ms, checked in {} ms",
+                userId, suspects.size(), rows.size(), existing, TimeUnit.NANOSECONDS.toMillis(filtered - started),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - filtered));
+        return duplicate;
+    }
+
+    private static boolean same(StatementRow row, Transaction transaction) {
+        return transaction.getTransactionDate().toEpochDay() == row.epochDay
+                && TransactionFingerprint.signedCents(transaction) == row.cents
+                && TransactionFingerprint.sameText(transaction.getMerchant(), row.merchant)
+                && TransactionFingerprint.sameText(transaction.getDescription(), row.description);
+    }
+
+    private static Transaction toEntity(Long userId, StatementRow row) {
+        Transaction transaction = new Transaction();
+        transaction.setUserId(userId);
+        transaction.setDescription(row.description);
+        transaction.setAmount(TransactionFingerprint.amount(row.cents));
+        transaction.setType(row.cents < 0 ? Transaction.TransactionType.EXPENSE : Transaction.TransactionType.INCOME);
+        transaction.setCategory(row.category);
+        transaction.setTransactionDate(LocalDate.ofEpochDay(row.epochDay));
+        transaction.setMerchant(row.merchant);
+        transaction.setFingerprint(row.fingerprint);
+        return transaction;
+    }
+}
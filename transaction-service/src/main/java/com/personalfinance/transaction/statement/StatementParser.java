@@ -0,0 +1,272 @@
+package com.personalfinance.transaction.statement;
+
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.IntStream;
+
+/**
+ * Reads one statement format straight from the file's bytes. The file is cut
+ * into slices on record boundaries ({@link #split}) and each slice parsed on
+ * its own ({@link #parse}), possibly concurrently, so implementations keep no
+ * state between records beyond what their constructor read from the header.
+ * Text is only decoded for the fields a row keeps.
+ */
+abstract class StatementParser {
+
+    static final long NO_AMOUNT = Long.MIN_VALUE;
+    static final int NO_DATE = Integer.MIN_VALUE;
+    // Transaction.description and merchant are 100 characters
+    static final int MAX_TEXT = 100;
+    // DECIMAL(15,2)
+    private static final long MAX_CENTS = 999_999_999_999_999L;
+
+    protected final byte[] data;
+
+    StatementParser(byte[] data) {
+        this.data = data;
+    }
+
+    static StatementParser create(StatementFormat format, byte[] data) {
+        switch (format) {
+            case OFX:
+                return new OfxStatementParser(data);
+            case QIF:
+                return new QifStatementParser(data);
+            default:
+                return new CsvStatementParser(data);
+        }
+    }
+
+    /**
+     * Slice boundaries about {@code chunkBytes} apart: the first is where the
+     * records start, the last is the end of the data and every other one is
+     * the start of a record.
+     */
+    abstract int[] split(int chunkBytes);
+
+    // Parses the records starting in [from, to) into the chunk, numbering lines from 0 at from
+    abstract void parse(int from, int to, StatementChunk chunk, int maxErrors);
+
+    protected int[] splitBy(int bodyStart, int chunkBytes, IntUnaryOperator nextRecord) {
+        IntStream.Builder bounds = IntStream.builder().add(bodyStart);
+        int position = bodyStart;
+        while (position < data.length) {
+            position = Math.max(position + 1, nextRecord.applyAsInt((int) Math.min(data.length, (long) position + chunkBytes)));
+            position = Math.min(position, data.length);
+            bounds.add(position);
+        }
+        if (bodyStart >= data.length) {
+            bounds.add(data.length);
+        }
+        return bounds.build().toArray();
+    }
+
+    int countLines(int from, int to) {
+        int lines = 0;
+        for (int i = from; i < to; i++) {
+            if (data[i] == '\n') {
+                lines++;
+            }
+        }
+        return lines;
+    }
+
+    protected int indexOf(byte b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (data[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    protected int indexOf(byte[] pattern, int from, int to) {
+        byte first = pattern[0];
+        int last = to - pattern.length;
+        for (int i = from; i <= last; i++) {
+            if (data[i] == first && matches(i, pattern)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    protected boolean matches(int at, byte[] pattern) {
+        if (at + pattern.length > data.length) {
+            return false;
+        }
+        for (int i = 1; i < pattern.length; i++) {
+            if (data[at + i] != pattern[i]) {
+                return false;
+            }
+        }
+        return data[at] == pattern[0];
+    }
+
+    protected static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+
+    // The trimmed text in [from, to), cut to MAX_TEXT characters; null if blank
+    protected String text(int from, int to) {
+        while (from < to && isSpace(data[from])) {
+            from++;
+        }
+        while (to > from && isSpace(data[to - 1])) {
+            to--;
+        }
+        if (from == to) {
+            return null;
+        }
+        String text = new String(data, from, to - from, StandardCharsets.UTF_8);
+        return truncate(text);
+    }
+
+    protected static String truncate(String text) {
+        if (text.length() <= MAX_TEXT) {
+            return text;
+        }
+        int end = Character.isHighSurrogate(text.charAt(MAX_TEXT - 1)) ? MAX_TEXT - 1 : MAX_TEXT;
+        return text.substring(0, end).trim();
+    }
+
+    // For error messages: the raw value, shortened
+    protected String snippet(int from, int to) {
+        String text = text(from, Math.min(to, from + 40));
+        return text == null ? "" : text;
+    }
+
+    /**
+     * Parses an amount such as "-1,234.56", "(12.50)", "$7", "12,5" or
+     * "1.234,56" into signed cents, rounding beyond two decimals half up.
+     * Whichever of '.' and ',' comes last is the decimal separator if one or
+     * two digits follow it; the other is a thousands separator. Returns
+     * NO_AMOUNT if the text isn't a number.
+     */
+    protected long cents(int from, int to) {
+        int lastDot = -1;
+        int lastComma = -1;
+        for (int i = from; i < to; i++) {
+            if (data[i] == '.') {
+                lastDot = i;
+            } else if (data[i] == ',') {
+                lastComma = i;
+            }
+        }
+        byte decimalSeparator = '.';
+        if (lastComma > lastDot) {
+            int digitsAfter = 0;
+            for (int i = lastComma + 1; i < to && data[i] >= '0' && data[i] <= '9'; i++) {
+                digitsAfter++;
+            }
+            if (digitsAfter > 0 && digitsAfter <= 2 && lastDot < 0) {
+                decimalSeparator = ',';
+            } else if (lastDot >= 0) {
+                decimalSeparator = ',';
+            }
+        }
+        boolean negative = false;
+        boolean digits = false;
+        boolean fraction = false;
+        long value = 0;
+        int decimals = 0;
+        int roundingDigit = -1;
+        for (int i = from; i < to; i++) {
+            byte b = data[i];
+            if (b >= '0' && b <= '9') {
+                if (!fraction) {
+                    if (value > MAX_CENTS / 1000) {
+                        return NO_AMOUNT;
+                    }
+                    value = value * 10 + (b - '0');
+                } else if (decimals < 2) {
+                    value = value * 10 + (b - '0');
+                    decimals++;
+                } else if (roundingDigit < 0) {
+                    roundingDigit = b - '0';
+                }
+                digits = true;
+            } else if (b == decimalSeparator) {
+                if (fraction) {
+                    return NO_AMOUNT;
+                }
+                fraction = true;
+            } else if (b == '-' || b == '(') {
+                negative = true;
+            } else if (b == '.' || b == ',' || b == '+' || b == ')' || b == '$' || b == '\'' || isSpace(b) || b < 0) {
+                // Thousands separators, signs, currency symbols (multi-byte ones such as € and £ included)
+                continue;
+            } else {
+                return NO_AMOUNT;
+            }
+        }
+        if (!digits) {
+            return NO_AMOUNT;
+        }
+        for (; decimals < 2; decimals++) {
+            value *= 10;
+        }
+        if (roundingDigit >= 5) {
+            value++;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parses a date into an epoch day: "2024-01-15", "20240115" (anything
+     * after eight digits, like an OFX time, is ignored), "1/15/2024", "1/15/24"
+     * or QIF's "1/15'24". Dates with the year last are read month first
+     * unless the first number can't be a month. Returns NO_DATE if the text
+     * isn't a date.
+     */
+    protected int epochDay(int from, int to) {
+        int[] parts = new int[3];
+        int[] lengths = new int[3];
+        int count = 0;
+        for (int i = from; i < to && count < 3; i++) {
+            byte b = data[i];
+            if (b >= '0' && b <= '9') {
+                if (lengths[count] == 8) {
+                    count++;
+                    break;
+                }
+                parts[count] = parts[count] * 10 + (b - '0');
+                lengths[count]++;
+            } else if (lengths[count] > 0) {
+                count++;
+            }
+        }
+        if (count < 3 && lengths[Math.min(count, 2)] > 0) {
+            count++;
+        }
+        int year;
+        int month;
+        int day;
+        if (lengths[0] == 8) {
+            year = parts[0] / 10000;
+            month = parts[0] / 100 % 100;
+            day = parts[0] % 100;
+        } else if (count == 3 && lengths[0] == 4) {
+            year = parts[0];
+            month = parts[1];
+            day = parts[2];
+        } else if (count == 3 && lengths[0] <= 2 && lengths[1] <= 2 && (lengths[2] == 2 || lengths[2] == 4)) {
+            boolean dayFirst = parts[0] > 12;
+            month = dayFirst ? parts[1] : parts[0];
+            day = dayFirst ? parts[0] : parts[1];
+            year = lengths[2] == 4 ? parts[2] : parts[2] + (parts[2] < 70 ? 2000 : 1900);
+        } else {
+            return NO_DATE;
+        }
+        if (year < 1900 || year > 2999) {
+            return NO_DATE;
+        }
+        try {
+            return (int) LocalDate.of(year, month, day).toEpochDay();
+        } catch (DateTimeException e) {
+            return NO_DATE;
+        }
+    }
+}
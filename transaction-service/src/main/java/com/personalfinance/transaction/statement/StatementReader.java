@@ -0,0 +1,122 @@
+package com.personalfinance.transaction.statement;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+
+import com.personalfinance.transaction.categorize.UserCategorizer;
+import com.personalfinance.transaction.model.TransactionFingerprint;
+
+/**
+ * Parses statements on a dedicated fork-join pool. The file is cut into
+ * slices of about {@code chunkBytes} on record boundaries and each slice is
+ * parsed, categorised and fingerprinted by its own task, so one large import
+ * uses every core the pool has and all imports together never more. Rows
+ * come back in file order with line numbers as in the file.
+ */
+final class StatementReader {
+
+    static final String DEFAULT_DESCRIPTION = "Imported transaction";
+
+    private final ForkJoinPool pool;
+    private final int chunkBytes;
+    private final int maxErrors;
+
+    StatementReader(int parallelism, int chunkBytes, int maxErrors) {
+        this.pool = new ForkJoinPool(Math.max(1, parallelism), pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("statement-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+        this.chunkBytes = Math.max(4096, chunkBytes);
+        this.maxErrors = maxErrors;
+    }
+
+    void shutdown() {
+        pool.shutdown();
+    }
+
+    ParsedStatement read(StatementFormat format, byte[] data, UserCategorizer categorizer) {
+        StatementParser parser = StatementParser.create(format, data);
+        int[] bounds = parser.split(chunkBytes);
+        StatementChunk[] chunks = new StatementChunk[bounds.length - 1];
+        pool.invoke(new SliceTask(parser, categorizer, bounds, chunks, 0, chunks.length));
+
+        ParsedStatement statement = new ParsedStatement();
+        int rowCount = 0;
+        for (StatementChunk chunk : chunks) {
+            rowCount += chunk.rows.size();
+        }
+        statement.rows = new ArrayList<>(rowCount);
+        int firstLine = 1 + parser.countLines(0, bounds[0]);
+        for (StatementChunk chunk : chunks) {
+            for (StatementRow row : chunk.rows) {
+                row.line += firstLine;
+                statement.rows.add(row);
+            }
+            for (StatementChunk.StatementError error : chunk.errors) {
+                if (statement.errors.size() < maxErrors) {
+                    statement.errors.add("line " + (error.line + firstLine) + ": " + error.message);
+                }
+            }
+            statement.rejected += chunk.rejected;
+            firstLine += chunk.lines;
+        }
+        return statement;
+    }
+
+    private void parseSlice(StatementParser parser, UserCategorizer categorizer, int from, int to, StatementChunk chunk) {
+        parser.parse(from, to, chunk, maxErrors);
+        chunk.lines = parser.countLines(from, to);
+        for (StatementRow row : chunk.rows) {
+            if (row.description == null) {
+                row.description = row.merchant != null ? row.merchant : DEFAULT_DESCRIPTION;
+            }
+            row.category = categorizer.categorize(row.merchant, row.description, row.bankCategory, row.isIncome());
+            row.bankCategory = null;
+            row.fingerprint = TransactionFingerprint.of(row.epochDay, row.cents, row.merchant, row.description);
+        }
+    }
+
+    static final class ParsedStatement {
+        List<StatementRow> rows;
+        final List<String> errors = new ArrayList<>();
+        int rejected;
+    }
+
+    // Halves the slice range until one slice is left, the way the forecaster splits paths
+    private final class SliceTask extends RecursiveAction {
+        private final StatementParser parser;
+        private final UserCategorizer categorizer;
+        private final int[] bounds;
+        private final StatementChunk[] chunks;
+        private final int from;
+        private final int to;
+
+        SliceTask(StatementParser parser, UserCategorizer categorizer, int[] bounds, StatementChunk[] chunks, int from, int to) {
+            this.parser = parser;
+            this.categorizer = categorizer;
+            this.bounds = bounds;
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= 1) {
+                if (to > from) {
+                    StatementChunk chunk = new StatementChunk();
+                    parseSlice(parser, categorizer, bounds[from], bounds[from + 1], chunk);
+                    chunks[from] = chunk;
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new SliceTask(parser, categorizer, bounds, chunks, from, middle),
+                    new SliceTask(parser, categorizer, bounds, chunks, middle, to));
+        }
+    }
+}
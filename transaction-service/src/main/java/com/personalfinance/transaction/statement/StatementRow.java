@@ -0,0 +1,21 @@
+package com.personalfinance.transaction.statement;
+
+import com.personalfinance.transaction.model.Transaction;
+
+// One parsed statement line; the amount is signed, negative for money going out
+final class StatementRow {
+    // 1-based line in the file where the record starts
+    int line;
+    int epochDay;
+    long cents;
+    String merchant;
+    String description;
+    // The bank's own category text, if the format carries one
+    String bankCategory;
+    Transaction.Category category;
+    long fingerprint;
+
+    boolean isIncome() {
+        return cents > 0;
+    }
+}
@@ -0,0 +1,121 @@
+package com.personalfinance.transaction.subscription;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.personalfinance.transaction.categorize.MerchantNormalizer;
+import com.personalfinance.transaction.model.Transaction;
+
+/**
+ * One user's expenses grouped for subscription detection: by normalised
+ * merchant, then into {@link ChargeSeries} of about the same amount, so a
+ * shop where the user buys different things stays apart from the monthly
+ * plan it also sells. Built by one scan of the history and then kept up to
+ * date a charge at a time. Not thread-safe; the detector locks it.
+ */
+final class ChargeHistory {
+
+    private static final int MAX_KEYS = 65536;
+
+    private final double tolerance;
+    private final Map<String, List<ChargeSeries>> byMerchant = new HashMap<>();
+    // During the scan only: statements repeat merchant strings, and normalising one costs far more than a lookup
+    private Map<String, String> keys = new HashMap<>();
+    // Highest transaction id added; a create the scan already saw isn't added twice
+    private long lastId;
+    private int seriesCount;
+
+    ChargeHistory(double tolerance) {
+        this.tolerance = tolerance;
+    }
+
+    // A transaction created after the scan; ids only grow, so one at or below the highest seen is already in
+    void addCreated(long id, long epochDay, long cents, String merchant, String description, Transaction.Category category) {
+        if (id > lastId) {
+            add(id, epochDay, cents, merchant, description, category);
+        }
+    }
+
+    // From the scan, in date order rather than id order
+    void add(long id, long epochDay, long cents, String merchant, String description, Transaction.Category category) {
+        lastId = Math.max(lastId, id);
+        String key = key(merchant, description);
+        if (key == null || cents <= 0) {
+            return;
+        }
+        List<ChargeSeries> series = byMerchant.computeIfAbsent(key, k -> new ArrayList<>(1));
+        ChargeSeries closest = null;
+        long closestDistance = Long.MAX_VALUE;
+        for (ChargeSeries candidate : series) {
+            long distance = candidate.distance(cents, tolerance);
+            if (distance >= 0 && distance < closestDistance) {
+                closest = candidate;
+                closestDistance = distance;
+            }
+        }
+        if (closest == null) {
+            closest = new ChargeSeries();
+            series.add(closest);
+            seriesCount++;
+        }
+        closest.add((int) epochDay, cents, merchant != null && !merchant.isBlank() ? merchant : description, category);
+    }
+
+    // As MerchantNormalizer.key, remembering each string's normal form while scanning
+    private String key(String merchant, String description) {
+        String key = normalize(merchant);
+        return key != null ? key : normalize(description);
+    }
+
+    private String normalize(String text) {
+        if (keys == null || text == null) {
+            return MerchantNormalizer.normalize(text);
+        }
+        String normalized = keys.get(text);
+        if (normalized == null && !keys.containsKey(text)) {
+            normalized = MerchantNormalizer.normalize(text);
+            if (keys.size() < MAX_KEYS) {
+                keys.put(text, normalized);
+            }
+        }
+        return normalized;
+    }
+
+    // Ends the scan: series that can't be current any more, even yearly, only take memory
+    void prune(LocalDate today) {
+        keys = null;
+        long oldest = today.toEpochDay() - ChargeSeries.Period.YEARLY.days - 2L * ChargeSeries.Period.YEARLY.tolerance;
+        Iterator<List<ChargeSeries>> merchants = byMerchant.values().iterator();
+        while (merchants.hasNext()) {
+            List<ChargeSeries> series = merchants.next();
+            int before = series.size();
+            series.removeIf(candidate -> candidate.lastDay() < oldest);
+            seriesCount -= before - series.size();
+            if (series.isEmpty()) {
+                merchants.remove();
+            }
+        }
+    }
+
+    // The series that repeat on a period and are still being charged
+    List<ChargeSeries> current(LocalDate today) {
+        List<ChargeSeries> current = new ArrayList<>();
+        for (List<ChargeSeries> series : byMerchant.values()) {
+            for (ChargeSeries candidate : series) {
+                ChargeSeries.Period period = candidate.period();
+                if (period != null && ChargeSeries.isCurrent(period, LocalDate.ofEpochDay(candidate.lastDay()), today)) {
+                    current.add(candidate);
+                }
+            }
+        }
+        return current;
+    }
+
+    int seriesCount() {
+        return seriesCount;
+    }
+}
@@ -0,0 +1,162 @@
+package com.personalfinance.transaction.subscription;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+import com.personalfinance.transaction.model.Transaction;
+
+/**
+ * Charges from one merchant at about the same amount, oldest first: a
+ * candidate subscription. Only the latest {@link #MAX_CHARGES} are kept,
+ * which is two years of a monthly charge, so adding one costs the same
+ * however long the history. Not thread-safe; {@link ChargeHistory} is
+ * locked around it.
+ */
+final class ChargeSeries {
+
+    enum Period {
+        WEEKLY(7, 1, 3, 52), MONTHLY(30, 3, 3, 12), YEARLY(365, 10, 2, 1);
+
+        final int days;
+        // How far an interval may drift from the period and still count
+        final int tolerance;
+        final int minCharges;
+        final int perYear;
+
+        Period(int days, int tolerance, int minCharges, int perYear) {
+            this.days = days;
+            this.tolerance = tolerance;
+            this.minCharges = minCharges;
+            this.perYear = perYear;
+        }
+
+        boolean fits(long interval) {
+            int low = this == MONTHLY ? 28 - tolerance : days - tolerance;
+            int high = this == MONTHLY ? 31 + tolerance : days + tolerance;
+            return interval >= low && interval <= high;
+        }
+
+        LocalDate after(LocalDate date) {
+            switch (this) {
+                case WEEKLY: return date.plusWeeks(1);
+                case MONTHLY: return date.plusMonths(1);
+                default: return date.plusYears(1);
+            }
+        }
+
+        long monthlyCents(long cents) {
+            return Math.round(cents * (double) perYear / 12);
+        }
+
+        static Period of(long medianInterval) {
+            for (Period period : values()) {
+                if (period.fits(medianInterval)) {
+                    return period;
+                }
+            }
+            return null;
+        }
+    }
+
+    static final int MAX_CHARGES = 24;
+    // Share of intervals that must fit the period, as for forecast patterns
+    private static final double MIN_REGULARITY = 0.75;
+    // Two charges a year apart only count at the same price, give or take this; otherwise any shop visited twice would
+    private static final long PAIR_TOLERANCE_CENTS = 100;
+
+    private int[] days = new int[2];
+    private long[] cents = new long[2];
+    private int size;
+    // Of every charge added, including those no longer kept
+    private int charges;
+    private int firstDay = Integer.MAX_VALUE;
+    // Of the latest charge
+    private String merchant;
+    private Transaction.Category category;
+
+    /**
+     * How far a charge of {@code amount} cents is from this series, or -1 if
+     * it doesn't belong: it must be within {@code tolerance} of the latest
+     * charge (so a price may creep up over the years), or within a dollar
+     * for small amounts.
+     */
+    long distance(long amount, double tolerance) {
+        long latest = cents[size - 1];
+        long distance = Math.abs(amount - latest);
+        return distance <= Math.max(latest * tolerance, 100) ? distance : -1;
+    }
+
+    // Usually appends; a backdated charge is slotted in by date, or dropped if older than all those kept
+    void add(int day, long amount, String merchant, Transaction.Category category) {
+        charges++;
+        firstDay = Math.min(firstDay, day);
+        int at = size;
+        while (at > 0 && days[at - 1] > day) {
+            at--;
+        }
+        if (size == MAX_CHARGES) {
+            if (at == 0) {
+                return;
+            }
+            System.arraycopy(days, 1, days, 0, at - 1);
+            System.arraycopy(cents, 1, cents, 0, at - 1);
+            at--;
+        } else {
+            if (size == days.length) {
+                days = Arrays.copyOf(days, Math.min(MAX_CHARGES, size * 2));
+                cents = Arrays.copyOf(cents, days.length);
+            }
+            System.arraycopy(days, at, days, at + 1, size - at);
+            System.arraycopy(cents, at, cents, at + 1, size - at);
+            size++;
+        }
+        days[at] = day;
+        cents[at] = amount;
+        if (at == size - 1) {
+            this.merchant = merchant;
+            this.category = category;
+        }
+    }
+
+    /**
+     * The period the charges repeat on, or null if they don't: the median
+     * interval picks it, and most intervals must fit it. Several charges on
+     * one day are a habit, not a schedule.
+     */
+    Period period() {
+        if (size < 2) {
+            return null;
+        }
+        int[] intervals = new int[size - 1];
+        for (int i = 1; i < size; i++) {
+            intervals[i - 1] = days[i] - days[i - 1];
+        }
+        int[] sorted = intervals.clone();
+        Arrays.sort(sorted);
+        if (sorted[0] == 0) {
+            return null;
+        }
+        Period period = Period.of(sorted[sorted.length / 2]);
+        if (period == null || size < period.minCharges
+                || size == 2 && Math.abs(cents[1] - cents[0]) > PAIR_TOLERANCE_CENTS) {
+            return null;
+        }
+        int fitting = 0;
+        for (int interval : intervals) {
+            fitting += period.fits(interval) ? 1 : 0;
+        }
+        return fitting >= MIN_REGULARITY * intervals.length ? period : null;
+    }
+
+    // False once the next charge is overdue, i.e. the subscription has probably been cancelled
+    static boolean isCurrent(Period period, LocalDate last, LocalDate today) {
+        return !period.after(last).plusDays(period.tolerance).isBefore(today);
+    }
+
+    int charges() { return charges; }
+    int firstDay() { return firstDay; }
+    int lastDay() { return days[size - 1]; }
+    long lastCents() { return cents[size - 1]; }
+    String getMerchant() { return merchant; }
+    Transaction.Category getCategory() { return category; }
+}
@@ -0,0 +1,200 @@
+package com.personalfinance.transaction.subscription;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.personalfinance.transaction.cache.UserCache;
+import com.personalfinance.transaction.dto.SubscriptionsResponse;
+import com.personalfinance.transaction.model.Money;
+import com.personalfinance.transaction.model.Transaction;
+import com.personalfinance.transaction.repository.TransactionRepository;
+import com.personalfinance.transaction.service.TransactionCreatedEvent;
+import com.personalfinance.transaction.service.TransactionsChangedEvent;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Finds a user's subscriptions: expenses from one merchant at about the same
+ * amount (within {@code amount-tolerance}) that repeat weekly, monthly or
+ * yearly and are still being charged.
+ *
+ * The first request for a user scans their last {@code history-days} of
+ * expenses once into a {@link ChargeHistory}, which is cached; after that a
+ * created expense is added to it in O(1) rather than the history being read
+ * again. Edits, deletes, imports and batches drop the user's entry, so the
+ * next request scans afresh; entries also expire after {@code ttl-ms}
+ * (see {@link UserCache}). Scans and updates run on a
+ * pool of {@code parallelism} workers (one per core by default), so however
+ * many users ask at once, detection never takes more cores than that.
+ */
+@Service
+public class SubscriptionDetector {
+    private static final Logger logger = LoggerFactory.getLogger(SubscriptionDetector.class);
+
+    private final TransactionRepository transactionRepository;
+    // Workers have no transaction of their own; the scan streams through a cursor, which needs one
+    private final TransactionTemplate readOnly;
+    private final ExecutorService workers;
+    private final int historyDays;
+    private final double amountTolerance;
+
+    private final UserCache<ChargeHistory> histories;
+    private final Timer scanTimer;
+
+    public SubscriptionDetector(TransactionRepository transactionRepository,
+                                PlatformTransactionManager transactionManager,
+                                MeterRegistry meterRegistry,
+                                @Value("${subscription.parallelism:0}") int parallelism,
+                                @Value("${subscription.history-days:800}") int historyDays,
+                                @Value("${subscription.amount-tolerance:0.1}") double amountTolerance,
+                                @Value("${subscription.cache-size:10000}") int cacheSize,
+                                @Value("${subscription.ttl-ms:900000}") long ttlMillis) {
+        this.transactionRepository = transactionRepository;
+        this.readOnly = new TransactionTemplate(transactionManager);
+        this.readOnly.setReadOnly(true);
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadCount = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "subscription-" + threadCount.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.historyDays = historyDays;
+        this.amountTolerance = amountTolerance;
+        this.histories = UserCache.ofSize(cacheSize, ttlMillis);
+        this.scanTimer = Timer.builder("subscription.scan.duration").register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void stop() {
+        workers.shutdownNow();
+    }
+
+    public SubscriptionsResponse getSubscriptions(Long userId) {
+        LocalDate today = LocalDate.now();
+        ChargeHistory history = history(userId, today);
+
+        List<SubscriptionsResponse.Subscription> subscriptions = new ArrayList<>();
+        long monthlyCents = 0;
+        synchronized (history) {
+            for (ChargeSeries series : history.current(today)) {
+                ChargeSeries.Period period = series.period();
+                LocalDate last = LocalDate.ofEpochDay(series.lastDay());
+                long seriesMonthlyCents = period.monthlyCents(series.lastCents());
+                SubscriptionsResponse.Subscription subscription = new SubscriptionsResponse.Subscription();
+                subscription.setMerchant(series.getMerchant());
+                subscription.setCategory(series.getCategory());
+                subscription.setPeriod(period.name());
+                subscription.setAmount(Money.toDecimal(series.lastCents()));
+                subscription.setMonthlyCost(Money.toDecimal(seriesMonthlyCents));
+                subscription.setCharges(series.charges());
+                subscription.setFirstCharged(LocalDate.ofEpochDay(series.firstDay()));
+                subscription.setLastCharged(last);
+                subscription.setNextExpected(period.after(last));
+                subscriptions.add(subscription);
+                monthlyCents = Money.add(monthlyCents, seriesMonthlyCents);
+            }
+        }
+        subscriptions.sort(Comparator.comparing(SubscriptionsResponse.Subscription::getMonthlyCost).reversed());
+
+        SubscriptionsResponse response = new SubscriptionsResponse();
+        response.setUserId(userId);
+        response.setCount(subscriptions.size());
+        response.setMonthlyCost(Money.toDecimal(monthlyCents));
+        response.setSubscriptions(subscriptions);
+        return response;
+    }
+
+    /**
+     * Runs after the write commits. A single create is added to the cached
+     * history in the background; anything else drops it. Either way the
+     * stripe's generation moves on, so a scan that started before the write
+     * and might have missed it isn't cached.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onTransactionsChanged(TransactionsChangedEvent event) {
+        Long userId = event.getUserId();
+        if (!(event instanceof TransactionCreatedEvent)) {
+            histories.invalidate(userId);
+            return;
+        }
+        Transaction transaction = ((TransactionCreatedEvent) event).getTransaction();
+        // Kept current; requests before the worker gets to it see the history without this one
+        ChargeHistory history = histories.advance(userId);
+        if (history == null) {
+            return;
+        }
+        if (transaction.getType() != Transaction.TransactionType.EXPENSE
+                || transaction.getTransactionDate() == null || transaction.getAmount() == null) {
+            return;
+        }
+        long cents = Money.cents(transaction.getAmount());
+        try {
+            workers.execute(() -> {
+                synchronized (history) {
+                    history.addCreated(transaction.getId(), transaction.getTransactionDate().toEpochDay(), cents,
+                            transaction.getMerchant(), transaction.getDescription(), transaction.getCategory());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            histories.invalidate(userId);
+        }
+    }
+
+    private ChargeHistory history(Long userId, LocalDate today) {
+        return histories.get(userId, id -> submitScan(id, today));
+    }
+
+    private ChargeHistory submitScan(Long userId, LocalDate today) {
+        Future<ChargeHistory> scan = workers.submit(() -> scan(userId, today));
+        try {
+            return scan.get();
+        } catch (InterruptedException e) {
+            scan.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while detecting subscriptions", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private ChargeHistory scan(Long userId, LocalDate today) {
+        long started = System.nanoTime();
+        ChargeHistory history = new ChargeHistory(amountTolerance);
+        int[] expenses = new int[1];
+        readOnly.executeWithoutResult(status -> transactionRepository.forEachExpense(userId, today.minusDays(historyDays),
+                (id, epochDay, cents, merchant, description, category) -> {
+                    history.add(id, epochDay, cents, merchant, description, category);
+                    expenses[0]++;
+                }));
+        history.prune(today);
+        long elapsed = System.nanoTime() - started;
+        scanTimer.record(elapsed, TimeUnit.NANOSECONDS);
+        logger.debug("[scan] userId={}: {} expenses into {} series in {} ms",
+                userId, expenses[0], history.seriesCount(), TimeUnit.NANOSECONDS.toMillis(elapsed));
+        return history;
+    }
+}
@@ -0,0 +1,76 @@
+package com.personalfinance.transaction.analytics;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.personalfinance.transaction.model.Transaction;
+import com.personalfinance.transaction.repository.TransactionRepository;
+
+/**
+ * Analytics aggregates from the column cache against the JPA path they
+ * replaced. Runs in the JVM of {@link TransactionColumnCacheTest}, which
+ * fills the database and hands over the beans below.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class AnalyticsBenchmark {
+
+    static TransactionRepository transactionRepository;
+    static TransactionColumnCache columnCache;
+    static long userId;
+
+    private YearMonth first;
+    private TransactionColumns columns;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        first = YearMonth.now().minusMonths(5);
+        columns = columnCache.columns(userId);
+    }
+
+    @Benchmark
+    public List<Object[]> jpaCategoryExpenses() {
+        return transactionRepository.getExpensesByCategory(userId);
+    }
+
+    @Benchmark
+    public long[] columnCategoryExpenses() {
+        long[] totals = columns.expenseCentsByCategory();
+        columns.expenseCategoriesPresent();
+        return totals;
+    }
+
+    // As the trend endpoint did: the entities in range, summed per month as decimals
+    @Benchmark
+    public Map<String, BigDecimal> jpaMonthlyTotals() {
+        Map<String, BigDecimal> totals = new HashMap<>();
+        LocalDate end = first.plusMonths(6).atDay(1);
+        for (Transaction transaction : transactionRepository.findByUserIdAndTransactionDateGreaterThanEqual(userId, first.atDay(1))) {
+            if (transaction.getTransactionDate().isBefore(end)) {
+                String key = YearMonth.from(transaction.getTransactionDate()) + " " + transaction.getType();
+                totals.merge(key, transaction.getAmount(), BigDecimal::add);
+            }
+        }
+        return totals;
+    }
+
+    @Benchmark
+    public long[] columnMonthlyTotals() {
+        return columns.monthlyCents(first, 6);
+    }
+}
@@ -0,0 +1,209 @@
+package com.personalfinance.transaction.analytics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.personalfinance.transaction.balance.BalanceIndexService;
+import com.personalfinance.transaction.categorize.MerchantCategorizer;
+import com.personalfinance.transaction.model.Money;
+import com.personalfinance.transaction.model.Transaction;
+import com.personalfinance.transaction.model.Transaction.Category;
+import com.personalfinance.transaction.model.Transaction.TransactionType;
+import com.personalfinance.transaction.repository.TransactionRepository;
+import com.personalfinance.transaction.service.TransactionService;
+import com.personalfinance.transaction.service.TransactionsChangedEvent;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+// The service's aggregates from the columns against the JPA queries and entities they replaced, on H2
+@DataJpaTest(properties = {
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.default_schema=",
+        "spring.jpa.show-sql=false",
+        "categorization.rules-check-ms=0"
+})
+@Import({TransactionService.class, TransactionColumnCache.class, MerchantCategorizer.class, BalanceIndexService.class,
+        TransactionColumnCacheTest.Config.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class TransactionColumnCacheTest {
+
+    private static final long USER = 1L;
+    private static final long OTHER_USER = 2L;
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private TransactionColumnCache cache;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @TestConfiguration
+    static class Config {
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        transactionRepository.deleteAll();
+        cache.onTransactionsChanged(new TransactionsChangedEvent(USER));
+        cache.onTransactionsChanged(new TransactionsChangedEvent(OTHER_USER));
+    }
+
+    @Test
+    void categoryExpensesMatchTheGroupByQuery() {
+        transactionRepository.saveAll(randomTransactions(USER, 2_000, new Random(1)));
+        transactionRepository.saveAll(randomTransactions(OTHER_USER, 500, new Random(2)));
+
+        Map<String, BigDecimal> expected = new HashMap<>();
+        for (Object[] row : transactionRepository.getExpensesByCategory(USER)) {
+            // The old loop failed on expenses without a category; the columns leave them out
+            if (row[0] != null) {
+                expected.put(((Category) row[0]).name(), (BigDecimal) row[1]);
+            }
+        }
+
+        Map<String, BigDecimal> actual = transactionService.getCategoryExpenses(USER);
+
+        assertThat(actual.keySet()).isEqualTo(expected.keySet());
+        expected.forEach((category, total) -> assertThat(actual.get(category)).isEqualByComparingTo(total));
+    }
+
+    @Test
+    void typeTotalsMatchTheSumQuery() {
+        transactionRepository.saveAll(randomTransactions(USER, 2_000, new Random(3)));
+
+        TransactionColumns columns = cache.columns(USER);
+
+        for (TransactionType type : TransactionType.values()) {
+            BigDecimal expected = transactionRepository.getTotalAmountByUserIdAndType(USER, type);
+            assertThat(Money.toDecimal(columns.totalCents(type))).isEqualByComparingTo(expected);
+        }
+    }
+
+    @Test
+    void monthlyTotalsMatchSummingTheMonthsEntities() {
+        transactionRepository.saveAll(randomTransactions(USER, 2_000, new Random(4)));
+        transactionRepository.saveAll(randomTransactions(OTHER_USER, 500, new Random(5)));
+        YearMonth first = YearMonth.now().minusMonths(5);
+
+        List<Map<String, BigDecimal>> actual = transactionService.getMonthlyTotals(USER, first, 6);
+
+        // As the trend endpoint used to: the entities in range, summed per month as decimals
+        Map<YearMonth, BigDecimal> income = new HashMap<>();
+        Map<YearMonth, BigDecimal> expenses = new HashMap<>();
+        for (Transaction transaction : transactionRepository.findByUserIdAndTransactionDateGreaterThanEqual(USER, first.atDay(1))) {
+            YearMonth month = YearMonth.from(transaction.getTransactionDate());
+            if (month.isAfter(first.plusMonths(5))) {
+                continue;
+            }
+            Map<YearMonth, BigDecimal> totals = transaction.getType() == TransactionType.INCOME ? income : expenses;
+            totals.merge(month, transaction.getAmount(), BigDecimal::add);
+        }
+        assertThat(actual).hasSize(6);
+        for (int m = 0; m < 6; m++) {
+            BigDecimal monthIncome = income.getOrDefault(first.plusMonths(m), BigDecimal.ZERO);
+            BigDecimal monthExpenses = expenses.getOrDefault(first.plusMonths(m), BigDecimal.ZERO);
+            assertThat(actual.get(m).get("income")).isEqualByComparingTo(monthIncome);
+            assertThat(actual.get(m).get("expenses")).isEqualByComparingTo(monthExpenses);
+            assertThat(actual.get(m).get("savings")).isEqualByComparingTo(monthIncome.subtract(monthExpenses));
+        }
+    }
+
+    @Test
+    void aChangeIsSeenOnTheNextCall() {
+        transactionRepository.saveAll(randomTransactions(USER, 100, new Random(6)));
+        BigDecimal before = transactionService.getCategoryExpenses(USER).getOrDefault("CHARITY", BigDecimal.ZERO);
+
+        Transaction gift = new Transaction(USER, "Gift", new BigDecimal("12.34"), TransactionType.EXPENSE, Category.CHARITY);
+        gift.setTransactionDate(LocalDate.now());
+        transactionRepository.save(gift);
+        assertThat(transactionService.getCategoryExpenses(USER).getOrDefault("CHARITY", BigDecimal.ZERO))
+                .isEqualByComparingTo(before);
+
+        cache.onTransactionsChanged(new TransactionsChangedEvent(USER));
+        assertThat(transactionService.getCategoryExpenses(USER).get("CHARITY"))
+                .isEqualByComparingTo(before.add(new BigDecimal("12.34")));
+    }
+
+    /**
+     * The JMH suite: the category breakdown and six-month trend from the
+     * cached columns against the JPA queries and entities they replaced, for
+     * a user with 200,000 transactions in H2. The benchmarks share this JVM
+     * so they can reach the Spring context; run with -Pslow-tests.
+     */
+    @Test
+    @Tag("slow")
+    void jmhAgainstTheJpaPath() throws RunnerException {
+        List<Transaction> transactions = randomTransactions(USER, 200_000, new Random(7));
+        transactions.removeIf(transaction -> transaction.getCategory() == null || transaction.getTransactionDate() == null);
+        Random fingerprints = new Random(8);
+        transactions.forEach(transaction -> transaction.setFingerprint(fingerprints.nextLong()));
+        transactionRepository.insertAll(transactions);
+        AnalyticsBenchmark.transactionRepository = transactionRepository;
+        AnalyticsBenchmark.columnCache = cache;
+        AnalyticsBenchmark.userId = USER;
+
+        Map<String, Double> millis = new HashMap<>();
+        for (RunResult result : new Runner(new OptionsBuilder()
+                .include(AnalyticsBenchmark.class.getName())
+                .forks(0)
+                .warmupIterations(3)
+                .warmupTime(TimeValue.seconds(1))
+                .measurementIterations(5)
+                .measurementTime(TimeValue.seconds(1))
+                .build()).run()) {
+            millis.put(result.getParams().getBenchmark().replaceAll(".*\\.", ""), result.getPrimaryResult().getScore());
+        }
+
+        System.out.printf("[analytics] %d transactions, ms/op: %s%n", transactions.size(), millis);
+        assertThat(millis.get("columnCategoryExpenses")).isLessThan(millis.get("jpaCategoryExpenses") / 10);
+        assertThat(millis.get("columnMonthlyTotals")).isLessThan(millis.get("jpaMonthlyTotals") / 10);
+    }
+
+    // About two years of income and expenses; some expenses have no category and some rows no date
+    static List<Transaction> randomTransactions(long userId, int count, Random random) {
+        Category[] categories = Category.values();
+        List<Transaction> transactions = new ArrayList<>(count);
+        LocalDate today = LocalDate.now();
+        for (int i = 0; i < count; i++) {
+            TransactionType type = random.nextInt(5) == 0 ? TransactionType.INCOME : TransactionType.EXPENSE;
+            Category category = random.nextInt(50) == 0 ? null : categories[random.nextInt(categories.length)];
+            // Mostly everyday amounts, now and then one near the column's limit
+            long cents = random.nextInt(1_000) == 0 ? 99_999_999_999_999L - random.nextInt(1_000_000) : 1 + random.nextInt(500_000);
+            Transaction transaction = new Transaction(userId, "row " + i, Money.toDecimal(cents), type, category);
+            transaction.setTransactionDate(random.nextInt(100) == 0 ? null : today.minusDays(random.nextInt(730)));
+            transactions.add(transaction);
+        }
+        return transactions;
+    }
+}
@@ -0,0 +1,311 @@
+package com.personalfinance.transaction.anomaly;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.personalfinance.transaction.client.BudgetClient;
+import com.personalfinance.transaction.client.BudgetLimit;
+import com.personalfinance.transaction.dto.SpendingAnomalyResponse;
+import com.personalfinance.transaction.model.SpendingAnomaly;
+import com.personalfinance.transaction.model.Transaction;
+import com.personalfinance.transaction.model.Transaction.Category;
+import com.personalfinance.transaction.model.Transaction.TransactionType;
+import com.personalfinance.transaction.repository.SpendingAnomalyRepository;
+import com.personalfinance.transaction.repository.TransactionRepository;
+import com.personalfinance.transaction.service.TransactionCreatedEvent;
+import com.personalfinance.transaction.service.TransactionsChangedEvent;
+import com.personalfinance.transaction.service.TransactionsPurgedEvent;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+// Committed for real, since the detector reads and writes from its own worker
+@DataJpaTest(properties = {
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.default_schema=",
+        "spring.jpa.show-sql=false"
+})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class SpendingAnomalyDetectorTest {
+
+    private static final long USER = 1L;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private SpendingAnomalyRepository spendingAnomalyRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final BudgetClient budgetClient = mock(BudgetClient.class);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private SpendingAnomalyDetector detector;
+    // Expenses handed to the detector so far, to wait for
+    private long observed;
+
+    @BeforeEach
+    void setUp() {
+        when(budgetClient.getBudgets(any())).thenReturn(List.of());
+        detector = detector(2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        detector.stop();
+        spendingAnomalyRepository.deleteAll();
+        transactionRepository.deleteAll();
+    }
+
+    @Test
+    void anExpenseFarAboveTheCategorysUsualIsFlaggedAndStored() {
+        Random random = new Random(1);
+        for (int i = 0; i < 30; i++) {
+            create(Category.GROCERIES, BigDecimal.valueOf(4_000 + random.nextInt(2_000), 2));
+        }
+        Transaction outlier = create(Category.GROCERIES, new BigDecimal("480.00"));
+        awaitObserved();
+
+        List<SpendingAnomalyResponse> anomalies = detector.getAnomalies(USER, null, 10);
+        assertThat(anomalies).singleElement().satisfies(anomaly -> {
+            assertThat(anomaly.getKind()).isEqualTo(SpendingAnomaly.Kind.OUTLIER);
+            assertThat(anomaly.getTransactionId()).isEqualTo(outlier.getId());
+            assertThat(anomaly.getAmount()).isEqualByComparingTo("480.00");
+            assertThat(anomaly.getTypicalAmount().doubleValue()).isCloseTo(50.0, within(6.0));
+            assertThat(anomaly.getDeviations()).isGreaterThanOrEqualTo(3.0);
+        });
+        assertThat(spendingAnomalyRepository.count()).isEqualTo(1);
+    }
+
+    @Test
+    void everydayVariationIsNotFlagged() {
+        Random random = new Random(2);
+        for (int i = 0; i < 500; i++) {
+            // Log-normal spending with a spread of about a third either way
+            double amount = 30 * Math.exp(0.35 * random.nextGaussian());
+            create(Category.DINING, BigDecimal.valueOf(Math.round(amount * 100), 2));
+        }
+        awaitObserved();
+
+        // A 3-deviation threshold leaves about one in a thousand normal expenses flagged
+        assertThat(spendingAnomalyRepository.count()).isLessThanOrEqualTo(2);
+    }
+
+    @Test
+    void nothingIsFlaggedDuringTheWarmUp() {
+        for (int i = 0; i < 4; i++) {
+            create(Category.SHOPPING, new BigDecimal("20.00"));
+        }
+        create(Category.SHOPPING, new BigDecimal("5000.00"));
+        awaitObserved();
+
+        assertThat(spendingAnomalyRepository.count()).isZero();
+    }
+
+    @Test
+    void identicalBillsFlagOnlyPastTheFlooredDeviation() {
+        // With no variance the floor of 0.25 sets the bar at e^0.75 times the bill, $211.70
+        for (int i = 0; i < 12; i++) {
+            create(Category.UTILITIES, new BigDecimal("100.00"));
+            create(Category.INSURANCE, new BigDecimal("100.00"));
+        }
+        create(Category.UTILITIES, new BigDecimal("211.00"));
+        create(Category.INSURANCE, new BigDecimal("212.00"));
+        awaitObserved();
+
+        assertThat(detector.getAnomalies(USER, SpendingAnomaly.Kind.OUTLIER, 10)).singleElement().satisfies(anomaly -> {
+            assertThat(anomaly.getAmount()).isEqualByComparingTo("212.00");
+            assertThat(anomaly.getDeviations()).isEqualTo(3.01);
+        });
+    }
+
+    @Test
+    void onlyTheExpenseThatCrossesTheBudgetIsABreach() {
+        when(budgetClient.getBudgets(USER)).thenReturn(List.of(
+                new BudgetLimit("GROCERIES", new BigDecimal("200.00"), "MONTHLY", null, null)));
+
+        create(Category.GROCERIES, new BigDecimal("80.00"));
+        create(Category.GROCERIES, new BigDecimal("80.00"));
+        Transaction crossing = create(Category.GROCERIES, new BigDecimal("50.00"));
+        create(Category.GROCERIES, new BigDecimal("30.00"));
+        create(Category.DINING, new BigDecimal("500.00"));
+        awaitObserved();
+
+        LocalDate today = LocalDate.now();
+        assertThat(detector.getAnomalies(USER, SpendingAnomaly.Kind.BUDGET_BREACH, 10)).singleElement().satisfies(breach -> {
+            assertThat(breach.getTransactionId()).isEqualTo(crossing.getId());
+            assertThat(breach.getBudgetLimit()).isEqualByComparingTo("200.00");
+            assertThat(breach.getPeriodSpent()).isEqualByComparingTo("210.00");
+            assertThat(breach.getPeriodStart()).isEqualTo(today.withDayOfMonth(1));
+            assertThat(breach.getPeriodEnd()).isEqualTo(today.withDayOfMonth(today.lengthOfMonth()));
+        });
+    }
+
+    @Test
+    void spendAlreadyInThePeriodCountsTowardsTheBudget() {
+        when(budgetClient.getBudgets(USER)).thenReturn(List.of(
+                new BudgetLimit("GROCERIES", new BigDecimal("200.00"), "MONTHLY", null, null)));
+        // Imported, so never seen by the detector
+        transactionRepository.save(transaction(Category.GROCERIES, new BigDecimal("190.00")));
+
+        Transaction crossing = create(Category.GROCERIES, new BigDecimal("15.00"));
+        awaitObserved();
+
+        assertThat(detector.getAnomalies(USER, SpendingAnomaly.Kind.BUDGET_BREACH, 10)).singleElement()
+                .satisfies(breach -> assertThat(breach.getTransactionId()).isEqualTo(crossing.getId()));
+    }
+
+    @Test
+    void editsMakeThePeriodSpendBeReadAgain() {
+        when(budgetClient.getBudgets(USER)).thenReturn(List.of(
+                new BudgetLimit("GROCERIES", new BigDecimal("200.00"), "MONTHLY", null, null)));
+        Transaction first = create(Category.GROCERIES, new BigDecimal("150.00"));
+        awaitObserved();
+
+        // Edited down to $10 outside the detector's sight
+        first.setAmount(new BigDecimal("10.00"));
+        transactionRepository.save(first);
+        detector.onTransactionsChanged(new TransactionsChangedEvent(USER));
+        create(Category.GROCERIES, new BigDecimal("100.00"));
+        awaitObserved();
+
+        assertThat(spendingAnomalyRepository.count()).isZero();
+    }
+
+    @Test
+    void aPurgeForgetsTheUsersHistory() {
+        for (int i = 0; i < 10; i++) {
+            create(Category.TRAVEL, new BigDecimal("100.00"));
+        }
+        detector.onTransactionsChanged(new TransactionsPurgedEvent(USER));
+        create(Category.TRAVEL, new BigDecimal("5000.00"));
+        awaitObserved();
+
+        // Back in its warm-up
+        assertThat(spendingAnomalyRepository.count()).isZero();
+    }
+
+    @Test
+    void incomeIsNotObserved() {
+        for (int i = 0; i < 10; i++) {
+            create(Category.SALARY, new BigDecimal("3000.00"), TransactionType.INCOME);
+        }
+        create(Category.SALARY, new BigDecimal("90000.00"), TransactionType.INCOME);
+        create(Category.GROCERIES, new BigDecimal("10.00"));
+        awaitObserved();
+
+        assertThat(spendingAnomalyRepository.count()).isZero();
+    }
+
+    /**
+     * Per-insert overhead: what a create pays to hand its expense over, and
+     * what the worker spends on it. Only runs with -Pslow-tests.
+     */
+    @Test
+    @Tag("slow")
+    void perInsertOverhead() {
+        when(budgetClient.getBudgets(any())).thenReturn(List.of(
+                new BudgetLimit("GROCERIES", new BigDecimal("100000.00"), "MONTHLY", null, null)));
+        detector.stop();
+        detector = detector(1);
+        Random random = new Random(3);
+        Category[] categories = {Category.GROCERIES, Category.DINING, Category.SHOPPING, Category.TRANSPORTATION};
+        int users = 1_000;
+        int expenses = 200_000;
+        long[] handOffNanos = new long[expenses];
+
+        for (int i = 0; i < expenses; i++) {
+            Transaction expense = transaction(categories[random.nextInt(categories.length)],
+                    BigDecimal.valueOf(500 + random.nextInt(10_000), 2));
+            expense.setUserId((long) random.nextInt(users));
+            expense.setId((long) i);
+            TransactionCreatedEvent event = new TransactionCreatedEvent(expense);
+            long started = System.nanoTime();
+            detector.onTransactionsChanged(event);
+            handOffNanos[i] = System.nanoTime() - started;
+            observed++;
+            if (i % 5_000 == 4_999) {
+                // Stay within the queue, so every event is observed
+                awaitObserved();
+            }
+        }
+        awaitObserved();
+        Arrays.sort(handOffNanos);
+
+        Timer timer = registry.timer("anomaly.observe.duration");
+        System.out.printf("[anomaly] %d expenses over %d users: hand-off p50 %d ns, p99 %d ns;"
+                        + " worker mean %.1f us, max %.1f ms%n",
+                expenses, users, handOffNanos[expenses / 2], handOffNanos[expenses * 99 / 100],
+                timer.mean(TimeUnit.MICROSECONDS), timer.max(TimeUnit.MILLISECONDS));
+        assertThat(handOffNanos[expenses * 99 / 100]).isLessThan(TimeUnit.MICROSECONDS.toNanos(50));
+        assertThat(timer.mean(TimeUnit.MICROSECONDS)).isLessThan(100);
+    }
+
+    private SpendingAnomalyDetector detector(int workers) {
+        return new SpendingAnomalyDetector(transactionRepository, spendingAnomalyRepository, budgetClient, transactionManager,
+                registry, 0.1, 3.0, 5, 0.25, 100_000, 60_000, workers, 10_000);
+    }
+
+    private Transaction create(Category category, BigDecimal amount) {
+        return create(category, amount, TransactionType.EXPENSE);
+    }
+
+    // Saved and committed, then announced as the create path does once it has committed
+    private Transaction create(Category category, BigDecimal amount, TransactionType type) {
+        Transaction transaction = transaction(category, amount);
+        transaction.setType(type);
+        Transaction saved = transactionRepository.save(transaction);
+        detector.onTransactionsChanged(new TransactionCreatedEvent(saved));
+        if (type == TransactionType.EXPENSE) {
+            observed++;
+        }
+        return saved;
+    }
+
+    private static Transaction transaction(Category category, BigDecimal amount) {
+        Transaction transaction = new Transaction(USER, category.name(), amount, TransactionType.EXPENSE, category);
+        transaction.setTransactionDate(LocalDate.now());
+        return transaction;
+    }
+
+    private void awaitObserved() {
+        awaitObserved(observed);
+    }
+
+    // Events are handled on the workers; the timer counts each expense once it is done
+    private void awaitObserved(long expenses) {
+        Timer timer = registry.timer("anomaly.observe.duration");
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (timer.count() < expenses) {
+            assertThat(System.nanoTime()).as("waiting for %d expenses to be observed", expenses).isLessThan(deadline);
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new AssertionError(e);
+            }
+        }
+    }
+}
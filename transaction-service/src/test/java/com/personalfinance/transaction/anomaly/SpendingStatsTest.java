@@ -0,0 +1,103 @@
+package com.personalfinance.transaction.anomaly;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+import org.junit.jupiter.api.Test;
+
+import com.personalfinance.transaction.model.Transaction.Category;
+
+class SpendingStatsTest {
+
+    private static final int GROCERIES = Category.GROCERIES.ordinal();
+    private static final int DINING = Category.DINING.ordinal();
+    private static final double ALPHA = 0.1;
+
+    @Test
+    void theFirstExpensesGiveThePlainMeanAndVariance() {
+        SpendingStats stats = new SpendingStats();
+        double[] logs = {1.0, 2.0, 4.0, 3.0, 5.0, 2.5};
+
+        for (double log : logs) {
+            stats.observe(GROCERIES, log, ALPHA);
+        }
+
+        double mean = 17.5 / 6;
+        double variance = 0;
+        for (double log : logs) {
+            variance += (log - mean) * (log - mean) / logs.length;
+        }
+        assertThat(stats.typicalLogAmount(GROCERIES)).isCloseTo(mean, within(1e-12));
+        assertThat(stats.deviations(GROCERIES, mean + Math.sqrt(variance), 1, 0)).isCloseTo(1.0, within(1e-12));
+    }
+
+    @Test
+    void laterExpensesAreWeightedExponentially() {
+        SpendingStats stats = new SpendingStats();
+        for (int i = 0; i < 10; i++) {
+            stats.observe(GROCERIES, 1.0, ALPHA);
+        }
+
+        stats.observe(GROCERIES, 2.0, ALPHA);
+
+        // Past the warm-up each expense moves the mean by alpha of its difference
+        assertThat(stats.typicalLogAmount(GROCERIES)).isCloseTo(1.1, within(1e-12));
+        // and the variance to (1 - alpha)(variance + alpha * diff^2)
+        assertThat(stats.deviations(GROCERIES, 1.1 + Math.sqrt(0.9 * 0.1), 1, 0)).isCloseTo(1.0, within(1e-12));
+
+        for (int i = 0; i < 200; i++) {
+            stats.observe(GROCERIES, 2.0, ALPHA);
+        }
+        // Old spending fades out
+        assertThat(stats.typicalLogAmount(GROCERIES)).isCloseTo(2.0, within(1e-6));
+    }
+
+    @Test
+    void thereIsNoScoreUntilTheCategoryHasEnoughExpenses() {
+        SpendingStats stats = new SpendingStats();
+        for (int i = 0; i < 4; i++) {
+            stats.observe(GROCERIES, 3.0, ALPHA);
+        }
+
+        assertThat(stats.deviations(GROCERIES, 10.0, 5, 0.25)).isNaN();
+        stats.observe(GROCERIES, 3.0, ALPHA);
+        assertThat(stats.deviations(GROCERIES, 10.0, 5, 0.25)).isCloseTo(28.0, within(1e-9));
+        // Categories are kept apart
+        assertThat(stats.deviations(DINING, 10.0, 5, 0.25)).isNaN();
+    }
+
+    @Test
+    void theDeviationIsFlooredSoIdenticalBillsDontFlagSmallChanges() {
+        SpendingStats stats = new SpendingStats();
+        for (int i = 0; i < 12; i++) {
+            stats.observe(GROCERIES, Math.log(10_000), ALPHA);
+        }
+
+        // Zero variance: the floor alone scales the score
+        assertThat(stats.deviations(GROCERIES, Math.log(12_000), 5, 0.25)).isCloseTo(Math.log(1.2) / 0.25, within(1e-9));
+        assertThat(stats.deviations(GROCERIES, Math.log(9_000), 5, 0.25)).isNegative();
+    }
+
+    @Test
+    void periodSpendIsOnlyKeptForTheTrackedPeriod() {
+        SpendingStats stats = new SpendingStats();
+
+        assertThat(stats.addToPeriod(SpendingStats.MONTHLY, GROCERIES, 100, 500)).isEqualTo(SpendingStats.NO_PERIOD);
+        stats.trackPeriod(SpendingStats.MONTHLY, GROCERIES, 100, 2_000);
+        assertThat(stats.addToPeriod(SpendingStats.MONTHLY, GROCERIES, 100, 500)).isEqualTo(2_500);
+        // Another period, kind or category starts untracked
+        assertThat(stats.addToPeriod(SpendingStats.MONTHLY, GROCERIES, 131, 500)).isEqualTo(SpendingStats.NO_PERIOD);
+        assertThat(stats.addToPeriod(SpendingStats.WEEKLY, GROCERIES, 100, 500)).isEqualTo(SpendingStats.NO_PERIOD);
+        assertThat(stats.addToPeriod(SpendingStats.MONTHLY, DINING, 100, 500)).isEqualTo(SpendingStats.NO_PERIOD);
+
+        stats.forgetPeriods();
+        assertThat(stats.addToPeriod(SpendingStats.MONTHLY, GROCERIES, 100, 500)).isEqualTo(SpendingStats.NO_PERIOD);
+    }
+
+    @Test
+    void periodsAreKeptByKind() {
+        assertThat(SpendingStats.periodKind("WEEKLY")).isEqualTo(SpendingStats.WEEKLY);
+        assertThat(SpendingStats.periodKind("MONTHLY")).isEqualTo(SpendingStats.MONTHLY);
+        assertThat(SpendingStats.periodKind("YEARLY")).isEqualTo(SpendingStats.YEARLY);
+    }
+}
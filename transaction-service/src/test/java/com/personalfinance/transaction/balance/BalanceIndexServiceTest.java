@@ -0,0 +1,195 @@
+package com.personalfinance.transaction.balance;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.personalfinance.transaction.model.BalanceDay;
+import com.personalfinance.transaction.model.Transaction;
+import com.personalfinance.transaction.model.Transaction.Category;
+import com.personalfinance.transaction.model.Transaction.TransactionType;
+import com.personalfinance.transaction.repository.BalanceDayRepository;
+import com.personalfinance.transaction.repository.BalanceIndexRepository;
+import com.personalfinance.transaction.repository.TransactionRepository;
+import com.personalfinance.transaction.service.TransactionsChangedEvent;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+// Builds and patches on H2, as the dev profile runs them; committed for real, as the writes that patch are
+@DataJpaTest(properties = {
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.default_schema=",
+        "spring.jpa.show-sql=false"
+})
+@Import({BalanceIndexService.class, BalanceIndexServiceTest.Config.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class BalanceIndexServiceTest {
+
+    private static final long USER = 1L;
+    private static final LocalDate START = LocalDate.of(2023, 1, 1);
+
+    @Autowired
+    private BalanceIndexService service;
+
+    @Autowired
+    private BalanceIndexRepository balanceIndexRepository;
+
+    @Autowired
+    private BalanceDayRepository balanceDayRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @TestConfiguration
+    static class Config {
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        balanceIndexRepository.deleteAll();
+        balanceDayRepository.deleteAll();
+        transactionRepository.deleteAll();
+        service.onTransactionsChanged(new TransactionsChangedEvent(USER));
+    }
+
+    @Test
+    void readsBeforeAnyWriteSumTheTransactionsAndStoreNothing() {
+        for (int day = 0; day < 365; day++) {
+            save(START.plusDays(day), "12.50", TransactionType.EXPENSE);
+        }
+        save(START, "3000.00", TransactionType.INCOME);
+
+        NetFlowIndex index = service.index(USER);
+
+        assertThat(index.totalExpenseCents()).isEqualTo(365 * 1250L);
+        assertThat(index.totalIncomeCents()).isEqualTo(300000);
+        assertThat(index.balanceCents(START.plusDays(9))).isEqualTo(300000 - 10 * 1250L);
+        assertThat(balanceIndexRepository.count()).isZero();
+        assertThat(balanceDayRepository.count()).isZero();
+    }
+
+    @Test
+    void firstPatchBuildsTheDaysAndPatchesAddToThem() {
+        Transaction kept = save(START, "100.00", TransactionType.INCOME);
+        Transaction removed = save(START.plusDays(3), "40.00", TransactionType.EXPENSE);
+        save(null, "7.00", TransactionType.EXPENSE);
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+
+        transaction.executeWithoutResult(status -> {
+            BalancePatch patch = service.patch(USER);
+            patch.remove(removed);
+            transactionRepository.deleteById(removed.getId());
+            service.apply(patch);
+        });
+        // Already built: patching again only adds
+        transaction.executeWithoutResult(status -> {
+            BalancePatch patch = service.patch(USER);
+            patch.add(save(START.plusDays(1), "15.00", TransactionType.EXPENSE));
+            service.apply(patch);
+        });
+
+        NetFlowIndex index = stored();
+        assertThat(index.totalIncomeCents()).isEqualTo(10000);
+        assertThat(index.totalExpenseCents()).isEqualTo(2200);
+        assertThat(index.expenseCents(START, START.plusDays(3))).isEqualTo(1500);
+        assertThat(balanceIndexRepository.count()).isEqualTo(1);
+        assertThat(service.index(USER).totalExpenseCents()).isEqualTo(2200);
+        assertThat(transactionRepository.findAll()).extracting(Transaction::getId).contains(kept.getId());
+    }
+
+    @Test
+    void aPatchWritesOnlyTheDaysItTouches() {
+        for (int day = 0; day < 100; day++) {
+            save(START.plusDays(day), "1.00", TransactionType.EXPENSE);
+        }
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.executeWithoutResult(status -> service.apply(service.patch(USER)));
+        Map<Integer, Long> before = storedExpenses();
+
+        transaction.executeWithoutResult(status -> {
+            BalancePatch patch = service.patch(USER);
+            patch.add(save(START.plusDays(50), "2.00", TransactionType.EXPENSE));
+            patch.add(save(START.plusDays(200), "3.00", TransactionType.EXPENSE));
+            service.apply(patch);
+        });
+
+        Map<Integer, Long> after = storedExpenses();
+        Map<Integer, Long> expected = new TreeMap<>(before);
+        expected.put((int) START.plusDays(50).toEpochDay(), 300L);
+        expected.put((int) START.plusDays(200).toEpochDay(), 300L);
+        assertThat(after).isEqualTo(expected);
+    }
+
+    @Test
+    void buildingDropsDaysLeftWithoutAMark() {
+        save(START, "10.00", TransactionType.EXPENSE);
+        BalanceDay stray = new BalanceDay();
+        stray.setUserId(USER);
+        stray.setEpochDay((int) START.toEpochDay());
+        stray.setExpenseCents(999);
+        balanceDayRepository.save(stray);
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> service.apply(service.patch(USER)));
+
+        assertThat(stored().totalExpenseCents()).isEqualTo(1000);
+    }
+
+    @Test
+    void mergeIfAbsentKeepsTheFirstMark() {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        Integer inserted = transaction.execute(status -> balanceIndexRepository.mergeIfAbsent(USER));
+        Integer again = transaction.execute(status -> balanceIndexRepository.mergeIfAbsent(USER));
+
+        assertThat(inserted).isEqualTo(1);
+        assertThat(again).isZero();
+        assertThat(balanceIndexRepository.count()).isEqualTo(1);
+    }
+
+    private NetFlowIndex stored() {
+        DailyFlows flows = new DailyFlows();
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> balanceDayRepository.forEachDay(USER, flows::add));
+        return flows.index();
+    }
+
+    private Map<Integer, Long> storedExpenses() {
+        Map<Integer, Long> expenses = new TreeMap<>();
+        for (BalanceDay day : balanceDayRepository.findAll()) {
+            expenses.put(day.getEpochDay(), day.getExpenseCents());
+        }
+        return expenses;
+    }
+
+    private Transaction save(LocalDate date, String amount, TransactionType type) {
+        Transaction transaction = new Transaction();
+        transaction.setUserId(USER);
+        transaction.setTransactionDate(date);
+        transaction.setAmount(new BigDecimal(amount));
+        transaction.setType(type);
+        transaction.setCategory(type == TransactionType.INCOME ? Category.SALARY : Category.GROCERIES);
+        transaction.setDescription("Test");
+        return transactionRepository.save(transaction);
+    }
+}
@@ -0,0 +1,191 @@
+package com.personalfinance.transaction.balance;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.personalfinance.transaction.model.Transaction;
+import com.personalfinance.transaction.model.Transaction.TransactionType;
+
+// Checked against sums over the transactions themselves
+class DailyFlowsTest {
+
+    private static final LocalDate START = LocalDate.of(2020, 1, 1);
+
+    @Test
+    void patchedFlowsAnswerLikeDirectSums() {
+        Random random = new Random(42);
+        for (int round = 0; round < 300; round++) {
+            List<Transaction> live = new ArrayList<>();
+            DailyFlows flows = new DailyFlows();
+            int ops = 1 + random.nextInt(400);
+            for (int op = 0; op < ops; op++) {
+                int kind = random.nextInt(10);
+                if (kind < 6 || live.isEmpty()) {
+                    Transaction transaction = random(random);
+                    live.add(transaction);
+                    flows.add(transaction, 1);
+                } else if (kind < 8) {
+                    // An edit: out as it was, back in as it is
+                    Transaction transaction = live.get(random.nextInt(live.size()));
+                    flows.add(transaction, -1);
+                    Transaction edited = random(random);
+                    transaction.setAmount(edited.getAmount());
+                    transaction.setType(edited.getType());
+                    transaction.setTransactionDate(edited.getTransactionDate());
+                    flows.add(transaction, 1);
+                } else {
+                    flows.add(live.remove(random.nextInt(live.size())), -1);
+                }
+                if (random.nextInt(8) == 0) {
+                    flows = roundTrip(flows);
+                }
+            }
+            assertMatches(flows.index(), live, random);
+        }
+    }
+
+    @Test
+    void storedDaysRoundTripExactly() {
+        Random random = new Random(7);
+        for (int round = 0; round < 200; round++) {
+            DailyFlows flows = new DailyFlows();
+            List<Transaction> live = new ArrayList<>();
+            for (int i = random.nextInt(300); i > 0; i--) {
+                Transaction transaction = random(random);
+                live.add(transaction);
+                flows.add(transaction, 1);
+            }
+            DailyFlows decoded = roundTrip(flows);
+
+            assertThat(decoded.undatedIncome()).isEqualTo(flows.undatedIncome());
+            assertThat(decoded.undatedExpenses()).isEqualTo(flows.undatedExpenses());
+            assertThat(days(decoded)).isEqualTo(days(flows));
+            assertMatches(decoded.index(), live, random);
+        }
+    }
+
+    @Test
+    void removingEverythingLeavesEmptyFlows() {
+        DailyFlows flows = new DailyFlows();
+        Transaction income = transaction("2500.00", TransactionType.INCOME, START);
+        Transaction expense = transaction("12.34", TransactionType.EXPENSE, START.plusDays(400));
+        flows.add(income, 1);
+        flows.add(expense, 1);
+        flows.add(income, -1);
+        flows.add(expense, -1);
+
+        NetFlowIndex index = roundTrip(flows).index();
+        assertThat(index.totalIncomeCents()).isZero();
+        assertThat(index.totalExpenseCents()).isZero();
+        assertThat(index.balanceCents(START.plusYears(5))).isZero();
+    }
+
+    @Test
+    void implausibleDatesCountAsUndated() {
+        DailyFlows flows = new DailyFlows();
+        flows.add(transaction("10.00", TransactionType.EXPENSE, LocalDate.of(1850, 1, 1)), 1);
+        flows.add(transaction("20.00", TransactionType.INCOME, LocalDate.of(2300, 5, 5)), 1);
+        flows.add(transaction("30.00", TransactionType.EXPENSE, null), 1);
+        flows.add(transaction("5.00", TransactionType.EXPENSE, START), 1);
+
+        assertThat(flows.undatedExpenses()).isEqualTo(4000);
+        assertThat(flows.undatedIncome()).isEqualTo(2000);
+        NetFlowIndex index = flows.index();
+        assertThat(index.totalExpenseCents()).isEqualTo(4500);
+        assertThat(index.totalIncomeCents()).isEqualTo(2000);
+        // The balance only counts dated transactions
+        assertThat(index.balanceCents(START)).isEqualTo(-500);
+    }
+
+    private static void assertMatches(NetFlowIndex index, List<Transaction> live, Random random) {
+        long totalIncome = 0;
+        long totalExpenses = 0;
+        for (Transaction transaction : live) {
+            if (transaction.getType() == TransactionType.INCOME) {
+                totalIncome += cents(transaction);
+            } else if (transaction.getType() == TransactionType.EXPENSE) {
+                totalExpenses += cents(transaction);
+            }
+        }
+        assertThat(index.totalIncomeCents()).isEqualTo(totalIncome);
+        assertThat(index.totalExpenseCents()).isEqualTo(totalExpenses);
+
+        for (int query = 0; query < 200; query++) {
+            LocalDate from = START.plusDays(random.nextInt(2400) - 200);
+            LocalDate to = from.plusDays(random.nextInt(600));
+            long income = 0;
+            long expenses = 0;
+            long balance = 0;
+            for (Transaction transaction : live) {
+                LocalDate date = transaction.getTransactionDate();
+                if (date == null || date.getYear() < 1900 || date.getYear() > 2099) {
+                    continue;
+                }
+                long sign = transaction.getType() == TransactionType.INCOME ? 1
+                        : transaction.getType() == TransactionType.EXPENSE ? -1 : 0;
+                if (!date.isBefore(from) && !date.isAfter(to)) {
+                    if (sign > 0) {
+                        income += cents(transaction);
+                    } else if (sign < 0) {
+                        expenses += cents(transaction);
+                    }
+                }
+                if (!date.isAfter(to)) {
+                    balance += sign * cents(transaction);
+                }
+            }
+            assertThat(index.incomeCents(from, to)).isEqualTo(income);
+            assertThat(index.expenseCents(from, to)).isEqualTo(expenses);
+            assertThat(index.netCents(from, to)).isEqualTo(income - expenses);
+            assertThat(index.balanceCents(to)).isEqualTo(balance);
+        }
+    }
+
+    // Through the rows a balance index stores
+    private static DailyFlows roundTrip(DailyFlows flows) {
+        DailyFlows stored = new DailyFlows();
+        flows.forEachDay(stored::add);
+        return stored;
+    }
+
+    private static List<String> days(DailyFlows flows) {
+        List<String> days = new ArrayList<>();
+        flows.forEachDay((day, income, expenses) -> days.add(day + ":" + income + ":" + expenses));
+        return days;
+    }
+
+    // Some untyped, undated, or dated centuries out
+    private static Transaction random(Random random) {
+        TransactionType type = random.nextInt(20) == 0 ? null
+                : random.nextBoolean() ? TransactionType.INCOME : TransactionType.EXPENSE;
+        int date = random.nextInt(40);
+        return transaction(BigDecimal.valueOf(random.nextInt(500000), 2), type,
+                date == 0 ? null
+                        : date == 1 ? LocalDate.of(1850, 1, 1)
+                        : date == 2 ? LocalDate.of(2300, 5, 5)
+                        : START.plusDays(random.nextInt(2000)));
+    }
+
+    private static Transaction transaction(String amount, TransactionType type, LocalDate date) {
+        return transaction(new BigDecimal(amount), type, date);
+    }
+
+    private static Transaction transaction(BigDecimal amount, TransactionType type, LocalDate date) {
+        Transaction transaction = new Transaction();
+        transaction.setAmount(amount);
+        transaction.setType(type);
+        transaction.setTransactionDate(date);
+        return transaction;
+    }
+
+    private static long cents(Transaction transaction) {
+        return transaction.getAmount().movePointRight(2).longValueExact();
+    }
+}
@@ -0,0 +1,87 @@
+package com.personalfinance.transaction.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class UserCacheTest {
+
+    private static final long HOUR = 3_600_000;
+
+    @Test
+    void keepsAValueUntilTheUserIsInvalidated() {
+        UserCache<String> cache = UserCache.ofSize(10, HOUR);
+        AtomicInteger loads = new AtomicInteger();
+
+        assertThat(cache.get(1L, id -> "v" + loads.incrementAndGet())).isEqualTo("v1");
+        assertThat(cache.get(1L, id -> "v" + loads.incrementAndGet())).isEqualTo("v1");
+        cache.invalidate(1L);
+        assertThat(cache.getIfPresent(1L)).isNull();
+        assertThat(cache.get(1L, id -> "v" + loads.incrementAndGet())).isEqualTo("v2");
+    }
+
+    @Test
+    void aLoadThatRacedAWriteIsNotKept() {
+        UserCache<String> cache = UserCache.ofSize(10, HOUR);
+        long generation = cache.generation(1L);
+        cache.invalidate(1L);
+
+        cache.put(1L, "stale", generation);
+
+        assertThat(cache.getIfPresent(1L)).isNull();
+        assertThat(cache.get(1L, id -> {
+            cache.invalidate(1L);
+            return "raced";
+        })).isEqualTo("raced");
+        assertThat(cache.getIfPresent(1L)).isNull();
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedPastTheWeightBudget() {
+        UserCache<String> cache = new UserCache<>(10, HOUR, String::length);
+        cache.get(1L, id -> "aaaa");
+        cache.get(2L, id -> "bbbb");
+        cache.getIfPresent(1L);
+        cache.get(3L, id -> "cccc");
+
+        assertThat(cache.getIfPresent(1L)).isEqualTo("aaaa");
+        assertThat(cache.getIfPresent(2L)).isNull();
+        assertThat(cache.getIfPresent(3L)).isEqualTo("cccc");
+        assertThat(cache.weight()).isEqualTo(8);
+
+        // Heavier than the whole budget: served, not kept, and nothing else evicted for it
+        assertThat(cache.get(4L, id -> "x".repeat(11))).hasSize(11);
+        assertThat(cache.getIfPresent(4L)).isNull();
+        assertThat(cache.weight()).isEqualTo(8);
+    }
+
+    @Test
+    void entriesExpire() {
+        UserCache<String> cache = UserCache.ofSize(10, 0);
+        cache.get(1L, id -> "v");
+
+        assertThat(cache.getIfPresent(1L)).isNull();
+    }
+
+    @Test
+    void advanceKeepsACurrentValueButNotAStaleOne() {
+        UserCache<String> cache = UserCache.ofSize(10, HOUR);
+        cache.get(1L, id -> "v");
+        long before = cache.generation(1L);
+
+        assertThat(cache.advance(1L)).isEqualTo("v");
+        assertThat(cache.generation(1L)).isGreaterThan(before);
+        assertThat(cache.getIfPresent(1L)).isEqualTo("v");
+        // A load from before the advance missed whatever the caller is adding
+        cache.put(1L, "old", before);
+        assertThat(cache.getIfPresent(1L)).isEqualTo("v");
+
+        // 1025 shares 1's stripe; its invalidation leaves 1's entry stale, which advancing must not revive
+        cache.invalidate(1025L);
+        assertThat(cache.advance(1L)).isNull();
+        assertThat(cache.getIfPresent(1L)).isNull();
+        assertThat(cache.advance(2L)).isNull();
+    }
+}
@@ -0,0 +1,138 @@
+package com.personalfinance.transaction.categorize;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+
+import com.personalfinance.transaction.model.Transaction.Category;
+
+/**
+ * Categorising {@link #ROWS} statement-like rows against the shipped rules,
+ * through the compiled {@link CategoryRules} and through the keyword loop
+ * it replaced. Scores are per row. Launched by {@link CategoryRulesTest}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CategoryRulesBenchmark {
+
+    static final int ROWS = 100_000;
+    static final Resource SHIPPED = new ClassPathResource("statement-category-rules.csv");
+    private static final String[] PREFIXES = {"", "SQ *", "TST* ", "POS ", "DEBIT CARD PURCHASE ", "PAYPAL *"};
+    private static final String[] OTHERS = {"Corner Deli", "JOE'S HARDWARE", "Local Market", "Transfer to savings",
+            "Venmo payment", "ATM withdrawal", "Check 1042", "City of Springfield"};
+
+    private CategoryRules rules;
+    private KeywordLoop loop;
+    private List<Row> rows;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        rules = CategoryRules.load(SHIPPED);
+        loop = KeywordLoop.load(SHIPPED);
+        rows = rows(ROWS, 42, loop);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void compiled(Blackhole blackhole) {
+        for (Row row : rows) {
+            blackhole.consume(rules.match(row.merchant, row.description, null, row.income));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void keywordLoop(Blackhole blackhole) {
+        for (Row row : rows) {
+            blackhole.consume(loop.match(row.merchant, row.description, row.income));
+        }
+    }
+
+    // Card-statement merchants and descriptions, a third of them matching no rule
+    static List<Row> rows(int count, long seed, KeywordLoop loop) {
+        Random random = new Random(seed);
+        List<Row> rows = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String name = random.nextInt(3) == 0
+                    ? OTHERS[random.nextInt(OTHERS.length)]
+                    : loop.keywords.get(random.nextInt(loop.keywords.size())).toUpperCase(Locale.ROOT);
+            String merchant = PREFIXES[random.nextInt(PREFIXES.length)] + name + " #" + (1000 + random.nextInt(9000)) + " SAN FRANCISCO CA";
+            String description = "Card purchase " + (1 + random.nextInt(12)) + "/" + (1 + random.nextInt(28)) + " " + name;
+            rows.add(new Row(merchant, description, random.nextInt(10) == 0));
+        }
+        return rows;
+    }
+
+    static final class Row {
+        final String merchant;
+        final String description;
+        final boolean income;
+
+        Row(String merchant, String description, boolean income) {
+            this.merchant = merchant;
+            this.description = description;
+            this.income = income;
+        }
+    }
+
+    /**
+     * The matcher before the automaton: the merchant and description
+     * lower-cased into one string, and the first keyword of the right kind
+     * it contains.
+     */
+    static final class KeywordLoop {
+        final List<String> keywords = new ArrayList<>();
+        final List<Category> categories = new ArrayList<>();
+
+        static KeywordLoop load(Resource resource) {
+            KeywordLoop loop = new KeywordLoop();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    int comment = line.indexOf('#');
+                    String rule = (comment >= 0 ? line.substring(0, comment) : line).trim();
+                    if (!rule.isEmpty()) {
+                        int comma = rule.lastIndexOf(',');
+                        loop.keywords.add(rule.substring(0, comma).trim().toLowerCase(Locale.ROOT));
+                        loop.categories.add(Category.valueOf(rule.substring(comma + 1).trim()));
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return loop;
+        }
+
+        /** The category, or null when no rule matches. */
+        Category match(String merchant, String description, boolean income) {
+            String text = merchant.toLowerCase(Locale.ROOT) + "\n" + description.toLowerCase(Locale.ROOT) + "\n";
+            for (int k = 0; k < keywords.size(); k++) {
+                if (CategoryRules.isIncome(categories.get(k)) == income && text.contains(keywords.get(k))) {
+                    return categories.get(k);
+                }
+            }
+            return null;
+        }
+    }
+}
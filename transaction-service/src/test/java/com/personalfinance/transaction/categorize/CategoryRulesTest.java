@@ -0,0 +1,167 @@
+package com.personalfinance.transaction.categorize;
+
+import static com.personalfinance.transaction.categorize.CategoryRulesBenchmark.SHIPPED;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+
+import com.personalfinance.transaction.categorize.CategoryRulesBenchmark.KeywordLoop;
+import com.personalfinance.transaction.categorize.CategoryRulesBenchmark.Row;
+import com.personalfinance.transaction.model.Transaction.Category;
+
+// The shipped rules file, as the importer and transaction creates use it
+class CategoryRulesTest {
+
+    private static CategoryRules rules;
+
+    @BeforeAll
+    static void load() throws IOException {
+        rules = CategoryRules.load(SHIPPED);
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', nullValues = "null", value = {
+            // Income rules only apply to money in, and the rest only to money out
+            "ACME PAYROLL           | null             | false | OTHER_EXPENSE",
+            "ACME PAYROLL           | null             | true  | SALARY",
+            "Amazon                 | Refund           | true  | OTHER_INCOME",
+            "Amazon                 | Refund           | false | SHOPPING",
+            // The earlier rule wins, wherever it occurs in the text
+            "CAFE AT WHOLE FOODS    | null             | false | GROCERIES",
+            "Uber Eats              | null             | false | DINING",
+            "UBER TRIP              | null             | false | TRANSPORTATION",
+            // Merchant, description and bank category are all searched
+            "Corner shop            | Monthly rent Jan | false | RENT",
+            "Corner shop            | null             | false | OTHER_EXPENSE",
+            "null                   | null             | true  | OTHER_INCOME"
+    })
+    void matchesTheFirstRuleOfTheRightKind(String merchant, String description, boolean income, Category category) {
+        assertThat(rules.match(merchant, description, null, income)).isEqualTo(category);
+    }
+
+    @Test
+    void bankCategoryTextIsSearchedToo() {
+        assertThat(rules.match("Corner shop", null, "Pharmacy & drugstore", false)).isEqualTo(Category.HEALTHCARE);
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', nullValues = "null", value = {
+            "Groceries              | false | GROCERIES",
+            "groceries              | true  | null",
+            "Food:Groceries         | false | GROCERIES",
+            "Income/Salary          | true  | SALARY",
+            "Bills > Utilities      | false | UTILITIES",
+            "other expense          | false | OTHER_EXPENSE",
+            "Eating out             | false | null",
+            "null                   | false | null"
+    })
+    void bankCategoriesNamingOneOfOursAreTakenAsIs(String bankCategory, boolean income, Category category) {
+        assertThat(CategoryRules.named(bankCategory, income)).isEqualTo(category);
+    }
+
+    @Test
+    void commentsAndBlankLinesAreSkipped() throws IOException {
+        CategoryRules loaded = CategoryRules.load(resource("# heading\n\n  tea , dining # trailing\nbar & grill,DINING\n"));
+
+        assertThat(loaded.size()).isEqualTo(2);
+        assertThat(loaded.match("Tea house", null, null, false)).isEqualTo(Category.DINING);
+        assertThat(loaded.match("Joe's Bar & Grill", null, null, false)).isEqualTo(Category.DINING);
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+            "'coffee,DINING\nbread'          | line 2: expected keyword,CATEGORY",
+            "',DINING'                       | line 1: expected keyword,CATEGORY",
+            "'coffee,FOOD'                   | line 1: unknown category FOOD"
+    })
+    void malformedRulesAreRejectedWithTheirLine(String text, String message) {
+        assertThatThrownBy(() -> CategoryRules.load(resource(text)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageEndingWith(message);
+    }
+
+    /**
+     * The automaton against the loop it replaced, which lower-cased the
+     * merchant and description into one string and took the first keyword of
+     * the right kind it contained, over statement-like rows.
+     */
+    @Test
+    void agreesWithTheKeywordLoop() {
+        agreesWithTheKeywordLoopOn(20_000);
+    }
+
+    /** The same over a million rows. Only runs with -Pslow-tests. */
+    @Test
+    @Tag("slow")
+    void agreesWithTheKeywordLoopOnAMillionRows() {
+        agreesWithTheKeywordLoopOn(1_000_000);
+    }
+
+    /**
+     * The JMH suite: time per row through the automaton and through the
+     * keyword loop. Only runs with -Pslow-tests.
+     */
+    @Test
+    @Tag("slow")
+    void jmhAgainstTheKeywordLoop() throws RunnerException {
+        Map<String, String> results = new TreeMap<>();
+        Map<String, Double> nanos = new TreeMap<>();
+        Map<String, Double> allocated = new TreeMap<>();
+        for (RunResult result : new Runner(new OptionsBuilder()
+                .include(CategoryRulesBenchmark.class.getName())
+                .forks(1)
+                .warmupIterations(3)
+                .warmupTime(TimeValue.seconds(1))
+                .measurementIterations(5)
+                .measurementTime(TimeValue.seconds(1))
+                .addProfiler(GCProfiler.class)
+                .build()).run()) {
+            String name = result.getParams().getBenchmark().replaceAll(".*\\.", "");
+            double score = result.getPrimaryResult().getScore();
+            double bytes = result.getSecondaryResults().get("gc.alloc.rate.norm").getScore();
+            nanos.put(name, score);
+            allocated.put(name, bytes);
+            results.put(name, String.format("%.0f ns/row, %.0f B/row", score, bytes));
+        }
+
+        System.out.printf("[categorize] %s%n", results);
+        assertThat(nanos.get("compiled")).isLessThan(nanos.get("keywordLoop") / 2);
+        // The automaton folds case as it walks, with no lower-cased copy of the text
+        assertThat(allocated.get("compiled")).isLessThan(allocated.get("keywordLoop") / 4);
+    }
+
+    private static void agreesWithTheKeywordLoopOn(int count) {
+        KeywordLoop loop = KeywordLoop.load(SHIPPED);
+        int matched = 0;
+        for (Row row : CategoryRulesBenchmark.rows(count, 42, loop)) {
+            Category looped = loop.match(row.merchant, row.description, row.income);
+            Category expected = looped != null ? looped : row.income ? Category.OTHER_INCOME : Category.OTHER_EXPENSE;
+            matched += looped != null ? 1 : 0;
+            assertThat(rules.match(row.merchant, row.description, null, row.income))
+                    .as("%s / %s", row.merchant, row.description).isEqualTo(expected);
+        }
+        assertThat(matched).isGreaterThan(count / 2);
+    }
+
+    private static Resource resource(String text) {
+        return new ByteArrayResource(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
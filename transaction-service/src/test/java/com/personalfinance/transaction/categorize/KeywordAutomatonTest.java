@@ -0,0 +1,89 @@
+package com.personalfinance.transaction.categorize;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class KeywordAutomatonTest {
+
+    @Test
+    void reportsTheEarliestKeywordNotTheEarliestPosition() {
+        KeywordAutomaton automaton = new KeywordAutomaton(new String[] {"hers", "he", "she", "his"}, new int[4], 1);
+
+        assertThat(automaton.first("ushers", 0, KeywordAutomaton.NONE)).isEqualTo(0);
+        assertThat(automaton.first("ushe", 0, KeywordAutomaton.NONE)).isEqualTo(1);
+        assertThat(automaton.first("this", 0, KeywordAutomaton.NONE)).isEqualTo(3);
+        assertThat(automaton.first("nothing", 0, KeywordAutomaton.NONE)).isEqualTo(KeywordAutomaton.NONE);
+        assertThat(automaton.first(null, 0, 2)).isEqualTo(2);
+    }
+
+    @Test
+    void groupsAreSearchedSeparately() {
+        KeywordAutomaton automaton = new KeywordAutomaton(new String[] {"pay", "payroll", "roll"}, new int[] {0, 1, 0}, 2);
+
+        assertThat(automaton.first("PAYROLL", 0, KeywordAutomaton.NONE)).isEqualTo(0);
+        assertThat(automaton.first("PAYROLL", 1, KeywordAutomaton.NONE)).isEqualTo(1);
+        assertThat(automaton.first("bread roll", 1, KeywordAutomaton.NONE)).isEqualTo(KeywordAutomaton.NONE);
+    }
+
+    // Chained calls search several texts as one, but a keyword can't straddle two of them
+    @Test
+    void chainedTextsDoNotMatchAcrossTheirBoundary() {
+        KeywordAutomaton automaton = new KeywordAutomaton(new String[] {"ab", "c"}, new int[2], 1);
+
+        int best = automaton.first("xa", 0, KeywordAutomaton.NONE);
+        assertThat(automaton.first("bx", 0, best)).isEqualTo(KeywordAutomaton.NONE);
+        assertThat(automaton.first("abc", 0, automaton.first("c", 0, KeywordAutomaton.NONE))).isEqualTo(0);
+    }
+
+    @Test
+    void foldsCaseOutsideAscii() {
+        KeywordAutomaton automaton = new KeywordAutomaton(new String[] {"café", "über"}, new int[2], 1);
+
+        assertThat(automaton.first("CAFÉ DU MONDE", 0, KeywordAutomaton.NONE)).isEqualTo(0);
+        assertThat(automaton.first("ÜBER EATS", 0, KeywordAutomaton.NONE)).isEqualTo(1);
+        assertThat(automaton.first("CAFE", 0, KeywordAutomaton.NONE)).isEqualTo(KeywordAutomaton.NONE);
+    }
+
+    // Small alphabets give many overlapping keywords and texts, where failure links matter most
+    @Test
+    void matchesAFirstMatchWinsLoopOnRandomKeywords() {
+        Random random = new Random(20240405);
+        String alphabet = "abcAB é";
+        for (int round = 0; round < 200; round++) {
+            int count = 1 + random.nextInt(40);
+            String[] keywords = new String[count];
+            int[] groups = new int[count];
+            for (int k = 0; k < count; k++) {
+                keywords[k] = randomText(random, alphabet, 1 + random.nextInt(5)).toLowerCase(Locale.ROOT);
+                groups[k] = random.nextInt(3);
+            }
+            KeywordAutomaton automaton = new KeywordAutomaton(keywords, groups, 3);
+
+            for (int t = 0; t < 200; t++) {
+                String text = randomText(random, alphabet, random.nextInt(30));
+                int group = random.nextInt(3);
+                int expected = KeywordAutomaton.NONE;
+                for (int k = 0; k < count; k++) {
+                    if (groups[k] == group && text.toLowerCase(Locale.ROOT).contains(keywords[k])) {
+                        expected = k;
+                        break;
+                    }
+                }
+                assertThat(automaton.first(text, group, KeywordAutomaton.NONE)).as("%s in '%s'", String.join("|", keywords), text)
+                        .isEqualTo(expected);
+            }
+        }
+    }
+
+    private static String randomText(Random random, String alphabet, int length) {
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return text.toString();
+    }
+}
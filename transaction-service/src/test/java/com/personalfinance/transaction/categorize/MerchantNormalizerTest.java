@@ -0,0 +1,48 @@
+package com.personalfinance.transaction.categorize;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+class MerchantNormalizerTest {
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', nullValues = "null", value = {
+            "SQ *BLUE BOTTLE #0423                | blue bottle",
+            "Blue Bottle 01187                    | blue bottle",
+            "  blue   bottle                      | blue bottle",
+            "SQ *BLUE BOTTLE OAKLAND              | blue bottle oakland",
+            "McDonald's F12345                    | mcdonalds",
+            "MCDONALDS                            | mcdonalds",
+            "TST* Joe's Pizza  - SF               | joes pizza sf",
+            "POS DEBIT CARD PURCHASE SAFEWAY 1234 | safeway",
+            "PAYPAL *SPOTIFY                      | spotify",
+            "NETFLIX.COM 866-579-7172 CA          | netflixcom ca",
+            "AT&T Mobility                        | att mobility",
+            "7-Eleven                             | 7eleven",
+            "Café Müller                          | café müller",
+            "12345                                | null",
+            "'   '                                | null",
+            "null                                 | null"
+    })
+    void reducesMerchantsToTheirName(String merchant, String key) {
+        assertThat(MerchantNormalizer.normalize(merchant)).isEqualTo(key);
+    }
+
+    @Test
+    void theDescriptionStandsInForAMissingOrEmptyMerchant() {
+        assertThat(MerchantNormalizer.key("SQ *BLUE BOTTLE", "Coffee")).isEqualTo("blue bottle");
+        assertThat(MerchantNormalizer.key(null, "Card purchase Blue Bottle")).isEqualTo("card purchase blue bottle");
+        assertThat(MerchantNormalizer.key("#0423", "Coffee")).isEqualTo("coffee");
+        assertThat(MerchantNormalizer.key(null, null)).isNull();
+    }
+
+    @Test
+    void keysAreCutToTheColumnLength() {
+        String key = MerchantNormalizer.normalize("word ".repeat(100));
+
+        assertThat(key).hasSizeLessThanOrEqualTo(MerchantNormalizer.MAX_LENGTH).startsWith("word word").doesNotEndWith(" ");
+    }
+}
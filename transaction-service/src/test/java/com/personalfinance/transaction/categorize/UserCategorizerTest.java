@@ -0,0 +1,64 @@
+package com.personalfinance.transaction.categorize;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import com.personalfinance.transaction.model.Transaction.Category;
+
+class UserCategorizerTest {
+
+    private static CategoryRules rules;
+
+    @BeforeAll
+    static void load() throws IOException {
+        rules = CategoryRules.load(new ClassPathResource("statement-category-rules.csv"));
+    }
+
+    // Statements add towns and terminal codes after the name the user taught
+    @Test
+    void theLongestTaughtLeadingWordsWin() {
+        UserCategorizer categorizer = new UserCategorizer(rules, Map.of(
+                "blue", Category.SHOPPING,
+                "blue bottle", Category.GROCERIES,
+                "blue bottle oakland", Category.ENTERTAINMENT));
+
+        assertThat(categorizer.categorize("SQ *BLUE BOTTLE #0423", null, null, false)).isEqualTo(Category.GROCERIES);
+        assertThat(categorizer.categorize("Blue Bottle Oakland CA", null, null, false)).isEqualTo(Category.ENTERTAINMENT);
+        assertThat(categorizer.categorize("Blue Bottle Berkeley", null, null, false)).isEqualTo(Category.GROCERIES);
+        assertThat(categorizer.categorize("Blue Apron", null, null, false)).isEqualTo(Category.SHOPPING);
+        // Only whole words: "blueberry" doesn't start with the word "blue"
+        assertThat(categorizer.categorize("Blueberry Farm", null, null, false)).isEqualTo(Category.OTHER_EXPENSE);
+    }
+
+    @Test
+    void theDescriptionIsTheKeyWhenThereIsNoMerchant() {
+        UserCategorizer categorizer = new UserCategorizer(rules, Map.of("rent share", Category.RENT));
+
+        assertThat(categorizer.categorize(null, "Rent share Sam", null, false)).isEqualTo(Category.RENT);
+    }
+
+    @Test
+    void anOverrideOfTheWrongKindIsIgnored() {
+        UserCategorizer categorizer = new UserCategorizer(rules, Map.of("acme payroll", Category.SALARY));
+
+        assertThat(categorizer.categorize("ACME PAYROLL", null, null, true)).isEqualTo(Category.SALARY);
+        // A charge back from the employer still falls through to the rules
+        assertThat(categorizer.categorize("ACME PAYROLL", null, null, false)).isEqualTo(Category.OTHER_EXPENSE);
+    }
+
+    @Test
+    void overridesWinOverTheBankCategoryWhichWinsOverTheRules() {
+        UserCategorizer learned = new UserCategorizer(rules, Map.of("starbucks", Category.GROCERIES));
+        UserCategorizer plain = new UserCategorizer(rules, Map.of());
+
+        assertThat(learned.categorize("STARBUCKS 1234", null, "Travel", false)).isEqualTo(Category.GROCERIES);
+        assertThat(plain.categorize("STARBUCKS 1234", null, "Travel", false)).isEqualTo(Category.TRAVEL);
+        assertThat(plain.categorize("STARBUCKS 1234", null, "Coffee shops", false)).isEqualTo(Category.DINING);
+    }
+}
@@ -0,0 +1,115 @@
+package com.personalfinance.transaction.forecast;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.personalfinance.transaction.model.Transaction;
+import com.personalfinance.transaction.model.Transaction.Category;
+import com.personalfinance.transaction.model.Transaction.TransactionType;
+
+class CashFlowProfileTest {
+
+    private static final LocalDate TODAY = LocalDate.of(2024, 6, 30);
+
+    @Test
+    void aMonthlySalaryIsARecurringPatternAndLeftOutOfTheSampleDays() {
+        List<Transaction> history = new ArrayList<>();
+        for (int month = 1; month <= 6; month++) {
+            history.add(transaction("Acme payroll", "3000.00", TransactionType.INCOME, Category.SALARY,
+                    LocalDate.of(2024, month, 25)));
+        }
+        for (LocalDate day = LocalDate.of(2024, 1, 1); day.isBefore(TODAY); day = day.plusDays(1)) {
+            history.add(transaction("Corner shop", "12.50", TransactionType.EXPENSE, Category.GROCERIES, day));
+        }
+
+        CashFlowProfile profile = CashFlowProfile.build(history, 0, TODAY, 365);
+
+        assertThat(profile.getRecurring()).singleElement().satisfies(pattern -> {
+            assertThat(pattern.getCadence()).isEqualTo(RecurringPattern.Cadence.MONTHLY);
+            assertThat(pattern.getLast()).isEqualTo(LocalDate.of(2024, 6, 25));
+            assertThat(pattern.getCategory()).isEqualTo(Category.SALARY.ordinal());
+            assertThat(pattern.getAmounts()).containsOnly(300_000L);
+        });
+        assertThat(profile.getSampleDays()).isEqualTo((int) (TODAY.toEpochDay() - LocalDate.of(2024, 1, 1).toEpochDay()));
+        assertThat(profile.getEntryCents()).containsOnly(-1_250L);
+    }
+
+    @Test
+    void transactionsFromScheduledPurchasesAreLeftOut() {
+        List<Transaction> history = new ArrayList<>();
+        for (int month = 1; month <= 6; month++) {
+            Transaction rent = transaction("Rent", "900.00", TransactionType.EXPENSE, Category.RENT, LocalDate.of(2024, month, 1));
+            rent.setIdempotencyKey(CashFlowProfile.SCHEDULED_PURCHASE_KEY_PREFIX + "7:" + month);
+            history.add(rent);
+        }
+        history.add(transaction("Cinema", "15.00", TransactionType.EXPENSE, Category.ENTERTAINMENT, LocalDate.of(2024, 6, 2)));
+
+        CashFlowProfile profile = CashFlowProfile.build(history, 0, TODAY, 365);
+
+        // Their future occurrences come from scheduled-purchase-service instead
+        assertThat(profile.getRecurring()).isEmpty();
+        assertThat(profile.getEntryCents()).containsExactly(-1_500L);
+        // They still count as money spent against a budget
+        assertThat(profile.expensesBetween(Category.RENT.ordinal(), LocalDate.of(2024, 6, 1), TODAY)).isEqualTo(90_000);
+    }
+
+    @Test
+    void expensesBetweenSumsTheCategoryOverTheInclusiveRange() {
+        List<Transaction> history = List.of(
+                transaction("a", "10.00", TransactionType.EXPENSE, Category.DINING, LocalDate.of(2024, 6, 1)),
+                transaction("b", "5.00", TransactionType.EXPENSE, Category.DINING, LocalDate.of(2024, 6, 1)),
+                transaction("c", "7.25", TransactionType.EXPENSE, Category.DINING, LocalDate.of(2024, 6, 15)),
+                transaction("d", "100.00", TransactionType.EXPENSE, Category.TRAVEL, LocalDate.of(2024, 6, 15)),
+                transaction("e", "40.00", TransactionType.INCOME, Category.OTHER_INCOME, LocalDate.of(2024, 6, 15)),
+                transaction("f", "3.00", TransactionType.EXPENSE, Category.DINING, TODAY));
+
+        CashFlowProfile profile = CashFlowProfile.build(history, 0, TODAY, 365);
+
+        int dining = Category.DINING.ordinal();
+        assertThat(profile.expensesBetween(dining, LocalDate.of(2024, 6, 1), TODAY)).isEqualTo(2_525);
+        assertThat(profile.expensesBetween(dining, LocalDate.of(2024, 6, 2), LocalDate.of(2024, 6, 15))).isEqualTo(725);
+        assertThat(profile.expensesBetween(dining, LocalDate.of(2024, 6, 16), LocalDate.of(2024, 6, 29))).isZero();
+        assertThat(profile.expensesBetween(dining, LocalDate.of(2024, 5, 1), LocalDate.of(2024, 5, 31))).isZero();
+    }
+
+    @Test
+    void historyOutsideTheWindowIsIgnored() {
+        List<Transaction> history = List.of(
+                transaction("old", "50.00", TransactionType.EXPENSE, Category.SHOPPING, TODAY.minusDays(31)),
+                transaction("recent", "20.00", TransactionType.EXPENSE, Category.SHOPPING, TODAY.minusDays(30)),
+                transaction("future", "99.00", TransactionType.EXPENSE, Category.SHOPPING, TODAY.plusDays(1)));
+
+        CashFlowProfile profile = CashFlowProfile.build(history, 0, TODAY, 30);
+
+        // The pool starts at the first transaction in the window
+        assertThat(profile.getSampleDays()).isEqualTo(30);
+        assertThat(profile.getEntryCents()).containsExactly(-2_000L);
+    }
+
+    @Test
+    void lessThanAWeekOfHistorySamplesAnyPastDay() {
+        List<Transaction> history = List.of(
+                transaction("a", "1.00", TransactionType.EXPENSE, Category.DINING, TODAY.minusDays(3)),
+                transaction("b", "2.00", TransactionType.EXPENSE, Category.DINING, TODAY.minusDays(1)));
+
+        CashFlowProfile profile = CashFlowProfile.build(history, 0, TODAY, 365);
+
+        int[] sizes = new int[7];
+        Arrays.setAll(sizes, dayOfWeek -> profile.samplesFor(dayOfWeek).length);
+        assertThat(sizes).containsOnly(1, 3);
+        assertThat(CashFlowProfile.build(List.of(), 0, TODAY, 365).samplesFor(0)).isEmpty();
+    }
+
+    static Transaction transaction(String description, String amount, TransactionType type, Category category, LocalDate date) {
+        Transaction transaction = new Transaction(1L, description, new BigDecimal(amount), type, category);
+        transaction.setTransactionDate(date);
+        return transaction;
+    }
+}
@@ -0,0 +1,194 @@
+package com.personalfinance.transaction.forecast;
+
+import static com.personalfinance.transaction.forecast.CashFlowProfileTest.transaction;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.ResourceAccessException;
+
+import com.personalfinance.transaction.client.BudgetClient;
+import com.personalfinance.transaction.client.BudgetLimit;
+import com.personalfinance.transaction.client.ScheduledPurchaseClient;
+import com.personalfinance.transaction.dto.ForecastResponse;
+import com.personalfinance.transaction.model.Transaction;
+import com.personalfinance.transaction.model.Transaction.Category;
+import com.personalfinance.transaction.model.Transaction.TransactionType;
+import com.personalfinance.transaction.repository.TransactionRepository;
+import com.personalfinance.transaction.service.TransactionsChangedEvent;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class ForecastServiceTest {
+
+    private static final long USER = 1L;
+    private static final long OTHER_USER = 2L;
+
+    private final TransactionRepository transactionRepository = mock(TransactionRepository.class);
+    private final BudgetClient budgetClient = mock(BudgetClient.class);
+    private final ScheduledPurchaseClient scheduledPurchaseClient = mock(ScheduledPurchaseClient.class);
+    private List<Transaction> history = new ArrayList<>();
+    private ForecastService service;
+
+    @BeforeEach
+    void setUp() {
+        when(transactionRepository.findByUserIdAndTransactionDateGreaterThanEqual(any(), any())).thenAnswer(call -> history);
+        when(transactionRepository.getTotalAmountByUserIdAndType(any(), eq(TransactionType.INCOME))).thenReturn(new BigDecimal("1000.00"));
+        when(transactionRepository.getTotalAmountByUserIdAndType(any(), eq(TransactionType.EXPENSE))).thenReturn(new BigDecimal("250.50"));
+        when(budgetClient.getBudgets(any())).thenReturn(List.of());
+        when(scheduledPurchaseClient.getOccurrences(any(), any(), any())).thenReturn(List.of());
+        service = new ForecastService(transactionRepository, budgetClient, scheduledPurchaseClient, new SimpleMeterRegistry(),
+                365, 200, 5_000, 365, 2, 4, 100, 900_000, 60_000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.stop();
+    }
+
+    @Test
+    void theProfileIsReusedUntilTheUsersTransactionsChange() {
+        service.forecast(USER, 30, null, null);
+        service.forecast(USER, 90, 50, null);
+        verify(transactionRepository, times(1)).findByUserIdAndTransactionDateGreaterThanEqual(eq(USER), any());
+
+        service.onTransactionsChanged(new TransactionsChangedEvent(OTHER_USER));
+        service.forecast(USER, 30, null, null);
+        verify(transactionRepository, times(1)).findByUserIdAndTransactionDateGreaterThanEqual(eq(USER), any());
+
+        service.onTransactionsChanged(new TransactionsChangedEvent(USER));
+        service.forecast(USER, 30, null, null);
+        verify(transactionRepository, times(2)).findByUserIdAndTransactionDateGreaterThanEqual(eq(USER), any());
+    }
+
+    @Test
+    void aRebuiltProfileSeesTheNewHistory() {
+        ForecastResponse before = service.forecast(USER, 7, 20, BigDecimal.ZERO);
+
+        for (LocalDate day = LocalDate.now().minusDays(28); day.isBefore(LocalDate.now()); day = day.plusDays(1)) {
+            history.add(transaction("Corner shop", "10.00", TransactionType.EXPENSE, Category.GROCERIES, day));
+        }
+        assertThat(service.forecast(USER, 7, 20, BigDecimal.ZERO).getPoints().get(6).getMean())
+                .isEqualByComparingTo(before.getPoints().get(6).getMean());
+
+        service.onTransactionsChanged(new TransactionsChangedEvent(USER));
+        assertThat(service.forecast(USER, 7, 20, BigDecimal.ZERO).getPoints().get(6).getMean())
+                .isEqualByComparingTo("-70.00");
+    }
+
+    @Test
+    void theStartingBalanceDefaultsToIncomeLessExpenses() {
+        ForecastResponse response = service.forecast(USER, 3, 10, null);
+
+        assertThat(response.getStartingBalance()).isEqualByComparingTo("749.50");
+        assertThat(response.getPoints()).hasSize(3);
+        assertThat(response.getPoints().get(0).getDate()).isEqualTo(LocalDate.now().plusDays(1));
+        assertThat(response.getPaths()).isEqualTo(10);
+        assertThat(response.getWarnings()).isEmpty();
+    }
+
+    @Test
+    void anUnreachableServiceIsReportedAndNotAskedAgainUntilItsEntryExpires() {
+        when(budgetClient.getBudgets(any())).thenThrow(new ResourceAccessException("connection refused"));
+
+        ForecastResponse first = service.forecast(USER, 30, null, null);
+        ForecastResponse second = service.forecast(USER, 30, null, null);
+
+        assertThat(first.getWarnings()).containsExactly("Budgets unavailable; spending is not capped");
+        assertThat(second.getWarnings()).isEqualTo(first.getWarnings());
+        verify(budgetClient, times(1)).getBudgets(USER);
+        // Budgets and occurrences don't depend on the user's transactions
+        service.onTransactionsChanged(new TransactionsChangedEvent(USER));
+        service.forecast(USER, 30, null, null);
+        verify(budgetClient, times(1)).getBudgets(USER);
+    }
+
+    @Test
+    void theSameRequestOnTheSameDayGivesTheSameForecast() {
+        history.addAll(randomHistory(new Random(3)));
+
+        ForecastResponse first = service.forecast(USER, 60, 500, null);
+        ForecastResponse second = service.forecast(USER, 60, 500, null);
+
+        for (int day = 0; day < 60; day++) {
+            assertThat(second.getPoints().get(day).getP10()).isEqualByComparingTo(first.getPoints().get(day).getP10());
+            assertThat(second.getPoints().get(day).getP90()).isEqualByComparingTo(first.getPoints().get(day).getP90());
+        }
+    }
+
+    @Test
+    void requestsOutsideTheLimitsAreRejected() {
+        assertThatThrownBy(() -> service.forecast(USER, 0, null, null)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> service.forecast(USER, 366, null, null)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> service.forecast(USER, 30, 0, null)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> service.forecast(USER, 30, 5_001, null)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    /**
+     * The latency target: a 90-day, 1000-path forecast from cached inputs for
+     * a user with a year of history takes 20 ms or less at the median, on one
+     * core. Timing-sensitive, so it only runs with -Pslow-tests.
+     */
+    @Test
+    @Tag("slow")
+    void aCachedNinetyDayForecastMeetsTheLatencyTarget() {
+        history.addAll(randomHistory(new Random(5)));
+        when(budgetClient.getBudgets(any())).thenReturn(List.of(
+                new BudgetLimit("DINING", new BigDecimal("150.00"), "WEEKLY", null, null),
+                new BudgetLimit("GROCERIES", new BigDecimal("600.00"), "MONTHLY", null, null)));
+        service.stop();
+        service = new ForecastService(transactionRepository, budgetClient, scheduledPurchaseClient, new SimpleMeterRegistry(),
+                365, 1_000, 5_000, 365, 1, 4, 100, 900_000, 600_000);
+        for (int i = 0; i < 50; i++) {
+            service.forecast(USER, 90, null, null);
+        }
+
+        long[] millis = new long[51];
+        for (int i = 0; i < millis.length; i++) {
+            long started = System.nanoTime();
+            service.forecast(USER, 90, null, null);
+            millis[i] = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        }
+        Arrays.sort(millis);
+
+        System.out.printf("[forecast] 90 days x 1000 paths from cached inputs: p50 %d ms, max %d ms%n",
+                millis[millis.length / 2], millis[millis.length - 1]);
+        assertThat(millis[millis.length / 2]).isLessThanOrEqualTo(20);
+    }
+
+    // About a year of everyday spending, a monthly salary and rent
+    private static List<Transaction> randomHistory(Random random) {
+        Category[] spending = {Category.GROCERIES, Category.DINING, Category.SHOPPING, Category.TRANSPORTATION};
+        List<Transaction> transactions = new ArrayList<>();
+        LocalDate today = LocalDate.now();
+        for (LocalDate day = today.minusDays(365); day.isBefore(today); day = day.plusDays(1)) {
+            for (int i = random.nextInt(5); i > 0; i--) {
+                transactions.add(transaction("shop " + random.nextInt(200),
+                        BigDecimal.valueOf(100 + random.nextInt(9_000), 2).toPlainString(), TransactionType.EXPENSE,
+                        spending[random.nextInt(spending.length)], day));
+            }
+            if (day.getDayOfMonth() == 1) {
+                transactions.add(transaction("Acme payroll", "3200.00", TransactionType.INCOME, Category.SALARY, day));
+                transactions.add(transaction("Landlord", "1100.00", TransactionType.EXPENSE, Category.RENT, day));
+            }
+        }
+        return transactions;
+    }
+}
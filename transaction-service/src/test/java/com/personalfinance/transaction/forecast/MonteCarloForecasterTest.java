@@ -0,0 +1,178 @@
+package com.personalfinance.transaction.forecast;
+
+import static com.personalfinance.transaction.forecast.CashFlowProfileTest.transaction;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.personalfinance.transaction.client.BudgetLimit;
+import com.personalfinance.transaction.client.ScheduledOccurrence;
+import com.personalfinance.transaction.model.Transaction;
+import com.personalfinance.transaction.model.Transaction.Category;
+import com.personalfinance.transaction.model.Transaction.TransactionType;
+
+class MonteCarloForecasterTest {
+
+    // The last day of a month, so the forecast opens a fresh budget period
+    private static final LocalDate TODAY = LocalDate.of(2024, 3, 31);
+    private static final LocalDateTime NOW = TODAY.atTime(9, 0);
+
+    private final List<MonteCarloForecaster> forecasters = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        forecasters.forEach(MonteCarloForecaster::shutdown);
+    }
+
+    @Test
+    void aSeedGivesTheSameForecastHoweverThePathsAreSplit() {
+        CashFlowProfile profile = CashFlowProfile.build(randomHistory(), 0, TODAY, 365);
+        List<BudgetLimit> budgets = List.of(new BudgetLimit("DINING", new BigDecimal("150.00"), "WEEKLY", null, null));
+
+        MonteCarloForecaster.Forecast serial = forecaster(1).run(profile, budgets, List.of(), NOW, 60, 1_000, 50_000, 7);
+        MonteCarloForecaster.Forecast parallel = forecaster(4).run(profile, budgets, List.of(), NOW, 60, 1_000, 50_000, 7);
+        MonteCarloForecaster.Forecast reseeded = forecaster(4).run(profile, budgets, List.of(), NOW, 60, 1_000, 50_000, 8);
+
+        boolean differs = false;
+        for (int day = 0; day < 60; day++) {
+            assertThat(parallel.getMean(day)).isEqualTo(serial.getMean(day));
+            assertThat(parallel.getP10(day)).isEqualTo(serial.getP10(day));
+            assertThat(parallel.getP25(day)).isEqualTo(serial.getP25(day));
+            assertThat(parallel.getP50(day)).isEqualTo(serial.getP50(day));
+            assertThat(parallel.getP75(day)).isEqualTo(serial.getP75(day));
+            assertThat(parallel.getP90(day)).isEqualTo(serial.getP90(day));
+            assertThat(parallel.getProbabilityNegative(day)).isEqualTo(serial.getProbabilityNegative(day));
+            differs |= reseeded.getMean(day) != serial.getMean(day);
+        }
+        assertThat(differs).isTrue();
+        // Sampled futures actually spread out
+        assertThat(serial.getP90(59)).isGreaterThan(serial.getP10(59));
+    }
+
+    @Test
+    void unplannedSpendingIsTrimmedToWhatIsLeftOfItsBudget() {
+        CashFlowProfile profile = CashFlowProfile.build(dailyGroceries("100.00"), 0, TODAY, 365);
+        List<BudgetLimit> budgets = List.of(new BudgetLimit("GROCERIES", new BigDecimal("500.00"), "MONTHLY", null, null));
+
+        MonteCarloForecaster.Forecast forecast = forecaster(2).run(profile, budgets, List.of(), NOW, 45, 200, 0, 1);
+
+        assertThat(forecast.getBudgetCaps()).isEqualTo(1);
+        // Every past day spent the same, so every path agrees
+        assertThat(forecast.getP10(0)).isEqualTo(forecast.getP90(0)).isEqualTo(-10_000);
+        assertThat(forecast.getP50(3)).isEqualTo(-40_000);
+        assertThat(forecast.getP50(4)).isEqualTo(-50_000);
+        // April is capped at $500 ...
+        assertThat(forecast.getP10(29)).isEqualTo(forecast.getP90(29)).isEqualTo(-50_000);
+        // ... and May starts again
+        assertThat(forecast.getP50(30)).isEqualTo(-60_000);
+        assertThat(forecast.getStart().plusDays(30)).isEqualTo(LocalDate.of(2024, 5, 1));
+    }
+
+    @Test
+    void scheduledSpendingUsesTheBudgetUpButIsNeverTrimmed() {
+        CashFlowProfile profile = CashFlowProfile.build(dailyGroceries("100.00"), 0, TODAY, 365);
+        List<BudgetLimit> budgets = List.of(new BudgetLimit("GROCERIES", new BigDecimal("500.00"), "MONTHLY", null, null));
+        List<ScheduledOccurrence> scheduled = List.of(
+                new ScheduledOccurrence(1L, new BigDecimal("450.00"), "GROCERIES", LocalDate.of(2024, 4, 2).atTime(10, 0)));
+
+        MonteCarloForecaster.Forecast forecast = forecaster(2).run(profile, budgets, scheduled, NOW, 30, 50, 0, 1);
+
+        // $100 unplanned, then the $450 purchase leaves nothing for unplanned spending
+        assertThat(forecast.getP50(0)).isEqualTo(-10_000);
+        assertThat(forecast.getP50(1)).isEqualTo(-55_000);
+        assertThat(forecast.getP50(29)).isEqualTo(-55_000);
+    }
+
+    @Test
+    void aBudgetOutsideItsDatesCapsNothing() {
+        CashFlowProfile profile = CashFlowProfile.build(dailyGroceries("100.00"), 0, TODAY, 365);
+        List<BudgetLimit> budgets = List.of(new BudgetLimit("GROCERIES", new BigDecimal("500.00"), "MONTHLY",
+                null, LocalDate.of(2024, 4, 10)));
+
+        MonteCarloForecaster.Forecast forecast = forecaster(2).run(profile, budgets, List.of(), NOW, 20, 50, 0, 1);
+
+        assertThat(forecast.getP50(9)).isEqualTo(-50_000);
+        // From April 11 nothing caps the spending
+        assertThat(forecast.getP50(19)).isEqualTo(-150_000);
+    }
+
+    @Test
+    void purchasesStillDueTodayLandOnTheFirstDay() {
+        CashFlowProfile profile = CashFlowProfile.build(List.of(), 0, TODAY, 365);
+        List<ScheduledOccurrence> scheduled = List.of(
+                new ScheduledOccurrence(1L, new BigDecimal("25.00"), "SHOPPING", TODAY.atTime(18, 0)),
+                new ScheduledOccurrence(2L, new BigDecimal("99.00"), "SHOPPING", TODAY.atTime(8, 0)),
+                new ScheduledOccurrence(3L, new BigDecimal("40.00"), "SHOPPING", TODAY.plusDays(2).atTime(10, 0)),
+                new ScheduledOccurrence(4L, new BigDecimal("70.00"), "SHOPPING", TODAY.plusDays(10).atTime(23, 0)),
+                new ScheduledOccurrence(5L, new BigDecimal("80.00"), "SHOPPING", TODAY.plusDays(11).atTime(0, 0)));
+
+        MonteCarloForecaster.Forecast forecast = forecaster(1).run(profile, List.of(), scheduled, NOW, 10, 10, 10_000, 1);
+
+        // Already fired before now, or past the horizon: not counted
+        assertThat(forecast.getScheduledOccurrences()).isEqualTo(3);
+        assertThat(forecast.getStart()).isEqualTo(TODAY.plusDays(1));
+        assertThat(forecast.getMean(0)).isEqualTo(7_500);
+        assertThat(forecast.getMean(1)).isEqualTo(3_500);
+        assertThat(forecast.getMean(8)).isEqualTo(3_500);
+        assertThat(forecast.getMean(9)).isEqualTo(-3_500);
+        assertThat(forecast.getProbabilityNegative(9)).isEqualTo(1.0);
+    }
+
+    @Test
+    void recurringPatternsArePaidOnTheirDates() {
+        List<Transaction> history = new ArrayList<>();
+        for (int month = 0; month < 6; month++) {
+            LocalDate payday = LocalDate.of(2023, 10, 15).plusMonths(month);
+            history.add(transaction("Acme payroll", "2000.00", TransactionType.INCOME, Category.SALARY, payday));
+        }
+        CashFlowProfile profile = CashFlowProfile.build(history, 0, TODAY, 365);
+
+        MonteCarloForecaster.Forecast forecast = forecaster(1).run(profile, List.of(), List.of(), NOW, 30, 10, 0, 1);
+
+        assertThat(forecast.getRecurringPatterns()).isEqualTo(1);
+        LocalDate payday = LocalDate.of(2024, 4, 15);
+        int day = (int) (payday.toEpochDay() - forecast.getStart().toEpochDay());
+        assertThat(forecast.getMean(day - 1)).isZero();
+        assertThat(forecast.getMean(day)).isEqualTo(200_000);
+    }
+
+    private MonteCarloForecaster forecaster(int parallelism) {
+        MonteCarloForecaster forecaster = new MonteCarloForecaster(parallelism);
+        forecasters.add(forecaster);
+        return forecaster;
+    }
+
+    // A month of $amount grocery runs up to yesterday
+    private static List<Transaction> dailyGroceries(String amount) {
+        List<Transaction> history = new ArrayList<>();
+        for (LocalDate day = TODAY.minusDays(28); day.isBefore(TODAY); day = day.plusDays(1)) {
+            history.add(transaction("Corner shop", amount, TransactionType.EXPENSE, Category.GROCERIES, day));
+        }
+        return history;
+    }
+
+    private static List<Transaction> randomHistory() {
+        Random random = new Random(42);
+        Category[] spending = {Category.GROCERIES, Category.DINING, Category.SHOPPING, Category.TRANSPORTATION};
+        List<Transaction> history = new ArrayList<>();
+        for (LocalDate day = TODAY.minusDays(180); day.isBefore(TODAY); day = day.plusDays(1)) {
+            for (int i = random.nextInt(4); i > 0; i--) {
+                Category category = spending[random.nextInt(spending.length)];
+                history.add(transaction("shop " + random.nextInt(50), BigDecimal.valueOf(100 + random.nextInt(9_000), 2).toPlainString(),
+                        TransactionType.EXPENSE, category, day));
+            }
+            if (random.nextInt(10) == 0) {
+                history.add(transaction("side job " + random.nextInt(50), "250.00", TransactionType.INCOME, Category.BUSINESS, day));
+            }
+        }
+        return history;
+    }
+}
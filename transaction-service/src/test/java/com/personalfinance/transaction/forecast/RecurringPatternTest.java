@@ -0,0 +1,69 @@
+package com.personalfinance.transaction.forecast;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDate;
+
+import org.junit.jupiter.api.Test;
+
+import com.personalfinance.transaction.forecast.RecurringPattern.Cadence;
+
+class RecurringPatternTest {
+
+    @Test
+    void occurrencesAreAfterTheFirstBoundAndUpToTheSecond() {
+        RecurringPattern weekly = pattern(Cadence.WEEKLY, LocalDate.of(2024, 3, 1));
+
+        assertThat(weekly.occurrences(LocalDate.of(2024, 3, 8), LocalDate.of(2024, 3, 29)))
+                .containsExactly(LocalDate.of(2024, 3, 15), LocalDate.of(2024, 3, 22), LocalDate.of(2024, 3, 29));
+        assertThat(weekly.occurrences(LocalDate.of(2024, 3, 8), LocalDate.of(2024, 3, 14))).isEmpty();
+        assertThat(weekly.occurrences(LocalDate.of(2024, 3, 29), LocalDate.of(2024, 3, 29))).isEmpty();
+    }
+
+    @Test
+    void occurrencesStartAfterTheLastSeenOne() {
+        RecurringPattern fortnightly = pattern(Cadence.FORTNIGHTLY, LocalDate.of(2024, 3, 1));
+
+        // Projected from the last occurrence, so nothing falls between it and the window
+        assertThat(fortnightly.occurrences(LocalDate.of(2024, 2, 1), LocalDate.of(2024, 4, 1)))
+                .containsExactly(LocalDate.of(2024, 3, 15), LocalDate.of(2024, 3, 29));
+    }
+
+    @Test
+    void monthlyOccurrencesKeepTheirDayAndClampItToShortMonths() {
+        RecurringPattern monthly = new RecurringPattern(Cadence.MONTHLY, LocalDate.of(2024, 1, 31), 31, 0, new long[] {-100});
+
+        assertThat(monthly.occurrences(LocalDate.of(2024, 1, 31), LocalDate.of(2024, 5, 1)))
+                .containsExactly(LocalDate.of(2024, 2, 29), LocalDate.of(2024, 3, 31), LocalDate.of(2024, 4, 30));
+    }
+
+    @Test
+    void aSeriesStopsBeingCurrentOnceItsNextOccurrenceIsOverdue() {
+        RecurringPattern monthly = new RecurringPattern(Cadence.MONTHLY, LocalDate.of(2024, 1, 31), 31, 0, new long[] {-100});
+        RecurringPattern weekly = pattern(Cadence.WEEKLY, LocalDate.of(2024, 3, 1));
+
+        // Expected on Feb 29, with three days' grace
+        assertThat(monthly.isCurrent(LocalDate.of(2024, 3, 3))).isTrue();
+        assertThat(monthly.isCurrent(LocalDate.of(2024, 3, 4))).isFalse();
+        // Expected on Mar 8, with one
+        assertThat(weekly.isCurrent(LocalDate.of(2024, 3, 9))).isTrue();
+        assertThat(weekly.isCurrent(LocalDate.of(2024, 3, 10))).isFalse();
+    }
+
+    @Test
+    void cadencesAreRecognisedWithinTheirTolerance() {
+        assertThat(Cadence.of(6)).isEqualTo(Cadence.WEEKLY);
+        assertThat(Cadence.of(8)).isEqualTo(Cadence.WEEKLY);
+        assertThat(Cadence.of(9)).isNull();
+        assertThat(Cadence.of(12)).isEqualTo(Cadence.FORTNIGHTLY);
+        assertThat(Cadence.of(16)).isEqualTo(Cadence.FORTNIGHTLY);
+        assertThat(Cadence.of(25)).isEqualTo(Cadence.MONTHLY);
+        assertThat(Cadence.of(34)).isEqualTo(Cadence.MONTHLY);
+        assertThat(Cadence.of(35)).isNull();
+        assertThat(Cadence.of(1)).isNull();
+    }
+
+    private static RecurringPattern pattern(Cadence cadence, LocalDate last) {
+        return new RecurringPattern(cadence, last, last.getDayOfMonth(), 0, new long[] {-100});
+    }
+}
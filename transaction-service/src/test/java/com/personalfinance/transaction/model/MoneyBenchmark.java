@@ -0,0 +1,82 @@
+package com.personalfinance.transaction.model;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Aggregation as {@link Money} cents against the BigDecimal arithmetic it
+ * replaced: a sum over a million amounts, and a category's percentage of
+ * the total. Launched by {@link MoneyTest}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MoneyBenchmark {
+
+    static final int ROWS = 1_000_000;
+    private static final BigDecimal HUNDRED = BigDecimal.valueOf(100);
+
+    private long[] cents;
+    private BigDecimal[] amounts;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(1);
+        cents = new long[ROWS];
+        amounts = new BigDecimal[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            cents[i] = 1 + random.nextInt(500_000);
+            amounts[i] = Money.toDecimal(cents[i]);
+        }
+    }
+
+    @Benchmark
+    public long moneySum() {
+        long total = 0;
+        for (long amount : cents) {
+            total = Money.add(total, amount);
+        }
+        return total;
+    }
+
+    @Benchmark
+    public BigDecimal decimalSum() {
+        BigDecimal total = BigDecimal.ZERO;
+        for (BigDecimal amount : amounts) {
+            total = total.add(amount);
+        }
+        return total;
+    }
+
+    // One category's share, with the whole a few rows' worth so the ratios vary
+    @Benchmark
+    public void moneyPercent(Blackhole blackhole) {
+        int i = nextRow();
+        blackhole.consume(Money.percent(cents[i], cents[i] + cents[i + 1] + cents[i + 2]));
+    }
+
+    @Benchmark
+    public void decimalPercent(Blackhole blackhole) {
+        int i = nextRow();
+        BigDecimal whole = amounts[i].add(amounts[i + 1]).add(amounts[i + 2]);
+        blackhole.consume(amounts[i].divide(whole, 4, RoundingMode.HALF_UP).multiply(HUNDRED));
+    }
+
+    private int nextRow() {
+        next = next < ROWS - 3 ? next + 1 : 0;
+        return next;
+    }
+}
@@ -0,0 +1,163 @@
+package com.personalfinance.transaction.model;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+class MoneyTest {
+
+    // The largest amount a precision = 15, scale = 2 column holds
+    private static final BigDecimal COLUMN_MAX = new BigDecimal("9999999999999.99");
+
+    @Test
+    void centsRoundHalfUpAsStoringTheAmountWould() {
+        assertThat(Money.cents(new BigDecimal("12.34"))).isEqualTo(1_234);
+        assertThat(Money.cents(new BigDecimal("12.3"))).isEqualTo(1_230);
+        assertThat(Money.cents(new BigDecimal("12"))).isEqualTo(1_200);
+        assertThat(Money.cents(new BigDecimal("0.005"))).isEqualTo(1);
+        assertThat(Money.cents(new BigDecimal("0.0049999"))).isZero();
+        assertThat(Money.cents(new BigDecimal("2.675"))).isEqualTo(268);
+        // Half up rounds away from zero, for refunds too
+        assertThat(Money.cents(new BigDecimal("-0.005"))).isEqualTo(-1);
+        assertThat(Money.cents(new BigDecimal("-2.675"))).isEqualTo(-268);
+        assertThat(Money.cents(new BigDecimal("-0.0049999"))).isZero();
+    }
+
+    @Test
+    void everyAmountTheColumnHoldsRoundTrips() {
+        assertThat(Money.cents(COLUMN_MAX)).isEqualTo(999_999_999_999_999L);
+        assertThat(Money.toDecimal(Money.cents(COLUMN_MAX))).isEqualTo(COLUMN_MAX);
+        assertThat(Money.toDecimal(Money.cents(COLUMN_MAX.negate()))).isEqualTo(COLUMN_MAX.negate());
+
+        Random random = new Random(1);
+        for (int i = 0; i < 100_000; i++) {
+            BigDecimal amount = BigDecimal.valueOf(random.nextLong() % 1_000_000_000_000_000L, 2);
+            assertThat(Money.toDecimal(Money.cents(amount))).isEqualTo(amount);
+        }
+        assertThat(Money.toDecimal(5)).isEqualTo(new BigDecimal("0.05"));
+    }
+
+    @Test
+    void amountsBeyondALongThrow() {
+        assertThatThrownBy(() -> Money.cents(new BigDecimal("92233720368547758.08"))).isInstanceOf(ArithmeticException.class);
+    }
+
+    @Test
+    void sumsThrowRatherThanWrap() {
+        assertThat(Money.add(1_234, -34)).isEqualTo(1_200);
+        assertThat(Money.subtract(1_200, 1_234)).isEqualTo(-34);
+        assertThatThrownBy(() -> Money.add(Long.MAX_VALUE, 1)).isInstanceOf(ArithmeticException.class);
+        assertThatThrownBy(() -> Money.subtract(Long.MIN_VALUE, 1)).isInstanceOf(ArithmeticException.class);
+    }
+
+    @Test
+    void percentRoundsTheRatioToFourPlacesFirst() {
+        assertThat(Money.percent(500, 2_700)).isEqualTo(new BigDecimal("18.5200"));
+        assertThat(Money.percent(1, 8)).isEqualTo(new BigDecimal("12.5000"));
+        assertThat(Money.percent(2_700, 2_700)).isEqualTo(new BigDecimal("100.0000"));
+        assertThat(Money.percent(0, 2_700)).isEqualTo(new BigDecimal("0.0000"));
+    }
+
+    @Test
+    void percentBreaksTiesAwayFromZero() {
+        // 1/20000 is 0.00005 exactly
+        assertThat(Money.percent(1, 20_000)).isEqualTo(new BigDecimal("0.0100"));
+        assertThat(Money.percent(-1, 20_000)).isEqualTo(new BigDecimal("-0.0100"));
+        assertThat(Money.percent(1, -20_000)).isEqualTo(new BigDecimal("-0.0100"));
+        assertThat(Money.percent(-1, -20_000)).isEqualTo(new BigDecimal("0.0100"));
+        // Just under a tie
+        assertThat(Money.percent(1, 20_001)).isEqualTo(new BigDecimal("0.0000"));
+    }
+
+    @Test
+    void percentMatchesTheDecimalExpressionItReplaced() {
+        Random random = new Random(2);
+        for (int i = 0; i < 200_000; i++) {
+            long whole;
+            long part;
+            switch (i % 4) {
+                case 0:
+                    whole = 1 + random.nextInt(1_000_000);
+                    part = random.nextInt(2_000_000) - 1_000_000;
+                    break;
+                case 1:
+                    // Ties: part/whole lands exactly halfway between two 4-place ratios
+                    whole = 20_000L * (1 + random.nextInt(1_000));
+                    part = (whole / 20_000) * (2 * random.nextInt(20_000) + 1) * (random.nextBoolean() ? 1 : -1);
+                    break;
+                case 2:
+                    // Large balances, still short of the long fallback
+                    whole = 1 + Math.abs(random.nextLong() % 999_999_999_999_999L);
+                    part = random.nextLong() % 900_000_000_000_000L;
+                    break;
+                default:
+                    whole = -(1 + random.nextInt(1_000_000));
+                    part = random.nextInt(2_000_000) - 1_000_000;
+                    break;
+            }
+            assertThat(Money.percent(part, whole)).as("%d / %d", part, whole).isEqualTo(decimalPercent(part, whole));
+        }
+    }
+
+    @Test
+    void percentTooLargeForALongFallsBackToDecimals() {
+        long part = Long.MAX_VALUE / 2;
+
+        assertThat(Money.percent(part, 3)).isEqualTo(decimalPercent(part, 3));
+        assertThat(Money.percent(-part, 7)).isEqualTo(decimalPercent(-part, 7));
+        assertThatThrownBy(() -> Money.percent(1, 0)).isInstanceOf(ArithmeticException.class);
+    }
+
+    /**
+     * The JMH suite: summing a million amounts and taking percentages as
+     * {@link Money} cents against BigDecimal, with allocation from the GC
+     * profiler. Only runs with -Pslow-tests.
+     */
+    @Test
+    @Tag("slow")
+    void jmhAgainstBigDecimal() throws RunnerException {
+        Map<String, String> results = new TreeMap<>();
+        Map<String, Double> scores = new TreeMap<>();
+        Map<String, Double> allocated = new TreeMap<>();
+        for (RunResult result : new Runner(new OptionsBuilder()
+                .include(MoneyBenchmark.class.getName())
+                .forks(1)
+                .warmupIterations(3)
+                .warmupTime(TimeValue.seconds(1))
+                .measurementIterations(5)
+                .measurementTime(TimeValue.seconds(1))
+                .addProfiler(GCProfiler.class)
+                .build()).run()) {
+            String name = result.getParams().getBenchmark().replaceAll(".*\\.", "");
+            double score = result.getPrimaryResult().getScore();
+            double bytes = result.getSecondaryResults().get("gc.alloc.rate.norm").getScore();
+            scores.put(name, score);
+            allocated.put(name, bytes);
+            results.put(name, String.format("%.3f ops/ms, %.0f B/op", score, bytes));
+        }
+
+        System.out.printf("[money] %s%n", results);
+        assertThat(scores.get("moneySum")).isGreaterThan(scores.get("decimalSum") * 2);
+        assertThat(allocated.get("moneySum")).isLessThan(1_000.0);
+        assertThat(allocated.get("decimalSum")).isGreaterThan(MoneyBenchmark.ROWS * 16.0);
+        assertThat(scores.get("moneyPercent")).isGreaterThan(scores.get("decimalPercent"));
+    }
+
+    private static BigDecimal decimalPercent(long part, long whole) {
+        return Money.toDecimal(part).divide(Money.toDecimal(whole), 4, RoundingMode.HALF_UP).multiply(BigDecimal.valueOf(100));
+    }
+}
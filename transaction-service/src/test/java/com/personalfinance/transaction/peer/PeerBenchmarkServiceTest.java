@@ -0,0 +1,206 @@
+package com.personalfinance.transaction.peer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.personalfinance.transaction.dto.PeerBenchmarkResponse;
+import com.personalfinance.transaction.model.Transaction;
+import com.personalfinance.transaction.model.Transaction.Category;
+import com.personalfinance.transaction.model.TransactionFingerprint;
+import com.personalfinance.transaction.repository.MonthlySpendingRepository;
+import com.personalfinance.transaction.repository.TransactionRepository;
+import com.personalfinance.transaction.service.TransactionsChangedEvent;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+// Totals committed for real, since the service's worker reads them on a thread of its own
+@DataJpaTest(properties = {
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.default_schema=",
+        "spring.jpa.show-sql=false"
+})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class PeerBenchmarkServiceTest {
+
+    private static final long USER = 1L;
+    private static final YearMonth LAST_MONTH = YearMonth.now().minusMonths(1);
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private MonthlySpendingRepository monthlySpendingRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void tearDown() {
+        monthlySpendingRepository.deleteAll();
+    }
+
+    // 25 others spending $1 to $25 on dining, and the user far more
+    @Test
+    void usersAreRankedAgainstEveryoneElse() throws InterruptedException {
+        LocalDate month = LAST_MONTH.atDay(1);
+        for (long other = 2; other <= 26; other++) {
+            monthlySpendingRepository.upsert(other, month, Category.DINING.name(), (other - 1) * 100);
+        }
+        monthlySpendingRepository.upsert(USER, month, Category.DINING.name(), 1_000_000);
+        monthlySpendingRepository.upsert(USER, LAST_MONTH.minusMonths(1).atDay(1), Category.DINING.name(), 1_000_000);
+
+        PeerBenchmarkService service = new PeerBenchmarkService(transactionRepository, monthlySpendingRepository,
+                transactionManager, new SimpleMeterRegistry(), 13, 0.01, 20, 3_600_000);
+        try {
+            PeerBenchmarkResponse.CategoryBenchmark dining = benchmarkOnceRebuilt(service);
+
+            assertThat(dining.getCategory()).isEqualTo(Category.DINING);
+            assertThat(dining.getPeers()).isEqualTo(25);
+            assertThat(dining.getPercentile()).isEqualTo(99);
+            assertThat(dining.getPeerMedian().doubleValue()).isCloseTo(13.00, within(0.13));
+            assertThat(dining.getPeerP90().doubleValue()).isCloseTo(22.00, within(0.22));
+
+            // Two months: the user's other month isn't anyone's peer either
+            PeerBenchmarkResponse twoMonths = service.getBenchmarks(USER, LAST_MONTH, 2);
+            assertThat(twoMonths.getCategories().get(0).getPeers()).isEqualTo(25);
+        } finally {
+            service.stop();
+        }
+    }
+
+    /**
+     * End to end at scale: a year of expenses from thousands of users is
+     * backfilled into monthly totals and sketched, the user's rank is held
+     * against an exact one over everyone else's totals, and a new expense
+     * moves it. Only runs with -Pslow-tests.
+     */
+    @Test
+    @Tag("slow")
+    void ranksAtScaleMatchTheExactOnes() throws InterruptedException {
+        int users = 5_000;
+        Category[] categories = {Category.DINING, Category.GROCERIES, Category.TRANSPORTATION, Category.ENTERTAINMENT};
+        Random random = new Random(1);
+        List<Transaction> batch = new ArrayList<>();
+        int expenses = 0;
+        for (long user = 1; user <= users; user++) {
+            // Each user spends on their own scale, so the totals spread like real ones
+            double scale = Math.exp(7 + random.nextGaussian());
+            for (int m = 0; m < 12; m++) {
+                LocalDate month = LAST_MONTH.minusMonths(m).atDay(1);
+                for (int i = 0; i < 8; i++) {
+                    long cents = 1 + Math.round(scale * Math.exp(0.5 * random.nextGaussian()));
+                    batch.add(expense(user, month.plusDays(random.nextInt(28)), categories[random.nextInt(categories.length)], cents));
+                }
+            }
+            if (batch.size() >= 10_000) {
+                expenses += batch.size();
+                transactionRepository.insertAll(batch);
+                batch.clear();
+            }
+        }
+        expenses += batch.size();
+        transactionRepository.insertAll(batch);
+
+        long started = System.nanoTime();
+        PeerBenchmarkService service = new PeerBenchmarkService(transactionRepository, monthlySpendingRepository,
+                transactionManager, new SimpleMeterRegistry(), 13, 0.01, 20, 3_600_000);
+        try {
+            PeerBenchmarkResponse.CategoryBenchmark dining = dining(service, -1);
+            long rebuildMillis = (System.nanoTime() - started) / 1_000_000;
+
+            List<Long> peers = jdbcTemplate.queryForList("SELECT amount_cents FROM monthly_spending"
+                    + " WHERE \"month\" = ? AND category = 'DINING' AND user_id <> ? ORDER BY amount_cents",
+                    Long.class, LAST_MONTH.atDay(1), USER);
+            long own = jdbcTemplate.queryForObject("SELECT amount_cents FROM monthly_spending"
+                    + " WHERE \"month\" = ? AND category = 'DINING' AND user_id = ?", Long.class, LAST_MONTH.atDay(1), USER);
+            double below = peers.stream().filter(cents -> cents < own).count() + peers.stream().filter(cents -> cents == own).count() / 2.0;
+            long median = peers.get((peers.size() - 1) / 2);
+            long p90 = peers.get((int) (0.9 * (peers.size() - 1)));
+
+            assertThat(dining.getPeers()).isEqualTo(peers.size());
+            assertThat(dining.getPercentile()).isCloseTo((int) Math.floor(100 * below / peers.size()), within(1));
+            assertThat(dining.getPeerMedian().doubleValue()).isCloseTo(median / 100.0, within(median / 100.0 * 0.015));
+            assertThat(dining.getPeerP90().doubleValue()).isCloseTo(p90 / 100.0, within(p90 / 100.0 * 0.015));
+
+            // A big dinner after the fact moves the user up once the worker has caught up
+            transactionRepository.insertAll(List.of(expense(USER, LAST_MONTH.atDay(15), Category.DINING, 10 * median)));
+            started = System.nanoTime();
+            service.onTransactionsChanged(new TransactionsChangedEvent(USER));
+            PeerBenchmarkResponse.CategoryBenchmark after = dining(service, own);
+            long resyncMillis = (System.nanoTime() - started) / 1_000_000;
+
+            assertThat(after.getAmount().doubleValue()).isEqualTo((own + 10 * median) / 100.0);
+            assertThat(after.getPercentile()).isGreaterThan(dining.getPercentile());
+            assertThat(after.getPeers()).isEqualTo(dining.getPeers());
+            System.out.printf("[peer-benchmarks] %d expenses from %d users on H2: backfill and rebuild %d ms,"
+                    + " %d peers, percentile %d, resync after a write %d ms%n",
+                    expenses, users, rebuildMillis, peers.size(), dining.getPercentile(), resyncMillis);
+        } finally {
+            service.stop();
+            // Far quicker than loading every row to delete it
+            jdbcTemplate.update("DELETE FROM monthly_spending");
+            jdbcTemplate.update("DELETE FROM transactions");
+        }
+    }
+
+    // The user's dining benchmark once the worker has rebuilt, or has moved the amount on from previousCents
+    private PeerBenchmarkResponse.CategoryBenchmark dining(PeerBenchmarkService service, long previousCents) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 600_000;
+        while (true) {
+            for (PeerBenchmarkResponse.CategoryBenchmark benchmark : service.getBenchmarks(USER, LAST_MONTH, 1).getCategories()) {
+                if (benchmark.getCategory() == Category.DINING && benchmark.getPeers() > 0
+                        && benchmark.getAmount().movePointRight(2).longValue() != previousCents) {
+                    return benchmark;
+                }
+            }
+            assertThat(System.currentTimeMillis()).as("benchmarks ready").isLessThan(deadline);
+            Thread.sleep(20);
+        }
+    }
+
+    private static Transaction expense(long userId, LocalDate date, Category category, long cents) {
+        Transaction transaction = new Transaction();
+        transaction.setUserId(userId);
+        transaction.setDescription(category.name().toLowerCase());
+        transaction.setAmount(BigDecimal.valueOf(cents, 2));
+        transaction.setType(Transaction.TransactionType.EXPENSE);
+        transaction.setCategory(category);
+        transaction.setTransactionDate(date);
+        transaction.setFingerprint(TransactionFingerprint.of(transaction));
+        return transaction;
+    }
+
+    // The first rebuild runs on the worker as the service starts
+    private PeerBenchmarkResponse.CategoryBenchmark benchmarkOnceRebuilt(PeerBenchmarkService service) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (true) {
+            PeerBenchmarkResponse response = service.getBenchmarks(USER, LAST_MONTH, 1);
+            assertThat(response.getCategories()).hasSize(1);
+            PeerBenchmarkResponse.CategoryBenchmark benchmark = response.getCategories().get(0);
+            if (benchmark.getPeers() > 0 || System.currentTimeMillis() > deadline) {
+                return benchmark;
+            }
+            Thread.sleep(20);
+        }
+    }
+}
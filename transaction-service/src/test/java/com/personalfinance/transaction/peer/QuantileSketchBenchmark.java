@@ -0,0 +1,102 @@
+package com.personalfinance.transaction.peer;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * What {@link PeerBenchmarkService} does with its sketches: count a
+ * monthly total, move one when it changes, and answer a request by merging
+ * a year of month sketches, ranking the user and reading three quantiles.
+ * Each month sketch holds {@link #TOTALS} log-normal totals. Launched by
+ * {@link QuantileSketchTest}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class QuantileSketchBenchmark {
+
+    static final double ACCURACY = 0.01;
+    static final int MONTHS = 13;
+    static final int TOTALS = 1_000_000;
+
+    private final QuantileSketch[] months = new QuantileSketch[MONTHS];
+    private QuantileSketch live;
+    private long[] amounts;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(1);
+        amounts = new long[TOTALS];
+        for (int i = 0; i < TOTALS; i++) {
+            amounts[i] = lognormal(random);
+        }
+        for (int m = 0; m < MONTHS; m++) {
+            months[m] = new QuantileSketch(ACCURACY);
+            for (int i = 0; i < TOTALS; i++) {
+                months[m].add(lognormal(random));
+            }
+        }
+        live = new QuantileSketch(ACCURACY);
+        for (long amount : amounts) {
+            live.add(amount);
+        }
+    }
+
+    // Kept at a steady count, so a trial doesn't grow the sketch it measures
+    @Benchmark
+    public void add() {
+        long amount = nextAmount();
+        live.add(amount);
+        live.remove(amount);
+    }
+
+    // A user's total moving from one amount to the next after a write
+    @Benchmark
+    public void removeAndAdd() {
+        long amount = nextAmount();
+        live.remove(amount);
+        live.add(amount + amount / 10);
+        live.remove(amount + amount / 10);
+        live.add(amount);
+    }
+
+    @Benchmark
+    public QuantileSketch mergeMonths() {
+        QuantileSketch peers = new QuantileSketch(ACCURACY);
+        for (QuantileSketch month : months) {
+            peers.merge(month);
+        }
+        return peers;
+    }
+
+    // One category of a peer-benchmarks request: the merge, then the user's rank and the peer quantiles
+    @Benchmark
+    public void mergeAndRank(Blackhole blackhole) {
+        QuantileSketch peers = mergeMonths();
+        blackhole.consume(peers.rank(nextAmount()));
+        blackhole.consume(peers.quantile(0.5));
+        blackhole.consume(peers.quantile(0.75));
+        blackhole.consume(peers.quantile(0.9));
+    }
+
+    private long nextAmount() {
+        next = next + 1 < TOTALS ? next + 1 : 0;
+        return amounts[next];
+    }
+
+    // Monthly totals in cents: a median around $220 with a long tail
+    static long lognormal(Random random) {
+        return Math.max(1, Math.round(Math.exp(10 + 1.5 * random.nextGaussian())));
+    }
+}
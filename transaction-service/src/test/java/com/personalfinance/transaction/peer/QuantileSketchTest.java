@@ -0,0 +1,267 @@
+package com.personalfinance.transaction.peer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.function.LongPredicate;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+class QuantileSketchTest {
+
+    private static final double[] QUANTILES = {0, 0.01, 0.1, 0.25, 0.5, 0.75, 0.9, 0.99, 1};
+
+    // Uniform, log-normal (like monthly totals) and a few huge outliers among small amounts
+    @ParameterizedTest
+    @CsvSource({
+            "0.01, uniform",
+            "0.01, lognormal",
+            "0.01, outliers",
+            "0.05, lognormal",
+            "0.001, lognormal"
+    })
+    void quantilesAreWithinTheRelativeErrorOfTheExactOnes(double accuracy, String distribution) {
+        Random random = new Random(distribution.hashCode());
+        QuantileSketch sketch = new QuantileSketch(accuracy);
+        long[] amounts = new long[50_000];
+        for (int i = 0; i < amounts.length; i++) {
+            amounts[i] = amount(random, distribution);
+            sketch.add(amounts[i]);
+        }
+        Arrays.sort(amounts);
+
+        assertThat(sketch.count()).isEqualTo(amounts.length);
+        for (double q : QUANTILES) {
+            assertWithin(accuracy, sketch.quantile(q), amounts[(int) (q * (amounts.length - 1))]);
+        }
+    }
+
+    // Amounts within one bucket of the one ranked can't be told from it, so that's the error allowed
+    @Test
+    void rankIsTheShareBelowToWithinABucket() {
+        double accuracy = 0.01;
+        Random random = new Random(7);
+        QuantileSketch sketch = new QuantileSketch(accuracy);
+        long[] amounts = new long[20_000];
+        for (int i = 0; i < amounts.length; i++) {
+            amounts[i] = amount(random, "lognormal");
+            sketch.add(amounts[i]);
+        }
+        Arrays.sort(amounts);
+
+        for (int i = 0; i < 1000; i++) {
+            long cents = amount(random, "lognormal");
+            double rank = sketch.rank(cents);
+            assertThat(rank).isBetween(share(amounts, x -> x < cents * (1 - 3 * accuracy)),
+                    share(amounts, x -> x <= cents * (1 + 3 * accuracy)));
+        }
+        assertThat(sketch.rank(0)).isZero();
+        assertThat(sketch.rank(amounts[0] / 2)).isZero();
+        assertThat(sketch.rank(amounts[amounts.length - 1] * 2)).isEqualTo(1.0);
+    }
+
+    @Test
+    void equalAmountsCountAsHalfBelow() {
+        QuantileSketch sketch = new QuantileSketch(0.01);
+        sketch.add(1000);
+        sketch.add(5000);
+        sketch.add(5000);
+        sketch.add(9000);
+
+        assertThat(sketch.rank(5000)).isEqualTo(0.5);
+        assertThat(sketch.rank(1000)).isEqualTo(0.125);
+    }
+
+    @Test
+    void removingAmountsLeavesTheSketchOfThoseKept() {
+        Random random = new Random(11);
+        QuantileSketch sketch = new QuantileSketch(0.01);
+        QuantileSketch kept = new QuantileSketch(0.01);
+        List<Long> removed = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            long cents = amount(random, "lognormal");
+            sketch.add(cents);
+            if (random.nextInt(3) == 0) {
+                removed.add(cents);
+            } else {
+                kept.add(cents);
+            }
+        }
+        for (long cents : removed) {
+            sketch.remove(cents);
+        }
+
+        assertSame(sketch, kept);
+    }
+
+    @Test
+    void removingAnAmountNeverAddedChangesNothing() {
+        QuantileSketch sketch = new QuantileSketch(0.01);
+        sketch.add(1000);
+        sketch.add(2000);
+
+        sketch.remove(5000);
+        sketch.remove(1);
+        sketch.remove(Long.MAX_VALUE);
+        sketch.remove(0);
+        sketch.remove(-1000);
+
+        assertThat(sketch.count()).isEqualTo(2);
+        assertWithin(0.01, sketch.quantile(0), 1000);
+        assertWithin(0.01, sketch.quantile(1), 2000);
+
+        sketch.remove(1000);
+        sketch.remove(1000);
+        assertThat(sketch.count()).isEqualTo(1);
+        assertThat(sketch.rank(2000)).isEqualTo(0.5);
+    }
+
+    @Test
+    void mergingIsTheSameAsAddingEverythingToOne() {
+        Random random = new Random(13);
+        QuantileSketch all = new QuantileSketch(0.01);
+        QuantileSketch merged = new QuantileSketch(0.01);
+        for (int part = 0; part < 12; part++) {
+            QuantileSketch month = new QuantileSketch(0.01);
+            // Parts over ranges apart from each other, so merging grows the counts both ways
+            long scale = part % 2 == 0 ? 1 : 1000;
+            for (int i = 0; i < 2000; i++) {
+                long cents = scale * (1 + random.nextInt(10_000));
+                all.add(cents);
+                month.add(cents);
+            }
+            merged.merge(month);
+        }
+        merged.merge(new QuantileSketch(0.01));
+
+        assertSame(merged, all);
+    }
+
+    @Test
+    void amountsOfZeroOrLessAreIgnored() {
+        QuantileSketch sketch = new QuantileSketch(0.01);
+        sketch.add(0);
+        sketch.add(-500);
+
+        assertThat(sketch.count()).isZero();
+        assertThat(sketch.bytes()).isZero();
+    }
+
+    @Test
+    void anEmptySketchAnswersZero() {
+        QuantileSketch sketch = new QuantileSketch(0.01);
+
+        assertThat(sketch.quantile(0.5)).isZero();
+        assertThat(sketch.rank(1000)).isZero();
+
+        sketch.add(1000);
+        sketch.remove(1000);
+        assertThat(sketch.quantile(0.5)).isZero();
+        assertThat(sketch.rank(1000)).isZero();
+    }
+
+    @Test
+    void sketchesOfDifferentAccuracyDoNotMerge() {
+        QuantileSketch sketch = new QuantileSketch(0.01);
+
+        assertThatThrownBy(() -> sketch.merge(new QuantileSketch(0.02)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Cannot merge sketches of different accuracy");
+    }
+
+    @ParameterizedTest
+    @CsvSource({"0", "1", "-0.1", "NaN"})
+    void accuracyMustBeBetweenZeroAndOne(double accuracy) {
+        assertThatThrownBy(() -> new QuantileSketch(accuracy))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageStartingWith("accuracy must be between 0 and 1");
+    }
+
+    /**
+     * The JMH suite: the cost of counting, moving and merging totals, with
+     * the size of a month sketch of a million totals. Only runs with
+     * -Pslow-tests.
+     */
+    @Test
+    @Tag("slow")
+    void jmhMemoryAndMergeCost() throws RunnerException {
+        Random random = new Random(1);
+        QuantileSketch month = new QuantileSketch(QuantileSketchBenchmark.ACCURACY);
+        for (int i = 0; i < QuantileSketchBenchmark.TOTALS; i++) {
+            month.add(QuantileSketchBenchmark.lognormal(random));
+        }
+
+        Map<String, String> results = new TreeMap<>();
+        Map<String, Double> nanos = new TreeMap<>();
+        for (RunResult result : new Runner(new OptionsBuilder()
+                .include(QuantileSketchBenchmark.class.getName())
+                .forks(1)
+                .warmupIterations(3)
+                .warmupTime(TimeValue.seconds(1))
+                .measurementIterations(5)
+                .measurementTime(TimeValue.seconds(1))
+                .addProfiler(GCProfiler.class)
+                .build()).run()) {
+            String name = result.getParams().getBenchmark().replaceAll(".*\\.", "");
+            double score = result.getPrimaryResult().getScore();
+            double bytes = result.getSecondaryResults().get("gc.alloc.rate.norm").getScore();
+            nanos.put(name, score);
+            results.put(name, String.format("%.1f ns/op, %.0f B/op", score, bytes));
+        }
+
+        System.out.printf("[peer-sketch] %d totals in %d bytes; %s%n", month.count(), month.bytes(), results);
+        // 18 categories over 13 months stay well under a megabyte however many users there are
+        assertThat(month.bytes()).isLessThan(4096);
+        assertThat(nanos.get("add")).isLessThan(500.0);
+        assertThat(nanos.get("removeAndAdd")).isLessThan(1_000.0);
+        // A category of a request costs microseconds, not a scan of everyone's transactions
+        assertThat(nanos.get("mergeMonths")).isLessThan(50_000.0);
+        assertThat(nanos.get("mergeAndRank")).isLessThan(100_000.0);
+    }
+
+    private static long amount(Random random, String distribution) {
+        switch (distribution) {
+            case "uniform":
+                return 1 + random.nextInt(1_000_000);
+            case "lognormal":
+                return Math.max(1, Math.round(Math.exp(10 + 1.5 * random.nextGaussian())));
+            default:
+                return random.nextInt(100) == 0 ? 100_000_000L + random.nextInt(1_000_000_000) : 1 + random.nextInt(5000);
+        }
+    }
+
+    private static double share(long[] sorted, LongPredicate below) {
+        return Arrays.stream(sorted).filter(below).count() / (double) sorted.length;
+    }
+
+    private static void assertWithin(double accuracy, long actual, long exact) {
+        // Plus half a cent, as the sketch rounds to whole cents
+        assertThat((double) actual).as("exact %d", exact).isCloseTo(exact, within(exact * accuracy + 0.5));
+    }
+
+    private static void assertSame(QuantileSketch sketch, QuantileSketch expected) {
+        assertThat(sketch.count()).isEqualTo(expected.count());
+        for (double q : QUANTILES) {
+            assertThat(sketch.quantile(q)).as("q=%s", q).isEqualTo(expected.quantile(q));
+        }
+        for (long cents = 1; cents < 100_000_000_000L; cents *= 3) {
+            assertThat(sketch.rank(cents)).as("rank of %d", cents).isEqualTo(expected.rank(cents));
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.personalfinance.transaction.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+
+import com.personalfinance.transaction.model.MerchantCategoryOverride;
+import com.personalfinance.transaction.model.Transaction.Category;
+
+@DataJpaTest(properties = {
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.default_schema=",
+        "spring.jpa.show-sql=false"
+})
+class MerchantCategoryOverrideRepositoryTest {
+
+    @Autowired
+    private MerchantCategoryOverrideRepository repository;
+
+    @Test
+    void mergeInsertsThenReplacesTheCategory() {
+        repository.merge(1L, "blue bottle", Category.DINING.name());
+        repository.merge(1L, "blue bottle", Category.GROCERIES.name());
+        repository.merge(2L, "blue bottle", Category.ENTERTAINMENT.name());
+
+        List<MerchantCategoryOverride> overrides = repository.findByUserId(1L);
+        assertThat(overrides).hasSize(1);
+        assertThat(overrides.get(0).getMerchantKey()).isEqualTo("blue bottle");
+        assertThat(overrides.get(0).getCategory()).isEqualTo(Category.GROCERIES);
+        assertThat(overrides.get(0).getUpdatedAt()).isNotNull();
+        assertThat(repository.findByUserId(2L)).extracting(MerchantCategoryOverride::getCategory)
+                .containsExactly(Category.ENTERTAINMENT);
+    }
+}
@@ -0,0 +1,78 @@
+package com.personalfinance.transaction.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+
+import com.personalfinance.transaction.model.MonthlySpending;
+import com.personalfinance.transaction.model.Transaction;
+import com.personalfinance.transaction.model.Transaction.Category;
+import com.personalfinance.transaction.model.Transaction.TransactionType;
+
+@DataJpaTest(properties = {
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.default_schema=",
+        "spring.jpa.show-sql=false"
+})
+class MonthlySpendingRepositoryTest {
+
+    private static final LocalDate JAN = LocalDate.of(2024, 1, 1);
+    private static final LocalDate FEB = LocalDate.of(2024, 2, 1);
+
+    @Autowired
+    private MonthlySpendingRepository repository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Test
+    void upsertSetsTheTotal() {
+        repository.upsert(1L, JAN, Category.DINING.name(), 1200);
+        repository.upsert(1L, JAN, Category.DINING.name(), 800);
+        repository.upsert(1L, FEB, Category.DINING.name(), 500);
+
+        List<MonthlySpending> rows = repository.findByUserIdAndMonthBetween(1L, JAN, JAN);
+        assertThat(rows).hasSize(1);
+        assertThat(rows.get(0).getAmountCents()).isEqualTo(800);
+        assertThat(repository.findByUserIdAndMonthGreaterThanEqual(1L, JAN)).hasSize(2);
+    }
+
+    @Test
+    void backfillSumsExpensesByMonthOnceAndForEachTotalStreamsThem() {
+        expense(1L, LocalDate.of(2024, 1, 5), "10.50", Category.GROCERIES);
+        expense(1L, LocalDate.of(2024, 1, 31), "4.50", Category.GROCERIES);
+        expense(1L, LocalDate.of(2024, 2, 1), "7.00", Category.GROCERIES);
+        expense(2L, LocalDate.of(2024, 2, 29), "20.00", Category.DINING);
+        expense(2L, LocalDate.of(2023, 12, 31), "99.00", Category.DINING);
+
+        assertThat(repository.backfill(JAN)).isEqualTo(3);
+        assertThat(repository.backfill(JAN)).isZero();
+
+        Map<String, Long> totals = new HashMap<>();
+        repository.forEachTotal(JAN, (monthDay, category, cents) ->
+                totals.merge(LocalDate.ofEpochDay(monthDay) + ":" + category, cents, Long::sum));
+        assertThat(totals).containsOnly(
+                Map.entry("2024-01-01:GROCERIES", 1500L),
+                Map.entry("2024-02-01:GROCERIES", 700L),
+                Map.entry("2024-02-01:DINING", 2000L));
+    }
+
+    private void expense(long userId, LocalDate date, String amount, Category category) {
+        Transaction transaction = new Transaction();
+        transaction.setUserId(userId);
+        transaction.setTransactionDate(date);
+        transaction.setAmount(new BigDecimal(amount));
+        transaction.setType(TransactionType.EXPENSE);
+        transaction.setCategory(category);
+        transaction.setDescription("Test");
+        transactionRepository.saveAndFlush(transaction);
+    }
+}
@@ -0,0 +1,110 @@
+package com.personalfinance.transaction.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+
+import com.personalfinance.transaction.model.MonthlySpending;
+import com.personalfinance.transaction.model.Transaction;
+import com.personalfinance.transaction.model.Transaction.Category;
+import com.personalfinance.transaction.model.Transaction.TransactionType;
+
+// The loaders' SQL on H2, as the dev profile runs it
+@DataJpaTest(properties = {
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.default_schema=",
+        "spring.jpa.show-sql=false"
+})
+class TransactionRepositoryCustomImplTest {
+
+    private static final long USER = 1L;
+    private static final LocalDate JAN_5 = LocalDate.of(2024, 1, 5);
+    private static final LocalDate JAN_20 = LocalDate.of(2024, 1, 20);
+    private static final LocalDate FEB_3 = LocalDate.of(2024, 2, 3);
+
+    @Autowired
+    private TransactionRepository repository;
+
+    @BeforeEach
+    void setUp() {
+        save(USER, JAN_5, "10.50", TransactionType.EXPENSE, Category.GROCERIES);
+        save(USER, JAN_5, "4.25", TransactionType.EXPENSE, Category.GROCERIES);
+        save(USER, JAN_20, "30.00", TransactionType.EXPENSE, Category.DINING);
+        save(USER, JAN_20, "2500.00", TransactionType.INCOME, Category.SALARY);
+        save(USER, FEB_3, "7.00", TransactionType.EXPENSE, Category.GROCERIES);
+        save(USER, null, "1.00", TransactionType.EXPENSE, Category.GROCERIES);
+        save(2L, JAN_5, "99.00", TransactionType.EXPENSE, Category.GROCERIES);
+    }
+
+    @Test
+    void forEachAmountReadsDaysSinceTheEpoch() {
+        Map<Long, Long> centsByDay = new HashMap<>();
+        repository.forEachAmount(USER, (epochDay, cents, type, category) -> centsByDay.merge(epochDay, cents, Long::sum));
+
+        assertThat(centsByDay).containsOnly(
+                Map.entry(JAN_5.toEpochDay(), 1475L),
+                Map.entry(JAN_20.toEpochDay(), 253000L),
+                Map.entry(FEB_3.toEpochDay(), 700L),
+                Map.entry(Long.MIN_VALUE, 100L));
+    }
+
+    @Test
+    void forEachExpenseIsInDateOrderFromTheGivenDay() {
+        List<Long> days = new ArrayList<>();
+        List<Long> cents = new ArrayList<>();
+        repository.forEachExpense(USER, JAN_20, (id, epochDay, amount, merchant, description, category) -> {
+            days.add(epochDay);
+            cents.add(amount);
+        });
+
+        assertThat(days).containsExactly(JAN_20.toEpochDay(), FEB_3.toEpochDay());
+        assertThat(cents).containsExactly(3000L, 700L);
+    }
+
+    @Test
+    void forEachDailyTotalSumsByDayAndType() {
+        Map<String, Long> totals = new HashMap<>();
+        repository.forEachDailyTotal(USER, (epochDay, type, cents) -> totals.put(epochDay + ":" + type, cents));
+
+        assertThat(totals).containsOnly(
+                Map.entry(JAN_5.toEpochDay() + ":EXPENSE", 1475L),
+                Map.entry(JAN_20.toEpochDay() + ":EXPENSE", 3000L),
+                Map.entry(JAN_20.toEpochDay() + ":INCOME", 250000L),
+                Map.entry(FEB_3.toEpochDay() + ":EXPENSE", 700L),
+                Map.entry(Long.MIN_VALUE + ":EXPENSE", 100L));
+    }
+
+    @Test
+    void sumMonthlyExpensesGroupsByCalendarMonth() {
+        Map<String, Long> totals = new HashMap<>();
+        for (MonthlySpending spending : repository.sumMonthlyExpenses(USER, JAN_5)) {
+            totals.put(spending.getMonth() + ":" + spending.getCategory(), spending.getAmountCents());
+        }
+
+        assertThat(totals).containsOnly(
+                Map.entry("2024-01-01:GROCERIES", 1475L),
+                Map.entry("2024-01-01:DINING", 3000L),
+                Map.entry("2024-02-01:GROCERIES", 700L));
+    }
+
+    private void save(long userId, LocalDate date, String amount, TransactionType type, Category category) {
+        Transaction transaction = new Transaction();
+        transaction.setUserId(userId);
+        transaction.setTransactionDate(date);
+        transaction.setAmount(new BigDecimal(amount));
+        transaction.setType(type);
+        transaction.setCategory(category);
+        transaction.setDescription("Test");
+        repository.saveAndFlush(transaction);
+    }
+}
@@ -0,0 +1,174 @@
+package com.personalfinance.transaction.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.personalfinance.transaction.analytics.TransactionColumnCache;
+import com.personalfinance.transaction.balance.BalanceIndexService;
+import com.personalfinance.transaction.categorize.MerchantCategorizer;
+import com.personalfinance.transaction.model.Transaction;
+import com.personalfinance.transaction.model.Transaction.Category;
+import com.personalfinance.transaction.model.Transaction.TransactionType;
+import com.personalfinance.transaction.model.TransactionFingerprint;
+import com.personalfinance.transaction.repository.BalanceDayRepository;
+import com.personalfinance.transaction.repository.BalanceIndexRepository;
+import com.personalfinance.transaction.repository.TransactionRepository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+// Purges on H2, as the dev profile runs them; each chunk commits for real, as it does behind the gateway
+@DataJpaTest(properties = {
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.default_schema=",
+        "spring.jpa.show-sql=false",
+        "logging.level.org.hibernate.SQL=INFO"
+})
+@Import({TransactionService.class, BalanceIndexService.class, TransactionServiceTest.Config.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class TransactionServiceTest {
+
+    private static final long USER = 1L;
+    private static final long OTHER = 2L;
+    // The gateway's default purge-chunk-size
+    private static final int CHUNK = 500;
+    private static final LocalDate START = LocalDate.of(2020, 1, 1);
+
+    @Autowired
+    private TransactionService service;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private BalanceIndexRepository balanceIndexRepository;
+
+    @Autowired
+    private BalanceDayRepository balanceDayRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @TestConfiguration
+    static class Config {
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+
+        @Bean
+        TransactionColumnCache transactionColumnCache() {
+            return mock(TransactionColumnCache.class);
+        }
+
+        @Bean
+        MerchantCategorizer merchantCategorizer() {
+            return mock(MerchantCategorizer.class);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        balanceIndexRepository.deleteAll();
+        balanceDayRepository.deleteAll();
+        transactionRepository.deleteAll();
+    }
+
+    @Test
+    void purgeDeletesTheUsersTransactionsInChunksThenTheirBalanceDays() {
+        purgesInChunks(2_500);
+    }
+
+    /**
+     * A purge of 200,000 transactions, timing each chunk's transaction
+     * against one DELETE of another user's 200,000: the longest a purge
+     * holds its row locks at once, chunked and not. Only runs with
+     * -Pslow-tests.
+     */
+    @Test
+    @Tag("slow")
+    void chunksHoldTheirLocksForAFractionOfOneDelete() {
+        long[] chunks = purgesInChunks(200_000);
+
+        seed(OTHER, 200_000);
+        long started = System.nanoTime();
+        int deleted = jdbcTemplate.update("DELETE FROM transactions WHERE user_id = ?", OTHER);
+        long oneDelete = System.nanoTime() - started;
+        assertThat(deleted).isEqualTo(200_000);
+
+        // The first chunk also builds the user's balance days from every transaction
+        long[] rest = Arrays.copyOfRange(chunks, 1, chunks.length);
+        Arrays.sort(rest);
+        long total = Arrays.stream(chunks).sum();
+        System.out.printf("[purge] %d chunks of %d in %d ms (%.0f rows/s): first %.1f ms, then p50 %.1f ms,"
+                        + " p99 %.1f ms, max %.1f ms; one DELETE of the same rows %.1f ms%n",
+                chunks.length, CHUNK, total / 1_000_000, 200_000 / (total / 1e9), chunks[0] / 1e6,
+                rest[rest.length / 2] / 1e6, rest[rest.length * 99 / 100] / 1e6, rest[rest.length - 1] / 1e6,
+                oneDelete / 1e6);
+        assertThat(rest[rest.length / 2]).isLessThan(oneDelete / 20);
+        assertThat(rest[rest.length - 1]).isLessThan(oneDelete / 2);
+    }
+
+    // Returns how long each chunk that deleted transactions took
+    private long[] purgesInChunks(int count) {
+        seed(USER, count);
+        seed(OTHER, 10);
+
+        List<Long> times = new ArrayList<>();
+        for (int left = count; left > 0; left -= CHUNK) {
+            long started = System.nanoTime();
+            int deleted = service.purgeChunk(USER, CHUNK);
+            times.add(System.nanoTime() - started);
+            assertThat(deleted).isEqualTo(Math.min(CHUNK, left));
+        }
+        assertThat(transactionRepository.countByUserId(USER)).isZero();
+        assertThat(balanceIndexRepository.existsById(USER)).isTrue();
+
+        // The balance days go after the transactions, then nothing is left
+        assertThat(service.purgeChunk(USER, CHUNK)).isGreaterThan(0);
+        assertThat(balanceIndexRepository.existsById(USER)).isFalse();
+        assertThat(balanceDayRepository.count()).isZero();
+        assertThat(service.purgeChunk(USER, CHUNK)).isZero();
+        assertThat(transactionRepository.countByUserId(OTHER)).isEqualTo(10);
+        jdbcTemplate.update("DELETE FROM transactions WHERE user_id = ?", OTHER);
+        return times.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private void seed(long userId, int count) {
+        List<Transaction> batch = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Transaction transaction = new Transaction();
+            transaction.setUserId(userId);
+            transaction.setDescription("groceries " + i);
+            transaction.setAmount(BigDecimal.valueOf(100 + i % 5_000, 2));
+            transaction.setType(TransactionType.EXPENSE);
+            transaction.setCategory(Category.GROCERIES);
+            transaction.setTransactionDate(START.plusDays(i % 1_500));
+            transaction.setFingerprint(TransactionFingerprint.of(transaction));
+            batch.add(transaction);
+            if (batch.size() == 10_000) {
+                transactionRepository.insertAll(batch);
+                batch.clear();
+            }
+        }
+        transactionRepository.insertAll(batch);
+    }
+}
@@ -0,0 +1,73 @@
+package com.personalfinance.transaction.statement;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import com.personalfinance.transaction.model.TransactionFingerprint;
+
+class BloomFilterTest {
+
+    @ParameterizedTest
+    @CsvSource({
+            "1, 0.01",
+            "1000, 0.01",
+            "200000, 0.01",
+            "50000, 0.001"
+    })
+    void neverMissesAnEntryAndStaysNearItsFalsePositiveRate(int entries, double rate) {
+        Random random = new Random(entries);
+        BloomFilter filter = new BloomFilter(entries, rate);
+        Set<Long> added = new HashSet<>();
+        while (added.size() < entries) {
+            long fingerprint = random.nextLong();
+            added.add(fingerprint);
+            filter.put(fingerprint);
+        }
+
+        for (long fingerprint : added) {
+            assertThat(filter.mightContain(fingerprint)).isTrue();
+        }
+        int probes = 200_000;
+        int falsePositives = 0;
+        for (int i = 0; i < probes; i++) {
+            long fingerprint = random.nextLong();
+            if (!added.contains(fingerprint) && filter.mightContain(fingerprint)) {
+                falsePositives++;
+            }
+        }
+        assertThat((double) falsePositives / probes).isLessThan(rate * 1.5);
+    }
+
+    // Rows a statement repeats with small changes (the next day, a cent more) still spread like random ones
+    @Test
+    void fingerprintsOfNearlyIdenticalRowsSpreadWell() {
+        BloomFilter filter = new BloomFilter(100_000, 0.01);
+        for (int i = 0; i < 100_000; i++) {
+            filter.put(TransactionFingerprint.of(19_000 + i % 1000, -(450 + i / 1000), "SQ *BLUE BOTTLE", "Coffee"));
+        }
+
+        int falsePositives = 0;
+        for (int i = 100_000; i < 300_000; i++) {
+            if (filter.mightContain(TransactionFingerprint.of(19_000 + i % 1000, -(450 + i / 1000), "SQ *BLUE BOTTLE", "Coffee"))) {
+                falsePositives++;
+            }
+        }
+        assertThat(falsePositives / 200_000.0).isLessThan(0.015);
+    }
+
+    @ParameterizedTest
+    @CsvSource({"0", "-1"})
+    void anEmptyOrUnsizedFilterRulesEverythingOut(long expected) {
+        BloomFilter filter = new BloomFilter(expected, 0.01);
+
+        assertThat(filter.mightContain(0)).isFalse();
+        assertThat(filter.mightContain(Long.MIN_VALUE)).isFalse();
+    }
+}
@@ -0,0 +1,244 @@
+package com.personalfinance.transaction.statement;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.personalfinance.transaction.balance.BalanceIndexService;
+import com.personalfinance.transaction.categorize.MerchantCategorizer;
+import com.personalfinance.transaction.dto.StatementImportResponse;
+import com.personalfinance.transaction.model.Transaction;
+import com.personalfinance.transaction.model.Transaction.Category;
+import com.personalfinance.transaction.model.Transaction.TransactionType;
+import com.personalfinance.transaction.repository.BalanceDayRepository;
+import com.personalfinance.transaction.repository.BalanceIndexRepository;
+import com.personalfinance.transaction.repository.TransactionRepository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+// Imports into H2, committed for real since the service runs its own transaction
+@DataJpaTest(properties = {
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.default_schema=",
+        "spring.jpa.show-sql=false",
+        "categorization.rules-check-ms=0"
+})
+@Import({StatementImportService.class, MerchantCategorizer.class, BalanceIndexService.class, StatementImportServiceTest.Config.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class StatementImportServiceTest {
+
+    private static final long USER = 1L;
+    private static final String HEADER = "Date,Description,Amount,Payee\n";
+    private static final String COFFEE = "2024-01-15,Coffee,-4.50,Blue Bottle\n";
+
+    @Autowired
+    private StatementImportService service;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private BalanceIndexRepository balanceIndexRepository;
+
+    @Autowired
+    private BalanceDayRepository balanceDayRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private MerchantCategorizer categorizer;
+
+    @Autowired
+    private BalanceIndexService balanceIndexService;
+
+    @TestConfiguration
+    static class Config {
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        balanceIndexRepository.deleteAll();
+        balanceDayRepository.deleteAll();
+        transactionRepository.deleteAll();
+    }
+
+    @Test
+    void reimportingAStatementFindsOnlyDuplicates() {
+        String statement = HEADER + COFFEE + COFFEE
+                + "2024-01-16,Groceries,-82.10,Safeway\n"
+                + "2024-01-31,January pay,2500.00,ACME PAYROLL\n";
+
+        StatementImportResponse first = importCsv(statement);
+        StatementImportResponse second = importCsv(statement);
+
+        assertThat(first.getRows()).isEqualTo(4);
+        assertThat(first.getImported()).isEqualTo(4);
+        assertThat(first.getDuplicates()).isZero();
+        assertThat(second.getImported()).isZero();
+        assertThat(second.getDuplicates()).isEqualTo(4);
+        assertThat(transactionRepository.findAll()).hasSize(4);
+    }
+
+    // Each stored transaction absorbs one equal row, so only the extra copies go in
+    @Test
+    void identicalRowsAreCountedPerValue() {
+        importCsv(HEADER + COFFEE);
+
+        StatementImportResponse response = importCsv(HEADER + COFFEE + COFFEE + COFFEE);
+
+        assertThat(response.getImported()).isEqualTo(2);
+        assertThat(response.getDuplicates()).isEqualTo(1);
+        assertThat(transactionRepository.findAll()).hasSize(3);
+    }
+
+    @Test
+    void overlappingStatementsImportOnlyTheNewRows() {
+        importCsv(HEADER
+                + "2024-01-01,Rent,-1200.00,Landlord\n"
+                + "2024-01-02,Coffee,-4.50,Blue Bottle\n"
+                + "2024-01-03,Lunch,-12.00,Deli\n");
+
+        StatementImportResponse response = importCsv(HEADER
+                + "2024-01-02,COFFEE ,-4.50,blue  bottle\n"
+                + "2024-01-03,Lunch,-12.01,Deli\n"
+                + "2024-01-04,Lunch,-12.00,Deli\n");
+
+        assertThat(response.getImported()).isEqualTo(2);
+        assertThat(response.getDuplicates()).isEqualTo(1);
+        assertThat(amounts()).containsExactlyInAnyOrder("-1200.00", "-4.50", "-12.00", "-12.01", "-12.00");
+    }
+
+    @Test
+    void olderTransactionsWithoutAFingerprintAreMatchedToo() {
+        Transaction existing = new Transaction();
+        existing.setUserId(USER);
+        existing.setTransactionDate(LocalDate.of(2024, 1, 15));
+        existing.setAmount(new BigDecimal("4.50"));
+        existing.setType(TransactionType.EXPENSE);
+        existing.setCategory(Category.DINING);
+        existing.setMerchant("Blue Bottle");
+        existing.setDescription("Coffee");
+        transactionRepository.saveAndFlush(existing);
+        jdbcTemplate.update("UPDATE transactions SET fingerprint = NULL");
+
+        StatementImportResponse response = importCsv(HEADER + COFFEE + COFFEE);
+
+        assertThat(response.getImported()).isEqualTo(1);
+        assertThat(response.getDuplicates()).isEqualTo(1);
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM transactions WHERE fingerprint IS NULL", Integer.class)).isZero();
+    }
+
+    // A filter that lets almost everything through: the field-by-field check alone has to tell rows apart
+    @Test
+    void rowsPassingTheFilterAreConfirmedFieldByField() {
+        StatementImportService leaky = new StatementImportService(transactionRepository, transactionTemplate, eventPublisher,
+                categorizer, balanceIndexService, new SimpleMeterRegistry(), 1 << 20, 4096, 1, 1, 10, 0.99);
+        try {
+            importCsv(HEADER + COFFEE);
+            StringBuilder statement = new StringBuilder(HEADER).append(COFFEE);
+            for (int day = 1; day <= 28; day++) {
+                statement.append("2024-02-").append(day < 10 ? "0" : "").append(day).append(",Coffee,-4.50,Blue Bottle\n");
+            }
+
+            StatementImportResponse response = leaky.importStatement(USER, "statement.csv", null,
+                    statement.toString().getBytes(StandardCharsets.UTF_8));
+
+            assertThat(response.getImported()).isEqualTo(28);
+            assertThat(response.getDuplicates()).isEqualTo(1);
+        } finally {
+            leaky.stop();
+        }
+    }
+
+    @Test
+    void otherUsersTransactionsAreNotDuplicates() {
+        importCsv(HEADER + COFFEE);
+
+        StatementImportResponse response = service.importStatement(2L, "statement.csv", null,
+                (HEADER + COFFEE).getBytes(StandardCharsets.UTF_8));
+
+        assertThat(response.getImported()).isEqualTo(1);
+        assertThat(response.getDuplicates()).isZero();
+    }
+
+    /**
+     * A million-row statement end to end: a first import, the same file
+     * again, and a statement a fifth of which is already stored. Timings are
+     * printed rather than checked, as H2 only narrows the fingerprint lookup
+     * by user and so stands in poorly for PostgreSQL; the parse is held to
+     * seconds by {@link StatementReaderBenchmark}. Only runs with -Pslow-tests.
+     */
+    @Test
+    @Tag("slow")
+    void aMillionRowStatementIsImportedAndDeduplicated() {
+        byte[] statement = StatementReaderBenchmark.csv(StatementReaderBenchmark.ROWS, 1);
+        try {
+            long started = System.nanoTime();
+            StatementImportResponse first = service.importStatement(USER, "statement.csv", null, statement);
+            long firstMillis = (System.nanoTime() - started) / 1_000_000;
+            started = System.nanoTime();
+            StatementImportResponse again = service.importStatement(USER, "statement.csv", null, statement);
+            long againMillis = (System.nanoTime() - started) / 1_000_000;
+            // The header and first 2,000 rows again, then 8,000 rows the user doesn't have
+            String overlap = new String(statement, StandardCharsets.UTF_8).lines().limit(2_001)
+                    .collect(Collectors.joining("\n", "", "\n"))
+                    + new String(StatementReaderBenchmark.csv(8_000, 2), StandardCharsets.UTF_8).lines().skip(1)
+                    .map(line -> line.replace(" #", " new #"))
+                    .collect(Collectors.joining("\n", "", "\n"));
+            started = System.nanoTime();
+            StatementImportResponse third = service.importStatement(USER, "statement.csv", null, overlap.getBytes(StandardCharsets.UTF_8));
+            long overlapMillis = (System.nanoTime() - started) / 1_000_000;
+
+            System.out.printf("[statement-import] %d rows, %d MB on H2: first import %d ms, again %d ms; 10000 rows overlapping 2000: %d ms%n",
+                    StatementReaderBenchmark.ROWS, statement.length >> 20, firstMillis, againMillis, overlapMillis);
+            assertThat(first.getImported()).isEqualTo(StatementReaderBenchmark.ROWS);
+            assertThat(again.getImported()).isZero();
+            assertThat(again.getDuplicates()).isEqualTo(StatementReaderBenchmark.ROWS);
+            assertThat(third.getImported()).isEqualTo(8_000);
+            assertThat(third.getDuplicates()).isEqualTo(2_000);
+        } finally {
+            // Far quicker than loading a million entities to delete them
+            jdbcTemplate.update("DELETE FROM transactions");
+        }
+    }
+
+    private StatementImportResponse importCsv(String statement) {
+        return service.importStatement(USER, "statement.csv", null, statement.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private List<String> amounts() {
+        return transactionRepository.findAll().stream()
+                .map(transaction -> (transaction.getType() == TransactionType.EXPENSE ? "-" : "") + transaction.getAmount().toPlainString())
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,88 @@
+package com.personalfinance.transaction.statement;
+
+import static org.mockito.Mockito.mock;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.core.io.ClassPathResource;
+
+import com.personalfinance.transaction.categorize.MerchantCategorizer;
+import com.personalfinance.transaction.categorize.UserCategorizer;
+import com.personalfinance.transaction.repository.MerchantCategoryOverrideRepository;
+
+/**
+ * Parsing, categorising and fingerprinting a {@link #ROWS}-row CSV
+ * statement through {@link StatementReader}, on one thread and on every
+ * core. Launched by {@link StatementReaderTest}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class StatementReaderBenchmark {
+
+    static final int ROWS = 1_000_000;
+    private static final String[][] PAYEES = {
+            {"Blue Bottle", "Coffee"}, {"Safeway", "Groceries"}, {"SHELL OIL 5741", "Fuel"},
+            {"NETFLIX.COM", "Subscription"}, {"Uber Trip", "Ride home"}, {"AMAZON MKTPLACE", "Order"},
+            {"City Utilities", "Electric bill"}, {"Landlord LLC", "Rent"}, {"ACME PAYROLL", "Salary"}};
+
+    @Param({"1", "0"})
+    public int parallelism;
+
+    private StatementReader reader;
+    private UserCategorizer categorizer;
+    private byte[] statement;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        reader = new StatementReader(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors(), 1 << 20, 100);
+        categorizer = new MerchantCategorizer(mock(MerchantCategoryOverrideRepository.class),
+                new ClassPathResource("statement-category-rules.csv"), 0, 10, 60000, "").forUser(1L);
+        statement = csv(ROWS, 1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        reader.shutdown();
+    }
+
+    @Benchmark
+    public int read() {
+        return reader.read(StatementFormat.CSV, statement, categorizer).rows.size();
+    }
+
+    // A bank export of the given number of rows spread over ten years, with a quoted field now and then
+    static byte[] csv(int rows, long seed) {
+        Random random = new Random(seed);
+        StringBuilder csv = new StringBuilder(rows * 56).append("Date,Description,Amount,Payee\n");
+        LocalDate start = LocalDate.of(2015, 1, 1);
+        for (int i = 0; i < rows; i++) {
+            LocalDate date = start.plusDays(i * 3650L / rows);
+            String[] payee = PAYEES[random.nextInt(PAYEES.length)];
+            long cents = payee[0].equals("ACME PAYROLL") ? 250_000 + random.nextInt(10_000) : -(1 + random.nextInt(20_000));
+            csv.append(date).append(',');
+            if (random.nextInt(10) == 0) {
+                csv.append('"').append(payee[1]).append(", #").append(i).append('"');
+            } else {
+                csv.append(payee[1]).append(" #").append(i);
+            }
+            csv.append(',').append(cents < 0 ? "-" : "").append(Math.abs(cents) / 100).append('.')
+                    .append(String.format("%02d", Math.abs(cents) % 100))
+                    .append(',').append(payee[0]).append('\n');
+        }
+        return csv.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,329 @@
+package com.personalfinance.transaction.statement;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+import org.springframework.core.io.ClassPathResource;
+
+import com.personalfinance.transaction.categorize.MerchantCategorizer;
+import com.personalfinance.transaction.categorize.UserCategorizer;
+import com.personalfinance.transaction.model.Transaction.Category;
+import com.personalfinance.transaction.model.TransactionFingerprint;
+import com.personalfinance.transaction.repository.MerchantCategoryOverrideRepository;
+
+// The three parsers through the reader, so rows carry file line numbers, categories and fingerprints
+class StatementReaderTest {
+
+    private static final UserCategorizer CATEGORIZER = new MerchantCategorizer(mock(MerchantCategoryOverrideRepository.class),
+            new ClassPathResource("statement-category-rules.csv"), 0, 10, 60000, "").forUser(1L);
+
+    // One slice per file
+    private final StatementReader whole = new StatementReader(1, Integer.MAX_VALUE / 2, 100);
+    // The smallest slices the reader allows, on four threads
+    private final StatementReader sliced = new StatementReader(4, 4096, 100);
+
+    @AfterEach
+    void tearDown() {
+        whole.shutdown();
+        sliced.shutdown();
+    }
+
+    @Test
+    void csvWithQuotedFieldsAndMixedDateStyles() {
+        StatementReader.ParsedStatement statement = read(StatementFormat.CSV,
+                "\uFEFFDate,Description,Amount,Payee,Category\r\n"
+                + "2024-01-15,\"Coffee, to go\",-4.50,SQ *BLUE BOTTLE,\r\n"
+                + "01/16/2024,\"Pay for \"\"January\"\"\nsecond line\",\"1,234.56\",ACME PAYROLL,\r\n"
+                + "\r\n"
+                + "17/01/24,,(12.50),Safeway,Groceries\r\n");
+
+        assertThat(statement.errors).isEmpty();
+        assertThat(statement.rows).hasSize(3);
+        assertRow(statement.rows.get(0), 2, LocalDate.of(2024, 1, 15), -450, "SQ *BLUE BOTTLE", "Coffee, to go");
+        assertRow(statement.rows.get(1), 3, LocalDate.of(2024, 1, 16), 123456, "ACME PAYROLL", "Pay for \"January\"\nsecond line");
+        // No description: the merchant stands in
+        assertRow(statement.rows.get(2), 6, LocalDate.of(2024, 1, 17), -1250, "Safeway", "Safeway");
+        assertThat(statement.rows).extracting(row -> row.category)
+                .containsExactly(Category.DINING, Category.SALARY, Category.GROCERIES);
+        assertThat(statement.rows.get(0).fingerprint)
+                .isEqualTo(TransactionFingerprint.of(LocalDate.of(2024, 1, 15), -450, "SQ *BLUE BOTTLE", "Coffee, to go"));
+    }
+
+    @Test
+    void csvWithDebitAndCreditColumnsAndCommaDecimals() {
+        StatementReader.ParsedStatement statement = read(StatementFormat.CSV,
+                "Booking Date;Payee;Debit;Credit\n"
+                + "15.01.2024;REWE;12,34;\n"
+                + "16.01.2024;Employer;;2.500,00\n");
+
+        assertThat(statement.rows).extracting(row -> row.cents).containsExactly(-1234L, 250000L);
+        assertThat(statement.rows).extracting(row -> row.epochDay).containsExactly(
+                (int) LocalDate.of(2024, 1, 15).toEpochDay(), (int) LocalDate.of(2024, 1, 16).toEpochDay());
+    }
+
+    @Test
+    void csvTypeColumnSetsTheSign() {
+        StatementReader.ParsedStatement statement = read(StatementFormat.CSV,
+                "Date\tAmount\tType\tMemo\n"
+                + "2024-01-01\t10.00\tDEBIT\tA\n"
+                + "2024-01-02\t-5.00\tcredit\tB\n"
+                + "2024-01-03\t-7.25\ttransfer\tC\n");
+
+        assertThat(statement.rows).extracting(row -> row.cents).containsExactly(-1000L, 500L, -725L);
+    }
+
+    @Test
+    void csvRowsThatCantBeReadAreCountedWithTheirLines() {
+        StatementReader.ParsedStatement statement = read(StatementFormat.CSV,
+                "Date,Amount,Description\n"
+                + "2024-13-01,1.00,bad date\n"
+                + "2024-01-01,abc,bad amount\n"
+                + "2024-01-02,0.00,zero\n"
+                + "2024-01-03,,no amount\n"
+                + "2024-01-04,2.00,fine\n");
+
+        assertThat(statement.rows).extracting(row -> row.description).containsExactly("fine");
+        assertThat(statement.rejected).isEqualTo(4);
+        assertThat(statement.errors).containsExactly(
+                "line 2: unreadable date '2024-13-01'",
+                "line 3: missing or unreadable amount",
+                "line 4: amount is zero",
+                "line 5: missing or unreadable amount");
+    }
+
+    @Test
+    void csvWithoutADateOrAmountColumnIsRejectedWhole() {
+        assertThatThrownBy(() -> read(StatementFormat.CSV, "When,How much\n2024-01-01,1.00\n"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageStartingWith("The CSV header needs a date column");
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+            "-4.505      | -451",
+            "$7          | 700",
+            "12,5        | 1250",
+            "1.234,56    | 123456",
+            "'1 234.5'   | 123450",
+            "+3          | 300",
+            "€12.00      | 1200"
+    })
+    void csvAmounts(String amount, long cents) {
+        StatementReader.ParsedStatement statement = read(StatementFormat.CSV,
+                "Date;Amount\n2024-01-01;" + amount.replace("'", "") + "\n");
+
+        assertThat(statement.rows).extracting(row -> row.cents).containsExactly(cents);
+    }
+
+    @Test
+    void ofxSgmlAndXmlTransactions() {
+        StatementReader.ParsedStatement statement = read(StatementFormat.OFX,
+                "OFXHEADER:100\nDATA:OFXSGML\n\n<OFX><BANKMSGSRSV1><STMTTRNRS><STMTRS><BANKTRANLIST>\n"
+                + "<STMTTRN>\n<TRNTYPE>DEBIT\n<DTPOSTED>20240115120000[-5:EST]\n<TRNAMT>-42.17\n"
+                + "<NAME>SQ *BLUE BOTTLE &amp; CO\n<MEMO>Coffee\n</STMTTRN>\n"
+                + "<STMTTRN>\n<TRNTYPE>CREDIT\n<DTPOSTED>20240116\n<TRNAMT>2500.00\n"
+                + "<PAYEE><NAME>ACME PAYROLL</PAYEE>\n</STMTTRN>\n"
+                + "<STMTTRN>\n<TRNAMT>1.00\n</STMTTRN>\n"
+                + "<STMTTRN><DTPOSTED>20240117</DTPOSTED><TRNAMT>-3.00</TRNAMT><NAME>Metro</NAME></STMTTRN>\n"
+                + "</BANKTRANLIST><LEDGERBAL><BALAMT>100.00<DTASOF>20240131</LEDGERBAL></STMTRS></STMTTRNRS></BANKMSGSRSV1></OFX>\n");
+
+        assertThat(statement.rows).hasSize(3);
+        assertRow(statement.rows.get(0), 5, LocalDate.of(2024, 1, 15), -4217, "SQ *BLUE BOTTLE & CO", "Coffee");
+        assertRow(statement.rows.get(1), 12, LocalDate.of(2024, 1, 16), 250000, "ACME PAYROLL", "ACME PAYROLL");
+        assertRow(statement.rows.get(2), 21, LocalDate.of(2024, 1, 17), -300, "Metro", "Metro");
+        assertThat(statement.errors).containsExactly("line 18: no DTPOSTED");
+    }
+
+    @Test
+    void qifRecordsSkipHeadersAccountListsAndTransfers() {
+        StatementReader.ParsedStatement statement = read(StatementFormat.QIF,
+                "!Account\nNChecking\nTBank\n^\n"
+                + "!Type:Bank\n"
+                + "D1/15'24\nT-42.17\nPSafeway\nMGroceries run\nLFood:Groceries\n^\n"
+                + "D01/16/2024\nU2,500.00\nPACME\nL[Savings]\n^\n"
+                + "D13/45/2024\nT1.00\n^\n"
+                + "D2024-01-18\nT-9.99\n");
+
+        assertThat(statement.rows).hasSize(3);
+        assertRow(statement.rows.get(0), 6, LocalDate.of(2024, 1, 15), -4217, "Safeway", "Groceries run");
+        assertRow(statement.rows.get(1), 12, LocalDate.of(2024, 1, 16), 250000, "ACME", "ACME");
+        // Without its '^' the last record still counts
+        assertRow(statement.rows.get(2), 20, LocalDate.of(2024, 1, 18), -999, null, StatementReader.DEFAULT_DESCRIPTION);
+        assertThat(statement.rows.get(0).category).isEqualTo(Category.GROCERIES);
+        assertThat(statement.rows.get(1).category).isEqualTo(Category.OTHER_INCOME);
+        assertThat(statement.errors).containsExactly("line 17: unreadable date '13/45/2024'");
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+            "statement.QFX  | anything           | OFX",
+            "export.qif     | anything           | QIF",
+            "export.csv     | OFXHEADER:100      | CSV",
+            "download       | '  <?xml version=' | OFX",
+            "download       | !Type:Bank         | QIF",
+            "                | Date,Amount        | CSV"
+    })
+    void formatDetection(String filename, String head, StatementFormat format) {
+        assertThat(StatementFormat.detect(filename, head.getBytes(StandardCharsets.UTF_8))).isEqualTo(format);
+    }
+
+    // Slices cut mid-file must not lose, split or renumber a record, whatever the record looks like
+    @ParameterizedTest
+    @EnumSource(StatementFormat.class)
+    void slicedReadsMatchReadingTheWholeFile(StatementFormat format) {
+        String file = randomStatement(format, new Random(format.ordinal()), 3000);
+
+        StatementReader.ParsedStatement expected = whole.read(format, file.getBytes(StandardCharsets.UTF_8), CATEGORIZER);
+        StatementReader.ParsedStatement actual = sliced.read(format, file.getBytes(StandardCharsets.UTF_8), CATEGORIZER);
+
+        assertThat(StatementParser.create(format, file.getBytes(StandardCharsets.UTF_8)).split(4096).length).isGreaterThan(20);
+        assertThat(expected.rows).hasSizeGreaterThan(2500);
+        assertThat(describe(actual.rows)).isEqualTo(describe(expected.rows));
+        assertThat(actual.errors).isEqualTo(expected.errors).isNotEmpty();
+        assertThat(actual.rejected).isEqualTo(expected.rejected);
+    }
+
+    @ParameterizedTest
+    @EnumSource(StatementFormat.class)
+    void everySliceStartsARecord(StatementFormat format) {
+        byte[] data = randomStatement(format, new Random(42), 500).getBytes(StandardCharsets.UTF_8);
+        StatementParser parser = StatementParser.create(format, data);
+
+        for (int chunkBytes : new int[] {1, 7, 100, 1000}) {
+            int[] bounds = parser.split(chunkBytes);
+            assertThat(bounds[bounds.length - 1]).isEqualTo(data.length);
+            assertThat(bounds).isSorted();
+            int rows = 0;
+            for (int i = 0; i + 1 < bounds.length; i++) {
+                StatementChunk chunk = new StatementChunk();
+                parser.parse(bounds[i], bounds[i + 1], chunk, 0);
+                rows += chunk.rows.size() + chunk.rejected;
+            }
+            StatementChunk all = new StatementChunk();
+            parser.parse(bounds[0], data.length, all, 0);
+            assertThat(rows).as("records over %d-byte slices", chunkBytes).isEqualTo(all.rows.size() + all.rejected);
+        }
+    }
+
+    /**
+     * The JMH suite: a million-row CSV parsed, categorised and fingerprinted
+     * on one thread and on every core. Only runs with -Pslow-tests.
+     */
+    @Test
+    @Tag("slow")
+    void jmhMillionRowStatement() throws RunnerException {
+        byte[] statement = StatementReaderBenchmark.csv(StatementReaderBenchmark.ROWS, 1);
+        StatementReader.ParsedStatement parsed = sliced.read(StatementFormat.CSV, statement, CATEGORIZER);
+        assertThat(parsed.rows).hasSize(StatementReaderBenchmark.ROWS);
+        assertThat(parsed.rejected).isZero();
+
+        Map<String, String> results = new TreeMap<>();
+        Map<String, Double> millis = new TreeMap<>();
+        for (RunResult result : new Runner(new OptionsBuilder()
+                .include(StatementReaderBenchmark.class.getName())
+                .forks(1)
+                .warmupIterations(3)
+                .warmupTime(TimeValue.seconds(1))
+                .measurementIterations(5)
+                .measurementTime(TimeValue.seconds(1))
+                .addProfiler(GCProfiler.class)
+                .build()).run()) {
+            String name = "parallelism=" + result.getParams().getParam("parallelism");
+            double score = result.getPrimaryResult().getScore();
+            double bytes = result.getSecondaryResults().get("gc.alloc.rate.norm").getScore();
+            millis.put(name, score);
+            results.put(name, String.format("%.0f ms/op, %.0f B/row", score, bytes / StatementReaderBenchmark.ROWS));
+        }
+
+        System.out.printf("[statement-import] %d rows, %d MB: %s%n",
+                StatementReaderBenchmark.ROWS, statement.length >> 20, results);
+        // Seconds for a million rows, even on one thread
+        assertThat(millis.get("parallelism=1")).isLessThan(5_000.0);
+        assertThat(millis.get("parallelism=0")).isLessThan(5_000.0);
+    }
+
+    private StatementReader.ParsedStatement read(StatementFormat format, String text) {
+        return whole.read(format, text.getBytes(StandardCharsets.UTF_8), CATEGORIZER);
+    }
+
+    private static void assertRow(StatementRow row, int line, LocalDate date, long cents, String merchant, String description) {
+        assertThat(row.line).isEqualTo(line);
+        assertThat(row.epochDay).isEqualTo(date.toEpochDay());
+        assertThat(row.cents).isEqualTo(cents);
+        assertThat(row.merchant).isEqualTo(merchant);
+        assertThat(row.description).isEqualTo(description);
+    }
+
+    private static List<String> describe(List<StatementRow> rows) {
+        return rows.stream()
+                .map(row -> row.line + "|" + row.epochDay + "|" + row.cents + "|" + row.merchant + "|" + row.description
+                        + "|" + row.category + "|" + row.fingerprint)
+                .collect(Collectors.toList());
+    }
+
+    // Records of uneven size with line breaks inside quoted CSV fields, CRLF endings and a bad record now and then
+    private static String randomStatement(StatementFormat format, Random random, int records) {
+        StringBuilder file = new StringBuilder();
+        switch (format) {
+            case OFX:
+                file.append("OFXHEADER:100\nDATA:OFXSGML\n\n<OFX><BANKTRANLIST>\n");
+                break;
+            case QIF:
+                file.append("!Type:Bank\n");
+                break;
+            default:
+                file.append("Date,Description,Amount,Payee\r\n");
+        }
+        for (int i = 0; i < records; i++) {
+            LocalDate date = LocalDate.of(2023, 1, 1).plusDays(random.nextInt(365));
+            String amount = (random.nextBoolean() ? "-" : "") + (1 + random.nextInt(5000)) + "." + (10 + random.nextInt(90));
+            String merchant = "Merchant " + random.nextInt(50);
+            String memo = "Memo " + "x".repeat(random.nextInt(40)) + " " + i;
+            boolean bad = random.nextInt(50) == 0;
+            switch (format) {
+                case OFX:
+                    file.append("<STMTTRN>\n<TRNTYPE>OTHER\n");
+                    if (!bad) {
+                        file.append("<DTPOSTED>").append(date.toString().replace("-", "")).append("120000\n");
+                    }
+                    file.append("<TRNAMT>").append(amount).append("\n<NAME>").append(merchant)
+                            .append("\n<MEMO>").append(memo).append("\n</STMTTRN>\n");
+                    break;
+                case QIF:
+                    file.append("D").append(bad ? "99/99/2023" : date.getMonthValue() + "/" + date.getDayOfMonth() + "'" + (date.getYear() - 2000))
+                            .append("\nT").append(amount).append("\nP").append(merchant)
+                            .append("\nM").append(memo).append(random.nextBoolean() ? "\r\n" : "\n").append("^\n");
+                    break;
+                default:
+                    String description = random.nextInt(5) == 0 ? "\"" + memo + ",\nmore \"\"quoted\"\"\"" : memo;
+                    file.append(bad ? "not a date" : date).append(',').append(description).append(',')
+                            .append(amount).append(',').append(merchant).append(random.nextBoolean() ? "\r\n" : "\n");
+            }
+        }
+        if (format == StatementFormat.OFX) {
+            file.append("</BANKTRANLIST></OFX>\n");
+        }
+        return file.toString();
+    }
+}
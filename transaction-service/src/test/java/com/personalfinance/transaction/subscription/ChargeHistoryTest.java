@@ -0,0 +1,244 @@
+package com.personalfinance.transaction.subscription;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import com.personalfinance.transaction.model.Transaction.Category;
+import com.personalfinance.transaction.subscription.ChargeSeries.Period;
+
+class ChargeHistoryTest {
+
+    private static final LocalDate TODAY = LocalDate.of(2024, 6, 30);
+    private static final double TOLERANCE = 0.1;
+
+    private long nextId = 1;
+
+    @Test
+    void theFormsAMerchantTakesOnStatementsShareASeries() {
+        ChargeHistory history = new ChargeHistory(TOLERANCE);
+        String[] forms = {"SQ *STREAMFLIX #0423", "Streamflix 01187", "streamflix"};
+        for (int month = 0; month < 6; month++) {
+            add(history, TODAY.minusMonths(5 - month), 1_599, forms[month % forms.length], null);
+        }
+
+        assertThat(history.current(TODAY)).singleElement().satisfies(series -> {
+            assertThat(series.period()).isEqualTo(Period.MONTHLY);
+            assertThat(series.charges()).isEqualTo(6);
+            assertThat(series.getMerchant()).isEqualTo("streamflix");
+        });
+    }
+
+    @Test
+    void theDescriptionStandsInForAMissingMerchant() {
+        ChargeHistory history = new ChargeHistory(TOLERANCE);
+        for (int month = 0; month < 4; month++) {
+            add(history, TODAY.minusMonths(3 - month), 4_500, null, "ACH IRONWORKS GYM 884213");
+        }
+        // Nothing to group by, or nothing charged
+        add(history, TODAY, 1_000, null, null);
+        add(history, TODAY, 0, "Ironworks Gym", null);
+
+        assertThat(history.current(TODAY)).singleElement()
+                .satisfies(series -> assertThat(series.getMerchant()).isEqualTo("ACH IRONWORKS GYM 884213"));
+        assertThat(history.seriesCount()).isEqualTo(1);
+    }
+
+    @Test
+    void aShopsMonthlyPlanStaysApartFromEverythingElseBoughtThere() {
+        ChargeHistory history = new ChargeHistory(TOLERANCE);
+        Random random = new Random(1);
+        for (LocalDate day = TODAY.minusDays(180); !day.isAfter(TODAY); day = day.plusDays(1)) {
+            if (day.getDayOfMonth() == 3) {
+                add(history, day, 1_299, "Corner Books", null);
+            }
+            if (random.nextInt(4) == 0) {
+                add(history, day, 2_000 + random.nextInt(6_000), "Corner Books", null);
+            }
+        }
+
+        assertThat(history.current(TODAY)).singleElement().satisfies(series -> {
+            assertThat(series.period()).isEqualTo(Period.MONTHLY);
+            assertThat(series.lastCents()).isEqualTo(1_299);
+        });
+    }
+
+    @Test
+    void aPriceRiseKeepsTheSubscriptionGoing() {
+        ChargeHistory history = new ChargeHistory(TOLERANCE);
+        for (int month = 0; month < 8; month++) {
+            add(history, TODAY.minusMonths(7 - month), month < 4 ? 1_599 : 1_749, "Streamflix", null);
+        }
+
+        assertThat(history.current(TODAY)).singleElement().satisfies(series -> {
+            assertThat(series.charges()).isEqualTo(8);
+            assertThat(series.lastCents()).isEqualTo(1_749);
+        });
+        assertThat(history.seriesCount()).isEqualTo(1);
+    }
+
+    @Test
+    void aCancelledSubscriptionIsNotCurrent() {
+        ChargeHistory history = new ChargeHistory(TOLERANCE);
+        for (int month = 0; month < 6; month++) {
+            add(history, LocalDate.of(2024, 5, 20).minusMonths(5 - month), 999, "Streamflix", null);
+        }
+
+        assertThat(history.current(LocalDate.of(2024, 6, 23))).hasSize(1);
+        assertThat(history.current(LocalDate.of(2024, 6, 24))).isEmpty();
+    }
+
+    @Test
+    void aCreateTheScanAlreadySawIsNotAddedTwice() {
+        ChargeHistory history = new ChargeHistory(TOLERANCE);
+        for (int month = 0; month < 3; month++) {
+            add(history, TODAY.minusMonths(3 - month), 999, "Streamflix", null);
+        }
+        long scanned = nextId - 1;
+
+        history.addCreated(scanned, TODAY.toEpochDay(), 999, "Streamflix", null, Category.ENTERTAINMENT);
+        assertThat(history.current(TODAY)).singleElement().satisfies(series -> assertThat(series.charges()).isEqualTo(3));
+
+        history.addCreated(scanned + 1, TODAY.toEpochDay(), 999, "Streamflix", null, Category.ENTERTAINMENT);
+        assertThat(history.current(TODAY)).singleElement().satisfies(series -> assertThat(series.charges()).isEqualTo(4));
+    }
+
+    @Test
+    void pruningDropsSeriesThatCanNoLongerBeCurrent() {
+        ChargeHistory history = new ChargeHistory(TOLERANCE);
+        add(history, TODAY.minusDays(500), 5_000, "Old Shop", null);
+        add(history, TODAY.minusDays(300), 5_000, "Newer Shop", null);
+
+        history.prune(TODAY);
+
+        assertThat(history.seriesCount()).isEqualTo(1);
+        // Charges after the scan still group by merchant
+        history.addCreated(nextId++, TODAY.toEpochDay(), 5_000, "Newer Shop", null, Category.SHOPPING);
+        assertThat(history.seriesCount()).isEqualTo(1);
+    }
+
+    /**
+     * 10,000 users with 1000 random shop purchases each over the history
+     * window (10M), plus the charges of 3 to 7 weekly, monthly or yearly
+     * subscriptions. Measures building each history as the scan does,
+     * detection across every user, and adding one charge against
+     * re-reading a user. Every planted subscription must be found, with
+     * false positives from random purchases kept rare. Only runs with
+     * -Pslow-tests.
+     */
+    @Test
+    @Tag("slow")
+    void tenMillionExpenses() {
+        int users = 10_000;
+        Random random = new Random(11);
+        long buildNanos = 0;
+        long detectNanos = 0;
+        long addNanos = 0;
+        long expenses = 0;
+        int planted = 0;
+        int found = 0;
+        int falsePositives = 0;
+
+        for (int user = 0; user < users; user++) {
+            List<long[]> rows = new ArrayList<>();
+            List<String> merchants = new ArrayList<>();
+            int subscriptions = randomUser(random, rows, merchants);
+
+            long started = System.nanoTime();
+            ChargeHistory history = build(rows, merchants);
+            buildNanos += System.nanoTime() - started;
+            expenses += rows.size();
+
+            started = System.nanoTime();
+            List<ChargeSeries> current = history.current(TODAY);
+            detectNanos += System.nanoTime() - started;
+
+            int plantedFound = 0;
+            for (ChargeSeries series : current) {
+                plantedFound += series.getMerchant().startsWith("Service") ? 1 : 0;
+            }
+            planted += subscriptions;
+            found += plantedFound;
+            falsePositives += current.size() - plantedFound;
+
+            started = System.nanoTime();
+            history.addCreated(Long.MAX_VALUE, TODAY.toEpochDay(), 1_234, "Shop 7", null, Category.SHOPPING);
+            addNanos += System.nanoTime() - started;
+        }
+
+        // Re-reading one user, for comparison with adding a charge
+        long[] rescans = new long[101];
+        for (int i = 0; i < rescans.length; i++) {
+            List<long[]> rows = new ArrayList<>();
+            List<String> merchants = new ArrayList<>();
+            randomUser(random, rows, merchants);
+            long started = System.nanoTime();
+            build(rows, merchants);
+            rescans[i] = System.nanoTime() - started;
+        }
+        Arrays.sort(rescans);
+
+        double perSecond = expenses / (buildNanos / 1e9);
+        double addMicros = addNanos / 1e3 / users;
+        double rescanMicros = rescans[rescans.length / 2] / 1e3;
+        System.out.printf("[subscriptions] %d expenses over %d users: build %.2fM expenses/s, detection %d ms in all,"
+                        + " %d/%d planted found, %d false positives; add %.1f us vs rescan %.0f us%n",
+                expenses, users, perSecond / 1e6, TimeUnit.NANOSECONDS.toMillis(detectNanos), found, planted,
+                falsePositives, addMicros, rescanMicros);
+
+        assertThat(found).isEqualTo(planted);
+        // Random purchases rarely line up: well under one false subscription per user
+        assertThat(falsePositives).isLessThan(users / 4);
+        assertThat(addMicros).isLessThan(rescanMicros / 10);
+    }
+
+    // A user's expenses in date order, as rows of {epochDay, cents, merchant index}; returns how many subscriptions
+    private static int randomUser(Random random, List<long[]> rows, List<String> merchants) {
+        int count = 3 + random.nextInt(5);
+        for (int s = 0; s < count; s++) {
+            Period period = Period.values()[random.nextInt(Period.values().length)];
+            long cents = 199 + random.nextInt(20_000);
+            String merchant = "Service " + s;
+            LocalDate last = TODAY.minusDays(random.nextInt(period.days));
+            LocalDate from = TODAY.minusDays(800);
+            for (int k = 0; ; k++) {
+                LocalDate charged = period == Period.WEEKLY ? last.minusWeeks(k)
+                        : period == Period.MONTHLY ? last.minusMonths(k) : last.minusYears(k);
+                if (charged.isBefore(from)) {
+                    break;
+                }
+                rows.add(new long[] {charged.toEpochDay(), cents, merchants.size()});
+                merchants.add(merchant);
+            }
+        }
+        for (int i = 0; i < 1000; i++) {
+            rows.add(new long[] {TODAY.toEpochDay() - random.nextInt(800), 100 + random.nextInt(20_000), merchants.size()});
+            merchants.add("Shop " + random.nextInt(300));
+        }
+        rows.sort(Comparator.comparingLong(row -> row[0]));
+        return count;
+    }
+
+    private static ChargeHistory build(List<long[]> rows, List<String> merchants) {
+        ChargeHistory history = new ChargeHistory(TOLERANCE);
+        long id = 1;
+        for (long[] row : rows) {
+            history.add(id++, row[0], row[1], merchants.get((int) row[2]), null, Category.OTHER_EXPENSE);
+        }
+        history.prune(TODAY);
+        return history;
+    }
+
+    private void add(ChargeHistory history, LocalDate date, long cents, String merchant, String description) {
+        history.add(nextId++, date.toEpochDay(), cents, merchant, description, Category.ENTERTAINMENT);
+    }
+}
@@ -0,0 +1,168 @@
+package com.personalfinance.transaction.subscription;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDate;
+
+import org.junit.jupiter.api.Test;
+
+import com.personalfinance.transaction.model.Transaction.Category;
+import com.personalfinance.transaction.subscription.ChargeSeries.Period;
+
+class ChargeSeriesTest {
+
+    private static final LocalDate JAN_15 = LocalDate.of(2024, 1, 15);
+
+    @Test
+    void monthlyChargesAreMonthlyAcrossShortAndLongMonths() {
+        ChargeSeries series = new ChargeSeries();
+        for (int month = 0; month < 6; month++) {
+            add(series, JAN_15.plusMonths(month), 1_599);
+        }
+
+        assertThat(series.period()).isEqualTo(Period.MONTHLY);
+        assertThat(Period.MONTHLY.after(JAN_15)).isEqualTo(LocalDate.of(2024, 2, 15));
+        assertThat(Period.MONTHLY.monthlyCents(1_599)).isEqualTo(1_599);
+    }
+
+    @Test
+    void weeklyAndYearlyChargesAreCostedPerMonth() {
+        ChargeSeries weekly = new ChargeSeries();
+        for (int week = 0; week < 4; week++) {
+            add(weekly, JAN_15.plusWeeks(week), 500);
+        }
+        ChargeSeries yearly = new ChargeSeries();
+        add(yearly, JAN_15, 12_000);
+        add(yearly, JAN_15.plusYears(1), 12_000);
+
+        assertThat(weekly.period()).isEqualTo(Period.WEEKLY);
+        assertThat(yearly.period()).isEqualTo(Period.YEARLY);
+        assertThat(Period.WEEKLY.monthlyCents(500)).isEqualTo(2_167);
+        assertThat(Period.YEARLY.monthlyCents(12_000)).isEqualTo(1_000);
+    }
+
+    @Test
+    void tooFewChargesAreNotASchedule() {
+        ChargeSeries twoMonths = new ChargeSeries();
+        add(twoMonths, JAN_15, 999);
+        add(twoMonths, JAN_15.plusMonths(1), 999);
+        ChargeSeries oneCharge = new ChargeSeries();
+        add(oneCharge, JAN_15, 999);
+
+        assertThat(twoMonths.period()).isNull();
+        assertThat(oneCharge.period()).isNull();
+    }
+
+    @Test
+    void twoChargesAYearApartOnlyCountAtTheSamePrice() {
+        ChargeSeries samePrice = new ChargeSeries();
+        add(samePrice, JAN_15, 9_900);
+        add(samePrice, JAN_15.plusYears(1), 10_000);
+        ChargeSeries twoShopVisits = new ChargeSeries();
+        add(twoShopVisits, JAN_15, 9_000);
+        add(twoShopVisits, JAN_15.plusYears(1), 9_500);
+
+        assertThat(samePrice.period()).isEqualTo(Period.YEARLY);
+        assertThat(twoShopVisits.period()).isNull();
+    }
+
+    @Test
+    void mostIntervalsMustFitThePeriod() {
+        // Three of four intervals monthly: regular enough
+        ChargeSeries oneLate = new ChargeSeries();
+        int[] offsets = {0, 31, 60, 105, 136};
+        for (int offset : offsets) {
+            add(oneLate, JAN_15.plusDays(offset), 1_000);
+        }
+        // Monthly at the median, but only three of five intervals fit
+        ChargeSeries erratic = new ChargeSeries();
+        int[] erraticOffsets = {0, 30, 61, 91, 141, 201};
+        for (int offset : erraticOffsets) {
+            add(erratic, JAN_15.plusDays(offset), 1_000);
+        }
+
+        assertThat(oneLate.period()).isEqualTo(Period.MONTHLY);
+        assertThat(erratic.period()).isNull();
+    }
+
+    @Test
+    void severalChargesOnOneDayAreAHabitNotASchedule() {
+        ChargeSeries coffee = new ChargeSeries();
+        for (int month = 0; month < 4; month++) {
+            add(coffee, JAN_15.plusMonths(month), 450);
+        }
+        add(coffee, JAN_15.plusMonths(3), 450);
+
+        assertThat(coffee.period()).isNull();
+    }
+
+    @Test
+    void aPriceChangeWithinTheToleranceStaysInTheSeries() {
+        ChargeSeries series = new ChargeSeries();
+        add(series, JAN_15, 1_000);
+
+        assertThat(series.distance(1_099, 0.1)).isEqualTo(99);
+        assertThat(series.distance(1_101, 0.1)).isEqualTo(-1);
+        add(series, JAN_15.plusMonths(1), 1_099);
+        // Measured from the latest charge, so a price may creep up over the years
+        assertThat(series.distance(1_208, 0.1)).isEqualTo(109);
+        // Small amounts get a dollar either way
+        ChargeSeries small = new ChargeSeries();
+        add(small, JAN_15, 199);
+        assertThat(small.distance(299, 0.1)).isEqualTo(100);
+        assertThat(small.distance(300, 0.1)).isEqualTo(-1);
+    }
+
+    @Test
+    void theLatestChargeNamesTheSeries() {
+        ChargeSeries series = new ChargeSeries();
+        series.add(day(JAN_15.plusMonths(1)), 1_099, "STREAMFLIX.COM", Category.ENTERTAINMENT);
+        // Backdated: slotted in before, so the name stays
+        series.add(day(JAN_15), 999, "Streamflix old", Category.OTHER_EXPENSE);
+
+        assertThat(series.getMerchant()).isEqualTo("STREAMFLIX.COM");
+        assertThat(series.getCategory()).isEqualTo(Category.ENTERTAINMENT);
+        assertThat(series.lastCents()).isEqualTo(1_099);
+        assertThat(series.firstDay()).isEqualTo(day(JAN_15));
+        assertThat(series.lastDay()).isEqualTo(day(JAN_15.plusMonths(1)));
+    }
+
+    @Test
+    void onlyTheLatestChargesAreKept() {
+        ChargeSeries series = new ChargeSeries();
+        for (int month = 1; month <= 30; month++) {
+            add(series, JAN_15.plusMonths(month), month);
+        }
+        // Older than every charge kept: counted, but dropped
+        add(series, JAN_15, 1_000);
+        // Backdated into the kept range: the oldest kept charge makes room
+        add(series, JAN_15.plusMonths(20).plusDays(3), 2_000);
+
+        assertThat(series.charges()).isEqualTo(32);
+        assertThat(series.firstDay()).isEqualTo(day(JAN_15));
+        assertThat(series.lastDay()).isEqualTo(day(JAN_15.plusMonths(30)));
+        assertThat(series.lastCents()).isEqualTo(30);
+        // The backdated charge breaks one month in two, but most intervals still fit
+        assertThat(series.period()).isEqualTo(Period.MONTHLY);
+    }
+
+    @Test
+    void aChargeOverdueByMoreThanTheToleranceMeansCancelled() {
+        LocalDate last = LocalDate.of(2024, 3, 10);
+
+        assertThat(ChargeSeries.isCurrent(Period.MONTHLY, last, LocalDate.of(2024, 4, 13))).isTrue();
+        assertThat(ChargeSeries.isCurrent(Period.MONTHLY, last, LocalDate.of(2024, 4, 14))).isFalse();
+        assertThat(ChargeSeries.isCurrent(Period.WEEKLY, last, last.plusDays(8))).isTrue();
+        assertThat(ChargeSeries.isCurrent(Period.WEEKLY, last, last.plusDays(9))).isFalse();
+        assertThat(ChargeSeries.isCurrent(Period.YEARLY, last, last.plusYears(1).plusDays(10))).isTrue();
+        assertThat(ChargeSeries.isCurrent(Period.YEARLY, last, last.plusYears(1).plusDays(11))).isFalse();
+    }
+
+    private static void add(ChargeSeries series, LocalDate date, long cents) {
+        series.add(day(date), cents, "Streamflix", Category.ENTERTAINMENT);
+    }
+
+    private static int day(LocalDate date) {
+        return (int) date.toEpochDay();
+    }
+}
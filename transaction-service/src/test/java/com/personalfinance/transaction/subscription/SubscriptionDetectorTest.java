@@ -0,0 +1,146 @@
+package com.personalfinance.transaction.subscription;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.personalfinance.transaction.dto.SubscriptionsResponse;
+import com.personalfinance.transaction.model.Money;
+import com.personalfinance.transaction.model.Transaction;
+import com.personalfinance.transaction.model.Transaction.Category;
+import com.personalfinance.transaction.model.Transaction.TransactionType;
+import com.personalfinance.transaction.repository.TransactionRepository;
+import com.personalfinance.transaction.repository.TransactionRepositoryCustom.ExpenseHandler;
+import com.personalfinance.transaction.service.TransactionCreatedEvent;
+import com.personalfinance.transaction.service.TransactionsChangedEvent;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class SubscriptionDetectorTest {
+
+    private static final long USER = 1L;
+
+    private final TransactionRepository transactionRepository = mock(TransactionRepository.class);
+    private final List<Transaction> expenses = new ArrayList<>();
+    private final LocalDate today = LocalDate.now();
+    private SubscriptionDetector detector;
+
+    @BeforeEach
+    void setUp() {
+        doAnswer(call -> {
+            ExpenseHandler handler = call.getArgument(2);
+            for (Transaction expense : expenses) {
+                handler.accept(expense.getId(), expense.getTransactionDate().toEpochDay(), Money.cents(expense.getAmount()),
+                        expense.getMerchant(), expense.getDescription(), expense.getCategory());
+            }
+            return null;
+        }).when(transactionRepository).forEachExpense(eq(USER), any(), any());
+        detector = new SubscriptionDetector(transactionRepository, mock(PlatformTransactionManager.class),
+                new SimpleMeterRegistry(), 1, 800, 0.1, 100, 900_000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        detector.stop();
+    }
+
+    @Test
+    void currentSubscriptionsAreListedMostExpensiveFirst() {
+        for (int month = 5; month >= 1; month--) {
+            expense("Streamflix", "15.99", today.minusMonths(month));
+            expense("Ironworks Gym", "45.00", today.minusMonths(month).plusDays(1));
+            // Stopped: its next charge is long overdue
+            expense("Newsly", "9.99", today.minusMonths(month + 3));
+        }
+        for (int week = 8; week >= 1; week--) {
+            expense("Veg Box", "20.00", today.minusWeeks(week).plusDays(1));
+        }
+
+        SubscriptionsResponse response = detector.getSubscriptions(USER);
+
+        assertThat(response.getCount()).isEqualTo(3);
+        assertThat(response.getSubscriptions()).extracting(SubscriptionsResponse.Subscription::getMerchant)
+                .containsExactly("Veg Box", "Ironworks Gym", "Streamflix");
+        // $20 a week is $86.67 a month
+        assertThat(response.getMonthlyCost()).isEqualByComparingTo("147.66");
+        assertThat(response.getSubscriptions().get(2)).satisfies(streamflix -> {
+            assertThat(streamflix.getPeriod()).isEqualTo("MONTHLY");
+            assertThat(streamflix.getAmount()).isEqualByComparingTo("15.99");
+            assertThat(streamflix.getCharges()).isEqualTo(5);
+            assertThat(streamflix.getFirstCharged()).isEqualTo(today.minusMonths(5));
+            assertThat(streamflix.getLastCharged()).isEqualTo(today.minusMonths(1));
+            assertThat(streamflix.getNextExpected()).isEqualTo(today.minusMonths(1).plusMonths(1));
+        });
+    }
+
+    @Test
+    void aCreatedExpenseIsAddedWithoutReadingTheHistoryAgain() throws InterruptedException {
+        expense("Streamflix", "15.99", today.minusMonths(2));
+        expense("Streamflix", "15.99", today.minusMonths(1));
+        assertThat(detector.getSubscriptions(USER).getCount()).isZero();
+
+        // Income isn't a charge
+        Transaction refund = transaction("Streamflix", "15.99", today, TransactionType.INCOME);
+        detector.onTransactionsChanged(new TransactionCreatedEvent(refund));
+        detector.onTransactionsChanged(new TransactionCreatedEvent(expense("Streamflix", "15.99", today)));
+
+        assertThat(awaitCount(1)).isEqualTo(1);
+        assertThat(detector.getSubscriptions(USER).getSubscriptions().get(0).getCharges()).isEqualTo(3);
+        verify(transactionRepository, times(1)).forEachExpense(eq(USER), any(), any());
+    }
+
+    @Test
+    void otherChangesMakeTheNextRequestReadTheHistoryAgain() {
+        for (int month = 3; month >= 1; month--) {
+            expense("Streamflix", "15.99", today.minusMonths(month));
+        }
+        assertThat(detector.getSubscriptions(USER).getCount()).isEqualTo(1);
+
+        // Deleted, say
+        expenses.remove(expenses.size() - 1);
+        detector.onTransactionsChanged(new TransactionsChangedEvent(USER));
+
+        assertThat(detector.getSubscriptions(USER).getCount()).isZero();
+        verify(transactionRepository, times(2)).forEachExpense(eq(USER), any(), any());
+    }
+
+    // Created expenses are added on a worker; waits for it to catch up
+    private int awaitCount(int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (true) {
+            int count = detector.getSubscriptions(USER).getCount();
+            if (count == expected || System.currentTimeMillis() > deadline) {
+                return count;
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private Transaction expense(String merchant, String amount, LocalDate date) {
+        Transaction expense = transaction(merchant, amount, date, TransactionType.EXPENSE);
+        expenses.add(expense);
+        return expense;
+    }
+
+    private Transaction transaction(String merchant, String amount, LocalDate date, TransactionType type) {
+        Transaction transaction = new Transaction(USER, merchant, new BigDecimal(amount), type, Category.ENTERTAINMENT);
+        transaction.setId(expenses.size() + 1L);
+        transaction.setMerchant(merchant);
+        transaction.setTransactionDate(date);
+        return transaction;
+    }
+}
@@ -10,11 +10,14 @@ import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.userdetails.UserDetails;
 import com.personalfinance.user.security.UserDetailsImpl;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/goals")
 public class GoalController {
 
+    static final int MAX_BATCH_SIZE = 1000;
+
     private final GoalService goalService;
     private static final Logger logger = LoggerFactory.getLogger(GoalController.class);
 
@@ -38,6 +41,27 @@ public class GoalController {
         return savedGoal;
     }
 
+    // For bulk imports; like a single create, goals go to the authenticated user when there is one
+    @PostMapping("/batch")
+    public ResponseEntity<?> createGoals(@RequestBody List<Goal> goals, @AuthenticationPrincipal UserDetails userDetails) {
+        if (goals.isEmpty() || goals.size() > MAX_BATCH_SIZE) {
+            return ResponseEntity.badRequest().body(Map.of("error", "A batch holds 1 to " + MAX_BATCH_SIZE + " goals"));
+        }
+        for (Goal goal : goals) {
+            // Always inserts; an id in the body must not turn into an update
+            goal.setId(null);
+            if (userDetails instanceof UserDetailsImpl) {
+                goal.setUserId(((UserDetailsImpl) userDetails).getId());
+            }
+            if (goal.getUserId() == null || goal.getName() == null || goal.getTargetAmount() == null) {
+                return ResponseEntity.badRequest().body(Map.of("error", "Every goal needs a userId, name and targetAmount"));
+            }
+        }
+        int created = goalService.createGoals(goals);
+        logger.info("[GoalController] Created {} goals in a batch", created);
+        return ResponseEntity.ok(Map.of("created", created));
+    }
+
     @PutMapping("/{id}")
     public Goal updateGoal(@PathVariable Long id, @RequestBody Goal goal) {
         return goalService.updateGoal(id, goal);
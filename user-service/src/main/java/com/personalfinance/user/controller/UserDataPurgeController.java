@@ -0,0 +1,52 @@
+package com.personalfinance.user.controller;
+
+import com.personalfinance.user.security.UserDetailsImpl;
+import com.personalfinance.user.service.UserDataPurgeService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/users/data")
+public class UserDataPurgeController {
+    private static final Logger logger = LoggerFactory.getLogger(UserDataPurgeController.class);
+
+    static final int MAX_PURGE_CHUNK_SIZE = 5000;
+
+    private final UserDataPurgeService purgeService;
+
+    public UserDataPurgeController(UserDataPurgeService purgeService) {
+        this.purgeService = purgeService;
+    }
+
+    // One bounded chunk of a full purge; repeat each section until nothing is deleted.
+    // The gateway's purger sends the user's own token, so the path id must be the caller's
+    @DeleteMapping("/{userId}/purge/{section}")
+    public ResponseEntity<?> purgeChunk(@PathVariable Long userId, @PathVariable String section,
+                                        @RequestParam(defaultValue = "500") int limit,
+                                        @AuthenticationPrincipal UserDetails userDetails) {
+        if (!(userDetails instanceof UserDetailsImpl) || !userId.equals(((UserDetailsImpl) userDetails).getId())) {
+            logger.warn("[UserDataPurgeController] Refused purge of userId={} by {}",
+                    userId, userDetails != null ? userDetails.getUsername() : "anonymous");
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(Map.of("error", "Can only purge your own data"));
+        }
+        UserDataPurgeService.Section target;
+        try {
+            target = UserDataPurgeService.Section.fromPath(section);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+        int deleted = purgeService.purgeChunk(target, userId, Math.max(1, Math.min(limit, MAX_PURGE_CHUNK_SIZE)));
+        logger.debug("[UserDataPurgeController] {} chunk for userId={}: {} deleted", section, userId, deleted);
+        return ResponseEntity.ok(Map.of("deleted", deleted));
+    }
+}
@@ -1,50 +1,229 @@
 package com.personalfinance.user.controller;
 
-import com.personalfinance.user.model.UserFinancialData;
+import com.personalfinance.user.repository.FinancialDataHistoryRepository;
+import com.personalfinance.user.repository.StoredFinancialData;
+import com.personalfinance.user.service.FinancialDataHistoryService;
 import com.personalfinance.user.service.UserFinancialDataService;
+import com.personalfinance.user.service.UserFinancialDataService.Precondition;
+import com.personalfinance.user.util.JsonPatch;
+import com.personalfinance.user.util.RawJson;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.userdetails.UserDetails;
 import com.personalfinance.user.security.UserDetailsImpl;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 @RestController
 @RequestMapping("/api/users/financial-data")
 public class UserFinancialDataController {
+    private static final String JSON_PATCH = "application/json-patch+json";
+    private static final String MERGE_PATCH = "application/merge-patch+json";
+    private static final byte[] DATA_PREFIX = "{\"data\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] NULL = "null".getBytes(StandardCharsets.UTF_8);
+
     private final UserFinancialDataService service;
+    private final FinancialDataHistoryService historyService;
     private static final Logger logger = LoggerFactory.getLogger(UserFinancialDataController.class);
 
-    public UserFinancialDataController(UserFinancialDataService service) {
+    public UserFinancialDataController(UserFinancialDataService service, FinancialDataHistoryService historyService) {
         this.service = service;
+        this.historyService = historyService;
     }
 
-    @GetMapping
-    public ResponseEntity<?> getFinancialData(@AuthenticationPrincipal UserDetails userDetails) {
+    @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> getFinancialData(
+            @AuthenticationPrincipal UserDetails userDetails,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         logger.info("GET /api/users/financial-data called for user: {}", userDetails != null ? userDetails.getUsername() : "null");
         Long userId = getUserIdFromPrincipal(userDetails);
-        UserFinancialData data = service.getByUserId(userId).orElse(null);
-        logger.debug("Fetched financial data for userId {}: {}", userId, data != null ? data.getData() : "null");
-        Map<String, Object> response = new java.util.HashMap<>();
-        response.put("data", data == null ? null : data.getData());
-        return ResponseEntity.ok(response);
+        // Pollers usually hold the current ETag; answer them from the version column alone
+        if (ifNoneMatch != null) {
+            Optional<Long> version = service.getVersion(userId);
+            if (version.isPresent() && matchesAny(ifNoneMatch, version.get(), true)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag(version.get())).cacheControl(CacheControl.noCache()).build();
+            }
+        }
+        StoredFinancialData stored = service.getStoredByUserId(userId).orElse(null);
+        logger.debug("Fetched financial data for userId {}: {}", userId, stored == null ? "none" : stored.isCompressed() ? "compressed" : "plain");
+        // Compressed documents are inflated straight into the response, never held whole in memory
+        StreamingResponseBody body = out -> {
+            out.write(DATA_PREFIX);
+            if (stored == null) {
+                out.write(NULL);
+            } else {
+                stored.writeTo(out);
+            }
+            out.write('}');
+        };
+        if (stored == null) {
+            return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .eTag(etag(stored.getVersion()))
+                .cacheControl(CacheControl.noCache())
+                .body(body);
     }
 
     @PutMapping
     public ResponseEntity<?> saveFinancialData(
             @AuthenticationPrincipal UserDetails userDetails,
-            @RequestBody Map<String, Object> body) throws Exception {
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            @RequestBody byte[] body) {
         logger.info("PUT /api/users/financial-data called for user: {}", userDetails != null ? userDetails.getUsername() : "null");
-        logger.debug("Request body: {}", body);
         Long userId = getUserIdFromPrincipal(userDetails);
-        com.fasterxml.jackson.databind.ObjectMapper mapper = new com.fasterxml.jackson.databind.ObjectMapper();
-        com.fasterxml.jackson.databind.JsonNode dataNode = mapper.valueToTree(body.get("data"));
-        logger.debug("Converted dataNode for userId {}: {}", userId, dataNode);
-        service.saveOrUpdate(userId, dataNode);
-        logger.info("Saved financial data for userId {}", userId);
-        return ResponseEntity.ok(Map.of("success", true));
+        String data;
+        try {
+            data = RawJson.extractMember(body, "data");
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+        try {
+            Precondition precondition = precondition(userId, ifMatch);
+            if (precondition == null) {
+                return preconditionRequired();
+            }
+            long version = service.saveOrUpdate(userId, data, precondition);
+            logger.info("Saved financial data for userId {} at version {}", userId, version);
+            return ResponseEntity.ok().eTag(etag(version)).body(Map.of("success", true));
+        } catch (UserFinancialDataService.PreconditionFailedException e) {
+            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @PatchMapping(consumes = {JSON_PATCH, MERGE_PATCH})
+    public ResponseEntity<?> patchFinancialData(
+            @AuthenticationPrincipal UserDetails userDetails,
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            @RequestBody com.fasterxml.jackson.databind.JsonNode patch) {
+        logger.info("PATCH /api/users/financial-data called for user: {}", userDetails != null ? userDetails.getUsername() : "null");
+        Long userId = getUserIdFromPrincipal(userDetails);
+        boolean mergePatch = MediaType.parseMediaType(contentType).isCompatibleWith(MediaType.parseMediaType(MERGE_PATCH));
+        try {
+            Precondition precondition = precondition(userId, ifMatch);
+            if (precondition == null) {
+                return preconditionRequired();
+            }
+            long version = service.patch(userId, patch, mergePatch, precondition);
+            logger.info("Patched financial data for userId {} to version {}", userId, version);
+            return ResponseEntity.ok().eTag(etag(version)).body(Map.of("success", true));
+        } catch (UserFinancialDataService.PreconditionFailedException e) {
+            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).body(Map.of("error", e.getMessage()));
+        } catch (JsonPatch.JsonPatchException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", e.getMessage()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @GetMapping("/history")
+    public ResponseEntity<?> getHistory(@AuthenticationPrincipal UserDetails userDetails) {
+        Long userId = getUserIdFromPrincipal(userDetails);
+        List<Map<String, Object>> versions = new ArrayList<>();
+        for (FinancialDataHistoryRepository.VersionSummary summary : historyService.list(userId)) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("version", summary.getVersion());
+            entry.put("kind", summary.getKind());
+            entry.put("createdAt", summary.getCreatedAt());
+            entry.put("size", summary.getSize());
+            versions.add(entry);
+        }
+        return ResponseEntity.ok(Map.of("versions", versions));
+    }
+
+    @GetMapping("/history/{version}")
+    public ResponseEntity<?> getVersion(@AuthenticationPrincipal UserDetails userDetails, @PathVariable long version) {
+        Long userId = getUserIdFromPrincipal(userDetails);
+        return historyService.reconstruct(userId, version)
+                .<ResponseEntity<?>>map(data -> ResponseEntity.ok().eTag(etag(version)).body(Map.of("version", version, "data", data)))
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "Version " + version + " is not in the retained history")));
+    }
+
+    // Undo: writes an old version back as a new version, under the usual If-Match rules
+    @PostMapping("/history/{version}/restore")
+    public ResponseEntity<?> restoreVersion(
+            @AuthenticationPrincipal UserDetails userDetails,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            @PathVariable long version) {
+        Long userId = getUserIdFromPrincipal(userDetails);
+        Optional<com.fasterxml.jackson.databind.JsonNode> data = historyService.reconstruct(userId, version);
+        if (data.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "Version " + version + " is not in the retained history"));
+        }
+        try {
+            Precondition precondition = precondition(userId, ifMatch);
+            if (precondition == null) {
+                return preconditionRequired();
+            }
+            long newVersion = service.saveOrUpdate(userId, data.get().toString(), precondition);
+            logger.info("Restored financial data for userId {} from version {} as version {}", userId, version, newVersion);
+            return ResponseEntity.ok().eTag(etag(newVersion)).body(Map.of("success", true, "version", newVersion));
+        } catch (UserFinancialDataService.PreconditionFailedException e) {
+            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    /**
+     * Maps If-Match onto a write precondition. Without If-Match only the first write
+     * (creating the document) is allowed; null means the header was required.
+     */
+    private Precondition precondition(Long userId, String ifMatch) {
+        if (ifMatch == null) {
+            return service.getVersion(userId).isPresent() ? null : Precondition.create();
+        }
+        if (ifMatch.trim().equals("*")) {
+            return Precondition.any();
+        }
+        // Several tags: resolve to whichever is current; the conditional write re-checks it atomically
+        Long current = service.getVersion(userId).orElse(null);
+        if (current == null || !matchesAny(ifMatch, current, false)) {
+            throw new UserFinancialDataService.PreconditionFailedException();
+        }
+        return Precondition.version(current);
+    }
+
+    private static ResponseEntity<?> preconditionRequired() {
+        return ResponseEntity.status(HttpStatus.PRECONDITION_REQUIRED)
+                .body(Map.of("error", "If-Match header with the document's ETag is required"));
+    }
+
+    private static String etag(long version) {
+        return "\"" + version + "\"";
+    }
+
+    // If-None-Match compares weakly, If-Match strongly (weak tags never match)
+    private static boolean matchesAny(String header, long version, boolean weak) {
+        String expected = etag(version);
+        for (String tag : header.split(",")) {
+            tag = tag.trim();
+            if (tag.equals("*")) {
+                return true;
+            }
+            if (tag.startsWith("W/")) {
+                if (!weak) {
+                    continue;
+                }
+                tag = tag.substring(2);
+            }
+            if (tag.equals(expected)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     private Long getUserIdFromPrincipal(UserDetails userDetails) {
@@ -0,0 +1,48 @@
+package com.personalfinance.user.model;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * One version of a user's financial-data document. SNAPSHOT rows hold the
+ * full document; JSON_PATCH and MERGE_PATCH rows hold the patch that turns
+ * the previous version into this one. Rows are only written through native
+ * inserts in FinancialDataHistoryRepository.
+ */
+@Entity
+@Table(name = "user_financial_data_history",
+        uniqueConstraints = @UniqueConstraint(columnNames = {"user_id", "version"}))
+public class FinancialDataHistory {
+
+    public enum Kind { SNAPSHOT, JSON_PATCH, MERGE_PATCH }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "version", nullable = false)
+    private long version;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "kind", nullable = false, length = 16)
+    private Kind kind;
+
+    @Column(name = "payload", nullable = false, columnDefinition = "jsonb")
+    private String payload;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    public FinancialDataHistory() {
+    }
+
+    public Long getId() { return id; }
+    public Long getUserId() { return userId; }
+    public long getVersion() { return version; }
+    public Kind getKind() { return kind; }
+    public String getPayload() { return payload; }
+    public LocalDateTime getCreatedAt() { return createdAt; }
+}
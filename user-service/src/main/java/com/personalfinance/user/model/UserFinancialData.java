@@ -20,9 +20,17 @@ public class UserFinancialData {
     @Convert(converter = com.personalfinance.user.util.JsonNodeConverter.class)
     private com.fasterxml.jackson.databind.JsonNode data;
 
+    // Set instead of data for large documents; see UserFinancialDataRepositoryCustom#setDocument
+    @Column(name = "data_compressed", columnDefinition = "bytea")
+    private byte[] dataCompressed;
+
     @Column(name = "updated_at")
     private LocalDateTime updatedAt;
 
+    // Bumped by every write; exposed to clients as the ETag
+    @Column(name = "version", nullable = false, columnDefinition = "bigint not null default 0")
+    private long version;
+
     public UserFinancialData() {
     }
 
@@ -57,6 +65,14 @@ public class UserFinancialData {
         this.data = data;
     }
 
+    public byte[] getDataCompressed() {
+        return dataCompressed;
+    }
+
+    public void setDataCompressed(byte[] dataCompressed) {
+        this.dataCompressed = dataCompressed;
+    }
+
     public LocalDateTime getUpdatedAt() {
         return updatedAt;
     }
@@ -64,4 +80,12 @@ public class UserFinancialData {
     public void setUpdatedAt(LocalDateTime updatedAt) {
         this.updatedAt = updatedAt;
     }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
 }
@@ -1,11 +1,14 @@
 package com.personalfinance.user.repository;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.personalfinance.user.model.ChatMessage;
@@ -29,4 +32,16 @@ public interface ChatMessageRepository extends JpaRepository<ChatMessage, Long>
     List<ChatMessage> findByUserIdOrderByTimestampDesc(Long userId);
     
     void deleteByRoomId(Long roomId);
+
+    @Query("SELECT cm.id FROM ChatMessage cm WHERE cm.userId = :userId ORDER BY cm.id")
+    List<Long> findIdsByUserId(@Param("userId") Long userId, Pageable pageable);
+
+    // Replies outlive the message they answered
+    @Modifying
+    @Query("UPDATE ChatMessage cm SET cm.replyToId = NULL WHERE cm.replyToId IN :ids")
+    int clearReplyTo(@Param("ids") Collection<Long> ids);
+
+    @Modifying
+    @Query("DELETE FROM ChatMessage cm WHERE cm.id IN :ids")
+    int deleteByIdIn(@Param("ids") Collection<Long> ids);
 }
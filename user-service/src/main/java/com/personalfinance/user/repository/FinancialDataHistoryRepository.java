@@ -0,0 +1,70 @@
+package com.personalfinance.user.repository;
+
+import com.personalfinance.user.model.FinancialDataHistory;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface FinancialDataHistoryRepository extends JpaRepository<FinancialDataHistory, Long> {
+
+    boolean existsByUserIdAndVersion(Long userId, long version);
+
+    @Modifying
+    @Query(value = "INSERT INTO user_financial_data_history (user_id, version, kind, payload, created_at) VALUES (:userId, :version, :kind, CAST(:payload AS jsonb), :createdAt)", nativeQuery = true)
+    void insertDelta(@Param("userId") Long userId, @Param("version") long version, @Param("kind") String kind,
+                     @Param("payload") String payload, @Param("createdAt") LocalDateTime createdAt);
+
+    // Copies the live row server-side, so taking a snapshot never moves the document through Java
+    @Modifying
+    @Query(value = "INSERT INTO user_financial_data_history (user_id, version, kind, payload, created_at) SELECT user_id, version, 'SNAPSHOT', data, updated_at FROM user_financial_data WHERE user_id = :userId", nativeQuery = true)
+    void insertSnapshotOfCurrent(@Param("userId") Long userId);
+
+    // The nearest snapshot at or below the version, followed by every row up to it
+    @Query(value = "SELECT version, kind, CAST(payload AS text) AS payload FROM user_financial_data_history WHERE user_id = :userId AND version <= :version"
+            + " AND version >= (SELECT max(version) FROM user_financial_data_history WHERE user_id = :userId AND version <= :version AND kind = 'SNAPSHOT')"
+            + " ORDER BY version", nativeQuery = true)
+    List<ChainEntry> findChain(@Param("userId") Long userId, @Param("version") long version);
+
+    @Query(value = "SELECT version, kind, created_at AS createdAt, octet_length(CAST(payload AS text)) AS size FROM user_financial_data_history WHERE user_id = :userId ORDER BY version DESC", nativeQuery = true)
+    List<VersionSummary> findSummaries(@Param("userId") Long userId);
+
+    @Query(value = "SELECT user_id FROM user_financial_data_history GROUP BY user_id HAVING count(*) > :retain", nativeQuery = true)
+    List<Long> findUserIdsWithMoreThan(@Param("retain") long retain);
+
+    @Query(value = "SELECT max(version) FROM user_financial_data_history WHERE user_id = :userId", nativeQuery = true)
+    Optional<Long> findLatestVersion(@Param("userId") Long userId);
+
+    @Modifying
+    @Query(value = "UPDATE user_financial_data_history SET kind = 'SNAPSHOT', payload = CAST(:payload AS jsonb) WHERE user_id = :userId AND version = :version", nativeQuery = true)
+    void convertToSnapshot(@Param("userId") Long userId, @Param("version") long version, @Param("payload") String payload);
+
+    @Modifying
+    @Query(value = "DELETE FROM user_financial_data_history WHERE user_id = :userId AND version < :version", nativeQuery = true)
+    int deleteOlderThan(@Param("userId") Long userId, @Param("version") long version);
+
+    @Query("SELECT h.id FROM FinancialDataHistory h WHERE h.userId = :userId ORDER BY h.id")
+    List<Long> findIdsByUserId(@Param("userId") Long userId, Pageable pageable);
+
+    @Modifying
+    @Query("DELETE FROM FinancialDataHistory h WHERE h.id IN :ids")
+    int deleteByIdIn(@Param("ids") Collection<Long> ids);
+
+    interface ChainEntry {
+        Long getVersion();
+        String getKind();
+        String getPayload();
+    }
+
+    interface VersionSummary {
+        Long getVersion();
+        String getKind();
+        LocalDateTime getCreatedAt();
+        Integer getSize();
+    }
+}
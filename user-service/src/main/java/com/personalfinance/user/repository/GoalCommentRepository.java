@@ -1,10 +1,14 @@
 package com.personalfinance.user.repository;
 
 import com.personalfinance.user.model.GoalComment;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -21,4 +25,11 @@ public interface GoalCommentRepository extends JpaRepository<GoalComment, Long>
     Long countByGoalId(Long goalId);
     
     void deleteByGoalId(Long goalId);
+
+    @Query("SELECT gc FROM GoalComment gc WHERE gc.userId = :userId ORDER BY gc.id")
+    List<GoalComment> findByUserIdOrderById(@Param("userId") Long userId, Pageable pageable);
+
+    @Modifying
+    @Query("DELETE FROM GoalComment gc WHERE gc.goalId IN :goalIds")
+    int deleteByGoalIdIn(@Param("goalIds") Collection<Long> goalIds);
 }
@@ -1,10 +1,14 @@
 package com.personalfinance.user.repository;
 
 import com.personalfinance.user.model.GoalLike;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -26,4 +30,11 @@ public interface GoalLikeRepository extends JpaRepository<GoalLike, Long> {
     void deleteByGoalId(Long goalId);
     
     void deleteByGoalIdAndUserId(Long goalId, Long userId);
+
+    @Query("SELECT gl FROM GoalLike gl WHERE gl.userId = :userId ORDER BY gl.id")
+    List<GoalLike> findByUserIdOrderById(@Param("userId") Long userId, Pageable pageable);
+
+    @Modifying
+    @Query("DELETE FROM GoalLike gl WHERE gl.goalId IN :goalIds")
+    int deleteByGoalIdIn(@Param("goalIds") Collection<Long> goalIds);
 }
@@ -1,10 +1,22 @@
 package com.personalfinance.user.repository;
 
 import com.personalfinance.user.model.Goal;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import java.util.Collection;
 import java.util.List;
 
 public interface GoalRepository extends JpaRepository<Goal, Long> {
 
     List<Goal> findByUserId(Long userId);
+
+    @Query("SELECT g.id FROM Goal g WHERE g.userId = :userId ORDER BY g.id")
+    List<Long> findIdsByUserId(@Param("userId") Long userId, Pageable pageable);
+
+    @Modifying
+    @Query("DELETE FROM Goal g WHERE g.id IN :ids")
+    int deleteByIdIn(@Param("ids") Collection<Long> ids);
 }
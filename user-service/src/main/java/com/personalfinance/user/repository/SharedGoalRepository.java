@@ -1,10 +1,14 @@
 package com.personalfinance.user.repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.personalfinance.user.model.SharedGoal;
@@ -29,4 +33,19 @@ public interface SharedGoalRepository extends JpaRepository<SharedGoal, Long> {
     
     @Query("SELECT COUNT(sg) FROM SharedGoal sg WHERE sg.userId = :userId")
     Long countByUserId(Long userId);
+
+    @Query("SELECT sg.id FROM SharedGoal sg WHERE sg.userId = :userId ORDER BY sg.id")
+    List<Long> findIdsByUserId(@Param("userId") Long userId, Pageable pageable);
+
+    @Modifying
+    @Query("DELETE FROM SharedGoal sg WHERE sg.id IN :ids")
+    int deleteByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Modifying
+    @Query(value = "UPDATE shared_goals SET likes_count = GREATEST(likes_count - :count, 0) WHERE id = :id", nativeQuery = true)
+    int decrementLikesCount(@Param("id") Long id, @Param("count") int count);
+
+    @Modifying
+    @Query(value = "UPDATE shared_goals SET comments_count = GREATEST(comments_count - :count, 0) WHERE id = :id", nativeQuery = true)
+    int decrementCommentsCount(@Param("id") Long id, @Param("count") int count);
 }
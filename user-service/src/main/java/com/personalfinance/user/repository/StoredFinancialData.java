@@ -0,0 +1,57 @@
+package com.personalfinance.user.repository;
+
+import com.personalfinance.user.util.CompressedJson;
+import io.micrometer.core.instrument.Timer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A user's financial-data document as stored: either plain jsonb text or a
+ * {@link CompressedJson} blob. Callers don't need to know which; writeTo
+ * inflates straight into the output stream without materialising the text.
+ */
+public class StoredFinancialData {
+
+    private final long version;
+    private final String text;
+    private final byte[] compressed;
+    private final long fetchStartNanos;
+    private final Timer readTimer;
+
+    StoredFinancialData(long version, String text, byte[] compressed, long fetchStartNanos, Timer readTimer) {
+        this.version = version;
+        this.text = text;
+        this.compressed = compressed;
+        this.fetchStartNanos = fetchStartNanos;
+        this.readTimer = readTimer;
+    }
+
+    public long getVersion() { return version; }
+    public boolean isCompressed() { return compressed != null; }
+
+    public String asText() {
+        if (compressed == null) {
+            return text;
+        }
+        try (InputStream in = CompressedJson.open(compressed)) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Records fetch-to-last-byte latency for the document's storage mode
+    public void writeTo(OutputStream out) throws IOException {
+        if (compressed == null) {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+        } else {
+            try (InputStream in = CompressedJson.open(compressed)) {
+                in.transferTo(out);
+            }
+        }
+        readTimer.record(System.nanoTime() - fetchStartNanos, java.util.concurrent.TimeUnit.NANOSECONDS);
+    }
+}
@@ -3,18 +3,25 @@ package com.personalfinance.user.repository;
 import com.personalfinance.user.model.UserFinancialData;
 import org.springframework.data.jpa.repository.JpaRepository;
 import java.util.Optional;
+import javax.persistence.LockModeType;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
-import org.springframework.transaction.annotation.Transactional;
-import java.time.LocalDateTime;
 
-public interface UserFinancialDataRepository extends JpaRepository<UserFinancialData, Long> {
+public interface UserFinancialDataRepository extends JpaRepository<UserFinancialData, Long>, UserFinancialDataRepositoryCustom {
 
     Optional<UserFinancialData> findByUserId(Long userId);
 
+    // Holds the row until commit, so a read-check-write can't interleave with another writer's
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT d FROM UserFinancialData d WHERE d.userId = :userId")
+    Optional<UserFinancialData> findByUserIdForUpdate(@Param("userId") Long userId);
+
+    @Query(value = "SELECT version FROM user_financial_data WHERE user_id = :userId", nativeQuery = true)
+    Optional<Long> findVersionByUserId(@Param("userId") Long userId);
+
     @Modifying
-    @Transactional
-    @Query(value = "INSERT INTO user_financial_data (user_id, data, updated_at) VALUES (:userId, CAST(:data AS jsonb), :updatedAt) ON CONFLICT (user_id) DO UPDATE SET data = EXCLUDED.data, updated_at = EXCLUDED.updated_at", nativeQuery = true)
-    void upsertFinancialData(@Param("userId") Long userId, @Param("data") String data, @Param("updatedAt") LocalDateTime updatedAt);
+    @Query("DELETE FROM UserFinancialData d WHERE d.userId = :userId")
+    int deleteByUserIdReturningCount(@Param("userId") Long userId);
 }
@@ -0,0 +1,32 @@
+package com.personalfinance.user.repository;
+
+import com.personalfinance.user.model.UserFinancialData;
+import com.personalfinance.user.util.JsonbPatchSql;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * Conditional writes for financial data. Each returns the new version, or null
+ * when the precondition didn't hold (row already exists, row missing, or the
+ * stored version differs from {@code expectedVersion}). A null
+ * {@code expectedVersion} matches any existing row.
+ *
+ * Documents of at least {@code financial-data.compression.threshold-bytes} are
+ * written compressed to {@code data_compressed} with {@code data} left null;
+ * {@link #findStored} hides the difference from readers.
+ */
+public interface UserFinancialDataRepositoryCustom {
+
+    Long insertIfAbsent(Long userId, String data, LocalDateTime updatedAt);
+
+    Long updateIfVersion(Long userId, String data, Long expectedVersion, LocalDateTime updatedAt);
+
+    // Also null if a patch guard failed, or if the document is stored compressed
+    Long patchInPlace(Long userId, JsonbPatchSql patch, Long expectedVersion, LocalDateTime updatedAt);
+
+    // forUpdate locks the row so the previous version can be diffed against the one replacing it
+    Optional<StoredFinancialData> findStored(Long userId, boolean forUpdate);
+
+    // For writes through the entity (H2 in dev): sets data or data_compressed by the same threshold
+    void setDocument(UserFinancialData entity, String data);
+}
@@ -0,0 +1,130 @@
+package com.personalfinance.user.repository;
+
+import com.personalfinance.user.model.UserFinancialData;
+import com.personalfinance.user.util.CompressedJson;
+import com.personalfinance.user.util.JsonNodeConverter;
+import com.personalfinance.user.util.JsonbPatchSql;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.SqlParameterValue;
+import org.springframework.transaction.annotation.Transactional;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+public class UserFinancialDataRepositoryCustomImpl implements UserFinancialDataRepositoryCustom {
+
+    private static final String TABLE = "user_financial_data";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int compressionThreshold;
+    private final DistributionSummary compressionRatio;
+    private final Counter rawBytes;
+    private final Counter storedBytes;
+    private final Timer plainReads;
+    private final Timer compressedReads;
+
+    public UserFinancialDataRepositoryCustomImpl(JdbcTemplate jdbcTemplate,
+                                                 MeterRegistry meterRegistry,
+                                                 @Value("${financial-data.compression.threshold-bytes:32768}") int compressionThreshold) {
+        this.jdbcTemplate = jdbcTemplate;
+        // A threshold of 0 or less turns compression off
+        this.compressionThreshold = compressionThreshold > 0 ? compressionThreshold : Integer.MAX_VALUE;
+        this.compressionRatio = DistributionSummary.builder("financial_data.compression.ratio")
+                .description("Uncompressed / compressed size of documents written compressed")
+                .publishPercentiles(0.5, 0.95)
+                .register(meterRegistry);
+        this.rawBytes = Counter.builder("financial_data.write.bytes").tag("form", "raw").baseUnit("bytes").register(meterRegistry);
+        this.storedBytes = Counter.builder("financial_data.write.bytes").tag("form", "stored").baseUnit("bytes").register(meterRegistry);
+        this.plainReads = readTimer(meterRegistry, "plain");
+        this.compressedReads = readTimer(meterRegistry, "compressed");
+    }
+
+    private static Timer readTimer(MeterRegistry meterRegistry, String storage) {
+        return Timer.builder("financial_data.read")
+                .description("Time from query to the last byte of the document being written out")
+                .tag("storage", storage)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+    }
+
+    @Override
+    @Transactional
+    public Long insertIfAbsent(Long userId, String data, LocalDateTime updatedAt) {
+        Object[] encoded = encode(data);
+        return returningVersion("INSERT INTO " + TABLE + " (user_id, data, data_compressed, updated_at, version) VALUES (?, CAST(? AS jsonb), ?, ?, 1)"
+                + " ON CONFLICT (user_id) DO NOTHING RETURNING version", userId, encoded[0], encoded[1], Timestamp.valueOf(updatedAt));
+    }
+
+    @Override
+    @Transactional
+    public Long updateIfVersion(Long userId, String data, Long expectedVersion, LocalDateTime updatedAt) {
+        Object[] encoded = encode(data);
+        String sql = "UPDATE " + TABLE + " SET data = CAST(? AS jsonb), data_compressed = ?, updated_at = ?, version = version + 1 WHERE user_id = ?";
+        if (expectedVersion == null) {
+            return returningVersion(sql + " RETURNING version", encoded[0], encoded[1], Timestamp.valueOf(updatedAt), userId);
+        }
+        return returningVersion(sql + " AND version = ? RETURNING version", encoded[0], encoded[1], Timestamp.valueOf(updatedAt), userId, expectedVersion);
+    }
+
+    @Override
+    @Transactional
+    public Long patchInPlace(Long userId, JsonbPatchSql patch, Long expectedVersion, LocalDateTime updatedAt) {
+        List<Object> params = new ArrayList<>(Arrays.asList(patch.parameters(Timestamp.valueOf(updatedAt), userId)));
+        // jsonb_set can't reach into a compressed document; those take the in-memory path
+        String sql = patch.updateSql(TABLE) + " AND data IS NOT NULL";
+        if (expectedVersion != null) {
+            sql += " AND version = ?";
+            params.add(expectedVersion);
+        }
+        return returningVersion(sql + " RETURNING version", params.toArray());
+    }
+
+    @Override
+    public Optional<StoredFinancialData> findStored(Long userId, boolean forUpdate) {
+        long start = System.nanoTime();
+        String sql = "SELECT CAST(data AS text) AS data, data_compressed, version FROM " + TABLE + " WHERE user_id = ?"
+                + (forUpdate ? " FOR UPDATE" : "");
+        List<StoredFinancialData> rows = jdbcTemplate.query(sql, (rs, rowNum) -> {
+            byte[] compressed = rs.getBytes("data_compressed");
+            return new StoredFinancialData(rs.getLong("version"), rs.getString("data"), compressed, start,
+                    compressed != null ? compressedReads : plainReads);
+        }, userId);
+        return rows.isEmpty() ? Optional.empty() : Optional.of(rows.get(0));
+    }
+
+    @Override
+    public void setDocument(UserFinancialData entity, String data) {
+        Object[] encoded = encode(data);
+        entity.setData(encoded[0] instanceof String ? JsonNodeConverter.toJsonNode(data) : null);
+        entity.setDataCompressed(encoded[1] instanceof byte[] ? (byte[]) encoded[1] : null);
+    }
+
+    // {jsonb text, bytea}: exactly one is non-null
+    private Object[] encode(String data) {
+        byte[] utf8 = data.getBytes(StandardCharsets.UTF_8);
+        rawBytes.increment(utf8.length);
+        if (utf8.length < compressionThreshold) {
+            storedBytes.increment(utf8.length);
+            return new Object[]{data, new SqlParameterValue(Types.BINARY, null)};
+        }
+        byte[] compressed = CompressedJson.compress(utf8);
+        storedBytes.increment(compressed.length);
+        compressionRatio.record((double) utf8.length / compressed.length);
+        return new Object[]{new SqlParameterValue(Types.VARCHAR, null), compressed};
+    }
+
+    private Long returningVersion(String sql, Object... params) {
+        List<Long> versions = jdbcTemplate.queryForList(sql, Long.class, params);
+        return versions.isEmpty() ? null : versions.get(0);
+    }
+}
@@ -0,0 +1,162 @@
+package com.personalfinance.user.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.personalfinance.user.model.FinancialDataHistory.Kind;
+import com.personalfinance.user.repository.FinancialDataHistoryRepository;
+import com.personalfinance.user.util.JsonNodeConverter;
+import com.personalfinance.user.util.JsonPatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Version history for financial-data documents. Each write records the patch
+ * from the previous version; every {@code snapshot-interval} versions (and
+ * whenever the chain is broken or a delta would be as big as the document)
+ * a full snapshot is stored instead. Any retained version is rebuilt by
+ * replaying deltas onto the nearest snapshot below it, so at most
+ * {@code snapshot-interval - 1} patches are ever applied.
+ */
+@Service
+public class FinancialDataHistoryService {
+    private static final Logger logger = LoggerFactory.getLogger(FinancialDataHistoryService.class);
+
+    private final FinancialDataHistoryRepository repo;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int snapshotInterval;
+    private final int retainVersions;
+    private final int diffMaxChars;
+
+    public FinancialDataHistoryService(FinancialDataHistoryRepository repo,
+                                       TransactionTemplate transactionTemplate,
+                                       @Value("${financial-data.history.enabled:true}") boolean enabled,
+                                       @Value("${financial-data.history.snapshot-interval:20}") int snapshotInterval,
+                                       @Value("${financial-data.history.retain-versions:200}") int retainVersions,
+                                       @Value("${financial-data.history.diff-max-chars:65536}") int diffMaxChars) {
+        this.repo = repo;
+        this.transactionTemplate = transactionTemplate;
+        // The SQL only needs a jsonb type; on H2 the JSONB domain created by the datasource URL stands in
+        this.enabled = enabled;
+        this.snapshotInterval = Math.max(1, snapshotInterval);
+        this.retainVersions = Math.max(1, retainVersions);
+        this.diffMaxChars = diffMaxChars;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Whether a document this size may be diffed on a full replacement.
+     * Diffing parses the old and new document on the request path, so when
+     * either is past the limit the new one is stored as a snapshot instead:
+     * more history storage for big documents, no parsing on their writes.
+     */
+    public boolean shouldDiff(int documentChars) {
+        return documentChars <= diffMaxChars;
+    }
+
+    /**
+     * Records {@code version}, which the caller has just written in the same transaction.
+     * {@code delta} turns the previous version into this one; pass null to force a snapshot.
+     * {@code document} is the new document's text if the caller has it, else null; the
+     * live row is then copied instead, which only works while it is stored uncompressed.
+     */
+    @Transactional
+    public void record(Long userId, long version, Kind kind, String delta, String document) {
+        if (!enabled) {
+            return;
+        }
+        boolean snapshot = delta == null
+                || version % snapshotInterval == 0
+                || (document != null && delta.length() >= document.length())
+                || !repo.existsByUserIdAndVersion(userId, version - 1);
+        if (snapshot && document != null) {
+            repo.insertDelta(userId, version, Kind.SNAPSHOT.name(), document, LocalDateTime.now());
+        } else if (snapshot) {
+            repo.insertSnapshotOfCurrent(userId);
+        } else {
+            repo.insertDelta(userId, version, kind.name(), delta, LocalDateTime.now());
+        }
+    }
+
+    public List<FinancialDataHistoryRepository.VersionSummary> list(Long userId) {
+        return repo.findSummaries(userId);
+    }
+
+    @Transactional(readOnly = true)
+    public Optional<JsonNode> reconstruct(Long userId, long version) {
+        List<FinancialDataHistoryRepository.ChainEntry> chain = repo.findChain(userId, version);
+        if (chain.isEmpty() || chain.get(chain.size() - 1).getVersion() != version) {
+            return Optional.empty();
+        }
+        JsonNode document = null;
+        long expected = chain.get(0).getVersion();
+        for (FinancialDataHistoryRepository.ChainEntry entry : chain) {
+            if (entry.getVersion() != expected) {
+                logger.warn("History for userId={} has a gap at version {}", userId, expected);
+                return Optional.empty();
+            }
+            JsonNode payload = JsonNodeConverter.toJsonNode(entry.getPayload());
+            switch (Kind.valueOf(entry.getKind())) {
+                case SNAPSHOT:
+                    document = payload;
+                    break;
+                case JSON_PATCH:
+                    document = JsonPatch.parse(payload).apply(document);
+                    break;
+                case MERGE_PATCH:
+                    document = JsonPatch.mergePatch(document, payload);
+                    break;
+                default:
+                    throw new IllegalStateException();
+            }
+            expected++;
+        }
+        return Optional.of(document);
+    }
+
+    /**
+     * Drops versions older than the newest {@code retain-versions}. The oldest version
+     * kept is rewritten as a snapshot first so it stays reconstructible.
+     */
+    @Scheduled(fixedDelayString = "${financial-data.history.compaction-interval-ms:3600000}",
+            initialDelayString = "${financial-data.history.compaction-interval-ms:3600000}")
+    public void compact() {
+        if (!enabled) {
+            return;
+        }
+        for (Long userId : repo.findUserIdsWithMoreThan(retainVersions)) {
+            try {
+                Integer deleted = transactionTemplate.execute(status -> compact(userId));
+                logger.info("[FinancialDataHistory] Compacted userId={}, removed {} versions", userId, deleted);
+            } catch (RuntimeException e) {
+                logger.error("[FinancialDataHistory] Compaction failed for userId={}: {}", userId, e.getMessage(), e);
+            }
+        }
+    }
+
+    private int compact(Long userId) {
+        long latest = repo.findLatestVersion(userId).orElse(0L);
+        long oldestKept = latest - retainVersions + 1;
+        if (oldestKept <= 1) {
+            return 0;
+        }
+        JsonNode base = reconstruct(userId, oldestKept).orElse(null);
+        if (base == null) {
+            // Chain already broken below this point; nothing older is reconstructible anyway
+            logger.warn("[FinancialDataHistory] Cannot rebuild version {} for userId={}", oldestKept, userId);
+            return repo.deleteOlderThan(userId, oldestKept);
+        }
+        repo.convertToSnapshot(userId, oldestKept, base.toString());
+        return repo.deleteOlderThan(userId, oldestKept);
+    }
+}
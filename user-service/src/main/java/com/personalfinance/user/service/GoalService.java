@@ -3,6 +3,7 @@ package com.personalfinance.user.service;
 import com.personalfinance.user.model.Goal;
 import com.personalfinance.user.repository.GoalRepository;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import java.util.List;
 import java.util.Optional;
 
@@ -27,6 +28,12 @@ public class GoalService {
         return goalRepository.save(goal);
     }
 
+    // All or nothing: one database transaction for the whole batch
+    @Transactional
+    public int createGoals(List<Goal> goals) {
+        return goalRepository.saveAll(goals).size();
+    }
+
     public Goal updateGoal(Long id, Goal updatedGoal) {
         return goalRepository.findById(id)
                 .map(goal -> {
@@ -0,0 +1,145 @@
+package com.personalfinance.user.service;
+
+import com.personalfinance.user.model.GoalComment;
+import com.personalfinance.user.model.GoalLike;
+import com.personalfinance.user.repository.ChatMessageRepository;
+import com.personalfinance.user.repository.FinancialDataHistoryRepository;
+import com.personalfinance.user.repository.GoalCommentRepository;
+import com.personalfinance.user.repository.GoalLikeRepository;
+import com.personalfinance.user.repository.GoalRepository;
+import com.personalfinance.user.repository.SharedGoalRepository;
+import com.personalfinance.user.repository.UserFinancialDataRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Deletes a user's data one bounded chunk at a time, for purges driven from
+ * the gateway. Each call is a short transaction that removes at most
+ * {@code limit} rows of one section and returns how many went; a section is
+ * done once a call deletes nothing. Rows other users depend on
+ * are fixed up in the same transaction (like and comment counters on shared
+ * goals, replies to deleted chat messages).
+ */
+@Service
+public class UserDataPurgeService {
+    private static final Logger logger = LoggerFactory.getLogger(UserDataPurgeService.class);
+
+    public enum Section {
+        GOAL_LIKES("goal-likes"),
+        GOAL_COMMENTS("goal-comments"),
+        SHARED_GOALS("shared-goals"),
+        CHAT_MESSAGES("chat-messages"),
+        GOALS("goals"),
+        FINANCIAL_DATA("financial-data");
+
+        private final String path;
+
+        Section(String path) {
+            this.path = path;
+        }
+
+        public String getPath() { return path; }
+
+        public static Section fromPath(String path) {
+            for (Section section : values()) {
+                if (section.path.equals(path)) {
+                    return section;
+                }
+            }
+            throw new IllegalArgumentException("Unknown purge section: " + path);
+        }
+    }
+
+    private final GoalLikeRepository likeRepository;
+    private final GoalCommentRepository commentRepository;
+    private final SharedGoalRepository sharedGoalRepository;
+    private final ChatMessageRepository chatMessageRepository;
+    private final GoalRepository goalRepository;
+    private final FinancialDataHistoryRepository historyRepository;
+    private final UserFinancialDataRepository financialDataRepository;
+
+    public UserDataPurgeService(GoalLikeRepository likeRepository,
+                                GoalCommentRepository commentRepository,
+                                SharedGoalRepository sharedGoalRepository,
+                                ChatMessageRepository chatMessageRepository,
+                                GoalRepository goalRepository,
+                                FinancialDataHistoryRepository historyRepository,
+                                UserFinancialDataRepository financialDataRepository) {
+        this.likeRepository = likeRepository;
+        this.commentRepository = commentRepository;
+        this.sharedGoalRepository = sharedGoalRepository;
+        this.chatMessageRepository = chatMessageRepository;
+        this.goalRepository = goalRepository;
+        this.historyRepository = historyRepository;
+        this.financialDataRepository = financialDataRepository;
+    }
+
+    @Transactional
+    public int purgeChunk(Section section, Long userId, int limit) {
+        PageRequest chunk = PageRequest.of(0, limit);
+        int deleted;
+        switch (section) {
+            case GOAL_LIKES: {
+                List<GoalLike> likes = likeRepository.findByUserIdOrderById(userId, chunk);
+                countBy(likes, GoalLike::getGoalId).forEach(sharedGoalRepository::decrementLikesCount);
+                likeRepository.deleteAllInBatch(likes);
+                deleted = likes.size();
+                break;
+            }
+            case GOAL_COMMENTS: {
+                List<GoalComment> comments = commentRepository.findByUserIdOrderById(userId, chunk);
+                countBy(comments, GoalComment::getGoalId).forEach(sharedGoalRepository::decrementCommentsCount);
+                commentRepository.deleteAllInBatch(comments);
+                deleted = comments.size();
+                break;
+            }
+            case SHARED_GOALS: {
+                // Other users' likes and comments on these goals go with them
+                List<Long> ids = sharedGoalRepository.findIdsByUserId(userId, chunk);
+                if (!ids.isEmpty()) {
+                    likeRepository.deleteByGoalIdIn(ids);
+                    commentRepository.deleteByGoalIdIn(ids);
+                    sharedGoalRepository.deleteByIdIn(ids);
+                }
+                deleted = ids.size();
+                break;
+            }
+            case CHAT_MESSAGES: {
+                List<Long> ids = chatMessageRepository.findIdsByUserId(userId, chunk);
+                if (!ids.isEmpty()) {
+                    chatMessageRepository.clearReplyTo(ids);
+                    chatMessageRepository.deleteByIdIn(ids);
+                }
+                deleted = ids.size();
+                break;
+            }
+            case GOALS: {
+                List<Long> ids = goalRepository.findIdsByUserId(userId, chunk);
+                deleted = ids.isEmpty() ? 0 : goalRepository.deleteByIdIn(ids);
+                break;
+            }
+            default: {
+                // History first; the document itself goes in the call that finds no history left
+                List<Long> ids = historyRepository.findIdsByUserId(userId, chunk);
+                deleted = ids.isEmpty()
+                        ? financialDataRepository.deleteByUserIdReturningCount(userId)
+                        : historyRepository.deleteByIdIn(ids);
+            }
+        }
+        if (deleted > 0) {
+            logger.info("[UserDataPurgeService] Purged {} {} for userId={}", deleted, section.getPath(), userId);
+        }
+        return deleted;
+    }
+
+    private static <T> Map<Long, Integer> countBy(List<T> rows, Function<T, Long> goalId) {
+        return rows.stream().collect(Collectors.groupingBy(goalId, Collectors.summingInt(row -> 1)));
+    }
+}
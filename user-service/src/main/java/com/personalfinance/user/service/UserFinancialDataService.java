@@ -1,8 +1,19 @@
 package com.personalfinance.user.service;
 
+import com.personalfinance.user.model.FinancialDataHistory.Kind;
 import com.personalfinance.user.model.UserFinancialData;
+import com.personalfinance.user.repository.StoredFinancialData;
 import com.personalfinance.user.repository.UserFinancialDataRepository;
+import com.personalfinance.user.util.JsonDiff;
+import com.personalfinance.user.util.JsonNodeConverter;
+import com.personalfinance.user.util.JsonPatch;
+import com.personalfinance.user.util.JsonbPatchSql;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.time.LocalDateTime;
@@ -11,26 +22,198 @@ import java.util.Optional;
 @Service
 public class UserFinancialDataService {
     private final UserFinancialDataRepository repo;
+    private final FinancialDataHistoryService history;
     private static final Logger logger = LoggerFactory.getLogger(UserFinancialDataService.class);
 
-    public UserFinancialDataService(UserFinancialDataRepository repo) {
+    // jsonb_set and ON CONFLICT are Postgres-only; other databases (H2 in dev) take the JPA path
+    private final boolean postgres;
+
+    public UserFinancialDataService(UserFinancialDataRepository repo,
+                                    FinancialDataHistoryService history,
+                                    @Value("${spring.jpa.database-platform:}") String databasePlatform) {
         this.repo = repo;
+        this.history = history;
+        this.postgres = databasePlatform.contains("PostgreSQL");
     }
 
     public Optional<UserFinancialData> getByUserId(Long userId) {
         return repo.findByUserId(userId);
     }
 
-    public void saveOrUpdate(Long userId, com.fasterxml.jackson.databind.JsonNode dataNode) {
-        String json = dataNode.toString();
+    public Optional<StoredFinancialData> getStoredByUserId(Long userId) {
+        return repo.findStored(userId, false);
+    }
+
+    public Optional<Long> getVersion(Long userId) {
+        return repo.findVersionByUserId(userId);
+    }
+
+    // json must already be validated; it is stored as-is. Returns the new version.
+    @Transactional
+    public long saveOrUpdate(Long userId, String json, Precondition precondition) {
         LocalDateTime now = LocalDateTime.now();
-        logger.info("Calling upsertFinancialData with userId={}, updatedAt={}, dataNode={}", userId, now, json);
+        logger.info("Saving financial data for userId={}, updatedAt={}, {} chars, {}", userId, now, json.length(), precondition);
+        Long version;
+        if (history.isEnabled()) {
+            version = saveWithHistory(userId, json, precondition, now);
+        } else if (postgres) {
+            version = precondition.isCreate()
+                    ? repo.insertIfAbsent(userId, json, now)
+                    : repo.updateIfVersion(userId, json, precondition.getVersion(), now);
+        } else {
+            version = saveEntity(userId, json, precondition, now);
+        }
+        if (version == null) {
+            throw new PreconditionFailedException();
+        }
+        return version;
+    }
+
+    /**
+     * Applies a JSON Patch (RFC 6902) or merge patch (RFC 7396) to the user's document.
+     * On Postgres, patches that map onto jsonb_set are applied by the database without
+     * reading the document; everything else is applied in memory and written back whole.
+     * Returns the new version.
+     */
+    @Transactional
+    public long patch(Long userId, JsonNode patch, boolean mergePatch, Precondition precondition) {
+        JsonPatch jsonPatch = mergePatch ? null : JsonPatch.parse(patch);
+        LocalDateTime now = LocalDateTime.now();
+        if (postgres && !precondition.isCreate()) {
+            Optional<JsonbPatchSql> sql = mergePatch ? JsonbPatchSql.fromMergePatch(patch) : JsonbPatchSql.fromJsonPatch(jsonPatch);
+            Long version = sql.isPresent() ? repo.patchInPlace(userId, sql.get(), precondition.getVersion(), now) : null;
+            if (version != null) {
+                logger.debug("Patched financial data in place for userId={}", userId);
+                history.record(userId, version, kind(mergePatch), patch.toString(), null);
+                return version;
+            }
+        }
+
+        // Re-check the precondition here so a version conflict reports 412 rather than a patch error
+        // Goes through the repository so compressed documents are inflated transparently
+        StoredFinancialData stored = repo.findStored(userId, true).orElse(null);
+        Long existingVersion = stored == null ? null : stored.getVersion();
+        JsonNode current = stored == null ? null : JsonNodeConverter.toJsonNode(stored.asText());
+        if (!precondition.matches(existingVersion)) {
+            throw new PreconditionFailedException();
+        }
+        if (current == null) {
+            current = JsonNodeFactory.instance.objectNode();
+        }
+        JsonNode updated = mergePatch ? JsonPatch.mergePatch(current, patch) : jsonPatch.apply(current);
+        logger.debug("Patched financial data in memory for userId={}", userId);
+        String json = updated.toString();
+        Long version = write(userId, json, existingVersion, now);
+        if (version == null) {
+            throw new PreconditionFailedException();
+        }
+        history.record(userId, version, kind(mergePatch), existingVersion == null ? null : patch.toString(), json);
+        return version;
+    }
+
+    // Full replacement: lock the current row and record the diff from it as the delta, or a snapshot if either is too big to diff
+    private Long saveWithHistory(Long userId, String json, Precondition precondition, LocalDateTime now) {
+        StoredFinancialData previous = repo.findStored(userId, true).orElse(null);
+        if (previous == null) {
+            Long version = precondition.isCreate() ? write(userId, json, null, now) : null;
+            if (version != null) {
+                history.record(userId, version, Kind.SNAPSHOT, null, json);
+            }
+            return version;
+        }
+        if (!precondition.matches(previous.getVersion())) {
+            return null;
+        }
+        Long version = write(userId, json, previous.getVersion(), now);
+        if (version != null) {
+            String delta = null;
+            if (history.shouldDiff(json.length())) {
+                // Only inflated once the new document is known to be small enough
+                String previousJson = previous.asText();
+                if (history.shouldDiff(previousJson.length())) {
+                    delta = JsonDiff.diff(JsonNodeConverter.toJsonNode(previousJson), JsonNodeConverter.toJsonNode(json)).toString();
+                }
+            }
+            history.record(userId, version, Kind.JSON_PATCH, delta, json);
+        }
+        return version;
+    }
+
+    /**
+     * Writes over the version the caller read under lock, or creates the row if
+     * {@code currentVersion} is null; null if the row changed or appeared meanwhile.
+     */
+    private Long write(Long userId, String json, Long currentVersion, LocalDateTime now) {
+        if (postgres) {
+            return currentVersion == null
+                    ? repo.insertIfAbsent(userId, json, now)
+                    : repo.updateIfVersion(userId, json, currentVersion, now);
+        }
+        return saveEntity(userId, json, currentVersion == null ? Precondition.create() : Precondition.version(currentVersion), now);
+    }
+
+    private static Kind kind(boolean mergePatch) {
+        return mergePatch ? Kind.MERGE_PATCH : Kind.JSON_PATCH;
+    }
+
+    // The row lock makes the version check and the write one step; a concurrent first write loses on the unique user_id
+    private Long saveEntity(Long userId, String json, Precondition precondition, LocalDateTime now) {
+        UserFinancialData existing = repo.findByUserIdForUpdate(userId).orElse(null);
+        if (!precondition.matches(existing == null ? null : existing.getVersion())) {
+            return null;
+        }
+        UserFinancialData entity = existing != null ? existing : new UserFinancialData(null, userId, null, null);
+        // Compressed over the threshold, as the Postgres writes are
+        repo.setDocument(entity, json);
+        entity.setUpdatedAt(now);
+        entity.setVersion(entity.getVersion() + 1);
         try {
-            repo.upsertFinancialData(userId, json, now);
-            logger.info("upsertFinancialData executed successfully for userId={}", userId);
-        } catch (Exception e) {
-            logger.error("Error executing upsertFinancialData for userId={}: {}", userId, e.getMessage(), e);
-            throw e;
+            return repo.saveAndFlush(entity).getVersion();
+        } catch (DataIntegrityViolationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * What the client expects to overwrite: nothing yet (create), any existing
+     * document (If-Match: *), or a specific version from an ETag.
+     */
+    public static final class Precondition {
+        private static final Precondition CREATE = new Precondition(true, null);
+        private static final Precondition ANY = new Precondition(false, null);
+
+        private final boolean create;
+        private final Long version;
+
+        private Precondition(boolean create, Long version) {
+            this.create = create;
+            this.version = version;
+        }
+
+        public static Precondition create() { return CREATE; }
+        public static Precondition any() { return ANY; }
+        public static Precondition version(long version) { return new Precondition(false, version); }
+
+        public boolean isCreate() { return create; }
+        public Long getVersion() { return version; }
+
+        // currentVersion is null when there is no document yet
+        boolean matches(Long currentVersion) {
+            if (create) {
+                return currentVersion == null;
+            }
+            return currentVersion != null && (version == null || version.equals(currentVersion));
+        }
+
+        @Override
+        public String toString() {
+            return create ? "create" : version == null ? "if-match=*" : "if-match=" + version;
+        }
+    }
+
+    public static class PreconditionFailedException extends RuntimeException {
+        public PreconditionFailedException() {
+            super("Financial data was modified by another request");
         }
     }
 }
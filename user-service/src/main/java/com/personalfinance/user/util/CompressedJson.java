@@ -0,0 +1,73 @@
+package com.personalfinance.user.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compressed representation of a JSON document for bytea storage:
+ * a 9-byte header ("PFZ", format version, codec, big-endian uncompressed
+ * length) followed by the codec's stream. Only deflate (codec 1) is written
+ * today; the codec byte leaves room to add others without a migration.
+ */
+public final class CompressedJson {
+
+    private static final byte[] MAGIC = {'P', 'F', 'Z'};
+    private static final byte FORMAT_VERSION = 1;
+    private static final byte CODEC_DEFLATE = 1;
+    private static final int HEADER_LENGTH = 9;
+
+    private CompressedJson() {
+    }
+
+    public static byte[] compress(byte[] json) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(json.length / 4 + HEADER_LENGTH);
+        out.write(MAGIC, 0, MAGIC.length);
+        out.write(FORMAT_VERSION);
+        out.write(CODEC_DEFLATE);
+        out.write(ByteBuffer.allocate(4).putInt(json.length).array(), 0, 4);
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try (DeflaterOutputStream deflating = new DeflaterOutputStream(out, deflater, 8192)) {
+            deflating.write(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            deflater.end();
+        }
+        return out.toByteArray();
+    }
+
+    public static int uncompressedLength(byte[] stored) {
+        checkHeader(stored);
+        return ByteBuffer.wrap(stored, 5, 4).getInt();
+    }
+
+    // Streams the original JSON bytes back out; the caller closes the stream
+    public static InputStream open(byte[] stored) {
+        checkHeader(stored);
+        Inflater inflater = new Inflater();
+        return new InflaterInputStream(new ByteArrayInputStream(stored, HEADER_LENGTH, stored.length - HEADER_LENGTH), inflater, 8192) {
+            @Override
+            public void close() throws IOException {
+                super.close();
+                inflater.end();
+            }
+        };
+    }
+
+    private static void checkHeader(byte[] stored) {
+        if (stored.length < HEADER_LENGTH || stored[0] != MAGIC[0] || stored[1] != MAGIC[1] || stored[2] != MAGIC[2]) {
+            throw new IllegalStateException("Not a compressed financial-data document");
+        }
+        if (stored[3] != FORMAT_VERSION || stored[4] != CODEC_DEFLATE) {
+            throw new IllegalStateException("Unsupported compressed document format " + stored[3] + "/" + stored[4]);
+        }
+    }
+}
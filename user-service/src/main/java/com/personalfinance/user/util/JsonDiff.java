@@ -0,0 +1,114 @@
+package com.personalfinance.user.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Produces an RFC 6902 patch that turns one document into another, for use
+ * with {@link JsonPatch#apply}. Objects are diffed member by member. Arrays
+ * keep their common prefix and suffix and only rewrite the middle, which keeps
+ * appends, inserts and single-element edits to a handful of operations.
+ */
+public final class JsonDiff {
+
+    private JsonDiff() {
+    }
+
+    public static ArrayNode diff(JsonNode source, JsonNode target) {
+        ArrayNode ops = JsonNodeFactory.instance.arrayNode();
+        diff(ops, "", source, target);
+        return ops;
+    }
+
+    private static void diff(ArrayNode ops, String path, JsonNode source, JsonNode target) {
+        if (source.equals(target)) {
+            return;
+        }
+        if (source.isObject() && target.isObject()) {
+            diffObjects(ops, path, (ObjectNode) source, (ObjectNode) target);
+        } else if (source.isArray() && target.isArray()) {
+            diffArrays(ops, path, (ArrayNode) source, (ArrayNode) target);
+        } else {
+            op(ops, "replace", path).set("value", target);
+        }
+    }
+
+    private static void diffObjects(ArrayNode ops, String path, ObjectNode source, ObjectNode target) {
+        Iterator<Map.Entry<String, JsonNode>> fields = source.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            String child = path + "/" + escape(field.getKey());
+            JsonNode other = target.get(field.getKey());
+            if (other == null) {
+                op(ops, "remove", child);
+            } else {
+                diff(ops, child, field.getValue(), other);
+            }
+        }
+        fields = target.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            if (!source.has(field.getKey())) {
+                op(ops, "add", path + "/" + escape(field.getKey())).set("value", field.getValue());
+            }
+        }
+    }
+
+    private static void diffArrays(ArrayNode ops, String path, ArrayNode source, ArrayNode target) {
+        int prefix = 0;
+        int max = Math.min(source.size(), target.size());
+        while (prefix < max && source.get(prefix).equals(target.get(prefix))) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < max - prefix
+                && source.get(source.size() - 1 - suffix).equals(target.get(target.size() - 1 - suffix))) {
+            suffix++;
+        }
+        int removed = source.size() - prefix - suffix;
+        int added = target.size() - prefix - suffix;
+        if (removed == added) {
+            for (int i = prefix; i < prefix + removed; i++) {
+                diff(ops, path + "/" + i, source.get(i), target.get(i));
+            }
+            return;
+        }
+        // An insert or delete in the middle is best as removes/adds; an edit plus an
+        // append is best element by element. Build both and keep the smaller.
+        ArrayNode splice = JsonNodeFactory.instance.arrayNode();
+        for (int i = 0; i < removed; i++) {
+            op(splice, "remove", path + "/" + prefix);
+        }
+        for (int i = 0; i < added; i++) {
+            op(splice, "add", path + "/" + (prefix + i)).set("value", target.get(prefix + i));
+        }
+        ArrayNode pairwise = JsonNodeFactory.instance.arrayNode();
+        int common = Math.min(source.size(), target.size());
+        for (int i = prefix; i < common; i++) {
+            diff(pairwise, path + "/" + i, source.get(i), target.get(i));
+        }
+        for (int i = common; i < source.size(); i++) {
+            op(pairwise, "remove", path + "/" + common);
+        }
+        for (int i = common; i < target.size(); i++) {
+            op(pairwise, "add", path + "/" + i).set("value", target.get(i));
+        }
+        ops.addAll(pairwise.toString().length() < splice.toString().length() ? pairwise : splice);
+    }
+
+    private static ObjectNode op(ArrayNode ops, String op, String path) {
+        ObjectNode node = ops.addObject();
+        node.put("op", op);
+        node.put("path", path);
+        return node;
+    }
+
+    private static String escape(String key) {
+        return key.replace("~", "~0").replace("/", "~1");
+    }
+}
@@ -12,6 +12,10 @@ public class JsonNodeConverter implements AttributeConverter<JsonNode, String> {
 
     @Override
     public String convertToDatabaseColumn(JsonNode attribute) {
+        // SQL NULL rather than the JSON literal, so a compressed row keeps data empty
+        if (attribute == null) {
+            return null;
+        }
         try {
             return mapper.writeValueAsString(attribute);
         } catch (com.fasterxml.jackson.core.JsonProcessingException e) {
@@ -21,6 +25,9 @@ public class JsonNodeConverter implements AttributeConverter<JsonNode, String> {
 
     @Override
     public JsonNode convertToEntityAttribute(String dbData) {
+        if (dbData == null) {
+            return null;
+        }
         try {
             return mapper.readTree(dbData);
         } catch (com.fasterxml.jackson.core.JsonProcessingException e) {
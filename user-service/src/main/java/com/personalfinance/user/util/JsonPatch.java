@@ -0,0 +1,257 @@
+package com.personalfinance.user.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * RFC 6902 JSON Patch and RFC 7396 JSON Merge Patch over Jackson trees.
+ * Parsing rejects malformed patches with IllegalArgumentException; applying a
+ * well-formed patch that doesn't fit the document (missing path, failed test)
+ * throws {@link JsonPatchException}.
+ */
+public final class JsonPatch {
+
+    public enum Op { ADD, REMOVE, REPLACE, MOVE, COPY, TEST }
+
+    public static final class Operation {
+        private final Op op;
+        private final List<String> path;
+        private final List<String> from;
+        private final JsonNode value;
+
+        Operation(Op op, List<String> path, List<String> from, JsonNode value) {
+            this.op = op;
+            this.path = path;
+            this.from = from;
+            this.value = value;
+        }
+
+        public Op getOp() { return op; }
+        public List<String> getPath() { return path; }
+        public List<String> getFrom() { return from; }
+        public JsonNode getValue() { return value; }
+    }
+
+    public static class JsonPatchException extends RuntimeException {
+        public JsonPatchException(String message) {
+            super(message);
+        }
+    }
+
+    private final List<Operation> operations;
+
+    private JsonPatch(List<Operation> operations) {
+        this.operations = operations;
+    }
+
+    public List<Operation> getOperations() {
+        return operations;
+    }
+
+    public static JsonPatch parse(JsonNode patch) {
+        if (patch == null || !patch.isArray()) {
+            throw new IllegalArgumentException("JSON Patch must be an array of operations");
+        }
+        List<Operation> operations = new ArrayList<>(patch.size());
+        for (JsonNode node : patch) {
+            String name = node.path("op").asText(null);
+            if (name == null || !node.has("path")) {
+                throw new IllegalArgumentException("Each operation needs 'op' and 'path'");
+            }
+            Op op;
+            try {
+                op = Op.valueOf(name.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown patch operation: " + name);
+            }
+            List<String> from = null;
+            if (op == Op.MOVE || op == Op.COPY) {
+                if (!node.has("from")) {
+                    throw new IllegalArgumentException("'" + name + "' needs 'from'");
+                }
+                from = parsePointer(node.get("from").asText());
+            }
+            if ((op == Op.ADD || op == Op.REPLACE || op == Op.TEST) && !node.has("value")) {
+                throw new IllegalArgumentException("'" + name + "' needs 'value'");
+            }
+            operations.add(new Operation(op, parsePointer(node.get("path").asText()), from, node.get("value")));
+        }
+        return new JsonPatch(operations);
+    }
+
+    // RFC 6901: "" is the whole document, otherwise "/"-separated with ~1 = "/" and ~0 = "~"
+    public static List<String> parsePointer(String pointer) {
+        if (pointer.isEmpty()) {
+            return Collections.emptyList();
+        }
+        if (pointer.charAt(0) != '/') {
+            throw new IllegalArgumentException("Invalid JSON pointer: " + pointer);
+        }
+        List<String> segments = new ArrayList<>();
+        for (String raw : pointer.substring(1).split("/", -1)) {
+            segments.add(raw.replace("~1", "/").replace("~0", "~"));
+        }
+        return segments;
+    }
+
+    public JsonNode apply(JsonNode document) {
+        JsonNode result = document.deepCopy();
+        for (Operation operation : operations) {
+            switch (operation.op) {
+                case ADD:
+                    result = add(result, operation.path, operation.value.deepCopy());
+                    break;
+                case REMOVE:
+                    remove(result, operation.path);
+                    break;
+                case REPLACE:
+                    if (operation.path.isEmpty()) {
+                        result = operation.value.deepCopy();
+                    } else {
+                        remove(result, operation.path);
+                        result = add(result, operation.path, operation.value.deepCopy());
+                    }
+                    break;
+                case MOVE:
+                    if (isPrefix(operation.from, operation.path) && !operation.from.equals(operation.path)) {
+                        throw new JsonPatchException("Cannot move a value into one of its children");
+                    }
+                    result = add(result, operation.path, remove(result, operation.from));
+                    break;
+                case COPY:
+                    result = add(result, operation.path, get(result, operation.from).deepCopy());
+                    break;
+                case TEST:
+                    if (!sameValue(get(result, operation.path), operation.value)) {
+                        throw new JsonPatchException("Test failed at " + pointer(operation.path));
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * JSON equality as Postgres compares jsonb, so a test operation passes or
+     * fails the same way here as in {@link JsonbPatchSql}'s guards: numbers
+     * by value (1 equals 1.0), objects regardless of member order.
+     */
+    public static boolean sameValue(JsonNode a, JsonNode b) {
+        return a.equals(NUMERIC_VALUE, b);
+    }
+
+    // Called on leaves only; containers recurse through their own equals(Comparator, JsonNode)
+    private static final Comparator<JsonNode> NUMERIC_VALUE = (a, b) -> {
+        if (a.isNumber() && b.isNumber()) {
+            // Out-of-range floats parse as infinities, which have no BigDecimal
+            if (isInfinite(a) || isInfinite(b)) {
+                return Double.compare(a.doubleValue(), b.doubleValue());
+            }
+            return a.decimalValue().compareTo(b.decimalValue());
+        }
+        return a.equals(b) ? 0 : 1;
+    };
+
+    private static boolean isInfinite(JsonNode number) {
+        return (number.isDouble() || number.isFloat()) && !Double.isFinite(number.doubleValue());
+    }
+
+    public static JsonNode mergePatch(JsonNode target, JsonNode patch) {
+        if (!patch.isObject()) {
+            return patch.deepCopy();
+        }
+        ObjectNode result = target != null && target.isObject()
+                ? ((ObjectNode) target).deepCopy()
+                : JsonNodeFactory.instance.objectNode();
+        Iterator<Map.Entry<String, JsonNode>> fields = patch.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            if (field.getValue().isNull()) {
+                result.remove(field.getKey());
+            } else {
+                result.set(field.getKey(), mergePatch(result.get(field.getKey()), field.getValue()));
+            }
+        }
+        return result;
+    }
+
+    public static boolean isPrefix(List<String> prefix, List<String> path) {
+        return prefix.size() <= path.size() && path.subList(0, prefix.size()).equals(prefix);
+    }
+
+    private static JsonNode get(JsonNode document, List<String> path) {
+        JsonNode node = document;
+        for (String segment : path) {
+            node = node.isArray() ? node.get(index(segment, node.size() - 1, path)) : node.get(segment);
+            if (node == null) {
+                throw new JsonPatchException("No value at " + pointer(path));
+            }
+        }
+        return node;
+    }
+
+    private static JsonNode add(JsonNode document, List<String> path, JsonNode value) {
+        if (path.isEmpty()) {
+            return value;
+        }
+        JsonNode parent = get(document, path.subList(0, path.size() - 1));
+        String last = path.get(path.size() - 1);
+        if (parent.isObject()) {
+            ((ObjectNode) parent).set(last, value);
+        } else if (parent.isArray()) {
+            ArrayNode array = (ArrayNode) parent;
+            array.insert("-".equals(last) ? array.size() : index(last, array.size(), path), value);
+        } else {
+            throw new JsonPatchException("Parent of " + pointer(path) + " is not a container");
+        }
+        return document;
+    }
+
+    private static JsonNode remove(JsonNode document, List<String> path) {
+        if (path.isEmpty()) {
+            throw new JsonPatchException("Cannot remove the whole document");
+        }
+        JsonNode parent = get(document, path.subList(0, path.size() - 1));
+        String last = path.get(path.size() - 1);
+        JsonNode removed = null;
+        if (parent.isObject()) {
+            removed = ((ObjectNode) parent).remove(last);
+        } else if (parent.isArray()) {
+            removed = ((ArrayNode) parent).remove(index(last, parent.size() - 1, path));
+        }
+        if (removed == null) {
+            throw new JsonPatchException("No value at " + pointer(path));
+        }
+        return removed;
+    }
+
+    private static int index(String segment, int max, List<String> path) {
+        if (!segment.matches("0|[1-9][0-9]{0,8}")) {
+            throw new JsonPatchException("Invalid array index in " + pointer(path));
+        }
+        int index = Integer.parseInt(segment);
+        if (index > max) {
+            throw new JsonPatchException("Array index out of bounds in " + pointer(path));
+        }
+        return index;
+    }
+
+    private static String pointer(List<String> path) {
+        StringBuilder sb = new StringBuilder();
+        for (String segment : path) {
+            sb.append('/').append(segment.replace("~", "~0").replace("/", "~1"));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,164 @@
+package com.personalfinance.user.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Translates a patch into a single Postgres UPDATE that rewrites only the
+ * touched paths with jsonb_set / #-, so the document never round-trips
+ * through the application. Preconditions (parents are objects, replaced and
+ * removed values exist, test values match) become WHERE guards evaluated
+ * against the stored document; if a guard fails the UPDATE matches no row and
+ * the caller falls back to applying the patch in memory, which reports the
+ * precise error.
+ *
+ * Only patches whose semantics the guards can capture are translated: add,
+ * replace, remove and test on object members, with no operation touching a
+ * path another one already touched. Anything else returns empty.
+ */
+public final class JsonbPatchSql {
+
+    private String expression = "data";
+    private final List<Object> expressionParams = new ArrayList<>();
+    private final List<String> guards = new ArrayList<>();
+    private final List<Object> guardParams = new ArrayList<>();
+    private final List<List<String>> touched = new ArrayList<>();
+
+    private JsonbPatchSql() {
+    }
+
+    public static Optional<JsonbPatchSql> fromJsonPatch(JsonPatch patch) {
+        JsonbPatchSql sql = new JsonbPatchSql();
+        for (JsonPatch.Operation operation : patch.getOperations()) {
+            List<String> path = operation.getPath();
+            if (path.isEmpty() || !sql.claim(path)) {
+                return Optional.empty();
+            }
+            switch (operation.getOp()) {
+                case ADD:
+                    sql.requireObject(parentOf(path));
+                    sql.set(path, operation.getValue());
+                    break;
+                case REPLACE:
+                    sql.requireObject(parentOf(path));
+                    sql.requireExists(path);
+                    sql.set(path, operation.getValue());
+                    break;
+                case REMOVE:
+                    sql.requireObject(parentOf(path));
+                    sql.requireExists(path);
+                    sql.remove(path);
+                    break;
+                case TEST:
+                    sql.requireEquals(path, operation.getValue());
+                    break;
+                default:
+                    return Optional.empty();
+            }
+        }
+        return Optional.of(sql);
+    }
+
+    public static Optional<JsonbPatchSql> fromMergePatch(JsonNode patch) {
+        if (!patch.isObject()) {
+            return Optional.empty();
+        }
+        JsonbPatchSql sql = new JsonbPatchSql();
+        sql.requireObject(new ArrayList<>());
+        sql.merge(new ArrayList<>(), patch);
+        return Optional.of(sql);
+    }
+
+    // Merge-patch paths form a tree, so they never overlap and need no claim()
+    private void merge(List<String> prefix, JsonNode patch) {
+        Iterator<Map.Entry<String, JsonNode>> fields = patch.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            List<String> path = new ArrayList<>(prefix);
+            path.add(field.getKey());
+            JsonNode value = field.getValue();
+            if (value.isNull()) {
+                remove(path);
+            } else if (value.isObject()) {
+                // Merging into a missing or non-object member replaces it; leave that to the fallback
+                requireObject(path);
+                merge(path, value);
+            } else {
+                set(path, value);
+            }
+        }
+    }
+
+    public String updateSql(String table) {
+        StringBuilder sql = new StringBuilder("UPDATE ").append(table)
+                .append(" SET data = ").append(expression)
+                .append(", updated_at = ?, version = version + 1 WHERE user_id = ?");
+        for (String guard : guards) {
+            sql.append(" AND ").append(guard);
+        }
+        return sql.toString();
+    }
+
+    public Object[] parameters(Object updatedAt, Long userId) {
+        List<Object> params = new ArrayList<>(expressionParams);
+        params.add(updatedAt);
+        params.add(userId);
+        params.addAll(guardParams);
+        return params.toArray();
+    }
+
+    private boolean claim(List<String> path) {
+        for (List<String> other : touched) {
+            if (JsonPatch.isPrefix(other, path) || JsonPatch.isPrefix(path, other)) {
+                return false;
+            }
+        }
+        touched.add(path);
+        return true;
+    }
+
+    private void set(List<String> path, JsonNode value) {
+        expression = "jsonb_set(" + expression + ", " + pathSql(path, expressionParams) + ", CAST(? AS jsonb), true)";
+        expressionParams.add(value.toString());
+    }
+
+    private void remove(List<String> path) {
+        expression = "(" + expression + " #- " + pathSql(path, expressionParams) + ")";
+    }
+
+    private void requireObject(List<String> path) {
+        guards.add("jsonb_typeof(" + valueAt(path) + ") = 'object'");
+    }
+
+    private void requireExists(List<String> path) {
+        guards.add(valueAt(path) + " IS NOT NULL");
+    }
+
+    // jsonb = compares numbers by value, as JsonPatch.sameValue does for the fallback
+    private void requireEquals(List<String> path, JsonNode value) {
+        guards.add(valueAt(path) + " = CAST(? AS jsonb)");
+        guardParams.add(value.toString());
+    }
+
+    private String valueAt(List<String> path) {
+        return path.isEmpty() ? "data" : "(data #> " + pathSql(path, guardParams) + ")";
+    }
+
+    private static String pathSql(List<String> path, List<Object> params) {
+        StringBuilder sb = new StringBuilder("CAST(ARRAY[");
+        for (int i = 0; i < path.size(); i++) {
+            sb.append(i == 0 ? "?" : ", ?");
+            params.add(path.get(i));
+        }
+        return sb.append("] AS text[])").toString();
+    }
+
+    private static List<String> parentOf(List<String> path) {
+        return path.subList(0, path.size() - 1);
+    }
+}
@@ -0,0 +1,60 @@
+package com.personalfinance.user.util;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Works with JSON as text without building a tree. The whole input is run
+ * through Jackson's streaming parser once to validate it, and the requested
+ * member is sliced out of the original bytes by offset.
+ */
+public final class RawJson {
+
+    private static final JsonFactory factory = new JsonFactory();
+
+    private RawJson() {
+    }
+
+    /**
+     * Returns the raw JSON text of the top-level member {@code field} of the
+     * object in {@code json}, exactly as the client sent it.
+     */
+    public static String extractMember(byte[] json, String field) {
+        try (JsonParser parser = factory.createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalArgumentException("Request body must be a JSON object");
+            }
+            long start = -1;
+            long end = -1;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                boolean wanted = field.equals(parser.getCurrentName());
+                parser.nextToken();
+                long valueStart = parser.getTokenLocation().getByteOffset();
+                // Skipping still tokenizes, so nested content is validated too
+                parser.skipChildren();
+                parser.finishToken();
+                if (wanted) {
+                    start = valueStart;
+                    end = parser.getCurrentLocation().getByteOffset();
+                }
+            }
+            if (parser.currentToken() != JsonToken.END_OBJECT || parser.nextToken() != null) {
+                throw new IllegalArgumentException("Malformed JSON request body");
+            }
+            if (start < 0) {
+                throw new IllegalArgumentException("Request body has no '" + field + "' member");
+            }
+            return new String(json, (int) start, (int) (end - start), StandardCharsets.UTF_8);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Malformed JSON request body: " + e.getOriginalMessage());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,2 @@
+-- Migration: Version user_financial_data for ETags and If-Match writes
+ALTER TABLE user_financial_data ADD COLUMN version BIGINT NOT NULL DEFAULT 0;
@@ -0,0 +1,6 @@
+-- Migration: Compressed storage for large financial-data documents
+-- Documents over the configured threshold live in data_compressed (PFZ header + deflate) with data left NULL
+ALTER TABLE user_financial_data ADD COLUMN data_compressed BYTEA;
+ALTER TABLE user_financial_data ALTER COLUMN data DROP NOT NULL;
+-- Already compressed; keep TOAST from trying pglz on it again
+ALTER TABLE user_financial_data ALTER COLUMN data_compressed SET STORAGE EXTERNAL;
@@ -0,0 +1,279 @@
+package com.personalfinance.user.controller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.mockito.ArgumentCaptor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.web.method.annotation.AuthenticationPrincipalArgumentResolver;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.personalfinance.user.repository.StoredFinancialData;
+import com.personalfinance.user.repository.StoredFinancialDataFixtures;
+import com.personalfinance.user.security.UserDetailsImpl;
+import com.personalfinance.user.service.FinancialDataHistoryService;
+import com.personalfinance.user.service.UserFinancialDataService;
+import com.personalfinance.user.service.UserFinancialDataService.Precondition;
+import com.personalfinance.user.service.UserFinancialDataService.PreconditionFailedException;
+
+class UserFinancialDataControllerTest {
+
+    private static final long USER = 7L;
+    // Spacing, key order and number formats a tree round-trip would not keep
+    private static final String DOCUMENT = "{ \"b\" : 1.50, \"a\" : [1e2, -0.0, \"\\u00e9\"], \"nested\" : {\"z\":null} }";
+
+    private UserFinancialDataService service;
+    private FinancialDataHistoryService history;
+    private MockMvc mvc;
+
+    @BeforeEach
+    void setUp() {
+        service = mock(UserFinancialDataService.class);
+        history = mock(FinancialDataHistoryService.class);
+        mvc = MockMvcBuilders.standaloneSetup(new UserFinancialDataController(service, history))
+                .setCustomArgumentResolvers(new AuthenticationPrincipalArgumentResolver())
+                .build();
+        UserDetailsImpl principal = new UserDetailsImpl(USER, "alice", "alice@example.com", "", "Alice", "A", List.of());
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void putStoresTheDataMemberExactlyAsSent() throws Exception {
+        when(service.getVersion(USER)).thenReturn(Optional.empty());
+        when(service.saveOrUpdate(eq(USER), anyString(), any())).thenReturn(1L);
+
+        mvc.perform(put("/api/users/financial-data")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"other\": [1, 2], \"data\": " + DOCUMENT + ", \"trailing\": true}"))
+                .andExpect(status().isOk());
+
+        ArgumentCaptor<String> stored = ArgumentCaptor.forClass(String.class);
+        verify(service).saveOrUpdate(eq(USER), stored.capture(), eq(Precondition.create()));
+        assertThat(stored.getValue()).isEqualTo(DOCUMENT);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "[{\"data\": {}}]",
+            "{\"data\": {}} {}",
+            "{\"data\": {\"a\": 1}",
+            "{\"data\": {\"a\": tru}}",
+            "{\"data\": [1, 2,]}",
+            "{\"notData\": {}}",
+            ""
+    })
+    void malformedBodiesAreRejectedBeforeAnythingIsStored(String body) throws Exception {
+        mvc.perform(put("/api/users/financial-data").contentType(MediaType.APPLICATION_JSON).content(body))
+                .andExpect(status().isBadRequest());
+
+        verify(service, never()).saveOrUpdate(anyLong(), anyString(), any());
+    }
+
+    @Test
+    void getStreamsAPlainDocumentUnchanged() throws Exception {
+        when(service.getStoredByUserId(USER)).thenReturn(Optional.of(StoredFinancialDataFixtures.plain(3, DOCUMENT)));
+
+        MvcResult result = getDocument();
+
+        assertThat(result.getResponse().getContentAsString(StandardCharsets.UTF_8)).isEqualTo("{\"data\":" + DOCUMENT + "}");
+        assertThat(result.getResponse().getHeader("ETag")).isEqualTo("\"3\"");
+    }
+
+    @Test
+    void getInflatesACompressedDocumentIntoTheResponse() throws Exception {
+        StoredFinancialData stored = StoredFinancialDataFixtures.compressed(4, DOCUMENT);
+        when(service.getStoredByUserId(USER)).thenReturn(Optional.of(stored));
+
+        MvcResult result = getDocument();
+
+        assertThat(stored.isCompressed()).isTrue();
+        assertThat(result.getResponse().getContentAsByteArray())
+                .isEqualTo(("{\"data\":" + DOCUMENT + "}").getBytes(StandardCharsets.UTF_8));
+        assertThat(result.getResponse().getHeader("ETag")).isEqualTo("\"4\"");
+    }
+
+    @Test
+    void getWithoutADocumentIsNull() throws Exception {
+        when(service.getStoredByUserId(USER)).thenReturn(Optional.empty());
+
+        MvcResult result = getDocument();
+
+        assertThat(result.getResponse().getContentAsString()).isEqualTo("{\"data\":null}");
+        assertThat(result.getResponse().getHeader("ETag")).isNull();
+    }
+
+    @Test
+    void getAnswersACurrentIfNoneMatchFromTheVersionAlone() throws Exception {
+        when(service.getVersion(USER)).thenReturn(Optional.of(5L));
+
+        for (String ifNoneMatch : List.of("\"5\"", "W/\"5\"", "\"4\", W/\"5\"", "*")) {
+            mvc.perform(get("/api/users/financial-data").header(HttpHeaders.IF_NONE_MATCH, ifNoneMatch))
+                    .andExpect(status().isNotModified())
+                    .andExpect(header().string(HttpHeaders.ETAG, "\"5\""))
+                    .andExpect(content().string(""));
+        }
+
+        verify(service, never()).getStoredByUserId(anyLong());
+    }
+
+    @Test
+    void getWithAStaleIfNoneMatchReturnsTheDocument() throws Exception {
+        when(service.getVersion(USER)).thenReturn(Optional.of(5L));
+        when(service.getStoredByUserId(USER)).thenReturn(Optional.of(StoredFinancialDataFixtures.plain(5, DOCUMENT)));
+
+        MvcResult started = mvc.perform(get("/api/users/financial-data").header(HttpHeaders.IF_NONE_MATCH, "\"4\""))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"5\""))
+                .andExpect(content().string("{\"data\":" + DOCUMENT + "}"));
+    }
+
+    @Test
+    void putWithTheCurrentETagWritesThatVersion() throws Exception {
+        when(service.getVersion(USER)).thenReturn(Optional.of(5L));
+        when(service.saveOrUpdate(eq(USER), anyString(), any())).thenReturn(6L);
+
+        putDocument("\"5\"")
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"6\""));
+
+        verify(service).saveOrUpdate(eq(USER), eq("{}"), argThat(precondition ->
+                !precondition.isCreate() && Long.valueOf(5).equals(precondition.getVersion())));
+    }
+
+    @Test
+    void putWithIfMatchAnyOverwritesWhateverIsThere() throws Exception {
+        when(service.saveOrUpdate(eq(USER), anyString(), any())).thenReturn(6L);
+
+        putDocument("*").andExpect(status().isOk());
+
+        verify(service).saveOrUpdate(USER, "{}", Precondition.any());
+    }
+
+    @Test
+    void putWithAStaleOrWeakETagFailsWithoutWriting() throws Exception {
+        when(service.getVersion(USER)).thenReturn(Optional.of(5L));
+
+        putDocument("\"4\"").andExpect(status().isPreconditionFailed());
+        putDocument("W/\"5\"").andExpect(status().isPreconditionFailed());
+
+        verify(service, never()).saveOrUpdate(anyLong(), anyString(), any());
+    }
+
+    @Test
+    void putOverAnExistingDocumentWithoutIfMatchIsRefused() throws Exception {
+        when(service.getVersion(USER)).thenReturn(Optional.of(5L));
+
+        putDocument(null).andExpect(status().isPreconditionRequired());
+        mvc.perform(patch("/api/users/financial-data")
+                        .contentType("application/merge-patch+json")
+                        .content("{\"a\": 1}"))
+                .andExpect(status().isPreconditionRequired());
+
+        verify(service, never()).saveOrUpdate(anyLong(), anyString(), any());
+        verify(service, never()).patch(anyLong(), any(), anyBoolean(), any());
+    }
+
+    // The ETag was current when checked, but another write committed before this one
+    @Test
+    void writeThatLosesTheRaceAfterTheCheckFails() throws Exception {
+        when(service.getVersion(USER)).thenReturn(Optional.of(5L));
+        when(service.saveOrUpdate(eq(USER), anyString(), any())).thenThrow(new PreconditionFailedException());
+        when(service.patch(eq(USER), any(), anyBoolean(), any())).thenThrow(new PreconditionFailedException());
+
+        putDocument("\"5\"").andExpect(status().isPreconditionFailed());
+        mvc.perform(patch("/api/users/financial-data")
+                        .contentType("application/json-patch+json")
+                        .header(HttpHeaders.IF_MATCH, "\"5\"")
+                        .content("[{\"op\": \"add\", \"path\": \"/a\", \"value\": 1}]"))
+                .andExpect(status().isPreconditionFailed());
+    }
+
+    @Test
+    void restoreWritesTheRebuiltVersionBackUnderIfMatch() throws Exception {
+        when(history.reconstruct(USER, 3)).thenReturn(Optional.of(JsonNodeFactory.instance.objectNode().put("a", 1)));
+        when(service.getVersion(USER)).thenReturn(Optional.of(5L));
+        when(service.saveOrUpdate(eq(USER), anyString(), any())).thenReturn(6L);
+
+        mvc.perform(post("/api/users/financial-data/history/3/restore")).andExpect(status().isPreconditionRequired());
+        mvc.perform(post("/api/users/financial-data/history/3/restore").header(HttpHeaders.IF_MATCH, "\"4\""))
+                .andExpect(status().isPreconditionFailed());
+        mvc.perform(post("/api/users/financial-data/history/3/restore").header(HttpHeaders.IF_MATCH, "\"5\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"6\""));
+
+        verify(service).saveOrUpdate(eq(USER), eq("{\"a\":1}"), argThat(precondition ->
+                Long.valueOf(5).equals(precondition.getVersion())));
+    }
+
+    @Test
+    void restoringAVersionThatIsNoLongerKeptIsNotFound() throws Exception {
+        when(history.reconstruct(USER, 3)).thenReturn(Optional.empty());
+
+        mvc.perform(post("/api/users/financial-data/history/3/restore").header(HttpHeaders.IF_MATCH, "*"))
+                .andExpect(status().isNotFound());
+
+        verify(service, never()).saveOrUpdate(anyLong(), anyString(), any());
+    }
+
+    private ResultActions putDocument(String ifMatch) throws Exception {
+        MockHttpServletRequestBuilder request = put("/api/users/financial-data")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"data\": {}}");
+        if (ifMatch != null) {
+            request.header(HttpHeaders.IF_MATCH, ifMatch);
+        }
+        return mvc.perform(request);
+    }
+
+    private MvcResult getDocument() throws Exception {
+        MvcResult started = mvc.perform(get("/api/users/financial-data"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        return mvc.perform(asyncDispatch(started)).andExpect(status().isOk()).andReturn();
+    }
+}
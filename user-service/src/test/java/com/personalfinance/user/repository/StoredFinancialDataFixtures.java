@@ -0,0 +1,26 @@
+package com.personalfinance.user.repository;
+
+import java.nio.charset.StandardCharsets;
+
+import com.personalfinance.user.util.CompressedJson;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+// Documents as findStored returns them, for tests outside this package
+public final class StoredFinancialDataFixtures {
+
+    private static final Timer TIMER = Timer.builder("test").register(new SimpleMeterRegistry());
+
+    private StoredFinancialDataFixtures() {
+    }
+
+    public static StoredFinancialData plain(long version, String json) {
+        return new StoredFinancialData(version, json, null, System.nanoTime(), TIMER);
+    }
+
+    public static StoredFinancialData compressed(long version, String json) {
+        return new StoredFinancialData(version, null, CompressedJson.compress(json.getBytes(StandardCharsets.UTF_8)),
+                System.nanoTime(), TIMER);
+    }
+}
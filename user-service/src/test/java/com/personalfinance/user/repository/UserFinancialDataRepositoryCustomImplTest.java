@@ -0,0 +1,175 @@
+package com.personalfinance.user.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.SqlParameterValue;
+
+import com.personalfinance.user.model.UserFinancialData;
+import com.personalfinance.user.util.CompressedJson;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+// Which form documents are written in, and that every stored form reads back the same
+class UserFinancialDataRepositoryCustomImplTest {
+
+    private static final int THRESHOLD = 100;
+
+    private final RecordingJdbcTemplate jdbcTemplate = new RecordingJdbcTemplate();
+
+    @Test
+    void documentsBelowTheThresholdAreStoredAsJsonb() {
+        String json = document(THRESHOLD - 1);
+
+        repository(THRESHOLD).updateIfVersion(7L, json, 1L, LocalDateTime.now());
+
+        assertThat(jdbcTemplate.params.get(0)).isEqualTo(json);
+        assertThat(value(jdbcTemplate.params.get(1))).isNull();
+    }
+
+    @Test
+    void documentsAtTheThresholdAreStoredCompressed() {
+        String json = document(THRESHOLD);
+
+        repository(THRESHOLD).insertIfAbsent(7L, json, LocalDateTime.now());
+
+        assertThat(value(jdbcTemplate.params.get(1))).isNull();
+        byte[] compressed = (byte[]) jdbcTemplate.params.get(2);
+        assertThat(CompressedJson.uncompressedLength(compressed)).isEqualTo(THRESHOLD);
+    }
+
+    // The threshold is in UTF-8 bytes, not characters
+    @Test
+    void multiByteCharactersCountTowardsTheThreshold() {
+        String json = "{\"n\":\"" + "é".repeat(48) + "\"}";
+        assertThat(json.length()).isLessThan(THRESHOLD);
+
+        repository(THRESHOLD).updateIfVersion(7L, json, null, LocalDateTime.now());
+
+        assertThat(jdbcTemplate.params.get(1)).isInstanceOf(byte[].class);
+    }
+
+    @Test
+    void aThresholdOfZeroTurnsCompressionOff() {
+        String json = document(1 << 20);
+
+        repository(0).updateIfVersion(7L, json, 1L, LocalDateTime.now());
+
+        assertThat(jdbcTemplate.params.get(0)).isEqualTo(json);
+    }
+
+    // The entity path (H2 in dev) picks the form by the same threshold
+    @Test
+    void entitiesGetTheSameFormAsTheSqlWrites() {
+        UserFinancialData entity = new UserFinancialData(null, 7L, null, null);
+
+        repository(THRESHOLD).setDocument(entity, document(THRESHOLD));
+        assertThat(entity.getData()).isNull();
+        assertThat(CompressedJson.uncompressedLength(entity.getDataCompressed())).isEqualTo(THRESHOLD);
+
+        repository(THRESHOLD).setDocument(entity, document(THRESHOLD - 1));
+        assertThat(entity.getDataCompressed()).isNull();
+        assertThat(entity.getData().toString()).isEqualTo(document(THRESHOLD - 1));
+    }
+
+    @Test
+    void rowsWrittenBeforeCompressionReadAsPlainText() throws Exception {
+        String json = document(THRESHOLD * 10);
+        jdbcTemplate.row = row(json, null, 3);
+
+        StoredFinancialData stored = repository(THRESHOLD).findStored(7L, false).orElseThrow();
+
+        assertThat(stored.isCompressed()).isFalse();
+        assertThat(stored.getVersion()).isEqualTo(3);
+        assertThat(stored.asText()).isEqualTo(json);
+        assertThat(written(stored)).isEqualTo(json);
+    }
+
+    @Test
+    void compressedRowsInflateOnRead() throws Exception {
+        String json = document(THRESHOLD * 10);
+        jdbcTemplate.row = row(null, CompressedJson.compress(json.getBytes(StandardCharsets.UTF_8)), 4);
+
+        StoredFinancialData stored = repository(THRESHOLD).findStored(7L, false).orElseThrow();
+
+        assertThat(stored.isCompressed()).isTrue();
+        assertThat(stored.asText()).isEqualTo(json);
+        assertThat(written(stored)).isEqualTo(json);
+    }
+
+    @Test
+    void lockingReadsAskForTheRowLock() {
+        repository(THRESHOLD).findStored(7L, true);
+
+        assertThat(jdbcTemplate.sql).endsWith(" FOR UPDATE");
+    }
+
+    private UserFinancialDataRepositoryCustomImpl repository(int threshold) {
+        return new UserFinancialDataRepositoryCustomImpl(jdbcTemplate, new SimpleMeterRegistry(), threshold);
+    }
+
+    // A JSON document of exactly this many UTF-8 bytes
+    private static String document(int bytes) {
+        return "{\"n\":\"" + "x".repeat(bytes - 8) + "\"}";
+    }
+
+    private static Object value(Object param) {
+        return param instanceof SqlParameterValue ? ((SqlParameterValue) param).getValue() : param;
+    }
+
+    private static ResultSet row(String data, byte[] compressed, long version) throws SQLException {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getString("data")).thenReturn(data);
+        when(rs.getBytes("data_compressed")).thenReturn(compressed);
+        when(rs.getLong("version")).thenReturn(version);
+        return rs;
+    }
+
+    private static String written(StoredFinancialData stored) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        stored.writeTo(out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    // Captures what the repository sends instead of talking to a database
+    private static final class RecordingJdbcTemplate extends JdbcTemplate {
+        private String sql;
+        private List<Object> params = new ArrayList<>();
+        private ResultSet row;
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> List<T> queryForList(String sql, Class<T> elementType, Object... args) {
+            this.sql = sql;
+            this.params = List.of(args);
+            return (List<T>) List.of(1L);
+        }
+
+        @Override
+        public <T> List<T> query(String sql, RowMapper<T> rowMapper, Object... args) {
+            this.sql = sql;
+            this.params = List.of(args);
+            if (row == null) {
+                return List.of();
+            }
+            try {
+                return List.of(rowMapper.mapRow(row, 0));
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.personalfinance.user.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * The conditional writes the Postgres path relies on, raced for real. Runs in
+ * a throwaway schema of a scratch database:
+ * mvn test -Dtest.postgres.url=jdbc:postgresql://localhost:5432/postgres?user=postgres
+ */
+@EnabledIfSystemProperty(named = "test.postgres.url", matches = ".+")
+class UserFinancialDataRepositoryPostgresTest {
+
+    private static final String SCHEMA = "financial_data_race_test";
+    private static final long USER = 7L;
+    private static final int WRITERS = 16;
+
+    private static JdbcTemplate jdbcTemplate;
+    private static UserFinancialDataRepositoryCustomImpl repository;
+
+    @BeforeAll
+    static void createSchema() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(System.getProperty("test.postgres.url"));
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("DROP SCHEMA IF EXISTS " + SCHEMA + " CASCADE");
+        jdbcTemplate.execute("CREATE SCHEMA " + SCHEMA);
+        dataSource.setSchema(SCHEMA);
+        jdbcTemplate.execute("CREATE TABLE user_financial_data (id bigserial PRIMARY KEY, user_id bigint NOT NULL UNIQUE,"
+                + " data jsonb, data_compressed bytea, updated_at timestamp, version bigint NOT NULL DEFAULT 0)");
+        repository = new UserFinancialDataRepositoryCustomImpl(jdbcTemplate, new SimpleMeterRegistry(), 32768);
+    }
+
+    @AfterAll
+    static void dropSchema() {
+        jdbcTemplate.execute("DROP SCHEMA " + SCHEMA + " CASCADE");
+    }
+
+    @BeforeEach
+    void clear() {
+        jdbcTemplate.execute("TRUNCATE user_financial_data");
+    }
+
+    @Test
+    void onlyOneUpdateOnTheSameVersionApplies() throws Exception {
+        repository.insertIfAbsent(USER, "{\"writer\": -1}", LocalDateTime.now());
+
+        List<Long> versions = race(writer -> () ->
+                repository.updateIfVersion(USER, "{\"writer\": " + writer + "}", 1L, LocalDateTime.now()));
+
+        assertThat(versions).containsOnly(2L, null).containsOnlyOnce(2L);
+        assertThat(jdbcTemplate.queryForObject("SELECT version FROM user_financial_data", Long.class)).isEqualTo(2L);
+        assertThat(jdbcTemplate.queryForObject("SELECT data ->> 'writer' FROM user_financial_data", Integer.class))
+                .isEqualTo(versions.indexOf(2L));
+    }
+
+    @Test
+    void unconditionalUpdatesAllApplyInTurn() throws Exception {
+        repository.insertIfAbsent(USER, "{}", LocalDateTime.now());
+
+        List<Long> versions = race(writer -> () ->
+                repository.updateIfVersion(USER, "{\"writer\": " + writer + "}", null, LocalDateTime.now()));
+
+        assertThat(versions).doesNotContainNull().doesNotHaveDuplicates();
+        assertThat(jdbcTemplate.queryForObject("SELECT version FROM user_financial_data", Long.class)).isEqualTo(1L + WRITERS);
+    }
+
+    @Test
+    void onlyOneFirstWriteCreatesTheDocument() throws Exception {
+        List<Long> versions = race(writer -> () ->
+                repository.insertIfAbsent(USER, "{\"writer\": " + writer + "}", LocalDateTime.now()));
+
+        assertThat(versions).containsOnly(1L, null).containsOnlyOnce(1L);
+        assertThat(jdbcTemplate.queryForObject("SELECT data ->> 'writer' FROM user_financial_data", Integer.class))
+                .isEqualTo(versions.indexOf(1L));
+    }
+
+    @Test
+    void documentsAtTheThresholdAreStoredCompressedAndReadBack() {
+        UserFinancialDataRepositoryCustomImpl compressing =
+                new UserFinancialDataRepositoryCustomImpl(jdbcTemplate, new SimpleMeterRegistry(), 100);
+        String below = "{\"n\": \"" + "x".repeat(90) + "\"}";
+        String at = "{\"n\": \"" + "x".repeat(91) + "\"}";
+
+        compressing.insertIfAbsent(USER, below, LocalDateTime.now());
+        compressing.insertIfAbsent(USER + 1, at, LocalDateTime.now());
+
+        assertThat(jdbcTemplate.queryForList("SELECT data IS NULL FROM user_financial_data ORDER BY user_id", Boolean.class))
+                .containsExactly(false, true);
+        assertThat(compressing.findStored(USER, false).orElseThrow().asText()).isEqualTo(below);
+        StoredFinancialData stored = compressing.findStored(USER + 1, false).orElseThrow();
+        assertThat(stored.isCompressed()).isTrue();
+        assertThat(stored.asText()).isEqualTo(at);
+    }
+
+    // Rows from before the data_compressed column existed
+    @Test
+    void legacyRowsReadAsPlainText() {
+        jdbcTemplate.update("INSERT INTO user_financial_data (user_id, data, updated_at) VALUES (?, CAST(? AS jsonb), now())",
+                USER, "{\"accounts\": [1, 2]}");
+
+        StoredFinancialData stored = repository.findStored(USER, false).orElseThrow();
+
+        assertThat(stored.isCompressed()).isFalse();
+        assertThat(stored.getVersion()).isZero();
+        assertThat(stored.asText()).isEqualTo("{\"accounts\": [1, 2]}");
+    }
+
+    // Starts every writer at once and returns what each got, in writer order
+    private static List<Long> race(IntFunction<Callable<Long>> write) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(WRITERS);
+        try {
+            CyclicBarrier start = new CyclicBarrier(WRITERS);
+            List<Future<Long>> writes = new ArrayList<>();
+            for (int i = 0; i < WRITERS; i++) {
+                Callable<Long> writer = write.apply(i);
+                writes.add(executor.submit(() -> {
+                    start.await();
+                    return writer.call();
+                }));
+            }
+            List<Long> versions = new ArrayList<>();
+            for (Future<Long> version : writes) {
+                versions.add(version.get(30, TimeUnit.SECONDS));
+            }
+            return versions;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.personalfinance.user.service;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.personalfinance.user.model.FinancialDataHistory.Kind;
+import com.personalfinance.user.repository.FinancialDataHistoryRepository;
+import com.personalfinance.user.util.JsonDiff;
+import com.personalfinance.user.util.JsonNodeConverter;
+import com.personalfinance.user.util.JsonPatch;
+
+/**
+ * Storage for {@link #SAVES} saves of one user's document, recorded as
+ * {@link FinancialDataHistoryService} records them, against keeping a full
+ * copy of every version. The document grows from about 30 KB to about
+ * 60 KB, under the default diff limit. Full PUTs (an edited goal, and an
+ * appended transaction every other time) alternate with single-field merge
+ * patches. The repository is an in-memory stand-in that keeps each row's
+ * payload; the rows are then counted as text, and deflated one by one as a
+ * rough model of Postgres compressing a large jsonb value. One operation is
+ * all {@link #SAVES} saves, so the score is the cost of recording them.
+ * Launched by {@link FinancialDataHistoryServiceTest}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FinancialDataHistoryBenchmark {
+
+    static final int SAVES = 1_000;
+    private static final long USER = 7L;
+    private static final int FIRST_TRANSACTIONS = 240;
+
+    private final List<Save> saves = new ArrayList<>();
+    private Stored counting;
+    private FinancialDataHistoryService history;
+
+    /**
+     * What the rows of one run hold. The payloads are only collected while
+     * timed, and measured after; JMH sums the counters over iterations, so
+     * divide by {@link #rows} over {@link #SAVES} for one run's worth.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Stored {
+        public long storedBytes;
+        public long compressedBytes;
+        public long rows;
+
+        private final List<String> payloads = new ArrayList<>(SAVES);
+        private final Deflater deflater = new Deflater();
+        private final byte[] sink = new byte[64 * 1024];
+
+        @Setup(Level.Invocation)
+        public void reset() {
+            payloads.clear();
+        }
+
+        @TearDown(Level.Invocation)
+        public void measure() {
+            storedBytes = 0;
+            compressedBytes = 0;
+            rows = payloads.size();
+            for (String payload : payloads) {
+                byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+                storedBytes += bytes.length;
+                deflater.reset();
+                deflater.setInput(bytes);
+                deflater.finish();
+                while (!deflater.finished()) {
+                    compressedBytes += deflater.deflate(sink);
+                }
+            }
+        }
+
+        void add(String payload) {
+            payloads.add(payload);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(1);
+        ObjectNode document = document(random);
+        for (int version = 1; version <= SAVES; version++) {
+            if (version % 2 == 1) {
+                ObjectNode next = document.deepCopy();
+                ((ObjectNode) next.get("goals")).put("car", 5000 + random.nextInt(5000));
+                if (version % 4 == 1) {
+                    transaction((ArrayNode) next.get("transactions"), random);
+                }
+                saves.add(new Save(Kind.JSON_PATCH, document.toString(), null, next.toString()));
+                document = next;
+            } else {
+                ObjectNode patch = JsonNodeFactory.instance.objectNode();
+                patch.putObject("settings").put("lastReviewed", "2024-" + (1 + random.nextInt(9)) + "-1" + random.nextInt(9));
+                ObjectNode next = (ObjectNode) JsonPatch.mergePatch(document.deepCopy(), patch);
+                saves.add(new Save(Kind.MERGE_PATCH, null, patch.toString(), next.toString()));
+                document = next;
+            }
+        }
+
+        FinancialDataHistoryRepository repo = mock(FinancialDataHistoryRepository.class);
+        when(repo.existsByUserIdAndVersion(eq(USER), anyLong())).thenAnswer(call -> call.<Long>getArgument(1) >= 1);
+        doAnswer(call -> {
+            counting.add(call.getArgument(3));
+            return null;
+        }).when(repo).insertDelta(eq(USER), anyLong(), anyString(), anyString(), any());
+        history = new FinancialDataHistoryService(repo, new TransactionTemplate(mock(PlatformTransactionManager.class)),
+                true, 20, 200, 65536);
+    }
+
+    // As UserFinancialDataService records each save: PUTs diffed against the previous text, patches stored as sent
+    @Benchmark
+    public long deltaHistory(Stored stored) {
+        counting = stored;
+        long version = 0;
+        for (Save save : saves) {
+            version++;
+            String delta = save.patch;
+            if (save.kind == Kind.JSON_PATCH && history.shouldDiff(save.document.length())
+                    && history.shouldDiff(save.previous.length())) {
+                delta = JsonDiff.diff(JsonNodeConverter.toJsonNode(save.previous),
+                        JsonNodeConverter.toJsonNode(save.document)).toString();
+            }
+            history.record(USER, version, save.kind, delta, save.document);
+        }
+        return version;
+    }
+
+    @Benchmark
+    public long fullCopies(Stored stored) {
+        for (Save save : saves) {
+            stored.add(save.document);
+        }
+        return saves.size();
+    }
+
+    // A ledger of transactions, a few goals and settings, about 30 KB as text
+    private static ObjectNode document(Random random) {
+        ObjectNode document = JsonNodeFactory.instance.objectNode().put("currency", "USD");
+        document.putObject("goals").put("car", 5000).put("holiday", 1500.5).put("emergency", 12000);
+        document.putObject("settings").put("lastReviewed", "2024-01-01").put("roundUp", true);
+        ArrayNode transactions = document.putArray("transactions");
+        for (int i = 0; i < FIRST_TRANSACTIONS; i++) {
+            transaction(transactions, random);
+        }
+        return document;
+    }
+
+    private static void transaction(ArrayNode transactions, Random random) {
+        int id = transactions.size() + 1;
+        transactions.addObject()
+                .put("id", id)
+                .put("date", String.format("2024-%02d-%02d", 1 + id % 12, 1 + id % 28))
+                .put("amount", -(1 + random.nextInt(20_000)) / 100.0)
+                .put("category", "DINING")
+                .put("description", "Lunch with the team #" + id)
+                .put("recurring", false);
+    }
+
+    private static final class Save {
+        final Kind kind;
+        final String previous;
+        final String patch;
+        final String document;
+
+        Save(Kind kind, String previous, String patch, String document) {
+            this.kind = kind;
+            this.previous = previous;
+            this.patch = patch;
+            this.document = document;
+        }
+    }
+}
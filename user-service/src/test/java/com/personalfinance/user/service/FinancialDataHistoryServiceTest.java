@@ -0,0 +1,234 @@
+package com.personalfinance.user.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.personalfinance.user.model.FinancialDataHistory.Kind;
+import com.personalfinance.user.repository.FinancialDataHistoryRepository;
+import com.personalfinance.user.repository.FinancialDataHistoryRepository.ChainEntry;
+import com.personalfinance.user.util.JsonDiff;
+
+// The repository's SQL is played by an in-memory table; the chain query keeps its semantics
+class FinancialDataHistoryServiceTest {
+
+    private static final long USER = 7L;
+    private static final int SNAPSHOT_INTERVAL = 4;
+    private static final ObjectMapper mapper = new ObjectMapper();
+    // Unchanged bulk, so deltas come out smaller than the documents and are kept as deltas
+    private static final String LEDGER = "{\"ledger\": " + IntStream.range(0, 50).boxed().collect(Collectors.toList()) + ", ";
+
+    private final TreeMap<Long, Row> rows = new TreeMap<>();
+    private final List<JsonNode> written = new ArrayList<>();
+    private FinancialDataHistoryService history;
+
+    @BeforeEach
+    void setUp() {
+        FinancialDataHistoryRepository repo = mock(FinancialDataHistoryRepository.class);
+        when(repo.existsByUserIdAndVersion(eq(USER), anyLong())).thenAnswer(call -> rows.containsKey(call.<Long>getArgument(1)));
+        doAnswer(call -> rows.put(call.getArgument(1), new Row(call.getArgument(1), call.getArgument(2), call.getArgument(3))))
+                .when(repo).insertDelta(eq(USER), anyLong(), anyString(), anyString(), any());
+        when(repo.findChain(eq(USER), anyLong())).thenAnswer(call -> chain(call.getArgument(1)));
+        when(repo.findUserIdsWithMoreThan(anyLong())).thenAnswer(call -> rows.size() > call.<Long>getArgument(0) ? List.of(USER) : List.of());
+        when(repo.findLatestVersion(USER)).thenAnswer(call -> rows.isEmpty() ? Optional.empty() : Optional.of(rows.lastKey()));
+        doAnswer(call -> rows.put(call.getArgument(1), new Row(call.getArgument(1), Kind.SNAPSHOT.name(), call.getArgument(2))))
+                .when(repo).convertToSnapshot(eq(USER), anyLong(), anyString());
+        when(repo.deleteOlderThan(eq(USER), anyLong())).thenAnswer(call -> {
+            int before = rows.size();
+            rows.headMap(call.getArgument(1)).clear();
+            return before - rows.size();
+        });
+        history = new FinancialDataHistoryService(repo, new TransactionTemplate(mock(PlatformTransactionManager.class)),
+                true, SNAPSHOT_INTERVAL, 6, 65536);
+    }
+
+    @Test
+    void everyVersionOfAChainOfDiffsIsRebuilt() {
+        writeAll(
+                LEDGER + "\"accounts\": [{\"id\": 1, \"balance\": 10}], \"goals\": {}}",
+                LEDGER + "\"accounts\": [{\"id\": 1, \"balance\": 12.5}, {\"id\": 2, \"balance\": 0}], \"goals\": {}}",
+                LEDGER + "\"accounts\": [{\"id\": 2, \"balance\": 0}, {\"id\": 1, \"balance\": 12.5}], \"goals\": {}}",
+                LEDGER + "\"accounts\": [{\"id\": 2, \"balance\": 0}], \"goals\": {\"car\": 5000}}",
+                LEDGER + "\"accounts\": [], \"goals\": {\"car\": 5000, \"house\": [1, 2, 3]}}",
+                LEDGER + "\"accounts\": [], \"goals\": {\"house\": [3, 1, 2]}}",
+                LEDGER + "\"accounts\": [], \"goals\": {\"house\": [3, 1]}, \"a/b~c\": 1}",
+                "[\"not\", \"an\", \"object\"]",
+                LEDGER + "\"accounts\": [{\"id\": 3}]}");
+
+        assertEveryVersionRebuilds();
+        // Snapshots on the interval (4, 8), deltas in between unless they'd be bigger than the document
+        assertThat(rows.values()).extracting(ChainEntry::getKind).containsExactly(
+                "SNAPSHOT", "JSON_PATCH", "JSON_PATCH", "SNAPSHOT", "JSON_PATCH", "JSON_PATCH", "JSON_PATCH", "SNAPSHOT", "SNAPSHOT");
+    }
+
+    @Test
+    void mergePatchVersionsAreReplayed() {
+        write("{\"a\": 1, \"b\": {\"c\": 2}}");
+        JsonNode patch = json("{\"b\": {\"c\": null, \"d\": [1]}, \"e\": true}");
+        JsonNode merged = json("{\"a\": 1, \"b\": {\"d\": [1]}, \"e\": true}");
+        history.record(USER, 2, Kind.MERGE_PATCH, patch.toString(), merged.toString());
+        written.add(merged);
+
+        assertEveryVersionRebuilds();
+    }
+
+    // What the restore endpoint does: write an old version back as the newest one
+    @Test
+    void restoringAnOldVersionRecordsItAsANewVersion() {
+        writeAll(LEDGER + "\"a\": [1, 2, 3]}", LEDGER + "\"a\": [1, 3]}", LEDGER + "\"a\": [3, 1], \"b\": {}}");
+
+        write(history.reconstruct(USER, 1).orElseThrow().toString());
+
+        assertThat(rows.get(4L).kind).isEqualTo("SNAPSHOT");
+        assertThat(history.reconstruct(USER, 4)).contains(written.get(0));
+        assertEveryVersionRebuilds();
+    }
+
+    @Test
+    void missingOrUnreachableVersionsAreNotRebuilt() {
+        String padding = ", \"notes\": \"" + "x".repeat(200) + "\"}";
+        writeAll("{\"a\": 1" + padding, "{\"a\": 2" + padding, "{\"a\": 3" + padding);
+        assertThat(rows.get(3L).kind).isEqualTo("JSON_PATCH");
+        rows.remove(2L);
+
+        assertThat(history.reconstruct(USER, 9)).isEmpty();
+        assertThat(history.reconstruct(USER, 3)).isEmpty();
+        assertThat(history.reconstruct(USER, 1)).contains(written.get(0));
+    }
+
+    @Test
+    void compactionKeepsTheNewestVersionsRebuildable() {
+        for (int i = 0; i < 11; i++) {
+            write("{\"n\": " + i + ", \"list\": [" + i + ", " + (i * 2) + "]}");
+        }
+
+        history.compact();
+
+        assertThat(rows.keySet()).containsExactly(6L, 7L, 8L, 9L, 10L, 11L);
+        assertThat(rows.get(6L).kind).isEqualTo("SNAPSHOT");
+        for (long version = 6; version <= 11; version++) {
+            assertThat(history.reconstruct(USER, version)).contains(written.get((int) version - 1));
+        }
+        assertThat(history.reconstruct(USER, 5)).isEmpty();
+    }
+
+    /**
+     * The JMH suite: bytes stored for 1,000 saves as history rows against a
+     * full copy per version, as text and deflated row by row. Only runs
+     * with -Pslow-tests.
+     */
+    @Test
+    @Tag("slow")
+    void jmhStoragePerThousandSaves() throws RunnerException {
+        Map<String, String> results = new TreeMap<>();
+        Map<String, Double> millis = new TreeMap<>();
+        Map<String, Double> stored = new TreeMap<>();
+        Map<String, Double> compressed = new TreeMap<>();
+        for (RunResult result : new Runner(new OptionsBuilder()
+                .include(FinancialDataHistoryBenchmark.class.getName())
+                .forks(1)
+                .warmupIterations(3)
+                .measurementIterations(5)
+                .build()).run()) {
+            String name = result.getParams().getBenchmark().replaceAll(".*\\.", "");
+            Map<String, Result> counters = result.getSecondaryResults();
+            // The counters are summed over iterations; scale back to one run of the saves
+            double runs = counters.get("rows").getScore() / FinancialDataHistoryBenchmark.SAVES;
+            millis.put(name, result.getPrimaryResult().getScore());
+            stored.put(name, counters.get("storedBytes").getScore() / runs);
+            compressed.put(name, counters.get("compressedBytes").getScore() / runs);
+            results.put(name, String.format("%.0f ms, %.0f KB stored, %.0f KB deflated",
+                    millis.get(name), stored.get(name) / 1024, compressed.get(name) / 1024));
+        }
+
+        System.out.printf("[history] %d saves: %s%n", FinancialDataHistoryBenchmark.SAVES, results);
+        assertThat(stored.get("deltaHistory")).isLessThan(stored.get("fullCopies") / 10);
+        assertThat(compressed.get("deltaHistory")).isLessThan(compressed.get("fullCopies") / 5);
+        // Parsing both versions and diffing them on every PUT, about 45 KB each
+        assertThat(millis.get("deltaHistory")).isLessThan(5000);
+    }
+
+    private void writeAll(String... documents) {
+        for (String document : documents) {
+            write(document);
+        }
+    }
+
+    // As UserFinancialDataService.saveWithHistory records a full replacement
+    private void write(String document) {
+        JsonNode next = json(document);
+        long version = written.size() + 1;
+        String delta = written.isEmpty() ? null : JsonDiff.diff(written.get(written.size() - 1), next).toString();
+        history.record(USER, version, Kind.JSON_PATCH, delta, next.toString());
+        written.add(next);
+    }
+
+    private void assertEveryVersionRebuilds() {
+        for (int i = 0; i < written.size(); i++) {
+            assertThat(history.reconstruct(USER, i + 1)).as("version %d", i + 1).contains(written.get(i));
+        }
+    }
+
+    // findChain: the nearest snapshot at or below the version, then every row up to it
+    private List<ChainEntry> chain(long version) {
+        Long snapshot = rows.headMap(version, true).descendingMap().values().stream()
+                .filter(row -> row.kind.equals("SNAPSHOT"))
+                .map(ChainEntry::getVersion)
+                .findFirst().orElse(null);
+        if (snapshot == null) {
+            return List.of();
+        }
+        return rows.subMap(snapshot, true, version, true).values().stream().collect(Collectors.toList());
+    }
+
+    private static JsonNode json(String text) {
+        try {
+            return mapper.readTree(text);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private static final class Row implements ChainEntry {
+        private final long version;
+        private final String kind;
+        private final String payload;
+
+        Row(long version, String kind, String payload) {
+            this.version = version;
+            this.kind = kind;
+            this.payload = payload;
+        }
+
+        @Override public Long getVersion() { return version; }
+        @Override public String getKind() { return kind; }
+        @Override public String getPayload() { return payload; }
+    }
+}
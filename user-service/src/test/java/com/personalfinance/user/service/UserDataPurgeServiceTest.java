@@ -0,0 +1,146 @@
+package com.personalfinance.user.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+
+import com.personalfinance.user.model.GoalLike;
+import com.personalfinance.user.repository.ChatMessageRepository;
+import com.personalfinance.user.repository.FinancialDataHistoryRepository;
+import com.personalfinance.user.repository.GoalCommentRepository;
+import com.personalfinance.user.repository.GoalLikeRepository;
+import com.personalfinance.user.repository.GoalRepository;
+import com.personalfinance.user.repository.SharedGoalRepository;
+import com.personalfinance.user.repository.UserFinancialDataRepository;
+import com.personalfinance.user.service.UserDataPurgeService.Section;
+
+// The repositories are played by in-memory id lists; each chunk takes from the front
+class UserDataPurgeServiceTest {
+
+    private static final long USER = 7L;
+
+    private final GoalLikeRepository likes = mock(GoalLikeRepository.class);
+    private final GoalCommentRepository comments = mock(GoalCommentRepository.class);
+    private final SharedGoalRepository sharedGoals = mock(SharedGoalRepository.class);
+    private final ChatMessageRepository chatMessages = mock(ChatMessageRepository.class);
+    private final GoalRepository goals = mock(GoalRepository.class);
+    private final FinancialDataHistoryRepository history = mock(FinancialDataHistoryRepository.class);
+    private final UserFinancialDataRepository financialData = mock(UserFinancialDataRepository.class);
+
+    private final List<Long> historyIds = new ArrayList<>();
+    private final List<Long> goalIds = new ArrayList<>();
+    private int documents;
+    private UserDataPurgeService purge;
+
+    @BeforeEach
+    void setUp() {
+        when(history.findIdsByUserId(eq(USER), any())).thenAnswer(call -> head(historyIds, call.getArgument(1)));
+        when(history.deleteByIdIn(anyCollection())).thenAnswer(call -> removeAll(historyIds, call.getArgument(0)));
+        when(financialData.deleteByUserIdReturningCount(USER)).thenAnswer(call -> {
+            int deleted = documents;
+            documents = 0;
+            return deleted;
+        });
+        when(goals.findIdsByUserId(eq(USER), any())).thenAnswer(call -> head(goalIds, call.getArgument(1)));
+        when(goals.deleteByIdIn(anyCollection())).thenAnswer(call -> removeAll(goalIds, call.getArgument(0)));
+        purge = new UserDataPurgeService(likes, comments, sharedGoals, chatMessages, goals, history, financialData);
+    }
+
+    @Test
+    void aSectionIsDeletedInChunksUntilACallFindsNothing() {
+        LongStream.rangeClosed(1, 1_050).forEach(goalIds::add);
+
+        List<Integer> chunks = new ArrayList<>();
+        int deleted;
+        do {
+            deleted = purge.purgeChunk(Section.GOALS, USER, 500);
+            chunks.add(deleted);
+        } while (deleted > 0);
+
+        assertThat(chunks).containsExactly(500, 500, 50, 0);
+        assertThat(goalIds).isEmpty();
+    }
+
+    @Test
+    void theDocumentGoesOnlyOnceItsHistoryIsGone() {
+        LongStream.rangeClosed(1, 3).forEach(historyIds::add);
+        documents = 1;
+
+        assertThat(purge.purgeChunk(Section.FINANCIAL_DATA, USER, 2)).isEqualTo(2);
+        assertThat(purge.purgeChunk(Section.FINANCIAL_DATA, USER, 2)).isEqualTo(1);
+        assertThat(documents).isEqualTo(1);
+        assertThat(purge.purgeChunk(Section.FINANCIAL_DATA, USER, 2)).isEqualTo(1);
+        assertThat(documents).isZero();
+        assertThat(purge.purgeChunk(Section.FINANCIAL_DATA, USER, 2)).isZero();
+    }
+
+    @Test
+    void deletedLikesComeOffTheCountersOfTheGoalsTheyWereOn() {
+        List<GoalLike> chunk = List.of(new GoalLike(10L, USER), new GoalLike(10L, USER), new GoalLike(11L, USER));
+        when(likes.findByUserIdOrderById(eq(USER), any())).thenReturn(chunk);
+
+        assertThat(purge.purgeChunk(Section.GOAL_LIKES, USER, 500)).isEqualTo(3);
+
+        verify(sharedGoals).decrementLikesCount(10L, 2);
+        verify(sharedGoals).decrementLikesCount(11L, 1);
+        verify(likes).deleteAllInBatch(chunk);
+    }
+
+    @Test
+    void sharedGoalsTakeOtherUsersLikesAndCommentsWithThem() {
+        when(sharedGoals.findIdsByUserId(eq(USER), any())).thenReturn(List.of(3L, 4L));
+
+        assertThat(purge.purgeChunk(Section.SHARED_GOALS, USER, 500)).isEqualTo(2);
+
+        verify(likes).deleteByGoalIdIn(List.of(3L, 4L));
+        verify(comments).deleteByGoalIdIn(List.of(3L, 4L));
+        verify(sharedGoals).deleteByIdIn(List.of(3L, 4L));
+    }
+
+    @Test
+    void repliesAreDetachedBeforeTheMessagesTheyAnswerGo() {
+        when(chatMessages.findIdsByUserId(eq(USER), any())).thenReturn(List.of(5L));
+
+        assertThat(purge.purgeChunk(Section.CHAT_MESSAGES, USER, 500)).isEqualTo(1);
+        verify(chatMessages).clearReplyTo(List.of(5L));
+        verify(chatMessages).deleteByIdIn(List.of(5L));
+
+        when(chatMessages.findIdsByUserId(eq(USER), any())).thenReturn(List.of());
+        assertThat(purge.purgeChunk(Section.CHAT_MESSAGES, USER, 500)).isZero();
+        verify(chatMessages, never()).clearReplyTo(List.of());
+    }
+
+    @Test
+    void sectionsAreNamedByTheirPath() {
+        for (Section section : Section.values()) {
+            assertThat(Section.fromPath(section.getPath())).isSameAs(section);
+        }
+        assertThatThrownBy(() -> Section.fromPath("transactions")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static List<Long> head(List<Long> ids, Pageable page) {
+        return ids.stream().limit(page.getPageSize()).collect(Collectors.toList());
+    }
+
+    private static int removeAll(List<Long> ids, Collection<Long> deleted) {
+        int before = ids.size();
+        ids.removeAll(deleted);
+        return before - ids.size();
+    }
+}
@@ -0,0 +1,156 @@
+package com.personalfinance.user.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.personalfinance.user.model.UserFinancialData;
+import com.personalfinance.user.repository.UserFinancialDataRepository;
+import com.personalfinance.user.service.UserFinancialDataService.Precondition;
+import com.personalfinance.user.service.UserFinancialDataService.PreconditionFailedException;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+// Writers racing on one version through the JPA path, as the dev profile runs it on H2; jsonb is plain text there
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:financial-data;INIT=CREATE DOMAIN IF NOT EXISTS JSONB AS VARCHAR",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.default_schema=",
+        "spring.jpa.show-sql=false",
+        "logging.file.name=",
+        "spring.sql.init.mode=never"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class UserFinancialDataServiceConcurrencyTest {
+
+    private static final long USER = 7L;
+    private static final int WRITERS = 8;
+
+    @Autowired
+    private UserFinancialDataRepository repository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @TestConfiguration
+    static class Metrics {
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+
+    private UserFinancialDataService service;
+    private TransactionTemplate transactionTemplate;
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        service = new UserFinancialDataService(repository, mock(FinancialDataHistoryService.class), "");
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        executor = Executors.newFixedThreadPool(WRITERS);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+        repository.deleteAll();
+    }
+
+    @Test
+    void onlyOneWriterHoldingTheCurrentVersionWins() throws Exception {
+        transactionTemplate.executeWithoutResult(status ->
+                service.saveOrUpdate(USER, "{\"writer\":-1}", Precondition.create()));
+
+        List<Integer> winners = race(Precondition.version(1));
+
+        assertThat(winners).hasSize(1);
+        UserFinancialData stored = repository.findByUserId(USER).orElseThrow();
+        assertThat(stored.getVersion()).isEqualTo(2);
+        assertThat(stored.getData().path("writer").asInt()).isEqualTo(winners.get(0));
+    }
+
+    @Test
+    void onlyOneFirstWriteCreatesTheDocument() throws Exception {
+        List<Integer> winners = race(Precondition.create());
+
+        assertThat(winners).hasSize(1);
+        assertThat(repository.findAll()).singleElement().satisfies(stored -> {
+            assertThat(stored.getVersion()).isEqualTo(1);
+            assertThat(stored.getData().path("writer").asInt()).isEqualTo(winners.get(0));
+        });
+    }
+
+    @Test
+    void patchesOnTheSameVersionDontOverwriteEachOther() throws Exception {
+        transactionTemplate.executeWithoutResult(status ->
+                service.saveOrUpdate(USER, "{}", Precondition.create()));
+        CyclicBarrier start = new CyclicBarrier(WRITERS);
+        List<Future<?>> patches = new ArrayList<>();
+        for (int i = 0; i < WRITERS; i++) {
+            String field = "f" + i;
+            patches.add(executor.submit(() -> {
+                start.await();
+                return transactionTemplate.execute(status -> service.patch(USER,
+                        JsonNodeFactory.instance.objectNode().put(field, true), true, Precondition.any()));
+            }));
+        }
+        for (Future<?> patch : patches) {
+            patch.get(30, TimeUnit.SECONDS);
+        }
+
+        UserFinancialData stored = repository.findByUserId(USER).orElseThrow();
+        assertThat(stored.getVersion()).isEqualTo(1 + WRITERS);
+        assertThat(stored.getData().size()).isEqualTo(WRITERS);
+    }
+
+    // Every writer sends its own document on the same precondition at once; returns the ones that got through
+    private List<Integer> race(Precondition precondition) throws Exception {
+        CyclicBarrier start = new CyclicBarrier(WRITERS);
+        List<Future<Boolean>> writes = new ArrayList<>();
+        for (int i = 0; i < WRITERS; i++) {
+            int writer = i;
+            writes.add(executor.submit(() -> {
+                start.await();
+                try {
+                    transactionTemplate.executeWithoutResult(status ->
+                            service.saveOrUpdate(USER, "{\"writer\":" + writer + "}", precondition));
+                    return true;
+                } catch (PreconditionFailedException e) {
+                    return false;
+                }
+            }));
+        }
+        List<Integer> winners = new ArrayList<>();
+        for (int i = 0; i < WRITERS; i++) {
+            if (writes.get(i).get(30, TimeUnit.SECONDS)) {
+                winners.add(i);
+            }
+        }
+        return winners;
+    }
+}
@@ -0,0 +1,154 @@
+package com.personalfinance.user.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.personalfinance.user.model.UserFinancialData;
+import com.personalfinance.user.repository.FinancialDataHistoryRepository;
+import com.personalfinance.user.repository.FinancialDataHistoryRepository.VersionSummary;
+import com.personalfinance.user.repository.StoredFinancialData;
+import com.personalfinance.user.repository.UserFinancialDataRepository;
+import com.personalfinance.user.service.UserFinancialDataService.Precondition;
+import com.personalfinance.user.service.UserFinancialDataService.PreconditionFailedException;
+import com.personalfinance.user.util.CompressedJson;
+import com.personalfinance.user.util.JsonNodeConverter;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+// The service end to end on the JPA path, as the dev profile runs it on H2: history and compression
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:financial-data-jpa;INIT=CREATE DOMAIN IF NOT EXISTS JSONB AS VARCHAR",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.default_schema=",
+        "spring.jpa.show-sql=false",
+        "logging.file.name=",
+        "spring.sql.init.mode=never",
+        "financial-data.history.snapshot-interval=3",
+        "financial-data.compression.threshold-bytes=" + UserFinancialDataServiceJpaTest.THRESHOLD
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({UserFinancialDataService.class, FinancialDataHistoryService.class, UserFinancialDataServiceJpaTest.Config.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class UserFinancialDataServiceJpaTest {
+
+    static final int THRESHOLD = 1024;
+    private static final long USER = 7L;
+    // Unchanged bulk, so deltas come out smaller than the documents and are kept as deltas
+    private static final String LEDGER = "\"ledger\": \"" + "x".repeat(200) + "\"";
+
+    @Autowired
+    private UserFinancialDataService service;
+
+    @Autowired
+    private FinancialDataHistoryService history;
+
+    @Autowired
+    private UserFinancialDataRepository repository;
+
+    @Autowired
+    private FinancialDataHistoryRepository historyRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @TestConfiguration
+    static class Config {
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        historyRepository.deleteAll();
+        repository.deleteAll();
+    }
+
+    @Test
+    void everyWriteIsRecordedAndRebuilt() {
+        List<JsonNode> written = new ArrayList<>();
+        written.add(put("{" + LEDGER + ", \"accounts\": [{\"id\": 1, \"balance\": 10}]}", Precondition.create()));
+        written.add(put("{" + LEDGER + ", \"accounts\": [{\"id\": 1, \"balance\": 12.5}, {\"id\": 2}]}", Precondition.version(1)));
+        written.add(patch("[{\"op\": \"remove\", \"path\": \"/accounts/1\"}]", false, Precondition.version(2)));
+        written.add(patch("{\"goals\": {\"car\": 5000}}", true, Precondition.any()));
+        written.add(put("{" + LEDGER + ", \"accounts\": [], \"goals\": {\"car\": 5000}}", Precondition.any()));
+
+        assertThat(history.list(USER)).extracting(VersionSummary::getVersion).containsExactly(5L, 4L, 3L, 2L, 1L);
+        // Snapshots for the first version and on the interval, deltas in between
+        assertThat(history.list(USER)).extracting(VersionSummary::getKind)
+                .containsExactly("JSON_PATCH", "MERGE_PATCH", "SNAPSHOT", "JSON_PATCH", "SNAPSHOT");
+        for (int version = 1; version <= written.size(); version++) {
+            assertThat(history.reconstruct(USER, version)).as("version %d", version).contains(written.get(version - 1));
+        }
+    }
+
+    @Test
+    void aFailedPreconditionRecordsNothing() {
+        put("{\"a\": 1}", Precondition.create());
+
+        assertThatThrownBy(() -> put("{\"a\": 2}", Precondition.version(5))).isInstanceOf(PreconditionFailedException.class);
+        assertThatThrownBy(() -> put("{\"a\": 2}", Precondition.create())).isInstanceOf(PreconditionFailedException.class);
+
+        assertThat(history.list(USER)).extracting(VersionSummary::getVersion).containsExactly(1L);
+        assertThat(service.getVersion(USER)).contains(1L);
+    }
+
+    @Test
+    void largeDocumentsAreStoredCompressed() {
+        String large = put("{\"notes\": \"" + "n".repeat(THRESHOLD) + "\", \"accounts\": []}", Precondition.create()).toString();
+
+        UserFinancialData row = repository.findByUserId(USER).orElseThrow();
+        assertThat(row.getData()).isNull();
+        assertThat(CompressedJson.uncompressedLength(row.getDataCompressed())).isEqualTo(large.length());
+        StoredFinancialData stored = service.getStoredByUserId(USER).orElseThrow();
+        assertThat(stored.isCompressed()).isTrue();
+        assertThat(stored.asText()).isEqualTo(large);
+    }
+
+    @Test
+    void aCompressedDocumentIsPatchedAndShrunkBackToPlain() {
+        JsonNode large = put("{\"notes\": \"" + "n".repeat(THRESHOLD) + "\", \"accounts\": []}", Precondition.create());
+
+        JsonNode patched = patch("[{\"op\": \"add\", \"path\": \"/accounts/-\", \"value\": {\"id\": 1}}]", false, Precondition.version(1));
+        assertThat(patched.path("accounts").get(0).path("id").asInt()).isEqualTo(1);
+        assertThat(patched.path("notes")).isEqualTo(large.path("notes"));
+        assertThat(repository.findByUserId(USER).orElseThrow().getDataCompressed()).isNotNull();
+
+        JsonNode small = patch("[{\"op\": \"remove\", \"path\": \"/notes\"}]", false, Precondition.version(2));
+        UserFinancialData row = repository.findByUserId(USER).orElseThrow();
+        assertThat(row.getDataCompressed()).isNull();
+        assertThat(row.getData()).isEqualTo(small);
+        assertThat(history.reconstruct(USER, 2)).contains(patched);
+    }
+
+    private JsonNode put(String json, Precondition precondition) {
+        JsonNode document = JsonNodeConverter.toJsonNode(json);
+        transactionTemplate.executeWithoutResult(status -> service.saveOrUpdate(USER, document.toString(), precondition));
+        return document;
+    }
+
+    private JsonNode patch(String patch, boolean mergePatch, Precondition precondition) {
+        transactionTemplate.executeWithoutResult(status ->
+                service.patch(USER, JsonNodeConverter.toJsonNode(patch), mergePatch, precondition));
+        return JsonNodeConverter.toJsonNode(service.getStoredByUserId(USER).orElseThrow().asText());
+    }
+}
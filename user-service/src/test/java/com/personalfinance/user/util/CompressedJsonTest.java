@@ -0,0 +1,76 @@
+package com.personalfinance.user.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class CompressedJsonTest {
+
+    @Test
+    void headerIsMagicVersionCodecAndBigEndianLength() {
+        byte[] json = "{\"a\": 1}".repeat(40000).getBytes(StandardCharsets.UTF_8);
+
+        byte[] stored = CompressedJson.compress(json);
+
+        assertThat(Arrays.copyOf(stored, 9)).containsExactly('P', 'F', 'Z', 1, 1, 0x00, 0x04, (byte) 0xE2, 0x00);
+        assertThat(CompressedJson.uncompressedLength(stored)).isEqualTo(json.length).isEqualTo(320000);
+        assertThat(stored.length).isLessThan(json.length / 10);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", "{}", "{\"name\": \"Zoë\", \"note\": \"日本語 ✓ 🚀\"}", "[1.50, -0.0, 1e400, null]"})
+    void roundTripsTheExactBytes(String text) throws IOException {
+        byte[] json = text.getBytes(StandardCharsets.UTF_8);
+
+        assertThat(inflate(CompressedJson.compress(json))).isEqualTo(json);
+    }
+
+    @Test
+    void roundTripsADocumentLargerThanTheStreamBuffers() throws IOException {
+        StringBuilder document = new StringBuilder("[");
+        for (int i = 0; i < 50000; i++) {
+            document.append(i == 0 ? "" : ",").append("{\"id\":").append(i).append(",\"amount\":").append(i * 37 % 1000).append('}');
+        }
+        byte[] json = document.append(']').toString().getBytes(StandardCharsets.UTF_8);
+
+        assertThat(inflate(CompressedJson.compress(json))).isEqualTo(json);
+    }
+
+    // A row written before compression, or any other bytes, must not be mistaken for a blob
+    @Test
+    void rejectsBytesWithoutTheHeader() {
+        byte[] plain = "{\"data\": 1}".getBytes(StandardCharsets.UTF_8);
+
+        assertThatIllegalStateException().isThrownBy(() -> CompressedJson.open(plain))
+                .withMessage("Not a compressed financial-data document");
+        assertThatIllegalStateException().isThrownBy(() -> CompressedJson.uncompressedLength(new byte[] {'P', 'F', 'Z', 1, 1}));
+    }
+
+    @Test
+    void rejectsFormatsItDoesNotKnow() {
+        byte[] stored = CompressedJson.compress(new byte[] {'{', '}'});
+        byte[] newerFormat = stored.clone();
+        newerFormat[3] = 2;
+        byte[] otherCodec = stored.clone();
+        otherCodec[4] = 7;
+
+        assertThatIllegalStateException().isThrownBy(() -> CompressedJson.open(newerFormat))
+                .withMessage("Unsupported compressed document format 2/1");
+        assertThatIllegalStateException().isThrownBy(() -> CompressedJson.open(otherCodec))
+                .withMessage("Unsupported compressed document format 1/7");
+    }
+
+    private static byte[] inflate(byte[] stored) throws IOException {
+        try (InputStream in = CompressedJson.open(stored)) {
+            return in.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.personalfinance.user.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+class JsonDiffTest {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+            "{\"a\": 1, \"b\": {\"c\": [1]}}  | {\"a\": 2, \"b\": {\"c\": [1], \"d\": null}, \"e\": true}",
+            "{\"a\": 1, \"b\": 2}             | {}",
+            "{\"a~/b\": 1}                    | {\"a~/b\": 2, \"x/y\": {\"~\": 3}}",
+            "{\"a\": {\"b\": 1}}              | {\"a\": [1]}",
+            "{\"a\": 1}                       | [1]",
+            "1                                | \"one\"",
+            "[1, 2, 3]                        | [1, 2, 3, 4, 5]",
+            "[1, 2, 3]                        | [0, 1, 2, 3]",
+            "[1, 2, 3]                        | [1, 9, 2, 3]",
+            "[1, 2, 3, 4]                     | [1, 4]",
+            "[1, 2, 3]                        | [2, 3]",
+            "[1, 2, 3]                        | []",
+            "[]                               | [1, 2]",
+            "[1, 2, 3]                        | [3, 1, 2]",
+            "[1, 2, 3]                        | [2, 3, 1]",
+            "[1, 2, 3, 4, 5]                  | [1, 4, 3, 2, 5]",
+            "[{\"id\": 1}, {\"id\": 2}]       | [{\"id\": 2}, {\"id\": 1, \"x\": 0}]",
+            "[[1, 2], [3]]                    | [[1], [3, 4], [5]]",
+            "[1, 2, 3]                        | [1, 7, 8, 9]",
+            "[1, 1, 1]                        | [1, 1]",
+            "[1, 2, 1]                        | [1, 2, 1, 2, 1]"
+    })
+    void patchTurnsTheSourceIntoTheTarget(String source, String target) {
+        assertRoundTrips(json(source), json(target));
+    }
+
+    @Test
+    void equalDocumentsNeedNoOperations() {
+        assertThat(JsonDiff.diff(json("{\"a\": [1, {\"b\": 2}]}"), json("{\"a\": [1, {\"b\": 2}]}"))).isEmpty();
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+            "[1, 2, 3]          | [1, 2, 3, 4]       | [{\"op\":\"add\",\"path\":\"/3\",\"value\":4}]",
+            "[1, 2, 3]          | [1, 9, 2, 3]       | [{\"op\":\"add\",\"path\":\"/1\",\"value\":9}]",
+            "[1, 2, 3]          | [1, 3]             | [{\"op\":\"remove\",\"path\":\"/1\"}]",
+            "[1, 2, 3]          | [1, 5, 3]          | [{\"op\":\"replace\",\"path\":\"/1\",\"value\":5}]",
+            "{\"a\": [1, 2]}  | {\"a\": [1, 2, 3]} | [{\"op\":\"add\",\"path\":\"/a/2\",\"value\":3}]"
+    })
+    void smallArrayEditsStaySmall(String source, String target, String expected) {
+        assertThat(JsonDiff.diff(json(source), json(target))).isEqualTo(json(expected));
+    }
+
+    // Random documents put through random edits, including moves and deletions inside arrays
+    @Test
+    void randomEditsRoundTrip() {
+        Random random = new Random(20240117);
+        for (int i = 0; i < 2000; i++) {
+            JsonNode source = randomValue(random, 3);
+            JsonNode target = source.deepCopy();
+            int edits = 1 + random.nextInt(4);
+            for (int e = 0; e < edits; e++) {
+                target = edit(random, target);
+            }
+            assertRoundTrips(source, target);
+        }
+    }
+
+    private static void assertRoundTrips(JsonNode source, JsonNode target) {
+        ArrayNode patch = JsonDiff.diff(source, target);
+
+        assertThat(JsonPatch.parse(patch).apply(source))
+                .as("%s patched by %s", source, patch)
+                .isEqualTo(target);
+    }
+
+    private static JsonNode edit(Random random, JsonNode document) {
+        List<JsonNode> containers = new ArrayList<>();
+        collectContainers(document, containers);
+        if (containers.isEmpty()) {
+            return randomValue(random, 2);
+        }
+        JsonNode container = containers.get(random.nextInt(containers.size()));
+        if (container.isArray()) {
+            ArrayNode array = (ArrayNode) container;
+            int size = array.size();
+            switch (size == 0 ? 0 : random.nextInt(4)) {
+                case 0:
+                    array.insert(random.nextInt(size + 1), randomValue(random, 1));
+                    break;
+                case 1:
+                    array.remove(random.nextInt(size));
+                    break;
+                case 2:
+                    array.insert(random.nextInt(size), array.remove(random.nextInt(size)));
+                    break;
+                default:
+                    array.set(random.nextInt(size), randomValue(random, 1));
+            }
+        } else {
+            ObjectNode object = (ObjectNode) container;
+            String key = "k" + random.nextInt(6);
+            if (object.has(key) && random.nextBoolean()) {
+                object.remove(key);
+            } else {
+                object.set(key, randomValue(random, 1));
+            }
+        }
+        return document;
+    }
+
+    private static void collectContainers(JsonNode node, List<JsonNode> containers) {
+        if (node.isContainerNode()) {
+            containers.add(node);
+            node.forEach(child -> collectContainers(child, containers));
+        }
+    }
+
+    private static JsonNode randomValue(Random random, int depth) {
+        JsonNodeFactory factory = JsonNodeFactory.instance;
+        switch (depth == 0 ? random.nextInt(4) : random.nextInt(6)) {
+            case 0:
+                return factory.numberNode(random.nextInt(5));
+            case 1:
+                return factory.textNode("s" + random.nextInt(3));
+            case 2:
+                return random.nextBoolean() ? factory.booleanNode(true) : factory.nullNode();
+            case 3:
+                return factory.numberNode(random.nextInt(100) / 4.0);
+            case 4:
+                ArrayNode array = factory.arrayNode();
+                for (int i = random.nextInt(6); i > 0; i--) {
+                    array.add(randomValue(random, depth - 1));
+                }
+                return array;
+            default:
+                ObjectNode object = factory.objectNode();
+                for (int i = random.nextInt(5); i > 0; i--) {
+                    object.set("k" + random.nextInt(6), randomValue(random, depth - 1));
+                }
+                return object;
+        }
+    }
+
+    private static JsonNode json(String text) {
+        try {
+            return mapper.readTree(text);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+}
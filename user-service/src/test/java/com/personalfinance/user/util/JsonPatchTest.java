@@ -0,0 +1,160 @@
+package com.personalfinance.user.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.personalfinance.user.util.JsonPatch.JsonPatchException;
+
+class JsonPatchTest {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void appliesEachOperation() {
+        JsonNode document = json("{\"a\": {\"b\": 1}, \"list\": [1, 2, 3]}");
+        JsonNode patch = json("["
+                + "{\"op\": \"add\", \"path\": \"/a/c\", \"value\": [true]},"
+                + "{\"op\": \"replace\", \"path\": \"/a/b\", \"value\": \"x\"},"
+                + "{\"op\": \"remove\", \"path\": \"/list/0\"},"
+                + "{\"op\": \"add\", \"path\": \"/list/-\", \"value\": 4},"
+                + "{\"op\": \"add\", \"path\": \"/list/1\", \"value\": 9},"
+                + "{\"op\": \"move\", \"path\": \"/moved\", \"from\": \"/a/c\"},"
+                + "{\"op\": \"copy\", \"path\": \"/copied\", \"from\": \"/a\"},"
+                + "{\"op\": \"test\", \"path\": \"/copied/b\", \"value\": \"x\"}"
+                + "]");
+
+        assertThat(JsonPatch.parse(patch).apply(document)).isEqualTo(json(
+                "{\"a\": {\"b\": \"x\"}, \"list\": [2, 9, 3, 4], \"moved\": [true], \"copied\": {\"b\": \"x\"}}"));
+    }
+
+    @Test
+    void leavesTheInputDocumentAlone() {
+        JsonNode document = json("{\"a\": 1}");
+
+        JsonPatch.parse(json("[{\"op\": \"remove\", \"path\": \"/a\"}]")).apply(document);
+
+        assertThat(document).isEqualTo(json("{\"a\": 1}"));
+    }
+
+    @Test
+    void replacingTheRootReplacesTheDocument() {
+        JsonNode patch = json("[{\"op\": \"replace\", \"path\": \"\", \"value\": [1]}]");
+
+        assertThat(JsonPatch.parse(patch).apply(json("{\"a\": 1}"))).isEqualTo(json("[1]"));
+    }
+
+    @Test
+    void pointersUnescapeSlashAndTilde() {
+        JsonNode patch = json("[{\"op\": \"replace\", \"path\": \"/a~1b/c~0d\", \"value\": 2}]");
+
+        assertThat(JsonPatch.parse(patch).apply(json("{\"a/b\": {\"c~d\": 1}}")))
+                .isEqualTo(json("{\"a/b\": {\"c~d\": 2}}"));
+    }
+
+    // The same cases as JsonbPatchSqlPostgresTest, whose guards compare with jsonb =
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+            "1           | 1.0          | true",
+            "1.50        | 1.5          | true",
+            "-0.0        | 0            | true",
+            "100         | 1e2          | true",
+            "1.5e3       | 1500         | true",
+            "1           | 1.0000000001 | false",
+            "1           | '\"1\"'      | false",
+            "'{\"a\": 1, \"b\": [2.0]}' | '{\"b\": [2], \"a\": 1.0}' | true",
+            "'[1, 2]'    | '[2, 1]'     | false",
+            "'{\"a\": 1}' | '{\"a\": 1, \"b\": null}' | false",
+            "null        | 'null'       | true"
+    })
+    void testComparesNumbersByValue(String stored, String expected, boolean passes) {
+        JsonNode document = json("{\"v\": " + stored + "}");
+        JsonPatch patch = JsonPatch.parse(json("[{\"op\": \"test\", \"path\": \"/v\", \"value\": " + expected + "}]"));
+
+        if (passes) {
+            assertThat(patch.apply(document)).isEqualTo(document);
+        } else {
+            assertThatThrownBy(() -> patch.apply(document))
+                    .isInstanceOf(JsonPatchException.class)
+                    .hasMessage("Test failed at /v");
+        }
+    }
+
+    @Test
+    void infiniteFloatsCompareWithoutFailing() {
+        assertThat(JsonPatch.sameValue(json("1e400"), json("1e400"))).isTrue();
+        assertThat(JsonPatch.sameValue(json("1e400"), json("1"))).isFalse();
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+            "[{\"op\": \"remove\", \"path\": \"/missing\"}]                          | No value at /missing",
+            "[{\"op\": \"replace\", \"path\": \"/a/x\", \"value\": 1}]                | No value at /a/x",
+            "[{\"op\": \"add\", \"path\": \"/list/4\", \"value\": 1}]                 | Array index out of bounds in /list/4",
+            "[{\"op\": \"add\", \"path\": \"/list/01\", \"value\": 1}]                | Invalid array index in /list/01",
+            "[{\"op\": \"add\", \"path\": \"/n/x\", \"value\": 1}]                    | Parent of /n/x is not a container",
+            "[{\"op\": \"move\", \"path\": \"/a/b\", \"from\": \"/a\"}]               | Cannot move a value into one of its children",
+            "[{\"op\": \"remove\", \"path\": \"\"}]                                  | Cannot remove the whole document"
+    })
+    void operationsThatDontFitTheDocumentFail(String patch, String message) {
+        JsonNode document = json("{\"a\": {}, \"list\": [1, 2, 3], \"n\": 1}");
+
+        assertThatThrownBy(() -> JsonPatch.parse(json(patch)).apply(document))
+                .isInstanceOf(JsonPatchException.class)
+                .hasMessage(message);
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+            "{\"op\": \"add\", \"path\": \"/a\"}",
+            "[{\"op\": \"add\", \"value\": 1}]",
+            "[{\"op\": \"rename\", \"path\": \"/a\"}]",
+            "[{\"op\": \"copy\", \"path\": \"/a\"}]",
+            "[{\"op\": \"test\", \"path\": \"/a\"}]",
+            "[{\"op\": \"remove\", \"path\": \"a\"}]"
+    })
+    void malformedPatchesAreRejectedWhenParsed(String patch) {
+        assertThatIllegalArgumentException().isThrownBy(() -> JsonPatch.parse(json(patch)));
+    }
+
+    // RFC 7396, Appendix A
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+            "{\"a\":\"b\"}             | {\"a\":\"c\"}             | {\"a\":\"c\"}",
+            "{\"a\":\"b\"}             | {\"b\":\"c\"}             | {\"a\":\"b\",\"b\":\"c\"}",
+            "{\"a\":\"b\"}             | {\"a\":null}              | {}",
+            "{\"a\":\"b\",\"b\":\"c\"} | {\"a\":null}              | {\"b\":\"c\"}",
+            "{\"a\":[\"b\"]}           | {\"a\":\"c\"}             | {\"a\":\"c\"}",
+            "{\"a\":\"c\"}             | {\"a\":[\"b\"]}           | {\"a\":[\"b\"]}",
+            "{\"a\":{\"b\":\"c\"}}     | {\"a\":{\"b\":\"d\",\"c\":null}} | {\"a\":{\"b\":\"d\"}}",
+            "{\"a\":[{\"b\":\"c\"}]}   | {\"a\":[1]}               | {\"a\":[1]}",
+            "[\"a\",\"b\"]             | [\"c\",\"d\"]             | [\"c\",\"d\"]",
+            "{\"a\":\"b\"}             | [\"c\"]                   | [\"c\"]",
+            "{\"a\":\"foo\"}           | null                      | null",
+            "{\"a\":\"foo\"}           | \"bar\"                   | \"bar\"",
+            "{\"e\":null}              | {\"a\":1}                 | {\"e\":null,\"a\":1}",
+            "[1,2]                     | {\"a\":\"b\",\"c\":null}  | {\"a\":\"b\"}",
+            "{}                        | {\"a\":{\"bb\":{\"ccc\":null}}} | {\"a\":{\"bb\":{}}}"
+    })
+    void mergePatchFollowsTheRfcExamples(String target, String patch, String result) {
+        JsonNode document = json(target);
+
+        assertThat(JsonPatch.mergePatch(document, json(patch))).isEqualTo(json(result));
+        assertThat(document).isEqualTo(json(target));
+    }
+
+    private static JsonNode json(String text) {
+        try {
+            return mapper.readTree(text);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+}
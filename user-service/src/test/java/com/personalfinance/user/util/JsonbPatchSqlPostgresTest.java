@@ -0,0 +1,141 @@
+package com.personalfinance.user.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Runs the generated UPDATEs against a real database and checks that they
+ * agree with applying the same patch in memory. Needs a scratch Postgres:
+ * mvn test -Dtest.postgres.url=jdbc:postgresql://localhost:5432/postgres?user=postgres
+ */
+@EnabledIfSystemProperty(named = "test.postgres.url", matches = ".+")
+class JsonbPatchSqlPostgresTest {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static Connection connection;
+
+    @BeforeAll
+    static void connect() throws SQLException {
+        connection = DriverManager.getConnection(System.getProperty("test.postgres.url"));
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TEMPORARY TABLE patched (user_id bigint PRIMARY KEY, data jsonb,"
+                    + " updated_at timestamp, version bigint NOT NULL)");
+        }
+    }
+
+    @AfterAll
+    static void disconnect() throws SQLException {
+        connection.close();
+    }
+
+    // inPlace says whether the guards let the UPDATE through; when they don't, the service falls back to memory
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+            "{\"v\": 1, \"w\": 0}           | [{\"op\": \"test\", \"path\": \"/v\", \"value\": 1.0}, {\"op\": \"replace\", \"path\": \"/w\", \"value\": 2}] | true",
+            "{\"v\": 1.50, \"w\": 0}        | [{\"op\": \"test\", \"path\": \"/v\", \"value\": 1.5}, {\"op\": \"remove\", \"path\": \"/w\"}]               | true",
+            "{\"v\": -0.0}                    | [{\"op\": \"test\", \"path\": \"/v\", \"value\": 0}]                                                         | true",
+            "{\"v\": 100}                     | [{\"op\": \"test\", \"path\": \"/v\", \"value\": 1e2}]                                                       | true",
+            "{\"v\": 1}                       | [{\"op\": \"test\", \"path\": \"/v\", \"value\": 1.0000000001}]                                              | false",
+            "{\"v\": 1}                       | [{\"op\": \"test\", \"path\": \"/v\", \"value\": \"1\"}]                                                   | false",
+            "{\"v\": {\"a\": 1, \"b\": [2.0]}} | [{\"op\": \"test\", \"path\": \"/v\", \"value\": {\"b\": [2], \"a\": 1.0}}]                    | true",
+            "{\"v\": [1, 2]}                  | [{\"op\": \"test\", \"path\": \"/v\", \"value\": [2, 1]}]                                                    | false",
+            "{\"v\": null}                    | [{\"op\": \"test\", \"path\": \"/v\", \"value\": null}]                                                      | true",
+            "{\"v\": 1}                       | [{\"op\": \"test\", \"path\": \"/missing\", \"value\": null}]                                                | false",
+            "{\"a\": {\"b\": 1}}            | [{\"op\": \"add\", \"path\": \"/a/c\", \"value\": [true]}, {\"op\": \"replace\", \"path\": \"/a/b\", \"value\": \"x\"}] | true",
+            "{\"a\": {\"b\": 1}}            | [{\"op\": \"replace\", \"path\": \"/a/missing\", \"value\": 1}]                                              | false",
+            "{\"a\": {\"b\": 1}}            | [{\"op\": \"remove\", \"path\": \"/a/missing\"}]                                                               | false",
+            "{\"a\": [1]}                     | [{\"op\": \"add\", \"path\": \"/a/x\", \"value\": 1}]                                                        | false",
+            "{\"a~b\": {\"c/d\": 1}}        | [{\"op\": \"replace\", \"path\": \"/a~0b/c~1d\", \"value\": 2}]                                              | true"
+    })
+    void jsonPatchAgreesWithTheInMemoryPath(String document, String patch, boolean inPlace) throws SQLException {
+        JsonPatch parsed = JsonPatch.parse(json(patch));
+        JsonNode expected;
+        try {
+            expected = parsed.apply(json(document));
+        } catch (JsonPatch.JsonPatchException e) {
+            expected = null;
+        }
+
+        JsonNode actual = run(document, JsonbPatchSql.fromJsonPatch(parsed).orElseThrow());
+
+        assertAgrees(actual, expected, inPlace);
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+            "{\"a\": 1, \"b\": 2}           | {\"a\": 3, \"b\": null, \"c\": [1]}             | true",
+            "{\"a\": {\"b\": {\"x\": 1}, \"c\": 2}} | {\"a\": {\"c\": null, \"b\": {\"e\": 1}}} | true",
+            "{}                                 | {\"missing\": null}                                 | true",
+            "{\"a\": {}}                      | {\"a\": {\"d\": {\"e\": 1}}}                    | false",
+            "{\"a\": 1}                       | {\"a\": {\"b\": 1}}                               | false"
+    })
+    void mergePatchAgreesWithTheInMemoryPath(String document, String patch, boolean inPlace) throws SQLException {
+        JsonNode actual = run(document, JsonbPatchSql.fromMergePatch(json(patch)).orElseThrow());
+
+        assertAgrees(actual, JsonPatch.mergePatch(json(document), json(patch)), inPlace);
+    }
+
+    // Postgres normalizes numbers it stores (-0.0 becomes 0.0), so results are compared by value
+    private static void assertAgrees(JsonNode actual, JsonNode expected, boolean inPlace) {
+        assertThat(actual != null).isEqualTo(inPlace);
+        if (expected == null) {
+            assertThat(actual).isNull();
+        } else if (actual != null) {
+            assertThat(JsonPatch.sameValue(actual, expected)).as("%s same value as %s", actual, expected).isTrue();
+        }
+    }
+
+    // The document after the UPDATE, or null when its guards matched no row
+    private static JsonNode run(String document, JsonbPatchSql sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("TRUNCATE patched");
+        }
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO patched (user_id, data, version) VALUES (1, CAST(? AS jsonb), 1)")) {
+            insert.setString(1, document);
+            insert.executeUpdate();
+        }
+        int updated;
+        try (PreparedStatement update = connection.prepareStatement(sql.updateSql("patched"))) {
+            Object[] parameters = sql.parameters(Timestamp.valueOf(LocalDateTime.now()), 1L);
+            for (int i = 0; i < parameters.length; i++) {
+                update.setObject(i + 1, parameters[i]);
+            }
+            updated = update.executeUpdate();
+        }
+        if (updated == 0) {
+            return null;
+        }
+        try (Statement statement = connection.createStatement();
+             ResultSet rows = statement.executeQuery("SELECT CAST(data AS text) FROM patched")) {
+            rows.next();
+            return json(rows.getString(1));
+        }
+    }
+
+    private static JsonNode json(String text) {
+        try {
+            return mapper.readTree(text);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+}
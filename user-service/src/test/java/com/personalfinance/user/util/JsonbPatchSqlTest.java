@@ -0,0 +1,88 @@
+package com.personalfinance.user.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class JsonbPatchSqlTest {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final String NOW = "now";
+
+    @Test
+    void jsonPatchBecomesNestedJsonbSetsWithGuards() {
+        JsonbPatchSql sql = JsonbPatchSql.fromJsonPatch(JsonPatch.parse(json("["
+                + "{\"op\": \"test\", \"path\": \"/version\", \"value\": 1.0},"
+                + "{\"op\": \"add\", \"path\": \"/a/new\", \"value\": {\"x\": [1]}},"
+                + "{\"op\": \"replace\", \"path\": \"/b\", \"value\": \"text\"},"
+                + "{\"op\": \"remove\", \"path\": \"/c/d\"}"
+                + "]"))).orElseThrow();
+
+        assertThat(sql.updateSql("t")).isEqualTo("UPDATE t SET data = "
+                + "(jsonb_set(jsonb_set(data, CAST(ARRAY[?, ?] AS text[]), CAST(? AS jsonb), true), CAST(ARRAY[?] AS text[]), CAST(? AS jsonb), true)"
+                + " #- CAST(ARRAY[?, ?] AS text[]))"
+                + ", updated_at = ?, version = version + 1 WHERE user_id = ?"
+                + " AND (data #> CAST(ARRAY[?] AS text[])) = CAST(? AS jsonb)"
+                + " AND jsonb_typeof((data #> CAST(ARRAY[?] AS text[]))) = 'object'"
+                + " AND jsonb_typeof(data) = 'object'"
+                + " AND (data #> CAST(ARRAY[?] AS text[])) IS NOT NULL"
+                + " AND jsonb_typeof((data #> CAST(ARRAY[?] AS text[]))) = 'object'"
+                + " AND (data #> CAST(ARRAY[?, ?] AS text[])) IS NOT NULL");
+        assertThat(sql.parameters(NOW, 7L)).containsExactly(
+                "a", "new", "{\"x\":[1]}", "b", "\"text\"", "c", "d",
+                NOW, 7L,
+                "version", "1.0", "a", "b", "c", "c", "d");
+    }
+
+    @Test
+    void mergePatchSetsLeavesRemovesNullsAndRecursesIntoObjects() {
+        JsonbPatchSql sql = JsonbPatchSql.fromMergePatch(json("{\"a\": 1, \"b\": null, \"c\": {\"d\": [2]}}")).orElseThrow();
+
+        assertThat(sql.updateSql("t")).isEqualTo("UPDATE t SET data = "
+                + "jsonb_set((jsonb_set(data, CAST(ARRAY[?] AS text[]), CAST(? AS jsonb), true) #- CAST(ARRAY[?] AS text[])),"
+                + " CAST(ARRAY[?, ?] AS text[]), CAST(? AS jsonb), true)"
+                + ", updated_at = ?, version = version + 1 WHERE user_id = ?"
+                + " AND jsonb_typeof(data) = 'object'"
+                + " AND jsonb_typeof((data #> CAST(ARRAY[?] AS text[]))) = 'object'");
+        assertThat(sql.parameters(NOW, 7L)).containsExactly(
+                "a", "1", "b", "c", "d", "[2]",
+                NOW, 7L,
+                "c");
+    }
+
+    @Test
+    void nonObjectMergePatchIsNotTranslated() {
+        assertThat(JsonbPatchSql.fromMergePatch(json("[1]"))).isEmpty();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "[{\"op\": \"move\", \"path\": \"/a\", \"from\": \"/b\"}]",
+            "[{\"op\": \"copy\", \"path\": \"/a\", \"from\": \"/b\"}]",
+            "[{\"op\": \"replace\", \"path\": \"\", \"value\": {}}]",
+            "[{\"op\": \"add\", \"path\": \"/a\", \"value\": {}}, {\"op\": \"add\", \"path\": \"/a/b\", \"value\": 1}]",
+            "[{\"op\": \"remove\", \"path\": \"/a/b\"}, {\"op\": \"test\", \"path\": \"/a\", \"value\": {}}]",
+            "[{\"op\": \"replace\", \"path\": \"/a\", \"value\": 1}, {\"op\": \"replace\", \"path\": \"/a\", \"value\": 2}]"
+    })
+    void patchesTheGuardsCantCaptureAreNotTranslated(String patch) {
+        Optional<JsonbPatchSql> sql = JsonbPatchSql.fromJsonPatch(JsonPatch.parse(json(patch)));
+
+        assertThat(sql).isEmpty();
+    }
+
+    private static JsonNode json(String text) {
+        try {
+            return mapper.readTree(text);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.personalfinance.user.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.personalfinance.user.repository.StoredFinancialData;
+import com.personalfinance.user.repository.StoredFinancialDataFixtures;
+
+/**
+ * A financial-data PUT and GET as the controller handles them, against
+ * the tree-building path they replaced: the body read into a Map, turned
+ * into a JsonNode by a fresh ObjectMapper and serialised for storage, and
+ * the stored text parsed into a JsonNode to be serialised into the
+ * response. Documents are transaction lists of {@link #bytes} bytes.
+ * Launched by {@link RawJsonTest}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RawJsonBenchmark {
+
+    private static final byte[] DATA_PREFIX = "{\"data\":".getBytes(StandardCharsets.UTF_8);
+
+    @Param({"10240", "102400", "1048576"})
+    public int bytes;
+
+    // Spring's shared mapper, which read the old request bodies and wrote the old responses
+    private final ObjectMapper mapper = new ObjectMapper();
+    // Discards what is written and, like a servlet response, stays open when the mapper closes it
+    private final OutputStream response = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+    private byte[] body;
+    private StoredFinancialData stored;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String document = document(bytes);
+        body = ("{\"data\":" + document + "}").getBytes(StandardCharsets.UTF_8);
+        stored = StoredFinancialDataFixtures.plain(1, document);
+    }
+
+    @Benchmark
+    public String writeRaw() {
+        return RawJson.extractMember(body, "data");
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public String writeTree() throws IOException {
+        Map<String, Object> request = mapper.readValue(body, Map.class);
+        return new ObjectMapper().valueToTree(request.get("data")).toString();
+    }
+
+    @Benchmark
+    public void readRaw() throws IOException {
+        response.write(DATA_PREFIX);
+        stored.writeTo(response);
+        response.write('}');
+    }
+
+    @Benchmark
+    public void readTree() throws IOException {
+        JsonNode data = JsonNodeConverter.toJsonNode(stored.asText());
+        Map<String, Object> body = new HashMap<>();
+        body.put("data", data);
+        mapper.writeValue(response, body);
+    }
+
+    // A transaction list with a few goals, padded out to about the given size
+    static String document(int bytes) {
+        StringBuilder json = new StringBuilder(bytes + 256)
+                .append("{\"currency\": \"USD\", \"goals\": {\"car\": 5000, \"holiday\": 1500.5}, \"transactions\": [");
+        for (int i = 0; json.length() < bytes; i++) {
+            json.append(i == 0 ? "" : ", ")
+                    .append("{\"id\": ").append(i)
+                    .append(", \"date\": \"2024-").append(String.format("%02d-%02d", 1 + i % 12, 1 + i % 28))
+                    .append("\", \"amount\": ").append(-(i * 37 % 20000) / 100.0)
+                    .append(", \"category\": \"DINING\", \"description\": \"Lunch at café #").append(i)
+                    .append("\", \"tags\": [\"work\", \"team\"], \"recurring\": false}");
+        }
+        return json.append("]}").toString();
+    }
+}
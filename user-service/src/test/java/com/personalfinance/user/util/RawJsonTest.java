@@ -0,0 +1,95 @@
+package com.personalfinance.user.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+class RawJsonTest {
+
+    @Test
+    void theMemberIsSlicedOutExactlyAsSent() {
+        String data = "{ \"note\": \"Zoë ✓ 🚀\",\n  \"amount\": 1.50, \"big\": 1e400, \"list\": [ ] }";
+
+        assertThat(extract("{\"before\": [1, {\"data\": 0}], \"data\": " + data + " , \"after\": null}")).isEqualTo(data);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"null", "42", "-0.0", "\"text\"", "[]", "true"})
+    void anyValueCanBeTheMember(String value) {
+        assertThat(extract("{\"data\":" + value + "}")).isEqualTo(value);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "{\"data\": {\"a\": 1}",
+            "{\"data\": {\"a\": 1}} trailing",
+            "{\"other\": [1, 2,], \"data\": {}}",
+            "{\"data\": {\"a\": tru}}",
+            "{\"data\": {} \"other\": 1}"})
+    void malformedBodiesAreRejectedWherever(String body) {
+        assertThatIllegalArgumentException().isThrownBy(() -> extract(body)).withMessageStartingWith("Malformed JSON request body");
+    }
+
+    @Test
+    void theBodyMustBeAnObjectWithTheMember() {
+        assertThatIllegalArgumentException().isThrownBy(() -> extract("[{\"data\": {}}]"))
+                .withMessage("Request body must be a JSON object");
+        assertThatIllegalArgumentException().isThrownBy(() -> extract("{\"other\": {\"data\": {}}}"))
+                .withMessage("Request body has no 'data' member");
+    }
+
+    /**
+     * The JMH suite: CPU time and allocation per PUT and GET at 10 KB, 100 KB
+     * and 1 MB, raw against the tree-building path. Only runs with -Pslow-tests.
+     */
+    @Test
+    @Tag("slow")
+    void jmhAgainstTheTreePath() throws RunnerException {
+        Map<String, String> results = new TreeMap<>();
+        Map<String, Double> micros = new TreeMap<>();
+        Map<String, Double> allocated = new TreeMap<>();
+        for (RunResult result : new Runner(new OptionsBuilder()
+                .include(RawJsonBenchmark.class.getName())
+                .forks(1)
+                .warmupIterations(3)
+                .warmupTime(TimeValue.seconds(1))
+                .measurementIterations(5)
+                .measurementTime(TimeValue.seconds(1))
+                .addProfiler(GCProfiler.class)
+                .build()).run()) {
+            String name = result.getParams().getBenchmark().replaceAll(".*\\.", "") + "@" + result.getParams().getParam("bytes");
+            double score = result.getPrimaryResult().getScore();
+            double bytes = result.getSecondaryResults().get("gc.alloc.rate.norm").getScore();
+            micros.put(name, score);
+            allocated.put(name, bytes);
+            results.put(name, String.format("%.1f us/op, %.0f KB/op", score, bytes / 1024));
+        }
+
+        System.out.printf("[raw-json] %s%n", results);
+        for (String size : new String[] {"10240", "102400", "1048576"}) {
+            assertThat(micros.get("writeRaw@" + size)).as("write %s", size).isLessThan(micros.get("writeTree@" + size) / 2);
+            assertThat(micros.get("readRaw@" + size)).as("read %s", size).isLessThan(micros.get("readTree@" + size) / 2);
+            // The write keeps one copy of the document where the tree path makes several; a read encodes the stored text once
+            assertThat(allocated.get("writeRaw@" + size)).as("write %s", size).isLessThan(allocated.get("writeTree@" + size) / 4);
+            assertThat(allocated.get("readRaw@" + size)).as("read %s", size).isLessThan(allocated.get("readTree@" + size));
+        }
+    }
+
+    private static String extract(String body) {
+        return RawJson.extractMember(body.getBytes(StandardCharsets.UTF_8), "data");
+    }
+}